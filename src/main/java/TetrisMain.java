@@ -1,7 +1,32 @@
-
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.fun.game.tetris.Board;
+import org.fun.game.tetris.CommandLine;
+import org.fun.game.tetris.Tetrion;
 import org.fun.game.tetris.TetrisFrame;
+import org.fun.game.tetris.ai.BotType;
+import org.fun.game.tetris.ai.Evaluator;
+import org.fun.game.tetris.ai.PerftTool;
+import org.fun.game.tetris.analytics.AnalyticsTool;
+import org.fun.game.tetris.metrics.MetricsServer;
+import org.fun.game.tetris.net.NetTool;
+import org.fun.game.tetris.replay.ReplayTool;
+import org.fun.game.tetris.scores.HighScoreStore;
+import org.fun.game.tetris.scores.ScoresTool;
+import org.fun.game.tetris.sim.BatchTool;
+import org.fun.game.tetris.tuning.TuningTool;
 
 /**
  * The Tetris Game main entry point.
@@ -40,6 +65,86 @@ public final class TetrisMain {
   private static final Logger LOGGER =
       Logger.getLogger(TetrisMain.class.getName());
 
+  /**
+   * Command line option to start the metrics endpoint on the given port.
+   *
+   * @see MetricsServer
+   */
+  private static final String METRICS_OPTION = "--metrics";
+  /**
+   * Command line option to resume the game suspended to the given file, and suspend the game in
+   * progress to it on exit.
+   *
+   * @see Tetrion#suspend(Path)
+   */
+  private static final String SAVE_OPTION = "--save";
+  /**
+   * Options accepted on the command line: those of the game and of every tool.
+   */
+  private static final List<String> OPTIONS;
+
+  static {
+    List<String> options = new ArrayList<>();
+    options.addAll(Arrays.asList(METRICS_OPTION, SAVE_OPTION));
+    options.addAll(CommandLine.SHARED_OPTIONS);
+    options.addAll(BatchTool.OPTIONS);
+    options.addAll(TuningTool.OPTIONS);
+    options.addAll(PerftTool.OPTIONS);
+    options.addAll(ReplayTool.OPTIONS);
+    options.addAll(ScoresTool.OPTIONS);
+    options.addAll(AnalyticsTool.OPTIONS);
+    options.addAll(NetTool.OPTIONS);
+    OPTIONS = Collections.unmodifiableList(options);
+  }
+
+  /**
+   * Usage printed on a command line error.
+   *
+   * @see #main(String[])
+   */
+  private static final String USAGE = String.format("Usage: TetrisMain "
+      + "[options]%n"
+      + "  --metrics <port>          serve the game metrics%n"
+      + "  --bot [heuristic|greedy|beam]  let a bot play%n"
+      + "  --mode <classic|modern|mix>    game mode%n"
+      + "  --board <columns>x<rows>  playfield dimensions, 10x20 for a bot%n"
+      + "  --batch <games>           play headless games%n"
+      + "  --level <level>           start level%n"
+      + "  --seed <seed>             seed of the first game%n"
+      + "  --max-pieces <pieces>     pieces ending a headless game%n"
+      + "  --threads <threads>       number of threads%n"
+      + "  --csv                     print headless game results as CSV%n"
+      + "  --tune <generations>      tune the bots weights%n"
+      + "  --population <candidates> candidates per tuning generation%n"
+      + "  --tune-games <games>      games per tuning candidate%n"
+      + "  --checkpoint <file>       tuning checkpoint file%n"
+      + "  --perft <depth>           count the placement sequences%n"
+      + "  --record <file>           record the games to a replay file%n"
+      + "  --replay <file>           play back a replay file%n"
+      + "  --render-frames <f,...>   frames printed when playing back%n"
+      + "  --render-rate <frames>    frames printed per second%n"
+      + "  --archive <file>          scan a replay archive%n"
+      + "  --import <file>           append a replay file to the archive%n"
+      + "  --verify <file>           verify the games of a replay archive%n"
+      + "  --save <file>             resume and suspend the game%n"
+      + "  --scores <file>           add the scores to a high score store%n"
+      + "  --top <count>             print the best high scores%n"
+      + "  --analyze <file>          analyze the games of a replay%n"
+      + "  --analytics               print the analytics of the games%n"
+      + "  --serve <port>            host multiplayer games%n"
+      + "  --connect <[host:]port>   connect scripted clients to a server%n"
+      + "  --clients <clients>       number of scripted clients%n"
+      + "  --spectators <spectators> number of scripted spectators%n"
+      + "  --rooms <rooms>           rooms joined by the scripted clients%n"
+      + "  --seconds <seconds>       seconds played%n"
+      + "  --state-period <frames>   frames between two states sent%n"
+      + "  --versus <latency>        play a versus game over loopback%n"
+      + "  --loss <percent>          loss rate of the versus datagrams%n");
+  /**
+   * Exit status of a command line error.
+   */
+  private static final int USAGE_ERROR_STATUS = 2;
+
   /**
    * Hidden constructor.
    */
@@ -80,13 +185,193 @@ public final class TetrisMain {
   }
 
   /**
-   * Main entry point.
+   * Start the metrics endpoint.
+   * 
+   * @param port the port to listen to
+   */
+  private static void startMetricsServer(final int port) {
+    try {
+      new MetricsServer(port).start();
+    } catch (IOException ex) {
+      LOGGER.log(Level.SEVERE, "Cannot start metrics server", ex);
+    }
+  }
+
+  /**
+   * Resume the game of a Tetrion suspended to a file, and suspend the game in progress to it when
+   * its frame is closed.
+   *
+   * <p>
+   * The file is deleted when closing the frame if no game is in progress, so that a game over is
+   * never resumed.
+   * </p>
+   *
+   * @param frame the frame of the Tetrion
+   * @param file the saved game file
+   */
+  private static void resumeAndSuspend(final TetrisFrame frame,
+      final Path file) {
+    final Tetrion tetrion = frame.getTetrion();
+    if (Files.exists(file)) {
+      long start = System.nanoTime();
+      try {
+        if (tetrion.resume(file)) {
+          LOGGER.log(Level.FINE, "Game resumed in {0} ms",
+              TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+      } catch (IOException ex) {
+        LOGGER.log(Level.SEVERE, "Cannot resume game", ex);
+      }
+    }
+    frame.addWindowListener(new WindowAdapter() {
+      @Override
+      public void windowClosing(final WindowEvent e) {
+        try {
+          if (!tetrion.suspend(file)) {
+            Files.deleteIfExists(file);
+          }
+        } catch (IOException ex) {
+          LOGGER.log(Level.SEVERE, "Cannot suspend game", ex);
+        }
+      }
+    });
+  }
+
+  /**
+   * Main entry point, showing the game or running the tool selected by the options.
+   * 
+   * <p>
+   * Options:
+   * </p>
+   * <ul>
+   * <li>{@code --metrics <port>}: serve the game metrics on {@code http://localhost:<port>/metrics}
+   * </li>
+   * <li>{@code --bot [heuristic|greedy|beam]}: let a bot play the game, or the headless games
+   * </li>
+   * <li>{@code --mode <classic|modern|mix>}: game mode, case insensitive</li>
+   * <li>{@code --board <columns>x<rows>}: playfield dimensions of the game and versus games,
+   * bots only playing the standard 10x20 playfield</li>
+   * <li>{@code --batch <games>}: play headless games on all cores and print their statistics,
+   * instead of showing the game</li>
+   * <li>{@code --level <level>}: start level of headless games</li>
+   * <li>{@code --seed <seed>}: seed of the first headless game, the next games using the
+   * following seeds</li>
+   * <li>{@code --max-pieces <pieces>}: number of pieces ending a headless game</li>
+   * <li>{@code --threads <threads>}: number of threads running headless games</li>
+   * <li>{@code --csv}: print each headless game result as CSV</li>
+   * <li>{@code --tune <generations>}: tune the bots weights, playing headless games configured as
+   * with {@code --batch}, and print the best weights found</li>
+   * <li>{@code --population <candidates>}: number of candidates per tuning generation</li>
+   * <li>{@code --tune-games <games>}: number of games played by each tuning candidate</li>
+   * <li>{@code --checkpoint <file>}: tuning checkpoint file, resumed from if it exists</li>
+   * <li>{@code --perft <depth>}: count the placement sequences of the shapes of the seed, from an
+   * empty playfield, up to the given depth</li>
+   * <li>{@code --record <file>}: record the games played to a replay file</li>
+   * <li>{@code --replay <file>}: play back the games of a replay file as fast as possible,
+   * printing some of their frames</li>
+   * <li>{@code --render-frames <frame,...>}: frames printed when playing back a replay</li>
+   * <li>{@code --render-rate <frames>}: number of frames printed per second when playing back a
+   * replay, if no frames are given</li>
+   * <li>{@code --archive <file>}: scan a replay archive and print its statistics</li>
+   * <li>{@code --import <file>}: append the games of a replay file to the replay archive first</li>
+   * <li>{@code --verify <file>}: compute the games of a replay archive again, on all cores or the
+   * given number of threads, and print the games not as claimed</li>
+   * <li>{@code --save <file>}: resume the game suspended to a file, and suspend the game in
+   * progress to it on exit</li>
+   * <li>{@code --scores <file>}: add the scores of the games over, played or headless, to a high
+   * score store</li>
+   * <li>{@code --top <count>}: print the best high scores of the store for the mode and start
+   * level</li>
+   * <li>{@code --analyze <file>}: analyze the games of a replay file or archive, on all cores or
+   * the given number of threads, and print their analytics</li>
+   * <li>{@code --analytics}: print the analytics of the games played when over</li>
+   * <li>{@code --serve <port>}: host multiplayer games on a port, on all cores or the given number
+   * of threads, or play the scripted clients on it over loopback if their number is given</li>
+   * <li>{@code --connect <[host:]port>}: connect scripted clients to a multiplayer game server,
+   * on {@code localhost} if only its port is given</li>
+   * <li>{@code --clients <clients>}: number of scripted clients, pressing random inputs or letting
+   * the bot play</li>
+   * <li>{@code --spectators <spectators>}: number of scripted spectators, watching the rooms</li>
+   * <li>{@code --rooms <rooms>}: number of rooms joined by the scripted clients</li>
+   * <li>{@code --seconds <seconds>}: number of seconds played by the scripted clients</li>
+   * <li>{@code --state-period <frames>}: number of frames between two states sent by the server
+   * </li>
+   * <li>{@code --versus <latency>}: play a versus game for the given number of seconds between two
+   * peers over loopback, pressing random inputs or letting the bot play, with the given simulated
+   * latency in milliseconds, and print their rollbacks</li>
+   * <li>{@code --loss <percent>}: simulated loss rate of the versus game datagrams</li>
+   * </ul>
+   *
+   * <p>
+   * An unknown option, or a missing or invalid value, prints the usage and exits with status
+   * {@code 2}.
+   * </p>
    * 
    * @param args the command line arguments
    */
   public static void main(final String[] args) {
     System.out.println("TETRIS");
 
+    try {
+      run(new CommandLine(args, OPTIONS));
+    } catch (CommandLine.UsageException ex) {
+      System.err.println(ex.getMessage());
+      System.err.print(USAGE);
+      System.exit(USAGE_ERROR_STATUS);
+    }
+  }
+
+  /**
+   * Run the tool or game selected by the command line options.
+   *
+   * @param options the command line options
+   * @throws CommandLine.UsageException if an option value is not valid
+   */
+  private static void run(final CommandLine options) {
+    if (options.has(METRICS_OPTION)) {
+      startMetricsServer(options.getInt(METRICS_OPTION, 0));
+    }
+
+    if (options.has(TuningTool.TUNE_OPTION)) {
+      TuningTool.run(options);
+    } else if (options.has(CommandLine.SCORES_OPTION)
+        && options.has(ScoresTool.TOP_OPTION)) {
+      ScoresTool.run(options);
+    } else if (NetTool.isSelected(options)) {
+      NetTool.run(options);
+    } else if (options.has(AnalyticsTool.ANALYZE_OPTION)) {
+      AnalyticsTool.run(options);
+    } else if (ReplayTool.isSelected(options)) {
+      ReplayTool.run(options);
+    } else if (options.has(PerftTool.PERFT_OPTION)) {
+      PerftTool.run(options);
+    } else if (options.has(BatchTool.BATCH_OPTION)) {
+      BatchTool.run(options);
+    } else {
+      showGame(options);
+    }
+  }
+
+  /**
+   * Show the game, configured by the command line options.
+   *
+   * @param options the command line options
+   * @throws CommandLine.UsageException if an option value is not valid
+   */
+  private static void showGame(final CommandLine options) {
+    final BotType botPlaying = options.getEnum(CommandLine.BOT_OPTION,
+        BotType.class, BotType.HEURISTIC);
+    final Tetrion.Mode gameMode =
+        options.getEnum(CommandLine.MODE_OPTION, Tetrion.Mode.class, null);
+    final Board gameBoard =
+        options.getBoard(CommandLine.BOARD_OPTION, botPlaying != null);
+    final Path recordFile = options.getPath(ReplayTool.RECORD_OPTION);
+    final Path suspendFile = options.getPath(SAVE_OPTION);
+    final boolean analyzing = options.has(AnalyticsTool.ANALYTICS_OPTION);
+    final Path scoresFile = options.getPath(CommandLine.SCORES_OPTION);
+    final HighScoreStore scores =
+        scoresFile == null ? null : ScoresTool.open(scoresFile);
+
     /* Set the Nimbus look and feel */
     setLookAndFeel("Nimbus");
 
@@ -95,6 +380,28 @@ public final class TetrisMain {
       System.out.println("Initialization in progress...");
 
       final TetrisFrame gameFrame = new TetrisFrame("Tetris");
+      if (gameMode != null) {
+        gameFrame.getTetrion().setMode(gameMode);
+      }
+      if (gameBoard != null) {
+        gameFrame.getTetrion().setBoard(gameBoard);
+      }
+      if (botPlaying != null) {
+        gameFrame.getTetrion().setController(
+            botPlaying.create(new Evaluator(), ForkJoinPool.commonPool()));
+      }
+      if (recordFile != null) {
+        ReplayTool.record(gameFrame.getTetrion(), recordFile);
+      }
+      if (analyzing) {
+        AnalyticsTool.analyze(gameFrame.getTetrion());
+      }
+      if (scores != null) {
+        ScoresTool.record(gameFrame.getTetrion(), scores);
+      }
+      if (suspendFile != null) {
+        resumeAndSuspend(gameFrame, suspendFile);
+      }
 
       gameFrame.setLocationRelativeTo(null);
 
@@ -0,0 +1,155 @@
+package org.fun.game.tetris;
+
+/**
+ * Scores and lines of garbage sent by line clears, looked up in tables computed once.
+ *
+ * <p>
+ * A line clear is of a <em>clear type</em>, combining the number of lines cleared with the kind of
+ * spin that locked the piece: see {@link #clearType(int, int)}. Its score and the lines of garbage
+ * it sends to the opponents of a versus game are read from tables indexed by clear type, so that
+ * no branching is needed on each lock. The lines sent grow with:
+ * </p>
+ * <ul>
+ * <li>the clear type, from a single to a T-spin triple;</li>
+ * <li>the <em>back-to-back</em> bonus, when a <em>difficult</em> clear (a Tetris or a T-spin clear)
+ * follows another one without any easy clear in between;</li>
+ * <li>the <em>combo</em>, the number of consecutive pieces clearing lines;</li>
+ * <li>the <em>perfect clear</em> bonus, when the playfield is left empty.</li>
+ * </ul>
+ *
+ * @see <a href="https://tetris.wiki/Garbage">Garbage</a>
+ * @see <a href="https://tetris.wiki/Scoring">Scoring</a>
+ *
+ * @author Mathieu Brunot
+ */
+public final class Attack {
+
+  /**
+   * No spin: the piece was locked after a move or a drop.
+   */
+  public static final int NO_SPIN = 0;
+  /**
+   * T-spin mini.
+   */
+  public static final int MINI_T_SPIN = 1;
+  /**
+   * T-spin.
+   */
+  public static final int T_SPIN = 2;
+  /**
+   * Number of kinds of spin.
+   */
+  private static final int SPINS = 3;
+  /**
+   * Number of line counts of a clear type, from none to a Tetris.
+   */
+  private static final int LINE_COUNTS = Tetromino.BLOCKS + 1;
+  /**
+   * Number of clear types.
+   */
+  public static final int CLEAR_TYPES = SPINS * LINE_COUNTS;
+
+  /**
+   * Scores by number of lines cleared, for each kind of spin, before the level multiplier.
+   */
+  private static final int[][] SPIN_SCORES =
+      {{0, 40, 100, 300, 1200}, {40, 80, 160, 0, 0}, {160, 320, 480, 640, 0}};
+  /**
+   * Lines sent by number of lines cleared, for each kind of spin.
+   */
+  private static final int[][] SPIN_LINES =
+      {{0, 0, 1, 2, 4}, {0, 0, 1, 0, 0}, {0, 2, 4, 6, 0}};
+  /**
+   * Lines sent on top of a difficult clear following another one.
+   */
+  private static final int BACK_TO_BACK_LINES = 1;
+  /**
+   * Lines sent by combo, the first clear of a chain being combo {@code 0}.
+   */
+  private static final int[] COMBO_LINES = {0, 1, 1, 2, 2, 3, 3, 4, 4, 4, 5};
+  /**
+   * Lines sent on top of a clear leaving the playfield empty.
+   */
+  public static final int PERFECT_CLEAR_LINES = 10;
+
+  /**
+   * Score of each clear type, before the level multiplier.
+   */
+  private static final int[] SCORES = new int[CLEAR_TYPES];
+  /**
+   * Lines sent by each clear type, indexed by {@code clearType << 1 | backToBack}.
+   */
+  private static final int[] LINES = new int[CLEAR_TYPES << 1];
+  /**
+   * Is each clear type difficult, maintaining the back-to-back chain, indexed by clear type:
+   * {@code 1} if difficult, {@code 0} if easy, breaking the chain, {@code -1} if no line is
+   * cleared, leaving the chain as is.
+   */
+  private static final int[] DIFFICULT = new int[CLEAR_TYPES];
+
+  static {
+    for (int spin = 0; spin < SPINS; spin++) {
+      for (int lines = 0; lines < LINE_COUNTS; lines++) {
+        int type = clearType(spin, lines);
+        SCORES[type] = SPIN_SCORES[spin][lines];
+        boolean difficult =
+            lines == Tetromino.BLOCKS || (spin != NO_SPIN && lines > 0);
+        DIFFICULT[type] = lines == 0 ? -1 : difficult ? 1 : 0;
+        LINES[type << 1] = SPIN_LINES[spin][lines];
+        LINES[type << 1 | 1] = SPIN_LINES[spin][lines]
+            + (difficult ? BACK_TO_BACK_LINES : 0);
+      }
+    }
+  }
+
+  /**
+   * Hidden constructor.
+   */
+  private Attack() {}
+
+  /**
+   * Get the clear type of a lock.
+   *
+   * @param spin the kind of spin, {@link #NO_SPIN}, {@link #MINI_T_SPIN} or {@link #T_SPIN}
+   * @param lines the number of lines cleared
+   * @return the clear type, between {@code 0} and {@link #CLEAR_TYPES}
+   */
+  public static int clearType(final int spin, final int lines) {
+    return spin * LINE_COUNTS + lines;
+  }
+
+  /**
+   * Get the score of a clear type, before the level multiplier.
+   *
+   * @param clearType the clear type
+   * @return the score
+   */
+  public static int score(final int clearType) {
+    return SCORES[clearType];
+  }
+
+  /**
+   * Get the lines of garbage sent by a clear, before the perfect clear bonus and cancelation.
+   *
+   * @param clearType the clear type
+   * @param backToBack {@code true} if the last clear was difficult
+   * @param combo the combo, {@code 0} for the first clear of a chain, negative if none
+   * @return the number of lines sent
+   */
+  public static int lines(final int clearType, final boolean backToBack,
+      final int combo) {
+    return LINES[clearType << 1 | (backToBack ? 1 : 0)]
+        + COMBO_LINES[Math.max(0, Math.min(combo, COMBO_LINES.length - 1))];
+  }
+
+  /**
+   * Is a clear type difficult, maintaining the back-to-back chain?
+   *
+   * @param clearType the clear type
+   * @return {@code 1} if difficult, {@code 0} if easy, breaking the chain, {@code -1} if no line is
+   *         cleared, leaving the chain as is
+   */
+  public static int difficulty(final int clearType) {
+    return DIFFICULT[clearType];
+  }
+}
@@ -0,0 +1,218 @@
+package org.fun.game.tetris;
+
+/**
+ * Dimensions of the playfield of a game.
+ *
+ * <p>
+ * The playfield is stored by the {@link Engine} as a bitboard: each row is made of
+ * {@link #getWordsPerRow()} {@code long} words, whose bit {@code x} is set if the cell at column
+ * {@code 64 * word + x} is occupied. The standard playfield, 10 columns wide, fits a single word
+ * per row, as any playfield up to 64 columns wide; wider ones span several words.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public final class Board {
+
+  /**
+   * Number of bits of a row word.
+   */
+  public static final int WORD_BITS = Long.SIZE;
+  /**
+   * Number of rows between the danger zone and the ceiling.
+   */
+  public static final int DANGER_ZONE_DEPTH = 4;
+  /**
+   * Number of hidden rows above the ceiling of a board parsed without them.
+   */
+  private static final int HIDDEN_ROWS = 2;
+  /**
+   * Minimum width or ceiling height, for pieces to spawn.
+   */
+  private static final int MIN_SIZE = Tetromino.BLOCKS;
+  /**
+   * Maximum width or height.
+   */
+  private static final int MAX_SIZE = 1024;
+
+  /**
+   * The standard 10 columns wide playfield, with 20 visible rows.
+   */
+  public static final Board STANDARD = new Board(10, 22, 20);
+
+  /**
+   * Playfield width.
+   */
+  private final int width;
+  /**
+   * Playfield height.
+   *
+   * <p>
+   * The space between the ceiling and the board height is invisible yet usable.
+   * </p>
+   */
+  private final int height;
+  /**
+   * Playfield ceiling height.
+   *
+   * <p>
+   * Rows above the ceiling are hidden or obstructed by the field frame.
+   * </p>
+   */
+  private final int ceiling;
+  /**
+   * Number of {@code long} words of a row.
+   */
+  private final int wordsPerRow;
+  /**
+   * Bit masks of the words of a full row.
+   */
+  private final long[] fullWords;
+
+  /**
+   * Create the dimensions of a playfield.
+   *
+   * @param columns the number of columns
+   * @param rows the number of rows, hidden ones included
+   * @param visibleRows the number of visible rows, below the ceiling
+   * @throws IllegalArgumentException if the dimensions are out of range
+   */
+  public Board(final int columns, final int rows, final int visibleRows) {
+    if (columns < MIN_SIZE || columns > MAX_SIZE || visibleRows < MIN_SIZE
+        || visibleRows > rows || rows > MAX_SIZE) {
+      throw new IllegalArgumentException("Invalid board " + columns + "x"
+          + rows + " with ceiling " + visibleRows);
+    }
+    this.width = columns;
+    this.height = rows;
+    this.ceiling = visibleRows;
+    this.wordsPerRow = (columns + WORD_BITS - 1) / WORD_BITS;
+    this.fullWords = new long[wordsPerRow];
+    for (int w = 0; w < wordsPerRow; w++) {
+      int bits = Math.min(WORD_BITS, columns - w * WORD_BITS);
+      fullWords[w] = bits == WORD_BITS ? -1L : (1L << bits) - 1;
+    }
+  }
+
+  /**
+   * Parse the dimensions of a playfield, {@code <columns>x<rows>}, the rows being visible and two
+   * hidden rows being added above them.
+   *
+   * @param dimensions the dimensions, e.g. {@code 10x20} for the standard playfield
+   * @return the playfield dimensions
+   * @throws IllegalArgumentException if the dimensions are invalid
+   */
+  public static Board parse(final String dimensions) {
+    String[] parts = dimensions.trim().split("[xX]");
+    if (parts.length != 2) {
+      throw new IllegalArgumentException("Invalid board " + dimensions);
+    }
+    int visibleRows = Integer.parseInt(parts[1]);
+    return new Board(Integer.parseInt(parts[0]), visibleRows + HIDDEN_ROWS,
+        visibleRows);
+  }
+
+  /**
+   * Get the playfield width.
+   *
+   * @return the number of columns
+   */
+  public int getWidth() {
+    return width;
+  }
+
+  /**
+   * Get the playfield height.
+   *
+   * @return the number of rows, hidden ones included
+   */
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * Get the playfield ceiling height.
+   *
+   * @return the number of visible rows
+   */
+  public int getCeiling() {
+    return ceiling;
+  }
+
+  /**
+   * Get the playfield danger zone: rows above it can trigger some alerts to the player.
+   *
+   * @return the first row of the danger zone
+   */
+  public int getDangerZone() {
+    return ceiling - DANGER_ZONE_DEPTH;
+  }
+
+  /**
+   * Get the number of {@code long} words of a row.
+   *
+   * @return the number of words
+   */
+  public int getWordsPerRow() {
+    return wordsPerRow;
+  }
+
+  /**
+   * Get the bit mask of a word of a full row.
+   *
+   * @param word the word index
+   * @return the bit mask of the occupied columns of the word
+   */
+  public long fullWord(final int word) {
+    return fullWords[word];
+  }
+
+  /**
+   * Get the {@code X} position of a new piece.
+   *
+   * @return the {@code X} position
+   */
+  public int getSpawnX() {
+    return width / 2 - 1;
+  }
+
+  /**
+   * Get the {@code Y} position of a new piece of the given shape.
+   *
+   * @param shape the shape of the new piece
+   * @return the {@code Y} position of the new piece, so that its upper blocks are just below the
+   *         ceiling
+   * @see #getSpawnX()
+   */
+  public int getSpawnY(final Tetromino.Shape shape) {
+    int minY = Integer.MAX_VALUE;
+    for (int i = 0; i < Tetromino.BLOCKS; ++i) {
+      minY = Math.min(minY, shape.y(i));
+    }
+    return ceiling - 1 + minY;
+  }
+
+  @Override
+  public int hashCode() {
+    return (width * 31 + height) * 31 + ceiling;
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof Board)) {
+      return false;
+    }
+    Board other = (Board) obj;
+    return width == other.width && height == other.height
+        && ceiling == other.ceiling;
+  }
+
+  @Override
+  public String toString() {
+    return width + "x" + ceiling + (height == ceiling + HIDDEN_ROWS ? ""
+        : "+" + (height - ceiling));
+  }
+}
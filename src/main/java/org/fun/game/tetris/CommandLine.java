@@ -0,0 +1,375 @@
+package org.fun.game.tetris;
+
+import java.net.InetSocketAddress;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Options of the command line.
+ *
+ * <p>
+ * The command line is a list of options, each one being an option name starting with
+ * {@code --}, followed by its value unless it is a flag. Options are parsed once and their values
+ * converted on demand: any unknown option, missing or invalid value is reported by a
+ * {@link UsageException} naming the option at fault, so that the entry point can print the usage
+ * instead of a stack trace.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public final class CommandLine {
+
+  /**
+   * Prefix of the option names.
+   */
+  private static final String OPTION_PREFIX = "--";
+  /**
+   * Highest port number.
+   */
+  private static final int MAX_PORT = 0xFFFF;
+
+  // Options shared by several tools
+  /**
+   * Command line option to let a bot play.
+   */
+  public static final String BOT_OPTION = "--bot";
+  /**
+   * Command line option to set the game mode.
+   */
+  public static final String MODE_OPTION = "--mode";
+  /**
+   * Command line option to set the playfield dimensions.
+   *
+   * @see Board#parse(String)
+   */
+  public static final String BOARD_OPTION = "--board";
+  /**
+   * Command line option to set the start level.
+   */
+  public static final String LEVEL_OPTION = "--level";
+  /**
+   * Command line option to set the seed of the first game.
+   */
+  public static final String SEED_OPTION = "--seed";
+  /**
+   * Command line option to set the number of pieces ending a headless game.
+   */
+  public static final String MAX_PIECES_OPTION = "--max-pieces";
+  /**
+   * Command line option to set the number of threads.
+   */
+  public static final String THREADS_OPTION = "--threads";
+  /**
+   * Command line option to set the number of seconds played.
+   */
+  public static final String SECONDS_OPTION = "--seconds";
+  /**
+   * Command line option to set the high score store.
+   */
+  public static final String SCORES_OPTION = "--scores";
+  /**
+   * Options shared by several tools.
+   */
+  public static final List<String> SHARED_OPTIONS = Collections.unmodifiableList(
+      Arrays.asList(BOT_OPTION, MODE_OPTION, BOARD_OPTION, LEVEL_OPTION,
+          SEED_OPTION, MAX_PIECES_OPTION, THREADS_OPTION, SECONDS_OPTION,
+          SCORES_OPTION));
+
+  /**
+   * Value of each option given, {@code null} for an option given without value.
+   */
+  private final Map<String, String> values = new HashMap<>();
+
+  /**
+   * Parse a command line.
+   *
+   * @param args the command line arguments
+   * @param options the names of the options accepted
+   * @throws UsageException if an argument is not an accepted option or the value of one
+   */
+  public CommandLine(final String[] args, final Collection<String> options) {
+    for (int i = 0; i < args.length; i++) {
+      if (!options.contains(args[i])) {
+        throw new UsageException(args[i].startsWith(OPTION_PREFIX)
+            ? "Unknown option " + args[i] : "Unexpected argument " + args[i]);
+      }
+      boolean hasValue =
+          i + 1 < args.length && !args[i + 1].startsWith(OPTION_PREFIX);
+      values.put(args[i], hasValue ? args[++i] : null);
+    }
+  }
+
+  // #########################################################################
+  /**
+   * Get the number of threads option, all the processors by default.
+   *
+   * @return the number of threads
+   * @throws UsageException if the value is missing or not an integer
+   */
+  public int getThreads() {
+    return getInt(THREADS_OPTION, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Is an option given?
+   *
+   * @param option the option name
+   * @return {@code true} if the option is given, with or without value
+   */
+  public boolean has(final String option) {
+    return values.containsKey(option);
+  }
+
+  /**
+   * Get the value of an option.
+   *
+   * @param option the option name
+   * @return the value, {@code null} if the option is not given
+   * @throws UsageException if the option is given without value
+   */
+  public String getString(final String option) {
+    String value = values.get(option);
+    if (value == null && has(option)) {
+      throw new UsageException("Missing value of " + option);
+    }
+    return value;
+  }
+
+  /**
+   * Get the value of an integer option.
+   *
+   * @param option the option name
+   * @param defaultValue the value if the option is not given
+   * @return the value
+   * @throws UsageException if the value is missing or not an integer
+   */
+  public int getInt(final String option, final int defaultValue) {
+    String value = getString(option);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException ex) {
+      throw invalid(option, value, "an integer");
+    }
+  }
+
+  /**
+   * Get the value of a long integer option.
+   *
+   * @param option the option name
+   * @param defaultValue the value if the option is not given
+   * @return the value
+   * @throws UsageException if the value is missing or not an integer
+   */
+  public long getLong(final String option, final long defaultValue) {
+    String value = getString(option);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException ex) {
+      throw invalid(option, value, "an integer");
+    }
+  }
+
+  /**
+   * Get the value of a comma separated list of long integers option.
+   *
+   * @param option the option name
+   * @return the values, {@code null} if the option is not given
+   * @throws UsageException if the value is missing or not a list of integers
+   */
+  public long[] getLongs(final String option) {
+    String value = getString(option);
+    if (value == null) {
+      return null;
+    }
+    try {
+      return Arrays.stream(value.split(","))
+          .mapToLong(item -> Long.parseLong(item.trim())).toArray();
+    } catch (NumberFormatException ex) {
+      throw invalid(option, value, "a comma separated list of integers");
+    }
+  }
+
+  /**
+   * Get the value of a decimal number option.
+   *
+   * @param option the option name
+   * @param defaultValue the value if the option is not given
+   * @return the value
+   * @throws UsageException if the value is missing or not a number
+   */
+  public double getDouble(final String option, final double defaultValue) {
+    String value = getString(option);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Double.parseDouble(value.trim());
+    } catch (NumberFormatException ex) {
+      throw invalid(option, value, "a number");
+    }
+  }
+
+  /**
+   * Get the value of a file option.
+   *
+   * @param option the option name
+   * @return the file, {@code null} if the option is not given
+   * @throws UsageException if the value is missing or not a valid path
+   */
+  public Path getPath(final String option) {
+    String value = getString(option);
+    if (value == null) {
+      return null;
+    }
+    try {
+      return Paths.get(value);
+    } catch (InvalidPathException ex) {
+      throw invalid(option, value, "a file");
+    }
+  }
+
+  /**
+   * Get the value of an enumerated option, case insensitive.
+   *
+   * @param <E> the enumeration type
+   * @param option the option name
+   * @param type the enumeration class
+   * @param flagValue the value if the option is given without value, {@code null} if a value is
+   *        needed
+   * @return the value, {@code null} if the option is not given
+   * @throws UsageException if the value is missing or not a constant of the enumeration
+   */
+  public <E extends Enum<E>> E getEnum(final String option,
+      final Class<E> type, final E flagValue) {
+    if (flagValue != null && has(option) && values.get(option) == null) {
+      return flagValue;
+    }
+    String value = getString(option);
+    if (value == null) {
+      return null;
+    }
+    try {
+      return Enum.valueOf(type, value.trim().toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException ex) {
+      throw invalid(option, value,
+          "one of " + Arrays.toString(type.getEnumConstants()));
+    }
+  }
+
+  /**
+   * Get the value of a playfield dimensions option.
+   *
+   * @param option the option name
+   * @return the playfield dimensions, {@code null} if the option is not given
+   * @throws UsageException if the value is missing or not valid dimensions
+   * @see Board#parse(String)
+   */
+  public Board getBoard(final String option) {
+    String value = getString(option);
+    if (value == null) {
+      return null;
+    }
+    try {
+      return Board.parse(value);
+    } catch (IllegalArgumentException ex) {
+      throw invalid(option, value, "<columns>x<rows>");
+    }
+  }
+
+  /**
+   * Get the value of a playfield dimensions option, where a bot may play.
+   *
+   * @param option the option name
+   * @param botPlaying {@code true} if a bot plays on the playfield, which must then be the
+   *        {@link Board#STANDARD standard playfield}
+   * @return the playfield dimensions, {@code null} if the option is not given
+   * @throws UsageException if the value is missing or not valid dimensions, or not the standard
+   *         playfield while a bot plays
+   * @see #getBoard(String)
+   */
+  public Board getBoard(final String option, final boolean botPlaying) {
+    Board board = getBoard(option);
+    if (botPlaying && board != null && !Board.STANDARD.equals(board)) {
+      throw invalid(option, getString(option), Board.STANDARD + " for a bot");
+    }
+    return board;
+  }
+
+  /**
+   * Get the value of a socket address option, {@code [<host>:]<port>}.
+   *
+   * @param option the option name
+   * @param defaultHost the host if the value is only a port
+   * @return the socket address, {@code null} if the option is not given
+   * @throws UsageException if the value is missing or not a valid address
+   */
+  public InetSocketAddress getAddress(final String option,
+      final String defaultHost) {
+    String value = getString(option);
+    if (value == null) {
+      return null;
+    }
+    int separator = value.lastIndexOf(':');
+    String host = separator < 0 ? defaultHost : value.substring(0, separator);
+    try {
+      int port = Integer.parseInt(value.substring(separator + 1).trim());
+      if (host.isEmpty() || port < 0 || port > MAX_PORT) {
+        throw invalid(option, value, "[<host>:]<port>");
+      }
+      return new InetSocketAddress(host, port);
+    } catch (NumberFormatException ex) {
+      throw invalid(option, value, "[<host>:]<port>");
+    }
+  }
+
+  /**
+   * Create the error of an invalid option value.
+   *
+   * @param option the option name
+   * @param value the invalid value
+   * @param expected the description of the values expected
+   * @return the usage error
+   */
+  private static UsageException invalid(final String option,
+      final String value, final String expected) {
+    return new UsageException(
+        "Invalid value of " + option + ": " + value + ", expected " + expected);
+  }
+
+  // #########################################################################
+  /**
+   * Error of a command line not as expected.
+   *
+   * @author Mathieu Brunot
+   */
+  public static final class UsageException extends IllegalArgumentException {
+
+    /**
+     * Serial version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Create a usage error.
+     *
+     * @param message the description of the error
+     */
+    public UsageException(final String message) {
+      super(message);
+    }
+  }
+}
@@ -0,0 +1,79 @@
+package org.fun.game.tetris;
+
+/**
+ * A controller drives the falling piece of an {@link Engine}.
+ *
+ * <p>
+ * The engine polls its controller once per frame for the inputs currently pressed and reacts to
+ * their transitions the same way it would to a player pressing and releasing keys: a shift moves
+ * the piece when pressed and auto-repeats while held, a hard drop happens when pressed, etc.
+ * Keyboards, replays and bots all drive the engine through this interface.
+ * </p>
+ *
+ * <p>
+ * Inputs are encoded as a bit mask of the {@code int} constants of this interface.
+ * </p>
+ *
+ * @see Engine#tick()
+ *
+ * @author Mathieu Brunot
+ */
+@FunctionalInterface
+public interface Controller {
+
+  /**
+   * No input pressed.
+   */
+  int NONE = 0;
+  /**
+   * Hold input.
+   *
+   * @see <a href="http://tetris.wikia.com/wiki/Hold_piece">Hold piece</a>
+   */
+  int HOLD = 1;
+  /**
+   * Shift left input.
+   */
+  int SHIFT_LEFT = 1 << 1;
+  /**
+   * Shift right input.
+   */
+  int SHIFT_RIGHT = 1 << 2;
+  /**
+   * Soft drop input.
+   *
+   * @see <a href="http://tetris.wikia.com/wiki/Drop">Drop</a>
+   */
+  int SOFT_DROP = 1 << 3;
+  /**
+   * Hard drop input.
+   *
+   * @see <a href="http://tetris.wikia.com/wiki/Drop">Drop</a>
+   */
+  int HARD_DROP = 1 << 4;
+  /**
+   * Rotate left input.
+   *
+   * @see <a href="http://tetris.wikia.com/wiki/Rotate">Rotate</a>
+   */
+  int ROTATE_LEFT = 1 << 5;
+  /**
+   * Rotate right input.
+   *
+   * @see <a href="http://tetris.wikia.com/wiki/Rotate">Rotate</a>
+   */
+  int ROTATE_RIGHT = 1 << 6;
+  /**
+   * All inputs.
+   */
+  int ALL = HOLD | SHIFT_LEFT | SHIFT_RIGHT | SOFT_DROP | HARD_DROP
+      | ROTATE_LEFT | ROTATE_RIGHT;
+
+  /**
+   * Poll the inputs currently pressed.
+   *
+   * @param engine the engine about to compute a frame
+   * @return the bit mask of the inputs currently pressed
+   */
+  int poll(Engine engine);
+}
@@ -0,0 +1,2101 @@
+package org.fun.game.tetris;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The engine applies the rules of Tetris to a {@link #playfield}.
+ *
+ * <p>
+ * The engine has no user interface and no clock: each call to {@link #tick()} computes one frame,
+ * after polling its {@link Controller} for the inputs currently pressed. The {@link Tetrion} ticks
+ * its engine at a fixed frame rate and draws it, while bots and simulations can tick an engine as
+ * fast as they want.
+ * </p>
+ *
+ * <p>
+ * An engine is not thread-safe and should only be used by a single thread at a time.
+ * </p>
+ *
+ * @author Jan Bodnar
+ * @author Mathieu Brunot
+ *
+ * @see Tetrion
+ * @see Controller
+ * @see <a href="http://tetris.wikia.com/wiki/Playfield">Playfield</a>
+ * @see <a href="http://tetris.wikia.com/wiki/Tetris_Guideline">Tetris Guideline</a>
+ */
+public class Engine {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOGGER = Logger.getLogger(Engine.class.getName());
+
+  /**
+   * Fixed frame rate per second.
+   */
+  public static final int FRAME_PER_SECOND = 60;
+
+  /**
+   * Number of lines needed to upgrade level.
+   */
+  private static final int LEVEL_RATIO = 10;
+  /**
+   * Ratio applied to "gravity" on manual soft drop.
+   */
+  private static final int SOFT_DROP_RATIO = 20;
+  /**
+   * Fixed-point gravity of one cell per frame.
+   *
+   * <p>
+   * Gravity is computed in fixed-point, 16 bits after the point, so that the frames computed do
+   * not depend on floating-point rounding and are the same on every platform.
+   * </p>
+   */
+  public static final int GRAVITY_ONE = 1 << 16;
+
+  /**
+   * Maximum gravity, in cells per frame: the piece reaches the floor instantly ("<em>20G</em>").
+   */
+  private static final int MAX_GRAVITY = 20;
+
+  /**
+   * The shapes' Queue size.
+   */
+  public static final int SHAPES_QUEUE_SIZE = Tetromino.Shape.values().length;
+
+  /**
+   * Delayed Auto Shift or autorepeat refers to the behavior of most falling block puzzle games when
+   * the player holds the leftKey or rightKey key.
+   *
+   * <p>
+   * The game will shift the falling piece sideways, wait, and then shift it repeatedly if the
+   * player continues to holdKey the key.
+   * </p>
+   *
+   * @see <a href="http://tetris.wikia.com/wiki/DAS">Delayed Auto Shift</a>
+   */
+  private static final long AUTO_SHIFT_DELAY = 11;
+  /**
+   * Delayed Auto Shift period.
+   *
+   * @see #AUTO_SHIFT_DELAY
+   *
+   * @see <a href="http://tetris.wikia.com/wiki/DAS">Delayed Auto Shift</a>
+   */
+  private static final long AUTO_SHIFT_PERIOD = 6;
+
+  /**
+   * Maximum number of garbage attacks pending, each one with its own hole column.
+   *
+   * @see #addGarbage(int)
+   */
+  public static final int GARBAGE_QUEUE_SIZE = 8;
+  /**
+   * Maximum number of garbage lines inserted on each lock.
+   */
+  private static final int GARBAGE_PER_LOCK = 8;
+  /**
+   * A "<em>Tetris</em>" is when the player clears 4 lines at once.
+   */
+  private static final int TETRIS = Tetromino.BLOCKS;
+
+  /**
+   * Listener of the engine events.
+   *
+   * <p>
+   * All events are notified on the thread ticking the engine.
+   * </p>
+   *
+   * @author Mathieu Brunot
+   */
+  public interface Listener {
+
+    /**
+     * The falling piece moved, rotated or was replaced.
+     *
+     * @param engine the engine
+     */
+    default void pieceMoved(Engine engine) {}
+
+    /**
+     * The falling piece was locked into the stack.
+     *
+     * @param engine the engine
+     * @param removedLines the number of full lines removed
+     */
+    default void pieceLocked(Engine engine, int removedLines) {}
+
+    /**
+     * The falling piece was locked with a T-spin, just before {@link #pieceLocked(Engine, int)}.
+     *
+     * @param engine the engine
+     * @param spin the kind of spin, {@link Attack#MINI_T_SPIN} or {@link Attack#T_SPIN}
+     * @param removedLines the number of full lines removed
+     * @see Spin
+     */
+    default void tSpin(Engine engine, int spin, int removedLines) {}
+
+    /**
+     * Lines of garbage were sent to the opponents, after canceling the garbage pending.
+     *
+     * @param engine the engine
+     * @param sentLines the number of lines sent
+     * @see Engine#addGarbage(int)
+     */
+    default void linesSent(Engine engine, int sentLines) {}
+
+    /**
+     * The hold piece or its availability changed.
+     *
+     * @param engine the engine
+     */
+    default void holdChanged(Engine engine) {}
+
+    /**
+     * The next shapes queue changed.
+     *
+     * @param engine the engine
+     */
+    default void nextShapesChanged(Engine engine) {}
+
+    /**
+     * The game is over.
+     *
+     * @param engine the engine
+     */
+    default void gameOver(Engine engine) {}
+  }
+
+  /**
+   * Has the game started?
+   */
+  private boolean started = false;
+
+  /**
+   * Number of frames since the last drop occurred.
+   *
+   * @see #tick()
+   */
+  private int framesSinceLastDrop = 0;
+  /**
+   * Number of frames the user kept asking for soft drops.
+   *
+   * @see #tick()
+   */
+  private int framesContinouslySoftDropped = -1;
+  /**
+   * Number of frames computed since the game started.
+   */
+  private long frames = 0;
+  /**
+   * Number of pieces locked since the game started.
+   */
+  private int pieces = 0;
+  /**
+   * Seed of the shapes generator of the game.
+   */
+  private long seed = 0;
+
+  // Score, level and "speed"
+  /**
+   * Number of lines cleared.
+   */
+  private int lines = 0;
+  /**
+   * Score.
+   */
+  private long score = 0;
+  /**
+   * Level.
+   */
+  private int level = 0;
+  /**
+   * Level the game started at.
+   */
+  private int startLevel = 0;
+  /**
+   * Current Gravity force.
+   *
+   * @see <a href="http://tetris.wikia.com/wiki/Gravity">Gravity</a>
+   * @see <a href="http://tetris.wikia.com/wiki/Drop#Gravity">Drop Gravity</a>
+   */
+  private int gravity = GRAVITY_ONE / FRAME_PER_SECOND;
+
+  // Versus
+  /**
+   * Number of consecutive pieces clearing lines, minus one: {@code -1} if the last piece cleared
+   * none.
+   *
+   * @see Attack#lines(int, boolean, int)
+   */
+  private int combo = -1;
+  /**
+   * Was the last clear difficult, the next difficult one getting the back-to-back bonus?
+   *
+   * @see Attack#difficulty(int)
+   */
+  private boolean backToBack = false;
+  /**
+   * Kick of the last move of the falling piece, {@link Spin#NOT_ROTATED} if it was not a rotation.
+   *
+   * @see Spin#spin(int, int, int)
+   */
+  private int lastKick = Spin.NOT_ROTATED;
+  /**
+   * Lines of the garbage attacks pending, oldest first.
+   *
+   * @see #addGarbage(int)
+   */
+  private final int[] pendingGarbage = new int[GARBAGE_QUEUE_SIZE];
+  /**
+   * Number of garbage attacks pending.
+   */
+  private int pendingAttacks = 0;
+  /**
+   * Number of garbage attacks inserted, from which their hole column is drawn.
+   */
+  private int garbageAttacks = 0;
+  /**
+   * Number of lines of garbage sent.
+   */
+  private int linesSent = 0;
+  /**
+   * Number of lines of garbage inserted into the playfield.
+   */
+  private int garbageReceived = 0;
+
+  // Pieces and position
+  /**
+   * Falling {@link Tetromino} current {@code X} position.
+   *
+   * @see #fallingPiece
+   */
+  private int curX = 0;
+  /**
+   * Falling {@link Tetromino} current {@code Y} position.
+   *
+   * @see #fallingPiece
+   */
+  private int curY = 0;
+  /**
+   * Falling {@link Tetromino}.
+   */
+  private Tetromino fallingPiece;
+  /**
+   * The held piece.
+   *
+   * @see #holdPiece()
+   * @see <a href="http://tetris.wikia.com/wiki/Hold_piece">Hold piece</a>
+   */
+  private final Tetromino holdPiece;
+  /**
+   * Is hold piece available yet?
+   *
+   * @see #holdPiece
+   * @see #holdPiece()
+   */
+  private boolean holdPieceAvailable = false;
+  /**
+   * Is the stack inside the danger zone?
+   *
+   * @see Board#getDangerZone()
+   * @see #pieceDropped()
+   */
+  private boolean insideDangerZone = false;
+  /**
+   * Dimensions of the playfield.
+   */
+  private Board board;
+  /**
+   * Playfield width.
+   */
+  private int width;
+  /**
+   * Playfield height.
+   */
+  private int height;
+  /**
+   * Number of words of a row of the {@link #rows}.
+   */
+  private int words;
+  /**
+   * This is where the action is.
+   *
+   * <p>
+   * The playfield is the grid into which {@link Tetromino}es fall, also called the "well" (common
+   * in older games) or the "matrix" (especially in more recent Tetris brand games).
+   * </p>
+   */
+  private Tetromino.Shape[] playfield;
+  /**
+   * The playfield as a bitboard.
+   *
+   * <p>
+   * Each row of the {@link #playfield} is stored as {@link #words} {@code long} words, whose bit
+   * {@code x} is set if the cell at column {@code 64 * word + x} is occupied: a single word for
+   * playfields up to 64 columns wide. Collision tests only use this representation, the
+   * {@link #playfield} being kept for the shapes (i.e. colors) of the stack. Garbage cells are
+   * occupied without any shape.
+   * </p>
+   *
+   * @see Board#getWordsPerRow()
+   */
+  private long[] rows;
+  /**
+   * Zobrist hash of the {@link #rows}, updated on each lock and line clear.
+   *
+   * @see Zobrist
+   */
+  private long boardHash = 0;
+
+  /**
+   * Zobrist hash of the {@link #nextShapes}.
+   *
+   * @see Zobrist
+   */
+  private long queueHash = 0;
+
+  /**
+   * Shape generator.
+   *
+   * @see #nextShapes
+   * @see #newPiece()
+   */
+  private final Tetromino.Shape.RandomGenerator shapeGenerator;
+  /**
+   * Number of shapes kept in the {@link #nextShapes} queue.
+   */
+  private final int nextShapesSize;
+  /**
+   * Next shapes queue.
+   *
+   * <p>
+   * The queue is filled by the {@link #shapeGenerator} each time a shape is taken from it.
+   * </p>
+   */
+  private final ArrayDeque<Tetromino.Shape> nextShapes;
+
+  // Drop variables
+  /**
+   * Lock delay count.
+   *
+   * <p>
+   * Counts the number of frames between drop and lock of the falling piece.
+   * </p>
+   *
+   * @see #fallingPiece
+   * @see #lockDelay
+   */
+  private int lockDelayFrameCount = 0;
+  /**
+   * Is hard drop in progress?
+   *
+   * @see #hardDrop()
+   * @see <a href="http://tetris.wikia.com/wiki/Drop">Drop</a>
+   */
+  private boolean droppingHard;
+  /**
+   * Is soft drop in progress?
+   *
+   * @see #softDrop()
+   * @see <a href="http://tetris.wikia.com/wiki/Drop">Drop</a>
+   */
+  private boolean droppingSoft;
+
+  // Shift variables
+  /**
+   * Shift delay count.
+   *
+   * <p>
+   * Positive values counts frames between first shift and start of auto shift, negative value
+   * counts frames between each auto-shifts.
+   * </p>
+   *
+   * @see #AUTO_SHIFT_DELAY
+   * @see #AUTO_SHIFT_PERIOD
+   */
+  private int shiftDelayCount = 0;
+  /**
+   * Is left shift in progress?
+   */
+  private boolean shiftingLeft;
+  /**
+   * Is right shift in progress?
+   */
+  private boolean shiftingRight;
+
+  // Rotation variables
+  /**
+   * Count the rotations needed.
+   *
+   * <p>
+   * Negative value stands for left rotations, positive values stands for right rotations.
+   * </p>
+   */
+  private int rotationsNeeded = 0;
+  /**
+   * Is left rotation in progress?
+   *
+   * @see <a href="http://tetris.wikia.com/wiki/Rotate">Rotate</a>
+   */
+  private boolean rotatingLeft;
+  /**
+   * Is right rotation in progress?
+   *
+   * @see <a href="http://tetris.wikia.com/wiki/Rotate">Rotate</a>
+   */
+  private boolean rotatingRight;
+
+  // Behavior variables
+  /**
+   * Fixed-point ratio applied to {@link #gravity} on each {@link #level} up.
+   */
+  private int levelUpSpeedUpFactor;
+  /**
+   * Are wall kicks enabled?
+   *
+   * @see Tetrion.Mode#isWallKickEnabled()
+   * @see <a href="http://tetris.wikia.com/wiki/Wall_kick">Wall kick</a>
+   */
+  private boolean wallKickEnabled;
+  /**
+   * Are floor kicks enabled?
+   *
+   * @see Tetrion.Mode#isFloorKickEnabled()
+   * @see <a href="http://tetris.wikia.com/wiki/Floor_kick">Floor kick</a>
+   */
+  private boolean floorKickEnabled;
+  /**
+   * Lock delay refers to how many frames a {@link Tetromino} waits while on the ground before
+   * locking.
+   *
+   * @see Tetrion.Mode#getLockDelay()
+   * @see <a href="http://tetris.wikia.com/wiki/Lock_delay">Lock delay</a>
+   */
+  private long lockDelay;
+  /**
+   * Is infinity mode enabled?
+   *
+   * @see Tetrion.Mode#isInfiniteLockDelayEnabled()
+   * @see <a href="http://tetris.wikia.com/wiki/Infinity">Infinity</a>
+   */
+  private boolean infiniteLockDelayEnabled;
+  /**
+   * Current game mode.
+   */
+  private Tetrion.Mode mode;
+
+  // Inputs
+  /**
+   * Controller polled on each frame.
+   */
+  private Controller controller;
+  /**
+   * Inputs pressed on the previous frame.
+   *
+   * @see Controller
+   */
+  private int inputs = Controller.NONE;
+  /**
+   * Is the {@link #controller} being polled?
+   */
+  private boolean polling = false;
+  /**
+   * Shapes of the generator bag, when saving or restoring a state.
+   */
+  private final Tetromino.Shape[] bagShapes =
+      new Tetromino.Shape[EngineState.SHAPES.length];
+  /**
+   * Engine events listeners.
+   */
+  private Listener[] listeners = new Listener[0];
+
+  /**
+   * Default constructor.
+   */
+  public Engine() {
+    this(SHAPES_QUEUE_SIZE);
+  }
+
+  /**
+   * Constructor of an engine keeping a given number of next shapes.
+   *
+   * @param queueSize the number of next shapes to keep in queue
+   */
+  public Engine(final int queueSize) {
+    this(Board.STANDARD, queueSize);
+  }
+
+  /**
+   * Constructor of an engine of given playfield dimensions, keeping a given number of next shapes.
+   *
+   * @param playfieldBoard the playfield dimensions
+   * @param queueSize the number of next shapes to keep in queue
+   */
+  public Engine(final Board playfieldBoard, final int queueSize) {
+    this.fallingPiece = new Tetromino();
+    this.holdPiece = new Tetromino();
+    this.setBoard(playfieldBoard);
+    this.shapeGenerator = new Tetromino.Shape.RandomGenerator();
+    this.nextShapesSize = Math.max(1, queueSize);
+    this.nextShapes = new ArrayDeque<>(this.nextShapesSize);
+    this.setMode(null);
+  }
+
+  /**
+   * Set the playfield dimensions of the next games.
+   *
+   * @param newBoard the playfield dimensions, {@link Board#STANDARD} if {@code null}
+   * @throws IllegalStateException if a game is in progress
+   */
+  public final void setBoard(final Board newBoard) {
+    if (started) {
+      throw new IllegalStateException("Game in progress");
+    }
+    resize(newBoard == null ? Board.STANDARD : newBoard);
+  }
+
+  /**
+   * Change the playfield dimensions, emptying the playfield if they change.
+   *
+   * @param newBoard the playfield dimensions
+   */
+  private void resize(final Board newBoard) {
+    if (newBoard.equals(board)) {
+      return;
+    }
+    this.board = newBoard;
+    this.width = newBoard.getWidth();
+    this.height = newBoard.getHeight();
+    this.words = newBoard.getWordsPerRow();
+    this.playfield = new Tetromino.Shape[width * height];
+    this.rows = new long[height * words];
+    this.clear();
+  }
+
+  /**
+   * Get the playfield dimensions.
+   *
+   * @return the playfield dimensions
+   */
+  public final Board getBoard() {
+    return board;
+  }
+
+  /**
+   * Set the Tetris game configuration based on the given {@link Tetrion.Mode}.
+   *
+   * @param newMode <em>standard</em> configurations for the Tetris game, {@link Tetrion.Mode#MIX}
+   *        if {@code null}
+   */
+  public final void setMode(final Tetrion.Mode newMode) {
+    Tetrion.Mode actualMode = newMode == null ? Tetrion.Mode.MIX : newMode;
+    this.mode = actualMode;
+    this.levelUpSpeedUpFactor =
+        toFixedPoint(actualMode.getLevelUpSpeedUpRatio());
+    this.wallKickEnabled = actualMode.isWallKickEnabled();
+    this.floorKickEnabled = actualMode.isFloorKickEnabled();
+    this.lockDelay = actualMode.getLockDelay();
+    this.infiniteLockDelayEnabled = actualMode.isInfiniteLockDelayEnabled();
+  }
+
+  /**
+   * Get the current game mode.
+   *
+   * @return the current game mode
+   */
+  public final Tetrion.Mode getMode() {
+    return mode;
+  }
+
+  /**
+   * Get the controller polled on each frame.
+   *
+   * @return the controller, {@code null} if none
+   */
+  public final Controller getController() {
+    return controller;
+  }
+
+  /**
+   * Set the controller polled on each frame.
+   *
+   * @param newController the controller, {@code null} if none
+   */
+  public final void setController(final Controller newController) {
+    this.controller = newController;
+  }
+
+  /**
+   * Add a listener of the engine events.
+   *
+   * @param listener the listener to add
+   */
+  public final void addListener(final Listener listener) {
+    Listener[] newListeners = new Listener[listeners.length + 1];
+    System.arraycopy(listeners, 0, newListeners, 0, listeners.length);
+    newListeners[listeners.length] = listener;
+    this.listeners = newListeners;
+  }
+
+  /**
+   * Remove a listener of the engine events.
+   *
+   * @param listener the listener to remove
+   */
+  public final void removeListener(final Listener listener) {
+    for (int i = 0; i < listeners.length; i++) {
+      if (listeners[i] == listener) {
+        Listener[] newListeners = new Listener[listeners.length - 1];
+        System.arraycopy(listeners, 0, newListeners, 0, i);
+        System.arraycopy(listeners, i + 1, newListeners, i,
+            listeners.length - i - 1);
+        this.listeners = newListeners;
+        return;
+      }
+    }
+  }
+
+  // #########################################################################
+  /**
+   * Get the number of lines cleared.
+   *
+   * @return the number of lines cleared
+   */
+  public final int getLines() {
+    return lines;
+  }
+
+  /**
+   * Get the seed of the shapes generator of the game.
+   *
+   * @return the seed of the game
+   * @see #start(int, long)
+   */
+  public final long getSeed() {
+    return seed;
+  }
+
+  /**
+   * Get the number of pieces locked since the game started.
+   *
+   * @return the number of pieces locked
+   */
+  public final int getPieces() {
+    return pieces;
+  }
+
+  /**
+   * Get level.
+   *
+   * @return the level
+   */
+  public final int getLevel() {
+    return level;
+  }
+
+  /**
+   * Get the level the game started at.
+   *
+   * @return the start level
+   */
+  public final int getStartLevel() {
+    return startLevel;
+  }
+
+  /**
+   * Set the level.
+   *
+   * <p>
+   * Setting the level will automatically update the {@link #gravity}.
+   * </p>
+   *
+   * @see <a href="http://tetris.wikia.com/wiki/Gravity">Gravity</a>
+   * @see <a href="http://tetris.wikia.com/wiki/Drop#Gravity">Drop Gravity</a>
+   *
+   * @param newLevel the new level
+   */
+  protected void setLevel(final int newLevel) {
+    this.level = newLevel;
+    // Set up gravity (number of cell per frames)
+    this.gravity = gravity(this.levelUpSpeedUpFactor, this.level);
+    LOGGER.log(Level.FINE, "Level {0} ({1}G)",
+        new Object[] {this.level, getGravity()});
+  }
+
+  /**
+   * Get the current gravity, in cells per frame.
+   *
+   * @return the current gravity
+   */
+  public final double getGravity() {
+    return gravity / (double) GRAVITY_ONE;
+  }
+
+  /**
+   * Convert a ratio to fixed-point.
+   *
+   * @param ratio the ratio
+   * @return the fixed-point ratio
+   * @see #GRAVITY_ONE
+   */
+  public static int toFixedPoint(final double ratio) {
+    return (int) Math.round(ratio * GRAVITY_ONE);
+  }
+
+  /**
+   * Compute the fixed-point gravity of a level: one cell per second at level {@code 0}, sped up
+   * on each level up, up to 20 cells per frame.
+   *
+   * @param speedUpFactor the fixed-point ratio applied on each level up
+   * @param level the level
+   * @return the fixed-point gravity, in cells per frame
+   * @see #GRAVITY_ONE
+   */
+  public static int gravity(final int speedUpFactor, final int level) {
+    final long ceiling = (long) MAX_GRAVITY * GRAVITY_ONE;
+    long g = GRAVITY_ONE / FRAME_PER_SECOND;
+    for (int i = 0; i < level && g < ceiling; i++) {
+      g = (g * speedUpFactor + GRAVITY_ONE / 2) / GRAVITY_ONE;
+    }
+    return (int) Math.min(ceiling, g);
+  }
+
+  /**
+   * Get the score.
+   *
+   * @return the score
+   */
+  public final long getScore() {
+    return score;
+  }
+
+  /**
+   * Get the combo: the number of consecutive pieces clearing lines, minus one.
+   *
+   * @return the combo, {@code -1} if the last piece cleared no lines
+   */
+  public final int getCombo() {
+    return combo;
+  }
+
+  /**
+   * Is the next difficult clear getting the back-to-back bonus?
+   *
+   * @return {@code true} if the last clear was difficult
+   */
+  public final boolean isBackToBack() {
+    return backToBack;
+  }
+
+  /**
+   * Get the number of lines of garbage pending, inserted when the next pieces lock without
+   * clearing lines.
+   *
+   * @return the number of lines
+   */
+  public final int getPendingGarbage() {
+    int pending = 0;
+    for (int i = 0; i < pendingAttacks; i++) {
+      pending += pendingGarbage[i];
+    }
+    return pending;
+  }
+
+  /**
+   * Get the number of lines of garbage sent to the opponents.
+   *
+   * @return the number of lines
+   */
+  public final int getLinesSent() {
+    return linesSent;
+  }
+
+  /**
+   * Get the number of lines of garbage inserted into the playfield.
+   *
+   * @return the number of lines
+   */
+  public final int getGarbageReceived() {
+    return garbageReceived;
+  }
+
+  /**
+   * Get the number of frames computed since the game started.
+   *
+   * @return the number of frames computed
+   */
+  public final long getFrames() {
+    return frames;
+  }
+
+  /**
+   * Is the stack inside the danger zone?
+   *
+   * @see Board#getDangerZone()
+   *
+   * @return {@code true} if the stack inside the danger zone
+   */
+  public final boolean isInsideDangerZone() {
+    return insideDangerZone;
+  }
+
+  /**
+   * Has the game started?
+   *
+   * @return {@code true} if the game has started and is not over yet
+   */
+  public final boolean isStarted() {
+    return started;
+  }
+
+  /**
+   * Is hard drop in progress?
+   *
+   * @return {@code true} if hard drop in progress
+   */
+  public final boolean isDroppingHard() {
+    return droppingHard;
+  }
+
+  /**
+   * Is soft drop in progress?
+   *
+   * @return {@code true} if soft drop in progress
+   */
+  public final boolean isDroppingSoft() {
+    return droppingSoft;
+  }
+
+  /**
+   * Is left shift in progress?
+   *
+   * @return {@code true} if left shift in progress
+   */
+  public final boolean isShiftingLeft() {
+    return shiftingLeft;
+  }
+
+  /**
+   * Is right shift in progress?
+   *
+   * @return {@code true} if right shift in progress
+   */
+  public final boolean isShiftingRight() {
+    return shiftingRight;
+  }
+
+  /**
+   * Is left rotation in progress?
+   *
+   * @return {@code true} if left rotation in progress
+   */
+  public final boolean isRotatingLeft() {
+    return rotatingLeft;
+  }
+
+  /**
+   * Is right rotation in progress?
+   *
+   * @return {@code true} if right rotation in progress
+   */
+  public final boolean isRotatingRight() {
+    return rotatingRight;
+  }
+
+  /**
+   * Get the inputs pressed on the last frame.
+   *
+   * @return the bit mask of the inputs pressed on the last frame
+   * @see Controller
+   */
+  public final int getInputs() {
+    return inputs;
+  }
+
+  /**
+   * Get the falling piece.
+   *
+   * @return the falling piece, whose shape is {@code null} if none
+   */
+  public final Tetromino getFallingPiece() {
+    return fallingPiece;
+  }
+
+  /**
+   * Get the falling piece {@code X} position.
+   *
+   * @return the falling piece {@code X} position
+   */
+  public final int getCurX() {
+    return curX;
+  }
+
+  /**
+   * Get the falling piece {@code Y} position.
+   *
+   * @return the falling piece {@code Y} position
+   */
+  public final int getCurY() {
+    return curY;
+  }
+
+  /**
+   * Get the hold piece.
+   *
+   * @return the hold piece, whose shape is {@code null} if none
+   */
+  public final Tetromino getHoldPiece() {
+    return holdPiece;
+  }
+
+  /**
+   * Is hold piece available yet?
+   *
+   * @return {@code true} if the hold piece can be switched with the falling piece
+   */
+  public final boolean isHoldPieceAvailable() {
+    return holdPieceAvailable;
+  }
+
+  /**
+   * Get an unmodifiable view of the next shapes queue.
+   *
+   * @return the next shapes, in order
+   */
+  public final Collection<Tetromino.Shape> getNextShapes() {
+    return Collections.unmodifiableCollection(nextShapes);
+  }
+
+  /**
+   * Get the shape at the given position in the {@link #playfield}.
+   *
+   * @param x the {@code X} position
+   * @param y the {@code Y} position
+   * @return the shape at the given position in the {@link #playfield}, {@code null} if none.
+   */
+  public final Tetromino.Shape shapeAt(final int x, final int y) {
+    return playfield[(y * width) + x];
+  }
+
+  /**
+   * Is a cell of the playfield occupied, by the stack or garbage?
+   *
+   * @param x the {@code X} position
+   * @param y the {@code Y} position
+   * @return {@code true} if the cell is occupied
+   */
+  public final boolean isOccupied(final int x, final int y) {
+    return (rows[y * words + (x >>> 6)] & (1L << x)) != 0;
+  }
+
+  /**
+   * Get the first word of a row of the playfield as a bit mask.
+   *
+   * @param y the row {@code Y} position
+   * @return the bit mask of the row, whose bit {@code x} is set if the cell at column {@code x} is
+   *         occupied
+   * @see Board#fullWord(int)
+   */
+  public final long rowAt(final int y) {
+    return rows[y * words];
+  }
+
+  /**
+   * Get a word of a row of the playfield as a bit mask.
+   *
+   * @param y the row {@code Y} position
+   * @param word the word index
+   * @return the bit mask of the word, whose bit {@code x} is set if the cell at column
+   *         {@code 64 * word + x} is occupied
+   * @see Board#getWordsPerRow()
+   */
+  public final long rowAt(final int y, final int word) {
+    return rows[y * words + word];
+  }
+
+  /**
+   * Copy the playfield bitboard of a playfield at most 32 columns wide, as used by the bots.
+   *
+   * @param dest the array receiving the rows of the playfield, up to its length
+   * @see #rowAt(int)
+   */
+  public final void copyRows(final int[] dest) {
+    for (int y = 0, n = Math.min(height, dest.length); y < n; y++) {
+      dest[y] = (int) rows[y * words];
+    }
+  }
+
+  /**
+   * Get the Zobrist hash of the playfield.
+   *
+   * <p>
+   * Only occupied cells are taken into account, not their shapes.
+   * </p>
+   *
+   * @return the hash of the playfield
+   * @see Zobrist#rows(long[], int)
+   */
+  public final long getBoardHash() {
+    return boardHash;
+  }
+
+  /**
+   * Get the Zobrist hash of the game state: playfield, falling piece, hold piece and next queue.
+   *
+   * @return the hash of the game state
+   * @see Zobrist
+   */
+  public final long getHash() {
+    return boardHash ^ queueHash
+        ^ Zobrist.piece(fallingPiece.getShape(), fallingPiece.getRotation(),
+            curX, curY)
+        ^ Zobrist.hold(holdPiece.getShape(), holdPieceAvailable);
+  }
+
+  /**
+   * Get the {@code Y} position the falling piece would be locked at if hard dropped.
+   *
+   * @return the drop target {@code Y} position
+   * @see <a href="http://tetris.wikia.com/wiki/Ghost_piece">Ghost piece</a>
+   */
+  public final int getDropY() {
+    int dropY = curY;
+    while (dropY > 0) {
+      if (!isMoveable(fallingPiece, curX, dropY - 1)) {
+        break;
+      }
+      --dropY;
+    }
+    return dropY;
+  }
+
+  // #########################################################################
+  /**
+   * Start the game at given level, with a random seed.
+   *
+   * @param startLevel the level of the game
+   */
+  public void start(final int startLevel) {
+    start(startLevel, ThreadLocalRandom.current().nextLong());
+  }
+
+  /**
+   * Start the game at given level, with the given seed.
+   *
+   * <p>
+   * Games started with the same seed get the same sequence of shapes. The inputs and their
+   * progress are reset as well, so that games started with the same level and seed, and polling the
+   * same inputs, compute the same frames. A game in progress is stopped first.
+   * </p>
+   *
+   * @param startLevel the level of the game
+   * @param gameSeed the seed of the shapes generator
+   */
+  public void start(final int startLevel, final long gameSeed) {
+    if (started) {
+      stop();
+    }
+    inputs = Controller.NONE;
+    droppingHard = false;
+    droppingSoft = false;
+    shiftingLeft = false;
+    shiftingRight = false;
+    shiftDelayCount = 0;
+    rotatingLeft = false;
+    rotatingRight = false;
+    rotationsNeeded = 0;
+    lockDelayFrameCount = 0;
+    framesSinceLastDrop = 0;
+    holdPieceAvailable = false;
+    insideDangerZone = false;
+    seed = gameSeed;
+    shapeGenerator.setSeed(gameSeed);
+    nextShapes.clear();
+    framesContinouslySoftDropped = -1;
+    frames = 0;
+    pieces = 0;
+    fallingPiece.setShape(null);
+    holdPiece.setShape(null);
+    lines = 0;
+    score = 0;
+    combo = -1;
+    backToBack = false;
+    lastKick = Spin.NOT_ROTATED;
+    pendingAttacks = 0;
+    garbageAttacks = 0;
+    linesSent = 0;
+    garbageReceived = 0;
+    this.startLevel = startLevel;
+    this.setLevel(startLevel);
+    this.clear();
+    this.fillNextShapes();
+    started = true;
+  }
+
+  /**
+   * Stop the game.
+   */
+  public void stop() {
+    fallingPiece.setShape(null);
+    holdPiece.setShape(null);
+    boolean wasStarted = started;
+    started = false;
+    if (wasStarted) {
+      for (Listener listener : listeners) {
+        listener.gameOver(this);
+      }
+    }
+  }
+
+  /**
+   * Add an attack of garbage lines sent by an opponent to the garbage pending.
+   *
+   * <p>
+   * The garbage pending is canceled by the next lines sent, and inserted at the bottom of the
+   * playfield, with a hole column per attack, when the next pieces lock without clearing lines.
+   * Attacks beyond {@link #GARBAGE_QUEUE_SIZE} are merged into the last one.
+   * </p>
+   *
+   * @param lines the number of lines of garbage
+   * @see Listener#linesSent(Engine, int)
+   */
+  public void addGarbage(final int lines) {
+    if (lines <= 0 || !started) {
+      return;
+    }
+    if (pendingAttacks == GARBAGE_QUEUE_SIZE) {
+      pendingGarbage[pendingAttacks - 1] += lines;
+    } else {
+      pendingGarbage[pendingAttacks++] = lines;
+    }
+  }
+
+  /**
+   * Save the state of the game.
+   *
+   * <p>
+   * When called while the {@link #controller} is polled, the state saved is the state before the
+   * frame being computed, so that a controller can save the state of each frame.
+   * </p>
+   *
+   * @param state the state receiving the state of the game
+   */
+  public void saveState(final EngineState state) {
+    state.frames = polling ? frames - 1 : frames;
+    state.seed = seed;
+    state.score = score;
+    state.pieces = pieces;
+    state.lines = lines;
+    state.level = level;
+    state.startLevel = startLevel;
+    state.flags = (started ? EngineState.STARTED : 0)
+        | (droppingHard ? EngineState.DROPPING_HARD : 0)
+        | (droppingSoft ? EngineState.DROPPING_SOFT : 0)
+        | (shiftingLeft ? EngineState.SHIFTING_LEFT : 0)
+        | (shiftingRight ? EngineState.SHIFTING_RIGHT : 0)
+        | (rotatingLeft ? EngineState.ROTATING_LEFT : 0)
+        | (rotatingRight ? EngineState.ROTATING_RIGHT : 0)
+        | (holdPieceAvailable ? EngineState.HOLD_AVAILABLE : 0)
+        | (insideDangerZone ? EngineState.DANGER_ZONE : 0)
+        | (backToBack ? EngineState.BACK_TO_BACK : 0)
+        | (lastKick + 1) << EngineState.LAST_KICK_SHIFT;
+    state.inputs = inputs;
+    state.curX = curX;
+    state.curY = curY;
+    state.fallingShape = ordinal(fallingPiece.getShape());
+    state.rotation = fallingPiece.getRotation();
+    state.holdShape = ordinal(holdPiece.getShape());
+    state.framesSinceLastDrop = framesSinceLastDrop;
+    state.framesContinouslySoftDropped = framesContinouslySoftDropped;
+    state.lockDelayFrameCount = lockDelayFrameCount;
+    state.shiftDelayCount = shiftDelayCount;
+    state.rotationsNeeded = rotationsNeeded;
+    state.combo = combo;
+    state.pendingAttacks = pendingAttacks;
+    System.arraycopy(pendingGarbage, 0, state.pendingGarbage, 0,
+        pendingAttacks);
+    state.garbageAttacks = garbageAttacks;
+    state.linesSent = linesSent;
+    state.garbageReceived = garbageReceived;
+    state.generatorState = shapeGenerator.getState();
+    state.bagSize = shapeGenerator.getBag(bagShapes);
+    for (int i = 0; i < state.bagSize; i++) {
+      state.bag[i] = ordinal(bagShapes[i]);
+    }
+    state.ensureQueueCapacity(nextShapes.size());
+    state.queueSize = 0;
+    for (Tetromino.Shape shape : nextShapes) {
+      state.queue[state.queueSize++] = ordinal(shape);
+    }
+    state.ensureBoard(board);
+    System.arraycopy(rows, 0, state.rows, 0, rows.length);
+    for (int i = 0; i < playfield.length; i++) {
+      state.cells[i] = ordinal(playfield[i]);
+    }
+  }
+
+  /**
+   * Restore a saved state of the game.
+   *
+   * <p>
+   * The engine must be in the same {@link Tetrion.Mode} as when the state was saved. Listeners are
+   * not notified.
+   * </p>
+   *
+   * @param state the state to restore, along with its playfield dimensions
+   */
+  public void restoreState(final EngineState state) {
+    resize(state.board);
+    frames = state.frames;
+    seed = state.seed;
+    score = state.score;
+    pieces = state.pieces;
+    lines = state.lines;
+    setLevel(state.level);
+    startLevel = state.startLevel;
+    started = (state.flags & EngineState.STARTED) != 0;
+    droppingHard = (state.flags & EngineState.DROPPING_HARD) != 0;
+    droppingSoft = (state.flags & EngineState.DROPPING_SOFT) != 0;
+    shiftingLeft = (state.flags & EngineState.SHIFTING_LEFT) != 0;
+    shiftingRight = (state.flags & EngineState.SHIFTING_RIGHT) != 0;
+    rotatingLeft = (state.flags & EngineState.ROTATING_LEFT) != 0;
+    rotatingRight = (state.flags & EngineState.ROTATING_RIGHT) != 0;
+    holdPieceAvailable = (state.flags & EngineState.HOLD_AVAILABLE) != 0;
+    insideDangerZone = (state.flags & EngineState.DANGER_ZONE) != 0;
+    backToBack = (state.flags & EngineState.BACK_TO_BACK) != 0;
+    lastKick = (state.flags >>> EngineState.LAST_KICK_SHIFT
+        & EngineState.LAST_KICK_MASK) - 1;
+    inputs = state.inputs;
+    curX = state.curX;
+    curY = state.curY;
+    fallingPiece.setShape(shape(state.fallingShape));
+    fallingPiece.setRotation(state.rotation);
+    holdPiece.setShape(shape(state.holdShape));
+    framesSinceLastDrop = state.framesSinceLastDrop;
+    framesContinouslySoftDropped = state.framesContinouslySoftDropped;
+    lockDelayFrameCount = state.lockDelayFrameCount;
+    shiftDelayCount = state.shiftDelayCount;
+    rotationsNeeded = state.rotationsNeeded;
+    combo = state.combo;
+    pendingAttacks = state.pendingAttacks;
+    System.arraycopy(state.pendingGarbage, 0, pendingGarbage, 0,
+        pendingAttacks);
+    garbageAttacks = state.garbageAttacks;
+    linesSent = state.linesSent;
+    garbageReceived = state.garbageReceived;
+    for (int i = 0; i < state.bagSize; i++) {
+      bagShapes[i] = shape(state.bag[i]);
+    }
+    shapeGenerator.setState(state.generatorState, bagShapes, state.bagSize);
+    nextShapes.clear();
+    for (int i = 0; i < state.queueSize; i++) {
+      nextShapes.addLast(shape(state.queue[i]));
+    }
+    fillNextShapes();
+    System.arraycopy(state.rows, 0, rows, 0, rows.length);
+    boardHash = Zobrist.rows(rows, words);
+    for (int i = 0; i < playfield.length; i++) {
+      playfield[i] = shape(state.cells[i]);
+    }
+  }
+
+  /**
+   * Get the ordinal of a shape in a state.
+   *
+   * @param shape the shape, may be {@code null}
+   * @return the ordinal, {@link EngineState#NO_SHAPE} if none
+   */
+  private static byte ordinal(final Tetromino.Shape shape) {
+    return shape == null ? EngineState.NO_SHAPE : (byte) shape.ordinal();
+  }
+
+  /**
+   * Get the shape of an ordinal in a state.
+   *
+   * @param ordinal the ordinal, {@link EngineState#NO_SHAPE} if none
+   * @return the shape, {@code null} if none
+   */
+  private static Tetromino.Shape shape(final byte ordinal) {
+    return ordinal == EngineState.NO_SHAPE ? null
+        : EngineState.SHAPES[ordinal];
+  }
+
+  /**
+   * Compute one frame.
+   *
+   * <p>
+   * The {@link #controller} is polled for the inputs pressed, then the falling piece is rotated,
+   * shifted, dropped by gravity and locked as needed.
+   * </p>
+   */
+  public void tick() {
+    if (!started) {
+      return;
+    }
+    frames++;
+    polling = true;
+    int newInputs =
+        controller == null ? Controller.NONE : controller.poll(this);
+    polling = false;
+    if (newInputs != inputs) {
+      handleInputs(newInputs & ~inputs, inputs & ~newInputs);
+      inputs = newInputs;
+      if (!started) {
+        return;
+      }
+    }
+
+    if (fallingPiece.getShape() == null) {
+      newPiece();
+    } else {
+      // Rotation
+      if (rotatingLeft && rotationsNeeded < 0) {
+        if (tryMove(fallingPiece.rotateLeft(), curX, curY)) {
+          rotationsNeeded = 0;
+        }
+      } else if (rotatingRight && rotationsNeeded > 0) {
+        if (tryMove(fallingPiece.rotateRight(), curX, curY)) {
+          rotationsNeeded = 0;
+        }
+      }
+
+      // Shift
+      if ((shiftingLeft || shiftingRight)
+          && ((shiftDelayCount >= 0 && shiftDelayCount++ >= AUTO_SHIFT_DELAY)
+              || (shiftDelayCount < 0
+                  && shiftDelayCount-- >= -AUTO_SHIFT_PERIOD))) {
+        if (shiftingLeft && tryMove(fallingPiece, curX - 1, curY)) {
+          shiftDelayCount = -1;
+        } else if (shiftingRight && tryMove(fallingPiece, curX + 1, curY)) {
+          shiftDelayCount = -1;
+        } else {
+          shiftDelayCount = 0;
+        }
+      }
+
+      // Gravity
+      this.framesSinceLastDrop++;
+      long cellsDown = (long) this.gravity * this.framesSinceLastDrop;
+      if (droppingSoft) {
+        cellsDown *= SOFT_DROP_RATIO;
+      }
+      boolean softDroppingWithoutLock = true;
+      while (cellsDown > GRAVITY_ONE && softDroppingWithoutLock) {
+        cellsDown -= GRAVITY_ONE;
+        softDroppingWithoutLock = softDrop();
+      }
+
+      // Lock
+      if (!softDroppingWithoutLock && lockDelayFrameCount++ >= lockDelay) {
+        pieceDropped();
+      }
+    }
+  }
+
+  /**
+   * Handle the inputs pressed and released since the previous frame.
+   *
+   * @param pressed the bit mask of the inputs pressed
+   * @param released the bit mask of the inputs released
+   */
+  private void handleInputs(final int pressed, final int released) {
+    // Releases
+    if ((released & Controller.SHIFT_LEFT) != 0) {
+      setShiftingLeft(false);
+    }
+    if ((released & Controller.SHIFT_RIGHT) != 0) {
+      setShiftingRight(false);
+    }
+    if ((released & Controller.SOFT_DROP) != 0) {
+      droppingSoft = false;
+    }
+    if ((released & Controller.HARD_DROP) != 0) {
+      droppingHard = false;
+    }
+    if ((released & Controller.ROTATE_LEFT) != 0) {
+      setRotatingLeft(false);
+    }
+    if ((released & Controller.ROTATE_RIGHT) != 0) {
+      setRotatingRight(false);
+    }
+
+    // Presses
+    if ((pressed & Controller.HOLD) != 0) {
+      holdPiece();
+    }
+    if ((pressed & Controller.SHIFT_LEFT) != 0) {
+      setShiftingLeft(true);
+      if (fallingPiece.getShape() != null) {
+        tryMove(fallingPiece, curX - 1, curY);
+      }
+    }
+    if ((pressed & Controller.SHIFT_RIGHT) != 0) {
+      setShiftingRight(true);
+      if (fallingPiece.getShape() != null) {
+        tryMove(fallingPiece, curX + 1, curY);
+      }
+    }
+    if ((pressed & Controller.SOFT_DROP) != 0) {
+      droppingSoft = true;
+      if (fallingPiece.getShape() != null) {
+        framesSinceLastDrop = 0;
+        framesContinouslySoftDropped = 0;
+      }
+    }
+    if ((pressed & Controller.ROTATE_LEFT) != 0) {
+      setRotatingLeft(true);
+    }
+    if ((pressed & Controller.ROTATE_RIGHT) != 0) {
+      setRotatingRight(true);
+    }
+    if ((pressed & Controller.HARD_DROP) != 0) {
+      droppingHard = true;
+      if (fallingPiece.getShape() != null) {
+        hardDrop();
+      }
+    }
+  }
+
+  /**
+   * Set left shift progress.
+   *
+   * <p>
+   * Resets {@link #shiftDelayCount} to {@code 0}.
+   * </p>
+   *
+   * @param leftShifting Is left shift in progress?
+   */
+  private void setShiftingLeft(final boolean leftShifting) {
+    this.shiftingLeft = leftShifting;
+    this.shiftDelayCount = 0;
+  }
+
+  /**
+   * Set right shift progress.
+   *
+   * <p>
+   * Resets {@link #shiftDelayCount} to {@code 0}.
+   * </p>
+   *
+   * @param rightShifting Is right shift in progress?
+   */
+  private void setShiftingRight(final boolean rightShifting) {
+    this.shiftingRight = rightShifting;
+    this.shiftDelayCount = 0;
+  }
+
+  /**
+   * Set left rotation progress.
+   *
+   * <p>
+   * Decrease {@link #rotationsNeeded} if {@code true}, resets to {@code 0} otherwise.
+   * </p>
+   *
+   * @param isRotatingLeft Is left rotation in progress?
+   */
+  private void setRotatingLeft(final boolean isRotatingLeft) {
+    this.rotatingLeft = isRotatingLeft;
+    if (rotatingLeft) {
+      rotationsNeeded--;
+    } else {
+      rotationsNeeded = 0;
+    }
+  }
+
+  /**
+   * Set right rotation progress.
+   *
+   * <p>
+   * Increase {@link #rotationsNeeded} if {@code true}, resets to {@code 0} otherwise.
+   * </p>
+   *
+   * @param isRotatingRight Is right rotation in progress?
+   */
+  private void setRotatingRight(final boolean isRotatingRight) {
+    this.rotatingRight = isRotatingRight;
+    if (rotatingRight) {
+      rotationsNeeded++;
+    } else {
+      rotationsNeeded = 0;
+    }
+  }
+
+  // #########################################################################
+  /**
+   * Clear the {@link #playfield}.
+   */
+  private void clear() {
+    Arrays.fill(playfield, null);
+    Arrays.fill(rows, 0);
+    boardHash = 0;
+  }
+
+  /**
+   * Fill the {@link #nextShapes} queue.
+   */
+  private void fillNextShapes() {
+    while (nextShapes.size() < nextShapesSize) {
+      nextShapes.addLast(shapeGenerator.nextShape());
+    }
+    queueHash = 0;
+    int index = 0;
+    for (Tetromino.Shape shape : nextShapes) {
+      queueHash ^= Zobrist.queue(index++, shape);
+    }
+  }
+
+  /**
+   * Hard drop.
+   *
+   * <p>
+   * Drop the falling piece until it reaches the stack or bottom of {@link #playfield}.
+   * </p>
+   *
+   * @see <a href="http://tetris.wikia.com/wiki/Drop">Drop</a>
+   */
+  private void hardDrop() {
+    int newY = curY;
+    int iniY = curY;
+    while (newY > 0) {
+      if (!tryMove(fallingPiece, curX, newY - 1)) {
+        break;
+      }
+      --newY;
+    }
+    // Count lines continuously hard dropped and add twice to score
+    if (droppingHard) {
+      this.score += 2 * (iniY - newY);
+    }
+
+    pieceDropped();
+  }
+
+  /**
+   * Soft drop.
+   *
+   * @see <a href="http://tetris.wikia.com/wiki/Drop">Drop</a>
+   *
+   * @return {@code true} if soft dropped occurred
+   */
+  private boolean softDrop() {
+    // Count lines continuously soft dropped and add to score
+    if (droppingSoft && framesContinouslySoftDropped >= 0) {
+      this.framesContinouslySoftDropped++;
+    }
+    if (!tryMove(fallingPiece, curX, curY - 1)) {
+      if (droppingSoft && framesContinouslySoftDropped >= 0) {
+        this.score += framesContinouslySoftDropped;
+      }
+      if (droppingSoft) {
+        this.framesContinouslySoftDropped = 0;
+      } else {
+        this.framesContinouslySoftDropped = -1;
+      }
+      return false;
+    }
+
+    this.framesSinceLastDrop = 0;
+    return true;
+  }
+
+  /**
+   * Lock the falling piece and add to the stack.
+   *
+   * <p>
+   * When a falling piece reaches the stack or bottom of the {@link #playfield}, the piece is itself
+   * added to the stack. A T piece locked right after a rotation may be a T-spin: see {@link Spin}.
+   * </p>
+   *
+   * @return the number of full lines removed
+   */
+  private int pieceDropped() {
+    int spin = Attack.NO_SPIN;
+    if (lastKick != Spin.NOT_ROTATED
+        && fallingPiece.getShape() == Tetromino.Shape.T) {
+      spin = Spin.spin(fallingPiece.getRotation(), lastKick, corners());
+    }
+    lastKick = Spin.NOT_ROTATED;
+
+    // Add piece to stack
+    for (int i = 0; i < Tetromino.BLOCKS; ++i) {
+      int x = curX + fallingPiece.x(i);
+      int y = curY - fallingPiece.y(i);
+      playfield[(y * width) + x] = fallingPiece.getShape();
+      int word = x >>> 6;
+      int index = y * words + word;
+      boardHash ^= Zobrist.row(y, word, rows[index]);
+      rows[index] |= 1L << x;
+      boardHash ^= Zobrist.row(y, word, rows[index]);
+    }
+    lockDelayFrameCount = 0;
+    framesSinceLastDrop = 0;
+    fallingPiece.setShape(null);
+    pieces++;
+
+    boolean holdChanged =
+        holdPieceAvailable != (holdPiece.getShape() != null);
+    holdPieceAvailable = holdPiece.getShape() != null;
+
+    int removedLines = removeFullLines();
+    int clearType = Attack.clearType(spin, removedLines);
+    if (removedLines > 0 || spin != Attack.NO_SPIN) {
+      lines += removedLines;
+      updateScoreFromFullLines(clearType, removedLines);
+    }
+    int sentLines = attack(clearType);
+    if (removedLines == 0) {
+      insertGarbage();
+    }
+
+    // Garbage included
+    insideDangerZone = false;
+    for (int i = Math.max(0, board.getDangerZone()) * words; i < rows.length
+        && !insideDangerZone; ++i) {
+      insideDangerZone = rows[i] != 0;
+    }
+
+    for (Listener listener : listeners) {
+      if (holdChanged) {
+        listener.holdChanged(this);
+      }
+      if (spin != Attack.NO_SPIN) {
+        listener.tSpin(this, spin, removedLines);
+      }
+      listener.pieceLocked(this, removedLines);
+      if (sentLines > 0) {
+        listener.linesSent(this, sentLines);
+      }
+    }
+
+    return removedLines;
+  }
+
+  /**
+   * Get the corners of the center of the falling piece occupied, walls and floor included.
+   *
+   * @return the mask of the occupied corners
+   * @see Spin#cornerX(int)
+   * @see Spin#cornerY(int)
+   */
+  private int corners() {
+    int corners = 0;
+    for (int c = 0; c < Spin.CORNERS; c++) {
+      int x = curX + Spin.cornerX(c);
+      int y = curY + Spin.cornerY(c);
+      if (x < 0 || x >= width || y < 0 || y >= height
+          || (rows[y * words + (x >>> 6)] & (1L << x)) != 0) {
+        corners |= 1 << c;
+      }
+    }
+    return corners;
+  }
+
+  /**
+   * Update the combo and back-to-back chain of a lock, and compute the lines of garbage it sends,
+   * canceling the garbage pending first.
+   *
+   * @param clearType the clear type of the lock
+   * @return the number of lines sent to the opponents
+   * @see Attack
+   */
+  private int attack(final int clearType) {
+    int difficulty = Attack.difficulty(clearType);
+    if (difficulty < 0) {
+      combo = -1;
+      return 0;
+    }
+    combo++;
+    int attack = Attack.lines(clearType, backToBack && difficulty > 0, combo);
+    backToBack = difficulty > 0;
+    boolean perfectClear = true;
+    for (int i = 0; i < rows.length && perfectClear; i++) {
+      perfectClear = rows[i] == 0;
+    }
+    if (perfectClear) {
+      attack += Attack.PERFECT_CLEAR_LINES;
+    }
+
+    // Cancel the oldest garbage pending first
+    int canceled = 0;
+    while (canceled < pendingAttacks && attack > 0) {
+      int lines = Math.min(attack, pendingGarbage[canceled]);
+      attack -= lines;
+      pendingGarbage[canceled] -= lines;
+      if (pendingGarbage[canceled] == 0) {
+        canceled++;
+      }
+    }
+    dequeueGarbage(canceled);
+    linesSent += attack;
+    return attack;
+  }
+
+  /**
+   * Insert the garbage pending at the bottom of the playfield, up to {@link #GARBAGE_PER_LOCK}
+   * lines, the game being over if the stack is pushed out of the playfield.
+   *
+   * <p>
+   * Each attack gets its own hole column, drawn from the seed of the game and the number of attacks
+   * inserted so that games are deterministic.
+   * </p>
+   */
+  private void insertGarbage() {
+    int inserted = 0;
+    int attacks = 0;
+    boolean toppedOut = false;
+    while (attacks < pendingAttacks && inserted < GARBAGE_PER_LOCK
+        && !toppedOut) {
+      int lines =
+          Math.min(pendingGarbage[attacks], GARBAGE_PER_LOCK - inserted);
+      int hole = garbageHole(seed, garbageAttacks, width);
+      for (int i = (height - lines) * words; i < rows.length; i++) {
+        toppedOut |= rows[i] != 0;
+      }
+      // Rows move up, the top rows being pushed out of the playfield
+      for (int y = 0; y < height; ++y) {
+        for (int w = 0; w < words; w++) {
+          boardHash ^= Zobrist.row(y, w, rows[y * words + w]);
+          if (y >= lines) {
+            boardHash ^= Zobrist.row(y, w, rows[(y - lines) * words + w]);
+          }
+        }
+      }
+      // The whole stack shifts up at once
+      System.arraycopy(rows, 0, rows, lines * words, (height - lines) * words);
+      System.arraycopy(playfield, 0, playfield, lines * width,
+          (height - lines) * width);
+      for (int i = 0; i < lines * words; i++) {
+        rows[i] = board.fullWord(i % words);
+      }
+      for (int y = 0; y < lines; y++) {
+        rows[y * words + (hole >>> 6)] &= ~(1L << hole);
+        for (int w = 0; w < words; w++) {
+          boardHash ^= Zobrist.row(y, w, rows[y * words + w]);
+        }
+      }
+      Arrays.fill(playfield, 0, lines * width, null);
+      inserted += lines;
+      pendingGarbage[attacks] -= lines;
+      if (pendingGarbage[attacks] == 0) {
+        attacks++;
+        garbageAttacks++;
+      }
+    }
+    dequeueGarbage(attacks);
+    if (inserted == 0) {
+      return;
+    }
+    garbageReceived += inserted;
+    if (toppedOut) {
+      stop();
+    }
+  }
+
+  /**
+   * Remove the first garbage attacks pending.
+   *
+   * @param attacks the number of attacks removed
+   */
+  private void dequeueGarbage(final int attacks) {
+    if (attacks > 0) {
+      pendingAttacks -= attacks;
+      System.arraycopy(pendingGarbage, attacks, pendingGarbage, 0,
+          pendingAttacks);
+    }
+  }
+
+  /**
+   * Get the hole column of a garbage attack.
+   *
+   * @param gameSeed the seed of the game
+   * @param attack the number of attacks inserted before
+   * @param columns the number of columns
+   * @return the hole column
+   */
+  private static int garbageHole(final long gameSeed, final int attack,
+      final int columns) {
+    // SplitMix64 finalizer
+    long x = gameSeed + attack * 0x9E3779B97F4A7C15L;
+    x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+    x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+    return (int) Long.remainderUnsigned(x ^ (x >>> 31), columns);
+  }
+
+  /**
+   * Remove full lines from stack.
+   *
+   * @return the number of lines removed from stack
+   */
+  private int removeFullLines() {
+    int numFullLines = 0;
+
+    for (int i = height - 1; i >= 0; --i) {
+      if (isFull(i)) {
+        ++numFullLines;
+        // Rows above move down, the top row being kept
+        for (int y = i; y < height - 1; ++y) {
+          for (int w = 0; w < words; w++) {
+            boardHash ^= Zobrist.row(y, w, rows[y * words + w])
+                ^ Zobrist.row(y, w, rows[(y + 1) * words + w]);
+          }
+        }
+        System.arraycopy(playfield, (i + 1) * width, playfield, i * width,
+            (height - 1 - i) * width);
+        System.arraycopy(rows, (i + 1) * words, rows, i * words,
+            (height - 1 - i) * words);
+      }
+    }
+
+    return numFullLines;
+  }
+
+  /**
+   * Is a row of the playfield full?
+   *
+   * @param y the row
+   * @return {@code true} if all the cells of the row are occupied
+   */
+  private boolean isFull(final int y) {
+    for (int w = 0; w < words; w++) {
+      if (rows[y * words + w] != board.fullWord(w)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Update score for a given number of lines removed from stack.
+   *
+   * @param clearType the clear type of the lines removed
+   * @param numFullLines the number of lines removed from stack.
+   * @see Attack#score(int)
+   */
+  private void updateScoreFromFullLines(final int clearType,
+      final int numFullLines) {
+    /*
+     * Increase score based on lines cleared for level.
+     *
+     * @see <a href="http://tetris.wikia.com/wiki/Scoring">Scoring</a>
+     */
+    int scoreToAdd = Attack.score(clearType) * (level + 1);
+    if (numFullLines == TETRIS) {
+      LOGGER.fine("TETRIS!!!");
+    }
+    score += scoreToAdd * (level + 1);
+
+    // Update speed based on level
+    int newLevel = lines / LEVEL_RATIO;
+    if (newLevel > (lines - numFullLines) / LEVEL_RATIO) {
+      setLevel(level + 1);
+    }
+  }
+
+  /**
+   * Hold piece.
+   *
+   * <p>
+   * At any time starting when a {@link Tetromino} enters the {@link #playfield} until it locks, the
+   * player can press the Hold button on the controller to move the active {@link Tetromino} into
+   * the hold space and move the {@link Tetromino} that was in the hold space to the top of the
+   * {@link #playfield}. A {@link Tetromino} moved into the hold space is unavailable for switching
+   * out until the {@link Tetromino} that was moved out of the hold space locks.
+   * </p>
+   *
+   * @see <a href="http://tetris.wikia.com/wiki/Hold_piece">Hold piece</a>
+   */
+  private void holdPiece() {
+    if (!started || (holdPiece.getShape() != null && !holdPieceAvailable)) {
+      return;
+    }
+
+    newPiece(true);
+  }
+
+  /**
+   * Generate a new piece without using the hold piece.
+   */
+  private void newPiece() {
+    newPiece(false);
+  }
+
+  /**
+   * Generate a new piece at the top of the {@link #playfield}.
+   *
+   * <p>
+   * If the new piece cannot be moved to the top of the {@link #playfield}, the game stops.
+   * </p>
+   *
+   * @see #holdPiece
+   * @see #holdPiece()
+   * @see #nextShapes
+   * @see #shapeGenerator
+   * @see #tryMove(Tetromino, int, int)
+   * @see #stop()
+   *
+   * @param switchWithHoldPiece switch current piece with {@link #holdPiece}
+   */
+  private void newPiece(final boolean switchWithHoldPiece) {
+    if (switchWithHoldPiece && holdPiece.getShape() != null) {
+      Tetromino.Shape tempFallingPieceShape = fallingPiece.getShape();
+      fallingPiece.setShape(holdPiece.getShape());
+      holdPiece.setShape(tempFallingPieceShape);
+      holdPieceAvailable = false;
+      for (Listener listener : listeners) {
+        listener.holdChanged(this);
+      }
+    } else {
+      // If no piece currently held but switch asked
+      if (switchWithHoldPiece) {
+        holdPiece.setShape(fallingPiece.getShape());
+        holdPieceAvailable = false;
+        for (Listener listener : listeners) {
+          listener.holdChanged(this);
+        }
+      }
+
+      fallingPiece.setShape(nextShapes.removeFirst());
+      fillNextShapes();
+      for (Listener listener : listeners) {
+        listener.nextShapesChanged(this);
+      }
+    }
+    curX = board.getSpawnX();
+    curY = board.getSpawnY(fallingPiece.getShape());
+
+    if (!tryMove(fallingPiece, curX, curY)) {
+      this.stop();
+    }
+  }
+
+  /**
+   * Can the given piece be moved at the given position.
+   *
+   * @param piece the piece to test
+   * @param newX the new {@code X} position for the given piece
+   * @param newY the new {@code Y} position for the given piece
+   * @return {@code true} if the given piece can be moved at the given position
+   */
+  public final boolean isMoveable(final Tetromino piece, final int newX,
+      final int newY) {
+    for (int i = 0; i < Tetromino.BLOCKS; ++i) {
+      int x = newX + piece.x(i);
+      int y = newY - piece.y(i);
+      if (x < 0 || x >= width || y < 0 || y >= height) {
+        return false;
+      }
+      if ((rows[y * words + (x >>> 6)] & (1L << x)) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Try to move the given piece at the given position.
+   *
+   * <p>
+   * If the piece can be moved, then the given piece will <em>replace</em> the {@link #fallingPiece}
+   * and be set at the given position.
+   * </p>
+   *
+   * <p>
+   * If the piece cannot be moved, the game will test if floor kicks and wall kicks are possible:
+   * </p>
+   * <ul>
+   * <li>A wall kick happens when a player rotates a piece when no space exists in the squares where
+   * that {@link Tetromino} would normally occupy after the rotation.</li>
+   * <li>A floor kick, like a wall kick, happens when a player rotates a piece when no space exists
+   * in the squares where that {@link Tetromino} would normally occupy after the rotation <em>when
+   * rotating against the floor opposed to a wall</em>.</li>
+   * </ul>
+   *
+   * @see #isMoveable(Tetromino, int, int)
+   * @see <a href="http://tetris.wikia.com/wiki/Wall_kick">Wall kick</a>
+   * @see <a href="http://tetris.wikia.com/wiki/Floor_kick">Floor kick</a>
+   *
+   * @param piece the piece to test
+   * @param newX the new {@code X} position for the given piece
+   * @param newY the new {@code Y} position for the given piece
+   * @return {@code true} if the given piece was moved at the given position
+   */
+  private boolean tryMove(final Tetromino piece, final int newX,
+      final int newY) {
+    int finalNewX = newX;
+    int finalNewY = newY;
+
+    boolean isMoveable = isMoveable(piece, finalNewX, finalNewY);
+
+    if (!isMoveable && wallKickEnabled && (rotatingLeft || rotatingRight)) {
+      // Handle wall kick
+      int newWidth = piece.getWidth();
+
+      if (newX >= 0 && newX <= width - newWidth - 1) {
+        for (int x = newX + 1, l = newX + newWidth - 1; x < l
+            && !isMoveable; x++) {
+          if (isMoveable(piece, x, newY)) {
+            finalNewX = x;
+            isMoveable = true;
+          }
+        }
+      } else if (newX >= newWidth - 1 && newX <= width - 1) {
+        for (int x = newX - 1, l = newX - newWidth - 1; x > l
+            && !isMoveable; x--) {
+          if (isMoveable(piece, x, newY)) {
+            finalNewX = x;
+            isMoveable = true;
+          }
+        }
+      }
+    }
+
+    if (!isMoveable && floorKickEnabled && (rotatingLeft || rotatingRight)) {
+      // Handle floor kick
+      int newHeight = piece.getHeight();
+      if (newY >= 0 && newY <= height - newHeight - 1) {
+        for (int y = newY + 1, l = newY + newHeight; y < l
+            && !isMoveable; y++) {
+          if (isMoveable(piece, newX, y)) {
+            finalNewY = y;
+            isMoveable = true;
+          }
+        }
+      }
+    }
+
+    // Move piece and return status
+    if (isMoveable) {
+      // Infinity
+      if (infiniteLockDelayEnabled) {
+        lockDelayFrameCount = 0;
+      }
+
+      if (piece == fallingPiece) {
+        lastKick = Spin.NOT_ROTATED;
+      } else if (finalNewX != newX) {
+        lastKick = Spin.WALL_KICK;
+      } else if (finalNewY != newY) {
+        lastKick = Spin.FLOOR_KICK;
+      } else {
+        lastKick = Spin.NO_KICK;
+      }
+      fallingPiece = piece;
+      curX = finalNewX;
+      curY = finalNewY;
+      for (Listener listener : listeners) {
+        listener.pieceMoved(this);
+      }
+      return true;
+    } else {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,983 @@
+package org.fun.game.tetris;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A snapshot of the state of an {@link Engine}, from which it computes the same frames again.
+ *
+ * <p>
+ * A state holds everything that changes during a game: the playfield, the falling, hold and next
+ * pieces, the state of the shapes generator, the score and level, the combo and garbage pending,
+ * and the progress of the inputs and delays. It does not hold the {@link Tetrion.Mode}, the controller nor the listeners, which
+ * are left unchanged when the state is restored.
+ * </p>
+ *
+ * <p>
+ * A state can be saved to and restored from an engine many times without allocating, e.g. to keep
+ * a ring of recent states, and encoded to a compact binary form, e.g. to embed it in a replay.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ *
+ * @see Engine#saveState(EngineState)
+ * @see Engine#restoreState(EngineState)
+ */
+public final class EngineState {
+
+  /**
+   * Flag of a started game.
+   */
+  static final int STARTED = 1;
+  /**
+   * Flag of a hard drop in progress.
+   */
+  static final int DROPPING_HARD = 1 << 1;
+  /**
+   * Flag of a soft drop in progress.
+   */
+  static final int DROPPING_SOFT = 1 << 2;
+  /**
+   * Flag of a left shift in progress.
+   */
+  static final int SHIFTING_LEFT = 1 << 3;
+  /**
+   * Flag of a right shift in progress.
+   */
+  static final int SHIFTING_RIGHT = 1 << 4;
+  /**
+   * Flag of a left rotation in progress.
+   */
+  static final int ROTATING_LEFT = 1 << 5;
+  /**
+   * Flag of a right rotation in progress.
+   */
+  static final int ROTATING_RIGHT = 1 << 6;
+  /**
+   * Flag of an available hold piece.
+   */
+  static final int HOLD_AVAILABLE = 1 << 7;
+  /**
+   * Flag of a stack inside the danger zone.
+   */
+  static final int DANGER_ZONE = 1 << 8;
+  /**
+   * Flag of a back-to-back chain in progress.
+   */
+  static final int BACK_TO_BACK = 1 << 9;
+  /**
+   * Shift of the kick of the last move, plus one, in the flags.
+   *
+   * @see Spin
+   */
+  static final int LAST_KICK_SHIFT = 10;
+  /**
+   * Mask of the kick of the last move, plus one, once shifted.
+   */
+  static final int LAST_KICK_MASK = 0x3;
+  /**
+   * Ordinal of no shape.
+   */
+  static final byte NO_SHAPE = -1;
+  /**
+   * All the shapes, by ordinal.
+   */
+  static final Tetromino.Shape[] SHAPES = Tetromino.Shape.values();
+
+  /**
+   * Delta change of the score, pieces, lines and level.
+   */
+  private static final int CHANGED_COUNTERS = 1;
+  /**
+   * Delta change of the falling piece position, shape and rotation.
+   */
+  private static final int CHANGED_PIECE = 1 << 1;
+  /**
+   * Delta change of the flags, inputs and delays.
+   */
+  private static final int CHANGED_TIMERS = 1 << 2;
+  /**
+   * Delta change of the hold piece.
+   */
+  private static final int CHANGED_HOLD = 1 << 3;
+  /**
+   * Delta change of the next shapes queue.
+   */
+  private static final int CHANGED_QUEUE = 1 << 4;
+  /**
+   * Delta change of the shapes generator and bag.
+   */
+  private static final int CHANGED_GENERATOR = 1 << 5;
+  /**
+   * Delta change of the playfield rows.
+   */
+  private static final int CHANGED_ROWS = 1 << 6;
+  /**
+   * Delta change of the combo and garbage.
+   */
+  private static final int CHANGED_GARBAGE = 1 << 7;
+
+  /**
+   * Number of frames computed.
+   */
+  long frames;
+  /**
+   * Seed of the game.
+   */
+  long seed;
+  /**
+   * Score.
+   */
+  long score;
+  /**
+   * Number of pieces locked.
+   */
+  int pieces;
+  /**
+   * Number of lines cleared.
+   */
+  int lines;
+  /**
+   * Level.
+   */
+  int level;
+  /**
+   * Level the game started at.
+   */
+  int startLevel;
+  /**
+   * Flags of the game and inputs progress.
+   */
+  int flags;
+  /**
+   * Inputs pressed on the last frame.
+   */
+  int inputs;
+  /**
+   * Falling piece {@code X} position.
+   */
+  int curX;
+  /**
+   * Falling piece {@code Y} position.
+   */
+  int curY;
+  /**
+   * Falling piece shape ordinal, {@link #NO_SHAPE} if none.
+   */
+  byte fallingShape;
+  /**
+   * Falling piece rotation state.
+   */
+  int rotation;
+  /**
+   * Hold piece shape ordinal, {@link #NO_SHAPE} if none.
+   */
+  byte holdShape;
+  /**
+   * Frames since the falling piece last dropped.
+   */
+  int framesSinceLastDrop;
+  /**
+   * Frames continuously soft dropped, {@code -1} if not soft dropping.
+   */
+  int framesContinouslySoftDropped;
+  /**
+   * Frames the falling piece has been resting on the stack.
+   */
+  int lockDelayFrameCount;
+  /**
+   * Progress of the auto shift.
+   */
+  int shiftDelayCount;
+  /**
+   * Rotations not done yet.
+   */
+  int rotationsNeeded;
+  /**
+   * Combo, {@code -1} if none.
+   */
+  int combo;
+  /**
+   * Lines of the garbage attacks pending.
+   */
+  final int[] pendingGarbage = new int[Engine.GARBAGE_QUEUE_SIZE];
+  /**
+   * Number of garbage attacks pending.
+   */
+  int pendingAttacks;
+  /**
+   * Number of garbage attacks inserted.
+   */
+  int garbageAttacks;
+  /**
+   * Number of lines of garbage sent.
+   */
+  int linesSent;
+  /**
+   * Number of lines of garbage inserted.
+   */
+  int garbageReceived;
+  /**
+   * State of the shapes generator.
+   */
+  long generatorState;
+  /**
+   * Shape ordinals left in the generator bag.
+   */
+  final byte[] bag = new byte[SHAPES.length];
+  /**
+   * Number of shapes left in the generator bag.
+   */
+  int bagSize;
+  /**
+   * Shape ordinals of the next shapes queue.
+   */
+  byte[] queue = new byte[Engine.SHAPES_QUEUE_SIZE];
+  /**
+   * Number of next shapes.
+   */
+  int queueSize;
+  /**
+   * Playfield dimensions.
+   */
+  Board board;
+  /**
+   * Playfield width.
+   */
+  private int width;
+  /**
+   * Playfield height.
+   */
+  private int height;
+  /**
+   * Number of words of a row of the {@link #rows}.
+   */
+  private int words;
+  /**
+   * Playfield rows bit masks, {@link #words} words per row.
+   */
+  long[] rows;
+  /**
+   * Playfield cells shape ordinals, {@link #NO_SHAPE} if empty.
+   */
+  byte[] cells;
+
+  /**
+   * Create a state of a {@link Board#STANDARD} playfield.
+   */
+  public EngineState() {
+    ensureBoard(Board.STANDARD);
+  }
+
+  /**
+   * Get the number of frames computed.
+   *
+   * @return the number of frames
+   */
+  public long getFrames() {
+    return frames;
+  }
+
+  /**
+   * Get the seed of the game.
+   *
+   * @return the seed
+   */
+  public long getSeed() {
+    return seed;
+  }
+
+  /**
+   * Get the score.
+   *
+   * @return the score
+   */
+  public long getScore() {
+    return score;
+  }
+
+  /**
+   * Get the number of pieces locked.
+   *
+   * @return the number of pieces
+   */
+  public int getPieces() {
+    return pieces;
+  }
+
+  /**
+   * Get the number of lines cleared.
+   *
+   * @return the number of lines
+   */
+  public int getLines() {
+    return lines;
+  }
+
+  /**
+   * Get the level.
+   *
+   * @return the level
+   */
+  public int getLevel() {
+    return level;
+  }
+
+  /**
+   * Get the level the game started at.
+   *
+   * @return the start level
+   */
+  public int getStartLevel() {
+    return startLevel;
+  }
+
+  /**
+   * Get the number of lines of garbage sent.
+   *
+   * @return the number of lines
+   */
+  public int getLinesSent() {
+    return linesSent;
+  }
+
+  /**
+   * Get the number of lines of garbage inserted into the playfield.
+   *
+   * @return the number of lines
+   */
+  public int getGarbageReceived() {
+    return garbageReceived;
+  }
+
+  /**
+   * Is the game started?
+   *
+   * @return {@code true} if the game is started
+   */
+  public boolean isStarted() {
+    return (flags & STARTED) != 0;
+  }
+
+  /**
+   * Get the playfield dimensions.
+   *
+   * @return the playfield dimensions
+   */
+  public Board getBoard() {
+    return board;
+  }
+
+  /**
+   * Ensure the playfield is of the given dimensions, emptying it if they change.
+   *
+   * @param newBoard the playfield dimensions
+   */
+  void ensureBoard(final Board newBoard) {
+    if (newBoard.equals(board)) {
+      return;
+    }
+    board = newBoard;
+    width = newBoard.getWidth();
+    height = newBoard.getHeight();
+    words = newBoard.getWordsPerRow();
+    rows = new long[height * words];
+    cells = new byte[height * width];
+    Arrays.fill(cells, NO_SHAPE);
+  }
+
+  /**
+   * Is a cell of the playfield occupied?
+   *
+   * @param x the {@code X} position
+   * @param y the {@code Y} position
+   * @return {@code true} if the cell is occupied
+   */
+  private boolean isOccupied(final int x, final int y) {
+    return (rows[y * words + (x >>> 6)] & (1L << x)) != 0;
+  }
+
+  /**
+   * Ensure the next shapes queue can hold the given number of shapes.
+   *
+   * @param size the number of shapes
+   */
+  void ensureQueueCapacity(final int size) {
+    if (queue.length < size) {
+      queue = Arrays.copyOf(queue, size);
+    }
+  }
+
+  /**
+   * Copy another state.
+   *
+   * @param other the state to copy
+   */
+  public void copyFrom(final EngineState other) {
+    frames = other.frames;
+    seed = other.seed;
+    score = other.score;
+    pieces = other.pieces;
+    lines = other.lines;
+    level = other.level;
+    startLevel = other.startLevel;
+    flags = other.flags;
+    inputs = other.inputs;
+    curX = other.curX;
+    curY = other.curY;
+    fallingShape = other.fallingShape;
+    rotation = other.rotation;
+    holdShape = other.holdShape;
+    framesSinceLastDrop = other.framesSinceLastDrop;
+    framesContinouslySoftDropped = other.framesContinouslySoftDropped;
+    lockDelayFrameCount = other.lockDelayFrameCount;
+    shiftDelayCount = other.shiftDelayCount;
+    rotationsNeeded = other.rotationsNeeded;
+    combo = other.combo;
+    pendingAttacks = other.pendingAttacks;
+    System.arraycopy(other.pendingGarbage, 0, pendingGarbage, 0,
+        pendingAttacks);
+    garbageAttacks = other.garbageAttacks;
+    linesSent = other.linesSent;
+    garbageReceived = other.garbageReceived;
+    generatorState = other.generatorState;
+    bagSize = other.bagSize;
+    System.arraycopy(other.bag, 0, bag, 0, bagSize);
+    ensureQueueCapacity(other.queueSize);
+    queueSize = other.queueSize;
+    System.arraycopy(other.queue, 0, queue, 0, queueSize);
+    ensureBoard(other.board);
+    System.arraycopy(other.rows, 0, rows, 0, rows.length);
+    System.arraycopy(other.cells, 0, cells, 0, cells.length);
+  }
+
+  // #########################################################################
+  /**
+   * Encode the state.
+   *
+   * <p>
+   * The playfield dimensions are written first, then only the rows up to the highest occupied row,
+   * followed by the shape of their occupied cells, {@link #NO_SHAPE} for garbage.
+   * </p>
+   *
+   * @param out the output
+   * @throws IOException if the state cannot be written
+   */
+  public void writeTo(final DataOutput out) throws IOException {
+    Varint.write(out, width);
+    Varint.write(out, height);
+    Varint.write(out, board.getCeiling());
+    out.writeLong(frames);
+    out.writeLong(seed);
+    out.writeLong(score);
+    out.writeInt(pieces);
+    out.writeInt(lines);
+    out.writeInt(level);
+    out.writeInt(startLevel);
+    out.writeShort(flags);
+    out.writeByte(inputs);
+    Varint.writeSigned(out, curX);
+    Varint.writeSigned(out, curY);
+    out.writeByte(fallingShape);
+    out.writeByte(rotation);
+    out.writeByte(holdShape);
+    out.writeInt(framesSinceLastDrop);
+    out.writeInt(framesContinouslySoftDropped);
+    out.writeInt(lockDelayFrameCount);
+    out.writeInt(shiftDelayCount);
+    out.writeInt(rotationsNeeded);
+    writeGarbage(out);
+    out.writeLong(generatorState);
+    out.writeByte(bagSize);
+    out.write(bag, 0, bagSize);
+    out.writeByte(queueSize);
+    out.write(queue, 0, queueSize);
+
+    int top = rows.length;
+    while (top > 0 && rows[top - 1] == 0) {
+      top--;
+    }
+    top = (top + words - 1) / words;
+    Varint.write(out, top);
+    for (int i = 0; i < top * words; i++) {
+      Varint.write(out, rows[i]);
+    }
+    for (int y = 0; y < top; y++) {
+      writeCells(out, y);
+    }
+  }
+
+  /**
+   * Decode a state written by {@link #writeTo(DataOutput)}.
+   *
+   * @param in the input
+   * @throws IOException if the state cannot be read or is invalid
+   */
+  public void readFrom(final DataInput in) throws IOException {
+    try {
+      ensureBoard(new Board((int) Varint.read(in), (int) Varint.read(in),
+          (int) Varint.read(in)));
+    } catch (IllegalArgumentException ex) {
+      throw new IOException("Invalid playfield", ex);
+    }
+    frames = in.readLong();
+    seed = in.readLong();
+    score = in.readLong();
+    pieces = in.readInt();
+    lines = in.readInt();
+    level = in.readInt();
+    startLevel = in.readInt();
+    flags = in.readShort();
+    inputs = in.readByte();
+    curX = (int) Varint.readSigned(in);
+    curY = (int) Varint.readSigned(in);
+    fallingShape = readShape(in);
+    rotation = readRotation(in);
+    holdShape = readShape(in);
+    framesSinceLastDrop = in.readInt();
+    framesContinouslySoftDropped = in.readInt();
+    lockDelayFrameCount = in.readInt();
+    shiftDelayCount = in.readInt();
+    rotationsNeeded = in.readInt();
+    readGarbage(in);
+    generatorState = in.readLong();
+    bagSize = in.readUnsignedByte();
+    if (bagSize > bag.length) {
+      throw new IOException("Invalid bag size " + bagSize);
+    }
+    for (int i = 0; i < bagSize; i++) {
+      bag[i] = readShape(in);
+    }
+    queueSize = in.readUnsignedByte();
+    ensureQueueCapacity(queueSize);
+    for (int i = 0; i < queueSize; i++) {
+      queue[i] = readShape(in);
+    }
+
+    int top = (int) Varint.read(in);
+    if (top < 0 || top > height) {
+      throw new IOException("Invalid playfield height " + top);
+    }
+    Arrays.fill(rows, 0);
+    Arrays.fill(cells, NO_SHAPE);
+    for (int i = 0; i < top * words; i++) {
+      rows[i] = Varint.read(in);
+    }
+    for (int y = 0; y < top; y++) {
+      readCells(in, y);
+    }
+    checkFallingPiece();
+  }
+
+  /**
+   * Check the falling piece, if any, is inside the playfield.
+   *
+   * @throws IOException if a block of the falling piece is outside the playfield
+   */
+  private void checkFallingPiece() throws IOException {
+    if (fallingShape == NO_SHAPE) {
+      return;
+    }
+    Tetromino.Shape shape = SHAPES[fallingShape];
+    for (int i = 0; i < Tetromino.BLOCKS; i++) {
+      int x = curX + shape.x(i, rotation);
+      int y = curY - shape.y(i, rotation);
+      if (x < 0 || x >= width || y < 0 || y >= height) {
+        throw new IOException(
+            "Invalid falling piece position " + curX + ", " + curY);
+      }
+    }
+  }
+
+  /**
+   * Write the shapes of the occupied cells of a row.
+   *
+   * @param out the output
+   * @param y the row
+   * @throws IOException if the cells cannot be written
+   */
+  private void writeCells(final DataOutput out, final int y)
+      throws IOException {
+    for (int x = 0; x < width; x++) {
+      if (isOccupied(x, y)) {
+        out.writeByte(cells[y * width + x]);
+      }
+    }
+  }
+
+  /**
+   * Read the shapes of the occupied cells of a row, the others being emptied.
+   *
+   * @param in the input
+   * @param y the row
+   * @throws IOException if the cells cannot be read or are invalid
+   */
+  private void readCells(final DataInput in, final int y) throws IOException {
+    for (int x = 0; x < width; x++) {
+      cells[y * width + x] = isOccupied(x, y) ? readShape(in) : NO_SHAPE;
+    }
+  }
+
+  /**
+   * Write the combo and garbage.
+   *
+   * @param out the output
+   * @throws IOException if the garbage cannot be written
+   */
+  private void writeGarbage(final DataOutput out) throws IOException {
+    Varint.writeSigned(out, combo);
+    Varint.write(out, garbageAttacks);
+    Varint.write(out, linesSent);
+    Varint.write(out, garbageReceived);
+    out.writeByte(pendingAttacks);
+    for (int i = 0; i < pendingAttacks; i++) {
+      Varint.write(out, pendingGarbage[i]);
+    }
+  }
+
+  /**
+   * Read the combo and garbage.
+   *
+   * @param in the input
+   * @throws IOException if the garbage cannot be read or is invalid
+   */
+  private void readGarbage(final DataInput in) throws IOException {
+    combo = (int) Varint.readSigned(in);
+    garbageAttacks = (int) Varint.read(in);
+    linesSent = (int) Varint.read(in);
+    garbageReceived = (int) Varint.read(in);
+    pendingAttacks = in.readUnsignedByte();
+    if (pendingAttacks > pendingGarbage.length) {
+      throw new IOException("Invalid garbage attacks " + pendingAttacks);
+    }
+    for (int i = 0; i < pendingAttacks; i++) {
+      pendingGarbage[i] = (int) Varint.read(in);
+    }
+  }
+
+  // #########################################################################
+  /**
+   * Can the state be encoded as a delta from another state?
+   *
+   * @param base the state known by the decoder
+   * @return {@code true} if both states are of the same game, the base being older
+   */
+  public boolean isDeltaFrom(final EngineState base) {
+    return base.seed == seed && base.startLevel == startLevel
+        && base.board.equals(board)
+        && base.frames <= frames && base.queueSize <= Byte.MAX_VALUE;
+  }
+
+  /**
+   * Encode the changes since another state of the same game.
+   *
+   * <p>
+   * Only what changed is written, after a bit mask of the groups of fields changed: the counters
+   * as differences, the falling piece position and rotation, the hold piece, the shapes shifted
+   * out of the queue and appended to it, and the rows changed, as their number followed by the
+   * gap since the previous row changed and the content of each. A delta of a frame only moving the piece takes a few bytes, where a state takes
+   * about a hundred.
+   * </p>
+   *
+   * @param base the state known by the decoder
+   * @param out the output
+   * @throws IOException if the delta cannot be written
+   * @throws IllegalArgumentException if the base is not of the same game
+   * @see #isDeltaFrom(EngineState)
+   * @see #readDeltaFrom(DataInput)
+   */
+  public void writeDeltaTo(final EngineState base, final DataOutput out)
+      throws IOException {
+    if (!isDeltaFrom(base)) {
+      throw new IllegalArgumentException("Not a state of the same game");
+    }
+    int changedRows = 0;
+    for (int y = 0; y < height; y++) {
+      if (isRowChanged(base, y)) {
+        changedRows++;
+      }
+    }
+    int shift = queueShift(base);
+    int changes = 0;
+    if (score != base.score || pieces != base.pieces || lines != base.lines
+        || level != base.level) {
+      changes |= CHANGED_COUNTERS;
+    }
+    if (curX != base.curX || curY != base.curY
+        || fallingShape != base.fallingShape || rotation != base.rotation) {
+      changes |= CHANGED_PIECE;
+    }
+    if (flags != base.flags || inputs != base.inputs
+        || framesSinceLastDrop != base.framesSinceLastDrop
+        || framesContinouslySoftDropped != base.framesContinouslySoftDropped
+        || lockDelayFrameCount != base.lockDelayFrameCount
+        || shiftDelayCount != base.shiftDelayCount
+        || rotationsNeeded != base.rotationsNeeded) {
+      changes |= CHANGED_TIMERS;
+    }
+    if (holdShape != base.holdShape) {
+      changes |= CHANGED_HOLD;
+    }
+    if (shift != 0 || queueSize != base.queueSize) {
+      changes |= CHANGED_QUEUE;
+    }
+    if (generatorState != base.generatorState || bagSize != base.bagSize
+        || !equals(bag, 0, base.bag, 0, bagSize)) {
+      changes |= CHANGED_GENERATOR;
+    }
+    if (changedRows != 0) {
+      changes |= CHANGED_ROWS;
+    }
+    if (combo != base.combo || garbageAttacks != base.garbageAttacks
+        || linesSent != base.linesSent
+        || garbageReceived != base.garbageReceived
+        || pendingAttacks != base.pendingAttacks
+        || !equals(pendingGarbage, base.pendingGarbage, pendingAttacks)) {
+      changes |= CHANGED_GARBAGE;
+    }
+
+    Varint.write(out, frames - base.frames);
+    out.writeByte(changes);
+    if ((changes & CHANGED_COUNTERS) != 0) {
+      Varint.writeSigned(out, score - base.score);
+      Varint.writeSigned(out, pieces - base.pieces);
+      Varint.writeSigned(out, lines - base.lines);
+      Varint.writeSigned(out, level - base.level);
+    }
+    if ((changes & CHANGED_PIECE) != 0) {
+      Varint.writeSigned(out, curX);
+      Varint.writeSigned(out, curY);
+      out.writeByte(fallingShape);
+      out.writeByte(rotation);
+    }
+    if ((changes & CHANGED_TIMERS) != 0) {
+      out.writeShort(flags);
+      out.writeByte(inputs);
+      Varint.writeSigned(out, framesSinceLastDrop);
+      Varint.writeSigned(out, framesContinouslySoftDropped);
+      Varint.writeSigned(out, lockDelayFrameCount);
+      Varint.writeSigned(out, shiftDelayCount);
+      Varint.writeSigned(out, rotationsNeeded);
+    }
+    if ((changes & CHANGED_HOLD) != 0) {
+      out.writeByte(holdShape);
+    }
+    if ((changes & CHANGED_QUEUE) != 0) {
+      int kept = base.queueSize - shift;
+      out.writeByte(shift);
+      out.writeByte(queueSize - kept);
+      out.write(queue, kept, queueSize - kept);
+    }
+    if ((changes & CHANGED_GENERATOR) != 0) {
+      out.writeLong(generatorState);
+      out.writeByte(bagSize);
+      out.write(bag, 0, bagSize);
+    }
+    if ((changes & CHANGED_ROWS) != 0) {
+      Varint.write(out, changedRows);
+      int previous = -1;
+      for (int y = 0; y < height; y++) {
+        if (!isRowChanged(base, y)) {
+          continue;
+        }
+        Varint.write(out, y - previous - 1);
+        previous = y;
+        for (int w = 0; w < words; w++) {
+          Varint.write(out, rows[y * words + w]);
+        }
+        writeCells(out, y);
+      }
+    }
+    if ((changes & CHANGED_GARBAGE) != 0) {
+      writeGarbage(out);
+    }
+  }
+
+  /**
+   * Decode a delta written by {@link #writeDeltaTo(EngineState, DataOutput)}, applying it to this
+   * state, which must be the base of the delta.
+   *
+   * @param in the input
+   * @throws IOException if the delta cannot be read or is invalid
+   */
+  public void readDeltaFrom(final DataInput in) throws IOException {
+    frames += Varint.read(in);
+    int changes = in.readUnsignedByte();
+    if ((changes & CHANGED_COUNTERS) != 0) {
+      score += Varint.readSigned(in);
+      pieces += (int) Varint.readSigned(in);
+      lines += (int) Varint.readSigned(in);
+      level += (int) Varint.readSigned(in);
+    }
+    if ((changes & CHANGED_PIECE) != 0) {
+      curX = (int) Varint.readSigned(in);
+      curY = (int) Varint.readSigned(in);
+      fallingShape = readShape(in);
+      rotation = readRotation(in);
+    }
+    if ((changes & CHANGED_TIMERS) != 0) {
+      flags = in.readShort();
+      inputs = in.readByte();
+      framesSinceLastDrop = (int) Varint.readSigned(in);
+      framesContinouslySoftDropped = (int) Varint.readSigned(in);
+      lockDelayFrameCount = (int) Varint.readSigned(in);
+      shiftDelayCount = (int) Varint.readSigned(in);
+      rotationsNeeded = (int) Varint.readSigned(in);
+    }
+    if ((changes & CHANGED_HOLD) != 0) {
+      holdShape = readShape(in);
+    }
+    if ((changes & CHANGED_QUEUE) != 0) {
+      int shift = in.readUnsignedByte();
+      int appended = in.readUnsignedByte();
+      if (shift > queueSize) {
+        throw new IOException("Invalid queue shift " + shift);
+      }
+      int kept = queueSize - shift;
+      System.arraycopy(queue, shift, queue, 0, kept);
+      ensureQueueCapacity(kept + appended);
+      for (int i = kept; i < kept + appended; i++) {
+        queue[i] = readShape(in);
+      }
+      queueSize = kept + appended;
+    }
+    if ((changes & CHANGED_GENERATOR) != 0) {
+      generatorState = in.readLong();
+      bagSize = in.readUnsignedByte();
+      if (bagSize > bag.length) {
+        throw new IOException("Invalid bag size " + bagSize);
+      }
+      for (int i = 0; i < bagSize; i++) {
+        bag[i] = readShape(in);
+      }
+    }
+    if ((changes & CHANGED_ROWS) != 0) {
+      long changedRows = Varint.read(in);
+      long y = -1;
+      for (long i = 0; i < changedRows; i++) {
+        y += Varint.read(in) + 1;
+        if (y < 0 || y >= height) {
+          throw new IOException("Invalid playfield row " + y);
+        }
+        for (int w = 0; w < words; w++) {
+          rows[(int) y * words + w] = Varint.read(in);
+        }
+        readCells(in, (int) y);
+      }
+    }
+    if ((changes & CHANGED_GARBAGE) != 0) {
+      readGarbage(in);
+    }
+    checkFallingPiece();
+  }
+
+  /**
+   * Has a row of the playfield changed since another state?
+   *
+   * @param base the other state, of the same dimensions
+   * @param y the row
+   * @return {@code true} if the row cells or their shapes changed
+   */
+  private boolean isRowChanged(final EngineState base, final int y) {
+    for (int w = 0; w < words; w++) {
+      if (rows[y * words + w] != base.rows[y * words + w]) {
+        return true;
+      }
+    }
+    return !equals(cells, y * width, base.cells, y * width, width);
+  }
+
+  /**
+   * Get the number of shapes shifted out of the queue of another state, the shapes left being at
+   * the head of the queue of this state.
+   *
+   * @param base the other state
+   * @return the number of shapes shifted out, all of them if the queues do not match
+   */
+  private int queueShift(final EngineState base) {
+    for (int shift = 0; shift < base.queueSize; shift++) {
+      int kept = base.queueSize - shift;
+      if (kept <= queueSize && equals(base.queue, shift, queue, 0, kept)) {
+        return shift;
+      }
+    }
+    return base.queueSize;
+  }
+
+  /**
+   * Are ranges of two arrays equal?
+   *
+   * @param a the first array
+   * @param aFrom the start of the range of the first array
+   * @param b the second array
+   * @param bFrom the start of the range of the second array
+   * @param length the length of the ranges
+   * @return {@code true} if the ranges hold the same values
+   */
+  private static boolean equals(final byte[] a, final int aFrom,
+      final byte[] b, final int bFrom, final int length) {
+    for (int i = 0; i < length; i++) {
+      if (a[aFrom + i] != b[bFrom + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Are the first values of two arrays equal?
+   *
+   * @param a the first array
+   * @param b the second array
+   * @param length the number of values compared
+   * @return {@code true} if the first values are the same
+   */
+  private static boolean equals(final int[] a, final int[] b,
+      final int length) {
+    for (int i = 0; i < length; i++) {
+      if (a[i] != b[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Read a shape ordinal.
+   *
+   * @param in the input
+   * @return the shape ordinal, {@link #NO_SHAPE} if none
+   * @throws IOException if the ordinal cannot be read or is invalid
+   */
+  private static byte readShape(final DataInput in) throws IOException {
+    byte ordinal = in.readByte();
+    if (ordinal < NO_SHAPE || ordinal >= SHAPES.length) {
+      throw new IOException("Invalid shape " + ordinal);
+    }
+    return ordinal;
+  }
+
+  /**
+   * Read a rotation state.
+   *
+   * @param in the input
+   * @return the rotation state
+   * @throws IOException if the rotation state cannot be read or is invalid
+   */
+  private static int readRotation(final DataInput in) throws IOException {
+    int rotation = in.readByte();
+    if (rotation < 0 || rotation >= Tetromino.ROTATIONS) {
+      throw new IOException("Invalid rotation " + rotation);
+    }
+    return rotation;
+  }
+
+  @Override
+  public String toString() {
+    return "EngineState [frames=" + frames + ", seed=" + seed + ", score="
+        + score + ", pieces=" + pieces + ", lines=" + lines + ", level="
+        + level + ", startLevel=" + startLevel + ", flags=" + flags + "]";
+  }
+}
@@ -0,0 +1,57 @@
+package org.fun.game.tetris;
+
+/**
+ * A {@link Controller} fed by key events.
+ *
+ * <p>
+ * Key presses are latched until the next poll so that a key pressed and released between two
+ * frames is still seen by the {@link Engine} for one frame.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public class KeyboardController implements Controller {
+
+  /**
+   * Inputs currently held.
+   */
+  private int held = NONE;
+  /**
+   * Inputs pressed since the last poll.
+   */
+  private int latched = NONE;
+
+  /**
+   * Press the given inputs.
+   *
+   * @param inputs the bit mask of inputs pressed
+   */
+  public synchronized void press(final int inputs) {
+    held |= inputs;
+    latched |= inputs;
+  }
+
+  /**
+   * Release the given inputs.
+   *
+   * @param inputs the bit mask of inputs released
+   */
+  public synchronized void release(final int inputs) {
+    held &= ~inputs;
+  }
+
+  /**
+   * Release all inputs.
+   */
+  public synchronized void reset() {
+    held = NONE;
+    latched = NONE;
+  }
+
+  @Override
+  public synchronized int poll(final Engine engine) {
+    int inputs = held | latched;
+    latched = NONE;
+    return inputs;
+  }
+}
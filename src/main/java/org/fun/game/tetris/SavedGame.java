@@ -0,0 +1,156 @@
+package org.fun.game.tetris;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A game in progress, suspended to disk to be resumed later.
+ *
+ * <p>
+ * A saved game holds the {@link Tetrion.Mode} of the game and the complete {@link EngineState} of
+ * its engine: playfield and its dimensions, falling and hold pieces, queue, bag and counters. Saved games are written
+ * in binary form, to a temporary file synced to the disk then moved over the saved game, so that
+ * an interrupted save always leaves the previous saved game complete.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ *
+ * @see Tetrion#suspend(Path)
+ * @see Tetrion#resume(Path)
+ */
+public final class SavedGame {
+
+  /**
+   * Magic number of saved games, {@code TSAV}.
+   */
+  private static final int MAGIC = 0x54534156;
+  /**
+   * Version of the saved game format.
+   */
+  private static final int VERSION = 3;
+
+  /**
+   * Mode of the game.
+   */
+  private final Tetrion.Mode mode;
+  /**
+   * State of the game.
+   */
+  private final EngineState state;
+
+  /**
+   * Create a saved game.
+   *
+   * @param gameMode the mode of the game
+   * @param gameState the state of the game, not copied
+   */
+  public SavedGame(final Tetrion.Mode gameMode, final EngineState gameState) {
+    this.mode = gameMode;
+    this.state = gameState;
+  }
+
+  /**
+   * Save the game of an engine.
+   *
+   * @param engine the engine
+   * @return the saved game
+   */
+  public static SavedGame of(final Engine engine) {
+    EngineState state = new EngineState();
+    engine.saveState(state);
+    return new SavedGame(engine.getMode(), state);
+  }
+
+  /**
+   * Get the mode of the game.
+   *
+   * @return the mode
+   */
+  public Tetrion.Mode getMode() {
+    return mode;
+  }
+
+  /**
+   * Get the state of the game.
+   *
+   * @return the state
+   */
+  public EngineState getState() {
+    return state;
+  }
+
+  // #########################################################################
+  /**
+   * Save the game.
+   *
+   * <p>
+   * The game is written to a temporary file next to the given file, synced to the disk, then moved
+   * over it.
+   * </p>
+   *
+   * @param file the saved game file
+   * @throws IOException if the game cannot be written
+   */
+  public void save(final Path file) throws IOException {
+    Path absolute = file.toAbsolutePath();
+    Path temp = Files.createTempFile(absolute.getParent(),
+        absolute.getFileName().toString(), ".tmp");
+    try {
+      try (FileOutputStream fos = new FileOutputStream(temp.toFile())) {
+        DataOutputStream out =
+            new DataOutputStream(new BufferedOutputStream(fos));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(mode.name());
+        state.writeTo(out);
+        out.flush();
+        fos.getFD().sync();
+      }
+      Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * Load a saved game.
+   *
+   * @param file the saved game file
+   * @return the saved game
+   * @throws IOException if the game cannot be read or is invalid
+   */
+  public static SavedGame load(final Path file) throws IOException {
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != MAGIC) {
+        throw new IOException("Not a saved game: " + file);
+      }
+      int version = in.readInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported saved game version " + version);
+      }
+      Tetrion.Mode mode;
+      try {
+        mode = Tetrion.Mode.valueOf(in.readUTF());
+      } catch (IllegalArgumentException ex) {
+        throw new IOException("Invalid saved game mode", ex);
+      }
+      EngineState state = new EngineState();
+      state.readFrom(in);
+      return new SavedGame(mode, state);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "SavedGame [mode=" + mode + ", state=" + state + "]";
+  }
+}
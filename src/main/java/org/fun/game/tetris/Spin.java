@@ -0,0 +1,159 @@
+package org.fun.game.tetris;
+
+/**
+ * Recognition of T-spins, looked up in tables computed once from the shape of the T piece.
+ *
+ * <p>
+ * A T piece locked right after a rotation is a T-spin if at least three of the four cells
+ * diagonally adjacent to its center (its <em>corners</em>) are occupied, walls and floor included.
+ * It is a full {@link Attack#T_SPIN T-spin} if both corners on the side the T points to (its
+ * <em>front</em> corners) are occupied, or if the rotation needed a floor kick, lifting the piece
+ * into its slot; a {@link Attack#MINI_T_SPIN mini T-spin} otherwise.
+ * </p>
+ *
+ * <p>
+ * The occupied corners of a lock are a 4 bits mask, one bit per corner: with the rotation state
+ * and the kick of the last rotation, it indexes a table of the spin of every case, so that
+ * recognizing a spin only reads the four corner cells.
+ * </p>
+ *
+ * @see <a href="https://tetris.wiki/T-Spin">T-Spin</a>
+ *
+ * @author Mathieu Brunot
+ */
+public final class Spin {
+
+  /**
+   * Kick of the last move: the last move was not a rotation.
+   */
+  public static final int NOT_ROTATED = -1;
+  /**
+   * Kick of the last move: a rotation without kick.
+   */
+  public static final int NO_KICK = 0;
+  /**
+   * Kick of the last move: a rotation with a wall kick.
+   */
+  public static final int WALL_KICK = 1;
+  /**
+   * Kick of the last move: a rotation with a floor kick.
+   */
+  public static final int FLOOR_KICK = 2;
+  /**
+   * Number of kinds of kick of a rotation.
+   */
+  private static final int KICKS = 3;
+  /**
+   * Number of corners of the T piece center.
+   */
+  public static final int CORNERS = 4;
+  /**
+   * Least number of occupied corners of a T-spin.
+   */
+  private static final int SPIN_CORNERS = 3;
+  /**
+   * {@code X} offset of each corner from the piece center.
+   */
+  private static final int[] CORNER_X = {-1, 1, -1, 1};
+  /**
+   * {@code Y} offset of each corner from the piece center, upwards.
+   */
+  private static final int[] CORNER_Y = {-1, -1, 1, 1};
+
+  /**
+   * Mask of the front corners of each rotation state.
+   */
+  private static final int[] FRONT = new int[Tetromino.ROTATIONS];
+  /**
+   * Spin of each case, indexed by {@code (rotation * KICKS + kick) << CORNERS | corners}.
+   */
+  private static final byte[] SPINS =
+      new byte[Tetromino.ROTATIONS * KICKS << CORNERS];
+
+  static {
+    Tetromino.Shape t = Tetromino.Shape.T;
+    for (int r = 0; r < Tetromino.ROTATIONS; r++) {
+      // The T points to its only block without an opposite block
+      int frontX = 0;
+      int frontY = 0;
+      for (int i = 0; i < Tetromino.BLOCKS; i++) {
+        boolean opposite = false;
+        for (int j = 0; j < Tetromino.BLOCKS; j++) {
+          opposite |= t.x(j, r) == -t.x(i, r) && t.y(j, r) == -t.y(i, r)
+              && i != j;
+        }
+        if (!opposite) {
+          frontX = t.x(i, r);
+          frontY = -t.y(i, r);
+        }
+      }
+      for (int c = 0; c < CORNERS; c++) {
+        if (CORNER_X[c] * frontX + CORNER_Y[c] * frontY > 0) {
+          FRONT[r] |= 1 << c;
+        }
+      }
+      for (int kick = 0; kick < KICKS; kick++) {
+        for (int corners = 0; corners < 1 << CORNERS; corners++) {
+          int spin = Attack.NO_SPIN;
+          if (Integer.bitCount(corners) >= SPIN_CORNERS) {
+            spin = (corners & FRONT[r]) == FRONT[r] || kick == FLOOR_KICK
+                ? Attack.T_SPIN : Attack.MINI_T_SPIN;
+          }
+          SPINS[(r * KICKS + kick) << CORNERS | corners] = (byte) spin;
+        }
+      }
+    }
+  }
+
+  /**
+   * Hidden constructor.
+   */
+  private Spin() {}
+
+  /**
+   * Get the {@code X} offset of a corner from the center of the T piece.
+   *
+   * @param corner the corner, from {@code 0} to {@link #CORNERS} excluded
+   * @return the {@code X} offset
+   */
+  public static int cornerX(final int corner) {
+    return CORNER_X[corner];
+  }
+
+  /**
+   * Get the {@code Y} offset of a corner from the center of the T piece, upwards.
+   *
+   * @param corner the corner, from {@code 0} to {@link #CORNERS} excluded
+   * @return the {@code Y} offset
+   */
+  public static int cornerY(final int corner) {
+    return CORNER_Y[corner];
+  }
+
+  /**
+   * Get the front corners of a rotation state of the T piece.
+   *
+   * @param rotation the rotation state
+   * @return the mask of the two corners on the side the T points to
+   */
+  public static int frontCorners(final int rotation) {
+    return FRONT[rotation];
+  }
+
+  /**
+   * Get the spin of a T piece locked.
+   *
+   * @param rotation the rotation state of the piece
+   * @param kick the kick of the last move, {@link #NOT_ROTATED} if it was not a rotation
+   * @param corners the mask of the occupied corners of the piece center
+   * @return the kind of spin, {@link Attack#NO_SPIN}, {@link Attack#MINI_T_SPIN} or
+   *         {@link Attack#T_SPIN}
+   */
+  public static int spin(final int rotation, final int kick,
+      final int corners) {
+    if (kick < 0) {
+      return Attack.NO_SPIN;
+    }
+    return SPINS[(rotation * KICKS + kick) << CORNERS | corners];
+  }
+}
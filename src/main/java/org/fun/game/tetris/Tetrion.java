@@ -6,8 +6,9 @@ import java.awt.Graphics;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.Closeable;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -20,12 +21,19 @@ import javax.swing.JPanel;
 import javax.swing.KeyStroke;
 import javax.swing.Timer;
 
+import org.fun.game.tetris.metrics.Metrics;
+import org.fun.game.tetris.replay.ReplayWriter;
 import org.fun.music.midiplayer.MidiPlayer;
 
 /**
  * The Tetrion is the frame that surrounds the playfield and the "machine" that plays Tetris.
  * 
  * <p>
+ * The rules themselves are applied by an {@link Engine}: the Tetrion ticks it at a fixed frame
+ * rate, feeds it with the keyboard inputs through a {@link KeyboardController} and draws it.
+ * </p>
+ * 
+ * <p>
  * This class is based on <em>Jan Bodnar</em>'s
  * <a href="http://zetcode.com/tutorials/javagamestutorial/tetris/">Tetris game clone in Java
  * Swing</a>.
@@ -40,7 +48,8 @@ import org.fun.music.midiplayer.MidiPlayer;
  * @see <a href="http://zetcode.com/tutorials/javagamestutorial/tetris/">Tetris game clone in Java
  *      Swing</a>
  */
-public class Tetrion extends JPanel implements ActionListener, Closeable {
+public class Tetrion extends JPanel
+    implements ActionListener, Closeable, Engine.Listener {
 
   /**
    * Generated Serial Version ID.
@@ -53,84 +62,20 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
   private static final Logger LOGGER =
       Logger.getLogger(Tetrion.class.getName());
 
-  /**
-   * Fixed frame rate per second.
-   */
-  private static final int FRAME_PER_SECOND = 60;
   /**
    * Time (ms) between each frame.
    */
-  private static final int TIME_BETWEEN_FRAMES = 1000 / FRAME_PER_SECOND;
-
-  /**
-   * Number of lines needed to upgrade level.
-   */
-  private static final int LEVEL_RATIO = 10;
-  /**
-   * Ratio applied to "gravity" on manual soft drop.
-   */
-  private static final double SOFT_DROP_RATIO = 20;
+  private static final int TIME_BETWEEN_FRAMES = 1000 / Engine.FRAME_PER_SECOND;
 
-  /**
-   * Tetrion width.
-   */
-  private static final int BOARD_WIDTH = 10;
-  /**
-   * Tetrion height.
-   *
-   * <p>
-   * The space between the ceiling and the board height is invisible yet usable.
-   * </p>
-   *
-   * @see #BOARD_CEILING
-   */
-  private static final int BOARD_HEIGHT = 22;
-  /**
-   * Tetrion ceiling height.
-   *
-   * <p>
-   * Rows above the ceiling are hidden or obstructed by the field frame.
-   * </p>
-   */
-  private static final int BOARD_CEILING = 20;
-  /**
-   * Tetrion danger zone.
-   *
-   * <p>
-   * Rows above the danger zone can trigger some alerts to the player.
-   * </p>
-   */
-  private static final int BOARD_CEILING_DANGER_ZONE = BOARD_CEILING - 4;
   /**
    * Speed ratio of music playing inside danger zone.
    */
   private static final float DANGER_ZONE_MUSIC_RATIO = 1.4F;
 
   /**
-   * The shapes' Queue size.
-   */
-  private static final int SHAPES_QUEUE_SIZE = Tetromino.Shape.values().length;
-
-  /**
-   * Delayed Auto Shift or autorepeat refers to the behavior of most falling block puzzle games when
-   * the player holds the leftKey or rightKey key.
-   *
-   * <p>
-   * The game will shift the falling piece sideways, wait, and then shift it repeatedly if the
-   * player continues to holdKey the key.
-   * </p>
-   *
-   * @see <a href="http://tetris.wikia.com/wiki/DAS">Delayed Auto Shift</a>
-   */
-  private static final long AUTO_SHIFT_DELAY = 11;
-  /**
-   * Delayed Auto Shift period.
-   *
-   * @see #AUTO_SHIFT_DELAY
-   *
-   * @see <a href="http://tetris.wikia.com/wiki/DAS">Delayed Auto Shift</a>
+   * Color of the garbage cells, sent by the opponents of versus games.
    */
-  private static final long AUTO_SHIFT_PERIOD = 6;
+  private static final Color GARBAGE_COLOR = Color.GRAY;
 
   /**
    * Super Rotation System default lock delay.
@@ -164,236 +109,50 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
    * Ratio applied to "gravity" on each level-up in classic mode.
    */
   private static final double CLASSIC_SPEED_UP_RATIO = 1.1625;
-  /**
-   * Scores by number of lines cleared.
-   */
-  private static final int[] SCORES = {0, 40, 100, 300, 1200};
-  /**
-   * A "<em>Tetris</em>" is when the player clears 4 lines at once.
-   */
-  private static final int TETRIS = Tetromino.BLOCKS;
 
-  /**
-   * Has the game started?
-   */
-  private boolean started = false;
   /**
    * Is the game paused?
    */
   private boolean paused = false;
-
-  // Refresh Scheduler
-  /**
-   * The refresh thread.
-   * 
-   * @see #actionPerformed(ActionEvent)
-   */
-  private Timer timer;
-  /**
-   * Number of frames since the last drop occurred.
-   * 
-   * @see #actionPerformed(ActionEvent)
-   */
-  private int framesSinceLastDrop = 0;
-  /**
-   * Number of frames the user kept asking for soft drops.
-   * 
-   * @see #actionPerformed(ActionEvent)
-   */
-  private int framesContinouslySoftDropped = -1;
-
-  // Score, level and "speed"
-  /**
-   * Number of lines cleared.
-   */
-  private int lines = 0;
-  /**
-   * Score.
-   */
-  private long score = 0;
-  /**
-   * Level.
-   */
-  private int level = 0;
-  /**
-   * Current Gravity force.
-   * 
-   * @see <a href="http://tetris.wikia.com/wiki/Gravity">Gravity</a>
-   * @see <a href="http://tetris.wikia.com/wiki/Drop#Gravity">Drop Gravity</a>
-   */
-  private double gravity = 1 / (double) FRAME_PER_SECOND;
-
-  // Pieces and position
-  /**
-   * Falling {@link Tetromino} current {@code X} position.
-   * 
-   * @see #fallingPiece
-   */
-  private int curX = 0;
-  /**
-   * Falling {@link Tetromino} current {@code Y} position.
-   * 
-   * @see #fallingPiece
-   */
-  private int curY = 0;
-  /**
-   * Falling {@link Tetromino}.
-   */
-  private Tetromino fallingPiece;
-  /**
-   * The held piece.
-   * 
-   * @see #holdPiece()
-   * @see <a href="http://tetris.wikia.com/wiki/Hold_piece">Hold piece</a>
-   */
-  private Tetromino holdPiece;
-  /**
-   * Is hold piece available yet?
-   * 
-   * @see #holdPiece
-   * @see #holdPiece()
-   */
-  private boolean holdPieceAvailable = false;
-  /**
-   * Is the stack inside the danger zone?
-   * 
-   * @see #BOARD_CEILING
-   * @see #BOARD_CEILING_DANGER_ZONE
-   * @see #pieceDropped()
-   */
-  private boolean insideDangerZone = false;
-  /**
-   * This is where the action is.
-   *
-   * <p>
-   * The playfield is the grid into which {@link Tetromino}es fall, also called the "well" (common
-   * in older games) or the "matrix" (especially in more recent Tetris brand games). The playfield
-   * is surrounded by a frame called the {@link Tetrion}, which controls the overall behavior of
-   * {@link Tetromino}es.
-   * </p>
-   */
-  private final Tetromino.Shape[] playfield;
-
-  /**
-   * Shape generator thread.
-   * 
-   * <p>
-   * Shapes are generated in a separate thread to prevent delay in the gameplay.
-   * </p>
-   * 
-   * @see #nextShapes
-   * @see #newPiece()
-   */
-  private final Thread shapeGenerator;
-  /**
-   * Next shapes queue.
-   * 
-   * <p>
-   * The shapes are filled by the {@link #shapeGenerator} thread until the queue is full. The
-   * {@code BlockingQueue} will also make the thread asking to take a piece wait until the queue is
-   * not empty (should never happen...).
-   * </p>
-   */
-  private final BlockingQueue<Tetromino.Shape> nextShapes;
-
-  // Drop variables
   /**
-   * Lock delay count.
+   * Is a game counted as running by the metrics?
    *
    * <p>
-   * Counts the number of frames between drop and lock of the falling piece.
+   * The engine is already stopped when it notifies its game over, so the metrics do not rely on
+   * its started flag.
    * </p>
-   *
-   * @see #fallingPiece
-   * @see #SRS_LOCK_DELAY
-   */
-  private int lockDelayFrameCount = 0;
-  /**
-   * Is hard drop in progress?
-   * 
-   * @see DropHardAction
-   * @see ReleaseDropHardAction
-   * @see #hardDrop()
-   * @see #isDroppingHard()
-   * @see #setDroppingHard(boolean)
-   * @see <a href="http://tetris.wikia.com/wiki/Drop">Drop</a>
-   */
-  private boolean droppingHard;
-  /**
-   * Is soft drop in progress?
-   * 
-   * @see DropSoftAction
-   * @see ReleaseDropSoftAction
-   * @see #softDrop()
-   * @see #isDroppingSoft()
-   * @see #setDroppingSoft(boolean)
-   * @see <a href="http://tetris.wikia.com/wiki/Drop">Drop</a>
    */
-  private boolean droppingSoft;
+  private boolean running = false;
 
-  // Shift variables
-  /**
-   * Shift delay count.
-   *
-   * <p>
-   * Positive values counts frames between first shift and start of auto shift, negative value
-   * counts frames between each auto-shifts.
-   * </p>
-   *
-   * @see #AUTO_SHIFT_DELAY
-   * @see #AUTO_SHIFT_PERIOD
-   */
-  private int shiftDelayCount = 0;
+  // Refresh Scheduler
   /**
-   * Is left shift in progress?
+   * The refresh thread.
    * 
-   * @see ShiftLeftAction
-   * @see ReleaseShiftLeftAction
-   * @see #isShiftingLeft()
-   * @see #setShiftingLeft(boolean)
+   * @see #actionPerformed(ActionEvent)
    */
-  private boolean shiftingLeft;
+  private Timer timer;
   /**
-   * Is right shift in progress?
+   * Time (ns) of the last frame, negative if none yet.
    * 
-   * @see ShiftRightAction
-   * @see ReleaseShiftRightAction
-   * @see #isShiftingRight()
-   * @see #setShiftingRight(boolean)
+   * @see #actionPerformed(ActionEvent)
    */
-  private boolean shiftingRight;
+  private long lastFrameTime = -1;
 
-  // Rotation variables
   /**
-   * Count the rotations needed.
-   *
-   * <p>
-   * Negative value stands for left rotations, positive values stands for right rotations.
-   * </p>
+   * The engine applying the rules of the game.
    */
-  private int rotationsNeeded = 0;
+  private final Engine engine;
   /**
-   * Is left rotation in progress?
+   * The controller fed by the key strokes.
    * 
-   * @see RotateLeftAction
-   * @see ReleaseRotateLeftAction
-   * @see #isRotatingLeft()
-   * @see #setRotatingLeft(boolean)
-   * @see <a href="http://tetris.wikia.com/wiki/Rotate">Rotate</a>
+   * @see #initInputs()
    */
-  private boolean rotatingLeft;
+  private final KeyboardController keyboard;
   /**
-   * Is right rotation in progress?
-   * 
-   * @see RotateRightAction
-   * @see ReleaseRotateRightAction
-   * @see #isRotatingRight()
-   * @see #setRotatingRight(boolean)
-   * @see <a href="http://tetris.wikia.com/wiki/Rotate">Rotate</a>
+   * The writer recording the games, {@code null} if none.
    */
-  private boolean rotatingRight;
+  private ReplayWriter replayWriter = null;
 
-  // Behavior variables
   /**
    * Class to store <em>standard</em> configurations for the Tetris game.
    * 
@@ -414,9 +173,10 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
     MIX(CLASSIC_SPEED_UP_RATIO, true, false, SRS_LOCK_DELAY, false);
 
     /**
-     * Ratio applied to {@link Tetrion#gravity} on each {@link Tetrion#level} up.
+     * Ratio applied to {@link Engine#getGravity()} on each {@link Engine#getLevel()} up.
      * 
-     * @see Tetrion#levelUpSpeedUpRatio
+     * @see #getLevelUpSpeedUpRatio()
+     * @see Engine#setMode(Tetrion.Mode)
      */
     private final double levelUpSpeedUpRatio;
     /**
@@ -428,7 +188,7 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
      * a certain number of alternative spaces for the {@link Tetromino} to look.
      * </p>
      * 
-     * @see Tetrion#wallKickEnabled
+     * @see #isWallKickEnabled()
      *
      * @see <a href="http://tetris.wikia.com/wiki/Wall_kick">Wall kick</a>
      */
@@ -443,7 +203,7 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
      * of alternative spaces for the {@link Tetromino} to look.
      * </p>
      * 
-     * @see Tetrion#floorKickEnabled
+     * @see #isFloorKickEnabled()
      *
      * @see #wallKickEnabled
      * @see <a href="http://tetris.wikia.com/wiki/Floor_kick">Floor kick</a>
@@ -458,7 +218,7 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
      * some newer games give the {@link Tetromino} some time before locking.
      * </p>
      * 
-     * @see Tetrion#lockDelay
+     * @see #getLockDelay()
      *
      * @see #SRS_LOCK_DELAY
      * @see #CLASSIC_LOCK_DELAY
@@ -475,7 +235,7 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
      * moved or rotated (even O, which ordinarily does not rotate).
      * </p>
      * 
-     * @see Tetrion#infiniteLockDelayEnabled
+     * @see #isInfiniteLockDelayEnabled()
      *
      * @see #SRS_LOCK_DELAY
      * @see <a href="http://tetris.wikia.com/wiki/Lock_delay">Lock delay</a>
@@ -503,7 +263,7 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
     }
 
     /**
-     * Ratio applied to {@link Tetrion#gravity} on each {@link Tetrion#level} up.
+     * Ratio applied to {@link Engine#getGravity()} on each {@link Engine#getLevel()} up.
      * 
      * @return the level up speed up ration
      */
@@ -549,66 +309,6 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
     }
   }
 
-  /**
-   * Ratio applied to {@link #gravity} on each {@link #level} up.
-   */
-  private double levelUpSpeedUpRatio = SRS_SPEED_UP_RATIO;
-  /**
-   * Are wall kicks enabled?
-   *
-   * <p>
-   * A wall kick happens when a player rotates a piece when no space exists in the squares where
-   * that {@link Tetromino} would normally occupy after the rotation. To compensate, the game sets a
-   * certain number of alternative spaces for the {@link Tetromino} to look.
-   * </p>
-   *
-   * @see <a href="http://tetris.wikia.com/wiki/Wall_kick">Wall kick</a>
-   */
-  private boolean wallKickEnabled = true;
-  /**
-   * Are floor kicks enabled?
-   *
-   * <p>
-   * A floor kick, like a wall kick, happens when a player rotates a piece when no space exists in
-   * the squares where that {@link Tetromino} would normally occupy after the rotation when rotating
-   * against the floor opposed to a wall. To compensate, the game sets a certain number of
-   * alternative spaces for the {@link Tetromino} to look.
-   * </p>
-   *
-   * @see #wallKickEnabled
-   * @see <a href="http://tetris.wikia.com/wiki/Floor_kick">Floor kick</a>
-   */
-  private boolean floorKickEnabled = true;
-  /**
-   * Lock delay refers to how many frames a {@link Tetromino} waits while on the ground before
-   * locking.
-   *
-   * <p>
-   * Classic games lock {@link Tetromino}es immediately once it has fallen to the ground, while some
-   * newer games give the {@link Tetromino} some time before locking.
-   * </p>
-   *
-   * @see #SRS_LOCK_DELAY
-   * @see #CLASSIC_LOCK_DELAY
-   * @see <a href="http://tetris.wikia.com/wiki/Lock_delay">Lock delay</a>
-   * @see <a href="http://tetris.wikia.com/wiki/Infinity">Infinity</a>
-   */
-  private long lockDelay = SRS_LOCK_DELAY;
-  /**
-   * Is infinity mode enabled?
-   *
-   * <p>
-   * Infinity is The Tetris Company's term to refer to a characteristic in recent Tetris
-   * Guideline-compliant games where the lock delay of a {@link Tetromino} is reset whenever it is
-   * moved or rotated (even O, which ordinarily does not rotate).
-   * </p>
-   *
-   * @see #SRS_LOCK_DELAY
-   * @see <a href="http://tetris.wikia.com/wiki/Lock_delay">Lock delay</a>
-   * @see <a href="http://tetris.wikia.com/wiki/Infinity">Infinity</a>
-   */
-  private boolean infiniteLockDelayEnabled = true;
-
   // Graphical components
   /**
    * Is a refresh of the holdKey space needed?
@@ -618,8 +318,6 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
   private boolean refreshHoldPanelNeeded;
   /**
    * Hold space display panel.
-   * 
-   * @see #holdPiece
    */
   private JPanel holdPanel;
   /**
@@ -630,8 +328,6 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
   private boolean refreshPreviewPanelsNeeded;
   /**
    * Preview panels.
-   * 
-   * @see #nextShapes
    */
   private JPanel[] previewPanels;
   /**
@@ -639,6 +335,12 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
    */
   private JLabel statusbar;
 
+  // Metrics
+  /**
+   * Game metrics.
+   */
+  private static final Metrics METRICS = Metrics.getInstance();
+
   // Music components
   /**
    * MIDI player for background music.
@@ -654,6 +356,7 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
       MIDI_PLAYER.add(classLoader.getResource("music/Tetris-Game_Over.mid"));
       MIDI_PLAYER.setLooping(true);
     }
+    METRICS.setMidiPlayer(MIDI_PLAYER);
   }
 
   // User interactions
@@ -686,55 +389,49 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
    * Key stroke to hold a piece.
    * 
    * @see #initInputs()
-   * @see HoldAction
+   * @see Controller#HOLD
    */
   private String holdKey = "D";
   /**
    * Key stroke to shift the falling piece to the left.
    * 
    * @see #initInputs()
-   * @see ShiftLeftAction
-   * @see ReleaseShiftLeftAction
+   * @see Controller#SHIFT_LEFT
    */
   private String leftKey = "LEFT";
   /**
    * Key stroke to shift the falling piece to the right.
    * 
    * @see #initInputs()
-   * @see ShiftRightAction
-   * @see ReleaseShiftRightAction
+   * @see Controller#SHIFT_RIGHT
    */
   private String rightKey = "RIGHT";
   /**
    * Key stroke to soft drop the falling piece.
    * 
    * @see #initInputs()
-   * @see DropSoftAction
-   * @see ReleaseDropSoftAction
+   * @see Controller#SOFT_DROP
    */
   private String softDropKey = "DOWN";
   /**
    * Key stroke to hard drop the falling piece.
    * 
    * @see #initInputs()
-   * @see DropHardAction
-   * @see ReleaseDropHardAction
+   * @see Controller#HARD_DROP
    */
   private String hardDropKey = "UP";
   /**
    * Key stroke to rotate the falling piece to the left.
    * 
    * @see #initInputs()
-   * @see RotateLeftAction
-   * @see ReleaseRotateLeftAction
+   * @see Controller#ROTATE_LEFT
    */
   private String rotateLeftKey = "A";
   /**
    * Key stroke to rotate the falling piece to the right.
    * 
    * @see #initInputs()
-   * @see RotateRightAction
-   * @see ReleaseRotateRightAction
+   * @see Controller#ROTATE_RIGHT
    */
   private String rotateRightKey = "Z";
 
@@ -749,35 +446,23 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
    * Constructor of a Tetrion with a status bar, an hold space and preview panels.
    * 
    * @param label the status bar
-   * @param holdSpace the panel in which to draw the {@link #holdPiece}
-   * @param previews the panels in which to draw the {@link #nextShapes}
+   * @param holdSpace the panel in which to draw the hold piece
+   * @param previews the panels in which to draw the next shapes
    */
   public Tetrion(final JLabel label, final JPanel holdSpace,
       final JPanel... previews) {
     this.setFocusable(true);
     this.setBackground(Color.BLACK.brighter());
     // this.setBorder(new B);
-    this.fallingPiece = new Tetromino();
-    this.holdPiece = new Tetromino();
     this.timer = new Timer(TIME_BETWEEN_FRAMES, this);
 
     this.statusbar = label;
-    this.playfield = new Tetromino.Shape[BOARD_WIDTH * BOARD_HEIGHT];
 
-    // Thread to fill the next shapes with Random Generator
-    this.nextShapes = new ArrayBlockingQueue<>(
-        Math.max(SHAPES_QUEUE_SIZE, previews.length), true);
-    this.shapeGenerator = new Thread(() -> {
-      try {
-        while (true) {
-          this.nextShapes.put(Tetromino.Shape.getRandomShape());
-          this.refreshPreviewPanelsNeeded =
-              this.previewPanels != null && this.previewPanels.length > 0;
-        }
-      } catch (InterruptedException ex) {
-        LOGGER.log(Level.SEVERE, null, ex);
-      }
-    }, "Shape Generator");
+    this.engine = new Engine(
+        Math.max(Engine.SHAPES_QUEUE_SIZE, previews == null ? 0 : previews.length));
+    this.keyboard = new KeyboardController();
+    this.engine.setController(keyboard);
+    this.engine.addListener(this);
 
     this.holdPanel = holdSpace;
     this.previewPanels = previews;
@@ -785,8 +470,6 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
     this.initInputs();
     this.setMode();
 
-    this.clear();
-
     if (MIDI_PLAYER != null) {
       MIDI_PLAYER.startPlaying();
     }
@@ -838,65 +521,43 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
     }
     actionMap.put("PAUSE", new PauseAction("Pause"));
 
-    // Hold
-    if (holdKey != null && !holdKey.isEmpty()) {
-      inputMap.put(KeyStroke.getKeyStroke(holdKey), "HOLD");
-    }
-    actionMap.put("HOLD", new HoldAction("Hold"));
+    // Controller inputs
+    initInput(inputMap, actionMap, holdKey, "HOLD", "Hold", Controller.HOLD);
+    initInput(inputMap, actionMap, leftKey, "LEFT", "Left",
+        Controller.SHIFT_LEFT);
+    initInput(inputMap, actionMap, rightKey, "RIGHT", "Right",
+        Controller.SHIFT_RIGHT);
+    initInput(inputMap, actionMap, softDropKey, "DOWN", "Down",
+        Controller.SOFT_DROP);
+    initInput(inputMap, actionMap, hardDropKey, "DROP", "Drop",
+        Controller.HARD_DROP);
+    initInput(inputMap, actionMap, rotateLeftKey, "ROTATE_LEFT",
+        "Rotate Left", Controller.ROTATE_LEFT);
+    initInput(inputMap, actionMap, rotateRightKey, "ROTATE_RIGHT",
+        "Rotate Right", Controller.ROTATE_RIGHT);
+  }
 
-    // Left
-    if (leftKey != null && !leftKey.isEmpty()) {
-      inputMap.put(KeyStroke.getKeyStroke(leftKey), "LEFT");
-      inputMap.put(KeyStroke.getKeyStroke(RELEASE_INPUT + leftKey),
-          "RELEASE_LEFT");
-    }
-    actionMap.put("LEFT", new ShiftLeftAction("Left"));
-    actionMap.put("RELEASE_LEFT", new ReleaseShiftLeftAction("Release Left"));
-    // Right
-    if (rightKey != null && !rightKey.isEmpty()) {
-      inputMap.put(KeyStroke.getKeyStroke(rightKey), "RIGHT");
-      inputMap.put(KeyStroke.getKeyStroke(RELEASE_INPUT + rightKey),
-          "RELEASE_RIGHT");
-    }
-    actionMap.put("RIGHT", new ShiftRightAction("Right"));
-    actionMap.put("RELEASE_RIGHT",
-        new ReleaseShiftRightAction("Release Right"));
-
-    // Down
-    if (softDropKey != null && !softDropKey.isEmpty()) {
-      inputMap.put(KeyStroke.getKeyStroke(softDropKey), "DOWN");
-      inputMap.put(KeyStroke.getKeyStroke(RELEASE_INPUT + softDropKey),
-          "RELEASE_DOWN");
-    }
-    actionMap.put("DOWN", new DropSoftAction("Down"));
-    actionMap.put("RELEASE_DOWN", new ReleaseDropSoftAction("Release Down"));
-    // Drop down
-    if (hardDropKey != null && !hardDropKey.isEmpty()) {
-      inputMap.put(KeyStroke.getKeyStroke(hardDropKey), "DROP");
-      inputMap.put(KeyStroke.getKeyStroke(RELEASE_INPUT + hardDropKey),
-          "RELEASE_DROP");
-    }
-    actionMap.put("DROP", new DropHardAction("Drop"));
-    actionMap.put("RELEASE_DROP", new ReleaseDropHardAction("Release Drop"));
-
-    // Rotate left
-    if (rotateLeftKey != null && !rotateLeftKey.isEmpty()) {
-      inputMap.put(KeyStroke.getKeyStroke(rotateLeftKey), "ROTATE_LEFT");
-      inputMap.put(KeyStroke.getKeyStroke(RELEASE_INPUT + rotateLeftKey),
-          "RELEASE_ROTATE_LEFT");
-    }
-    actionMap.put("ROTATE_LEFT", new RotateLeftAction("Rotate Left"));
-    actionMap.put("RELEASE_ROTATE_LEFT",
-        new ReleaseRotateLeftAction("Release Rotate Left"));
-    // Rotate right
-    if (rotateRightKey != null && !rotateRightKey.isEmpty()) {
-      inputMap.put(KeyStroke.getKeyStroke(rotateRightKey), "ROTATE_RIGHT");
-      inputMap.put(KeyStroke.getKeyStroke(RELEASE_INPUT + rotateRightKey),
-          "RELEASE_ROTATE_RIGHT");
+  /**
+   * Map a key stroke press and release to a {@link Controller} input.
+   * 
+   * @param inputMap the input map
+   * @param actionMap the action map
+   * @param keyStroke the key stroke, ignored if {@code null} or empty
+   * @param key the action key
+   * @param name the action name
+   * @param input the {@link Controller} input
+   */
+  private void initInput(final InputMap inputMap, final ActionMap actionMap,
+      final String keyStroke, final String key, final String name,
+      final int input) {
+    if (keyStroke != null && !keyStroke.isEmpty()) {
+      inputMap.put(KeyStroke.getKeyStroke(keyStroke), key);
+      inputMap.put(KeyStroke.getKeyStroke(RELEASE_INPUT + keyStroke),
+          "RELEASE_" + key);
     }
-    actionMap.put("ROTATE_RIGHT", new RotateRightAction("Rotate Right"));
-    actionMap.put("RELEASE_ROTATE_RIGHT",
-        new ReleaseRotateRightAction("Release Rotate Right"));
+    actionMap.put(key, new InputAction(name, input, true));
+    actionMap.put("RELEASE_" + key,
+        new InputAction("Release " + name, input, false));
   }
 
   /**
@@ -912,26 +573,94 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
    * @param mode <em>standard</em> configurations for the Tetris game
    */
   public final void setMode(final Mode mode) {
-    if (mode == null) {
-      setMode(Mode.MIX);
-      return;
+    engine.setMode(mode);
+  }
+
+  /**
+   * Set the playfield dimensions of the next games.
+   *
+   * @param board the playfield dimensions, {@link Board#STANDARD} if {@code null}
+   * @throws IllegalStateException if a game is in progress
+   */
+  public final void setBoard(final Board board) {
+    engine.setBoard(board);
+    repaint();
+  }
+
+  /**
+   * Get the engine applying the rules of the game.
+   * 
+   * @return the engine
+   */
+  public final Engine getEngine() {
+    return engine;
+  }
+
+  /**
+   * Get the controller playing the game.
+   *
+   * @return the controller, the keyboard if no other controller was set
+   */
+  public final synchronized Controller getController() {
+    return replayWriter != null ? replayWriter.getDelegate()
+        : engine.getController();
+  }
+
+  /**
+   * Set the controller playing the game instead of the keyboard, e.g. a bot.
+   *
+   * @param controller the controller, {@code null} to play with the keyboard
+   */
+  public final synchronized void setController(final Controller controller) {
+    Controller player = controller == null ? keyboard : controller;
+    if (replayWriter != null) {
+      replayWriter.setDelegate(player);
+    } else {
+      engine.setController(player);
     }
-    switch (mode) {
-      case CLASSIC:
-      case MODERN:
-      case MIX:
-        this.levelUpSpeedUpRatio = mode.getLevelUpSpeedUpRatio();
-        this.wallKickEnabled = mode.isWallKickEnabled();
-        this.floorKickEnabled = mode.isFloorKickEnabled();
-        this.lockDelay = mode.getLockDelay();
-        this.infiniteLockDelayEnabled = mode.isInfiniteLockDelayEnabled();
-        break;
-      default:
-        setMode(Mode.MIX);
-        break;
+  }
+
+  /**
+   * Get the writer recording the games.
+   *
+   * @return the replay writer, {@code null} if none
+   */
+  public final synchronized ReplayWriter getReplayWriter() {
+    return replayWriter;
+  }
+
+  /**
+   * Set the writer recording the games, fed by the current controller.
+   *
+   * @param writer the replay writer, {@code null} to stop recording
+   */
+  public final synchronized void setReplayWriter(final ReplayWriter writer) {
+    Controller player = engine.getController();
+    if (replayWriter != null) {
+      engine.removeListener(replayWriter);
+      player = replayWriter.getDelegate();
+    }
+    this.replayWriter = writer;
+    if (writer != null) {
+      writer.setDelegate(player);
+      engine.addListener(writer);
+      engine.setController(writer);
+    } else {
+      engine.setController(player);
     }
   }
 
+  /**
+   * Get the key strokes of the controller inputs.
+   *
+   * @return the key strokes, indexed by input bit from {@link Controller#HOLD} to
+   *         {@link Controller#ROTATE_RIGHT}
+   */
+  public final synchronized String[] getKeyBindings() {
+    return new String[] {holdKey, leftKey, rightKey, softDropKey, hardDropKey,
+        rotateLeftKey, rotateRightKey};
+  }
+
   // #########################################################################
   /**
    * Get the status bar.
@@ -1104,23 +833,13 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
     this.rotateRightKey = rotateRightKeyStroke;
   }
 
-  // #########################################################################
   /**
    * Get the number of lines cleared.
    * 
    * @return the number of lines cleared
    */
-  public final synchronized int getLines() {
-    return lines;
-  }
-
-  /**
-   * Set the number of lines cleared.
-   * 
-   * @param newLines the new number of lines cleared.
-   */
-  protected final synchronized void setLines(final int newLines) {
-    this.lines = newLines;
+  public final int getLines() {
+    return engine.getLines();
   }
 
   /**
@@ -1128,29 +847,8 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
    * 
    * @return the level
    */
-  public final synchronized int getLevel() {
-    return level;
-  }
-
-  /**
-   * Set the level.
-   * 
-   * <p>
-   * Setting the level will automatically update the {@link #gravity}.
-   * </p>
-   * 
-   * @see <a href="http://tetris.wikia.com/wiki/Gravity">Gravity</a>
-   * @see <a href="http://tetris.wikia.com/wiki/Drop#Gravity">Drop Gravity</a>
-   * 
-   * @param newLevel the new level
-   */
-  protected synchronized void setLevel(final int newLevel) {
-    this.level = newLevel;
-    // Set up gravity (number of cell per frames)
-    this.gravity =
-        Math.min(BOARD_CEILING, Math.pow(this.levelUpSpeedUpRatio, this.level)
-            / (double) FRAME_PER_SECOND);
-    System.out.println("Level " + this.level + " (" + this.gravity + "G)");
+  public final int getLevel() {
+    return engine.getLevel();
   }
 
   /**
@@ -1158,40 +856,17 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
    * 
    * @return the score
    */
-  public final synchronized long getScore() {
-    return score;
-  }
-
-  /**
-   * Set the score.
-   * 
-   * @param newScore the new score
-   */
-  protected final synchronized void setScore(final long newScore) {
-    this.score = newScore;
+  public final long getScore() {
+    return engine.getScore();
   }
 
   /**
    * Is the stack inside the danger zone?
    * 
-   * @see #BOARD_CEILING
-   * @see #BOARD_CEILING_DANGER_ZONE
-   * @see #pieceDropped()
-   * 
    * @return {@code true} if the stack inside the danger zone
    */
-  public final synchronized boolean isInsideDangerZone() {
-    return insideDangerZone;
-  }
-
-  /**
-   * Set if the stack is inside the danger zone.
-   * 
-   * @param isInsideDangerZone the new <em>insideDangerZone</em> status
-   */
-  protected final synchronized void setInsideDangerZone(
-      final boolean isInsideDangerZone) {
-    this.insideDangerZone = isInsideDangerZone;
+  public final boolean isInsideDangerZone() {
+    return engine.isInsideDangerZone();
   }
 
   /**
@@ -1199,20 +874,8 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
    * 
    * @return {@code true} if the game has started
    */
-  public final synchronized boolean isStarted() {
-    return started;
-  }
-
-  /**
-   * Set game's <em>started</em> status.
-   * 
-   * @see #start()
-   * @see #stop()
-   * 
-   * @param isStarted the new <em>started</em> status
-   */
-  protected final synchronized void setStarted(final boolean isStarted) {
-    this.started = isStarted;
+  public final boolean isStarted() {
+    return engine.isStarted();
   }
 
   /**
@@ -1220,167 +883,10 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
    * 
    * @return {@code true} if the game is paused
    */
-  public final synchronized boolean isPaused() {
+  public final boolean isPaused() {
     return paused;
   }
 
-  /**
-   * Set game's <em>paused</em> status.
-   * 
-   * @see #pause()
-   * 
-   * @param isPaused the new <em>paused</em> status
-   */
-  protected final synchronized void setPaused(final boolean isPaused) {
-    this.paused = isPaused;
-  }
-
-  /**
-   * Is hard drop in progress?
-   * 
-   * @return {@code true} if hard drop in progress
-   */
-  public final synchronized boolean isDroppingHard() {
-    return droppingHard;
-  }
-
-  /**
-   * Set hard drop progress.
-   * 
-   * @param isHardDropping Is hard drop in progress?
-   */
-  protected final synchronized void setDroppingHard(
-      final boolean isHardDropping) {
-    this.droppingHard = isHardDropping;
-  }
-
-  /**
-   * Is soft drop in progress?
-   * 
-   * @return {@code true} if soft drop in progress
-   */
-  public final synchronized boolean isDroppingSoft() {
-    return droppingSoft;
-  }
-
-  /**
-   * Set soft drop progress.
-   * 
-   * @param isSoftDropping Is soft drop in progress?
-   */
-  protected final synchronized void setDroppingSoft(
-      final boolean isSoftDropping) {
-    this.droppingSoft = isSoftDropping;
-  }
-
-  /**
-   * Is left shift in progress?
-   * 
-   * @return {@code true} if left shift in progress
-   */
-  public final synchronized boolean isShiftingLeft() {
-    return shiftingLeft;
-  }
-
-  /**
-   * Set left shift progress.
-   * 
-   * <p>
-   * Resets {@link #shiftDelayCount} to {@code 0}.
-   * </p>
-   * 
-   * @param leftShifting Is left shift in progress?
-   */
-  protected final synchronized void setShiftingLeft(
-      final boolean leftShifting) {
-    this.shiftingLeft = leftShifting;
-    this.shiftDelayCount = 0;
-  }
-
-  /**
-   * Is right shift in progress?
-   * 
-   * @return {@code true} if right shift in progress
-   */
-  public final synchronized boolean isShiftingRight() {
-    return shiftingRight;
-  }
-
-  /**
-   * Set right shift progress.
-   * 
-   * <p>
-   * Resets {@link #shiftDelayCount} to {@code 0}.
-   * </p>
-   * 
-   * @param rightShifting Is right shift in progress?
-   */
-  protected final synchronized void setShiftingRight(
-      final boolean rightShifting) {
-    this.shiftingRight = rightShifting;
-    this.shiftDelayCount = 0;
-  }
-
-  /**
-   * Is left rotation in progress?
-   * 
-   * @return {@code true} if left rotation in progress
-   */
-  public final synchronized boolean isRotatingLeft() {
-    return rotatingLeft;
-  }
-
-  /**
-   * Set left rotation progress.
-   * 
-   * <p>
-   * Decrease {@link #rotationsNeeded} if {@code true}, resets to {@code 0} otherwise.
-   * </p>
-   * 
-   * @see #rotationsNeeded
-   * 
-   * @param isRotatingLeft Is left rotation in progress?
-   */
-  protected final synchronized void setRotatingLeft(
-      final boolean isRotatingLeft) {
-    this.rotatingLeft = isRotatingLeft;
-    if (rotatingLeft) {
-      rotationsNeeded--;
-    } else {
-      rotationsNeeded = 0;
-    }
-  }
-
-  /**
-   * Is right rotation in progress?
-   * 
-   * @return {@code true} if right rotation in progress
-   */
-  public final synchronized boolean isRotatingRight() {
-    return rotatingRight;
-  }
-
-  /**
-   * Set right rotation progress.
-   * 
-   * <p>
-   * Increase {@link #rotationsNeeded} if {@code true}, resets to {@code 0} otherwise.
-   * </p>
-   * 
-   * @see #rotationsNeeded
-   * 
-   * @param isRotatingRight Is right rotation in progress?
-   */
-  protected final synchronized void setRotatingRight(
-      final boolean isRotatingRight) {
-    this.rotatingRight = isRotatingRight;
-    if (rotatingRight) {
-      rotationsNeeded++;
-    } else {
-      rotationsNeeded = 0;
-    }
-  }
-
   // #########################################################################
   @Override
   public void close() {
@@ -1392,68 +898,68 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
         LOGGER.log(Level.SEVERE, null, ex);
       }
     }
-    if (shapeGenerator != null && shapeGenerator.isAlive()) {
-      shapeGenerator.interrupt();
+    ReplayWriter writer = getReplayWriter();
+    if (writer != null) {
+      try {
+        writer.close();
+      } catch (IOException ex) {
+        LOGGER.log(Level.SEVERE, "Cannot write replay", ex);
+      }
     }
-    nextShapes.clear();
     timer = null;
   }
 
   // #########################################################################
   @Override
   public void actionPerformed(final ActionEvent e) {
-    if (fallingPiece.getShape() == null) {
-      newPiece();
-    } else {
-      // Rotation
-      if (rotatingLeft && rotationsNeeded < 0) {
-        if (Tetrion.this.tryMove(Tetrion.this.fallingPiece.rotateLeft(),
-            Tetrion.this.curX, Tetrion.this.curY)) {
-          rotationsNeeded = 0;
-        }
-      } else if (rotatingRight && rotationsNeeded > 0) {
-        if (Tetrion.this.tryMove(Tetrion.this.fallingPiece.rotateRight(),
-            Tetrion.this.curX, Tetrion.this.curY)) {
-          rotationsNeeded = 0;
-        }
-      }
+    long now = System.nanoTime();
+    METRICS.tick(lastFrameTime < 0 ? -1 : now - lastFrameTime);
+    lastFrameTime = now;
 
-      // Shift
-      if ((shiftingLeft || shiftingRight)
-          && ((shiftDelayCount >= 0 && shiftDelayCount++ >= AUTO_SHIFT_DELAY)
-              || (shiftDelayCount < 0
-                  && shiftDelayCount-- >= -AUTO_SHIFT_PERIOD))) {
-        if (shiftingLeft && Tetrion.this.tryMove(Tetrion.this.fallingPiece,
-            Tetrion.this.curX - 1, Tetrion.this.curY)) {
-          shiftDelayCount = -1;
-        } else if (shiftingRight
-            && Tetrion.this.tryMove(Tetrion.this.fallingPiece,
-                Tetrion.this.curX + 1, Tetrion.this.curY)) {
-          shiftDelayCount = -1;
-        } else {
-          shiftDelayCount = 0;
-        }
-      }
+    engine.tick();
+    ReplayWriter writer = getReplayWriter();
+    METRICS.setReplayBacklog(writer == null ? 0 : writer.getBacklog());
+    METRICS.setReplayTruncated(writer == null ? 0 : writer.getTruncatedGames());
+  }
 
-      // Gravity
-      this.framesSinceLastDrop++;
-      double cellsDown = this.gravity * this.framesSinceLastDrop;
-      if (droppingSoft) {
-        cellsDown *= SOFT_DROP_RATIO;
-      }
-      boolean softDroppingWithoutLock = true;
-      while (cellsDown > 1 && softDroppingWithoutLock) {
-        cellsDown--;
-        softDroppingWithoutLock = softDrop();
-      }
+  @Override
+  public void pieceMoved(final Engine source) {
+    repaint();
+  }
 
-      // Lock
-      if (!softDroppingWithoutLock && lockDelayFrameCount++ >= lockDelay) {
-        pieceDropped();
+  @Override
+  public void pieceLocked(final Engine source, final int removedLines) {
+    METRICS.pieceLocked();
+    if (removedLines > 0) {
+      METRICS.linesCleared(removedLines);
+      repaint();
+    }
+    if (MIDI_PLAYER != null) {
+      if (source.isInsideDangerZone()) {
+        MIDI_PLAYER.setTempoFactor(DANGER_ZONE_MUSIC_RATIO);
+      } else {
+        MIDI_PLAYER.setTempoFactor(1F);
       }
     }
   }
 
+  @Override
+  public void holdChanged(final Engine source) {
+    refreshHoldPanelNeeded = holdPanel != null;
+  }
+
+  @Override
+  public void nextShapesChanged(final Engine source) {
+    refreshPreviewPanelsNeeded =
+        this.previewPanels != null && this.previewPanels.length > 0;
+  }
+
+  @Override
+  public void gameOver(final Engine source) {
+    this.stop();
+    repaint();
+  }
+
   // #########################################################################
   @Override
   public void paint(final Graphics g) {
@@ -1481,7 +987,8 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
     Dimension size = getSize();
     int squareWidth = squareWidth();
     int squareHeight = squareHeight();
-    int boardTop = (int) size.getHeight() - BOARD_CEILING * squareHeight;
+    int boardTop = (int) size.getHeight()
+        - engine.getBoard().getCeiling() * squareHeight;
 
     // Draw stack
     drawStack(g, squareWidth, squareHeight, boardTop);
@@ -1499,7 +1006,7 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
   }
 
   /**
-   * Draw the stack in the {@link #playfield}.
+   * Draw the stack in the playfield.
    * 
    * @param g the graphics used for drawing
    * @param squareWidth the blocks width
@@ -1508,25 +1015,30 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
    */
   private void drawStack(final Graphics g, final int squareWidth,
       final int squareHeight, final int boardTop) {
-    for (int y = 0; y < BOARD_CEILING; ++y) {
-      for (int x = 0; x < BOARD_WIDTH; ++x) {
-        Tetromino.Shape shape = shapeAt(x, BOARD_CEILING - y - 1);
+    Board board = engine.getBoard();
+    for (int y = 0; y < board.getCeiling(); ++y) {
+      for (int x = 0; x < board.getWidth(); ++x) {
+        Tetromino.Shape shape = engine.shapeAt(x, board.getCeiling() - y - 1);
         if (shape != null) {
           drawSquare(g, 0 + x * squareWidth, boardTop + y * squareHeight, shape,
               squareWidth, squareHeight);
+        } else if (engine.isOccupied(x, board.getCeiling() - y - 1)) {
+          // Garbage has no shape
+          drawSquare(g, 0 + x * squareWidth, boardTop + y * squareHeight,
+              GARBAGE_COLOR, squareWidth, squareHeight);
         }
       }
     }
   }
 
   /**
-   * Draw the falling piece in the {@link #playfield}.
+   * Draw the falling piece in the playfield.
    * 
    * <p>
    * Defines the estimated drop target destination and draws the <em>Ghost piece</em> as well.
    * </p>
    * 
-   * @see #fallingPiece
+   * @see Engine#getFallingPiece()
    * @see <a href="http://tetris.wikia.com/wiki/Ghost_piece">Ghost piece</a>
    * 
    * @param g the graphics used for drawing
@@ -1536,16 +1048,14 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
    */
   private void drawFallingPiece(final Graphics g, final int squareWidth,
       final int squareHeight, final int boardTop) {
+    Tetromino fallingPiece = engine.getFallingPiece();
     if (fallingPiece.getShape() != null) {
       Tetromino.Shape fallingShape = fallingPiece.getShape();
+      int curX = engine.getCurX();
+      int curY = engine.getCurY();
       // Define drop estimated target
-      int dropY = curY;
-      while (dropY > 0) {
-        if (!isMoveable(fallingPiece, curX, dropY - 1)) {
-          break;
-        }
-        --dropY;
-      }
+      int dropY = engine.getDropY();
+      int ceiling = engine.getBoard().getCeiling();
 
       // Draw ghost
       Color shadowColor = fallingShape.getShadowColor();
@@ -1553,7 +1063,7 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
         int blockX = curX + fallingPiece.x(i);
         int blockDropY = dropY - fallingPiece.y(i);
         drawSquare(g, 0 + blockX * squareWidth,
-            boardTop + (BOARD_CEILING - blockDropY - 1) * squareHeight,
+            boardTop + (ceiling - blockDropY - 1) * squareHeight,
             shadowColor, squareWidth, squareHeight);
       }
 
@@ -1563,7 +1073,7 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
         int blockX = curX + fallingPiece.x(i);
         int blockY = curY - fallingPiece.y(i);
         drawSquare(g, 0 + blockX * squareWidth,
-            boardTop + (BOARD_CEILING - blockY - 1) * squareHeight,
+            boardTop + (ceiling - blockY - 1) * squareHeight,
             fallingColor, squareWidth, squareHeight);
       }
     }
@@ -1572,10 +1082,11 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
   /**
    * Draw the hold piece.
    * 
-   * @see #holdPiece
+   * @see Engine#getHoldPiece()
    * @see #refreshHoldPanelNeeded
    */
   private void drawHold() {
+    Tetromino holdPiece = engine.getHoldPiece();
     if (!refreshHoldPanelNeeded || holdPanel == null
         || holdPiece.getShape() == null) {
       return;
@@ -1585,7 +1096,7 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
     int panelSquareHeight = squareHeight(holdPanel, Tetromino.BLOCKS);
     for (int j = 0; j < Tetromino.BLOCKS; ++j) {
       Color color;
-      if (holdPieceAvailable) {
+      if (engine.isHoldPieceAvailable()) {
         color = holdShape.getColor();
       } else {
         color = holdShape.getShadowColor();
@@ -1601,7 +1112,7 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
   /**
    * Draw the next shapes preview.
    * 
-   * @see #nextShapes
+   * @see Engine#getNextShapes()
    * @see #previewPanels
    * @see #refreshPreviewPanelsNeeded
    */
@@ -1610,6 +1121,7 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
       return;
     }
     int s = 0;
+    Collection<Tetromino.Shape> nextShapes = engine.getNextShapes();
     int n = Math.min(previewPanels.length, nextShapes.size());
     for (Tetromino.Shape shape : nextShapes) {
       if (s >= n) {
@@ -1688,7 +1200,7 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
    * @return the blocks width in pixels
    */
   private int squareWidth() {
-    return squareWidth(this, BOARD_WIDTH);
+    return squareWidth(this, engine.getBoard().getWidth());
   }
 
   /**
@@ -1709,21 +1221,12 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
    * @return the blocks height in pixels
    */
   private int squareHeight() {
-    return squareHeight(this, BOARD_CEILING);
+    return squareHeight(this, engine.getBoard().getCeiling());
   }
 
   // #########################################################################
-  /**
-   * Get the shape at the given position in the {@link #playfield}.
-   * 
-   * @param x the {@code X} position
-   * @param y the {@code Y} position
-   * @return the shape at the given position in the {@link #playfield}, {@code null} if none.
-   */
-  private Tetromino.Shape shapeAt(final int x, final int y) {
-    return playfield[(y * BOARD_WIDTH) + x];
-  }
 
+  // #########################################################################
   /**
    * Start the game at first level.
    * 
@@ -1743,17 +1246,52 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
     if (paused) {
       return;
     }
-    if (!shapeGenerator.isAlive()) {
-      shapeGenerator.start();
+
+    keyboard.reset();
+    engine.start(startLevel);
+    refreshHoldPanelNeeded = holdPanel != null;
+
+    if (MIDI_PLAYER != null && (MIDI_PLAYER.isStopped()
+        || MIDI_PLAYER.isPaused() || MIDI_PLAYER.getCurrentSongIndex() == 0
+        || MIDI_PLAYER.getCurrentSongIndex() > 2)) {
+      MIDI_PLAYER.startPlaying(1);
+      MIDI_PLAYER.setLooping(true);
+    }
+    if (!running) {
+      running = true;
+      METRICS.gameStarted();
+    }
+    lastFrameTime = -1;
+    timer.start();
+  }
+
+  /**
+   * Resume a game suspended to disk.
+   *
+   * <p>
+   * The game resumes at the frame it was suspended, in its mode. Nothing is resumed if the game is
+   * paused, or if the saved game was over.
+   * </p>
+   *
+   * @param file the saved game file
+   * @return {@code true} if the game was resumed
+   * @throws IOException if the saved game cannot be read or is invalid
+   *
+   * @see #suspend(Path)
+   */
+  public boolean resume(final Path file) throws IOException {
+    SavedGame saved = SavedGame.load(file);
+    if (paused || !saved.getState().isStarted()) {
+      return false;
     }
+    LOGGER.log(Level.INFO, "Resuming {0}", saved);
 
-    framesContinouslySoftDropped = -1;
-    fallingPiece.setShape(null);
-    holdPiece.setShape(null);
-    lines = 0;
-    score = 0;
-    this.setLevel(startLevel);
-    this.clear();
+    keyboard.reset();
+    setMode(saved.getMode());
+    engine.restoreState(saved.getState());
+    refreshHoldPanelNeeded = holdPanel != null;
+    refreshPreviewPanelsNeeded =
+        this.previewPanels != null && this.previewPanels.length > 0;
 
     if (MIDI_PLAYER != null && (MIDI_PLAYER.isStopped()
         || MIDI_PLAYER.isPaused() || MIDI_PLAYER.getCurrentSongIndex() == 0
@@ -1761,18 +1299,51 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
       MIDI_PLAYER.startPlaying(1);
       MIDI_PLAYER.setLooping(true);
     }
-    started = true;
+    if (!running) {
+      running = true;
+      METRICS.gameStarted();
+    }
+    lastFrameTime = -1;
     timer.start();
+    return true;
+  }
+
+  /**
+   * Suspend the game in progress to disk, pausing it.
+   *
+   * <p>
+   * The saved game replaces the given file atomically.
+   * </p>
+   *
+   * @param file the saved game file
+   * @return {@code true} if a game was in progress and saved
+   * @throws IOException if the game cannot be written
+   *
+   * @see #resume(Path)
+   */
+  public boolean suspend(final Path file) throws IOException {
+    if (!engine.isStarted()) {
+      return false;
+    }
+    if (!paused) {
+      pause();
+    }
+    SavedGame.of(engine).save(file);
+    return true;
   }
 
   /**
    * Stop the game.
    */
   private void stop() {
-    timer.stop();
-    fallingPiece.setShape(null);
-    holdPiece.setShape(null);
-    started = false;
+    if (timer != null) {
+      timer.stop();
+    }
+    engine.stop();
+    if (running) {
+      running = false;
+      METRICS.gameStopped();
+    }
     if (MIDI_PLAYER != null) {
       MIDI_PLAYER.setTempoFactor(1F);
       MIDI_PLAYER.moveToSong(MIDI_PLAYER.size() - 1);
@@ -1784,7 +1355,7 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
    * Pause the game.
    */
   private void pause() {
-    if (!started) {
+    if (!engine.isStarted()) {
       return;
     }
 
@@ -1792,6 +1363,7 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
     if (paused) {
       timer.stop();
     } else {
+      lastFrameTime = -1;
       timer.start();
     }
     // Setup refresh status
@@ -1809,1070 +1381,116 @@ public class Tetrion extends JPanel implements ActionListener, Closeable {
   }
 
   /**
-   * Clear the {@link #playfield}.
+   * Update the status bar.
    */
-  private void clear() {
-    for (int i = 0, n = BOARD_HEIGHT * BOARD_WIDTH; i < n; ++i) {
-      playfield[i] = null;
-    }
-  }
-
-  /**
-   * Hard drop.
-   * 
-   * <p>
-   * Drop the falling piece until it reaches the stack or bottom of {@link #playfield}.
-   * </p>
-   * 
-   * @see DropHardAction
-   * @see ReleaseDropHardAction
-   * @see #isDroppingHard()
-   * @see #setDroppingHard(boolean)
-   * @see <a href="http://tetris.wikia.com/wiki/Drop">Drop</a>
-   */
-  private void hardDrop() {
-    int newY = curY;
-    int iniY = curY;
-    while (newY > 0) {
-      if (!tryMove(fallingPiece, curX, newY - 1)) {
-        break;
-      }
-      --newY;
+  private void updateStatusBar() {
+    if (statusbar == null) {
+      return;
     }
-    // Count lines continuously hard dropped and add twice to score
-    if (droppingHard) {
-      this.score += 2 * (iniY - newY);
+    StringBuilder statusBuilder = new StringBuilder();
+    if (!engine.isStarted()) {
+      statusBuilder.append("GAME OVER \t ");
+    } else if (paused) {
+      statusBuilder.append("Paused \t ");
     }
+    statusBuilder.append("Level: ").append(engine.getLevel());
+    statusBuilder.append(" \t Lines: ").append(engine.getLines());
+    statusBuilder.append(" \t Score: ").append(engine.getScore());
 
-    pieceDropped();
+    statusbar.setText(statusBuilder.toString());
   }
 
+  // #########################################################################
   /**
-   * Soft drop.
-   * 
-   * @see DropSoftAction
-   * @see ReleaseDropSoftAction
-   * @see #isDroppingSoft()
-   * @see #setDroppingSoft(boolean)
-   * @see <a href="http://tetris.wikia.com/wiki/Drop">Drop</a>
+   * Action to start/pause the {@link Tetrion}.
    * 
-   * @return {@code true} if soft dropped occurred
+   * @author Mathieu Brunot
    */
-  private boolean softDrop() {
-    // Count lines continuously soft dropped and add to score
-    if (droppingSoft && framesContinouslySoftDropped >= 0) {
-      this.framesContinouslySoftDropped++;
-    }
-    if (!tryMove(fallingPiece, curX, curY - 1)) {
-      if (droppingSoft && framesContinouslySoftDropped >= 0) {
-        this.score += framesContinouslySoftDropped;
-      }
-      if (droppingSoft) {
-        this.framesContinouslySoftDropped = 0;
-      } else {
-        this.framesContinouslySoftDropped = -1;
-      }
-      return false;
-    }
+  protected class PauseAction extends AbstractAction {
 
-    this.framesSinceLastDrop = 0;
-    return true;
-  }
+    /**
+     * Default Serial Version ID.
+     */
+    private static final long serialVersionUID = 1L;
 
-  /**
-   * Lock the falling piece and add to the stack.
-   * 
-   * <p>
-   * When a falling piece reaches the stack or bottom of the {@link #playfield}, the piece is itself
-   * added to the stack.
-   * </p>
-   * 
-   * @return the number of full lines removed
-   */
-  private int pieceDropped() {
-    // Add piece to stack
-    for (int i = 0; i < Tetromino.BLOCKS; ++i) {
-      int x = curX + fallingPiece.x(i);
-      int y = curY - fallingPiece.y(i);
-      playfield[(y * BOARD_WIDTH) + x] = fallingPiece.getShape();
-    }
-    lockDelayFrameCount = 0;
-    framesSinceLastDrop = 0;
-    fallingPiece.setShape(null);
+    /**
+     * Creates an {@code PauseAction}.
+     */
+    public PauseAction() {}
 
-    refreshHoldPanelNeeded = holdPanel != null
-        && (holdPieceAvailable != (holdPiece.getShape() != null));
-    holdPieceAvailable = holdPiece.getShape() != null;
+    /**
+     * Creates an {@code PauseAction} with the specified name.
+     *
+     * @param name the name ({@code Action.NAME}) for the action; a value of {@code null} is ignored
+     */
+    public PauseAction(final String name) {
+      super(name);
+    }
 
-    int removedLines = removeFullLines();
+    /**
+     * Creates an {@code PauseAction} with the specified name and small icon.
+     *
+     * @param name the name ({@code Action.NAME}) for the action; a value of {@code null} is ignored
+     * @param icon the small icon ({@code Action.SMALL_ICON}) for the action; a value of
+     *        {@code null} is ignored
+     */
+    public PauseAction(final String name, final Icon icon) {
+      super(name, icon);
+    }
 
-    if (MIDI_PLAYER != null) {
-      insideDangerZone = false;
-      for (int i = (BOARD_HEIGHT * BOARD_WIDTH) - 1, n =
-          BOARD_CEILING_DANGER_ZONE * BOARD_WIDTH; i > n
-              && !insideDangerZone; --i) {
-        insideDangerZone = playfield[i] != null;
-      }
-      if (insideDangerZone) {
-        MIDI_PLAYER.setTempoFactor(DANGER_ZONE_MUSIC_RATIO);
+    @Override
+    public void actionPerformed(final ActionEvent e) {
+      if (!engine.isStarted()) {
+        Tetrion.this.start();
       } else {
-        MIDI_PLAYER.setTempoFactor(1F);
+        Tetrion.this.pause();
       }
     }
-
-    return removedLines;
   }
 
   /**
-   * Remove full lines from stack.
+   * Action to press or release a {@link Controller} input.
    * 
-   * @return the number of lines removed from stack
+   * @see KeyboardController
+   * @author Mathieu Brunot
    */
-  private int removeFullLines() {
-    int numFullLines = 0;
+  protected class InputAction extends AbstractAction {
 
-    for (int i = BOARD_HEIGHT - 1; i >= 0; --i) {
-      boolean lineIsFull = true;
+    /**
+     * Default Serial Version ID.
+     */
+    private static final long serialVersionUID = 1L;
 
-      for (int j = 0; j < BOARD_WIDTH; ++j) {
-        if (shapeAt(j, i) == null) {
-          lineIsFull = false;
-          break;
-        }
-      }
-
-      if (lineIsFull) {
-        ++numFullLines;
-        for (int k = i; k < BOARD_HEIGHT - 1; ++k) {
-          for (int j = 0; j < BOARD_WIDTH; ++j) {
-            playfield[(k * BOARD_WIDTH) + j] = shapeAt(j, k + 1);
-          }
-        }
-      }
-    }
-
-    if (numFullLines > 0) {
-      lines += numFullLines;
-      updateScoreFromFullLines(numFullLines);
-
-      fallingPiece.setShape(null);
-      repaint();
-    }
-
-    return numFullLines;
-  }
-
-  /**
-   * Update score for a given number of lines removed from stack.
-   * 
-   * @param numFullLines the number of lines removed from stack.
-   */
-  private void updateScoreFromFullLines(final int numFullLines) {
-    /*
-     * Increase score based on lines cleared for level.
-     *
-     * @see <a href="http://tetris.wikia.com/wiki/Scoring">Scoring</a>
-     */
-    int scoreToAdd = SCORES[numFullLines] * (level + 1);
-    if (numFullLines == TETRIS) {
-      System.out.println("TETRIS!!!");
-    }
-    score += scoreToAdd * (level + 1);
-
-    // Update speed based on level
-    int newLevel = lines / LEVEL_RATIO;
-    if (newLevel > (lines - numFullLines) / LEVEL_RATIO) {
-      setLevel(level + 1);
-    }
-  }
-
-  /**
-   * Hold piece.
-   * 
-   * <p>
-   * At any time starting when a {@link Tetromino} enters the {@link #playfield} until it locks, the
-   * player can press the Hold button on the controller to move the active {@link Tetromino} into
-   * the hold space and move the {@link Tetromino} that was in the hold space to the top of the
-   * {@link #playfield}. A {@link Tetromino} moved into the hold space is unavailable for switching
-   * out until the {@link Tetromino} that was moved out of the hold space locks.
-   * </p>
-   * 
-   * @see <a href="http://tetris.wikia.com/wiki/Hold_piece">Hold piece</a>
-   */
-  private void holdPiece() {
-    if (!started || (holdPiece.getShape() != null && !holdPieceAvailable)) {
-      return;
-    }
-
-    newPiece(true);
-  }
-
-  /**
-   * Generate a new piece without using the hold piece.
-   */
-  private void newPiece() {
-    newPiece(false);
-  }
-
-  /**
-   * Generate a new piece at the top of the {@link #playfield}.
-   * 
-   * <p>
-   * If the new piece cannot be moved to the top of the {@link #playfield}, the game stops.
-   * </p>
-   * 
-   * @see #holdPiece
-   * @see #holdPiece()
-   * @see #nextShapes
-   * @see #shapeGenerator
-   * @see #tryMove(Tetromino, int, int)
-   * @see #stop()
-   * 
-   * @param switchWithHoldPiece switch current piece with {@link #holdPiece}
-   */
-  private void newPiece(final boolean switchWithHoldPiece) {
-    if (switchWithHoldPiece && holdPiece.getShape() != null) {
-      Tetromino.Shape tempFallingPieceShape = fallingPiece.getShape();
-      fallingPiece.setShape(holdPiece.getShape());
-      holdPiece.setShape(tempFallingPieceShape);
-      holdPieceAvailable = false;
-      refreshHoldPanelNeeded = holdPanel != null;
-    } else {
-      // If no piece currently held but switch asked
-      if (switchWithHoldPiece) {
-        holdPiece.setShape(fallingPiece.getShape());
-        holdPieceAvailable = false;
-        refreshHoldPanelNeeded = holdPanel != null;
-      }
-
-      try {
-        fallingPiece.setShape(this.nextShapes.take());
-        System.out.println("Next pieces: " + this.nextShapes);
-      } catch (InterruptedException ex) {
-        LOGGER.log(Level.SEVERE, null, ex);
-        fallingPiece.setRandomShape();
-      }
-    }
-    curX = BOARD_WIDTH / 2 - 1;
-    curY = BOARD_CEILING - 1 + fallingPiece.minY();
-
-    if (!tryMove(fallingPiece, curX, curY)) {
-      this.stop();
-    }
-    repaint();
-  }
-
-  /**
-   * Can the given piece be moved at the given position.
-   * 
-   * @param piece the piece to test
-   * @param newX the new {@code X} position for the given piece
-   * @param newY the new {@code Y} position for the given piece
-   * @return {@code true} if the given piece can be moved at the given position
-   */
-  private boolean isMoveable(final Tetromino piece, final int newX,
-      final int newY) {
-    for (int i = 0; i < Tetromino.BLOCKS; ++i) {
-      int x = newX + piece.x(i);
-      int y = newY - piece.y(i);
-      if (x < 0 || x >= BOARD_WIDTH || y < 0 || y >= BOARD_HEIGHT) {
-        return false;
-      }
-      if (shapeAt(x, y) != null) {
-        return false;
-      }
-    }
-    return true;
-  }
-
-  /**
-   * Try to move the given piece at the given position.
-   * 
-   * <p>
-   * If the piece can be moved, then the given piece will <em>replace</em> the {@link #fallingPiece}
-   * and be set at the given position.
-   * </p>
-   * 
-   * <p>
-   * If the piece cannot be moved, the game will test if floor kicks and wall kicks are possible:
-   * </p>
-   * <ul>
-   * <li>A wall kick happens when a player rotates a piece when no space exists in the squares where
-   * that {@link Tetromino} would normally occupy after the rotation.</li>
-   * <li>A floor kick, like a wall kick, happens when a player rotates a piece when no space exists
-   * in the squares where that {@link Tetromino} would normally occupy after the rotation <em>when
-   * rotating against the floor opposed to a wall</em>.</li>
-   * </ul>
-   * 
-   * @see #isMoveable(Tetromino, int, int)
-   * @see <a href="http://tetris.wikia.com/wiki/Wall_kick">Wall kick</a>
-   * @see <a href="http://tetris.wikia.com/wiki/Floor_kick">Floor kick</a>
-   * 
-   * @param piece the piece to test
-   * @param newX the new {@code X} position for the given piece
-   * @param newY the new {@code Y} position for the given piece
-   * @return {@code true} if the given piece was moved at the given position
-   */
-  private boolean tryMove(final Tetromino piece, final int newX,
-      final int newY) {
-    int finalNewX = newX;
-    int finalNewY = newY;
-
-    boolean isMoveable = isMoveable(piece, finalNewX, finalNewY);
-
-    if (!isMoveable && wallKickEnabled && (rotatingLeft || rotatingRight)) {
-      // Handle wall kick
-      int newWidth = piece.getWidth();
-
-      if (newX >= 0 && newX <= BOARD_WIDTH - newWidth - 1) {
-        for (int x = newX + 1, l = newX + newWidth - 1; x < l
-            && !isMoveable; x++) {
-          if (isMoveable(piece, x, newY)) {
-            finalNewX = x;
-            isMoveable = true;
-          }
-        }
-      } else if (newX >= newWidth - 1 && newX <= BOARD_WIDTH - 1) {
-        for (int x = newX - 1, l = newX - newWidth - 1; x > l
-            && !isMoveable; x--) {
-          if (isMoveable(piece, x, newY)) {
-            finalNewX = x;
-            isMoveable = true;
-          }
-        }
-      }
-    }
-
-    if (!isMoveable && floorKickEnabled && (rotatingLeft || rotatingRight)) {
-      // Handle floor kick
-      int newHeight = piece.getHeight();
-      if (newY >= 0 && newY <= BOARD_HEIGHT - newHeight - 1) {
-        for (int y = newY + 1, l = newY + newHeight; y < l
-            && !isMoveable; y++) {
-          if (isMoveable(piece, newX, y)) {
-            finalNewY = y;
-            isMoveable = true;
-          }
-        }
-      }
-    }
-
-    // Move piece and return status
-    if (isMoveable) {
-      // Infinity
-      if (infiniteLockDelayEnabled) {
-        lockDelayFrameCount = 0;
-      }
-
-      fallingPiece = piece;
-      curX = finalNewX;
-      curY = finalNewY;
-      repaint();
-      return true;
-    } else {
-      return false;
-    }
-  }
-
-  /**
-   * Update the status bar.
-   */
-  private void updateStatusBar() {
-    if (statusbar == null) {
-      return;
-    }
-    StringBuilder statusBuilder = new StringBuilder();
-    if (!started) {
-      statusBuilder.append("GAME OVER \t ");
-    } else if (paused) {
-      statusBuilder.append("Paused \t ");
-    }
-    statusBuilder.append("Level: ").append(level);
-    statusBuilder.append(" \t Lines: ").append(lines);
-    statusBuilder.append(" \t Score: ").append(score);
-    // Debug
-    // statusBuilder.append(" (").append(curX).append(",")
-    // .append(curY).append(",")
-    // .append(fallingPiece).append(")");
-
-    statusbar.setText(statusBuilder.toString());
-  }
-
-  // #########################################################################
-  /**
-   * Action to start/pause the {@link Tetrion}.
-   * 
-   * @author Mathieu Brunot
-   */
-  protected class PauseAction extends AbstractAction {
-
-    /**
-     * Default Serial Version ID.
-     */
-    private static final long serialVersionUID = 1L;
-
-    /**
-     * Creates an {@code PauseAction}.
-     */
-    public PauseAction() {}
+    /**
+     * The {@link Controller} input.
+     */
+    private final int input;
+    /**
+     * Is the input pressed or released?
+     */
+    private final boolean pressed;
 
     /**
-     * Creates an {@code PauseAction} with the specified name.
+     * Creates an {@code InputAction} with the specified name.
      *
      * @param name the name ({@code Action.NAME}) for the action; a value of {@code null} is ignored
+     * @param controllerInput the {@link Controller} input
+     * @param isPressed {@code true} if the input is pressed, {@code false} if released
      */
-    public PauseAction(final String name) {
+    public InputAction(final String name, final int controllerInput,
+        final boolean isPressed) {
       super(name);
-    }
-
-    /**
-     * Creates an {@code PauseAction} with the specified name and small icon.
-     *
-     * @param name the name ({@code Action.NAME}) for the action; a value of {@code null} is ignored
-     * @param icon the small icon ({@code Action.SMALL_ICON}) for the action; a value of
-     *        {@code null} is ignored
-     */
-    public PauseAction(final String name, final Icon icon) {
-      super(name, icon);
+      this.input = controllerInput;
+      this.pressed = isPressed;
     }
 
     @Override
     public void actionPerformed(final ActionEvent e) {
-      if (!started) {
-        Tetrion.this.start();
+      if (pressed) {
+        keyboard.press(input);
       } else {
-        Tetrion.this.pause();
-      }
-    }
-  }
-
-  /**
-   * Action to hold a piece.
-   * 
-   * @see Tetrion#holdPiece()
-   * @author Mathieu Brunot
-   */
-  protected class HoldAction extends AbstractAction {
-
-    /**
-     * Default Serial Version ID.
-     */
-    private static final long serialVersionUID = 1L;
-
-    /**
-     * Creates an {@code HoldAction}.
-     */
-    public HoldAction() {}
-
-    /**
-     * Creates an {@code HoldAction} with the specified name.
-     *
-     * @param name the name ({@code Action.NAME}) for the action; a value of {@code null} is ignored
-     */
-    public HoldAction(final String name) {
-      super(name);
-    }
-
-    /**
-     * Creates an {@code HoldAction} with the specified name and small icon.
-     *
-     * @param name the name ({@code Action.NAME}) for the action; a value of {@code null} is ignored
-     * @param icon the small icon ({@code Action.SMALL_ICON}) for the action; a value of
-     *        {@code null} is ignored
-     */
-    public HoldAction(final String name, final Icon icon) {
-      super(name, icon);
-    }
-
-    @Override
-    public void actionPerformed(final ActionEvent e) {
-      if (isStarted() && !isPaused()) {
-        Tetrion.this.holdPiece();
-      }
-    }
-  }
-
-  /**
-   * Action to shift the falling piece to the left.
-   * 
-   * @see Tetrion#setShiftingLeft(boolean)
-   * @see Tetrion#isShiftingLeft()
-   * @see Tetrion#tryMove(Tetromino, int, int)
-   * @author Mathieu Brunot
-   */
-  protected class ShiftLeftAction extends AbstractAction {
-
-    /**
-     * Default Serial Version ID.
-     */
-    private static final long serialVersionUID = 1L;
-
-    /**
-     * Creates an {@code ShiftLeftAction}.
-     */
-    public ShiftLeftAction() {}
-
-    /**
-     * Creates an {@code ShiftLeftAction} with the specified name.
-     *
-     * @param name the name ({@code Action.NAME}) for the action; a value of {@code null} is ignored
-     */
-    public ShiftLeftAction(final String name) {
-      super(name);
-    }
-
-    /**
-     * Creates an {@code ShiftLeftAction} with the specified name and small icon.
-     *
-     * @param name the name ({@code Action.NAME}) for the action; a value of {@code null} is ignored
-     * @param icon the small icon ({@code Action.SMALL_ICON}) for the action; a value of
-     *        {@code null} is ignored
-     */
-    public ShiftLeftAction(final String name, final Icon icon) {
-      super(name, icon);
-    }
-
-    @Override
-    public void actionPerformed(final ActionEvent e) {
-      if (isShiftingLeft()) {
-        return;
-      }
-      setShiftingLeft(true);
-      if (!started || fallingPiece.getShape() == null || paused) {
-        return;
+        keyboard.release(input);
       }
-      Tetrion.this.tryMove(Tetrion.this.fallingPiece, Tetrion.this.curX - 1,
-          Tetrion.this.curY);
-    }
-  }
-
-  /**
-   * Action to stop shifting the falling piece to the left.
-   * 
-   * @see Tetrion#setShiftingLeft(boolean)
-   * @see Tetrion#isShiftingLeft()
-   * @see Tetrion#tryMove(Tetromino, int, int)
-   * @see ShiftLeftAction
-   * @author Mathieu Brunot
-   */
-  protected class ReleaseShiftLeftAction extends AbstractAction {
-
-    /**
-     * Default Serial Version ID.
-     */
-    private static final long serialVersionUID = 1L;
-
-    /**
-     * Creates an {@code ReleaseShiftLeftAction}.
-     */
-    public ReleaseShiftLeftAction() {}
-
-    /**
-     * Creates an {@code ReleaseShiftLeftAction} with the specified name.
-     *
-     * @param name the name ({@code Action.NAME}) for the action; a value of {@code null} is ignored
-     */
-    public ReleaseShiftLeftAction(final String name) {
-      super(name);
-    }
-
-    /**
-     * Creates an {@code ReleaseShiftLeftAction} with the specified name and small icon.
-     *
-     * @param name the name ({@code Action.NAME}) for the action; a value of {@code null} is ignored
-     * @param icon the small icon ({@code Action.SMALL_ICON}) for the action; a value of
-     *        {@code null} is ignored
-     */
-    public ReleaseShiftLeftAction(final String name, final Icon icon) {
-      super(name, icon);
-    }
-
-    @Override
-    public void actionPerformed(final ActionEvent e) {
-      setShiftingLeft(false);
-    }
-  }
-
-  /**
-   * Action to shift the falling piece to the right.
-   * 
-   * @see Tetrion#setShiftingRight(boolean)
-   * @see Tetrion#isShiftingRight()
-   * @see Tetrion#tryMove(Tetromino, int, int)
-   * @author Mathieu Brunot
-   */
-  protected class ShiftRightAction extends AbstractAction {
-
-    /**
-     * Default Serial Version ID.
-     */
-    private static final long serialVersionUID = 1L;
-
-    /**
-     * Creates an {@code ShiftRightAction}.
-     */
-    public ShiftRightAction() {}
-
-    /**
-     * Creates an {@code ShiftRightAction} with the specified name.
-     *
-     * @param name the name ({@code Action.NAME}) for the action; a value of {@code null} is ignored
-     */
-    public ShiftRightAction(final String name) {
-      super(name);
-    }
-
-    /**
-     * Creates an {@code ShiftRightAction} with the specified name and small icon.
-     *
-     * @param name the name ({@code Action.NAME}) for the action; a value of {@code null} is ignored
-     * @param icon the small icon ({@code Action.SMALL_ICON}) for the action; a value of
-     *        {@code null} is ignored
-     */
-    public ShiftRightAction(final String name, final Icon icon) {
-      super(name, icon);
-    }
-
-    @Override
-    public void actionPerformed(final ActionEvent e) {
-      if (isShiftingRight()) {
-        return;
-      }
-      setShiftingRight(true);
-      if (!started || fallingPiece.getShape() == null || paused) {
-        return;
-      }
-      Tetrion.this.tryMove(Tetrion.this.fallingPiece, Tetrion.this.curX + 1,
-          Tetrion.this.curY);
-    }
-  }
-
-  /**
-   * Action to stop shifting the falling piece to the right.
-   * 
-   * @see Tetrion#setShiftingRight(boolean)
-   * @see Tetrion#isShiftingRight()
-   * @see Tetrion#tryMove(Tetromino, int, int)
-   * @see ShiftRightAction
-   * @author Mathieu Brunot
-   */
-  protected class ReleaseShiftRightAction extends AbstractAction {
-
-    /**
-     * Default Serial Version ID.
-     */
-    private static final long serialVersionUID = 1L;
-
-    /**
-     * Creates an {@code ReleaseShiftRightAction}.
-     */
-    public ReleaseShiftRightAction() {}
-
-    /**
-     * Creates an {@code ReleaseShiftRightAction} with the specified name.
-     *
-     * @param name the name ({@code Action.NAME}) for the action; a value of {@code null} is ignored
-     */
-    public ReleaseShiftRightAction(final String name) {
-      super(name);
-    }
-
-    /**
-     * Creates an {@code ReleaseShiftRightAction} with the specified name and small icon.
-     *
-     * @param name the name ({@code Action.NAME}) for the action; a value of {@code null} is ignored
-     * @param icon the small icon ({@code Action.SMALL_ICON}) for the action; a value of
-     *        {@code null} is ignored
-     */
-    public ReleaseShiftRightAction(final String name, final Icon icon) {
-      super(name, icon);
-    }
-
-    @Override
-    public void actionPerformed(final ActionEvent e) {
-      setShiftingRight(false);
-    }
-  }
-
-  /**
-   * Action to softly drop the falling piece.
-   * 
-   * @see Tetrion#setDroppingSoft(boolean)
-   * @see Tetrion#isDroppingSoft()
-   * @author Mathieu Brunot
-   */
-  protected class DropSoftAction extends AbstractAction {
-
-    /**
-     * Default Serial Version ID.
-     */
-    private static final long serialVersionUID = 1L;
-
-    /**
-     * Creates an {@code DropSoftAction}.
-     */
-    public DropSoftAction() {}
-
-    /**
-     * Creates an {@code DropSoftAction} with the specified name.
-     *
-     * @param name the name ({@code Action.NAME}) for the action; a value of {@code null} is ignored
-     */
-    public DropSoftAction(final String name) {
-      super(name);
-    }
-
-    /**
-     * Creates an {@code DropSoftAction} with the specified name and small icon.
-     *
-     * @param name the name ({@code Action.NAME}) for the action; a value of {@code null} is ignored
-     * @param icon the small icon ({@code Action.SMALL_ICON}) for the action; a value of
-     *        {@code null} is ignored
-     */
-    public DropSoftAction(final String name, final Icon icon) {
-      super(name, icon);
-    }
-
-    @Override
-    public void actionPerformed(final ActionEvent e) {
-      if (isDroppingSoft()) {
-        return;
-      }
-      setDroppingSoft(true);
-      if (!started || fallingPiece.getShape() == null || paused) {
-        return;
-      }
-      Tetrion.this.framesSinceLastDrop = 0;
-      Tetrion.this.framesContinouslySoftDropped = 0;
-    }
-  }
-
-  /**
-   * Action to stop softly dropping the falling piece.
-   * 
-   * @see Tetrion#setDroppingSoft(boolean)
-   * @see DropSoftAction
-   * @author Mathieu Brunot
-   */
-  protected class ReleaseDropSoftAction extends AbstractAction {
-
-    /**
-     * Default Serial Version ID.
-     */
-    private static final long serialVersionUID = 1L;
-
-    /**
-     * Creates an {@code ReleaseDropSoftAction}.
-     */
-    public ReleaseDropSoftAction() {}
-
-    /**
-     * Creates an {@code ReleaseDropSoftAction} with the specified name.
-     *
-     * @param name the name ({@code Action.NAME}) for the action; a value of {@code null} is ignored
-     */
-    public ReleaseDropSoftAction(final String name) {
-      super(name);
-    }
-
-    /**
-     * Creates an {@code ReleaseDropSoftAction} with the specified name and small icon.
-     *
-     * @param name the name ({@code Action.NAME}) for the action; a value of {@code null} is ignored
-     * @param icon the small icon ({@code Action.SMALL_ICON}) for the action; a value of
-     *        {@code null} is ignored
-     */
-    public ReleaseDropSoftAction(final String name, final Icon icon) {
-      super(name, icon);
-    }
-
-    @Override
-    public void actionPerformed(final ActionEvent e) {
-      Tetrion.this.setDroppingSoft(false);
-    }
-  }
-
-  /**
-   * Action to hard drop the falling piece.
-   * 
-   * @see Tetrion#setDroppingHard(boolean)
-   * @see Tetrion#isDroppingHard()
-   * @see Tetrion#hardDrop()
-   * @author Mathieu Brunot
-   */
-  protected class DropHardAction extends AbstractAction {
-
-    /**
-     * Default Serial Version ID.
-     */
-    private static final long serialVersionUID = 1L;
-
-    /**
-     * Creates an {@code DropHardAction}.
-     */
-    public DropHardAction() {}
-
-    /**
-     * Creates an {@code DropHardAction} with the specified name.
-     *
-     * @param name the name ({@code Action.NAME}) for the action; a value of {@code null} is ignored
-     */
-    public DropHardAction(final String name) {
-      super(name);
-    }
-
-    /**
-     * Creates an {@code DropHardAction} with the specified name and small icon.
-     *
-     * @param name the name ({@code Action.NAME}) for the action; a value of {@code null} is ignored
-     * @param icon the small icon ({@code Action.SMALL_ICON}) for the action; a value of
-     *        {@code null} is ignored
-     */
-    public DropHardAction(final String name, final Icon icon) {
-      super(name, icon);
-    }
-
-    @Override
-    public void actionPerformed(final ActionEvent e) {
-      if (isDroppingHard()) {
-        return;
-      }
-      setDroppingHard(true);
-      if (!started || fallingPiece.getShape() == null || paused) {
-        return;
-      }
-      Tetrion.this.hardDrop();
-    }
-  }
-
-  /**
-   * Action to stop hard dropping the falling piece.
-   * 
-   * @see Tetrion#setDroppingHard(boolean)
-   * @see DropSoftAction
-   * @author Mathieu Brunot
-   */
-  protected class ReleaseDropHardAction extends AbstractAction {
-
-    /**
-     * Default Serial Version ID.
-     */
-    private static final long serialVersionUID = 1L;
-
-    /**
-     * Creates an {@code ReleaseDropHardAction}.
-     */
-    public ReleaseDropHardAction() {}
-
-    /**
-     * Creates an {@code ReleaseDropHardAction} with the specified name.
-     *
-     * @param name the name ({@code Action.NAME}) for the action; a value of {@code null} is ignored
-     */
-    public ReleaseDropHardAction(final String name) {
-      super(name);
-    }
-
-    /**
-     * Creates an {@code ReleaseDropHardAction} with the specified name and small icon.
-     *
-     * @param name the name ({@code Action.NAME}) for the action; a value of {@code null} is ignored
-     * @param icon the small icon ({@code Action.SMALL_ICON}) for the action; a value of
-     *        {@code null} is ignored
-     */
-    public ReleaseDropHardAction(final String name, final Icon icon) {
-      super(name, icon);
-    }
-
-    @Override
-    public void actionPerformed(final ActionEvent e) {
-      setDroppingHard(false);
-    }
-  }
-
-  /**
-   * Action to rotate the falling piece to the left.
-   * 
-   * @see Tetrion#setRotatingLeft(boolean)
-   * @see Tetrion#isRotatingLeft()
-   * @author Mathieu Brunot
-   */
-  protected class RotateLeftAction extends AbstractAction {
-
-    /**
-     * Default Serial Version ID.
-     */
-    private static final long serialVersionUID = 1L;
-
-    /**
-     * Creates an {@code RotateLeftAction}.
-     */
-    public RotateLeftAction() {}
-
-    /**
-     * Creates an {@code RotateLeftAction} with the specified name.
-     *
-     * @param name the name ({@code Action.NAME}) for the action; a value of {@code null} is ignored
-     */
-    public RotateLeftAction(final String name) {
-      super(name);
-    }
-
-    /**
-     * Creates an {@code RotateLeftAction} with the specified name and small icon.
-     *
-     * @param name the name ({@code Action.NAME}) for the action; a value of {@code null} is ignored
-     * @param icon the small icon ({@code Action.SMALL_ICON}) for the action; a value of
-     *        {@code null} is ignored
-     */
-    public RotateLeftAction(final String name, final Icon icon) {
-      super(name, icon);
-    }
-
-    @Override
-    public void actionPerformed(final ActionEvent e) {
-      if (isRotatingLeft()) {
-        return;
-      }
-      setRotatingLeft(true);
-    }
-  }
-
-  /**
-   * Action to stop rotating the falling piece to the left.
-   * 
-   * @see Tetrion#setRotatingLeft(boolean)
-   * @see RotateLeftAction
-   * @author Mathieu Brunot
-   */
-  protected class ReleaseRotateLeftAction extends AbstractAction {
-
-    /**
-     * Default Serial Version ID.
-     */
-    private static final long serialVersionUID = 1L;
-
-    /**
-     * Creates an {@code ReleaseRotateLeftAction}.
-     */
-    public ReleaseRotateLeftAction() {}
-
-    /**
-     * Creates an {@code ReleaseRotateLeftAction} with the specified name.
-     *
-     * @param name the name ({@code Action.NAME}) for the action; a value of {@code null} is ignored
-     */
-    public ReleaseRotateLeftAction(final String name) {
-      super(name);
-    }
-
-    /**
-     * Creates an {@code ReleaseRotateLeftAction} with the specified name and small icon.
-     *
-     * @param name the name ({@code Action.NAME}) for the action; a value of {@code null} is ignored
-     * @param icon the small icon ({@code Action.SMALL_ICON}) for the action; a value of
-     *        {@code null} is ignored
-     */
-    public ReleaseRotateLeftAction(final String name, final Icon icon) {
-      super(name, icon);
-    }
-
-    @Override
-    public void actionPerformed(final ActionEvent e) {
-      setRotatingLeft(false);
-    }
-  }
-
-  /**
-   * Action to rotate the falling piece to the right.
-   * 
-   * @see Tetrion#setRotatingRight(boolean)
-   * @see Tetrion#isRotatingRight()
-   * @author Mathieu Brunot
-   */
-  protected class RotateRightAction extends AbstractAction {
-
-    /**
-     * Default Serial Version ID.
-     */
-    private static final long serialVersionUID = 1L;
-
-    /**
-     * Creates an {@code RotateRightAction}.
-     */
-    public RotateRightAction() {}
-
-    /**
-     * Creates an {@code RotateRightAction} with the specified name.
-     *
-     * @param name the name ({@code Action.NAME}) for the action; a value of {@code null} is ignored
-     */
-    public RotateRightAction(final String name) {
-      super(name);
-    }
-
-    /**
-     * Creates an {@code RotateRightAction} with the specified name and small icon.
-     *
-     * @param name the name ({@code Action.NAME}) for the action; a value of {@code null} is ignored
-     * @param icon the small icon ({@code Action.SMALL_ICON}) for the action; a value of
-     *        {@code null} is ignored
-     */
-    public RotateRightAction(final String name, final Icon icon) {
-      super(name, icon);
-    }
-
-    @Override
-    public void actionPerformed(final ActionEvent e) {
-      if (isRotatingRight()) {
-        return;
-      }
-      setRotatingRight(true);
-    }
-  }
-
-  /**
-   * Action to stop rotating the falling piece to the right.
-   * 
-   * @see Tetrion#setRotatingRight(boolean)
-   * @see RotateRightAction
-   * @author Mathieu Brunot
-   */
-  protected class ReleaseRotateRightAction extends AbstractAction {
-
-    /**
-     * Default Serial Version ID.
-     */
-    private static final long serialVersionUID = 1L;
-
-    /**
-     * Creates an {@code ReleaseRotateRightAction}.
-     */
-    public ReleaseRotateRightAction() {}
-
-    /**
-     * Creates an {@code ReleaseRotateRightAction} with the specified name.
-     *
-     * @param name the name ({@code Action.NAME}) for the action; a value of {@code null} is ignored
-     */
-    public ReleaseRotateRightAction(final String name) {
-      super(name);
-    }
-
-    /**
-     * Creates an {@code ReleaseRotateRightAction} with the specified name and small icon.
-     *
-     * @param name the name ({@code Action.NAME}) for the action; a value of {@code null} is ignored
-     * @param icon the small icon ({@code Action.SMALL_ICON}) for the action; a value of
-     *        {@code null} is ignored
-     */
-    public ReleaseRotateRightAction(final String name, final Icon icon) {
-      super(name, icon);
-    }
-
-    @Override
-    public void actionPerformed(final ActionEvent e) {
-      setRotatingRight(false);
     }
   }
 }
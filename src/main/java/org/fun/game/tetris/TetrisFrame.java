@@ -62,6 +62,15 @@ public class TetrisFrame extends javax.swing.JFrame {
         + boardPanel.getPauseKey());
   }
 
+  /**
+   * Get the Tetris board of the frame.
+   *
+   * @return the Tetris board
+   */
+  public Tetrion getTetrion() {
+    return boardPanel;
+  }
+
   /**
    * This method is called from within the constructor to initialize the form. WARNING: Do NOT
    * modify this code. The content of this method is always regenerated by the Form Editor.
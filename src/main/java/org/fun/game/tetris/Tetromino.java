@@ -2,9 +2,7 @@ package org.fun.game.tetris;
 
 import java.awt.Color;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.fun.game.tetris.Tetromino.Shape.RandomGenerator;
 
@@ -49,7 +47,11 @@ public class Tetromino {
   /**
    * Number of blocks by Tetromino.
    */
-  static final int BLOCKS = 4;
+  public static final int BLOCKS = 4;
+  /**
+   * Number of rotation states of a Tetromino.
+   */
+  public static final int ROTATIONS = 4;
   /**
    * Number of dimensions for Tetromino.
    */
@@ -77,7 +79,8 @@ public class Tetromino {
     /**
      * O-shape or Square-shape.
      */
-    O(new Color(204, 204, 102), new int[][] {{0, 0}, {1, 0}, {1, 1}, {0, 1}}),
+    O(new Color(204, 204, 102), new int[][] {{0, 0}, {1, 0}, {1, 1}, {0, 1}},
+        false),
     /**
      * S-shape.
      */
@@ -110,28 +113,125 @@ public class Tetromino {
       /**
        * All shapes available to the generator.
        */
-      private static final List<Shape> ALL_SHAPES =
-          Arrays.asList(Shape.values());
+      private static final Shape[] ALL_SHAPES = Shape.values();
+      /**
+       * Increment of the generator state ({@code SplitMix64} golden gamma).
+       */
+      private static final long GAMMA = 0x9E3779B97F4A7C15L;
+
+      /**
+       * Random Generator's current state.
+       */
+      private long state;
+      /**
+       * Random Generator's current bag of shapes, the first {@link #bagSize} being left.
+       *
+       * <p>
+       * Sized with {@link Shape#values()} rather than {@link #ALL_SHAPES}: when this class is
+       * initialized first, {@link Shape} creates its own generator before {@link #ALL_SHAPES} is
+       * set.
+       * </p>
+       */
+      private final Shape[] bag = new Shape[Shape.values().length];
+      /**
+       * Number of shapes left in the current bag.
+       */
+      private int bagSize = 0;
 
       /**
-       * Random Generator's current bag of shapes.
+       * Create a generator with a random seed.
        */
-      private final LinkedList<Shape> bag = new LinkedList<>();
+      public RandomGenerator() {
+        this(ThreadLocalRandom.current().nextLong());
+      }
 
       /**
-       * Private constructor.
+       * Create a generator with the given seed.
+       *
+       * <p>
+       * Two generators created with the same seed generate the same sequence of shapes.
+       * </p>
+       *
+       * @param seed the seed
        */
-      public RandomGenerator() {}
+      public RandomGenerator(final long seed) {
+        setSeed(seed);
+      }
 
       /**
-       * Fill the Random Generator's current bag with shapes.
+       * Reset the generator with the given seed and an empty bag.
        *
-       * @return Random Generator's current bag of shapes
+       * @param seed the seed
        */
-      private LinkedList<Shape> fillBag() {
-        bag.addAll(ALL_SHAPES);
-        Collections.shuffle(bag);
-        return bag;
+      public final void setSeed(final long seed) {
+        this.state = seed;
+        this.bagSize = 0;
+      }
+
+      /**
+       * Get the state of the generator, without its bag.
+       *
+       * @return the state
+       * @see #getBag(Shape[])
+       */
+      public final long getState() {
+        return state;
+      }
+
+      /**
+       * Copy the shapes left in the bag, the last one being the next shape drawn from the bag.
+       *
+       * @param dest the array receiving the shapes, as long as a full bag
+       * @return the number of shapes left in the bag
+       */
+      public final int getBag(final Shape[] dest) {
+        System.arraycopy(bag, 0, dest, 0, bagSize);
+        return bagSize;
+      }
+
+      /**
+       * Restore the state of the generator and its bag.
+       *
+       * @param newState the state
+       * @param shapes the shapes left in the bag, the last one being the next shape drawn
+       * @param size the number of shapes left in the bag
+       * @see #getState()
+       * @see #getBag(Shape[])
+       */
+      public final void setState(final long newState, final Shape[] shapes,
+          final int size) {
+        this.state = newState;
+        System.arraycopy(shapes, 0, bag, 0, size);
+        this.bagSize = size;
+      }
+
+      /**
+       * Get the next random value ({@code SplitMix64}).
+       *
+       * @return a random value
+       */
+      private long nextLong() {
+        state += GAMMA;
+        long z = state;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+      }
+
+      /**
+       * Fill the Random Generator's current bag with shapes, shuffled.
+       */
+      private void fillBag() {
+        System.arraycopy(ALL_SHAPES, 0, bag, 0, ALL_SHAPES.length);
+        // Fisher-Yates shuffle
+        for (int i = bag.length - 1; i > 0; i--) {
+          int j = (int) (((nextLong() >>> Integer.SIZE) * (i + 1))
+              >>> Integer.SIZE);
+          Shape temp = bag[i];
+          bag[i] = bag[j];
+          bag[j] = temp;
+        }
+        bagSize = bag.length;
       }
 
       /**
@@ -140,10 +240,10 @@ public class Tetromino {
        * @return a random shape
        */
       public final Shape nextShape() {
-        if (bag.isEmpty()) {
+        if (bagSize == 0) {
           fillBag();
         }
-        return bag.removeFirst();
+        return bag[--bagSize];
       }
     }
 
@@ -182,18 +282,51 @@ public class Tetromino {
      * A Tetromino default coordinates.
      */
     private final int[][] defaultCoords;
+    /**
+     * A Tetromino coordinates for each rotation state.
+     *
+     * @see Tetromino#rotateRight()
+     */
+    private final int[][][] rotatedCoords;
 
     /**
-     * Construct a Tetromino.
+     * Construct a rotatable Tetromino.
      * 
      * @param mainColor default color
      * @param initialCoords default coordinates
      */
     Shape(final Color mainColor, final int[][] initialCoords) {
+      this(mainColor, initialCoords, true);
+    }
+
+    /**
+     * Construct a Tetromino.
+     * 
+     * @param mainColor default color
+     * @param initialCoords default coordinates
+     * @param rotatable does the Tetromino coordinates change when rotated?
+     */
+    Shape(final Color mainColor, final int[][] initialCoords,
+        final boolean rotatable) {
       this.color = mainColor;
       this.activeColor = mainColor.brighter();
       this.shadowColor = mainColor.darker().darker().darker();
       this.defaultCoords = initialCoords;
+      this.rotatedCoords = new int[ROTATIONS][][];
+      this.rotatedCoords[0] = initialCoords;
+      for (int r = 1; r < ROTATIONS; r++) {
+        int[][] coords = new int[BLOCKS][DIMENSIONS];
+        for (int i = 0; i < BLOCKS; i++) {
+          if (!rotatable) {
+            coords[i][0] = rotatedCoords[r - 1][i][0];
+            coords[i][1] = rotatedCoords[r - 1][i][1];
+          } else {
+            coords[i][0] = -rotatedCoords[r - 1][i][1];
+            coords[i][1] = rotatedCoords[r - 1][i][0];
+          }
+        }
+        this.rotatedCoords[r] = coords;
+      }
     }
 
     /**
@@ -244,6 +377,18 @@ public class Tetromino {
       return defaultCoords[block][0];
     }
 
+    /**
+     * Get <em>x</em> coordinate of the specified block in the given rotation state.
+     * 
+     * @param block the block index
+     * @param rotation the rotation state, from {@code 0} to {@link Tetromino#ROTATIONS} excluded
+     * @return <em>x</em> coordinate of the specified block
+     * @see Tetromino#getRotation()
+     */
+    public final int x(final int block, final int rotation) {
+      return rotatedCoords[rotation][block][0];
+    }
+
     /**
      * Get <em>y</em> coordinate of the specified block.
      * 
@@ -253,6 +398,18 @@ public class Tetromino {
     public final int y(final int block) {
       return defaultCoords[block][1];
     }
+
+    /**
+     * Get <em>y</em> coordinate of the specified block in the given rotation state.
+     * 
+     * @param block the block index
+     * @param rotation the rotation state, from {@code 0} to {@link Tetromino#ROTATIONS} excluded
+     * @return <em>y</em> coordinate of the specified block
+     * @see Tetromino#getRotation()
+     */
+    public final int y(final int block, final int rotation) {
+      return rotatedCoords[rotation][block][1];
+    }
   };
 
   /**
@@ -263,6 +420,11 @@ public class Tetromino {
    * The blocks coordinates.
    */
   private final int[][] blocks;
+  /**
+   * The rotation state, {@code 0} being the shape's default coordinates, increased by each right
+   * rotation and decreased by each left rotation (modulo {@link #ROTATIONS}).
+   */
+  private int rotation;
 
   /**
    * Default constructor.
@@ -314,6 +476,7 @@ public class Tetromino {
       }
     }
     this.pieceShape = shape;
+    this.rotation = 0;
   }
 
   /**
@@ -388,6 +551,38 @@ public class Tetromino {
     return pieceShape;
   }
 
+  /**
+   * Get the Tetromino's rotation state.
+   * 
+   * @return the rotation state, from {@code 0} to {@link #ROTATIONS} excluded
+   * @see Shape#x(int, int)
+   * @see Shape#y(int, int)
+   */
+  public final int getRotation() {
+    return rotation;
+  }
+
+  /**
+   * Set the Tetromino's rotation state in place, as if rotated right from its default coordinates.
+   *
+   * <p>
+   * As for rotations, an {@link Shape#O O} Tetromino or a Tetromino without shape is unchanged.
+   * </p>
+   *
+   * @param newRotation the rotation state, from {@code 0} to {@link #ROTATIONS} excluded
+   * @see #rotateRight()
+   */
+  final void setRotation(final int newRotation) {
+    if (pieceShape == null || pieceShape == Shape.O) {
+      return;
+    }
+    this.rotation = newRotation;
+    for (int i = 0; i < BLOCKS; i++) {
+      setX(i, pieceShape.x(i, newRotation));
+      setY(i, pieceShape.y(i, newRotation));
+    }
+  }
+
   /**
    * Change the Tetromino's shape by a random shape.
    * 
@@ -548,6 +743,7 @@ public class Tetromino {
 
     Tetromino result = new Tetromino();
     result.pieceShape = this.pieceShape;
+    result.rotation = (this.rotation + ROTATIONS - 1) % ROTATIONS;
 
     for (int i = 0; i < BLOCKS; ++i) {
       result.setX(i, y(i));
@@ -569,6 +765,7 @@ public class Tetromino {
 
     Tetromino result = new Tetromino();
     result.pieceShape = this.pieceShape;
+    result.rotation = (this.rotation + 1) % ROTATIONS;
 
     for (int i = 0; i < BLOCKS; ++i) {
       result.setX(i, -y(i));
@@ -0,0 +1,97 @@
+package org.fun.game.tetris;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Variable-length encoding of numbers, shared by the saved games, replays and high scores.
+ *
+ * <p>
+ * An unsigned varint holds 7 bits per byte, least significant group first, with the high bit set on
+ * all bytes but the last. A signed varint is first mapped to an unsigned one by zigzag encoding, so
+ * that small negative values take few bytes.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public final class Varint {
+
+  /**
+   * Maximum number of bytes of a varint.
+   */
+  public static final int MAX_BYTES = 10;
+  /**
+   * Bits of a varint byte holding the value.
+   */
+  private static final int BITS = 7;
+  /**
+   * Bit of a varint byte set if more bytes follow.
+   */
+  private static final int MORE = 0x80;
+
+  /**
+   * Hidden constructor.
+   */
+  private Varint() {}
+
+  /**
+   * Write an unsigned varint.
+   *
+   * @param out the output
+   * @param value the value, not negative
+   * @throws IOException if the varint cannot be written
+   */
+  public static void write(final DataOutput out, final long value)
+      throws IOException {
+    long v = value;
+    while ((v & ~(MORE - 1L)) != 0) {
+      out.writeByte((int) ((v & (MORE - 1)) | MORE));
+      v >>>= BITS;
+    }
+    out.writeByte((int) v);
+  }
+
+  /**
+   * Write a signed varint.
+   *
+   * @param out the output
+   * @param value the value
+   * @throws IOException if the varint cannot be written
+   */
+  public static void writeSigned(final DataOutput out, final long value)
+      throws IOException {
+    write(out, (value << 1) ^ (value >> (Long.SIZE - 1)));
+  }
+
+  /**
+   * Read an unsigned varint.
+   *
+   * @param in the input
+   * @return the value
+   * @throws IOException if the varint cannot be read, is truncated or is malformed
+   */
+  public static long read(final DataInput in) throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < MAX_BYTES * BITS; shift += BITS) {
+      int b = in.readUnsignedByte();
+      value |= (long) (b & (MORE - 1)) << shift;
+      if ((b & MORE) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed varint");
+  }
+
+  /**
+   * Read a signed varint.
+   *
+   * @param in the input
+   * @return the value
+   * @throws IOException if the varint cannot be read, is truncated or is malformed
+   */
+  public static long readSigned(final DataInput in) throws IOException {
+    long v = read(in);
+    return (v >>> 1) ^ -(v & 1);
+  }
+}
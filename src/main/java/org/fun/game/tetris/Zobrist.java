@@ -0,0 +1,248 @@
+package org.fun.game.tetris;
+
+/**
+ * Zobrist keys of the game state.
+ *
+ * <p>
+ * A Zobrist hash is the {@code XOR} of random 64-bit keys, one per component of the game state: a
+ * row of the playfield with its content, the falling piece with its position, the hold piece and
+ * each shape of the next queue. Updating a component only needs to {@code XOR} its previous key
+ * out and its new key in, hence the {@link Engine} keeps the hash of its playfield up to date on
+ * each lock and line clear without scanning the cells.
+ * </p>
+ *
+ * <p>
+ * Keys are generated once with a fixed seed, so that hashes are stable across runs and machines and
+ * can be stored in replays or exchanged over the network. An empty row has a key of {@code 0}, so
+ * that the hash of an empty playfield is {@code 0}.
+ * </p>
+ *
+ * <p>
+ * Keys are kept in tables for the {@link Board#STANDARD standard playfield}. The keys of the rows
+ * and pieces of other playfields, beyond the tables, are computed by mixing their content and
+ * position instead.
+ * </p>
+ *
+ * @see <a href="https://en.wikipedia.org/wiki/Zobrist_hashing">Zobrist hashing</a>
+ *
+ * @author Mathieu Brunot
+ */
+public final class Zobrist {
+
+  /**
+   * Number of shapes of the next queue taken into account.
+   */
+  public static final int QUEUE_DEPTH = 16;
+
+  /**
+   * Seed of the keys generator.
+   */
+  private static final long SEED = 0x5EED_7E7A_15L;
+  /**
+   * Number of distinct row contents.
+   */
+  private static final int ROW_CONTENTS =
+      (int) Board.STANDARD.fullWord(0) + 1;
+  /**
+   * Offset applied to piece positions so that they are never negative.
+   */
+  private static final int OFFSET = 2;
+  /**
+   * Number of distinct {@code X} positions of a piece.
+   */
+  private static final int PIECE_X = Board.STANDARD.getWidth() + 2 * OFFSET;
+  /**
+   * Number of distinct {@code Y} positions of a piece.
+   */
+  private static final int PIECE_Y =
+      Board.STANDARD.getHeight() + 2 * OFFSET;
+  /**
+   * Number of shapes.
+   */
+  private static final int SHAPES = Tetromino.Shape.values().length;
+
+  /**
+   * Keys of each row content, by row.
+   */
+  private static final long[][] ROW_KEYS =
+      new long[Board.STANDARD.getHeight()][ROW_CONTENTS];
+  /**
+   * Salt of the keys computed beyond the tables.
+   */
+  private static final long SALT = mix(SEED);
+  /**
+   * Keys of the falling piece, by shape, rotation and position.
+   */
+  private static final long[][][] PIECE_KEYS =
+      new long[SHAPES][Tetromino.ROTATIONS][PIECE_X * PIECE_Y];
+  /**
+   * Keys of the hold piece, by shape, then when the hold piece is unavailable.
+   */
+  private static final long[] HOLD_KEYS = new long[SHAPES + 1];
+  /**
+   * Keys of each shape of the next queue, by index in the queue.
+   */
+  private static final long[][] QUEUE_KEYS = new long[QUEUE_DEPTH][SHAPES];
+
+  static {
+    long state = SEED;
+    for (long[] rowKeys : ROW_KEYS) {
+      // Empty rows are left out
+      for (int content = 1; content < ROW_CONTENTS; content++) {
+        state += 0x9E3779B97F4A7C15L;
+        rowKeys[content] = mix(state);
+      }
+    }
+    for (long[][] shapeKeys : PIECE_KEYS) {
+      for (long[] rotationKeys : shapeKeys) {
+        for (int i = 0; i < rotationKeys.length; i++) {
+          state += 0x9E3779B97F4A7C15L;
+          rotationKeys[i] = mix(state);
+        }
+      }
+    }
+    for (int i = 0; i < HOLD_KEYS.length; i++) {
+      state += 0x9E3779B97F4A7C15L;
+      HOLD_KEYS[i] = mix(state);
+    }
+    for (long[] indexKeys : QUEUE_KEYS) {
+      for (int i = 0; i < indexKeys.length; i++) {
+        state += 0x9E3779B97F4A7C15L;
+        indexKeys[i] = mix(state);
+      }
+    }
+  }
+
+  /**
+   * Hidden constructor.
+   */
+  private Zobrist() {}
+
+  /**
+   * Mix the bits of the keys generator state ({@code SplitMix64} finalizer).
+   *
+   * @param z the keys generator state
+   * @return a random key
+   */
+  private static long mix(final long z) {
+    long x = z;
+    x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+    x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+    return x ^ (x >>> 31);
+  }
+
+  // #########################################################################
+  /**
+   * Get the key of a row of the playfield.
+   *
+   * @param y the row
+   * @param content the row bit mask
+   * @return the key of the row, {@code 0} if empty
+   */
+  public static long row(final int y, final long content) {
+    return row(y, 0, content);
+  }
+
+  /**
+   * Get the key of a word of a row of the playfield.
+   *
+   * @param y the row
+   * @param word the word index in the row
+   * @param content the word bit mask
+   * @return the key of the word, {@code 0} if empty
+   * @see Board#getWordsPerRow()
+   */
+  public static long row(final int y, final int word, final long content) {
+    if (word == 0 && y < ROW_KEYS.length && content >= 0
+        && content < ROW_CONTENTS) {
+      return ROW_KEYS[y][(int) content];
+    }
+    if (content == 0) {
+      return 0;
+    }
+    return mix(SALT ^ (mix(content) + ((long) y << 32 | word)));
+  }
+
+  /**
+   * Get the key of a falling piece.
+   *
+   * @param shape the piece shape, may be {@code null}
+   * @param rotation the piece rotation state
+   * @param x the piece {@code X} position
+   * @param y the piece {@code Y} position
+   * @return the key of the piece, {@code 0} if no piece
+   */
+  public static long piece(final Tetromino.Shape shape, final int rotation,
+      final int x, final int y) {
+    if (shape == null) {
+      return 0;
+    }
+    int px = x + OFFSET;
+    int py = y + OFFSET;
+    if (px < 0 || px >= PIECE_X || py < 0 || py >= PIECE_Y) {
+      return mix(SALT + PIECE_KEYS[shape.ordinal()][rotation][0]
+          + ((long) y << 32 ^ x));
+    }
+    return PIECE_KEYS[shape.ordinal()][rotation][py * PIECE_X + px];
+  }
+
+  /**
+   * Get the key of the hold piece.
+   *
+   * @param shape the hold piece shape, may be {@code null}
+   * @param available is the hold piece available
+   * @return the key of the hold piece, {@code 0} if no hold piece
+   */
+  public static long hold(final Tetromino.Shape shape,
+      final boolean available) {
+    if (shape == null) {
+      return 0;
+    }
+    return available ? HOLD_KEYS[shape.ordinal()]
+        : HOLD_KEYS[shape.ordinal()] ^ HOLD_KEYS[SHAPES];
+  }
+
+  /**
+   * Get the key of a shape of the next queue.
+   *
+   * @param index the index in the queue
+   * @param shape the shape
+   * @return the key of the shape, {@code 0} if beyond {@link #QUEUE_DEPTH}
+   */
+  public static long queue(final int index, final Tetromino.Shape shape) {
+    if (index >= QUEUE_DEPTH) {
+      return 0;
+    }
+    return QUEUE_KEYS[index][shape.ordinal()];
+  }
+
+  /**
+   * Compute the hash of a playfield bitboard from scratch.
+   *
+   * @param rows the playfield bitboard, of a single word per row
+   * @return the hash of the playfield
+   */
+  public static long rows(final int[] rows) {
+    long hash = 0;
+    for (int y = 0; y < rows.length; y++) {
+      hash ^= row(y, rows[y]);
+    }
+    return hash;
+  }
+
+  /**
+   * Compute the hash of a playfield bitboard of several words per row from scratch.
+   *
+   * @param rows the playfield bitboard
+   * @param wordsPerRow the number of words of a row
+   * @return the hash of the playfield
+   * @see Board#getWordsPerRow()
+   */
+  public static long rows(final long[] rows, final int wordsPerRow) {
+    long hash = 0;
+    for (int i = 0; i < rows.length; i++) {
+      hash ^= row(i / wordsPerRow, i % wordsPerRow, rows[i]);
+    }
+    return hash;
+  }
+}
@@ -0,0 +1,320 @@
+package org.fun.game.tetris.ai;
+
+import java.util.logging.Logger;
+
+import org.fun.game.tetris.Board;
+import org.fun.game.tetris.Controller;
+import org.fun.game.tetris.Engine;
+import org.fun.game.tetris.Tetrion;
+import org.fun.game.tetris.Tetromino;
+
+/**
+ * Base class of the bots playing through the {@link Controller} of an {@link Engine}.
+ *
+ * <p>
+ * When a new piece spawns, the bot enumerates every reachable placement of the piece with a
+ * {@link PlacementFinder} and lets the concrete bot {@link #choose(Engine, boolean) choose} one of
+ * them, or hold the piece instead.
+ * </p>
+ *
+ * <p>
+ * The bot then presses the inputs following the path to the chosen placement, one input per frame
+ * with a release frame in between since the engine only reacts to presses, and finally hard drops
+ * the piece. If the piece is not where expected, e.g. pulled down by gravity, the bot chooses again
+ * from the current piece position, a few times at most.
+ * </p>
+ *
+ * <p>
+ * A bot drives a single engine at a time from the engine thread. It only plays on the
+ * {@link Board#STANDARD standard playfield}, and presses nothing on others, with a warning.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public abstract class AbstractBot implements Controller {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOGGER =
+      Logger.getLogger(AbstractBot.class.getName());
+
+  /**
+   * Choice: hold the falling piece.
+   *
+   * @see #choose(Engine, boolean)
+   */
+  protected static final int CHOICE_HOLD = -1;
+  /**
+   * Choice: none, hard drop the falling piece.
+   *
+   * @see #choose(Engine, boolean)
+   */
+  protected static final int CHOICE_NONE = -2;
+
+  /**
+   * Gravity, in cells per frame, above which the piece is considered falling instantly.
+   *
+   * <p>
+   * The bot needs two frames per move.
+   * </p>
+   */
+  private static final double INSTANT_GRAVITY = 0.5;
+  /**
+   * Number of choices from the current position after which the piece is hard dropped.
+   *
+   * <p>
+   * Prevents the bot from moving the piece forever when the lock delay is infinite.
+   * </p>
+   */
+  private static final int MAX_REPLANS = 8;
+  /**
+   * Inputs pressed for each move.
+   *
+   * @see PlacementFinder#LEFT
+   * @see PlacementFinder#RIGHT
+   * @see PlacementFinder#DOWN
+   * @see PlacementFinder#ROTATE_LEFT
+   * @see PlacementFinder#ROTATE_RIGHT
+   */
+  private static final int[] MOVE_INPUTS = {SHIFT_LEFT, SHIFT_RIGHT,
+      SOFT_DROP, Controller.ROTATE_LEFT, Controller.ROTATE_RIGHT};
+
+  // Search
+  /**
+   * Game mode rules of the search.
+   */
+  private Tetrion.Mode mode = null;
+  /**
+   * Does the piece fall instantly?
+   */
+  private boolean instantGravity = false;
+  /**
+   * Last playfield the bot was warned it cannot play on, {@code null} if none.
+   */
+  private Board unsupportedBoard = null;
+  /**
+   * Finder of the falling piece placements.
+   */
+  protected final PlacementFinder finder = new PlacementFinder();
+  /**
+   * The engine playfield.
+   */
+  protected final int[] rows = new int[Bitboards.HEIGHT];
+
+  // Plan
+  /**
+   * Number of pieces locked by the engine when the plan was computed.
+   */
+  private int planPieces = -1;
+  /**
+   * Shape of the falling piece when the plan was computed.
+   */
+  private Tetromino.Shape planShape = null;
+  /**
+   * Is the plan to hold the falling piece?
+   */
+  private boolean planHold = false;
+  /**
+   * Packed position of the piece when the plan was computed.
+   */
+  private int planStart = 0;
+  /**
+   * Moves to the planned placement.
+   */
+  private final byte[] path = new byte[PlacementFinder.POSITIONS];
+  /**
+   * Packed positions reached by each move.
+   */
+  private final int[] positions = new int[PlacementFinder.POSITIONS];
+  /**
+   * Number of moves to the planned placement.
+   */
+  private int pathLength = 0;
+  /**
+   * Index of the next move.
+   */
+  private int step = 0;
+  /**
+   * Number of choices from the current position for the falling piece.
+   */
+  private int replans = 0;
+  /**
+   * Frame of the previous poll.
+   */
+  private long lastFrame = 0;
+  /**
+   * Inputs returned by the previous poll.
+   */
+  private int lastInputs = NONE;
+
+  /**
+   * Get the game mode rules of the current search.
+   *
+   * @return the game mode
+   */
+  protected final Tetrion.Mode getMode() {
+    return mode;
+  }
+
+  /**
+   * Does the piece fall instantly in the current search?
+   *
+   * @return {@code true} if the piece falls instantly
+   * @see PlacementFinder#setInstantGravity(boolean)
+   */
+  protected final boolean isInstantGravity() {
+    return instantGravity;
+  }
+
+  /**
+   * Configure a finder with the rules of the current search.
+   *
+   * @param placementFinder the finder to configure
+   */
+  protected final void configure(final PlacementFinder placementFinder) {
+    placementFinder.setMode(mode);
+    placementFinder.setInstantGravity(instantGravity);
+  }
+
+  /**
+   * Can the falling piece be held?
+   *
+   * @param engine the engine
+   * @param fresh is the falling piece a new piece
+   * @return {@code true} if the falling piece can be held
+   */
+  protected static boolean canHold(final Engine engine, final boolean fresh) {
+    if (!fresh) {
+      return false;
+    }
+    if (engine.getHoldPiece().getShape() == null) {
+      return !engine.getNextShapes().isEmpty();
+    }
+    return engine.isHoldPieceAvailable();
+  }
+
+  /**
+   * Choose the placement of the falling piece.
+   *
+   * <p>
+   * The placements of the falling piece, from its current position, are in the {@link #finder}
+   * and the playfield in the {@link #rows}.
+   * </p>
+   *
+   * @param engine the engine
+   * @param fresh is the falling piece a new piece, allowing it to be held
+   * @return the index of the chosen placement in the {@link #finder}, {@link #CHOICE_HOLD} or
+   *         {@link #CHOICE_NONE}
+   */
+  protected abstract int choose(Engine engine, boolean fresh);
+
+  // #########################################################################
+  @Override
+  public int poll(final Engine engine) {
+    lastInputs = nextInputs(engine);
+    return lastInputs;
+  }
+
+  /**
+   * Compute the inputs to press for the current frame.
+   *
+   * @param engine the engine
+   * @return the bit mask of the inputs to press
+   */
+  private int nextInputs(final Engine engine) {
+    if (engine.getFrames() < lastFrame) {
+      // New game
+      planPieces = -1;
+    }
+    lastFrame = engine.getFrames();
+    Board board = engine.getBoard();
+    if (!Board.STANDARD.equals(board)) {
+      // Bitboards of the standard playfield only
+      if (!board.equals(unsupportedBoard)) {
+        unsupportedBoard = board;
+        LOGGER.warning("The bot only plays on the " + Board.STANDARD
+            + " playfield, not on " + board + ": it presses nothing");
+      }
+      return NONE;
+    }
+    Tetromino piece = engine.getFallingPiece();
+    if (piece.getShape() == null) {
+      return NONE;
+    }
+    int current = PlacementFinder.position(engine.getCurX(),
+        engine.getCurY(), piece.getRotation());
+
+    if (engine.getPieces() != planPieces || piece.getShape() != planShape) {
+      // New piece
+      boolean fresh = engine.getPieces() != planPieces;
+      planPieces = engine.getPieces();
+      planShape = piece.getShape();
+      replans = 0;
+      plan(engine, fresh);
+    } else if (!planHold) {
+      // Follow the path
+      int expected = step == 0 ? planStart : positions[step - 1];
+      if (current != expected) {
+        int reached = step;
+        while (reached < pathLength && positions[reached] != current) {
+          reached++;
+        }
+        if (reached < pathLength) {
+          step = reached + 1;
+        } else if (replans++ < MAX_REPLANS) {
+          plan(engine, false);
+        } else {
+          step = pathLength;
+        }
+      }
+    }
+
+    if (planHold) {
+      planHold = false;
+      return HOLD;
+    }
+    if (step >= pathLength) {
+      return HARD_DROP;
+    }
+    int input = MOVE_INPUTS[path[step]];
+    if (input != SOFT_DROP && (lastInputs & input) != 0) {
+      // Release before pressing again
+      return NONE;
+    }
+    return input;
+  }
+
+  /**
+   * Plan the placement of the falling piece.
+   *
+   * @param engine the engine
+   * @param fresh is the piece a new piece, allowing it to be held
+   */
+  private void plan(final Engine engine, final boolean fresh) {
+    Tetromino piece = engine.getFallingPiece();
+    mode = engine.getMode();
+    instantGravity = engine.getGravity() >= INSTANT_GRAVITY;
+    configure(finder);
+
+    planStart = PlacementFinder.position(engine.getCurX(), engine.getCurY(),
+        piece.getRotation());
+    planHold = false;
+    pathLength = 0;
+    step = 0;
+
+    engine.copyRows(rows);
+    finder.find(engine);
+    int choice = choose(engine, fresh);
+
+    if (choice == CHOICE_HOLD) {
+      planHold = true;
+    } else if (choice >= 0) {
+      pathLength = finder.getPath(choice, path, positions);
+      // Hard drop instead of dropping cell by cell to the placement
+      while (pathLength > 0 && path[pathLength - 1] == PlacementFinder.DOWN) {
+        pathLength--;
+      }
+    }
+  }
+}
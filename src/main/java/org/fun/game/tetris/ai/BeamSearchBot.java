@@ -0,0 +1,495 @@
+package org.fun.game.tetris.ai;
+
+import org.fun.game.tetris.Engine;
+import org.fun.game.tetris.Tetromino;
+import org.fun.game.tetris.Zobrist;
+
+/**
+ * A bot searching the best sequence of placements over the whole next queue.
+ *
+ * <p>
+ * The bot runs a beam search: starting from the playfield, every placement of the falling piece,
+ * or of the hold piece instead, is rated by the {@link Evaluator}, and only the {@link #beamWidth}
+ * best playfields are expanded with the next piece of the queue, and so on until the end of the
+ * visible queue or the search depth. The falling piece is then moved to the first placement of the
+ * best sequence found.
+ * </p>
+ *
+ * <p>
+ * Different sequences often lead to the same playfield. Such duplicates are recognized with a
+ * {@link TranspositionTable} keyed by the {@link Zobrist} hash of the playfield, hold piece and
+ * depth, and only the best rated one is kept. All buffers are allocated once and reused, the table
+ * having a fixed size.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public class BeamSearchBot extends AbstractBot {
+
+  /**
+   * Default number of playfields expanded at each depth.
+   */
+  public static final int DEFAULT_BEAM_WIDTH = 16;
+  /**
+   * Default number of entries of the transposition table.
+   */
+  public static final int DEFAULT_TABLE_CAPACITY = 1 << 16;
+
+  /**
+   * Shape ordinal of no shape.
+   */
+  private static final byte NO_SHAPE = -1;
+  /**
+   * Shapes by ordinal.
+   */
+  private static final Tetromino.Shape[] SHAPES = Tetromino.Shape.values();
+
+  /**
+   * The playfield evaluator.
+   */
+  private final Evaluator evaluator;
+  /**
+   * Number of playfields expanded at each depth.
+   */
+  private final int beamWidth;
+  /**
+   * Maximum number of pieces placed by a search.
+   */
+  private final int depth;
+  /**
+   * Table of the playfields seen by the current search.
+   */
+  private final TranspositionTable table;
+  /**
+   * Number of searches run, so that entries of previous searches never match.
+   */
+  private long searches = 0;
+
+  // Search
+  /**
+   * Finder of the hold piece placements.
+   */
+  private final PlacementFinder holdFinder = new PlacementFinder();
+  /**
+   * Finder of the placements of the expanded playfields.
+   */
+  private final PlacementFinder expander = new PlacementFinder();
+  /**
+   * The next queue.
+   */
+  private Tetromino.Shape[] queue = new Tetromino.Shape[0];
+  /**
+   * Number of shapes in the next queue.
+   */
+  private int queueSize = 0;
+
+  // Beam
+  /**
+   * Number of playfields in the beam.
+   */
+  private int beamSize = 0;
+  /**
+   * Playfields of the beam.
+   */
+  private final int[][] beamRows;
+  /**
+   * Shape ordinal of the piece to place on each playfield of the beam.
+   */
+  private final byte[] beamCurrent;
+  /**
+   * Shape ordinal of the hold piece of each playfield of the beam.
+   */
+  private final byte[] beamHold;
+  /**
+   * Index in the queue of the next piece of each playfield of the beam.
+   */
+  private final int[] beamQueue;
+  /**
+   * Number of lines cleared to reach each playfield of the beam.
+   */
+  private final int[] beamLines;
+  /**
+   * Placement of the falling piece leading to each playfield of the beam.
+   */
+  private final int[] beamRoot;
+
+  // Children
+  /**
+   * Number of children of the beam.
+   */
+  private int childCount = 0;
+  /**
+   * Playfields of the children.
+   */
+  private int[][] childRows = new int[0][];
+  /**
+   * Shape ordinal of the piece to place on each child.
+   */
+  private byte[] childCurrent = new byte[0];
+  /**
+   * Shape ordinal of the hold piece of each child.
+   */
+  private byte[] childHold = new byte[0];
+  /**
+   * Index in the queue of the next piece of each child.
+   */
+  private int[] childQueue = new int[0];
+  /**
+   * Number of lines cleared to reach each child.
+   */
+  private int[] childLines = new int[0];
+  /**
+   * Placement of the falling piece leading to each child.
+   */
+  private int[] childRoot = new int[0];
+  /**
+   * Rating of each child.
+   */
+  private double[] childRating = new double[0];
+  /**
+   * Transposition key of each child.
+   */
+  private long[] childKey = new long[0];
+  /**
+   * Children indexes, best first once selected.
+   */
+  private int[] order = new int[0];
+
+  /**
+   * Create a bot with the default evaluator, beam width and table, searching the whole queue.
+   */
+  public BeamSearchBot() {
+    this(new Evaluator(), DEFAULT_BEAM_WIDTH, Integer.MAX_VALUE,
+        new TranspositionTable(DEFAULT_TABLE_CAPACITY));
+  }
+
+  /**
+   * Create a bot.
+   *
+   * @param playfieldEvaluator the playfield evaluator
+   * @param width the number of playfields expanded at each depth
+   * @param maxDepth the maximum number of pieces placed by a search, the search stops at the end of
+   *        the visible queue anyway
+   * @param transpositionTable the table of the playfields seen
+   * @throws IllegalArgumentException if the width or depth is not positive
+   */
+  public BeamSearchBot(final Evaluator playfieldEvaluator, final int width,
+      final int maxDepth, final TranspositionTable transpositionTable) {
+    if (width < 1 || maxDepth < 1) {
+      throw new IllegalArgumentException(
+          "Beam width and depth must be positive: " + width + ", " + maxDepth);
+    }
+    this.evaluator = playfieldEvaluator;
+    this.beamWidth = width;
+    this.depth = maxDepth;
+    this.table = transpositionTable;
+    this.beamRows = new int[width][Bitboards.HEIGHT];
+    this.beamCurrent = new byte[width];
+    this.beamHold = new byte[width];
+    this.beamQueue = new int[width];
+    this.beamLines = new int[width];
+    this.beamRoot = new int[width];
+  }
+
+  /**
+   * Get the playfield evaluator.
+   *
+   * @return the playfield evaluator
+   */
+  public final Evaluator getEvaluator() {
+    return evaluator;
+  }
+
+  /**
+   * Get the number of playfields expanded at each depth.
+   *
+   * @return the beam width
+   */
+  public final int getBeamWidth() {
+    return beamWidth;
+  }
+
+  /**
+   * Get the table of the playfields seen.
+   *
+   * @return the transposition table
+   */
+  public final TranspositionTable getTable() {
+    return table;
+  }
+
+  // #########################################################################
+  @Override
+  protected int choose(final Engine engine, final boolean fresh) {
+    searches++;
+    copyQueue(engine);
+    Tetromino.Shape shape = engine.getFallingPiece().getShape();
+    Tetromino.Shape holdShape = engine.getHoldPiece().getShape();
+    byte hold = holdShape == null ? NO_SHAPE : (byte) holdShape.ordinal();
+    byte current = (byte) shape.ordinal();
+
+    // Falling piece placements
+    childCount = 0;
+    for (int i = 0, n = finder.size(); i < n; i++) {
+      addChild(rows, finder, i, shapeAt(0), hold, 1, 0, i, 1);
+    }
+
+    // Hold placements
+    if (canHold(engine, fresh)) {
+      Tetromino.Shape heldShape = holdShape == null ? shapeAt(0) : holdShape;
+      int queueIndex = holdShape == null ? 2 : 1;
+      if (heldShape != null && heldShape != shape) {
+        configure(holdFinder);
+        for (int i = 0, n = holdFinder.find(rows, heldShape); i < n; i++) {
+          addChild(rows, holdFinder, i, shapeAt(queueIndex - 1), current,
+              queueIndex, 0, CHOICE_HOLD, 1);
+        }
+      }
+    }
+
+    configure(expander);
+    boolean expanded = true;
+    for (int d = 1; d < depth && childCount > 0 && expanded; d++) {
+      select();
+      childCount = 0;
+      expanded = false;
+      for (int b = 0; b < beamSize; b++) {
+        expanded |= expand(b, d + 1);
+      }
+      if (childCount == 0) {
+        // Nothing left to expand, the beam is the best we know
+        return beamSize > 0 ? beamRoot[0] : CHOICE_NONE;
+      }
+    }
+    if (childCount == 0) {
+      return CHOICE_NONE;
+    }
+
+    int best = 0;
+    for (int i = 1; i < childCount; i++) {
+      if (childRating[i] > childRating[best]) {
+        best = i;
+      }
+    }
+    return childRoot[best];
+  }
+
+  /**
+   * Copy the next queue of the engine.
+   *
+   * @param engine the engine
+   */
+  private void copyQueue(final Engine engine) {
+    int size = engine.getNextShapes().size();
+    if (queue.length < size) {
+      queue = new Tetromino.Shape[size];
+    }
+    queueSize = 0;
+    for (Tetromino.Shape shape : engine.getNextShapes()) {
+      queue[queueSize++] = shape;
+    }
+  }
+
+  /**
+   * Get a shape of the next queue.
+   *
+   * @param index the index in the queue
+   * @return the shape, {@code null} beyond the visible queue
+   */
+  private Tetromino.Shape shapeAt(final int index) {
+    return index < queueSize ? queue[index] : null;
+  }
+
+  /**
+   * Expand a playfield of the beam with the placements of its current piece, or of its hold piece.
+   *
+   * @param b the index in the beam
+   * @param childDepth the depth of the children
+   * @return {@code true} if a piece was placed, {@code false} at the end of the queue
+   */
+  private boolean expand(final int b, final int childDepth) {
+    int[] board = beamRows[b];
+    byte current = beamCurrent[b];
+    byte hold = beamHold[b];
+    int queueIndex = beamQueue[b];
+    if (current == NO_SHAPE) {
+      // End of the queue: keep the playfield as is
+      addChild(board, null, 0, null, hold, queueIndex, beamLines[b],
+          beamRoot[b], childDepth);
+      return false;
+    }
+
+    for (int i = 0, n = expander.find(board, SHAPES[current]); i < n; i++) {
+      addChild(board, expander, i, shapeAt(queueIndex), hold, queueIndex + 1,
+          beamLines[b], beamRoot[b], childDepth);
+    }
+
+    if (hold != current) {
+      Tetromino.Shape heldShape =
+          hold == NO_SHAPE ? shapeAt(queueIndex) : SHAPES[hold];
+      int heldQueue = hold == NO_SHAPE ? queueIndex + 1 : queueIndex;
+      if (heldShape != null) {
+        for (int i = 0, n = expander.find(board, heldShape); i < n; i++) {
+          addChild(board, expander, i, shapeAt(heldQueue), current,
+              heldQueue + 1, beamLines[b], beamRoot[b], childDepth);
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Add a child, unless a better rated child with the same playfield exists.
+   *
+   * @param board the parent playfield
+   * @param placements the finder of the placement, {@code null} to keep the parent playfield
+   * @param index the placement index
+   * @param next the shape of the next piece to place, {@code null} if none
+   * @param hold the shape ordinal of the hold piece
+   * @param queueIndex the index in the queue of the piece after the next piece
+   * @param lines the number of lines cleared to reach the parent
+   * @param root the placement of the falling piece leading to the parent
+   * @param childDepth the depth of the child
+   */
+  private void addChild(final int[] board, final PlacementFinder placements,
+      final int index, final Tetromino.Shape next, final byte hold,
+      final int queueIndex, final int lines, final int root,
+      final int childDepth) {
+    ensureCapacity(childCount + 1);
+    int[] child = childRows[childCount];
+    System.arraycopy(board, 0, child, 0, board.length);
+    int childLinesCleared = lines;
+    if (placements != null) {
+      placements.lock(index, child);
+      childLinesCleared += Bitboards.clearLines(child);
+    }
+    double rating = evaluator.evaluate(child, childLinesCleared);
+
+    long key = Zobrist.rows(child)
+        ^ Zobrist.hold(hold == NO_SHAPE ? null : SHAPES[hold], true)
+        ^ (searches * 0x9E3779B97F4A7C15L)
+        ^ ((((long) childDepth << Integer.SIZE) | queueIndex)
+            * 0xC2B2AE3D27D4EB4FL);
+    int seen = (int) table.get(key, -1);
+    int slot = childCount;
+    if (seen >= 0 && seen < childCount && childKey[seen] == key) {
+      if (childRating[seen] >= rating) {
+        return;
+      }
+      // Replace the duplicate
+      slot = seen;
+      System.arraycopy(child, 0, childRows[seen], 0, child.length);
+    } else {
+      table.put(key, slot);
+      childCount++;
+    }
+    childCurrent[slot] = next == null ? NO_SHAPE : (byte) next.ordinal();
+    childHold[slot] = hold;
+    childQueue[slot] = queueIndex;
+    childLines[slot] = childLinesCleared;
+    childRoot[slot] = root;
+    childRating[slot] = rating;
+    childKey[slot] = key;
+  }
+
+  /**
+   * Select the best children into the beam.
+   */
+  private void select() {
+    for (int i = 0; i < childCount; i++) {
+      order[i] = i;
+    }
+    beamSize = Math.min(beamWidth, childCount);
+    if (beamSize < childCount) {
+      selectBest(0, childCount - 1, beamSize);
+    }
+    for (int b = 0; b < beamSize; b++) {
+      int c = order[b];
+      System.arraycopy(childRows[c], 0, beamRows[b], 0, Bitboards.HEIGHT);
+      beamCurrent[b] = childCurrent[c];
+      beamHold[b] = childHold[c];
+      beamQueue[b] = childQueue[c];
+      beamLines[b] = childLines[c];
+      beamRoot[b] = childRoot[c];
+    }
+  }
+
+  /**
+   * Partially order the children so that the best {@code k} ones come first (quickselect).
+   *
+   * @param from the first index of the range of {@link #order}
+   * @param to the last index of the range of {@link #order}, inclusive
+   * @param k the number of best children wanted
+   */
+  private void selectBest(final int from, final int to, final int k) {
+    int left = from;
+    int right = to;
+    while (left < right) {
+      double pivot = childRating[order[(left + right) >>> 1]];
+      int i = left;
+      int j = right;
+      while (i <= j) {
+        while (childRating[order[i]] > pivot) {
+          i++;
+        }
+        while (childRating[order[j]] < pivot) {
+          j--;
+        }
+        if (i <= j) {
+          int t = order[i];
+          order[i] = order[j];
+          order[j] = t;
+          i++;
+          j--;
+        }
+      }
+      if (k - 1 <= j) {
+        right = j;
+      } else if (k - 1 >= i) {
+        left = i;
+      } else {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Make room for the given number of children.
+   *
+   * @param capacity the number of children
+   */
+  private void ensureCapacity(final int capacity) {
+    if (capacity <= childRows.length) {
+      return;
+    }
+    int newCapacity = Math.max(capacity, childRows.length * 2);
+    int[][] newRows = new int[newCapacity][];
+    System.arraycopy(childRows, 0, newRows, 0, childRows.length);
+    for (int i = childRows.length; i < newCapacity; i++) {
+      newRows[i] = new int[Bitboards.HEIGHT];
+    }
+    childRows = newRows;
+    byte[] newCurrent = new byte[newCapacity];
+    System.arraycopy(childCurrent, 0, newCurrent, 0, childCount);
+    childCurrent = newCurrent;
+    byte[] newHold = new byte[newCapacity];
+    System.arraycopy(childHold, 0, newHold, 0, childCount);
+    childHold = newHold;
+    int[] newQueue = new int[newCapacity];
+    System.arraycopy(childQueue, 0, newQueue, 0, childCount);
+    childQueue = newQueue;
+    int[] newLines = new int[newCapacity];
+    System.arraycopy(childLines, 0, newLines, 0, childCount);
+    childLines = newLines;
+    int[] newRoot = new int[newCapacity];
+    System.arraycopy(childRoot, 0, newRoot, 0, childCount);
+    childRoot = newRoot;
+    double[] newRating = new double[newCapacity];
+    System.arraycopy(childRating, 0, newRating, 0, childCount);
+    childRating = newRating;
+    long[] newKey = new long[newCapacity];
+    System.arraycopy(childKey, 0, newKey, 0, childCount);
+    childKey = newKey;
+    order = new int[newCapacity];
+  }
+}
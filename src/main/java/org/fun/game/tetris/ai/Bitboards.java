@@ -0,0 +1,93 @@
+package org.fun.game.tetris.ai;
+
+import org.fun.game.tetris.Board;
+import org.fun.game.tetris.Engine;
+import org.fun.game.tetris.Spin;
+
+/**
+ * Operations on playfield bitboards.
+ *
+ * <p>
+ * A bitboard holds one {@code int} per row of the playfield, bottom row first, the bit {@code x}
+ * of a row being set when the cell in column {@code x} is occupied. Bitboards are only defined for
+ * the {@link Board#STANDARD} playfield.
+ * </p>
+ *
+ * @see Engine#rowAt(int)
+ *
+ * @author Mathieu Brunot
+ */
+public final class Bitboards {
+
+  /**
+   * Width of the playfield.
+   */
+  public static final int WIDTH = Board.STANDARD.getWidth();
+  /**
+   * Height of the playfield.
+   */
+  public static final int HEIGHT = Board.STANDARD.getHeight();
+  /**
+   * Bit mask of a full row.
+   */
+  public static final int FULL_ROW = (int) Board.STANDARD.fullWord(0);
+
+  /**
+   * Hidden constructor.
+   */
+  private Bitboards() {}
+
+  /**
+   * Remove the full rows of a bitboard, the same way the {@link Engine} does.
+   *
+   * @param rows the bitboard to update
+   * @return the number of rows removed
+   */
+  public static int clearLines(final int[] rows) {
+    int numFullLines = 0;
+    for (int i = rows.length - 1; i >= 0; --i) {
+      if (rows[i] == FULL_ROW) {
+        ++numFullLines;
+        System.arraycopy(rows, i + 1, rows, i, rows.length - 1 - i);
+      }
+    }
+    return numFullLines;
+  }
+
+  /**
+   * Get the height of the stack of a bitboard.
+   *
+   * @param rows the bitboard
+   * @return the number of rows up to the highest occupied cell
+   */
+  public static int height(final int[] rows) {
+    for (int y = rows.length - 1; y >= 0; --y) {
+      if (rows[y] != 0) {
+        return y + 1;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Get the corners of the center of a T piece occupied on a bitboard, walls and floor included.
+   *
+   * @param rows the bitboard
+   * @param x the piece {@code X} position
+   * @param y the piece {@code Y} position
+   * @return the mask of the occupied corners
+   * @see Spin#spin(int, int, int)
+   */
+  public static int corners(final int[] rows, final int x, final int y) {
+    int corners = 0;
+    for (int c = 0; c < Spin.CORNERS; c++) {
+      int cx = x + Spin.cornerX(c);
+      int cy = y + Spin.cornerY(c);
+      if (cx < 0 || cx >= WIDTH || cy < 0 || cy >= rows.length
+          || (rows[cy] & (1 << cx)) != 0) {
+        corners |= 1 << c;
+      }
+    }
+    return corners;
+  }
+}
@@ -0,0 +1,58 @@
+package org.fun.game.tetris.ai;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The bots available.
+ *
+ * @author Mathieu Brunot
+ */
+public enum BotType {
+  /**
+   * Heuristic bot looking two pieces ahead.
+   *
+   * @see HeuristicBot
+   */
+  HEURISTIC {
+    @Override
+    public AbstractBot create(final Evaluator evaluator,
+        final ForkJoinPool pool) {
+      return new HeuristicBot(evaluator, 2, pool);
+    }
+  },
+  /**
+   * Heuristic bot looking at the falling piece only.
+   *
+   * @see HeuristicBot
+   */
+  GREEDY {
+    @Override
+    public AbstractBot create(final Evaluator evaluator,
+        final ForkJoinPool pool) {
+      return new HeuristicBot(evaluator, 1, pool);
+    }
+  },
+  /**
+   * Beam search bot over the whole next queue.
+   *
+   * @see BeamSearchBot
+   */
+  BEAM {
+    @Override
+    public AbstractBot create(final Evaluator evaluator,
+        final ForkJoinPool pool) {
+      return new BeamSearchBot(evaluator, BeamSearchBot.DEFAULT_BEAM_WIDTH,
+          Integer.MAX_VALUE,
+          new TranspositionTable(BeamSearchBot.DEFAULT_TABLE_CAPACITY));
+    }
+  };
+
+  /**
+   * Create a bot.
+   *
+   * @param evaluator the playfield evaluator
+   * @param pool the pool the bot may run parallel tasks on
+   * @return a new bot
+   */
+  public abstract AbstractBot create(Evaluator evaluator, ForkJoinPool pool);
+}
@@ -0,0 +1,190 @@
+package org.fun.game.tetris.ai;
+
+import java.util.Arrays;
+
+/**
+ * Heuristic evaluation of a playfield.
+ *
+ * <p>
+ * A playfield is rated with a weighted sum of features commonly used by Tetris bots: the number of
+ * lines cleared to reach it, aggregate height of columns, holes, bumpiness, row and column
+ * transitions and wells. The higher the rating, the better the playfield.
+ * </p>
+ *
+ * <p>
+ * All features are computed row by row on the bitboard, without allocation, and evaluators are
+ * immutable: a single evaluator can be shared by any number of threads.
+ * </p>
+ *
+ * @see <a href="https://imake.ninja/el-tetris-an-improvement-on-pierre-dellacheries-algorithm/">
+ *      El-Tetris</a>
+ *
+ * @author Mathieu Brunot
+ */
+public final class Evaluator {
+
+  /**
+   * Feature: number of lines cleared.
+   */
+  public static final int LINES = 0;
+  /**
+   * Feature: sum of the heights of all columns.
+   */
+  public static final int AGGREGATE_HEIGHT = 1;
+  /**
+   * Feature: number of empty cells below the top of their column.
+   */
+  public static final int HOLES = 2;
+  /**
+   * Feature: sum of the height differences between adjacent columns.
+   */
+  public static final int BUMPINESS = 3;
+  /**
+   * Feature: number of horizontal transitions between empty and occupied cells, walls included.
+   */
+  public static final int ROW_TRANSITIONS = 4;
+  /**
+   * Feature: number of vertical transitions between empty and occupied cells, floor included.
+   */
+  public static final int COLUMN_TRANSITIONS = 5;
+  /**
+   * Feature: sum of wells depths, each well cell counting for its depth.
+   */
+  public static final int WELLS = 6;
+  /**
+   * Number of features.
+   */
+  public static final int FEATURES = 7;
+
+  /**
+   * Default features weights.
+   */
+  private static final double[] DEFAULT_WEIGHTS =
+      {3.4181, -0.5101, -7.8993, -0.1845, -3.2179, -9.3487, -3.3856};
+
+  /**
+   * Bit mask of the columns having a right neighbor.
+   */
+  private static final int PAIRS = Bitboards.FULL_ROW >>> 1;
+  /**
+   * Bit mask of the leftmost column.
+   */
+  private static final int LEFT_WALL = 1;
+  /**
+   * Bit mask of the rightmost column.
+   */
+  private static final int RIGHT_WALL = 1 << (Bitboards.WIDTH - 1);
+
+  /**
+   * Features weights.
+   */
+  private final double[] weights;
+
+  /**
+   * Create an evaluator with the default weights.
+   */
+  public Evaluator() {
+    this(DEFAULT_WEIGHTS);
+  }
+
+  /**
+   * Create an evaluator with the given weights.
+   *
+   * @param featuresWeights the features weights, indexed by feature
+   * @throws IllegalArgumentException if there is not one weight per feature
+   */
+  public Evaluator(final double[] featuresWeights) {
+    if (featuresWeights.length != FEATURES) {
+      throw new IllegalArgumentException(
+          "Expected " + FEATURES + " weights: " + featuresWeights.length);
+    }
+    this.weights = featuresWeights.clone();
+  }
+
+  /**
+   * Get a copy of the default weights.
+   *
+   * @return the default features weights
+   */
+  public static double[] getDefaultWeights() {
+    return DEFAULT_WEIGHTS.clone();
+  }
+
+  /**
+   * Get a copy of the features weights.
+   *
+   * @return the features weights
+   */
+  public double[] getWeights() {
+    return weights.clone();
+  }
+
+  /**
+   * Rate a playfield.
+   *
+   * @param rows the playfield bitboard
+   * @param lines the number of lines cleared to reach the playfield
+   * @return the playfield rating, higher is better
+   */
+  public double evaluate(final int[] rows, final int lines) {
+    int aggregateHeight = 0;
+    int holes = 0;
+    int bumpiness = 0;
+    int rowTransitions = 0;
+    int columnTransitions = 0;
+    int wells = 0;
+
+    // Columns having an occupied cell above the current row
+    int covered = 0;
+    int above = 0;
+    for (int y = rows.length - 1; y >= 0; --y) {
+      int row = rows[y];
+      holes += Integer.bitCount(covered & ~row);
+      columnTransitions += Integer.bitCount(row ^ above);
+
+      // Wells start on uncovered cells and go down
+      for (int y2 = y, well = wellAt(rows, y) & ~covered; well != 0
+          && y2 >= 0; --y2) {
+        well &= wellAt(rows, y2);
+        wells += Integer.bitCount(well);
+      }
+
+      covered |= row;
+      // Column heights are above the current row where covered
+      aggregateHeight += Integer.bitCount(covered);
+      bumpiness += Integer.bitCount((covered ^ (covered >>> 1)) & PAIRS);
+
+      // Walls count as occupied cells
+      int walled = (row << 1) | 1 | (1 << (Bitboards.WIDTH + 1));
+      rowTransitions += Integer.bitCount(walled ^ (walled >>> 1)) - 1;
+      above = row;
+    }
+    columnTransitions += Integer.bitCount(~rows[0] & Bitboards.FULL_ROW);
+
+    return weights[LINES] * lines
+        + weights[AGGREGATE_HEIGHT] * aggregateHeight
+        + weights[HOLES] * holes
+        + weights[BUMPINESS] * bumpiness
+        + weights[ROW_TRANSITIONS] * rowTransitions
+        + weights[COLUMN_TRANSITIONS] * columnTransitions
+        + weights[WELLS] * wells;
+  }
+
+  /**
+   * Get the well cells of a row: empty cells with both neighbors occupied.
+   *
+   * @param rows the playfield bitboard
+   * @param y the row
+   * @return the bit mask of the well cells of the row
+   */
+  private static int wellAt(final int[] rows, final int y) {
+    int row = rows[y];
+    return ~row & ((row << 1) | LEFT_WALL) & ((row >>> 1) | RIGHT_WALL)
+        & Bitboards.FULL_ROW;
+  }
+
+  @Override
+  public String toString() {
+    return "Evaluator " + Arrays.toString(weights);
+  }
+}
@@ -0,0 +1,300 @@
+package org.fun.game.tetris.ai;
+
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.fun.game.tetris.Engine;
+import org.fun.game.tetris.Tetromino;
+
+/**
+ * A bot rating placements with a heuristic.
+ *
+ * <p>
+ * Every reachable placement of the falling piece, and of the hold piece alternative, is rated by
+ * the {@link Evaluator}, after placing the next piece at its best when looking two pieces ahead.
+ * The placements are rated in parallel on a {@link ForkJoinPool}.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public class HeuristicBot extends AbstractBot {
+
+  /**
+   * Rating of a placement leading to a top out.
+   */
+  private static final double TOP_OUT = -1e9;
+  /**
+   * Number of placements rated by a single task.
+   */
+  private static final int TASK_THRESHOLD = 4;
+
+  /**
+   * The playfield evaluator.
+   */
+  private final Evaluator evaluator;
+  /**
+   * The pool rating placements.
+   */
+  private final ForkJoinPool pool;
+  /**
+   * Number of pieces placed by each search, {@code 1} or {@code 2}.
+   */
+  private final int lookahead;
+  /**
+   * Per thread buffers used to place the next piece.
+   */
+  private final ThreadLocal<Lookahead> lookaheads =
+      ThreadLocal.withInitial(Lookahead::new);
+
+  // Search
+  /**
+   * Finder of the hold piece placements.
+   */
+  private final PlacementFinder holdFinder = new PlacementFinder();
+  /**
+   * Number of candidate placements.
+   */
+  private int candidates = 0;
+  /**
+   * Number of candidate placements of the falling piece, the others being hold placements.
+   */
+  private int fallingCandidates = 0;
+  /**
+   * Playfield after each candidate placement.
+   */
+  private int[][] candidateRows = new int[0][];
+  /**
+   * Number of lines cleared by each candidate placement.
+   */
+  private int[] candidateLines = new int[0];
+  /**
+   * Shape placed after each candidate placement, {@code null} if none.
+   */
+  private Tetromino.Shape[] candidateNext = new Tetromino.Shape[0];
+  /**
+   * Rating of each candidate placement.
+   */
+  private double[] ratings = new double[0];
+
+  /**
+   * Create a bot with the default evaluator, looking two pieces ahead on the common pool.
+   */
+  public HeuristicBot() {
+    this(new Evaluator(), 2, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Create a bot.
+   *
+   * @param playfieldEvaluator the playfield evaluator
+   * @param lookaheadPieces number of pieces placed by each search, {@code 1} or {@code 2}
+   * @param forkJoinPool the pool rating placements
+   * @throws IllegalArgumentException if the lookahead is neither {@code 1} nor {@code 2}
+   */
+  public HeuristicBot(final Evaluator playfieldEvaluator,
+      final int lookaheadPieces, final ForkJoinPool forkJoinPool) {
+    if (lookaheadPieces < 1 || lookaheadPieces > 2) {
+      throw new IllegalArgumentException(
+          "Lookahead must be 1 or 2 pieces: " + lookaheadPieces);
+    }
+    this.evaluator = playfieldEvaluator;
+    this.lookahead = lookaheadPieces;
+    this.pool = forkJoinPool;
+  }
+
+  /**
+   * Get the playfield evaluator.
+   *
+   * @return the playfield evaluator
+   */
+  public final Evaluator getEvaluator() {
+    return evaluator;
+  }
+
+  /**
+   * Get the number of pieces placed by each search.
+   *
+   * @return {@code 1} or {@code 2}
+   */
+  public final int getLookahead() {
+    return lookahead;
+  }
+
+  // #########################################################################
+  @Override
+  protected int choose(final Engine engine, final boolean fresh) {
+    Tetromino.Shape shape = engine.getFallingPiece().getShape();
+    Tetromino.Shape holdShape = engine.getHoldPiece().getShape();
+    Iterator<Tetromino.Shape> nextShapes = engine.getNextShapes().iterator();
+    Tetromino.Shape next = nextShapes.hasNext() ? nextShapes.next() : null;
+    Tetromino.Shape afterNext = nextShapes.hasNext() ? nextShapes.next() : null;
+
+    // Falling piece placements
+    candidates = 0;
+    fallingCandidates = finder.size();
+    ensureCapacity(fallingCandidates);
+    for (int i = 0; i < fallingCandidates; i++) {
+      addCandidate(finder, i, next);
+    }
+
+    // Hold placements
+    if (canHold(engine, fresh)) {
+      Tetromino.Shape heldShape = holdShape == null ? next : holdShape;
+      Tetromino.Shape heldNext = holdShape == null ? afterNext : next;
+      if (heldShape != shape) {
+        configure(holdFinder);
+        int holdCandidates = holdFinder.find(rows, heldShape);
+        ensureCapacity(fallingCandidates + holdCandidates);
+        for (int i = 0; i < holdCandidates; i++) {
+          addCandidate(holdFinder, i, heldNext);
+        }
+      }
+    }
+    if (candidates == 0) {
+      return CHOICE_NONE;
+    }
+
+    // Rate in parallel
+    pool.invoke(new Rating(0, candidates));
+    int best = 0;
+    for (int i = 1; i < candidates; i++) {
+      if (ratings[i] > ratings[best]) {
+        best = i;
+      }
+    }
+    return best >= fallingCandidates ? CHOICE_HOLD : best;
+  }
+
+  /**
+   * Make room for the given number of candidate placements.
+   *
+   * @param capacity the number of candidate placements
+   */
+  private void ensureCapacity(final int capacity) {
+    if (capacity <= candidateRows.length) {
+      return;
+    }
+    int[][] newRows = new int[capacity][];
+    System.arraycopy(candidateRows, 0, newRows, 0, candidateRows.length);
+    for (int i = candidateRows.length; i < capacity; i++) {
+      newRows[i] = new int[Bitboards.HEIGHT];
+    }
+    candidateRows = newRows;
+    int[] newLines = new int[capacity];
+    System.arraycopy(candidateLines, 0, newLines, 0, candidateLines.length);
+    candidateLines = newLines;
+    Tetromino.Shape[] newNext = new Tetromino.Shape[capacity];
+    System.arraycopy(candidateNext, 0, newNext, 0, candidateNext.length);
+    candidateNext = newNext;
+    ratings = new double[capacity];
+  }
+
+  /**
+   * Add a candidate placement.
+   *
+   * @param placements the finder of the placement
+   * @param index the placement index
+   * @param nextShape the shape placed next
+   */
+  private void addCandidate(final PlacementFinder placements,
+      final int index, final Tetromino.Shape nextShape) {
+    int[] board = candidateRows[candidates];
+    System.arraycopy(rows, 0, board, 0, rows.length);
+    placements.lock(index, board);
+    candidateLines[candidates] = Bitboards.clearLines(board);
+    candidateNext[candidates] = lookahead > 1 ? nextShape : null;
+    candidates++;
+  }
+
+  /**
+   * Rate a candidate placement.
+   *
+   * @param candidate the candidate placement
+   * @return the best rating reachable from the candidate placement
+   */
+  private double rate(final int candidate) {
+    int[] board = candidateRows[candidate];
+    int lines = candidateLines[candidate];
+    Tetromino.Shape nextShape = candidateNext[candidate];
+    if (nextShape == null) {
+      return evaluator.evaluate(board, lines);
+    }
+
+    Lookahead buffers = lookaheads.get();
+    PlacementFinder nextFinder = buffers.finder;
+    configure(nextFinder);
+    int n = nextFinder.find(board, nextShape);
+    if (n == 0) {
+      return TOP_OUT + evaluator.evaluate(board, lines);
+    }
+    double best = Double.NEGATIVE_INFINITY;
+    int[] nextBoard = buffers.rows;
+    for (int i = 0; i < n; i++) {
+      System.arraycopy(board, 0, nextBoard, 0, board.length);
+      nextFinder.lock(i, nextBoard);
+      int nextLines = Bitboards.clearLines(nextBoard);
+      best = Math.max(best,
+          evaluator.evaluate(nextBoard, lines + nextLines));
+    }
+    return best;
+  }
+
+  // #########################################################################
+  /**
+   * Buffers used by a thread to place the next piece.
+   */
+  private static final class Lookahead {
+    /**
+     * Finder of the next piece placements.
+     */
+    private final PlacementFinder finder = new PlacementFinder();
+    /**
+     * Playfield after the next piece placement.
+     */
+    private final int[] rows = new int[Bitboards.HEIGHT];
+  }
+
+  /**
+   * Task rating a range of candidate placements.
+   */
+  private final class Rating extends RecursiveAction {
+
+    /**
+     * Serial version UID.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * First candidate rated.
+     */
+    private final int from;
+    /**
+     * Last candidate rated, exclusive.
+     */
+    private final int to;
+
+    /**
+     * Create a rating task.
+     *
+     * @param fromCandidate first candidate rated
+     * @param toCandidate last candidate rated, exclusive
+     */
+    Rating(final int fromCandidate, final int toCandidate) {
+      this.from = fromCandidate;
+      this.to = toCandidate;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= TASK_THRESHOLD) {
+        for (int i = from; i < to; i++) {
+          ratings[i] = rate(i);
+        }
+      } else {
+        int middle = (from + to) >>> 1;
+        invokeAll(new Rating(from, middle), new Rating(middle, to));
+      }
+    }
+  }
+}
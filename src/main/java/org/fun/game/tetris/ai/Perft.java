@@ -0,0 +1,130 @@
+package org.fun.game.tetris.ai;
+
+import org.fun.game.tetris.Tetrion;
+import org.fun.game.tetris.Tetromino;
+
+/**
+ * Counts the placement sequences reachable from a playfield, for a sequence of shapes.
+ *
+ * <p>
+ * Named after the chess move generation test, perft walks the tree of every distinct placement of
+ * each shape in turn, as found by the {@link PlacementFinder}, locking each placement and clearing
+ * full lines before placing the next shape. The hold piece is not used. The number of sequences to
+ * a given depth only depends on the moves and kicks of the {@link Tetrion.Mode}, which makes it a
+ * fingerprint of the move generation, while the number of nodes visited per second measures its
+ * throughput.
+ * </p>
+ *
+ * <p>
+ * As in chess engines, the placements of the last shape are counted but not locked.
+ * </p>
+ *
+ * <p>
+ * A perft preallocates all its buffers but is not thread-safe.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ *
+ * @see <a href="https://www.chessprogramming.org/Perft">Perft</a>
+ */
+public class Perft {
+
+  /**
+   * Placement finders, one per depth.
+   */
+  private final PlacementFinder[] finders;
+  /**
+   * Bitboards, one per depth.
+   */
+  private final int[][] boards;
+  /**
+   * Shapes of the current count, by depth.
+   */
+  private Tetromino.Shape[] shapes;
+  /**
+   * Number of nodes visited by the last count.
+   */
+  private long nodes = 0;
+
+  /**
+   * Create a perft.
+   *
+   * @param mode the game mode whose moves and kicks are used, {@link Tetrion.Mode#MIX} if
+   *        {@code null}
+   * @param maxDepth the maximum depth counted
+   */
+  public Perft(final Tetrion.Mode mode, final int maxDepth) {
+    this.finders = new PlacementFinder[maxDepth];
+    this.boards = new int[maxDepth][Bitboards.HEIGHT];
+    for (int d = 0; d < maxDepth; d++) {
+      finders[d] = new PlacementFinder(mode);
+    }
+  }
+
+  /**
+   * Get the maximum depth counted.
+   *
+   * @return the maximum depth
+   */
+  public final int getMaxDepth() {
+    return finders.length;
+  }
+
+  /**
+   * Get the number of nodes visited by the last count, i.e. the placements found at all depths.
+   *
+   * @return the number of nodes visited
+   */
+  public final long getNodes() {
+    return nodes;
+  }
+
+  /**
+   * Count the placement sequences reachable from a playfield.
+   *
+   * @param board the playfield bitboard
+   * @param sequence the shapes to place, in order
+   * @param depth the number of shapes to place
+   * @return the number of distinct placement sequences
+   * @throws IllegalArgumentException if the depth exceeds the maximum depth or the sequence length
+   */
+  public long count(final int[] board, final Tetromino.Shape[] sequence,
+      final int depth) {
+    if (depth > finders.length || depth > sequence.length) {
+      throw new IllegalArgumentException("Depth too large: " + depth);
+    }
+    nodes = 0;
+    if (depth <= 0) {
+      return 1;
+    }
+    this.shapes = sequence;
+    System.arraycopy(board, 0, boards[0], 0, Bitboards.HEIGHT);
+    return count(0, depth);
+  }
+
+  /**
+   * Count the placement sequences reachable from the bitboard of a depth.
+   *
+   * @param depth the current depth
+   * @param maxDepth the depth of the count
+   * @return the number of distinct placement sequences
+   */
+  private long count(final int depth, final int maxDepth) {
+    PlacementFinder finder = finders[depth];
+    int placements = finder.find(boards[depth], shapes[depth]);
+    nodes += placements;
+    if (depth + 1 == maxDepth) {
+      return placements;
+    }
+
+    long sequences = 0;
+    int[] next = boards[depth + 1];
+    for (int i = 0; i < placements; i++) {
+      System.arraycopy(boards[depth], 0, next, 0, Bitboards.HEIGHT);
+      finder.lock(i, next);
+      Bitboards.clearLines(next);
+      sequences += count(depth + 1, maxDepth);
+    }
+    return sequences;
+  }
+}
@@ -0,0 +1,67 @@
+package org.fun.game.tetris.ai;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.fun.game.tetris.CommandLine;
+import org.fun.game.tetris.Tetrion;
+import org.fun.game.tetris.Tetromino;
+
+/**
+ * Command line tool counting the placement sequences from an empty playfield.
+ *
+ * @author Mathieu Brunot
+ *
+ * @see Perft
+ */
+public final class PerftTool {
+
+  /**
+   * Command line option to count the placement sequences up to the given depth.
+   */
+  public static final String PERFT_OPTION = "--perft";
+  /**
+   * Options of the tool.
+   */
+  public static final List<String> OPTIONS =
+      Collections.singletonList(PERFT_OPTION);
+
+  /**
+   * Hidden constructor.
+   */
+  private PerftTool() {}
+
+  /**
+   * Count the placement sequences of the shapes of the seed from an empty playfield, at each depth
+   * up to the given depth, and print the counts and throughput.
+   *
+   * @param options the command line options
+   * @throws CommandLine.UsageException if an option value is not valid
+   */
+  public static void run(final CommandLine options) {
+    int depth = options.getInt(PERFT_OPTION, 0);
+    Tetrion.Mode mode =
+        options.getEnum(CommandLine.MODE_OPTION, Tetrion.Mode.class, null);
+    Tetromino.Shape.RandomGenerator generator =
+        new Tetromino.Shape.RandomGenerator(
+            options.getLong(CommandLine.SEED_OPTION, 0));
+    Tetromino.Shape[] sequence = new Tetromino.Shape[depth];
+    for (int i = 0; i < depth; i++) {
+      sequence[i] = generator.nextShape();
+    }
+    System.err.println("Shapes " + Arrays.toString(sequence));
+    System.err.println(String.format("%5s %16s %16s %10s %14s", "depth",
+        "sequences", "nodes", "ms", "nodes/s"));
+    Perft perft = new Perft(mode, depth);
+    int[] board = new int[Bitboards.HEIGHT];
+    for (int d = 1; d <= depth; d++) {
+      long start = System.nanoTime();
+      long sequences = perft.count(board, sequence, d);
+      long nanos = System.nanoTime() - start;
+      System.err.println(String.format("%5d %16d %16d %10.1f %14.0f", d,
+          sequences, perft.getNodes(), nanos / 1e6,
+          perft.getNodes() / (nanos / 1e9)));
+    }
+  }
+}
@@ -0,0 +1,797 @@
+package org.fun.game.tetris.ai;
+
+import org.fun.game.tetris.Attack;
+import org.fun.game.tetris.Board;
+import org.fun.game.tetris.Engine;
+import org.fun.game.tetris.Spin;
+import org.fun.game.tetris.Tetrion;
+import org.fun.game.tetris.Tetromino;
+
+/**
+ * Enumerates every distinct position a piece can be locked at.
+ *
+ * <p>
+ * The finder runs a breadth-first search over the {@code (x, y, rotation)} states of a piece on a
+ * bitboard, starting from the spawn position (or any given position), following the same moves
+ * and kicks as the {@link Engine}: shifts, one cell soft drops, and rotations with the wall kicks
+ * and floor kicks of the current {@link Tetrion.Mode}. Soft drop tucks and spins are therefore
+ * found as well as plain drops. Gravity is assumed low enough for the player to move the piece
+ * before it falls, unless {@link #setInstantGravity(boolean) instant gravity} (20G) is set.
+ * </p>
+ *
+ * <p>
+ * Positions are locked positions: states from which the piece cannot move down. Two states
+ * occupying the same cells (e.g. a Z piece and its half turn) are a single placement, the one with
+ * the shortest path being kept.
+ * </p>
+ *
+ * <p>
+ * A finder preallocates all its buffers and can be reused for any number of searches, but it is
+ * not thread-safe: each thread should use its own finder.
+ * </p>
+ *
+ * @see Engine#isMoveable(Tetromino, int, int)
+ *
+ * @author Mathieu Brunot
+ */
+public class PlacementFinder {
+
+  /**
+   * Move: shift left.
+   */
+  public static final byte LEFT = 0;
+  /**
+   * Move: shift right.
+   */
+  public static final byte RIGHT = 1;
+  /**
+   * Move: one cell soft drop.
+   */
+  public static final byte DOWN = 2;
+  /**
+   * Move: rotate left.
+   */
+  public static final byte ROTATE_LEFT = 3;
+  /**
+   * Move: rotate right.
+   */
+  public static final byte ROTATE_RIGHT = 4;
+
+  /**
+   * Width of the playfield.
+   */
+  private static final int WIDTH = Bitboards.WIDTH;
+  /**
+   * Height of the playfield.
+   */
+  private static final int HEIGHT = Bitboards.HEIGHT;
+  /**
+   * Offset applied to positions so that they are never negative.
+   *
+   * <p>
+   * Blocks coordinates never exceed this offset, hence a piece partly inside the playfield is never
+   * further than this offset outside of it.
+   * </p>
+   */
+  private static final int OFFSET = 2;
+  /**
+   * Number of bits used to store an {@code X} position in a state.
+   */
+  private static final int X_BITS = 4;
+  /**
+   * Number of bits used to store an {@code Y} position in a state.
+   */
+  private static final int Y_BITS = 5;
+  /**
+   * Bit mask of an {@code X} position in a state.
+   */
+  private static final int X_MASK = (1 << X_BITS) - 1;
+  /**
+   * Bit mask of an {@code Y} position in a state.
+   */
+  private static final int Y_MASK = (1 << Y_BITS) - 1;
+  /**
+   * Number of distinct packed positions, hence the maximum length of a path.
+   *
+   * @see #position(int, int, int)
+   */
+  public static final int POSITIONS = Tetromino.ROTATIONS << (X_BITS + Y_BITS);
+  /**
+   * Number of bits used to store a cell index in a placement key.
+   */
+  private static final int CELL_BITS = 8;
+  /**
+   * Size of the placement keys hash table, a power of two twice the maximum number of placements,
+   * so that the table is never more than half full and a probe always ends on a free slot.
+   */
+  private static final int KEYS_TABLE_SIZE = 2 * POSITIONS;
+  /**
+   * Shift of a multiplied placement key giving a slot of the hash table.
+   */
+  private static final int KEYS_HASH_SHIFT =
+      Integer.SIZE - Integer.numberOfTrailingZeros(KEYS_TABLE_SIZE);
+
+  /**
+   * Number of shapes.
+   */
+  private static final int SHAPES = Tetromino.Shape.values().length;
+  /**
+   * Blocks {@code X} offsets by shape, rotation and block.
+   */
+  private static final int[][][] BLOCK_X =
+      new int[SHAPES][Tetromino.ROTATIONS][Tetromino.BLOCKS];
+  /**
+   * Blocks {@code Y} offsets by shape, rotation and block.
+   */
+  private static final int[][][] BLOCK_Y =
+      new int[SHAPES][Tetromino.ROTATIONS][Tetromino.BLOCKS];
+  /**
+   * Piece width by shape and rotation.
+   */
+  private static final int[][] PIECE_WIDTH =
+      new int[SHAPES][Tetromino.ROTATIONS];
+  /**
+   * Piece height by shape and rotation.
+   */
+  private static final int[][] PIECE_HEIGHT =
+      new int[SHAPES][Tetromino.ROTATIONS];
+
+  static {
+    for (Tetromino.Shape shape : Tetromino.Shape.values()) {
+      int s = shape.ordinal();
+      for (int r = 0; r < Tetromino.ROTATIONS; r++) {
+        int minX = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        for (int i = 0; i < Tetromino.BLOCKS; i++) {
+          BLOCK_X[s][r][i] = shape.x(i, r);
+          BLOCK_Y[s][r][i] = shape.y(i, r);
+          minX = Math.min(minX, shape.x(i, r));
+          maxX = Math.max(maxX, shape.x(i, r));
+          minY = Math.min(minY, shape.y(i, r));
+          maxY = Math.max(maxY, shape.y(i, r));
+        }
+        PIECE_WIDTH[s][r] = maxX - minX + 1;
+        PIECE_HEIGHT[s][r] = maxY - minY + 1;
+      }
+    }
+  }
+
+  // Rules
+  /**
+   * Are wall kicks enabled?
+   */
+  private boolean wallKickEnabled;
+  /**
+   * Are floor kicks enabled?
+   */
+  private boolean floorKickEnabled;
+  /**
+   * Does the piece fall to the bottom after each move (20G)?
+   */
+  private boolean instantGravity = false;
+
+  // Search buffers
+  /**
+   * The playfield searched.
+   */
+  private final int[] rows = new int[HEIGHT];
+  /**
+   * Visited states bitset.
+   */
+  private final long[] visited = new long[POSITIONS / Long.SIZE];
+  /**
+   * States queue.
+   */
+  private final int[] frontier = new int[POSITIONS];
+  /**
+   * Parent state of each visited state.
+   */
+  private final int[] parents = new int[POSITIONS];
+  /**
+   * Move leading to each visited state from its parent.
+   */
+  private final byte[] moves = new byte[POSITIONS];
+  /**
+   * Placement keys hash table.
+   */
+  private final int[] keys = new int[KEYS_TABLE_SIZE];
+  /**
+   * Search generation of each placement key of the hash table.
+   *
+   * @see #generation
+   */
+  private final int[] keysGeneration = new int[KEYS_TABLE_SIZE];
+  /**
+   * Current search generation, so that the keys table never needs clearing.
+   */
+  private int generation = 0;
+  /**
+   * The shape searched.
+   */
+  private Tetromino.Shape shape;
+  /**
+   * Index of the shape searched.
+   */
+  private int shapeIndex;
+
+  // Results
+  /**
+   * Number of placements found.
+   */
+  private int count = 0;
+  /**
+   * Placements found, as states.
+   */
+  private final int[] placements = new int[POSITIONS];
+
+  /**
+   * Create a placement finder with the default game mode rules.
+   */
+  public PlacementFinder() {
+    this(null);
+  }
+
+  /**
+   * Create a placement finder with the given game mode rules.
+   *
+   * @param mode the game mode, {@link Tetrion.Mode#MIX} if {@code null}
+   */
+  public PlacementFinder(final Tetrion.Mode mode) {
+    setMode(mode);
+  }
+
+  /**
+   * Set the game mode rules.
+   *
+   * @param mode the game mode, {@link Tetrion.Mode#MIX} if {@code null}
+   */
+  public final void setMode(final Tetrion.Mode mode) {
+    Tetrion.Mode actualMode = mode == null ? Tetrion.Mode.MIX : mode;
+    this.wallKickEnabled = actualMode.isWallKickEnabled();
+    this.floorKickEnabled = actualMode.isFloorKickEnabled();
+  }
+
+  /**
+   * Does the piece fall to the bottom after each move (20G)?
+   *
+   * @return {@code true} if the piece falls to the bottom after each move
+   */
+  public final boolean isInstantGravity() {
+    return instantGravity;
+  }
+
+  /**
+   * Set if the piece falls to the bottom after each move (20G).
+   *
+   * @param isInstantGravity does the piece fall to the bottom after each move?
+   */
+  public final void setInstantGravity(final boolean isInstantGravity) {
+    this.instantGravity = isInstantGravity;
+  }
+
+  // #########################################################################
+  /**
+   * Find the placements of the falling piece of an engine, from its current position.
+   *
+   * @param engine the engine
+   * @return the number of placements found
+   */
+  public int find(final Engine engine) {
+    Tetromino piece = engine.getFallingPiece();
+    if (piece.getShape() == null || !Board.STANDARD.equals(engine.getBoard())) {
+      count = 0;
+      return count;
+    }
+    engine.copyRows(rows);
+    return search(piece.getShape(), engine.getCurX(), engine.getCurY(),
+        piece.getRotation());
+  }
+
+  /**
+   * Find the placements of a new piece of the given shape.
+   *
+   * @param board the playfield bitboard
+   * @param newShape the shape of the piece
+   * @return the number of placements found
+   * @see Engine#rowAt(int)
+   */
+  public int find(final int[] board, final Tetromino.Shape newShape) {
+    return find(board, newShape, Board.STANDARD.getSpawnX(),
+        Board.STANDARD.getSpawnY(newShape), 0);
+  }
+
+  /**
+   * Find the placements of a piece of the given shape at the given position.
+   *
+   * @param board the playfield bitboard
+   * @param pieceShape the shape of the piece
+   * @param x the piece {@code X} position
+   * @param y the piece {@code Y} position
+   * @param rotation the piece rotation state
+   * @return the number of placements found
+   * @see Engine#rowAt(int)
+   */
+  public int find(final int[] board, final Tetromino.Shape pieceShape,
+      final int x, final int y, final int rotation) {
+    System.arraycopy(board, 0, rows, 0, HEIGHT);
+    return search(pieceShape, x, y, rotation);
+  }
+
+  /**
+   * Search the placements of a piece on the {@link #rows}.
+   *
+   * @param pieceShape the shape of the piece
+   * @param x the piece {@code X} position
+   * @param y the piece {@code Y} position
+   * @param rotation the piece rotation state
+   * @return the number of placements found
+   */
+  private int search(final Tetromino.Shape pieceShape, final int x,
+      final int y, final int rotation) {
+    this.shape = pieceShape;
+    this.shapeIndex = pieceShape.ordinal();
+    this.count = 0;
+    this.generation++;
+    for (int i = 0; i < visited.length; i++) {
+      visited[i] = 0;
+    }
+    if (!fits(rotation, x, y)) {
+      return count;
+    }
+
+    int head = 0;
+    int tail = 0;
+    int start = instantGravity ? position(x, drop(rotation, x, y), rotation)
+        : position(x, y, rotation);
+    visit(start, -1, (byte) -1);
+    frontier[tail++] = start;
+    boolean rotatable = pieceShape != Tetromino.Shape.O;
+
+    while (head < tail) {
+      int current = frontier[head++];
+      int cx = positionX(current);
+      int cy = positionY(current);
+      int cr = positionRotation(current);
+
+      // Rotations
+      if (rotatable) {
+        int right = rotate(cx, cy, (cr + 1) % Tetromino.ROTATIONS);
+        if (right >= 0) {
+          tail = push(current, ROTATE_RIGHT, positionX(right), positionY(right),
+              positionRotation(right), tail);
+        }
+        int left = rotate(cx, cy, (cr + Tetromino.ROTATIONS - 1)
+            % Tetromino.ROTATIONS);
+        if (left >= 0) {
+          tail = push(current, ROTATE_LEFT, positionX(left), positionY(left),
+              positionRotation(left), tail);
+        }
+      }
+      // Shifts
+      if (fits(cr, cx - 1, cy)) {
+        tail = push(current, LEFT, cx - 1, cy, cr, tail);
+      }
+      if (fits(cr, cx + 1, cy)) {
+        tail = push(current, RIGHT, cx + 1, cy, cr, tail);
+      }
+      // Drop last, so that paths move the piece before dropping it
+      if (fits(cr, cx, cy - 1)) {
+        tail = push(current, DOWN, cx, cy - 1, cr, tail);
+      } else {
+        addPlacement(current);
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Push a state in the frontier if not visited yet.
+   *
+   * @param parent the parent state
+   * @param move the move from the parent state
+   * @param x the new {@code X} position
+   * @param y the new {@code Y} position
+   * @param rotation the new rotation state
+   * @param tail the frontier tail
+   * @return the new frontier tail
+   */
+  private int push(final int parent, final byte move, final int x,
+      final int y, final int rotation, final int tail) {
+    int actualY = instantGravity ? drop(rotation, x, y) : y;
+    int next = position(x, actualY, rotation);
+    if (isVisited(next)) {
+      return tail;
+    }
+    visit(next, parent, move);
+    frontier[tail] = next;
+    return tail + 1;
+  }
+
+  /**
+   * Rotate the piece the same way {@code Engine#tryMove} does, with kicks.
+   *
+   * @param x the piece {@code X} position
+   * @param y the piece {@code Y} position
+   * @param rotation the new rotation state
+   * @return the state after rotation, {@code -1} if the rotation is impossible
+   */
+  private int rotate(final int x, final int y, final int rotation) {
+    if (fits(rotation, x, y)) {
+      return position(x, y, rotation);
+    }
+    if (wallKickEnabled) {
+      int width = PIECE_WIDTH[shapeIndex][rotation];
+      if (x >= 0 && x <= WIDTH - width - 1) {
+        for (int kx = x + 1, l = x + width - 1; kx < l; kx++) {
+          if (fits(rotation, kx, y)) {
+            return position(kx, y, rotation);
+          }
+        }
+      } else if (x >= width - 1 && x <= WIDTH - 1) {
+        for (int kx = x - 1, l = x - width - 1; kx > l; kx--) {
+          if (fits(rotation, kx, y)) {
+            return position(kx, y, rotation);
+          }
+        }
+      }
+    }
+    if (floorKickEnabled) {
+      int height = PIECE_HEIGHT[shapeIndex][rotation];
+      if (y >= 0 && y <= HEIGHT - height - 1) {
+        for (int ky = y + 1, l = y + height; ky < l; ky++) {
+          if (fits(rotation, x, ky)) {
+            return position(x, ky, rotation);
+          }
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Drop the piece until it reaches the stack or bottom of the playfield.
+   *
+   * @param rotation the piece rotation state
+   * @param x the piece {@code X} position
+   * @param y the piece {@code Y} position
+   * @return the {@code Y} position reached
+   */
+  private int drop(final int rotation, final int x, final int y) {
+    int dropY = y;
+    while (fits(rotation, x, dropY - 1)) {
+      dropY--;
+    }
+    return dropY;
+  }
+
+  /**
+   * Can the piece be at the given position?
+   *
+   * @param rotation the piece rotation state
+   * @param x the piece {@code X} position
+   * @param y the piece {@code Y} position
+   * @return {@code true} if all the piece's blocks are inside the playfield on empty cells
+   */
+  private boolean fits(final int rotation, final int x, final int y) {
+    int[] blockX = BLOCK_X[shapeIndex][rotation];
+    int[] blockY = BLOCK_Y[shapeIndex][rotation];
+    for (int i = 0; i < Tetromino.BLOCKS; i++) {
+      int bx = x + blockX[i];
+      int by = y - blockY[i];
+      if (bx < 0 || bx >= WIDTH || by < 0 || by >= HEIGHT
+          || (rows[by] & (1 << bx)) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Add a placement unless another state occupying the same cells was already found.
+   *
+   * @param placement the placement state
+   */
+  private void addPlacement(final int placement) {
+    int key = cellsKey(placement);
+    int slot = (key * 0x9E3779B1) >>> KEYS_HASH_SHIFT;
+    while (keysGeneration[slot] == generation) {
+      if (keys[slot] == key) {
+        return;
+      }
+      slot = (slot + 1) & (KEYS_TABLE_SIZE - 1);
+    }
+    keysGeneration[slot] = generation;
+    keys[slot] = key;
+    placements[count++] = placement;
+  }
+
+  /**
+   * Compute a key identifying the cells occupied by a piece.
+   *
+   * @param placement the piece state
+   * @return the sorted cells indexes packed in an {@code int}
+   */
+  private int cellsKey(final int placement) {
+    int x = positionX(placement);
+    int y = positionY(placement);
+    int r = positionRotation(placement);
+    int[] blockX = BLOCK_X[shapeIndex][r];
+    int[] blockY = BLOCK_Y[shapeIndex][r];
+    int c0 = (y - blockY[0]) * WIDTH + x + blockX[0];
+    int c1 = (y - blockY[1]) * WIDTH + x + blockX[1];
+    int c2 = (y - blockY[2]) * WIDTH + x + blockX[2];
+    int c3 = (y - blockY[3]) * WIDTH + x + blockX[3];
+    // Sorting network
+    int t;
+    if (c0 > c1) {
+      t = c0;
+      c0 = c1;
+      c1 = t;
+    }
+    if (c2 > c3) {
+      t = c2;
+      c2 = c3;
+      c3 = t;
+    }
+    if (c0 > c2) {
+      t = c0;
+      c0 = c2;
+      c2 = t;
+    }
+    if (c1 > c3) {
+      t = c1;
+      c1 = c3;
+      c3 = t;
+    }
+    if (c1 > c2) {
+      t = c1;
+      c1 = c2;
+      c2 = t;
+    }
+    return (((((c0 << CELL_BITS) | c1) << CELL_BITS) | c2) << CELL_BITS) | c3;
+  }
+
+  // #########################################################################
+  /**
+   * Encode a piece position.
+   *
+   * <p>
+   * Positions are packed in an {@code int} lower than {@code 2048}.
+   * </p>
+   *
+   * @param x the piece {@code X} position
+   * @param y the piece {@code Y} position
+   * @param rotation the piece rotation state
+   * @return the packed position
+   */
+  public static int position(final int x, final int y, final int rotation) {
+    return (((rotation << Y_BITS) | (y + OFFSET)) << X_BITS) | (x + OFFSET);
+  }
+
+  /**
+   * Decode the {@code X} position of a packed position.
+   *
+   * @param position the packed position
+   * @return the {@code X} position
+   */
+  public static int positionX(final int position) {
+    return (position & X_MASK) - OFFSET;
+  }
+
+  /**
+   * Decode the {@code Y} position of a packed position.
+   *
+   * @param position the packed position
+   * @return the {@code Y} position
+   */
+  public static int positionY(final int position) {
+    return ((position >>> X_BITS) & Y_MASK) - OFFSET;
+  }
+
+  /**
+   * Decode the rotation state of a packed position.
+   *
+   * @param position the packed position
+   * @return the rotation state
+   */
+  public static int positionRotation(final int position) {
+    return position >>> (X_BITS + Y_BITS);
+  }
+
+  /**
+   * Has the given state been visited?
+   *
+   * @param state the state
+   * @return {@code true} if visited
+   */
+  private boolean isVisited(final int state) {
+    return (visited[state >>> 6] & (1L << state)) != 0;
+  }
+
+  /**
+   * Mark a state as visited.
+   *
+   * @param state the state
+   * @param parent the parent state
+   * @param move the move from the parent state
+   */
+  private void visit(final int state, final int parent, final byte move) {
+    visited[state >>> 6] |= 1L << state;
+    parents[state] = parent;
+    moves[state] = move;
+  }
+
+  // #########################################################################
+  /**
+   * Get the shape of the last search.
+   *
+   * @return the shape of the last search
+   */
+  public final Tetromino.Shape getShape() {
+    return shape;
+  }
+
+  /**
+   * Get the number of placements found by the last search.
+   *
+   * @return the number of placements found
+   */
+  public final int size() {
+    return count;
+  }
+
+  /**
+   * Get the packed position of a placement.
+   *
+   * @param index the placement index
+   * @return the packed position
+   * @see #position(int, int, int)
+   */
+  public final int getPosition(final int index) {
+    return placements[index];
+  }
+
+  /**
+   * Get the {@code X} position of a placement.
+   *
+   * @param index the placement index
+   * @return the {@code X} position
+   */
+  public final int getX(final int index) {
+    return positionX(placements[index]);
+  }
+
+  /**
+   * Get the {@code Y} position of a placement.
+   *
+   * @param index the placement index
+   * @return the {@code Y} position
+   */
+  public final int getY(final int index) {
+    return positionY(placements[index]);
+  }
+
+  /**
+   * Get the rotation state of a placement.
+   *
+   * @param index the placement index
+   * @return the rotation state
+   * @see Tetromino#getRotation()
+   */
+  public final int getRotation(final int index) {
+    return positionRotation(placements[index]);
+  }
+
+  /**
+   * Get the moves leading to a placement from the search start position.
+   *
+   * @param index the placement index
+   * @param path the array receiving the moves, at least as long as the path
+   * @return the number of moves
+   * @see #LEFT
+   * @see #RIGHT
+   * @see #DOWN
+   * @see #ROTATE_LEFT
+   * @see #ROTATE_RIGHT
+   */
+  public final int getPath(final int index, final byte[] path) {
+    return getPath(index, path, null);
+  }
+
+  /**
+   * Get the moves leading to a placement from the search start position, and the position reached
+   * after each move.
+   *
+   * @param index the placement index
+   * @param path the array receiving the moves, at least as long as the path
+   * @param positions the array receiving the packed positions, at least as long as the path, may
+   *        be {@code null}
+   * @return the number of moves
+   * @see #position(int, int, int)
+   */
+  public final int getPath(final int index, final byte[] path,
+      final int[] positions) {
+    int length = getPathLength(index);
+    int state = placements[index];
+    for (int i = length - 1; i >= 0; i--) {
+      path[i] = moves[state];
+      if (positions != null) {
+        positions[i] = state;
+      }
+      state = parents[state];
+    }
+    return length;
+  }
+
+  /**
+   * Get the number of moves leading to a placement from the search start position.
+   *
+   * @param index the placement index
+   * @return the number of moves
+   */
+  public final int getPathLength(final int index) {
+    int length = 0;
+    for (int state = placements[index]; parents[state] >= 0;
+        state = parents[state]) {
+      length++;
+    }
+    return length;
+  }
+
+  /**
+   * Get the spin of a placement locked right away, the same way the {@link Engine} detects it.
+   *
+   * <p>
+   * Only a T piece whose last move was a rotation, without any drop afterwards, may be a T-spin:
+   * the kick of that rotation follows from the position of the parent state.
+   * </p>
+   *
+   * @param index the placement index
+   * @return the kind of spin, {@link Attack#NO_SPIN}, {@link Attack#MINI_T_SPIN} or
+   *         {@link Attack#T_SPIN}
+   * @see Spin
+   */
+  public final int getSpin(final int index) {
+    int state = placements[index];
+    int parent = parents[state];
+    if (shape != Tetromino.Shape.T || parent < 0
+        || (moves[state] != ROTATE_LEFT && moves[state] != ROTATE_RIGHT)) {
+      return Attack.NO_SPIN;
+    }
+    int x = positionX(state);
+    int y = positionY(state);
+    int r = positionRotation(state);
+    if (rotate(positionX(parent), positionY(parent), r) != state) {
+      // Dropped by instant gravity after the rotation
+      return Attack.NO_SPIN;
+    }
+    int kick;
+    if (x != positionX(parent)) {
+      kick = Spin.WALL_KICK;
+    } else if (y != positionY(parent)) {
+      kick = Spin.FLOOR_KICK;
+    } else {
+      kick = Spin.NO_KICK;
+    }
+    return Spin.spin(r, kick, Bitboards.corners(rows, x, y));
+  }
+
+  /**
+   * Lock a placement into a bitboard.
+   *
+   * @param index the placement index
+   * @param board the playfield bitboard to update
+   */
+  public final void lock(final int index, final int[] board) {
+    int x = getX(index);
+    int y = getY(index);
+    int r = getRotation(index);
+    int[] blockX = BLOCK_X[shapeIndex][r];
+    int[] blockY = BLOCK_Y[shapeIndex][r];
+    for (int i = 0; i < Tetromino.BLOCKS; i++) {
+      board[y - blockY[i]] |= 1 << (x + blockX[i]);
+    }
+  }
+}
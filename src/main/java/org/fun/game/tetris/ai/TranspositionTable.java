@@ -0,0 +1,207 @@
+package org.fun.game.tetris.ai;
+
+import java.util.Arrays;
+
+/**
+ * A bounded map of {@code long} keys to {@code long} values, used to recognize positions already
+ * seen by a search.
+ *
+ * <p>
+ * Entries are stored in primitive arrays with open addressing: a key is looked for in a bucket of
+ * {@link #WAYS} consecutive slots chosen by its bits, keys being expected to be random such
+ * as {@link org.fun.game.tetris.Zobrist Zobrist} hashes. The table never grows: when the bucket of
+ * a new key is full, an entry of the bucket is evicted following the clock algorithm, entries read
+ * or written since the clock hand last passed them getting a second chance.
+ * </p>
+ *
+ * <p>
+ * The key {@code 0} is reserved to mark empty slots and is silently replaced. A table is not
+ * thread-safe.
+ * </p>
+ *
+ * @see <a href="https://en.wikipedia.org/wiki/Page_replacement_algorithm#Clock">Clock</a>
+ *
+ * @author Mathieu Brunot
+ */
+public class TranspositionTable {
+
+  /**
+   * Number of slots of a bucket.
+   */
+  public static final int WAYS = 4;
+  /**
+   * Number of bytes used by an entry.
+   */
+  public static final int ENTRY_BYTES = 2 * Long.BYTES + 1;
+
+  /**
+   * Key used in place of the reserved key {@code 0}.
+   */
+  private static final long ZERO_KEY = 0x9E3779B97F4A7C15L;
+
+  /**
+   * Keys of each slot, {@code 0} if empty.
+   */
+  private final long[] keys;
+  /**
+   * Values of each slot.
+   */
+  private final long[] values;
+  /**
+   * Has each slot been used since the clock hand last passed it?
+   */
+  private final boolean[] referenced;
+  /**
+   * Clock hand of each bucket.
+   */
+  private final byte[] hands;
+  /**
+   * Bit mask of a bucket index.
+   */
+  private final int bucketMask;
+  /**
+   * Number of entries.
+   */
+  private int size = 0;
+  /**
+   * Number of entries evicted.
+   */
+  private long evictions = 0;
+
+  /**
+   * Create a table holding at most the given number of entries.
+   *
+   * @param capacity the maximum number of entries, rounded up to a power of two of at least
+   *        {@link #WAYS}
+   */
+  public TranspositionTable(final int capacity) {
+    int wanted = Math.max(1, (capacity + WAYS - 1) / WAYS);
+    int buckets = Integer.highestOneBit(wanted);
+    if (buckets < wanted) {
+      buckets <<= 1;
+    }
+    this.bucketMask = buckets - 1;
+    this.keys = new long[buckets * WAYS];
+    this.values = new long[buckets * WAYS];
+    this.referenced = new boolean[buckets * WAYS];
+    this.hands = new byte[buckets];
+  }
+
+  /**
+   * Create a table using at most the given memory.
+   *
+   * @param bytes the maximum memory used by the entries, in bytes
+   * @return the new table
+   */
+  public static TranspositionTable ofBytes(final long bytes) {
+    long entries = Math.max(WAYS, bytes / ENTRY_BYTES);
+    return new TranspositionTable(Integer.highestOneBit(
+        (int) Math.min(entries, 1 << (Integer.SIZE - 2))));
+  }
+
+  /**
+   * Get the maximum number of entries.
+   *
+   * @return the table capacity
+   */
+  public final int capacity() {
+    return keys.length;
+  }
+
+  /**
+   * Get the number of entries.
+   *
+   * @return the number of entries
+   */
+  public final int size() {
+    return size;
+  }
+
+  /**
+   * Get the number of entries evicted since the table was created or cleared.
+   *
+   * @return the number of entries evicted
+   */
+  public final long getEvictions() {
+    return evictions;
+  }
+
+  /**
+   * Remove all entries.
+   */
+  public void clear() {
+    Arrays.fill(keys, 0);
+    Arrays.fill(referenced, false);
+    Arrays.fill(hands, (byte) 0);
+    size = 0;
+    evictions = 0;
+  }
+
+  /**
+   * Get the value of a key.
+   *
+   * @param key the key
+   * @param missing the value returned if the key is not in the table
+   * @return the value of the key, {@code missing} if the key is not in the table
+   */
+  public long get(final long key, final long missing) {
+    long actualKey = key == 0 ? ZERO_KEY : key;
+    int base = bucket(actualKey);
+    for (int slot = base, end = base + WAYS; slot < end; slot++) {
+      if (keys[slot] == actualKey) {
+        referenced[slot] = true;
+        return values[slot];
+      }
+    }
+    return missing;
+  }
+
+  /**
+   * Set the value of a key, evicting another entry if needed.
+   *
+   * @param key the key
+   * @param value the value
+   */
+  public void put(final long key, final long value) {
+    long actualKey = key == 0 ? ZERO_KEY : key;
+    int base = bucket(actualKey);
+    int free = -1;
+    for (int slot = base, end = base + WAYS; slot < end; slot++) {
+      if (keys[slot] == actualKey) {
+        values[slot] = value;
+        referenced[slot] = true;
+        return;
+      } else if (keys[slot] == 0 && free < 0) {
+        free = slot;
+      }
+    }
+
+    if (free < 0) {
+      // Clock eviction
+      int b = base / WAYS;
+      int hand = hands[b];
+      while (referenced[base + hand]) {
+        referenced[base + hand] = false;
+        hand = (hand + 1) % WAYS;
+      }
+      free = base + hand;
+      hands[b] = (byte) ((hand + 1) % WAYS);
+      evictions++;
+    } else {
+      size++;
+    }
+    keys[free] = actualKey;
+    values[free] = value;
+    referenced[free] = true;
+  }
+
+  /**
+   * Get the first slot of the bucket of a key.
+   *
+   * @param key the key
+   * @return the first slot of the bucket
+   */
+  private int bucket(final long key) {
+    return ((int) (key ^ (key >>> 32)) & bucketMask) * WAYS;
+  }
+}
@@ -0,0 +1,4 @@
+/**
+ * Tetris game bots and analyzers.
+ */
+package org.fun.game.tetris.ai;
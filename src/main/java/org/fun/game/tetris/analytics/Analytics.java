@@ -0,0 +1,402 @@
+package org.fun.game.tetris.analytics;
+
+import java.util.Locale;
+
+import org.fun.game.tetris.Attack;
+import org.fun.game.tetris.Board;
+import org.fun.game.tetris.Engine;
+import org.fun.game.tetris.sim.Histogram;
+
+/**
+ * Aggregated play analytics of games.
+ *
+ * <p>
+ * Analytics hold counters and {@link Histogram histograms} only, so that the memory used does not
+ * depend on the number of games: pieces per second and keys per piece, finesse faults, the
+ * distribution of line clears and T-spins, and a heatmap of the cells the pieces are locked on. Analytics are
+ * thread-safe, and analytics of games analyzed by different threads can be
+ * {@link #add(Analytics) merged}.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ *
+ * @see PlayAnalyzer
+ */
+public class Analytics {
+
+  /**
+   * Width of the playfield.
+   */
+  private static final int WIDTH = Board.STANDARD.getWidth();
+  /**
+   * Height of the playfield.
+   */
+  private static final int HEIGHT = Board.STANDARD.getHeight();
+  /**
+   * Most lines cleared at once.
+   */
+  public static final int MAX_LINES = 4;
+  /**
+   * Most lines cleared at once by a T-spin.
+   */
+  public static final int MAX_SPIN_LINES = 3;
+  /**
+   * Percentiles reported.
+   */
+  private static final double[] PERCENTILES = {10, 50, 90};
+  /**
+   * Number of recorded units per reported unit of per game ratios.
+   */
+  private static final double RATIO_UNIT = 100;
+  /**
+   * Characters of the heatmap, from the least to the most placements.
+   */
+  private static final String HEATMAP_SCALE = " .:-=+*#%@";
+
+  /**
+   * Number of games.
+   */
+  private long games = 0;
+  /**
+   * Number of frames.
+   */
+  private long frames = 0;
+  /**
+   * Number of pieces locked.
+   */
+  private long pieces = 0;
+  /**
+   * Number of keys pressed.
+   */
+  private long keys = 0;
+  /**
+   * Pieces per second of each game, in hundredths.
+   */
+  private final Histogram piecesPerSecond = new Histogram();
+  /**
+   * Keys per piece of each game, in hundredths.
+   */
+  private final Histogram keysPerPiece = new Histogram();
+  /**
+   * Number of pieces checked for finesse.
+   */
+  private long finessePieces = 0;
+  /**
+   * Number of pieces placed with more keys than needed.
+   */
+  private long finesseFaults = 0;
+  /**
+   * Number of keys pressed beyond those needed.
+   */
+  private long extraKeys = 0;
+  /**
+   * Number of pieces locked by number of lines cleared.
+   */
+  private final long[] lineClears = new long[MAX_LINES + 1];
+  /**
+   * Number of T-spins by clear type.
+   *
+   * @see Attack#clearType(int, int)
+   */
+  private final long[] spins = new long[Attack.CLEAR_TYPES];
+  /**
+   * Number of blocks locked by cell.
+   */
+  private final long[] placements = new long[WIDTH * HEIGHT];
+
+  // #########################################################################
+  /**
+   * Record a game.
+   *
+   * @param gameFrames the number of frames of the game
+   * @param gamePieces the number of pieces locked
+   * @param gameKeys the number of keys pressed
+   */
+  synchronized void recordGame(final long gameFrames, final int gamePieces,
+      final long gameKeys) {
+    games++;
+    frames += gameFrames;
+    pieces += gamePieces;
+    keys += gameKeys;
+    if (gameFrames > 0) {
+      piecesPerSecond.record(Math.round(RATIO_UNIT * gamePieces
+          * Engine.FRAME_PER_SECOND / gameFrames));
+    }
+    if (gamePieces > 0) {
+      keysPerPiece.record(Math.round(RATIO_UNIT * gameKeys / gamePieces));
+    }
+  }
+
+  /**
+   * Record a piece locked.
+   *
+   * @param removedLines the number of lines cleared by the piece
+   * @param cellsX the {@code X} position of the cells of the piece
+   * @param cellsY the {@code Y} position of the cells of the piece
+   */
+  synchronized void recordPiece(final int removedLines, final int[] cellsX,
+      final int[] cellsY) {
+    lineClears[Math.min(removedLines, MAX_LINES)]++;
+    for (int i = 0; i < cellsX.length; i++) {
+      if (cellsX[i] >= 0 && cellsX[i] < WIDTH && cellsY[i] >= 0
+          && cellsY[i] < HEIGHT) {
+        placements[cellsY[i] * WIDTH + cellsX[i]]++;
+      }
+    }
+  }
+
+  /**
+   * Record a T-spin.
+   *
+   * @param spin the kind of spin, {@link Attack#MINI_T_SPIN} or {@link Attack#T_SPIN}
+   * @param removedLines the number of lines cleared by the piece
+   */
+  synchronized void recordSpin(final int spin, final int removedLines) {
+    spins[Attack.clearType(spin, Math.min(removedLines, MAX_SPIN_LINES))]++;
+  }
+
+  /**
+   * Record the finesse of a piece locked.
+   *
+   * @param pieceKeys the number of keys pressed to move the piece
+   * @param neededKeys the least number of keys needed
+   */
+  synchronized void recordFinesse(final int pieceKeys, final int neededKeys) {
+    finessePieces++;
+    if (pieceKeys > neededKeys) {
+      finesseFaults++;
+      extraKeys += pieceKeys - neededKeys;
+    }
+  }
+
+  /**
+   * Add the analytics of other games.
+   *
+   * @param other the analytics of the other games
+   */
+  public void add(final Analytics other) {
+    Analytics copy = new Analytics();
+    synchronized (other) {
+      copy.addUnsynchronized(other);
+    }
+    synchronized (this) {
+      addUnsynchronized(copy);
+    }
+  }
+
+  /**
+   * Add the analytics of other games, without locks.
+   *
+   * @param other the analytics of the other games
+   */
+  private void addUnsynchronized(final Analytics other) {
+    games += other.games;
+    frames += other.frames;
+    pieces += other.pieces;
+    keys += other.keys;
+    piecesPerSecond.add(other.piecesPerSecond);
+    keysPerPiece.add(other.keysPerPiece);
+    finessePieces += other.finessePieces;
+    finesseFaults += other.finesseFaults;
+    extraKeys += other.extraKeys;
+    for (int i = 0; i < lineClears.length; i++) {
+      lineClears[i] += other.lineClears[i];
+    }
+    for (int i = 0; i < spins.length; i++) {
+      spins[i] += other.spins[i];
+    }
+    for (int i = 0; i < placements.length; i++) {
+      placements[i] += other.placements[i];
+    }
+  }
+
+  // #########################################################################
+  /**
+   * Get the number of games.
+   *
+   * @return the number of games
+   */
+  public synchronized long getGames() {
+    return games;
+  }
+
+  /**
+   * Get the number of pieces locked.
+   *
+   * @return the number of pieces
+   */
+  public synchronized long getPieces() {
+    return pieces;
+  }
+
+  /**
+   * Get the number of keys pressed.
+   *
+   * @return the number of keys
+   */
+  public synchronized long getKeys() {
+    return keys;
+  }
+
+  /**
+   * Get the pieces locked per second of play, over all the games.
+   *
+   * @return the pieces per second, {@code 0} if no frame
+   */
+  public synchronized double getPiecesPerSecond() {
+    return frames == 0 ? 0
+        : (double) pieces * Engine.FRAME_PER_SECOND / frames;
+  }
+
+  /**
+   * Get the keys pressed per piece locked, over all the games.
+   *
+   * @return the keys per piece, {@code 0} if no piece
+   */
+  public synchronized double getKeysPerPiece() {
+    return pieces == 0 ? 0 : (double) keys / pieces;
+  }
+
+  /**
+   * Get the number of pieces checked for finesse.
+   *
+   * <p>
+   * Pieces soft dropped are not checked, their placement possibly needing a tuck or a spin.
+   * </p>
+   *
+   * @return the number of pieces checked
+   */
+  public synchronized long getFinessePieces() {
+    return finessePieces;
+  }
+
+  /**
+   * Get the number of pieces placed with more keys than needed.
+   *
+   * @return the number of finesse faults
+   */
+  public synchronized long getFinesseFaults() {
+    return finesseFaults;
+  }
+
+  /**
+   * Get the number of keys pressed beyond those needed to place the pieces.
+   *
+   * @return the number of extra keys
+   */
+  public synchronized long getExtraKeys() {
+    return extraKeys;
+  }
+
+  /**
+   * Get the number of pieces locked clearing the given number of lines.
+   *
+   * @param lines the number of lines, from {@code 0} to {@link #MAX_LINES}
+   * @return the number of pieces
+   */
+  public synchronized long getLineClears(final int lines) {
+    return lineClears[lines];
+  }
+
+  /**
+   * Get the number of T-spins of a kind clearing the given number of lines.
+   *
+   * @param spin the kind of spin, {@link Attack#MINI_T_SPIN} or {@link Attack#T_SPIN}
+   * @param lines the number of lines, from {@code 0} to {@link #MAX_SPIN_LINES}
+   * @return the number of T-spins
+   */
+  public synchronized long getSpins(final int spin, final int lines) {
+    return spins[Attack.clearType(spin, lines)];
+  }
+
+  /**
+   * Get the number of blocks locked on a cell.
+   *
+   * @param x the {@code X} position of the cell
+   * @param y the {@code Y} position of the cell
+   * @return the number of blocks
+   */
+  public synchronized long getPlacements(final int x, final int y) {
+    return placements[y * WIDTH + x];
+  }
+
+  // #########################################################################
+  /**
+   * Write the analytics: rates, finesse, line clears, T-spins, then the placements heatmap, top row first.
+   *
+   * @param out the builder receiving the analytics
+   */
+  public synchronized void writeTo(final StringBuilder out) {
+    out.append(String.format(Locale.ROOT,
+        "games=%d pieces=%d pps=%.3f kpp=%.3f%n", games, pieces,
+        getPiecesPerSecond(), getKeysPerPiece()));
+    writeRow(out, "pps", piecesPerSecond);
+    writeRow(out, "kpp", keysPerPiece);
+    out.append(String.format(Locale.ROOT,
+        "finesse: checked=%d faults=%d (%.2f%%) extra_keys=%d%n",
+        finessePieces, finesseFaults,
+        finessePieces == 0 ? 0 : 100.0 * finesseFaults / finessePieces,
+        extraKeys));
+    out.append("line_clears:");
+    for (int i = 0; i < lineClears.length; i++) {
+      out.append(String.format(Locale.ROOT, " %d=%d (%.2f%%)", i,
+          lineClears[i], pieces == 0 ? 0 : 100.0 * lineClears[i] / pieces));
+    }
+    out.append(String.format("%n"));
+    out.append("t_spins:");
+    for (int lines = 0; lines <= MAX_SPIN_LINES; lines++) {
+      out.append(String.format(Locale.ROOT, " mini_%d=%d", lines,
+          spins[Attack.clearType(Attack.MINI_T_SPIN, lines)]));
+    }
+    for (int lines = 0; lines <= MAX_SPIN_LINES; lines++) {
+      out.append(String.format(Locale.ROOT, " t_spin_%d=%d", lines,
+          spins[Attack.clearType(Attack.T_SPIN, lines)]));
+    }
+    out.append(String.format("%n"));
+
+    long max = 1;
+    int top = 0;
+    for (int i = 0; i < placements.length; i++) {
+      max = Math.max(max, placements[i]);
+      if (placements[i] > 0) {
+        top = i / WIDTH;
+      }
+    }
+    for (int y = top; y >= 0; y--) {
+      out.append('|');
+      for (int x = 0; x < WIDTH; x++) {
+        long count = placements[y * WIDTH + x];
+        int level = count == 0 ? 0
+            : 1 + (int) ((HEATMAP_SCALE.length() - 2) * count / max);
+        out.append(HEATMAP_SCALE.charAt(level));
+      }
+      out.append(String.format("|%n"));
+    }
+  }
+
+  /**
+   * Write the percentiles of a per game ratio.
+   *
+   * @param out the builder receiving the row
+   * @param name the ratio name
+   * @param histogram the ratios, in hundredths
+   */
+  private static void writeRow(final StringBuilder out, final String name,
+      final Histogram histogram) {
+    out.append(String.format(Locale.ROOT, "%s per game: min=%.2f", name,
+        histogram.getCount() == 0 ? 0 : histogram.getMin() / RATIO_UNIT));
+    for (double percentile : PERCENTILES) {
+      out.append(String.format(Locale.ROOT, " p%d=%.2f", (int) percentile,
+          histogram.getPercentile(percentile) / RATIO_UNIT));
+    }
+    out.append(String.format(Locale.ROOT, " max=%.2f%n",
+        histogram.getMax() / RATIO_UNIT));
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder out = new StringBuilder();
+    writeTo(out);
+    return out.toString();
+  }
+}
@@ -0,0 +1,105 @@
+package org.fun.game.tetris.analytics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.fun.game.tetris.CommandLine;
+import org.fun.game.tetris.Engine;
+import org.fun.game.tetris.Tetrion;
+import org.fun.game.tetris.replay.ReplayArchive;
+import org.fun.game.tetris.replay.ReplayReader;
+
+/**
+ * Command line tool analyzing the games of replays, or the games played.
+ *
+ * @author Mathieu Brunot
+ *
+ * @see ReplayAnalyzer
+ * @see PlayAnalyzer
+ */
+public final class AnalyticsTool {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOGGER =
+      Logger.getLogger(AnalyticsTool.class.getName());
+
+  /**
+   * Command line option to analyze the games of the given replay file or archive.
+   */
+  public static final String ANALYZE_OPTION = "--analyze";
+  /**
+   * Command line option to analyze the games played, printing their analytics when over.
+   */
+  public static final String ANALYTICS_OPTION = "--analytics";
+  /**
+   * Options of the tool.
+   */
+  public static final List<String> OPTIONS = Collections
+      .unmodifiableList(Arrays.asList(ANALYZE_OPTION, ANALYTICS_OPTION));
+
+  /**
+   * Hidden constructor.
+   */
+  private AnalyticsTool() {}
+
+  /**
+   * Analyze the games of a replay file, or of a replay archive if it has an index, and print their
+   * analytics.
+   *
+   * @param options the command line options
+   * @throws CommandLine.UsageException if an option value is not valid
+   */
+  public static void run(final CommandLine options) {
+    Path file = options.getPath(ANALYZE_OPTION);
+    ReplayAnalyzer analyzer = new ReplayAnalyzer();
+    analyzer.setThreads(options.getThreads());
+    long start = System.nanoTime();
+    Analytics analytics;
+    try {
+      if (Files.exists(Paths.get(file + ".idx"))) {
+        try (ReplayArchive archive = new ReplayArchive(file, false)) {
+          analytics = analyzer.analyze(archive);
+        }
+      } else {
+        try (InputStream in = Files.newInputStream(file)) {
+          analytics = analyzer.analyze(new ReplayReader(in));
+        }
+      }
+    } catch (IOException ex) {
+      LOGGER.log(Level.SEVERE, "Cannot analyze replays", ex);
+      return;
+    }
+    System.out.print(analytics);
+    System.err.println(String.format("%d games analyzed on %d threads in "
+        + "%.1f s", analytics.getGames(), analyzer.getThreads(),
+        (System.nanoTime() - start) / 1e9));
+  }
+
+  /**
+   * Analyze the games played on a Tetrion, and print their analytics when over.
+   *
+   * @param tetrion the Tetrion
+   */
+  public static void analyze(final Tetrion tetrion) {
+    final PlayAnalyzer analyzer = new PlayAnalyzer();
+    analyzer.setDelegate(tetrion.getController());
+    tetrion.setController(analyzer);
+    tetrion.getEngine().addListener(analyzer);
+    tetrion.getEngine().addListener(new Engine.Listener() {
+      @Override
+      public void gameOver(final Engine engine) {
+        System.out.print(analyzer.getAnalytics());
+      }
+    });
+  }
+}
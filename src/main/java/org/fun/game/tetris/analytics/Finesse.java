@@ -0,0 +1,179 @@
+package org.fun.game.tetris.analytics;
+
+import java.util.Arrays;
+
+import org.fun.game.tetris.Board;
+import org.fun.game.tetris.Tetromino;
+
+/**
+ * The least number of keys needed to place each piece on an empty standard playfield.
+ *
+ * <p>
+ * The keys are those moving a piece from its spawn position before it is dropped: a shift tap
+ * moving it by one cell, a shift held until it reaches a wall, and a left or right rotation. The
+ * keys are found by a breadth-first search over the {@code (x, rotation)} states of each shape, and
+ * two states dropping the piece on the same cells (e.g. an S piece and its half turn) share the
+ * least number of keys of both. Rotations are only searched where the rotated piece fits, without
+ * wall kicks.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+final class Finesse {
+
+  /**
+   * Width of the playfield.
+   */
+  private static final int WIDTH = Board.STANDARD.getWidth();
+  /**
+   * Number of {@code (x, rotation)} states of a shape.
+   */
+  private static final int STATES = Tetromino.ROTATIONS * WIDTH;
+  /**
+   * Number of keys of an unreachable state.
+   */
+  static final int UNREACHABLE = -1;
+  /**
+   * Least number of keys by shape and state, {@link #UNREACHABLE} if the state cannot be reached.
+   */
+  private static final int[][] KEYS =
+      new int[Tetromino.Shape.values().length][];
+
+  static {
+    for (Tetromino.Shape shape : Tetromino.Shape.values()) {
+      KEYS[shape.ordinal()] = search(shape);
+    }
+  }
+
+  /**
+   * Hidden constructor.
+   */
+  private Finesse() {}
+
+  /**
+   * Get the least number of keys needed to place a piece.
+   *
+   * @param shape the shape of the piece
+   * @param rotation the rotation state of the piece
+   * @param x the {@code X} position of the piece
+   * @return the number of keys, {@link #UNREACHABLE} if the piece cannot be placed there from its
+   *         spawn position
+   */
+  static int keys(final Tetromino.Shape shape, final int rotation,
+      final int x) {
+    if (x < 0 || x >= WIDTH) {
+      return UNREACHABLE;
+    }
+    return KEYS[shape.ordinal()][rotation * WIDTH + x];
+  }
+
+  /**
+   * Search the least number of keys of each state of a shape.
+   *
+   * @param shape the shape
+   * @return the number of keys by state
+   */
+  private static int[] search(final Tetromino.Shape shape) {
+    int[] distances = new int[STATES];
+    Arrays.fill(distances, UNREACHABLE);
+    int[] queue = new int[STATES];
+    int head = 0;
+    int tail = 0;
+    int start = Board.STANDARD.getSpawnX();
+    distances[start] = 0;
+    queue[tail++] = start;
+    int[] next = new int[6];
+    while (head < tail) {
+      int state = queue[head++];
+      int rotation = state / WIDTH;
+      int x = state % WIDTH;
+      int moves = 0;
+      if (fits(shape, rotation, x - 1)) {
+        next[moves++] = state - 1;
+      }
+      if (fits(shape, rotation, x + 1)) {
+        next[moves++] = state + 1;
+      }
+      int wall = x;
+      while (fits(shape, rotation, wall - 1)) {
+        wall--;
+      }
+      next[moves++] = rotation * WIDTH + wall;
+      wall = x;
+      while (fits(shape, rotation, wall + 1)) {
+        wall++;
+      }
+      next[moves++] = rotation * WIDTH + wall;
+      for (int turn = 1; turn < Tetromino.ROTATIONS; turn += 2) {
+        int rotated = (rotation + turn) % Tetromino.ROTATIONS;
+        if (fits(shape, rotated, x)) {
+          next[moves++] = rotated * WIDTH + x;
+        }
+      }
+      for (int i = 0; i < moves; i++) {
+        if (distances[next[i]] == UNREACHABLE) {
+          distances[next[i]] = distances[state] + 1;
+          queue[tail++] = next[i];
+        }
+      }
+    }
+
+    // States dropping the piece on the same cells share their least number of keys
+    int[] keys = distances.clone();
+    for (int i = 0; i < STATES; i++) {
+      if (!fits(shape, i / WIDTH, i % WIDTH)) {
+        continue;
+      }
+      long cells = cells(shape, i / WIDTH, i % WIDTH);
+      for (int j = 0; j < STATES; j++) {
+        if (distances[j] != UNREACHABLE && fits(shape, j / WIDTH, j % WIDTH)
+            && cells(shape, j / WIDTH, j % WIDTH) == cells
+            && (keys[i] == UNREACHABLE || distances[j] < keys[i])) {
+          keys[i] = distances[j];
+        }
+      }
+    }
+    return keys;
+  }
+
+  /**
+   * Does a piece fit between the walls?
+   *
+   * @param shape the shape of the piece
+   * @param rotation the rotation state of the piece
+   * @param x the {@code X} position of the piece
+   * @return {@code true} if every block of the piece is inside the playfield width
+   */
+  private static boolean fits(final Tetromino.Shape shape, final int rotation,
+      final int x) {
+    for (int i = 0; i < Tetromino.BLOCKS; i++) {
+      int blockX = x + shape.x(i, rotation);
+      if (blockX < 0 || blockX >= WIDTH) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Get the cells of a piece, relative to its lowest block.
+   *
+   * @param shape the shape of the piece
+   * @param rotation the rotation state of the piece
+   * @param x the {@code X} position of the piece
+   * @return one bit by cell, {@link #WIDTH} bits by row
+   */
+  private static long cells(final Tetromino.Shape shape, final int rotation,
+      final int x) {
+    int lowest = Integer.MAX_VALUE;
+    for (int i = 0; i < Tetromino.BLOCKS; i++) {
+      lowest = Math.min(lowest, -shape.y(i, rotation));
+    }
+    long cells = 0;
+    for (int i = 0; i < Tetromino.BLOCKS; i++) {
+      cells |= 1L << ((-shape.y(i, rotation) - lowest) * WIDTH
+          + x + shape.x(i, rotation));
+    }
+    return cells;
+  }
+}
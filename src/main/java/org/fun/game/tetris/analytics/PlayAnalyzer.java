@@ -0,0 +1,222 @@
+package org.fun.game.tetris.analytics;
+
+import org.fun.game.tetris.Board;
+import org.fun.game.tetris.Controller;
+import org.fun.game.tetris.Engine;
+import org.fun.game.tetris.Tetromino;
+
+/**
+ * Analyzes the games of an {@link Engine} as they are computed, in one pass.
+ *
+ * <p>
+ * The analyzer is set as the controller of the engine, polling its delegate (the keyboard, a bot,
+ * or a replay player), and as a listener of the engine. A key is pressed when its input is set on
+ * a frame but not on the previous one: holding a shift to move a piece to a wall is a single key.
+ * The keys moving each piece (shifts and rotations) are compared with the least number of keys
+ * needed to place it on an empty playfield; a hold starts counting them again.
+ * </p>
+ *
+ * <p>
+ * A game is analyzed from its first frame, and recorded to the {@link Analytics} of the analyzer
+ * when it is over, or when {@link #finish() finished}, e.g. at the end of a replay.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public class PlayAnalyzer implements Controller, Engine.Listener {
+
+  /**
+   * Inputs moving the falling piece.
+   */
+  private static final int MOVES =
+      SHIFT_LEFT | SHIFT_RIGHT | ROTATE_LEFT | ROTATE_RIGHT;
+
+  /**
+   * Analytics of the games analyzed.
+   */
+  private final Analytics analytics;
+  /**
+   * Controller polled for the inputs, may be {@code null}.
+   */
+  private Controller delegate = null;
+  /**
+   * Is a game being analyzed?
+   */
+  private boolean playing = false;
+  /**
+   * Last frame polled.
+   */
+  private long frames = 0;
+  /**
+   * Inputs of the last frame polled.
+   */
+  private int lastInputs = NONE;
+  /**
+   * Number of pieces locked in the game.
+   */
+  private int pieces = 0;
+  /**
+   * Number of keys pressed in the game.
+   */
+  private long keys = 0;
+  /**
+   * Number of keys pressed to move the falling piece.
+   */
+  private int pieceKeys = 0;
+  /**
+   * Has the falling piece been soft dropped?
+   */
+  private boolean softDropped = false;
+  /**
+   * Shape of the falling piece, {@code null} if none.
+   */
+  private Tetromino.Shape shape = null;
+  /**
+   * Rotation state of the falling piece.
+   */
+  private int rotation = 0;
+  /**
+   * {@code X} position of the falling piece.
+   */
+  private int curX = 0;
+  /**
+   * {@code Y} position of the falling piece.
+   */
+  private int curY = 0;
+  /**
+   * {@code X} positions of the blocks of the piece locked.
+   */
+  private final int[] cellsX = new int[Tetromino.BLOCKS];
+  /**
+   * {@code Y} positions of the blocks of the piece locked.
+   */
+  private final int[] cellsY = new int[Tetromino.BLOCKS];
+
+  /**
+   * Create an analyzer, with its own analytics.
+   */
+  public PlayAnalyzer() {
+    this(new Analytics());
+  }
+
+  /**
+   * Create an analyzer.
+   *
+   * @param gamesAnalytics the analytics the games analyzed are recorded to
+   */
+  public PlayAnalyzer(final Analytics gamesAnalytics) {
+    this.analytics = gamesAnalytics;
+  }
+
+  /**
+   * Get the analytics of the games analyzed.
+   *
+   * @return the analytics
+   */
+  public final Analytics getAnalytics() {
+    return analytics;
+  }
+
+  /**
+   * Get the controller polled for the inputs.
+   *
+   * @return the controller, {@code null} if none
+   */
+  public final Controller getDelegate() {
+    return delegate;
+  }
+
+  /**
+   * Set the controller polled for the inputs.
+   *
+   * @param controller the controller, {@code null} for no inputs
+   */
+  public final void setDelegate(final Controller controller) {
+    this.delegate = controller;
+  }
+
+  // #########################################################################
+  /**
+   * Record the game being analyzed, if any, to the analytics.
+   */
+  public void finish() {
+    if (playing) {
+      analytics.recordGame(frames, pieces, keys);
+      playing = false;
+    }
+  }
+
+  @Override
+  public int poll(final Engine source) {
+    if (source.getFrames() == 1) {
+      finish();
+      playing = true;
+      pieces = 0;
+      keys = 0;
+      lastInputs = NONE;
+      pieceKeys = 0;
+      softDropped = false;
+    }
+    frames = source.getFrames();
+
+    int inputs = delegate == null ? NONE : delegate.poll(source);
+    if (playing) {
+      int pressed = inputs & ~lastInputs;
+      keys += Integer.bitCount(pressed);
+      pieceKeys += Integer.bitCount(pressed & MOVES);
+      if ((pressed & HOLD) != 0) {
+        pieceKeys = 0;
+        softDropped = false;
+      }
+      if ((inputs & SOFT_DROP) != 0) {
+        softDropped = true;
+      }
+    }
+    lastInputs = inputs;
+    return inputs;
+  }
+
+  @Override
+  public void pieceMoved(final Engine engine) {
+    Tetromino piece = engine.getFallingPiece();
+    shape = piece.getShape();
+    rotation = piece.getRotation();
+    curX = engine.getCurX();
+    curY = engine.getCurY();
+  }
+
+  @Override
+  public void tSpin(final Engine engine, final int spin,
+      final int removedLines) {
+    if (playing) {
+      analytics.recordSpin(spin, removedLines);
+    }
+  }
+
+  @Override
+  public void pieceLocked(final Engine engine, final int removedLines) {
+    if (!playing || shape == null) {
+      return;
+    }
+    pieces++;
+    for (int i = 0; i < Tetromino.BLOCKS; i++) {
+      cellsX[i] = curX + shape.x(i, rotation);
+      cellsY[i] = curY - shape.y(i, rotation);
+    }
+    analytics.recordPiece(removedLines, cellsX, cellsY);
+    if (!softDropped && Board.STANDARD.equals(engine.getBoard())) {
+      int needed = Finesse.keys(shape, rotation, curX);
+      if (needed != Finesse.UNREACHABLE) {
+        analytics.recordFinesse(pieceKeys, needed);
+      }
+    }
+    pieceKeys = 0;
+    softDropped = false;
+    shape = null;
+  }
+
+  @Override
+  public void gameOver(final Engine engine) {
+    finish();
+  }
+}
@@ -0,0 +1,181 @@
+package org.fun.game.tetris.analytics;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.fun.game.tetris.Engine;
+import org.fun.game.tetris.replay.Replay;
+import org.fun.game.tetris.replay.ReplayArchive;
+import org.fun.game.tetris.replay.ReplayPlayer;
+import org.fun.game.tetris.replay.ReplayReader;
+
+/**
+ * Analyzes the games of replays in parallel, each game in one pass.
+ *
+ * <p>
+ * Each thread plays games back with its own {@link PlayAnalyzer} and analytics, merged once all
+ * the games are analyzed. Games read from a replay stream are handed to the threads through a
+ * bounded queue, so that the memory used does not depend on the number of games.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public class ReplayAnalyzer {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOGGER =
+      Logger.getLogger(ReplayAnalyzer.class.getName());
+
+  /**
+   * Number of games queued per thread when reading a replay stream.
+   */
+  private static final int QUEUED_GAMES_PER_THREAD = 2;
+  /**
+   * Time waited for a game to analyze, in milliseconds, before checking the stream end.
+   */
+  private static final long POLL_TIMEOUT = 10;
+
+  /**
+   * Number of threads analyzing games.
+   */
+  private int threads = Runtime.getRuntime().availableProcessors();
+
+  /**
+   * Get the number of threads analyzing games.
+   *
+   * @return the number of threads
+   */
+  public final int getThreads() {
+    return threads;
+  }
+
+  /**
+   * Set the number of threads analyzing games.
+   *
+   * @param numberOfThreads the number of threads
+   */
+  public final void setThreads(final int numberOfThreads) {
+    this.threads = Math.max(1, numberOfThreads);
+  }
+
+  // #########################################################################
+  /**
+   * Analyze all the games of an archive.
+   *
+   * @param archive the archive
+   * @return the analytics of the games, unreadable games being skipped
+   */
+  public Analytics analyze(final ReplayArchive archive) {
+    final int games = archive.getGames();
+    final AtomicInteger nextGame = new AtomicInteger();
+    final Analytics analytics = new Analytics();
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      ForkJoinTask<?>[] workers = new ForkJoinTask<?>[threads];
+      for (int i = 0; i < threads; i++) {
+        workers[i] = pool.submit(() -> {
+          PlayAnalyzer analyzer = new PlayAnalyzer();
+          for (int game = nextGame.getAndIncrement(); game < games; game =
+              nextGame.getAndIncrement()) {
+            try {
+              analyze(archive.read(game), analyzer);
+            } catch (IOException | RuntimeException ex) {
+              LOGGER.log(Level.WARNING, "Cannot analyze game " + game, ex);
+            }
+          }
+          analytics.add(analyzer.getAnalytics());
+        });
+      }
+      for (ForkJoinTask<?> worker : workers) {
+        worker.join();
+      }
+    } finally {
+      pool.shutdown();
+    }
+    return analytics;
+  }
+
+  /**
+   * Analyze all the games of a replay stream.
+   *
+   * @param reader the reader of the replay stream
+   * @return the analytics of the games
+   * @throws IOException if the games cannot be read
+   */
+  public Analytics analyze(final ReplayReader reader) throws IOException {
+    final BlockingQueue<Replay> queue =
+        new ArrayBlockingQueue<>(threads * QUEUED_GAMES_PER_THREAD);
+    final AtomicBoolean reading = new AtomicBoolean(true);
+    final Analytics analytics = new Analytics();
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      ForkJoinTask<?>[] workers = new ForkJoinTask<?>[threads];
+      for (int i = 0; i < threads; i++) {
+        workers[i] = pool.submit(() -> {
+          PlayAnalyzer analyzer = new PlayAnalyzer();
+          try {
+            while (reading.get() || !queue.isEmpty()) {
+              Replay replay = queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+              if (replay == null) {
+                continue;
+              }
+              try {
+                analyze(replay, analyzer);
+              } catch (RuntimeException ex) {
+                LOGGER.log(Level.WARNING, "Cannot analyze " + replay, ex);
+              }
+            }
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+          }
+          analytics.add(analyzer.getAnalytics());
+        });
+      }
+      try {
+        for (Replay replay = reader.read(); replay != null; replay =
+            reader.read()) {
+          queue.put(replay);
+        }
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Replay analysis interrupted");
+      } finally {
+        reading.set(false);
+      }
+      for (ForkJoinTask<?> worker : workers) {
+        worker.join();
+      }
+    } finally {
+      pool.shutdown();
+    }
+    return analytics;
+  }
+
+  /**
+   * Analyze a game.
+   *
+   * @param replay the game
+   * @param analyzer the analyzer
+   */
+  private static void analyze(final Replay replay,
+      final PlayAnalyzer analyzer) {
+    ReplayPlayer player = new ReplayPlayer(replay);
+    Engine engine = player.getEngine();
+    analyzer.setDelegate(player);
+    engine.setController(analyzer);
+    engine.addListener(analyzer);
+    player.advance(replay.getFrames());
+    analyzer.finish();
+  }
+}
@@ -0,0 +1,4 @@
+/**
+ * Tetris game play analytics.
+ */
+package org.fun.game.tetris.analytics;
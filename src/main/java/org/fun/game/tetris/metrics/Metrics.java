@@ -0,0 +1,284 @@
+package org.fun.game.tetris.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.fun.music.midiplayer.MidiPlayer;
+
+/**
+ * Live counters and gauges of the Tetris game.
+ *
+ * <p>
+ * The game records its activity in the single {@link Metrics} instance and the
+ * {@link MetricsServer} exposes it in the
+ * <a href="https://prometheus.io/docs/instrumenting/exposition_formats/">Prometheus text
+ * format</a>. Recording is cheap enough to be done on every frame: counters are {@link LongAdder}s
+ * and frame times are summed, the last ones being kept in a fixed size sliding window for the
+ * quantiles. Only counters are exposed for the activity, per second rates being left to the
+ * queries, so that exposing the metrics never changes them.
+ * </p>
+ *
+ * @see MetricsServer
+ *
+ * @author Mathieu Brunot
+ */
+public final class Metrics {
+
+  /**
+   * Metrics single instance.
+   */
+  private static final Metrics INSTANCE = new Metrics();
+
+  /**
+   * Get metrics single instance.
+   *
+   * @return metrics single instance
+   */
+  public static Metrics getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Metric names prefix.
+   */
+  private static final String PREFIX = "tetris_";
+  /**
+   * Number of frame times kept to compute the quantiles.
+   */
+  private static final int FRAME_TIME_WINDOW = 1024;
+  /**
+   * Frame time quantiles exposed.
+   */
+  private static final double[] QUANTILES = {0.5, 0.9, 0.99, 1};
+  /**
+   * Nanoseconds in a second.
+   */
+  private static final double NANOS_PER_SECOND = 1e9;
+
+  /**
+   * Number of games currently running.
+   */
+  private final AtomicInteger gamesRunning = new AtomicInteger();
+  /**
+   * Number of games started.
+   */
+  private final LongAdder gamesStarted = new LongAdder();
+  /**
+   * Number of frames computed.
+   */
+  private final LongAdder ticks = new LongAdder();
+  /**
+   * Number of pieces locked.
+   */
+  private final LongAdder pieces = new LongAdder();
+  /**
+   * Number of lines cleared.
+   */
+  private final LongAdder lines = new LongAdder();
+  /**
+   * Number of bytes recorded and not written to the replay yet.
+   */
+  private final AtomicInteger replayBacklog = new AtomicInteger();
+  /**
+   * Number of games truncated by the replay writer.
+   */
+  private final AtomicInteger replayTruncated = new AtomicInteger();
+  /**
+   * Sliding window of the last frame times (ns).
+   */
+  private final long[] frameTimes = new long[FRAME_TIME_WINDOW];
+  /**
+   * Number of frame times recorded.
+   */
+  private long frameTimesCount = 0;
+  /**
+   * Sum of the frame times recorded (ns).
+   */
+  private long frameTimesSum = 0;
+  /**
+   * MIDI player whose state is exposed.
+   */
+  private volatile MidiPlayer midiPlayer;
+
+  /**
+   * Hidden constructor.
+   */
+  private Metrics() {}
+
+  // #########################################################################
+  /**
+   * Set the MIDI player whose sequencer state is exposed.
+   *
+   * @param player the MIDI player, {@code null} if none
+   */
+  public void setMidiPlayer(final MidiPlayer player) {
+    this.midiPlayer = player;
+  }
+
+  /**
+   * Record the start of a game.
+   */
+  public void gameStarted() {
+    gamesStarted.increment();
+    gamesRunning.incrementAndGet();
+  }
+
+  /**
+   * Record the end of a game.
+   */
+  public void gameStopped() {
+    gamesRunning.decrementAndGet();
+  }
+
+  /**
+   * Record a frame.
+   *
+   * @param frameTime time (ns) elapsed since the previous frame, negative if unknown
+   */
+  public void tick(final long frameTime) {
+    ticks.increment();
+    if (frameTime >= 0) {
+      synchronized (frameTimes) {
+        frameTimes[(int) (frameTimesCount++ % FRAME_TIME_WINDOW)] = frameTime;
+        frameTimesSum += frameTime;
+      }
+    }
+  }
+
+  /**
+   * Record a piece lock.
+   */
+  public void pieceLocked() {
+    pieces.increment();
+  }
+
+  /**
+   * Record lines cleared.
+   *
+   * @param numLines the number of lines cleared
+   */
+  public void linesCleared(final int numLines) {
+    lines.add(numLines);
+  }
+
+  /**
+   * Record the replay writer backlog.
+   *
+   * @param bytes the number of bytes recorded and not written to the replay yet
+   */
+  public void setReplayBacklog(final int bytes) {
+    replayBacklog.set(bytes);
+  }
+
+  /**
+   * Record the number of games truncated by the replay writer, its buffer being full.
+   *
+   * @param games the number of games truncated or not recorded
+   */
+  public void setReplayTruncated(final int games) {
+    replayTruncated.set(games);
+  }
+
+  // #########################################################################
+  /**
+   * Write all metrics in the Prometheus text exposition format.
+   *
+   * @param out where to write the metrics
+   */
+  public void writeTo(final StringBuilder out) {
+    write(out, "games_running", "gauge", "Number of games currently running.",
+        gamesRunning.get());
+    write(out, "games_started_total", "counter", "Number of games started.",
+        gamesStarted.sum());
+    write(out, "ticks_total", "counter", "Number of frames computed.",
+        ticks.sum());
+    write(out, "pieces_total", "counter", "Number of pieces locked.",
+        pieces.sum());
+    write(out, "lines_cleared_total", "counter", "Number of lines cleared.",
+        lines.sum());
+    write(out, "replay_writer_backlog_bytes", "gauge",
+        "Number of bytes recorded and not written to the replay yet.",
+        replayBacklog.get());
+    write(out, "replay_writer_truncated_games_total", "counter",
+        "Number of games truncated as the replay could not be written fast enough.",
+        replayTruncated.get());
+    writeFrameTimes(out);
+    writeMidiPlayer(out);
+  }
+
+  /**
+   * Write the frame time quantiles as a Prometheus summary.
+   *
+   * @param out where to write the metrics
+   */
+  private void writeFrameTimes(final StringBuilder out) {
+    long[] window;
+    long count;
+    long sum;
+    synchronized (frameTimes) {
+      count = frameTimesCount;
+      sum = frameTimesSum;
+      window = Arrays.copyOf(frameTimes,
+          (int) Math.min(count, FRAME_TIME_WINDOW));
+    }
+    Arrays.sort(window);
+
+    String name = PREFIX + "frame_time_seconds";
+    out.append("# HELP ").append(name)
+        .append(" Time between two frames, quantiles over the last ")
+        .append(FRAME_TIME_WINDOW).append(" frames.\n");
+    out.append("# TYPE ").append(name).append(" summary\n");
+    if (window.length > 0) {
+      for (double quantile : QUANTILES) {
+        int index = (int) Math.ceil(quantile * window.length) - 1;
+        out.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+            .append(window[Math.max(0, index)] / NANOS_PER_SECOND).append('\n');
+      }
+    }
+    out.append(name).append("_sum ").append(sum / NANOS_PER_SECOND)
+        .append('\n');
+    out.append(name).append("_count ").append(count).append('\n');
+  }
+
+  /**
+   * Write the MIDI sequencer state.
+   *
+   * @param out where to write the metrics
+   */
+  private void writeMidiPlayer(final StringBuilder out) {
+    MidiPlayer player = this.midiPlayer;
+    if (player == null) {
+      return;
+    }
+    write(out, "midi_playing", "gauge", "Is the MIDI sequencer playing?",
+        player.isPlaying() ? 1 : 0);
+    write(out, "midi_paused", "gauge", "Is the MIDI sequencer paused?",
+        player.isPaused() ? 1 : 0);
+    write(out, "midi_song_index", "gauge", "Current song index in playlist.",
+        player.getCurrentSongIndex());
+    Float tempoFactor = player.getTempoFactor();
+    if (tempoFactor != null) {
+      write(out, "midi_tempo_factor", "gauge",
+          "Tempo factor of the MIDI sequencer.", tempoFactor);
+    }
+  }
+
+  /**
+   * Write a single sample metric.
+   *
+   * @param out where to write the metric
+   * @param name the metric name, without prefix
+   * @param type the metric type
+   * @param help the metric description
+   * @param value the metric value
+   */
+  private static void write(final StringBuilder out, final String name,
+      final String type, final String help, final Number value) {
+    out.append("# HELP ").append(PREFIX).append(name).append(' ').append(help)
+        .append('\n');
+    out.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type)
+        .append('\n');
+    out.append(PREFIX).append(name).append(' ').append(value).append('\n');
+  }
+}
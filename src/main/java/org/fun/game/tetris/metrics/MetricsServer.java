@@ -0,0 +1,147 @@
+package org.fun.game.tetris.metrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Embedded HTTP endpoint serving the {@link Metrics} in Prometheus text format.
+ *
+ * <p>
+ * The server only listens on the loopback address and answers {@code GET /metrics}. Requests are
+ * handled by a single daemon thread so that scrapes never compete with the game loop.
+ * </p>
+ *
+ * @see Metrics
+ *
+ * @author Mathieu Brunot
+ */
+public class MetricsServer implements Closeable {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOGGER =
+      Logger.getLogger(MetricsServer.class.getName());
+
+  /**
+   * Path of the metrics endpoint.
+   */
+  public static final String PATH = "/metrics";
+  /**
+   * Prometheus text exposition format content type.
+   */
+  private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+  /**
+   * HTTP status for a successful request.
+   */
+  private static final int HTTP_OK = 200;
+  /**
+   * HTTP status for an unsupported method.
+   */
+  private static final int HTTP_BAD_METHOD = 405;
+
+  /**
+   * Metrics exposed.
+   */
+  private final Metrics metrics;
+  /**
+   * Embedded HTTP server.
+   */
+  private final HttpServer server;
+  /**
+   * Requests executor.
+   */
+  private final ExecutorService executor;
+
+  /**
+   * Create a metrics server for the given port on the loopback address.
+   *
+   * @param port the port to listen to, {@code 0} for any free port
+   * @throws IOException if the server cannot be bound
+   */
+  public MetricsServer(final int port) throws IOException {
+    this(Metrics.getInstance(), port);
+  }
+
+  /**
+   * Create a metrics server for the given port on the loopback address.
+   *
+   * @param exposedMetrics the metrics to expose
+   * @param port the port to listen to, {@code 0} for any free port
+   * @throws IOException if the server cannot be bound
+   */
+  public MetricsServer(final Metrics exposedMetrics, final int port)
+      throws IOException {
+    this.metrics = exposedMetrics;
+    this.server = HttpServer.create(
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    this.executor = Executors.newSingleThreadExecutor(r -> {
+      Thread thread = new Thread(r, "Metrics Server");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.server.setExecutor(executor);
+    this.server.createContext(PATH, this::handle);
+  }
+
+  /**
+   * Start serving the metrics.
+   */
+  public void start() {
+    server.start();
+    LOGGER.log(Level.INFO, "Metrics available at http://{0}:{1,number,#}{2}",
+        new Object[] {getAddress().getHostString(), getAddress().getPort(),
+            PATH});
+  }
+
+  /**
+   * Get the address the server is bound to.
+   *
+   * @return the address the server is bound to
+   */
+  public final InetSocketAddress getAddress() {
+    return server.getAddress();
+  }
+
+  /**
+   * Handle a metrics request.
+   *
+   * @param exchange the HTTP exchange
+   * @throws IOException if the response cannot be sent
+   */
+  private void handle(final HttpExchange exchange) throws IOException {
+    try {
+      if (!"GET".equals(exchange.getRequestMethod())) {
+        exchange.sendResponseHeaders(HTTP_BAD_METHOD, -1);
+        return;
+      }
+      StringBuilder body = new StringBuilder();
+      metrics.writeTo(body);
+      byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+      exchange.sendResponseHeaders(HTTP_OK, bytes.length);
+      try (OutputStream os = exchange.getResponseBody()) {
+        os.write(bytes);
+      }
+    } finally {
+      exchange.close();
+    }
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+}
@@ -0,0 +1,4 @@
+/**
+ * Tetris game metrics.
+ */
+package org.fun.game.tetris.metrics;
@@ -0,0 +1,91 @@
+package org.fun.game.tetris.net;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * A pool of direct buffers of the same capacity.
+ *
+ * <p>
+ * Direct buffers are costly to allocate and release: buffers are taken from the pool and given
+ * back once drained, so that idle connections hold no buffer. A pool keeps at most a given number
+ * of free buffers. A pool is not thread-safe: each event loop has its own pool, buffers moving
+ * from a loop to another with their connections.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+final class BufferPool {
+
+  /**
+   * Capacity of the buffers.
+   */
+  private final int capacity;
+  /**
+   * Maximum number of free buffers kept.
+   */
+  private final int maxFree;
+  /**
+   * Free buffers.
+   */
+  private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+  /**
+   * Number of buffers allocated.
+   */
+  private long allocated = 0;
+
+  /**
+   * Create a pool.
+   *
+   * @param bufferCapacity the capacity of the buffers
+   * @param maxFreeBuffers the maximum number of free buffers kept
+   */
+  BufferPool(final int bufferCapacity, final int maxFreeBuffers) {
+    this.capacity = bufferCapacity;
+    this.maxFree = maxFreeBuffers;
+  }
+
+  /**
+   * Get the capacity of the buffers.
+   *
+   * @return the capacity
+   */
+  int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Get the number of buffers allocated.
+   *
+   * @return the number of buffers
+   */
+  long getAllocated() {
+    return allocated;
+  }
+
+  /**
+   * Take a cleared buffer.
+   *
+   * @return the buffer
+   */
+  ByteBuffer take() {
+    ByteBuffer buffer = free.pollLast();
+    if (buffer == null) {
+      allocated++;
+      return ByteBuffer.allocateDirect(capacity);
+    }
+    buffer.clear();
+    return buffer;
+  }
+
+  /**
+   * Give a buffer back.
+   *
+   * @param buffer the buffer, no longer used
+   */
+  void give(final ByteBuffer buffer) {
+    if (free.size() < maxFree) {
+      free.addLast(buffer);
+    }
+  }
+}
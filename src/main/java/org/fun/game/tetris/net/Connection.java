@@ -0,0 +1,599 @@
+package org.fun.game.tetris.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.fun.game.tetris.Controller;
+import org.fun.game.tetris.Engine;
+import org.fun.game.tetris.EngineState;
+
+/**
+ * A client connected to the {@link GameServer}, playing the game of its own engine in a room.
+ *
+ * <p>
+ * The connection is the controller of its engine: the inputs received from the client are held
+ * until other inputs are received, and inputs released before the next frame are still seen by it.
+ * Messages sent to the client are queued in pooled buffers until written; states are dropped
+ * rather than queued too many, a later state replacing them anyway.
+ * </p>
+ *
+ * <p>
+ * A spectator also queues the messages of the games it watches: read-only views of buffers
+ * shared with the other spectators, queued in order with its own messages so that no message is
+ * written in the middle of another, and written along with them in gathering writes. A spectator
+ * queuing too many of them drops those not being written yet, and receives keyframes of every game
+ * again; a spectator leaving the room drops them too.
+ * </p>
+ *
+ * <p>
+ * A connection is only used by the event loop it is registered with.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+final class Connection implements Controller {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOGGER =
+      Logger.getLogger(Connection.class.getName());
+
+  /**
+   * Maximum number of buffers queued before dropping states.
+   */
+  private static final int MAX_QUEUED_BUFFERS = 4;
+  /**
+   * Maximum number of bytes of the shared buffers queued before dropping them all.
+   */
+  private static final int MAX_SHARED_BYTES = 256 * 1024;
+  /**
+   * Maximum number of buffers written at once.
+   */
+  private static final int MAX_GATHERED_BUFFERS = 64;
+
+  /**
+   * Id of the player.
+   */
+  private final int id;
+  /**
+   * The channel.
+   */
+  private final SocketChannel channel;
+  /**
+   * The engine computing the game of the player.
+   */
+  private final Engine engine = new Engine();
+  /**
+   * The event loop of the connection.
+   */
+  private EventLoop loop = null;
+  /**
+   * The selection key of the channel, {@code null} if not registered.
+   */
+  private SelectionKey key = null;
+  /**
+   * The room played in, {@code null} if none.
+   */
+  private Room room = null;
+  /**
+   * Is the game of the player in progress?
+   */
+  private boolean playing = false;
+  /**
+   * Is the client watching the room rather than playing?
+   */
+  private boolean spectator = false;
+  /**
+   * Must the spectator receive keyframes of every game from the next frame sending states?
+   */
+  private boolean resync = false;
+  /**
+   * Does the spectator receive keyframes of every game in the current frame?
+   */
+  private boolean resyncing = false;
+  /**
+   * Last state of the game sent to the spectators, {@code null} if none.
+   */
+  private EngineState watched = null;
+  /**
+   * Inputs held.
+   */
+  private int inputs = NONE;
+  /**
+   * Inputs held since the last frame.
+   */
+  private int pressed = NONE;
+  /**
+   * States sent.
+   */
+  private final StateHistory history = new StateHistory();
+  /**
+   * Frame of the last state acknowledged, {@code -1} if none.
+   */
+  private long acknowledged = -1;
+  /**
+   * Is a keyframe requested?
+   */
+  private boolean keyframeRequested = false;
+  /**
+   * Bytes of an incomplete message received, ready to be read, {@code null} if none.
+   */
+  private ByteBuffer partial = null;
+  /**
+   * Buffers of the messages to send, in order: pooled buffers of the connection, filled up to
+   * their position, and read-only shared buffers, ready to be written.
+   */
+  private final ArrayDeque<ByteBuffer> output = new ArrayDeque<>();
+  /**
+   * Number of pooled buffers queued.
+   */
+  private int ownBuffers = 0;
+  /**
+   * Number of bytes of the shared buffers queued.
+   */
+  private int sharedBytes = 0;
+  /**
+   * Buffers written at once, {@code null} until messages are written.
+   */
+  private ByteBuffer[] gathered = null;
+  /**
+   * Is the connection closed?
+   */
+  private boolean closed = false;
+
+  /**
+   * Create a connection.
+   *
+   * @param playerId the id of the player
+   * @param socket the channel
+   */
+  Connection(final int playerId, final SocketChannel socket) {
+    this.id = playerId;
+    this.channel = socket;
+    engine.setController(this);
+  }
+
+  /**
+   * Get the id of the player.
+   *
+   * @return the id
+   */
+  int getId() {
+    return id;
+  }
+
+  /**
+   * Get the channel.
+   *
+   * @return the channel
+   */
+  SocketChannel getChannel() {
+    return channel;
+  }
+
+  /**
+   * Get the engine of the player.
+   *
+   * @return the engine
+   */
+  Engine getEngine() {
+    return engine;
+  }
+
+  /**
+   * Register the connection with an event loop.
+   *
+   * @param eventLoop the event loop
+   * @param selectionKey the selection key of the channel
+   */
+  void register(final EventLoop eventLoop, final SelectionKey selectionKey) {
+    this.loop = eventLoop;
+    this.key = selectionKey;
+    if (!output.isEmpty()) {
+      key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+  }
+
+  /**
+   * Deregister the connection from its event loop, e.g. to hand it over to another loop.
+   */
+  void deregister() {
+    if (key != null) {
+      key.cancel();
+      key = null;
+    }
+    loop = null;
+  }
+
+  /**
+   * Get the room played in.
+   *
+   * @return the room, {@code null} if none
+   */
+  Room getRoom() {
+    return room;
+  }
+
+  /**
+   * Set the room played in.
+   *
+   * @param playedRoom the room, {@code null} if none
+   */
+  void setRoom(final Room playedRoom) {
+    this.room = playedRoom;
+  }
+
+  /**
+   * Is the game of the player in progress?
+   *
+   * @return {@code true} if the game is in progress
+   */
+  boolean isPlaying() {
+    return playing;
+  }
+
+  /**
+   * Set whether the game of the player is in progress.
+   *
+   * @param inProgress {@code true} if the game is in progress
+   */
+  void setPlaying(final boolean inProgress) {
+    this.playing = inProgress;
+  }
+
+  /**
+   * Is the client watching the room rather than playing?
+   *
+   * @return {@code true} if a spectator
+   */
+  boolean isSpectator() {
+    return spectator;
+  }
+
+  /**
+   * Set whether the client is watching the room rather than playing.
+   *
+   * @param watching {@code true} if a spectator
+   */
+  void setSpectator(final boolean watching) {
+    this.spectator = watching;
+    this.resync = watching;
+    this.resyncing = false;
+  }
+
+  /**
+   * Start a frame sending the states of the games watched.
+   */
+  void startWatchedFrame() {
+    resyncing = resync;
+    resync = false;
+  }
+
+  /**
+   * Does the spectator need keyframes, of every game in the current frame or of every game from
+   * the next frame?
+   *
+   * @return {@code true} if keyframes are needed
+   */
+  boolean needsKeyframes() {
+    return resyncing || resync;
+  }
+
+  /**
+   * Get the last state of the game sent to the spectators.
+   *
+   * @return the state, {@code null} if none
+   */
+  EngineState getWatched() {
+    return watched;
+  }
+
+  /**
+   * Get the last state of the game sent to the spectators, creating it if needed.
+   *
+   * @return the state
+   */
+  EngineState watched() {
+    if (watched == null) {
+      watched = new EngineState();
+    }
+    return watched;
+  }
+
+  /**
+   * Forget the last state of the game sent to the spectators, the next one being a keyframe.
+   */
+  void resetWatched() {
+    watched = null;
+  }
+
+  /**
+   * Set the inputs held.
+   *
+   * @param newInputs the inputs
+   */
+  void setInputs(final int newInputs) {
+    inputs = newInputs;
+    pressed |= newInputs;
+  }
+
+  /**
+   * Reset the inputs held.
+   */
+  void resetInputs() {
+    inputs = NONE;
+    pressed = NONE;
+  }
+
+  @Override
+  public int poll(final Engine source) {
+    int polled = inputs | pressed;
+    pressed = NONE;
+    return polled;
+  }
+
+  // #########################################################################
+  /**
+   * Get the states sent.
+   *
+   * @return the states
+   */
+  StateHistory getHistory() {
+    return history;
+  }
+
+  /**
+   * Get the frame of the last state acknowledged.
+   *
+   * @return the frame, {@code -1} if none
+   */
+  long getAcknowledged() {
+    return acknowledged;
+  }
+
+  /**
+   * Acknowledge a state received by the client.
+   *
+   * @param frames the frame of the state
+   */
+  void acknowledge(final long frames) {
+    if (frames > acknowledged && frames <= engine.getFrames()) {
+      acknowledged = frames;
+    }
+  }
+
+  /**
+   * Is a keyframe requested?
+   *
+   * @return {@code true} if the next state must be sent whole
+   */
+  boolean isKeyframeRequested() {
+    return keyframeRequested;
+  }
+
+  /**
+   * Set whether a keyframe is requested.
+   *
+   * @param requested {@code true} if the next state must be sent whole
+   */
+  void setKeyframeRequested(final boolean requested) {
+    this.keyframeRequested = requested;
+  }
+
+  /**
+   * Forget the states sent and acknowledged, e.g. when a new game starts.
+   */
+  void resetStates() {
+    history.clear();
+    acknowledged = -1;
+    keyframeRequested = false;
+  }
+
+  // #########################################################################
+  /**
+   * Get the event loop of the connection.
+   *
+   * @return the event loop, {@code null} if not registered
+   */
+  EventLoop getLoop() {
+    return loop;
+  }
+
+  /**
+   * Get the bytes of an incomplete message received.
+   *
+   * @return the bytes, ready to be read, {@code null} if none
+   */
+  ByteBuffer getPartial() {
+    return partial;
+  }
+
+  /**
+   * Set the bytes of an incomplete message received.
+   *
+   * @param bytes the bytes, ready to be read, {@code null} if none
+   */
+  void setPartial(final ByteBuffer bytes) {
+    this.partial = bytes;
+  }
+
+  /**
+   * Reserve space for a message to send.
+   *
+   * @param length the length of the message, header included
+   * @param droppable {@code true} if the message can be dropped when too many are queued
+   * @return the buffer to put the message to, {@code null} if the message is dropped
+   */
+  ByteBuffer reserve(final int length, final boolean droppable) {
+    ByteBuffer last = output.peekLast();
+    if (last != null && !isShared(last) && last.remaining() >= length) {
+      return last;
+    }
+    if (droppable && ownBuffers >= MAX_QUEUED_BUFFERS) {
+      return null;
+    }
+    ByteBuffer buffer = loop.getPool().take();
+    output.addLast(buffer);
+    ownBuffers++;
+    return buffer;
+  }
+
+  /**
+   * Queue a message shared with other spectators.
+   *
+   * @param message a view of the message, ready to be written, not to be changed
+   * @return {@code false} if too many shared messages were queued, all of them being dropped
+   */
+  boolean share(final ByteBuffer message) {
+    if (sharedBytes + message.remaining() > MAX_SHARED_BYTES) {
+      dropShared();
+      resync = true;
+      resyncing = false;
+      return false;
+    }
+    output.addLast(message);
+    sharedBytes += message.remaining();
+    return true;
+  }
+
+  /**
+   * Drop the shared messages queued, but the one being written, not to break the stream.
+   */
+  void dropShared() {
+    sharedBytes = 0;
+    for (Iterator<ByteBuffer> it = output.iterator(); it.hasNext();) {
+      ByteBuffer buffer = it.next();
+      if (!isShared(buffer)) {
+        continue;
+      }
+      if (buffer.position() == 0) {
+        it.remove();
+      } else {
+        sharedBytes += buffer.limit();
+      }
+    }
+  }
+
+  /**
+   * Is a queued buffer shared with other spectators rather than pooled?
+   *
+   * @param buffer the buffer
+   * @return {@code true} if a read-only shared buffer
+   */
+  private static boolean isShared(final ByteBuffer buffer) {
+    return buffer.isReadOnly();
+  }
+
+  /**
+   * Write the messages queued, as much as the channel accepts without blocking.
+   *
+   * @return {@code true} if all the messages were written
+   * @throws IOException if the messages cannot be written
+   */
+  boolean flush() throws IOException {
+    if (gathered == null) {
+      gathered = new ByteBuffer[MAX_GATHERED_BUFFERS];
+    }
+    while (!output.isEmpty()) {
+      int n = 0;
+      for (ByteBuffer buffer : output) {
+        if (!isShared(buffer)) {
+          buffer.flip();
+        }
+        gathered[n++] = buffer;
+        if (n == gathered.length) {
+          break;
+        }
+      }
+      channel.write(gathered, 0, n);
+      boolean full = gathered[n - 1].hasRemaining();
+      // The buffers written whole are the first ones
+      for (int i = 0; i < n; i++) {
+        ByteBuffer buffer = gathered[i];
+        gathered[i] = null;
+        if (buffer.hasRemaining()) {
+          if (!isShared(buffer)) {
+            buffer.compact();
+          }
+        } else {
+          output.removeFirst();
+          if (isShared(buffer)) {
+            sharedBytes -= buffer.limit();
+          } else {
+            ownBuffers--;
+            loop.getPool().give(buffer);
+          }
+        }
+      }
+      if (full) {
+        if (key != null) {
+          key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+        return false;
+      }
+    }
+    if (key != null && (key.interestOps() & SelectionKey.OP_WRITE) != 0) {
+      key.interestOps(SelectionKey.OP_READ);
+    }
+    return true;
+  }
+
+  /**
+   * Has the connection messages queued?
+   *
+   * @return {@code true} if messages are waiting to be written
+   */
+  boolean hasOutput() {
+    return !output.isEmpty();
+  }
+
+  /**
+   * Close the connection, giving its buffers back to the pool of its event loop.
+   */
+  void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    if (loop != null) {
+      BufferPool pool = loop.getPool();
+      for (ByteBuffer buffer : output) {
+        if (!isShared(buffer)) {
+          pool.give(buffer);
+        }
+      }
+    }
+    output.clear();
+    ownBuffers = 0;
+    sharedBytes = 0;
+    partial = null;
+    deregister();
+    try {
+      channel.close();
+    } catch (IOException ex) {
+      LOGGER.log(Level.FINE, "Cannot close " + this, ex);
+    }
+  }
+
+  /**
+   * Is the connection closed?
+   *
+   * @return {@code true} if closed
+   */
+  boolean isClosed() {
+    return closed;
+  }
+
+  @Override
+  public String toString() {
+    return "Connection [id=" + id + ", room="
+        + (room == null ? null : room.getId()) + "]";
+  }
+}
@@ -0,0 +1,681 @@
+package org.fun.game.tetris.net;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.fun.game.tetris.Engine;
+import org.fun.game.tetris.EngineState;
+
+/**
+ * An event loop of the {@link GameServer}: a thread selecting the channels of its connections,
+ * and computing the frames of its rooms at the game frame rate.
+ *
+ * <p>
+ * Rooms are owned by a single loop, so that their games are computed without locks: a connection
+ * joining a room owned by another loop is handed over to it. Other threads only hand tasks over
+ * to the loop, run on its thread.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+final class EventLoop implements Runnable {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOGGER =
+      Logger.getLogger(EventLoop.class.getName());
+
+  /**
+   * Capacity of the pooled buffers.
+   */
+  private static final int BUFFER_CAPACITY = 4096;
+  /**
+   * Maximum number of free pooled buffers.
+   */
+  private static final int MAX_FREE_BUFFERS = 1024;
+  /**
+   * Capacity of the direct buffers the messages shared by spectators are sliced from.
+   */
+  private static final int SLAB_CAPACITY = 256 * 1024;
+  /**
+   * Capacity of the buffer receiving the bytes read.
+   */
+  private static final int READ_CAPACITY = 64 * 1024;
+  /**
+   * Duration of a frame, in nanoseconds.
+   */
+  private static final long FRAME_NANOS =
+      TimeUnit.SECONDS.toNanos(1) / Engine.FRAME_PER_SECOND;
+  /**
+   * Maximum number of late frames computed at once, before skipping the next ones.
+   */
+  private static final int MAX_CATCH_UP_FRAMES = 5;
+
+  /**
+   * The server.
+   */
+  private final GameServer server;
+  /**
+   * The selector.
+   */
+  private final Selector selector;
+  /**
+   * Pool of the buffers of the connections.
+   */
+  private final BufferPool pool =
+      new BufferPool(BUFFER_CAPACITY, MAX_FREE_BUFFERS);
+  /**
+   * Buffer receiving the bytes read.
+   */
+  private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_CAPACITY);
+  /**
+   * Direct buffer the messages shared by spectators are sliced from, released once all its
+   * messages are written.
+   */
+  private ByteBuffer slab = ByteBuffer.allocateDirect(SLAB_CAPACITY);
+  /**
+   * Rooms owned, by id.
+   */
+  private final Map<Integer, Room> rooms = new HashMap<>();
+  /**
+   * Connections registered.
+   */
+  private final List<Connection> connections = new ArrayList<>();
+  /**
+   * Tasks handed over by other threads.
+   */
+  private final ConcurrentLinkedQueue<Runnable> tasks =
+      new ConcurrentLinkedQueue<>();
+  /**
+   * State of the engines encoded.
+   */
+  private final EngineState state = new EngineState();
+  /**
+   * Bytes of the state encoded.
+   */
+  private final ByteArrayOutputStream stateBytes = new ByteArrayOutputStream();
+  /**
+   * Encoder of the states.
+   */
+  private final DataOutputStream stateOut = new DataOutputStream(stateBytes);
+  /**
+   * Event loop the connection handled is handed over to, {@code null} if none.
+   */
+  private EventLoop handover = null;
+  /**
+   * Id of the room joined by the connection handed over.
+   */
+  private int handoverRoom = 0;
+  /**
+   * Is the connection handed over watching the room rather than playing?
+   */
+  private boolean handoverSpectator = false;
+  /**
+   * Number of frames computed.
+   */
+  private long frames = 0;
+  /**
+   * Is the loop running?
+   */
+  private volatile boolean running = true;
+
+  /**
+   * Create an event loop.
+   *
+   * @param gameServer the server
+   * @throws IOException if the selector cannot be opened
+   */
+  EventLoop(final GameServer gameServer) throws IOException {
+    this.server = gameServer;
+    this.selector = Selector.open();
+  }
+
+  /**
+   * Get the server.
+   *
+   * @return the server
+   */
+  GameServer getServer() {
+    return server;
+  }
+
+  /**
+   * Get the pool of the buffers of the connections.
+   *
+   * @return the pool
+   */
+  BufferPool getPool() {
+    return pool;
+  }
+
+  /**
+   * Run a task on the thread of the loop.
+   *
+   * @param task the task
+   */
+  void execute(final Runnable task) {
+    tasks.add(task);
+    selector.wakeup();
+  }
+
+  /**
+   * Register the channel accepting connections.
+   *
+   * @param acceptor the channel
+   */
+  void accept(final ServerSocketChannel acceptor) {
+    execute(() -> {
+      try {
+        acceptor.register(selector, SelectionKey.OP_ACCEPT);
+      } catch (IOException ex) {
+        LOGGER.log(Level.SEVERE, "Cannot accept connections", ex);
+      }
+    });
+  }
+
+  /**
+   * Register a connection with the loop, joining a room owned by the loop if any.
+   *
+   * @param connection the connection
+   * @param roomId the id of the room joined, {@code null} if none
+   * @param spectator {@code true} to watch the room rather than playing
+   */
+  void adopt(final Connection connection, final Integer roomId,
+      final boolean spectator) {
+    execute(() -> {
+      try {
+        SelectionKey key = connection.getChannel().register(selector,
+            SelectionKey.OP_READ, connection);
+        connection.register(this, key);
+        connections.add(connection);
+        if (roomId != null) {
+          join(connection, roomId, spectator);
+        }
+        ByteBuffer partial = connection.getPartial();
+        if (partial != null) {
+          connection.setPartial(null);
+          receive(connection, partial);
+        }
+        if (!connection.isClosed() && connection.getLoop() == this) {
+          flush(connection);
+        }
+      } catch (IOException ex) {
+        LOGGER.log(Level.FINE, "Cannot register " + connection, ex);
+        close(connection);
+      }
+    });
+  }
+
+  /**
+   * Stop the loop, closing its connections.
+   */
+  void stop() {
+    running = false;
+    selector.wakeup();
+  }
+
+  // #########################################################################
+  @Override
+  public void run() {
+    long nextFrame = System.nanoTime();
+    try {
+      while (running) {
+        long wait = nextFrame - System.nanoTime();
+        if (wait > TimeUnit.MILLISECONDS.toNanos(1)) {
+          selector.select(TimeUnit.NANOSECONDS.toMillis(wait));
+        } else {
+          selector.selectNow();
+        }
+        runTasks();
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          if (!key.isValid()) {
+            continue;
+          }
+          if (key.isAcceptable()) {
+            acceptConnections((ServerSocketChannel) key.channel());
+            continue;
+          }
+          Connection connection = (Connection) key.attachment();
+          if (key.isWritable()) {
+            flush(connection);
+          }
+          if (key.isValid() && key.isReadable()) {
+            read(connection);
+          }
+        }
+
+        long now = System.nanoTime();
+        int late = 0;
+        while (now - nextFrame >= 0 && late < MAX_CATCH_UP_FRAMES) {
+          tick();
+          nextFrame += FRAME_NANOS;
+          late++;
+        }
+        if (now - nextFrame >= 0) {
+          server.frameSkipped((now - nextFrame) / FRAME_NANOS + 1);
+          nextFrame = now + FRAME_NANOS;
+        }
+      }
+    } catch (IOException | RuntimeException ex) {
+      LOGGER.log(Level.SEVERE, "Event loop failure", ex);
+    } finally {
+      for (Connection connection : new ArrayList<>(connections)) {
+        close(connection);
+      }
+      try {
+        selector.close();
+      } catch (IOException ex) {
+        LOGGER.log(Level.FINE, "Cannot close selector", ex);
+      }
+    }
+  }
+
+  /**
+   * Run the tasks handed over by other threads.
+   */
+  private void runTasks() {
+    for (Runnable task = tasks.poll(); task != null; task = tasks.poll()) {
+      task.run();
+    }
+  }
+
+  /**
+   * Accept the pending connections, handing them over to the loops in turn.
+   *
+   * @param acceptor the channel accepting connections
+   * @throws IOException if the connections cannot be accepted
+   */
+  private void acceptConnections(final ServerSocketChannel acceptor)
+      throws IOException {
+    for (SocketChannel channel = acceptor.accept(); channel != null; channel =
+        acceptor.accept()) {
+      channel.configureBlocking(false);
+      channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+      server.connectionOpened();
+      server.nextLoop().adopt(new Connection(server.nextPlayerId(), channel),
+          null, false);
+    }
+  }
+
+  /**
+   * Compute a frame of every room, sending the states and writing them.
+   */
+  private void tick() {
+    frames++;
+    boolean sendStates = frames % server.getStatePeriod() == 0;
+    for (Room room : rooms.values()) {
+      room.tick(sendStates);
+    }
+    for (int i = connections.size() - 1; i >= 0; i--) {
+      Connection connection = connections.get(i);
+      if (connection.hasOutput()) {
+        flush(connection);
+      }
+    }
+  }
+
+  /**
+   * Read the bytes received by a connection and handle the complete messages.
+   *
+   * @param connection the connection
+   */
+  private void read(final Connection connection) {
+    int read;
+    try {
+      readBuffer.clear();
+      read = connection.getChannel().read(readBuffer);
+    } catch (IOException ex) {
+      LOGGER.log(Level.FINE, "Cannot read " + connection, ex);
+      close(connection);
+      return;
+    }
+    if (read < 0) {
+      close(connection);
+      return;
+    }
+    readBuffer.flip();
+    ByteBuffer partial = connection.getPartial();
+    if (partial == null) {
+      receive(connection, readBuffer);
+    } else {
+      // Complete the pending message first
+      connection.setPartial(null);
+      ByteBuffer merged = ByteBuffer.allocate(
+          partial.remaining() + readBuffer.remaining());
+      merged.put(partial).put(readBuffer).flip();
+      receive(connection, merged);
+    }
+  }
+
+  /**
+   * Handle the complete messages received, keeping the incomplete one for later.
+   *
+   * <p>
+   * A connection joining a room owned by another loop is handed over to it, with the messages
+   * received after the join.
+   * </p>
+   *
+   * @param connection the connection
+   * @param bytes the bytes received
+   */
+  private void receive(final Connection connection, final ByteBuffer bytes) {
+    while (bytes.remaining() >= Protocol.HEADER && handover == null) {
+      int length = bytes.getShort(bytes.position()) & Protocol.MAX_LENGTH;
+      if (length == 0) {
+        close(connection);
+        return;
+      }
+      if (bytes.remaining() < Protocol.LENGTH + length) {
+        break;
+      }
+      bytes.position(bytes.position() + Protocol.LENGTH);
+      int end = bytes.position() + length;
+      byte type = bytes.get();
+      if (!handle(connection, type, bytes, length - 1)) {
+        close(connection);
+        return;
+      }
+      bytes.position(end);
+    }
+    if (bytes.hasRemaining()) {
+      ByteBuffer partial = ByteBuffer.allocate(bytes.remaining());
+      partial.put(bytes).flip();
+      connection.setPartial(partial);
+    }
+    if (handover != null) {
+      EventLoop owner = handover;
+      handover = null;
+      owner.adopt(connection, handoverRoom, handoverSpectator);
+    }
+  }
+
+  /**
+   * Handle a message received.
+   *
+   * @param connection the connection
+   * @param type the type of the message
+   * @param payload the payload of the message, at its position
+   * @param length the length of the payload
+   * @return {@code false} if the message is invalid
+   */
+  private boolean handle(final Connection connection, final byte type,
+      final ByteBuffer payload, final int length) {
+    switch (type) {
+      case Protocol.JOIN:
+      case Protocol.SPECTATE:
+        boolean spectator = type == Protocol.SPECTATE;
+        if (length != (spectator ? Protocol.SPECTATE_LENGTH
+            : Protocol.JOIN_LENGTH)) {
+          return false;
+        }
+        int roomId = payload.getInt();
+        leave(connection);
+        EventLoop owner = server.loopOf(roomId);
+        if (owner == this) {
+          join(connection, roomId, spectator);
+        } else {
+          connections.remove(connection);
+          connection.deregister();
+          handover = owner;
+          handoverRoom = roomId;
+          handoverSpectator = spectator;
+        }
+        return true;
+      case Protocol.INPUTS:
+        if (length != Protocol.INPUTS_LENGTH) {
+          return false;
+        }
+        connection.setInputs(payload.get() & 0xFF);
+        return true;
+      case Protocol.LEAVE:
+        leave(connection);
+        return length == 0;
+      case Protocol.ACK:
+        if (length != Protocol.ACK_LENGTH) {
+          return false;
+        }
+        connection.acknowledge(payload.getLong());
+        return true;
+      case Protocol.KEYFRAME:
+        connection.setKeyframeRequested(true);
+        return length == 0;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Add a connection to a room owned by the loop, creating the room if needed.
+   *
+   * @param connection the connection
+   * @param roomId the id of the room
+   * @param spectator {@code true} to watch the room rather than playing
+   */
+  private void join(final Connection connection, final int roomId,
+      final boolean spectator) {
+    Room room = rooms.get(roomId);
+    if (room == null) {
+      room = new Room(roomId, server.nextSeed(), this);
+      rooms.put(roomId, room);
+      server.roomOpened();
+    }
+    if (spectator) {
+      room.watch(connection);
+    } else {
+      room.join(connection);
+    }
+  }
+
+  /**
+   * Remove a connection from its room, closing the room if empty.
+   *
+   * @param connection the connection
+   */
+  private void leave(final Connection connection) {
+    Room room = connection.getRoom();
+    if (room != null) {
+      room.leave(connection);
+      if (room.isEmpty()) {
+        rooms.remove(room.getId());
+        server.roomClosed();
+      }
+    }
+  }
+
+  /**
+   * Write the messages queued for a connection.
+   *
+   * @param connection the connection
+   */
+  private void flush(final Connection connection) {
+    try {
+      connection.flush();
+    } catch (IOException ex) {
+      LOGGER.log(Level.FINE, "Cannot write " + connection, ex);
+      close(connection);
+    }
+  }
+
+  /**
+   * Close a connection.
+   *
+   * @param connection the connection
+   */
+  private void close(final Connection connection) {
+    if (connection.isClosed()) {
+      return;
+    }
+    leave(connection);
+    connections.remove(connection);
+    connection.close();
+    server.connectionClosed();
+  }
+
+  // #########################################################################
+  /**
+   * Send the start of its game to a player.
+   *
+   * @param player the player
+   */
+  void sendWelcome(final Connection player) {
+    ByteBuffer buffer =
+        player.reserve(Protocol.HEADER + Protocol.WELCOME_LENGTH, false);
+    Engine engine = player.getEngine();
+    buffer.putShort((short) (1 + Protocol.WELCOME_LENGTH))
+        .put(Protocol.WELCOME).putInt(player.getId())
+        .putInt(player.getRoom().getId())
+        .put((byte) engine.getMode().ordinal()).putInt(engine.getLevel())
+        .putLong(engine.getSeed());
+  }
+
+  /**
+   * Send the state of its game to a player, unless too many messages are queued.
+   *
+   * <p>
+   * The state is sent as a delta from the last state acknowledged by the player if still kept,
+   * whole otherwise or when a keyframe is requested.
+   * </p>
+   *
+   * @param player the player
+   */
+  void sendState(final Connection player) {
+    Engine engine = player.getEngine();
+    StateHistory history = player.getHistory();
+    EngineState base = player.isKeyframeRequested() ? null
+        : history.get(player.getAcknowledged(), engine.getSeed());
+    stateBytes.reset();
+    byte type;
+    try {
+      engine.saveState(state);
+      if (base != null && state.isDeltaFrom(base)) {
+        type = Protocol.DELTA;
+        stateOut.writeLong(base.getFrames());
+        state.writeDeltaTo(base, stateOut);
+      } else {
+        type = Protocol.STATE;
+        state.writeTo(stateOut);
+      }
+    } catch (IOException ex) {
+      throw new IllegalStateException(ex);
+    }
+    ByteBuffer buffer =
+        player.reserve(Protocol.HEADER + stateBytes.size(), true);
+    if (buffer == null) {
+      server.stateDropped();
+      return;
+    }
+    buffer.putShort((short) (1 + stateBytes.size())).put(type)
+        .put(stateBytes.toByteArray());
+    history.add().copyFrom(state);
+    if (type == Protocol.STATE) {
+      player.setKeyframeRequested(false);
+      server.keyframeSent(stateBytes.size());
+    } else {
+      server.deltaSent(stateBytes.size());
+    }
+  }
+
+  /**
+   * Send the state of the game of a player to the spectators of its room.
+   *
+   * <p>
+   * The state is encoded once, as a delta from the previous state sent to the spectators, and as
+   * a keyframe if a spectator needs one, in read-only buffers sliced from a shared direct buffer:
+   * each spectator queues its own view of the same bytes.
+   * </p>
+   *
+   * @param player the player
+   * @param spectators the spectators
+   */
+  void sendWatched(final Connection player,
+      final List<Connection> spectators) {
+    player.getEngine().saveState(state);
+    EngineState previous = player.getWatched();
+    ByteBuffer delta = null;
+    ByteBuffer keyframe = null;
+    try {
+      if (previous != null && state.isDeltaFrom(previous)) {
+        stateBytes.reset();
+        stateOut.writeInt(player.getId());
+        stateOut.writeLong(previous.getFrames());
+        state.writeDeltaTo(previous, stateOut);
+        delta = slice(Protocol.WATCHED_DELTA);
+      }
+      for (int i = 0, n = spectators.size(); i < n; i++) {
+        Connection spectator = spectators.get(i);
+        ByteBuffer message = delta;
+        if (message == null || spectator.needsKeyframes()) {
+          if (keyframe == null) {
+            stateBytes.reset();
+            stateOut.writeInt(player.getId());
+            state.writeTo(stateOut);
+            keyframe = slice(Protocol.WATCHED);
+          }
+          message = keyframe;
+        }
+        if (spectator.share(message.duplicate())) {
+          server.watchedSent();
+        } else {
+          server.watchedDropped();
+        }
+      }
+    } catch (IOException ex) {
+      throw new IllegalStateException(ex);
+    }
+    player.watched().copyFrom(state);
+  }
+
+  /**
+   * Copy the message encoded to a read-only buffer sliced from the shared direct buffer.
+   *
+   * @param type the type of the message
+   * @return the message, ready to be written
+   */
+  private ByteBuffer slice(final byte type) {
+    int length = Protocol.HEADER + stateBytes.size();
+    if (slab.remaining() < length) {
+      slab = ByteBuffer.allocateDirect(Math.max(SLAB_CAPACITY, length));
+    }
+    ByteBuffer message = slab.slice();
+    message.limit(length);
+    message.putShort((short) (1 + stateBytes.size())).put(type)
+        .put(stateBytes.toByteArray()).flip();
+    slab.position(slab.position() + length);
+    server.watchedEncoded(length);
+    return message.asReadOnlyBuffer();
+  }
+
+  /**
+   * Send the end of its game to a player.
+   *
+   * @param player the player
+   */
+  void sendGameOver(final Connection player) {
+    ByteBuffer buffer =
+        player.reserve(Protocol.HEADER + Protocol.GAME_OVER_LENGTH, false);
+    Engine engine = player.getEngine();
+    buffer.putShort((short) (1 + Protocol.GAME_OVER_LENGTH))
+        .put(Protocol.GAME_OVER).putLong(engine.getScore())
+        .putInt(engine.getLines()).putLong(engine.getFrames());
+  }
+}
@@ -0,0 +1,527 @@
+package org.fun.game.tetris.net;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.fun.game.tetris.Tetrion;
+
+/**
+ * An authoritative multiplayer game server, hosting rooms of players over TCP.
+ *
+ * <p>
+ * Clients send their inputs and receive the states of their games, computed by the server with
+ * the headless {@link org.fun.game.tetris.Engine}: see {@link Protocol}. Connections are served by
+ * a small number of event loops, each one a thread selecting its channels without blocking, so
+ * that a server holds thousands of connections. Each room is owned by an event loop, chosen from
+ * its id, computing the frames of its games.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public class GameServer implements Closeable {
+
+  /**
+   * Address listened to.
+   */
+  private final InetSocketAddress address;
+  /**
+   * Number of event loops.
+   */
+  private int loops = Runtime.getRuntime().availableProcessors();
+  /**
+   * Game mode of the rooms.
+   */
+  private Tetrion.Mode mode = Tetrion.Mode.MIX;
+  /**
+   * Start level of the games.
+   */
+  private int level = 1;
+  /**
+   * Number of frames between two states sent.
+   */
+  private int statePeriod = 1;
+  /**
+   * Channel accepting connections, {@code null} if not started.
+   */
+  private ServerSocketChannel acceptor = null;
+  /**
+   * Event loops, {@code null} if not started.
+   */
+  private EventLoop[] eventLoops = null;
+  /**
+   * Generator of the seeds of the rooms.
+   */
+  private final SplittableRandom seeds = new SplittableRandom();
+  /**
+   * Last player id.
+   */
+  private final AtomicInteger lastPlayerId = new AtomicInteger();
+  /**
+   * Next event loop adopting a connection accepted.
+   */
+  private final AtomicInteger nextLoop = new AtomicInteger();
+  /**
+   * Number of open connections.
+   */
+  private final AtomicInteger connections = new AtomicInteger();
+  /**
+   * Number of open rooms.
+   */
+  private final AtomicInteger rooms = new AtomicInteger();
+  /**
+   * Number of keyframes sent.
+   */
+  private final LongAdder keyframesSent = new LongAdder();
+  /**
+   * Number of bytes of the keyframes sent.
+   */
+  private final LongAdder keyframeBytes = new LongAdder();
+  /**
+   * Number of deltas sent.
+   */
+  private final LongAdder deltasSent = new LongAdder();
+  /**
+   * Number of bytes of the deltas sent.
+   */
+  private final LongAdder deltaBytes = new LongAdder();
+  /**
+   * Number of messages encoded for the spectators.
+   */
+  private final LongAdder watchedEncoded = new LongAdder();
+  /**
+   * Number of bytes of the messages encoded for the spectators.
+   */
+  private final LongAdder watchedBytes = new LongAdder();
+  /**
+   * Number of messages queued to the spectators.
+   */
+  private final LongAdder watchedSent = new LongAdder();
+  /**
+   * Number of times spectators dropped their messages, reading too slowly.
+   */
+  private final LongAdder watchedDropped = new LongAdder();
+  /**
+   * Number of states dropped.
+   */
+  private final LongAdder statesDropped = new LongAdder();
+  /**
+   * Number of frames skipped by late event loops.
+   */
+  private final LongAdder framesSkipped = new LongAdder();
+
+  /**
+   * Create a server listening to all the addresses.
+   *
+   * @param port the port, {@code 0} for any free port
+   */
+  public GameServer(final int port) {
+    this(new InetSocketAddress(port));
+  }
+
+  /**
+   * Create a server.
+   *
+   * @param socketAddress the address listened to
+   */
+  public GameServer(final InetSocketAddress socketAddress) {
+    this.address = socketAddress;
+  }
+
+  /**
+   * Get the number of event loops.
+   *
+   * @return the number of event loops
+   */
+  public final int getLoops() {
+    return loops;
+  }
+
+  /**
+   * Set the number of event loops, before starting the server.
+   *
+   * @param numberOfLoops the number of event loops
+   */
+  public final void setLoops(final int numberOfLoops) {
+    this.loops = Math.max(1, numberOfLoops);
+  }
+
+  /**
+   * Get the game mode of the rooms.
+   *
+   * @return the game mode
+   */
+  public final Tetrion.Mode getMode() {
+    return mode;
+  }
+
+  /**
+   * Set the game mode of the rooms.
+   *
+   * @param gameMode the game mode, {@code null} for the default mode
+   */
+  public final void setMode(final Tetrion.Mode gameMode) {
+    this.mode = gameMode == null ? Tetrion.Mode.MIX : gameMode;
+  }
+
+  /**
+   * Get the start level of the games.
+   *
+   * @return the start level
+   */
+  public final int getLevel() {
+    return level;
+  }
+
+  /**
+   * Set the start level of the games.
+   *
+   * @param startLevel the start level
+   */
+  public final void setLevel(final int startLevel) {
+    this.level = startLevel;
+  }
+
+  /**
+   * Get the number of frames between two states sent.
+   *
+   * @return the number of frames
+   */
+  public final int getStatePeriod() {
+    return statePeriod;
+  }
+
+  /**
+   * Set the number of frames between two states sent, the states of the games over being always
+   * sent.
+   *
+   * @param frames the number of frames
+   */
+  public final void setStatePeriod(final int frames) {
+    this.statePeriod = Math.max(1, frames);
+  }
+
+  // #########################################################################
+  /**
+   * Start listening and serving connections.
+   *
+   * @throws IOException if the server cannot listen
+   */
+  public synchronized void start() throws IOException {
+    if (acceptor != null) {
+      return;
+    }
+    acceptor = ServerSocketChannel.open();
+    try {
+      acceptor.bind(address, 0);
+      acceptor.configureBlocking(false);
+      eventLoops = new EventLoop[loops];
+      for (int i = 0; i < loops; i++) {
+        eventLoops[i] = new EventLoop(this);
+      }
+    } catch (IOException ex) {
+      acceptor.close();
+      acceptor = null;
+      throw ex;
+    }
+    for (int i = 0; i < loops; i++) {
+      Thread thread = new Thread(eventLoops[i], "tetris-server-" + i);
+      thread.setDaemon(true);
+      thread.start();
+    }
+    eventLoops[0].accept(acceptor);
+  }
+
+  /**
+   * Get the port listened to.
+   *
+   * @return the port, {@code -1} if not started
+   */
+  public synchronized int getPort() {
+    return acceptor == null ? -1
+        : acceptor.socket().getLocalPort();
+  }
+
+  /**
+   * Stop listening and close the connections.
+   *
+   * @throws IOException if the server cannot stop listening
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (acceptor == null) {
+      return;
+    }
+    for (EventLoop loop : eventLoops) {
+      loop.stop();
+    }
+    acceptor.close();
+    acceptor = null;
+  }
+
+  // #########################################################################
+  /**
+   * Get the number of open connections.
+   *
+   * @return the number of connections
+   */
+  public final int getConnections() {
+    return connections.get();
+  }
+
+  /**
+   * Get the number of open rooms.
+   *
+   * @return the number of rooms
+   */
+  public final int getRooms() {
+    return rooms.get();
+  }
+
+  /**
+   * Get the number of states sent, keyframes or deltas.
+   *
+   * @return the number of states
+   */
+  public final long getStatesSent() {
+    return keyframesSent.sum() + deltasSent.sum();
+  }
+
+  /**
+   * Get the number of states sent whole.
+   *
+   * @return the number of keyframes
+   */
+  public final long getKeyframesSent() {
+    return keyframesSent.sum();
+  }
+
+  /**
+   * Get the number of bytes of the states sent whole, headers excluded.
+   *
+   * @return the number of bytes
+   */
+  public final long getKeyframeBytes() {
+    return keyframeBytes.sum();
+  }
+
+  /**
+   * Get the number of states sent as deltas.
+   *
+   * @return the number of deltas
+   */
+  public final long getDeltasSent() {
+    return deltasSent.sum();
+  }
+
+  /**
+   * Get the number of bytes of the states sent as deltas, headers excluded.
+   *
+   * @return the number of bytes
+   */
+  public final long getDeltaBytes() {
+    return deltaBytes.sum();
+  }
+
+  /**
+   * Get the number of messages encoded for the spectators, each one shared by all the spectators
+   * of a room.
+   *
+   * @return the number of messages
+   */
+  public final long getWatchedEncoded() {
+    return watchedEncoded.sum();
+  }
+
+  /**
+   * Get the number of bytes of the messages encoded for the spectators.
+   *
+   * @return the number of bytes
+   */
+  public final long getWatchedBytes() {
+    return watchedBytes.sum();
+  }
+
+  /**
+   * Get the number of messages queued to the spectators.
+   *
+   * @return the number of messages
+   */
+  public final long getWatchedSent() {
+    return watchedSent.sum();
+  }
+
+  /**
+   * Get the number of times spectators dropped their messages, reading too slowly, to receive
+   * keyframes again.
+   *
+   * @return the number of times
+   */
+  public final long getWatchedDropped() {
+    return watchedDropped.sum();
+  }
+
+  /**
+   * Get the number of states dropped, their clients reading too slowly.
+   *
+   * @return the number of states
+   */
+  public final long getStatesDropped() {
+    return statesDropped.sum();
+  }
+
+  /**
+   * Get the number of frames skipped by the event loops, late on the frame rate.
+   *
+   * @return the number of frames
+   */
+  public final long getFramesSkipped() {
+    return framesSkipped.sum();
+  }
+
+  @Override
+  public String toString() {
+    return "GameServer [port=" + getPort() + ", connections="
+        + getConnections() + ", rooms=" + getRooms() + ", keyframesSent="
+        + getKeyframesSent() + ", keyframeBytes=" + getKeyframeBytes()
+        + ", deltasSent=" + getDeltasSent() + ", deltaBytes="
+        + getDeltaBytes() + ", statesDropped=" + getStatesDropped()
+        + ", watchedEncoded=" + getWatchedEncoded() + ", watchedBytes="
+        + getWatchedBytes() + ", watchedSent=" + getWatchedSent()
+        + ", watchedDropped=" + getWatchedDropped()
+        + ", framesSkipped=" + getFramesSkipped() + "]";
+  }
+
+  // #########################################################################
+  /**
+   * Get the event loop owning a room.
+   *
+   * @param roomId the id of the room
+   * @return the event loop
+   */
+  EventLoop loopOf(final int roomId) {
+    return eventLoops[Math.floorMod(roomId, eventLoops.length)];
+  }
+
+  /**
+   * Get the next event loop adopting a connection accepted.
+   *
+   * @return the event loop
+   */
+  EventLoop nextLoop() {
+    return eventLoops[Math.floorMod(nextLoop.getAndIncrement(),
+        eventLoops.length)];
+  }
+
+  /**
+   * Get the id of a new player.
+   *
+   * @return the id
+   */
+  int nextPlayerId() {
+    return lastPlayerId.incrementAndGet();
+  }
+
+  /**
+   * Get the seed of the games of a new room.
+   *
+   * @return the seed
+   */
+  long nextSeed() {
+    synchronized (seeds) {
+      return seeds.nextLong();
+    }
+  }
+
+  /**
+   * Count a connection opened.
+   */
+  void connectionOpened() {
+    connections.incrementAndGet();
+  }
+
+  /**
+   * Count a connection closed.
+   */
+  void connectionClosed() {
+    connections.decrementAndGet();
+  }
+
+  /**
+   * Count a room opened.
+   */
+  void roomOpened() {
+    rooms.incrementAndGet();
+  }
+
+  /**
+   * Count a room closed.
+   */
+  void roomClosed() {
+    rooms.decrementAndGet();
+  }
+
+  /**
+   * Count a keyframe sent.
+   *
+   * @param bytes the number of bytes of the keyframe
+   */
+  void keyframeSent(final int bytes) {
+    keyframesSent.increment();
+    keyframeBytes.add(bytes);
+  }
+
+  /**
+   * Count a delta sent.
+   *
+   * @param bytes the number of bytes of the delta
+   */
+  void deltaSent(final int bytes) {
+    deltasSent.increment();
+    deltaBytes.add(bytes);
+  }
+
+  /**
+   * Count a message encoded for the spectators.
+   *
+   * @param bytes the number of bytes of the message
+   */
+  void watchedEncoded(final int bytes) {
+    watchedEncoded.increment();
+    watchedBytes.add(bytes);
+  }
+
+  /**
+   * Count a message queued to a spectator.
+   */
+  void watchedSent() {
+    watchedSent.increment();
+  }
+
+  /**
+   * Count a spectator dropping its messages.
+   */
+  void watchedDropped() {
+    watchedDropped.increment();
+  }
+
+  /**
+   * Count a state dropped.
+   */
+  void stateDropped() {
+    statesDropped.increment();
+  }
+
+  /**
+   * Count frames skipped by a late event loop.
+   *
+   * @param frames the number of frames
+   */
+  void frameSkipped(final long frames) {
+    framesSkipped.add(frames);
+  }
+}
@@ -0,0 +1,705 @@
+package org.fun.game.tetris.net;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.fun.game.tetris.Controller;
+import org.fun.game.tetris.Engine;
+import org.fun.game.tetris.EngineState;
+import org.fun.game.tetris.Tetrion;
+
+/**
+ * Scripted clients of a {@link GameServer}, playing many games at once to test the server load.
+ *
+ * <p>
+ * All the clients are served by a single thread selecting their channels. Each client joins a
+ * room, plays until its game is over, and joins the room again, while spectators watch the games
+ * of a room, checking the deltas received apply to the previous states. Clients decode and
+ * acknowledge every state received, keyframe or delta. They either press random inputs,
+ * deterministic from the seed, or let a controller play on a copy of their game: each state
+ * received is restored to the engine of the client and the controller polled with it, the inputs
+ * sent when they change.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public class LoadClient {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOGGER =
+      Logger.getLogger(LoadClient.class.getName());
+
+  /**
+   * Capacity of the buffer receiving the messages of a client.
+   */
+  private static final int READ_CAPACITY = 16 * 1024;
+  /**
+   * Capacity of the buffer of the messages sent by a client.
+   */
+  private static final int WRITE_CAPACITY = 256;
+  /**
+   * Duration of a frame, in nanoseconds.
+   */
+  private static final long FRAME_NANOS =
+      TimeUnit.SECONDS.toNanos(1) / Engine.FRAME_PER_SECOND;
+  /**
+   * Mean number of frames between two random inputs changes.
+   */
+  private static final int RANDOM_INPUTS_PERIOD = 8;
+  /**
+   * Random inputs pressed, the hard drop being pressed less often.
+   */
+  private static final int[] RANDOM_INPUTS = {Controller.NONE,
+      Controller.SHIFT_LEFT, Controller.SHIFT_RIGHT, Controller.ROTATE_LEFT,
+      Controller.ROTATE_RIGHT, Controller.SOFT_DROP, Controller.NONE,
+      Controller.SHIFT_LEFT | Controller.ROTATE_RIGHT, Controller.HARD_DROP};
+
+  /**
+   * Address of the server.
+   */
+  private InetSocketAddress address;
+  /**
+   * Number of clients.
+   */
+  private int clients = 1;
+  /**
+   * Number of spectators.
+   */
+  private int spectators = 0;
+  /**
+   * Number of rooms joined.
+   */
+  private int rooms = 1;
+  /**
+   * Seed of the random inputs.
+   */
+  private long seed = 0;
+  /**
+   * Factory of the controllers of the clients, {@code null} for random inputs.
+   */
+  private Supplier<? extends Controller> controllers = null;
+  /**
+   * Number of clients connected.
+   */
+  private int connected = 0;
+  /**
+   * Number of games started.
+   */
+  private long games = 0;
+  /**
+   * Number of states received.
+   */
+  private long states = 0;
+  /**
+   * Number of states received whole.
+   */
+  private long keyframes = 0;
+  /**
+   * Number of keyframes requested, the base of a delta being missing.
+   */
+  private long keyframesRequested = 0;
+  /**
+   * Number of states of the games watched received.
+   */
+  private long watched = 0;
+  /**
+   * Number of states of the games watched received whole.
+   */
+  private long watchedKeyframes = 0;
+  /**
+   * Number of deltas of the games watched not applying to the previous state, skipped.
+   */
+  private long watchedSkipped = 0;
+  /**
+   * Number of games over.
+   */
+  private long gamesOver = 0;
+  /**
+   * Number of inputs sent.
+   */
+  private long inputsSent = 0;
+  /**
+   * Number of bytes received.
+   */
+  private long bytesReceived = 0;
+
+  /**
+   * Create clients.
+   *
+   * @param serverAddress the address of the server
+   */
+  public LoadClient(final InetSocketAddress serverAddress) {
+    this.address = serverAddress;
+  }
+
+  /**
+   * Get the address of the server.
+   *
+   * @return the address
+   */
+  public final InetSocketAddress getAddress() {
+    return address;
+  }
+
+  /**
+   * Set the address of the server.
+   *
+   * @param serverAddress the address
+   */
+  public final void setAddress(final InetSocketAddress serverAddress) {
+    this.address = serverAddress;
+  }
+
+  /**
+   * Get the number of clients.
+   *
+   * @return the number of clients
+   */
+  public final int getClients() {
+    return clients;
+  }
+
+  /**
+   * Set the number of clients.
+   *
+   * @param numberOfClients the number of clients
+   */
+  public final void setClients(final int numberOfClients) {
+    this.clients = Math.max(1, numberOfClients);
+  }
+
+  /**
+   * Get the number of spectators.
+   *
+   * @return the number of spectators
+   */
+  public final int getSpectators() {
+    return spectators;
+  }
+
+  /**
+   * Set the number of spectators, spread across the rooms.
+   *
+   * @param numberOfSpectators the number of spectators
+   */
+  public final void setSpectators(final int numberOfSpectators) {
+    this.spectators = Math.max(0, numberOfSpectators);
+  }
+
+  /**
+   * Get the number of rooms joined.
+   *
+   * @return the number of rooms
+   */
+  public final int getRooms() {
+    return rooms;
+  }
+
+  /**
+   * Set the number of rooms joined, the clients being spread across them.
+   *
+   * @param numberOfRooms the number of rooms
+   */
+  public final void setRooms(final int numberOfRooms) {
+    this.rooms = Math.max(1, numberOfRooms);
+  }
+
+  /**
+   * Get the seed of the random inputs.
+   *
+   * @return the seed
+   */
+  public final long getSeed() {
+    return seed;
+  }
+
+  /**
+   * Set the seed of the random inputs.
+   *
+   * @param randomSeed the seed
+   */
+  public final void setSeed(final long randomSeed) {
+    this.seed = randomSeed;
+  }
+
+  /**
+   * Set the factory of the controllers of the clients.
+   *
+   * @param factory the factory, {@code null} for random inputs
+   */
+  public final void setControllers(
+      final Supplier<? extends Controller> factory) {
+    this.controllers = factory;
+  }
+
+  // #########################################################################
+  /**
+   * Connect the clients, play for a while, and disconnect them.
+   *
+   * @param duration the duration played, in milliseconds
+   * @throws IOException if the clients cannot connect
+   */
+  public void run(final long duration) throws IOException {
+    SplittableRandom random = new SplittableRandom(seed);
+    List<Client> all = new ArrayList<>(clients);
+    try (Selector selector = Selector.open()) {
+      for (int i = 0; i < clients + spectators; i++) {
+        SocketChannel channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        boolean spectator = i >= clients;
+        Client client = new Client(channel, i % rooms, spectator,
+            spectator || controllers == null ? null : controllers.get());
+        all.add(client);
+        if (channel.connect(address)) {
+          client.connected(selector);
+        } else {
+          channel.register(selector, SelectionKey.OP_CONNECT, client);
+        }
+      }
+
+      long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(duration);
+      long nextFrame = System.nanoTime();
+      while (System.nanoTime() - end < 0) {
+        long wait = nextFrame - System.nanoTime();
+        if (wait > TimeUnit.MILLISECONDS.toNanos(1)) {
+          selector.select(TimeUnit.NANOSECONDS.toMillis(wait));
+        } else {
+          selector.selectNow();
+        }
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          Client client = (Client) key.attachment();
+          try {
+            if (key.isConnectable()) {
+              client.channel.finishConnect();
+              client.connected(selector);
+            } else if (key.isReadable()) {
+              client.read();
+            }
+          } catch (IOException ex) {
+            LOGGER.log(Level.FINE, "Client " + client.room + " failure", ex);
+            key.cancel();
+            client.channel.close();
+          }
+        }
+        long now = System.nanoTime();
+        if (now - nextFrame >= 0) {
+          nextFrame = Math.max(nextFrame + FRAME_NANOS, now - FRAME_NANOS);
+          if (controllers == null) {
+            for (Client client : all) {
+              if (client.playing
+                  && random.nextInt(RANDOM_INPUTS_PERIOD) == 0) {
+                try {
+                  client.sendInputs(
+                      RANDOM_INPUTS[random.nextInt(RANDOM_INPUTS.length)]);
+                } catch (IOException ex) {
+                  LOGGER.log(Level.FINE, "Client " + client.room + " failure",
+                      ex);
+                  client.channel.close();
+                }
+              }
+            }
+          }
+        }
+      }
+    } finally {
+      for (Client client : all) {
+        client.channel.close();
+      }
+    }
+  }
+
+  /**
+   * Get the number of clients connected.
+   *
+   * @return the number of clients
+   */
+  public final int getConnected() {
+    return connected;
+  }
+
+  /**
+   * Get the number of games started.
+   *
+   * @return the number of games
+   */
+  public final long getGames() {
+    return games;
+  }
+
+  /**
+   * Get the number of states received.
+   *
+   * @return the number of states
+   */
+  public final long getStates() {
+    return states;
+  }
+
+  /**
+   * Get the number of states received whole.
+   *
+   * @return the number of keyframes
+   */
+  public final long getKeyframes() {
+    return keyframes;
+  }
+
+  /**
+   * Get the number of keyframes requested, the base of a delta being missing.
+   *
+   * @return the number of keyframes
+   */
+  public final long getKeyframesRequested() {
+    return keyframesRequested;
+  }
+
+  /**
+   * Get the number of states of the games watched received.
+   *
+   * @return the number of states
+   */
+  public final long getWatched() {
+    return watched;
+  }
+
+  /**
+   * Get the number of states of the games watched received whole.
+   *
+   * @return the number of keyframes
+   */
+  public final long getWatchedKeyframes() {
+    return watchedKeyframes;
+  }
+
+  /**
+   * Get the number of deltas of the games watched not applying to the previous state, e.g. after
+   * states dropped by the server.
+   *
+   * @return the number of deltas
+   */
+  public final long getWatchedSkipped() {
+    return watchedSkipped;
+  }
+
+  /**
+   * Get the number of games over.
+   *
+   * @return the number of games
+   */
+  public final long getGamesOver() {
+    return gamesOver;
+  }
+
+  /**
+   * Get the number of inputs sent.
+   *
+   * @return the number of inputs
+   */
+  public final long getInputsSent() {
+    return inputsSent;
+  }
+
+  /**
+   * Get the number of bytes received.
+   *
+   * @return the number of bytes
+   */
+  public final long getBytesReceived() {
+    return bytesReceived;
+  }
+
+  @Override
+  public String toString() {
+    return "LoadClient [connected=" + connected + ", games=" + games
+        + ", states=" + states + ", keyframes=" + keyframes
+        + ", keyframesRequested=" + keyframesRequested + ", watched="
+        + watched + ", watchedKeyframes=" + watchedKeyframes
+        + ", watchedSkipped=" + watchedSkipped + ", gamesOver=" + gamesOver + ", inputsSent="
+        + inputsSent + ", bytesReceived=" + bytesReceived + "]";
+  }
+
+  // #########################################################################
+  /**
+   * A client.
+   */
+  private final class Client {
+
+    /**
+     * The channel.
+     */
+    private final SocketChannel channel;
+    /**
+     * Id of the room joined.
+     */
+    private final int room;
+    /**
+     * Is the client watching the room rather than playing?
+     */
+    private final boolean spectator;
+    /**
+     * Last states of the games watched, by player.
+     */
+    private final Map<Integer, EngineState> watchedGames = new HashMap<>();
+    /**
+     * Controller playing, {@code null} for random inputs.
+     */
+    private final Controller controller;
+    /**
+     * Copy of the game of the client, {@code null} if playing random inputs.
+     */
+    private final Engine engine;
+    /**
+     * States received, the bases of the deltas.
+     */
+    private final StateHistory history = new StateHistory();
+    /**
+     * Seed of the game.
+     */
+    private long seed = 0;
+    /**
+     * Is a keyframe requested?
+     */
+    private boolean keyframeRequested = false;
+    /**
+     * Messages received, ready to be written to.
+     */
+    private final ByteBuffer input = ByteBuffer.allocate(READ_CAPACITY);
+    /**
+     * Messages to send, ready to be written to.
+     */
+    private final ByteBuffer output = ByteBuffer.allocate(WRITE_CAPACITY);
+    /**
+     * Is the game of the client in progress?
+     */
+    private boolean playing = false;
+    /**
+     * Inputs sent last.
+     */
+    private int inputs = Controller.NONE;
+
+    /**
+     * Create a client.
+     *
+     * @param socket the channel
+     * @param roomId the id of the room joined
+     * @param watching {@code true} to watch the room rather than playing
+     * @param player the controller playing, {@code null} for random inputs
+     */
+    Client(final SocketChannel socket, final int roomId,
+        final boolean watching, final Controller player) {
+      this.channel = socket;
+      this.room = roomId;
+      this.spectator = watching;
+      this.controller = player;
+      this.engine = player == null ? null : new Engine();
+    }
+
+    /**
+     * Register the client connected, and join its room.
+     *
+     * @param selector the selector
+     * @throws IOException if the room cannot be joined
+     */
+    void connected(final Selector selector) throws IOException {
+      channel.register(selector, SelectionKey.OP_READ, this);
+      connected++;
+      join();
+    }
+
+    /**
+     * Join the room, starting a new game, or watch it.
+     *
+     * @throws IOException if the message cannot be sent
+     */
+    void join() throws IOException {
+      if (spectator) {
+        output.putShort((short) (1 + Protocol.SPECTATE_LENGTH))
+            .put(Protocol.SPECTATE).putInt(room);
+      } else {
+        output.putShort((short) (1 + Protocol.JOIN_LENGTH))
+            .put(Protocol.JOIN).putInt(room);
+      }
+      flush();
+    }
+
+    /**
+     * Send the inputs held.
+     *
+     * @param newInputs the inputs
+     * @throws IOException if the message cannot be sent
+     */
+    void sendInputs(final int newInputs) throws IOException {
+      if (newInputs == inputs || !channel.isOpen()) {
+        return;
+      }
+      inputs = newInputs;
+      output.putShort((short) (1 + Protocol.INPUTS_LENGTH))
+          .put(Protocol.INPUTS).put((byte) newInputs);
+      flush();
+      inputsSent++;
+    }
+
+    /**
+     * Write the messages to send, keeping the ones the channel does not accept.
+     *
+     * @throws IOException if the messages cannot be written
+     */
+    private void flush() throws IOException {
+      output.flip();
+      channel.write(output);
+      output.compact();
+    }
+
+    /**
+     * Read and handle the messages received.
+     *
+     * @throws IOException if the messages cannot be read or are invalid
+     */
+    void read() throws IOException {
+      int read = channel.read(input);
+      if (read < 0) {
+        throw new IOException("Connection closed by the server");
+      }
+      bytesReceived += read;
+      input.flip();
+      while (input.remaining() >= Protocol.HEADER) {
+        int length = input.getShort(input.position()) & Protocol.MAX_LENGTH;
+        if (input.remaining() < Protocol.LENGTH + length) {
+          break;
+        }
+        input.position(input.position() + Protocol.LENGTH);
+        int end = input.position() + length;
+        handle(input.get(), input, length - 1);
+        input.position(end);
+      }
+      input.compact();
+    }
+
+    /**
+     * Acknowledge a state received, and let the controller play it if any.
+     *
+     * @param state the state
+     * @throws IOException if the answer cannot be sent
+     */
+    private void received(final EngineState state) throws IOException {
+      output.putShort((short) (1 + Protocol.ACK_LENGTH)).put(Protocol.ACK)
+          .putLong(state.getFrames());
+      flush();
+      if (engine != null && playing) {
+        engine.restoreState(state);
+        sendInputs(controller.poll(engine));
+      }
+    }
+
+    /**
+     * Handle a message received.
+     *
+     * @param type the type of the message
+     * @param payload the payload of the message, at its position
+     * @param length the length of the payload
+     * @throws IOException if the message is invalid or the answer cannot be sent
+     */
+    private void handle(final byte type, final ByteBuffer payload,
+        final int length) throws IOException {
+      switch (type) {
+        case Protocol.WELCOME:
+          games++;
+          playing = true;
+          inputs = Controller.NONE;
+          history.clear();
+          keyframeRequested = false;
+          payload.getInt();
+          payload.getInt();
+          Tetrion.Mode mode = Tetrion.Mode.values()[payload.get()];
+          payload.getInt();
+          seed = payload.getLong();
+          if (engine != null) {
+            engine.setMode(mode);
+          }
+          break;
+        case Protocol.STATE:
+          states++;
+          keyframes++;
+          keyframeRequested = false;
+          EngineState keyframe = history.add();
+          keyframe.readFrom(new DataInputStream(new ByteArrayInputStream(
+              payload.array(), payload.position(), length)));
+          received(keyframe);
+          break;
+        case Protocol.DELTA:
+          states++;
+          EngineState base = history.get(payload.getLong(), seed);
+          if (base == null) {
+            if (!keyframeRequested) {
+              keyframeRequested = true;
+              keyframesRequested++;
+              output.putShort((short) 1).put(Protocol.KEYFRAME);
+              flush();
+            }
+            break;
+          }
+          EngineState delta = history.add();
+          delta.copyFrom(base);
+          delta.readDeltaFrom(new DataInputStream(new ByteArrayInputStream(
+              payload.array(), payload.position(),
+              length - Protocol.DELTA_BASE_LENGTH)));
+          received(delta);
+          break;
+        case Protocol.WATCHED:
+          watched++;
+          watchedKeyframes++;
+          int player = payload.getInt();
+          EngineState game = watchedGames.get(player);
+          if (game == null) {
+            game = new EngineState();
+            watchedGames.put(player, game);
+          }
+          game.readFrom(new DataInputStream(new ByteArrayInputStream(
+              payload.array(), payload.position(),
+              length - Protocol.PLAYER_LENGTH)));
+          break;
+        case Protocol.WATCHED_DELTA:
+          watched++;
+          EngineState previous = watchedGames.get(payload.getInt());
+          if (previous == null || previous.getFrames() != payload.getLong()) {
+            watchedSkipped++;
+            break;
+          }
+          previous.readDeltaFrom(new DataInputStream(new ByteArrayInputStream(
+              payload.array(), payload.position(), length
+                  - Protocol.PLAYER_LENGTH - Protocol.DELTA_BASE_LENGTH)));
+          break;
+        case Protocol.GAME_OVER:
+          gamesOver++;
+          playing = false;
+          join();
+          break;
+        default:
+          throw new IOException("Unknown message type " + type);
+      }
+    }
+  }
+}
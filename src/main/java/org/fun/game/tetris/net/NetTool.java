@@ -0,0 +1,346 @@
+package org.fun.game.tetris.net;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.fun.game.tetris.Board;
+import org.fun.game.tetris.CommandLine;
+import org.fun.game.tetris.Engine;
+import org.fun.game.tetris.Tetrion;
+import org.fun.game.tetris.ai.BotType;
+import org.fun.game.tetris.ai.Evaluator;
+
+/**
+ * Command line tool hosting multiplayer games, connecting scripted clients to them, and playing
+ * versus games over loopback.
+ *
+ * @author Mathieu Brunot
+ *
+ * @see GameServer
+ * @see LoadClient
+ * @see RollbackPeer
+ */
+public final class NetTool {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOGGER =
+      Logger.getLogger(NetTool.class.getName());
+
+  /**
+   * Command line option to host multiplayer games on the given port.
+   */
+  public static final String SERVE_OPTION = "--serve";
+  /**
+   * Command line option to connect scripted clients to the given multiplayer game server.
+   */
+  public static final String CONNECT_OPTION = "--connect";
+  /**
+   * Command line option to set the number of scripted clients.
+   */
+  public static final String CLIENTS_OPTION = "--clients";
+  /**
+   * Command line option to set the number of scripted spectators.
+   */
+  public static final String SPECTATORS_OPTION = "--spectators";
+  /**
+   * Command line option to set the number of rooms joined by the scripted clients.
+   */
+  public static final String ROOMS_OPTION = "--rooms";
+  /**
+   * Command line option to set the number of frames between two states sent by the server.
+   */
+  public static final String STATE_PERIOD_OPTION = "--state-period";
+  /**
+   * Command line option to play a versus game between two peers over loopback, with the given
+   * simulated latency in milliseconds.
+   */
+  public static final String VERSUS_OPTION = "--versus";
+  /**
+   * Command line option to set the simulated loss rate of the versus game datagrams, in percent.
+   */
+  public static final String LOSS_OPTION = "--loss";
+  /**
+   * Options of the tool.
+   */
+  public static final List<String> OPTIONS = Collections.unmodifiableList(
+      Arrays.asList(SERVE_OPTION, CONNECT_OPTION, CLIENTS_OPTION,
+          SPECTATORS_OPTION, ROOMS_OPTION, STATE_PERIOD_OPTION, VERSUS_OPTION,
+          LOSS_OPTION));
+
+  /**
+   * Host of the multiplayer game server if only its port is given.
+   */
+  private static final String DEFAULT_HOST = "localhost";
+  /**
+   * Number of seconds played by default.
+   */
+  private static final int DEFAULT_SECONDS = 10;
+  /**
+   * Number of percents in a rate.
+   */
+  private static final double PERCENT = 100;
+
+  /**
+   * Hidden constructor.
+   */
+  private NetTool() {}
+
+  /**
+   * Is the tool selected by the command line options?
+   *
+   * @param options the command line options
+   * @return {@code true} if games are hosted, clients connected or a versus game played
+   */
+  public static boolean isSelected(final CommandLine options) {
+    return options.has(VERSUS_OPTION) || options.has(SERVE_OPTION)
+        || options.has(CONNECT_OPTION);
+  }
+
+  /**
+   * Play a versus game, host multiplayer games or connect scripted clients, as selected by the
+   * command line options.
+   *
+   * @param options the command line options
+   * @throws CommandLine.UsageException if an option value is not valid
+   */
+  public static void run(final CommandLine options) {
+    Tetrion.Mode mode =
+        options.getEnum(CommandLine.MODE_OPTION, Tetrion.Mode.class, null);
+    BotType bot = options.getEnum(CommandLine.BOT_OPTION, BotType.class,
+        BotType.HEURISTIC);
+    int level = options.getInt(CommandLine.LEVEL_OPTION, 0);
+    long seed = options.getLong(CommandLine.SEED_OPTION, 0);
+    int seconds = options.getInt(CommandLine.SECONDS_OPTION, DEFAULT_SECONDS);
+
+    if (options.has(VERSUS_OPTION)) {
+      runVersus(mode, options.getBoard(CommandLine.BOARD_OPTION, bot != null),
+          level, seed, bot, seconds, options.getInt(VERSUS_OPTION, 0),
+          options.getDouble(LOSS_OPTION, 0) / PERCENT);
+      return;
+    }
+
+    int clients = options.getInt(CLIENTS_OPTION, 0);
+    int spectators = options.getInt(SPECTATORS_OPTION, 0);
+    LoadClient loadClient = new LoadClient(
+        options.getAddress(CONNECT_OPTION, DEFAULT_HOST));
+    loadClient.setClients(clients);
+    loadClient.setSpectators(spectators);
+    loadClient.setRooms(options.getInt(ROOMS_OPTION, 1));
+    loadClient.setSeed(seed);
+    if (bot != null) {
+      loadClient.setControllers(
+          () -> bot.create(new Evaluator(), ForkJoinPool.commonPool()));
+    }
+    if (!options.has(SERVE_OPTION)) {
+      runClients(loadClient, seconds);
+      return;
+    }
+    int port = options.getInt(SERVE_OPTION, 0);
+    GameServer server = clients + spectators > 0
+        ? new GameServer(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), port))
+        : new GameServer(port);
+    server.setLoops(options.getThreads());
+    server.setMode(mode);
+    server.setLevel(level);
+    server.setStatePeriod(options.getInt(STATE_PERIOD_OPTION, 1));
+    if (clients + spectators > 0) {
+      runLoopback(server, loadClient, seconds);
+    } else {
+      runServer(server);
+    }
+  }
+
+  /**
+   * Host multiplayer games until the JVM exits, printing the server statistics every minute.
+   *
+   * @param server the configured server
+   */
+  private static void runServer(final GameServer server) {
+    try {
+      server.start();
+    } catch (IOException ex) {
+      LOGGER.log(Level.SEVERE, "Cannot start game server", ex);
+      return;
+    }
+    System.err.println(String.format("Serving %s mode games on port %d with "
+        + "%d event loops", server.getMode(), server.getPort(),
+        server.getLoops()));
+    while (true) {
+      try {
+        Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+      System.err.println(server);
+    }
+  }
+
+  /**
+   * Host multiplayer games for scripted clients playing over loopback, and print the server and
+   * clients statistics.
+   *
+   * @param server the configured server
+   * @param clients the configured clients, connected to the port of the server
+   * @param seconds the number of seconds played
+   */
+  private static void runLoopback(final GameServer server,
+      final LoadClient clients, final int seconds) {
+    try {
+      server.start();
+    } catch (IOException ex) {
+      LOGGER.log(Level.SEVERE, "Cannot start game server", ex);
+      return;
+    }
+    try {
+      clients.setAddress(new InetSocketAddress(
+          InetAddress.getLoopbackAddress(), server.getPort()));
+      runClients(clients, seconds);
+      System.err.println(server);
+    } finally {
+      try {
+        server.close();
+      } catch (IOException ex) {
+        LOGGER.log(Level.SEVERE, "Cannot stop game server", ex);
+      }
+    }
+  }
+
+  /**
+   * Connect scripted clients to a multiplayer game server, and print their statistics.
+   *
+   * @param clients the configured clients
+   * @param seconds the number of seconds played
+   */
+  private static void runClients(final LoadClient clients,
+      final int seconds) {
+    long start = System.nanoTime();
+    try {
+      clients.run(TimeUnit.SECONDS.toMillis(seconds));
+    } catch (IOException ex) {
+      LOGGER.log(Level.SEVERE, "Cannot connect clients", ex);
+      return;
+    }
+    double elapsed = (System.nanoTime() - start) / 1e9;
+    System.err.println(String.format("%d of %d clients connected to %d rooms "
+        + "for %.1f s: %d games, %d over, %.0f states/s (%d keyframes, %d "
+        + "requested), %.0f inputs/s, %.1f KiB/s received",
+        clients.getConnected(), clients.getClients() + clients.getSpectators(),
+        clients.getRooms(),
+        elapsed, clients.getGames(), clients.getGamesOver(),
+        clients.getStates() / elapsed, clients.getKeyframes(),
+        clients.getKeyframesRequested(), clients.getInputsSent() / elapsed,
+        clients.getBytesReceived() / elapsed / 1024));
+    if (clients.getSpectators() > 0) {
+      System.err.println(String.format("%d spectators: %.0f watched states/s "
+          + "(%d keyframes, %d skipped)", clients.getSpectators(),
+          clients.getWatched() / elapsed, clients.getWatchedKeyframes(),
+          clients.getWatchedSkipped()));
+    }
+  }
+
+  /**
+   * Play a versus game between two peers over loopback, each one in its own thread, and print
+   * their rollbacks and whether their games ended the same.
+   *
+   * @param mode the game mode, {@code null} for the default mode
+   * @param board the playfield dimensions, {@code null} for the standard playfield
+   * @param level the start level
+   * @param seed the seed of the games
+   * @param bot the bot playing, {@code null} for random inputs
+   * @param seconds the number of seconds played
+   * @param latency the simulated latency of the datagrams, in milliseconds
+   * @param lossRate the simulated loss rate of the datagrams
+   */
+  private static void runVersus(final Tetrion.Mode mode, final Board board,
+      final int level, final long seed, final BotType bot, final int seconds,
+      final int latency, final double lossRate) {
+    long frames = (long) seconds * Engine.FRAME_PER_SECOND;
+    RollbackPeer[] peers = new RollbackPeer[2];
+    Thread[] threads = new Thread[2];
+    boolean[] confirmed = new boolean[2];
+    try {
+      for (int i = 0; i < 2; i++) {
+        RollbackSession session = new RollbackSession(i, mode);
+        session.start(level, seed, board);
+        peers[i] = new RollbackPeer(session, new InetSocketAddress(
+            InetAddress.getLoopbackAddress(), 0));
+        peers[i].setSeed(seed + i);
+        peers[i].setLatency(latency);
+        peers[i].setLossRate(lossRate);
+        if (bot != null) {
+          peers[i].setController(
+              bot.create(new Evaluator(), ForkJoinPool.commonPool()));
+        }
+      }
+      for (int i = 0; i < 2; i++) {
+        final int player = i;
+        peers[i].setRemoteAddress(peers[1 - i].getLocalAddress());
+        threads[i] = new Thread(() -> {
+          try {
+            confirmed[player] = peers[player].run(frames,
+                TimeUnit.SECONDS.toMillis(seconds * 2L + 10));
+          } catch (IOException ex) {
+            LOGGER.log(Level.SEVERE, "Versus peer failure", ex);
+          }
+        }, "tetris-versus-" + i);
+        threads[i].start();
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+    } catch (IOException ex) {
+      LOGGER.log(Level.SEVERE, "Cannot open versus peers", ex);
+      return;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return;
+    } finally {
+      for (RollbackPeer peer : peers) {
+        if (peer != null) {
+          try {
+            peer.close();
+          } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Cannot close versus peer", ex);
+          }
+        }
+      }
+    }
+    for (int i = 0; i < 2; i++) {
+      RollbackSession session = peers[i].getSession();
+      System.err.println(String.format("Peer %d: %d frames, %d rollbacks, "
+          + "%d frames resimulated, %d predicted, %d stalled, %.1f us/frame "
+          + "(max %.1f us), %d datagrams sent, %d lost, %d checksums "
+          + "matched, %d desyncs, score %d and %d, lines sent %d and %d", i,
+          session.getFrame(),
+          session.getRollbacks(), session.getFramesResimulated(),
+          session.getFramesPredicted(), session.getFramesStalled(),
+          session.getMeanTickNanos() / 1e3, session.getMaxTickNanos() / 1e3,
+          peers[i].getDatagramsSent(), peers[i].getDatagramsLost(),
+          peers[i].getChecksumsMatched(), peers[i].getDesyncs(),
+          session.getEngine(0).getScore(), session.getEngine(1).getScore(),
+          session.getEngine(0).getLinesSent(),
+          session.getEngine(1).getLinesSent()));
+    }
+    RollbackSession first = peers[0].getSession();
+    RollbackSession second = peers[1].getSession();
+    if (!confirmed[0] || !confirmed[1]) {
+      System.err.println("Versus game timed out");
+    } else if (first.getChecksum(frames) == second.getChecksum(frames)) {
+      System.err.println("Both peers ended with the same games");
+    } else {
+      System.err.println("Peers desynchronized");
+    }
+  }
+}
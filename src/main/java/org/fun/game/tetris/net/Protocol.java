@@ -0,0 +1,147 @@
+package org.fun.game.tetris.net;
+
+/**
+ * The messages exchanged between the {@link GameServer} and its clients.
+ *
+ * <p>
+ * Each message is framed by its length, on 2 bytes, followed by its type, on 1 byte, and its
+ * payload. Numbers are big-endian.
+ * </p>
+ *
+ * <pre>
+ * message   := length(2 bytes, type and payload) type payload
+ * JOIN      := room(4 bytes)                   client: play in a room, starting a new game
+ * INPUTS    := inputs(1 byte)                  client: inputs held from now on
+ * LEAVE     :=                                 client: leave the room
+ * ACK       := frames(8)                       client: state of the frame received
+ * KEYFRAME  :=                                 client: send the next state whole
+ * SPECTATE  := room(4)                         client: watch the games of a room
+ * WELCOME   := player(4) room(4) mode(1) level(4) seed(8)
+ *                                              server: the game started
+ * STATE     := engine state                    server: the state after a frame, a keyframe
+ * DELTA     := base frames(8) engine delta     server: the changes since an acknowledged state
+ * GAME_OVER := score(8) lines(4) frames(8)     server: the game is over
+ * WATCHED   := player(4) engine state          server: the state of a game watched, a keyframe
+ * WATCHED_DELTA := player(4) base frames(8) engine delta
+ *                                              server: the changes since the previous state
+ * </pre>
+ *
+ * <p>
+ * The state is the encoding of {@link org.fun.game.tetris.EngineState#writeTo(java.io.DataOutput)}
+ * and the mode the ordinal of the {@link org.fun.game.tetris.Tetrion.Mode}. Once a client
+ * acknowledges a state, the next states are sent as deltas from the last state acknowledged, see
+ * {@link org.fun.game.tetris.EngineState#writeDeltaTo(org.fun.game.tetris.EngineState,
+ * java.io.DataOutput)}: both ends keep a short history of the states sent and received. A client
+ * missing the base of a delta requests a keyframe.
+ * </p>
+ *
+ * <p>
+ * Spectators receive the same stream for each game of a room they watch: a keyframe, then deltas
+ * from the previous state of the stream. A spectator reading too slowly misses some states, and
+ * receives keyframes of every game again.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public final class Protocol {
+
+  /**
+   * Length of the message header: length and type.
+   */
+  public static final int HEADER = 3;
+  /**
+   * Length of the length of a message.
+   */
+  public static final int LENGTH = 2;
+  /**
+   * Maximum length of a message, type and payload.
+   */
+  public static final int MAX_LENGTH = 0xFFFF;
+
+  /**
+   * Client message: join a room.
+   */
+  public static final byte JOIN = 1;
+  /**
+   * Client message: inputs held.
+   */
+  public static final byte INPUTS = 2;
+  /**
+   * Client message: leave the room.
+   */
+  public static final byte LEAVE = 3;
+  /**
+   * Client message: state received.
+   */
+  public static final byte ACK = 4;
+  /**
+   * Client message: keyframe requested.
+   */
+  public static final byte KEYFRAME = 5;
+  /**
+   * Client message: watch the games of a room.
+   */
+  public static final byte SPECTATE = 6;
+  /**
+   * Server message: game started.
+   */
+  public static final byte WELCOME = 10;
+  /**
+   * Server message: state of the game.
+   */
+  public static final byte STATE = 11;
+  /**
+   * Server message: game over.
+   */
+  public static final byte GAME_OVER = 12;
+  /**
+   * Server message: changes of the state of the game.
+   */
+  public static final byte DELTA = 13;
+  /**
+   * Server message: state of a game watched.
+   */
+  public static final byte WATCHED = 14;
+  /**
+   * Server message: changes of the state of a game watched.
+   */
+  public static final byte WATCHED_DELTA = 15;
+
+  /**
+   * Length of the payload of {@link #JOIN}.
+   */
+  public static final int JOIN_LENGTH = 4;
+  /**
+   * Length of the payload of {@link #INPUTS}.
+   */
+  public static final int INPUTS_LENGTH = 1;
+  /**
+   * Length of the payload of {@link #SPECTATE}.
+   */
+  public static final int SPECTATE_LENGTH = 4;
+  /**
+   * Length of the player id of {@link #WATCHED} and {@link #WATCHED_DELTA}.
+   */
+  public static final int PLAYER_LENGTH = 4;
+  /**
+   * Length of the payload of {@link #ACK}.
+   */
+  public static final int ACK_LENGTH = 8;
+  /**
+   * Length of the base frames of {@link #DELTA}.
+   */
+  public static final int DELTA_BASE_LENGTH = 8;
+  /**
+   * Length of the payload of {@link #WELCOME}.
+   */
+  public static final int WELCOME_LENGTH = 21;
+  /**
+   * Length of the payload of {@link #GAME_OVER}.
+   */
+  public static final int GAME_OVER_LENGTH = 20;
+
+  /**
+   * Hidden constructor.
+   */
+  private Protocol() {}
+}
@@ -0,0 +1,518 @@
+package org.fun.game.tetris.net;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.fun.game.tetris.Controller;
+import org.fun.game.tetris.Engine;
+
+/**
+ * A peer of a versus game, exchanging the inputs of a {@link RollbackSession} with the remote peer
+ * over UDP.
+ *
+ * <p>
+ * Each frame, a datagram is sent to the remote peer with all the local inputs it did not
+ * acknowledge yet, so that lost datagrams need no retransmission: the next ones carry their inputs
+ * again. A datagram is made of:
+ * </p>
+ *
+ * <pre>
+ * datagram := first:long count:byte input{count} ack:long checked:long checksum:long
+ * </pre>
+ *
+ * <p>
+ * where {@code first} is the frame of the first input, {@code ack} the last remote frame whose
+ * inputs were all received, and {@code checksum} the checksum of the state of both games before
+ * the confirmed frame {@code checked}, {@code -1} if none, compared with the local one to detect
+ * desynchronizations.
+ * </p>
+ *
+ * <p>
+ * Latency and losses can be simulated on the datagrams sent, to check the rollbacks.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public final class RollbackPeer implements Closeable {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOGGER =
+      Logger.getLogger(RollbackPeer.class.getName());
+
+  /**
+   * Duration of a frame, in nanoseconds.
+   */
+  private static final long FRAME_NANOS =
+      TimeUnit.SECONDS.toNanos(1) / Engine.FRAME_PER_SECOND;
+  /**
+   * Length of a datagram without its inputs.
+   */
+  private static final int HEADER_LENGTH = Long.BYTES + Byte.BYTES
+      + Long.BYTES + Long.BYTES + Long.BYTES;
+  /**
+   * Maximum length of a datagram.
+   */
+  private static final int MAX_LENGTH = HEADER_LENGTH + RollbackSession.RING;
+  /**
+   * Number of frames datagrams are still sent once the game is over, in case the last ones were
+   * lost.
+   */
+  private static final int LINGER_FRAMES = 30;
+  /**
+   * Capacity of the ring of the datagrams delayed by the simulated latency.
+   */
+  private static final int DELAYED = 256;
+  /**
+   * Mean number of frames between two random inputs changes.
+   */
+  private static final int RANDOM_INPUTS_PERIOD = 8;
+  /**
+   * Random inputs pressed, the hard drop being pressed less often.
+   */
+  private static final int[] RANDOM_INPUTS = {Controller.NONE,
+      Controller.SHIFT_LEFT, Controller.SHIFT_RIGHT, Controller.ROTATE_LEFT,
+      Controller.ROTATE_RIGHT, Controller.SOFT_DROP, Controller.NONE,
+      Controller.SHIFT_LEFT | Controller.ROTATE_RIGHT, Controller.HARD_DROP};
+
+  /**
+   * Game session.
+   */
+  private final RollbackSession session;
+  /**
+   * Channel of the datagrams.
+   */
+  private final DatagramChannel channel;
+  /**
+   * Selector waking up on the datagrams received.
+   */
+  private final Selector selector;
+  /**
+   * Address of the remote peer.
+   */
+  private InetSocketAddress remoteAddress = null;
+  /**
+   * Controller of the local player, {@code null} for random inputs.
+   */
+  private Controller controller = null;
+  /**
+   * Generator of the random inputs and losses.
+   */
+  private SplittableRandom random = new SplittableRandom();
+  /**
+   * Simulated latency of the datagrams sent, in nanoseconds.
+   */
+  private long latency = 0;
+  /**
+   * Simulated loss rate of the datagrams sent.
+   */
+  private double lossRate = 0;
+  /**
+   * Datagrams delayed by the simulated latency.
+   */
+  private final ByteBuffer[] delayed = new ByteBuffer[DELAYED];
+  /**
+   * Times the delayed datagrams are sent.
+   */
+  private final long[] delayedUntil = new long[DELAYED];
+  /**
+   * Index of the first delayed datagram.
+   */
+  private int delayedHead = 0;
+  /**
+   * Number of delayed datagrams.
+   */
+  private int delayedSize = 0;
+  /**
+   * Buffer of the datagrams received.
+   */
+  private final ByteBuffer received = ByteBuffer.allocate(MAX_LENGTH);
+  /**
+   * Buffer of the datagram sent, when not delayed.
+   */
+  private final ByteBuffer sent = ByteBuffer.allocate(MAX_LENGTH);
+  /**
+   * Last local frame acknowledged by the remote peer.
+   */
+  private long remoteAck = -1;
+  /**
+   * Last remote confirmed frame checked, {@code -1} if none.
+   */
+  private long remoteChecked = -1;
+  /**
+   * Checksum of the last remote confirmed frame checked.
+   */
+  private long remoteChecksum = 0;
+  /**
+   * Input pressed by the random inputs.
+   */
+  private int randomInput = Controller.NONE;
+  /**
+   * Number of datagrams sent.
+   */
+  private long datagramsSent = 0;
+  /**
+   * Number of datagrams lost by the simulated losses.
+   */
+  private long datagramsLost = 0;
+  /**
+   * Number of datagrams received.
+   */
+  private long datagramsReceived = 0;
+  /**
+   * Number of checksums matching the remote ones.
+   */
+  private long checksumsMatched = 0;
+  /**
+   * Number of checksums not matching the remote ones.
+   */
+  private long desyncs = 0;
+
+  /**
+   * Create a peer, bound to a local address.
+   *
+   * @param gameSession the game session
+   * @param localAddress the local address
+   * @throws IOException if the address cannot be bound
+   */
+  public RollbackPeer(final RollbackSession gameSession,
+      final InetSocketAddress localAddress) throws IOException {
+    this.session = gameSession;
+    this.channel = DatagramChannel.open();
+    try {
+      channel.bind(localAddress);
+      channel.configureBlocking(false);
+      this.selector = Selector.open();
+      channel.register(selector, SelectionKey.OP_READ);
+    } catch (IOException ex) {
+      channel.close();
+      throw ex;
+    }
+  }
+
+  /**
+   * Get the game session.
+   *
+   * @return the game session
+   */
+  public RollbackSession getSession() {
+    return session;
+  }
+
+  /**
+   * Get the local address bound.
+   *
+   * @return the local address
+   * @throws IOException if the channel is closed
+   */
+  public InetSocketAddress getLocalAddress() throws IOException {
+    return (InetSocketAddress) channel.getLocalAddress();
+  }
+
+  /**
+   * Set the address of the remote peer.
+   *
+   * @param address the address of the remote peer
+   */
+  public void setRemoteAddress(final InetSocketAddress address) {
+    this.remoteAddress = address;
+  }
+
+  /**
+   * Set the controller of the local player, polled with the local engine of the session.
+   *
+   * @param localController the controller, {@code null} for random inputs
+   */
+  public void setController(final Controller localController) {
+    this.controller = localController;
+  }
+
+  /**
+   * Set the seed of the random inputs and losses.
+   *
+   * @param seed the seed
+   */
+  public void setSeed(final long seed) {
+    this.random = new SplittableRandom(seed);
+  }
+
+  /**
+   * Set the simulated latency of the datagrams sent.
+   *
+   * @param millis the latency, in milliseconds
+   */
+  public void setLatency(final int millis) {
+    this.latency = TimeUnit.MILLISECONDS.toNanos(Math.max(0, millis));
+  }
+
+  /**
+   * Set the simulated loss rate of the datagrams sent.
+   *
+   * @param rate the rate of datagrams lost, between {@code 0} and {@code 1}
+   */
+  public void setLossRate(final double rate) {
+    this.lossRate = rate;
+  }
+
+  // #########################################################################
+  /**
+   * Play the game up to a frame, at the frame rate, then wait for the remote inputs confirming it.
+   *
+   * @param frames the number of frames played
+   * @param timeoutMillis the maximum duration, in milliseconds
+   * @return {@code true} if all the frames played are confirmed, {@code false} if timed out
+   * @throws IOException if the datagrams cannot be exchanged
+   */
+  public boolean run(final long frames, final long timeoutMillis)
+      throws IOException {
+    long deadline = System.nanoTime()
+        + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    long nextFrame = System.nanoTime();
+    long linger = LINGER_FRAMES;
+    while (linger > 0) {
+      long now = System.nanoTime();
+      if (now - deadline >= 0) {
+        return false;
+      }
+      long wait = Math.min(nextFrame, delayedSize == 0 ? nextFrame
+          : delayedUntil[delayedHead]) - now;
+      if (wait > 0) {
+        selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)));
+        selector.selectedKeys().clear();
+      }
+      receive();
+      now = System.nanoTime();
+      flushDelayed(now);
+      if (now - nextFrame < 0) {
+        continue;
+      }
+      nextFrame = Math.max(nextFrame + FRAME_NANOS, now - FRAME_NANOS);
+      if (session.getFrame() < frames) {
+        // Refused if too far ahead, the local input being polled again
+        session.advance(session.canAdvance() ? nextInput() : Controller.NONE);
+      } else {
+        session.synchronize();
+      }
+      check();
+      send(now);
+      if (session.getConfirmedFrame() >= frames && remoteAck >= frames - 1) {
+        linger--;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Get the next local input.
+   *
+   * @return the bit mask of the inputs
+   */
+  private int nextInput() {
+    if (controller != null) {
+      return controller.poll(
+          session.getEngine(session.getLocalPlayer()));
+    }
+    if (random.nextInt(RANDOM_INPUTS_PERIOD) == 0) {
+      randomInput = RANDOM_INPUTS[random.nextInt(RANDOM_INPUTS.length)];
+    }
+    return randomInput;
+  }
+
+  /**
+   * Receive the datagrams of the remote peer.
+   *
+   * @throws IOException if the datagrams cannot be received
+   */
+  private void receive() throws IOException {
+    while (true) {
+      received.clear();
+      if (channel.receive(received) == null) {
+        return;
+      }
+      received.flip();
+      if (received.remaining() < HEADER_LENGTH) {
+        LOGGER.log(Level.FINE, "Datagram too short: {0}",
+            received.remaining());
+        continue;
+      }
+      datagramsReceived++;
+      long first = received.getLong();
+      int count = received.get() & 0xFF;
+      if (received.remaining() != count + HEADER_LENGTH - Long.BYTES
+          - Byte.BYTES) {
+        LOGGER.log(Level.FINE, "Invalid datagram of {0} inputs", count);
+        continue;
+      }
+      for (int i = 0; i < count; i++) {
+        session.addRemoteInput(first + i, received.get());
+      }
+      remoteAck = Math.max(remoteAck, received.getLong());
+      long checked = received.getLong();
+      long checksum = received.getLong();
+      if (checked > remoteChecked) {
+        remoteChecked = checked;
+        remoteChecksum = checksum;
+      }
+    }
+  }
+
+  /**
+   * Compare the last remote checksum received with the local one, once confirmed.
+   */
+  private void check() {
+    if (remoteChecked < 0 || !session.hasChecksum(remoteChecked)) {
+      return;
+    }
+    if (session.getChecksum(remoteChecked) == remoteChecksum) {
+      checksumsMatched++;
+    } else {
+      desyncs++;
+      LOGGER.log(Level.WARNING, "Desynchronized on frame {0}",
+          remoteChecked);
+    }
+    remoteChecked = -1;
+  }
+
+  /**
+   * Send the local inputs not acknowledged yet, possibly delayed or lost.
+   *
+   * @param now the current time, in nanoseconds
+   * @throws IOException if the datagram cannot be sent
+   */
+  private void send(final long now) throws IOException {
+    ByteBuffer datagram = sent;
+    if (latency > 0) {
+      if (delayedSize == DELAYED) {
+        datagramsLost++;
+        return;
+      }
+      int index = (delayedHead + delayedSize++) % DELAYED;
+      if (delayed[index] == null) {
+        delayed[index] = ByteBuffer.allocate(MAX_LENGTH);
+      }
+      datagram = delayed[index];
+      delayedUntil[index] = now + latency;
+    }
+    long last = session.getLocalFrame();
+    long first = Math.max(remoteAck + 1, last - RollbackSession.RING + 1);
+    int count = (int) Math.max(0, last - first + 1);
+    datagram.clear();
+    datagram.putLong(first);
+    datagram.put((byte) count);
+    for (long f = first; f <= last; f++) {
+      datagram.put((byte) session.getLocalInput(f));
+    }
+    datagram.putLong(session.getRemoteFrame());
+    long checked = session.getConfirmedFrame();
+    if (session.hasChecksum(checked)) {
+      datagram.putLong(checked);
+      datagram.putLong(session.getChecksum(checked));
+    } else {
+      datagram.putLong(-1);
+      datagram.putLong(0);
+    }
+    datagram.flip();
+    if (latency == 0) {
+      transmit(datagram);
+    }
+  }
+
+  /**
+   * Send the delayed datagrams whose time has come.
+   *
+   * @param now the current time, in nanoseconds
+   * @throws IOException if the datagrams cannot be sent
+   */
+  private void flushDelayed(final long now) throws IOException {
+    while (delayedSize > 0 && now - delayedUntil[delayedHead] >= 0) {
+      transmit(delayed[delayedHead]);
+      delayedHead = (delayedHead + 1) % DELAYED;
+      delayedSize--;
+    }
+  }
+
+  /**
+   * Send a datagram to the remote peer, unless lost by the simulated losses.
+   *
+   * @param datagram the datagram
+   * @throws IOException if the datagram cannot be sent
+   */
+  private void transmit(final ByteBuffer datagram) throws IOException {
+    if (lossRate > 0 && random.nextDouble() < lossRate) {
+      datagramsLost++;
+      return;
+    }
+    channel.send(datagram, remoteAddress);
+    datagramsSent++;
+  }
+
+  @Override
+  public void close() throws IOException {
+    selector.close();
+    channel.close();
+  }
+
+  // #########################################################################
+  /**
+   * Get the number of datagrams sent.
+   *
+   * @return the number of datagrams
+   */
+  public long getDatagramsSent() {
+    return datagramsSent;
+  }
+
+  /**
+   * Get the number of datagrams lost by the simulated losses.
+   *
+   * @return the number of datagrams
+   */
+  public long getDatagramsLost() {
+    return datagramsLost;
+  }
+
+  /**
+   * Get the number of datagrams received.
+   *
+   * @return the number of datagrams
+   */
+  public long getDatagramsReceived() {
+    return datagramsReceived;
+  }
+
+  /**
+   * Get the number of checksums matching the remote ones.
+   *
+   * @return the number of checksums
+   */
+  public long getChecksumsMatched() {
+    return checksumsMatched;
+  }
+
+  /**
+   * Get the number of checksums not matching the remote ones.
+   *
+   * @return the number of desynchronizations
+   */
+  public long getDesyncs() {
+    return desyncs;
+  }
+
+  @Override
+  public String toString() {
+    return "RollbackPeer [session=" + session + ", datagramsSent="
+        + datagramsSent + ", datagramsLost=" + datagramsLost
+        + ", datagramsReceived=" + datagramsReceived + ", checksumsMatched="
+        + checksumsMatched + ", desyncs=" + desyncs + "]";
+  }
+}
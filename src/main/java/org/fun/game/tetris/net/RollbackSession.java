@@ -0,0 +1,490 @@
+package org.fun.game.tetris.net;
+
+import java.util.Arrays;
+
+import org.fun.game.tetris.Board;
+import org.fun.game.tetris.Controller;
+import org.fun.game.tetris.Engine;
+import org.fun.game.tetris.EngineState;
+import org.fun.game.tetris.Tetrion;
+
+/**
+ * A versus game between two peers, predicting the inputs of the remote player and rolling back
+ * when they were mispredicted.
+ *
+ * <p>
+ * Both peers compute both games, on their own engines started with the same seed: the headless
+ * {@link Engine} being deterministic, the same inputs give the same frames on both peers. The local
+ * inputs are applied at once, without waiting for the remote ones: these are predicted to stay the
+ * same as the last ones received. The state of both engines is saved before each frame into a
+ * ring of snapshots allocated once, so that when a remote input received for a past frame differs
+ * from the predicted one, the engines are restored to that frame and the frames computed again up
+ * to the current one.
+ * </p>
+ *
+ * <p>
+ * The lines of garbage sent by a player are added to the garbage pending of the other one as soon
+ * as sent, the garbage being part of the states saved, so that the rollbacks compute it again.
+ * </p>
+ *
+ * <p>
+ * The local player may not run ahead of the remote inputs received by more than
+ * {@link #MAX_PREDICTION} frames: {@link #advance(int)} refuses to compute further frames until
+ * more remote inputs are received. A checksum of the state of both games is kept for each frame
+ * whose inputs are all confirmed, to be compared with the remote ones to detect desynchronizations.
+ * </p>
+ *
+ * <p>
+ * A session is not thread safe: it is meant to be used by the thread exchanging the inputs.
+ * </p>
+ *
+ * @see RollbackPeer
+ *
+ * @author Mathieu Brunot
+ */
+public final class RollbackSession {
+
+  /**
+   * Maximum number of frames computed ahead of the last remote input received.
+   */
+  public static final int MAX_PREDICTION = 8;
+  /**
+   * Number of frames of the rings of inputs and snapshots: the local inputs not acknowledged yet
+   * by the remote peer can be up to twice the maximum prediction.
+   */
+  static final int RING = 32;
+  /**
+   * Mask of the frame indices in the rings.
+   */
+  private static final int MASK = RING - 1;
+
+  /**
+   * Index of the local player, {@code 0} or {@code 1}.
+   */
+  private final int local;
+  /**
+   * Index of the remote player.
+   */
+  private final int remote;
+  /**
+   * Engines of both players.
+   */
+  private final Engine[] engines = new Engine[2];
+  /**
+   * Inputs of both players applied on the current frame.
+   */
+  private final int[] current = new int[2];
+  /**
+   * Inputs of both players, by frame: predicted ones for the remote player beyond
+   * {@link #remoteFrame}.
+   */
+  private final int[][] inputs = new int[2][RING];
+  /**
+   * Snapshots of both engines before each frame.
+   */
+  private final EngineState[][] snapshots = new EngineState[2][RING];
+  /**
+   * Checksums of both games before each frame.
+   */
+  private final long[] checksums = new long[RING];
+  /**
+   * Next frame to compute.
+   */
+  private long frame = 0;
+  /**
+   * Last frame of the local inputs.
+   */
+  private long localFrame = -1;
+  /**
+   * Last frame of the remote inputs received, all the previous ones being received too.
+   */
+  private long remoteFrame = -1;
+  /**
+   * First frame computed with a mispredicted remote input, {@link Long#MAX_VALUE} if none.
+   */
+  private long rollbackFrame = Long.MAX_VALUE;
+  /**
+   * Number of rollbacks.
+   */
+  private long rollbacks = 0;
+  /**
+   * Number of frames computed again after rollbacks.
+   */
+  private long framesResimulated = 0;
+  /**
+   * Number of frames computed ahead of the remote inputs.
+   */
+  private long framesPredicted = 0;
+  /**
+   * Number of frames refused, too far ahead of the remote inputs.
+   */
+  private long framesStalled = 0;
+  /**
+   * Total nanoseconds spent computing the frames, rollbacks included.
+   */
+  private long tickNanos = 0;
+  /**
+   * Most nanoseconds spent computing a single frame, rollback included.
+   */
+  private long maxTickNanos = 0;
+
+  /**
+   * Create a versus game session.
+   *
+   * @param localPlayer the index of the local player, {@code 0} or {@code 1}, the other one being
+   *        the index of the remote player
+   * @param mode the game mode of both players, {@code null} for the default mode
+   */
+  public RollbackSession(final int localPlayer, final Tetrion.Mode mode) {
+    if (localPlayer != 0 && localPlayer != 1) {
+      throw new IllegalArgumentException(
+          "Invalid local player: " + localPlayer);
+    }
+    this.local = localPlayer;
+    this.remote = 1 - localPlayer;
+    for (int i = 0; i < 2; i++) {
+      final int player = i;
+      engines[i] = new Engine();
+      engines[i].setMode(mode);
+      engines[i].setController(engine -> current[player]);
+      engines[i].addListener(new Engine.Listener() {
+        @Override
+        public void linesSent(final Engine engine, final int sentLines) {
+          engines[1 - player].addGarbage(sentLines);
+        }
+      });
+      for (int j = 0; j < RING; j++) {
+        snapshots[i][j] = new EngineState();
+      }
+    }
+  }
+
+  /**
+   * Start the games of both players on the standard playfield.
+   *
+   * @param level the start level
+   * @param seed the seed shared by both peers
+   */
+  public void start(final int level, final long seed) {
+    start(level, seed, Board.STANDARD);
+  }
+
+  /**
+   * Start the games of both players.
+   *
+   * @param level the start level
+   * @param seed the seed shared by both peers
+   * @param board the playfield dimensions of both players, {@link Board#STANDARD} if {@code null}
+   */
+  public void start(final int level, final long seed, final Board board) {
+    for (int i = 0; i < 2; i++) {
+      engines[i].stop();
+      engines[i].setBoard(board);
+      engines[i].start(level, seed);
+      current[i] = Controller.NONE;
+      Arrays.fill(inputs[i], Controller.NONE);
+    }
+    frame = 0;
+    localFrame = -1;
+    remoteFrame = -1;
+    rollbackFrame = Long.MAX_VALUE;
+    rollbacks = 0;
+    framesResimulated = 0;
+    framesPredicted = 0;
+    framesStalled = 0;
+    tickNanos = 0;
+    maxTickNanos = 0;
+  }
+
+  // #########################################################################
+  /**
+   * Get the index of the local player.
+   *
+   * @return the index of the local player
+   */
+  public int getLocalPlayer() {
+    return local;
+  }
+
+  /**
+   * Get the engine of a player. It must not be modified: its frames are computed by the session.
+   *
+   * @param player the index of the player
+   * @return the engine of the player
+   */
+  public Engine getEngine(final int player) {
+    return engines[player];
+  }
+
+  /**
+   * Get the next frame to compute.
+   *
+   * @return the number of frames computed
+   */
+  public long getFrame() {
+    return frame;
+  }
+
+  /**
+   * Get the last frame of the remote inputs received, all the previous ones being received too.
+   *
+   * @return the frame, {@code -1} if none
+   */
+  public long getRemoteFrame() {
+    return remoteFrame;
+  }
+
+  /**
+   * Get the last frame whose state is confirmed, computed from the inputs received of all the
+   * previous frames.
+   *
+   * @return the frame
+   */
+  public long getConfirmedFrame() {
+    return Math.min(Math.min(frame, remoteFrame + 1), rollbackFrame);
+  }
+
+  /**
+   * Get the local input of a frame not acknowledged yet by the remote peer.
+   *
+   * @param inputFrame the frame, at most {@link #RING} frames old
+   * @return the bit mask of the inputs
+   */
+  public int getLocalInput(final long inputFrame) {
+    return inputs[local][(int) inputFrame & MASK];
+  }
+
+  /**
+   * Get the checksum of the state of both games before a frame.
+   *
+   * @param checkedFrame the frame, confirmed and less than {@link #RING} frames old
+   * @return the checksum
+   * @throws IllegalArgumentException if the frame is not available
+   */
+  public long getChecksum(final long checkedFrame) {
+    if (!hasChecksum(checkedFrame)) {
+      throw new IllegalArgumentException(
+          "Checksum not available: " + checkedFrame);
+    }
+    return checkedFrame == frame ? checksum(frame)
+        : checksums[(int) checkedFrame & MASK];
+  }
+
+  /**
+   * Is the checksum of the state before a frame available?
+   *
+   * @param checkedFrame the frame
+   * @return {@code true} if the frame is confirmed and less than {@link #RING} frames old
+   */
+  public boolean hasChecksum(final long checkedFrame) {
+    return checkedFrame >= 0 && checkedFrame <= getConfirmedFrame()
+        && checkedFrame > frame - RING;
+  }
+
+  /**
+   * Is the game over? A versus game is over when one of the players tops out.
+   *
+   * @return {@code true} if one of the games is over
+   */
+  public boolean isOver() {
+    return !engines[0].isStarted() || !engines[1].isStarted();
+  }
+
+  // #########################################################################
+  /**
+   * Receive a remote input. Inputs already received are ignored, as well as the ones received
+   * ahead of a missing one, expected to be sent again.
+   *
+   * @param inputFrame the frame of the input
+   * @param input the bit mask of the inputs
+   * @return {@code true} if the input was not received yet
+   */
+  public boolean addRemoteInput(final long inputFrame, final int input) {
+    if (inputFrame != remoteFrame + 1 || inputFrame >= frame + RING) {
+      return false;
+    }
+    int index = (int) inputFrame & MASK;
+    if (inputFrame < frame && inputs[remote][index] != input) {
+      rollbackFrame = Math.min(rollbackFrame, inputFrame);
+    }
+    inputs[remote][index] = input;
+    remoteFrame = inputFrame;
+    // Predict the following frames again from the last input received
+    for (long f = inputFrame + 1; f < frame; f++) {
+      index = (int) f & MASK;
+      if (inputs[remote][index] != input) {
+        inputs[remote][index] = input;
+        rollbackFrame = Math.min(rollbackFrame, f);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Can the next frame be computed, without running too far ahead of the remote inputs?
+   *
+   * @return {@code true} if the next frame can be computed
+   */
+  public boolean canAdvance() {
+    return frame - remoteFrame <= MAX_PREDICTION;
+  }
+
+  /**
+   * Roll back to the first frame computed with a mispredicted remote input, if any, and compute
+   * the following frames again.
+   */
+  public void synchronize() {
+    if (rollbackFrame >= frame) {
+      rollbackFrame = Long.MAX_VALUE;
+      return;
+    }
+    long f = rollbackFrame;
+    rollbackFrame = Long.MAX_VALUE;
+    rollbacks++;
+    framesResimulated += frame - f;
+    int index = (int) f & MASK;
+    for (int i = 0; i < 2; i++) {
+      engines[i].restoreState(snapshots[i][index]);
+    }
+    for (; f < frame; f++) {
+      simulate(f, false);
+    }
+  }
+
+  /**
+   * Compute the next frame with a local input, the remote one being predicted if not received yet.
+   *
+   * @param input the bit mask of the local inputs
+   * @return {@code true} if the frame was computed, {@code false} if too far ahead of the remote
+   *         inputs
+   */
+  public boolean advance(final int input) {
+    long start = System.nanoTime();
+    synchronize();
+    if (!canAdvance()) {
+      framesStalled++;
+      return false;
+    }
+    int index = (int) frame & MASK;
+    inputs[local][index] = input;
+    localFrame = frame;
+    if (frame > remoteFrame) {
+      framesPredicted++;
+      inputs[remote][index] =
+          frame == 0 ? Controller.NONE : inputs[remote][(int) (frame - 1) & MASK];
+    }
+    simulate(frame, true);
+    frame++;
+    long elapsed = System.nanoTime() - start;
+    tickNanos += elapsed;
+    maxTickNanos = Math.max(maxTickNanos, elapsed);
+    return true;
+  }
+
+  /**
+   * Save the state before a frame and compute it.
+   *
+   * @param simulated the frame
+   * @param fresh {@code true} if the frame was never computed
+   */
+  private void simulate(final long simulated, final boolean fresh) {
+    int index = (int) simulated & MASK;
+    for (int i = 0; i < 2; i++) {
+      engines[i].saveState(snapshots[i][index]);
+    }
+    checksums[index] = checksum(simulated);
+    for (int i = 0; i < 2; i++) {
+      current[i] = inputs[i][index];
+      engines[i].tick();
+    }
+  }
+
+  /**
+   * Compute the checksum of the current state of both games.
+   *
+   * @param currentFrame the current frame
+   * @return the checksum
+   */
+  private long checksum(final long currentFrame) {
+    long checksum = currentFrame;
+    for (int i = 0; i < 2; i++) {
+      checksum = checksum * 31 + engines[i].getHash();
+      checksum = checksum * 31 + engines[i].getScore();
+      checksum = checksum * 31 + engines[i].getFrames();
+      checksum = checksum * 31 + engines[i].getPendingGarbage();
+    }
+    return checksum;
+  }
+
+  // #########################################################################
+  /**
+   * Get the last frame of the local inputs.
+   *
+   * @return the frame, {@code -1} if none
+   */
+  public long getLocalFrame() {
+    return localFrame;
+  }
+
+  /**
+   * Get the number of rollbacks.
+   *
+   * @return the number of rollbacks
+   */
+  public long getRollbacks() {
+    return rollbacks;
+  }
+
+  /**
+   * Get the number of frames computed again after rollbacks.
+   *
+   * @return the number of frames
+   */
+  public long getFramesResimulated() {
+    return framesResimulated;
+  }
+
+  /**
+   * Get the number of frames computed ahead of the remote inputs.
+   *
+   * @return the number of frames
+   */
+  public long getFramesPredicted() {
+    return framesPredicted;
+  }
+
+  /**
+   * Get the number of frames refused, too far ahead of the remote inputs.
+   *
+   * @return the number of frames
+   */
+  public long getFramesStalled() {
+    return framesStalled;
+  }
+
+  /**
+   * Get the mean nanoseconds spent computing a frame, rollbacks included.
+   *
+   * @return the nanoseconds
+   */
+  public double getMeanTickNanos() {
+    return frame == 0 ? 0 : tickNanos / (double) frame;
+  }
+
+  /**
+   * Get the most nanoseconds spent computing a single frame, rollback included.
+   *
+   * @return the nanoseconds
+   */
+  public long getMaxTickNanos() {
+    return maxTickNanos;
+  }
+
+  @Override
+  public String toString() {
+    return "RollbackSession [local=" + local + ", frame=" + frame
+        + ", remoteFrame=" + remoteFrame + ", rollbacks=" + rollbacks
+        + ", framesResimulated=" + framesResimulated + ", framesPredicted="
+        + framesPredicted + ", framesStalled=" + framesStalled + "]";
+  }
+}
@@ -0,0 +1,179 @@
+package org.fun.game.tetris.net;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.fun.game.tetris.Engine;
+
+/**
+ * A room of the {@link GameServer}, computing the games of its players.
+ *
+ * <p>
+ * Every player of a room plays its own game, on its own engine, with the same shapes: games are
+ * started with the seed of the room. The server is authoritative: the frames are computed by the
+ * room, from the inputs received, and their states sent to the players. A room is owned by a
+ * single event loop, computing a frame of every game of the room on each of its ticks.
+ * </p>
+ *
+ * <p>
+ * Spectators watch every game of the room: the states of each game are encoded once per frame,
+ * and the same buffer queued to every spectator.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+final class Room {
+
+  /**
+   * Id of the room.
+   */
+  private final int id;
+  /**
+   * Seed of the games of the room.
+   */
+  private final long seed;
+  /**
+   * The event loop owning the room.
+   */
+  private final EventLoop loop;
+  /**
+   * Players of the room.
+   */
+  private final List<Connection> players = new ArrayList<>();
+  /**
+   * Spectators of the room.
+   */
+  private final List<Connection> spectators = new ArrayList<>();
+
+  /**
+   * Create a room.
+   *
+   * @param roomId the id of the room
+   * @param gamesSeed the seed of the games of the room
+   * @param eventLoop the event loop owning the room
+   */
+  Room(final int roomId, final long gamesSeed, final EventLoop eventLoop) {
+    this.id = roomId;
+    this.seed = gamesSeed;
+    this.loop = eventLoop;
+  }
+
+  /**
+   * Get the id of the room.
+   *
+   * @return the id
+   */
+  int getId() {
+    return id;
+  }
+
+  /**
+   * Get the seed of the games of the room.
+   *
+   * @return the seed
+   */
+  long getSeed() {
+    return seed;
+  }
+
+  /**
+   * Is the room empty?
+   *
+   * @return {@code true} if no player is in the room
+   */
+  boolean isEmpty() {
+    return players.isEmpty() && spectators.isEmpty();
+  }
+
+  /**
+   * Get the number of players.
+   *
+   * @return the number of players
+   */
+  int size() {
+    return players.size();
+  }
+
+  /**
+   * Add a player to the room and start its game.
+   *
+   * @param player the player
+   */
+  void join(final Connection player) {
+    if (player.getRoom() != this) {
+      players.add(player);
+      player.setRoom(this);
+    }
+    GameServer server = loop.getServer();
+    Engine engine = player.getEngine();
+    engine.setMode(server.getMode());
+    player.resetInputs();
+    player.resetStates();
+    player.resetWatched();
+    engine.start(server.getLevel(), seed);
+    player.setPlaying(true);
+    loop.sendWelcome(player);
+  }
+
+  /**
+   * Add a spectator to the room, receiving keyframes of every game first.
+   *
+   * @param spectator the spectator
+   */
+  void watch(final Connection spectator) {
+    spectators.add(spectator);
+    spectator.setRoom(this);
+    spectator.setSpectator(true);
+  }
+
+  /**
+   * Remove a player or spectator from the room.
+   *
+   * @param player the player or spectator
+   */
+  void leave(final Connection player) {
+    if (players.remove(player)) {
+      player.setRoom(null);
+      player.setPlaying(false);
+      player.getEngine().stop();
+      player.resetWatched();
+    } else if (spectators.remove(player)) {
+      player.setRoom(null);
+      player.setSpectator(false);
+      player.dropShared();
+    }
+  }
+
+  /**
+   * Compute a frame of the games in progress, and send their states.
+   *
+   * @param sendStates {@code true} to send the states of this frame
+   */
+  void tick(final boolean sendStates) {
+    if (sendStates) {
+      for (int i = 0, n = spectators.size(); i < n; i++) {
+        spectators.get(i).startWatchedFrame();
+      }
+    }
+    for (int i = 0, n = players.size(); i < n; i++) {
+      Connection player = players.get(i);
+      if (!player.isPlaying()) {
+        continue;
+      }
+      Engine engine = player.getEngine();
+      engine.tick();
+      if (!engine.isStarted()) {
+        player.setPlaying(false);
+        loop.sendState(player);
+        loop.sendGameOver(player);
+      } else if (sendStates) {
+        loop.sendState(player);
+      } else {
+        continue;
+      }
+      if (!spectators.isEmpty()) {
+        loop.sendWatched(player, spectators);
+      }
+    }
+  }
+}
@@ -0,0 +1,83 @@
+package org.fun.game.tetris.net;
+
+import org.fun.game.tetris.EngineState;
+
+/**
+ * A ring of the last states of a game sent or received, the bases of the deltas.
+ *
+ * <p>
+ * The states are allocated once, and overwritten as the game goes on: only the last states, up to
+ * the capacity of the ring, can be found.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+final class StateHistory {
+
+  /**
+   * Number of states kept.
+   */
+  static final int CAPACITY = 16;
+
+  /**
+   * The states.
+   */
+  private final EngineState[] states = new EngineState[CAPACITY];
+  /**
+   * Are the states valid?
+   */
+  private final boolean[] valid = new boolean[CAPACITY];
+  /**
+   * Index of the next state overwritten.
+   */
+  private int next = 0;
+
+  /**
+   * Create a history.
+   */
+  StateHistory() {
+    for (int i = 0; i < CAPACITY; i++) {
+      states[i] = new EngineState();
+    }
+  }
+
+  /**
+   * Get the state of a frame.
+   *
+   * @param frames the frame
+   * @param seed the seed of the game
+   * @return the state, {@code null} if no longer or never kept
+   */
+  EngineState get(final long frames, final long seed) {
+    for (int i = 0; i < CAPACITY; i++) {
+      EngineState state = states[i];
+      if (valid[i] && state.getFrames() == frames
+          && state.getSeed() == seed) {
+        return state;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Get the state to overwrite with a new state, replacing the oldest state kept.
+   *
+   * @return the state, to overwrite
+   */
+  EngineState add() {
+    int i = next;
+    next = (next + 1) % CAPACITY;
+    valid[i] = true;
+    return states[i];
+  }
+
+  /**
+   * Forget the states kept.
+   */
+  void clear() {
+    for (int i = 0; i < CAPACITY; i++) {
+      valid[i] = false;
+    }
+    next = 0;
+  }
+}
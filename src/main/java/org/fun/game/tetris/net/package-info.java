@@ -0,0 +1,4 @@
+/**
+ * Tetris multiplayer game server and clients, and peer-to-peer versus games.
+ */
+package org.fun.game.tetris.net;
@@ -0,0 +1,49 @@
+package org.fun.game.tetris.replay;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An input stream reading the remaining bytes of a buffer, without copying them first.
+ *
+ * @author Mathieu Brunot
+ */
+class ByteBufferInputStream extends InputStream {
+
+  /**
+   * The buffer read.
+   */
+  private final ByteBuffer buffer;
+
+  /**
+   * Create an input stream.
+   *
+   * @param source the buffer read, whose position is moved by the reads
+   */
+  ByteBufferInputStream(final ByteBuffer source) {
+    this.buffer = source;
+  }
+
+  @Override
+  public int read() {
+    return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+  }
+
+  @Override
+  public int read(final byte[] b, final int off, final int len) {
+    if (len == 0) {
+      return 0;
+    }
+    if (!buffer.hasRemaining()) {
+      return -1;
+    }
+    int n = Math.min(len, buffer.remaining());
+    buffer.get(b, off, n);
+    return n;
+  }
+
+  @Override
+  public int available() {
+    return buffer.remaining();
+  }
+}
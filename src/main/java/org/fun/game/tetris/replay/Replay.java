@@ -0,0 +1,313 @@
+package org.fun.game.tetris.replay;
+
+import java.util.Arrays;
+
+import org.fun.game.tetris.Board;
+import org.fun.game.tetris.Controller;
+import org.fun.game.tetris.Tetrion;
+
+/**
+ * A recorded game, as read by a {@link ReplayReader}.
+ *
+ * <p>
+ * A replay holds what is needed to compute the frames of the game again, i.e. its start level, seed
+ * and mode and the frames where the inputs changed, and the state of the game after its last frame
+ * to check the computed frames against. It also holds the keyframes of the game, to compute its
+ * frames from a keyframe rather than from its first frame.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public final class Replay {
+
+  /**
+   * Seed of the game.
+   */
+  private final long seed;
+  /**
+   * Mode of the game.
+   */
+  private final Tetrion.Mode mode;
+  /**
+   * Start level of the game.
+   */
+  private final int level;
+  /**
+   * Playfield dimensions of the game.
+   */
+  private final Board board;
+  /**
+   * Frames of the inputs changes, in increasing order.
+   */
+  private final long[] changeFrames;
+  /**
+   * Inputs of each change.
+   */
+  private final int[] changeInputs;
+  /**
+   * Frames of the keyframes, in increasing order.
+   */
+  private final long[] keyframeFrames;
+  /**
+   * Index of the first change after each keyframe.
+   */
+  private final int[] keyframeChanges;
+  /**
+   * Encoded engine state of each keyframe.
+   */
+  private final byte[][] keyframeStates;
+  /**
+   * Number of frames of the game.
+   */
+  private final long frames;
+  /**
+   * Score after the last frame.
+   */
+  private final long score;
+  /**
+   * Lines cleared after the last frame.
+   */
+  private final int lines;
+  /**
+   * Board hash after the last frame.
+   */
+  private final long boardHash;
+  /**
+   * Was the game stopped, rather than its recording interrupted?
+   */
+  private final boolean over;
+
+  /**
+   * Create a replay.
+   *
+   * @param gameSeed the seed of the game
+   * @param gameMode the mode of the game
+   * @param startLevel the start level of the game
+   * @param playfield the playfield dimensions of the game
+   * @param frameOfChanges the frames of the inputs changes, in increasing order
+   * @param inputsOfChanges the inputs of each change
+   * @param frameOfKeyframes the frames of the keyframes, in increasing order
+   * @param changesOfKeyframes the index of the first change after each keyframe
+   * @param statesOfKeyframes the encoded engine state of each keyframe
+   * @param numberOfFrames the number of frames of the game
+   * @param finalScore the score after the last frame
+   * @param finalLines the lines cleared after the last frame
+   * @param finalBoardHash the board hash after the last frame
+   * @param stopped {@code true} if the game was stopped, {@code false} if its recording was
+   *        interrupted
+   * @throws IllegalArgumentException if there is not one inputs per change or one change and state
+   *         per keyframe
+   */
+  public Replay(final long gameSeed, final Tetrion.Mode gameMode,
+      final int startLevel, final Board playfield, final long[] frameOfChanges,
+      final int[] inputsOfChanges, final long[] frameOfKeyframes,
+      final int[] changesOfKeyframes, final byte[][] statesOfKeyframes,
+      final long numberOfFrames,
+      final long finalScore, final int finalLines, final long finalBoardHash,
+      final boolean stopped) {
+    if (frameOfChanges.length != inputsOfChanges.length) {
+      throw new IllegalArgumentException("Expected one inputs per change");
+    }
+    if (frameOfKeyframes.length != changesOfKeyframes.length
+        || frameOfKeyframes.length != statesOfKeyframes.length) {
+      throw new IllegalArgumentException(
+          "Expected one change and state per keyframe");
+    }
+    this.seed = gameSeed;
+    this.mode = gameMode;
+    this.level = startLevel;
+    this.board = playfield;
+    this.changeFrames = frameOfChanges;
+    this.changeInputs = inputsOfChanges;
+    this.keyframeFrames = frameOfKeyframes;
+    this.keyframeChanges = changesOfKeyframes;
+    this.keyframeStates = statesOfKeyframes;
+    this.frames = numberOfFrames;
+    this.score = finalScore;
+    this.lines = finalLines;
+    this.boardHash = finalBoardHash;
+    this.over = stopped;
+  }
+
+  /**
+   * Get the seed of the game.
+   *
+   * @return the seed
+   */
+  public long getSeed() {
+    return seed;
+  }
+
+  /**
+   * Get the mode of the game.
+   *
+   * @return the mode
+   */
+  public Tetrion.Mode getMode() {
+    return mode;
+  }
+
+  /**
+   * Get the start level of the game.
+   *
+   * @return the start level
+   */
+  public int getLevel() {
+    return level;
+  }
+
+  /**
+   * Get the playfield dimensions of the game.
+   *
+   * @return the playfield dimensions
+   */
+  public Board getBoard() {
+    return board;
+  }
+
+  /**
+   * Get the number of inputs changes.
+   *
+   * @return the number of changes
+   */
+  public int getChanges() {
+    return changeFrames.length;
+  }
+
+  /**
+   * Get the frame of an inputs change.
+   *
+   * @param change the index of the change
+   * @return the frame from which the inputs of the change are pressed
+   */
+  public long getChangeFrame(final int change) {
+    return changeFrames[change];
+  }
+
+  /**
+   * Get the inputs of a change.
+   *
+   * @param change the index of the change
+   * @return the bit mask of the {@link Controller} inputs pressed from the frame of the change
+   */
+  public int getChangeInputs(final int change) {
+    return changeInputs[change];
+  }
+
+  /**
+   * Get the index of the last inputs change at or before a frame.
+   *
+   * @param frame the frame
+   * @return the index of the change, {@code -1} if none
+   */
+  public int changeAt(final long frame) {
+    int index = Arrays.binarySearch(changeFrames, frame);
+    return index >= 0 ? index : -index - 2;
+  }
+
+  /**
+   * Get the number of keyframes.
+   *
+   * @return the number of keyframes
+   */
+  public int getKeyframes() {
+    return keyframeFrames.length;
+  }
+
+  /**
+   * Get the frame of a keyframe.
+   *
+   * @param keyframe the index of the keyframe
+   * @return the number of frames computed before the keyframe state
+   */
+  public long getKeyframeFrame(final int keyframe) {
+    return keyframeFrames[keyframe];
+  }
+
+  /**
+   * Get the first inputs change after a keyframe.
+   *
+   * @param keyframe the index of the keyframe
+   * @return the index of the first change after the keyframe
+   */
+  public int getKeyframeChange(final int keyframe) {
+    return keyframeChanges[keyframe];
+  }
+
+  /**
+   * Get the engine state of a keyframe.
+   *
+   * @param keyframe the index of the keyframe
+   * @return the encoded engine state, not to be modified
+   * @see org.fun.game.tetris.EngineState#readFrom(java.io.DataInput)
+   */
+  public byte[] getKeyframeState(final int keyframe) {
+    return keyframeStates[keyframe];
+  }
+
+  /**
+   * Get the index of the last keyframe at or before a frame.
+   *
+   * @param frame the frame
+   * @return the index of the keyframe, {@code -1} if none
+   */
+  public int keyframeAt(final long frame) {
+    int index = Arrays.binarySearch(keyframeFrames, frame);
+    return index >= 0 ? index : -index - 2;
+  }
+
+  /**
+   * Get the number of frames of the game.
+   *
+   * @return the number of frames
+   */
+  public long getFrames() {
+    return frames;
+  }
+
+  /**
+   * Get the score after the last frame.
+   *
+   * @return the final score
+   */
+  public long getScore() {
+    return score;
+  }
+
+  /**
+   * Get the lines cleared after the last frame.
+   *
+   * @return the final lines
+   */
+  public int getLines() {
+    return lines;
+  }
+
+  /**
+   * Get the board hash after the last frame.
+   *
+   * @return the final board hash
+   */
+  public long getBoardHash() {
+    return boardHash;
+  }
+
+  /**
+   * Was the game stopped, by a top out or by the player, rather than its recording interrupted?
+   *
+   * @return {@code true} if the game was stopped
+   */
+  public boolean isOver() {
+    return over;
+  }
+
+  @Override
+  public String toString() {
+    return "Replay [seed=" + seed + ", mode=" + mode + ", level=" + level
+        + ", board=" + board
+        + ", changes=" + changeFrames.length + ", keyframes="
+        + keyframeFrames.length + ", frames=" + frames
+        + ", score=" + score + ", lines=" + lines + ", boardHash=" + boardHash
+        + ", over=" + over + "]";
+  }
+}
@@ -0,0 +1,633 @@
+package org.fun.game.tetris.replay;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An append-only archive of many replays, read through memory-mapped files.
+ *
+ * <p>
+ * An archive is made of two files:
+ * </p>
+ * <ul>
+ * <li>the data file, a replay holding the games one after the other, which a
+ * {@link ReplayReader} can read as any other replay;</li>
+ * <li>the index file, named after the data file with an {@code .idx} extension, holding a fixed
+ * width entry per game: its id, the offset and length of its body in the data file, and its final
+ * score, lines and seed.</li>
+ * </ul>
+ *
+ * <p>
+ * Both files are mapped in memory, so that the index can be scanned without reading the bodies,
+ * and any body can be read without opening or parsing the data file. A game is appended by writing
+ * its body before its index entry, so that the index only references complete bodies; data left
+ * after the last indexed body by an interrupted append is dropped when the archive is opened. An
+ * archive opened for appends without its index, e.g. copied without it, has its index rebuilt by
+ * reading the games of the data file.
+ * </p>
+ *
+ * <p>
+ * When appending, the index is mapped ahead of its end in chunks growing geometrically, so that it
+ * is only mapped again once in a while. The entries mapped ahead are zeros, dropped when the
+ * archive is closed or opened again.
+ * </p>
+ *
+ * <p>
+ * Reads are thread-safe, appends are not.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public class ReplayArchive implements Closeable {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOGGER =
+      Logger.getLogger(ReplayArchive.class.getName());
+
+  /**
+   * Extension of the index file.
+   */
+  public static final String INDEX_EXTENSION = ".idx";
+  /**
+   * Magic number starting an index: {@code "TRPX"}.
+   */
+  public static final int INDEX_MAGIC = 0x54525058;
+  /**
+   * Length of the index header: magic number and version.
+   */
+  private static final int INDEX_HEADER = Integer.BYTES * 2;
+  /**
+   * Length of an index entry.
+   */
+  public static final int ENTRY_LENGTH = 40;
+  /**
+   * Position of the game id in an index entry.
+   */
+  private static final int ID = 0;
+  /**
+   * Position of the body offset in an index entry.
+   */
+  private static final int OFFSET = 8;
+  /**
+   * Position of the body length in an index entry.
+   */
+  private static final int LENGTH = 16;
+  /**
+   * Position of the final score in an index entry.
+   */
+  private static final int SCORE = 20;
+  /**
+   * Position of the final lines in an index entry.
+   */
+  private static final int LINES = 28;
+  /**
+   * Position of the seed in an index entry.
+   */
+  private static final int SEED = 32;
+  /**
+   * Length of the data file segments mapped at once.
+   */
+  private static final long SEGMENT_LENGTH = 1L << 30;
+  /**
+   * Minimum number of index entries mapped at once when appending.
+   */
+  private static final int MIN_MAPPED_ENTRIES = 1024;
+
+  /**
+   * Data file channel.
+   */
+  private final FileChannel data;
+  /**
+   * Index file channel.
+   */
+  private final FileChannel index;
+  /**
+   * Is the archive open for appends?
+   */
+  private final boolean writable;
+  /**
+   * Number of games.
+   */
+  private volatile int games;
+  /**
+   * Length of the data file.
+   */
+  private volatile long dataLength;
+  /**
+   * Length of the index entries written, {@code 0} until the index is checked or written.
+   */
+  private long indexEnd = 0;
+  /**
+   * Mapped index, covering at least the first {@link #games} entries.
+   */
+  private volatile MappedByteBuffer indexMap;
+  /**
+   * Mapped data file segments, each covering at most {@link #SEGMENT_LENGTH} bytes.
+   */
+  private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+  /**
+   * Open an archive.
+   *
+   * @param file the data file, the index file being next to it
+   * @param forAppends {@code true} to open the archive for appends, creating it if needed
+   * @throws IOException if the archive cannot be opened or is invalid
+   */
+  public ReplayArchive(final Path file, final boolean forAppends)
+      throws IOException {
+    this.writable = forAppends;
+    Path indexFile =
+        file.resolveSibling(file.getFileName() + INDEX_EXTENSION);
+    StandardOpenOption[] options = forAppends
+        ? new StandardOpenOption[] {StandardOpenOption.READ,
+            StandardOpenOption.WRITE, StandardOpenOption.CREATE}
+        : new StandardOpenOption[] {StandardOpenOption.READ};
+    this.data = FileChannel.open(file, options);
+    try {
+      this.index = FileChannel.open(indexFile, options);
+    } catch (IOException ex) {
+      data.close();
+      throw ex;
+    }
+
+    try {
+      if (forAppends && index.size() < INDEX_HEADER) {
+        if (data.size() == 0) {
+          initialize();
+        } else {
+          rebuildIndex();
+        }
+      }
+      recover(checkHeaders());
+    } catch (IOException ex) {
+      close();
+      throw ex;
+    }
+  }
+
+  /**
+   * Write the headers of a new archive.
+   *
+   * @throws IOException if the headers cannot be written
+   */
+  private void initialize() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ReplayFormat.writeHeader(new DataOutputStream(bytes), null);
+    data.write(ByteBuffer.wrap(bytes.toByteArray()), 0);
+    writeIndexHeader();
+  }
+
+  /**
+   * Rebuild the index from the games of the data file.
+   *
+   * <p>
+   * Games are indexed up to the end of the data file, or up to a game truncated by an interrupted
+   * append, whose data is then dropped.
+   * </p>
+   *
+   * @throws IOException if the data file cannot be read or is not a replay
+   */
+  private void rebuildIndex() throws IOException {
+    LOGGER.log(Level.WARNING, "Rebuilding replay archive index");
+    index.truncate(0);
+    writeIndexHeader();
+    // Not closed, which would close the data file
+    CountingInputStream in = new CountingInputStream(
+        new BufferedInputStream(Channels.newInputStream(data.position(0))));
+    ReplayReader reader = new ReplayReader(new DataInputStream(in), true);
+    long offset = in.getCount();
+    for (int game = 0;; game++) {
+      Replay replay;
+      try {
+        replay = reader.read();
+      } catch (IOException ex) {
+        LOGGER.log(Level.WARNING, "Replay archive game " + game + " unreadable",
+            ex);
+        break;
+      }
+      if (replay == null) {
+        break;
+      }
+      writeEntry(game, offset, (int) (in.getCount() - offset), replay);
+      offset = in.getCount();
+    }
+  }
+
+  /**
+   * Write the header of the index.
+   *
+   * @throws IOException if the header cannot be written
+   */
+  private void writeIndexHeader() throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER);
+    header.putInt(INDEX_MAGIC).putInt(ReplayFormat.VERSION).flip();
+    index.write(header, 0);
+    indexEnd = INDEX_HEADER;
+  }
+
+  /**
+   * Write the index entry of a game through the mapped index.
+   *
+   * <p>
+   * The offset is written last: the data file header coming first, no body is at offset {@code 0},
+   * so an entry mapped ahead but not written is told apart from a written one.
+   * </p>
+   *
+   * @param game the index of the game
+   * @param offset the offset of its body in the data file
+   * @param length the length of its body
+   * @param replay the game
+   * @throws IOException if the index cannot be mapped
+   */
+  private void writeEntry(final int game, final long offset, final int length,
+      final Replay replay) throws IOException {
+    int position = INDEX_HEADER + game * ENTRY_LENGTH;
+    mapIndex(position + ENTRY_LENGTH);
+    indexMap.putLong(position + ID, game).putInt(position + LENGTH, length)
+        .putLong(position + SCORE, replay.getScore())
+        .putInt(position + LINES, replay.getLines())
+        .putLong(position + SEED, replay.getSeed())
+        .putLong(position + OFFSET, offset);
+    indexEnd = position + ENTRY_LENGTH;
+  }
+
+  /**
+   * Map the index for appends up to a position, unless already mapped.
+   *
+   * <p>
+   * The mapping at least doubles each time, the index file being extended to the mapped length.
+   * </p>
+   *
+   * @param end the position that must be mapped
+   * @throws IOException if the index cannot be mapped
+   */
+  private void mapIndex(final long end) throws IOException {
+    MappedByteBuffer mapped = indexMap;
+    if (mapped != null && mapped.capacity() >= end) {
+      return;
+    }
+    long length = Math.max(end,
+        INDEX_HEADER + (long) MIN_MAPPED_ENTRIES * ENTRY_LENGTH);
+    if (mapped != null) {
+      length = Math.max(length, 2L * mapped.capacity());
+    }
+    indexMap = index.map(FileChannel.MapMode.READ_WRITE, 0,
+        Math.min(length, Integer.MAX_VALUE));
+  }
+
+  /**
+   * Check the headers of the archive.
+   *
+   * @return the length of the data file header
+   * @throws IOException if the headers cannot be read or are invalid
+   */
+  private long checkHeaders() throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER);
+    if (index.read(header, 0) != INDEX_HEADER) {
+      throw new IOException("Truncated replay archive index");
+    }
+    header.flip();
+    if (header.getInt() != INDEX_MAGIC) {
+      throw new IOException("Not a replay archive index");
+    }
+    int version = header.getInt();
+    if (version != ReplayFormat.VERSION) {
+      throw new IOException("Unsupported replay archive version " + version);
+    }
+    // The data file is a replay
+    ByteBuffer replayHeader = data.map(FileChannel.MapMode.READ_ONLY, 0,
+        Math.min(data.size(), SEGMENT_LENGTH));
+    new ReplayReader(
+        new DataInputStream(new ByteBufferInputStream(replayHeader)), true);
+    return replayHeader.position();
+  }
+
+  /**
+   * Count the indexed games and drop the data of interrupted appends.
+   *
+   * @param headerLength the length of the data file header
+   * @throws IOException if the archive cannot be read or truncated
+   */
+  private void recover(final long headerLength) throws IOException {
+    long indexLength = index.size();
+    int entries = (int) ((indexLength - INDEX_HEADER) / ENTRY_LENGTH);
+    MappedByteBuffer mapped = index.map(FileChannel.MapMode.READ_ONLY, 0,
+        INDEX_HEADER + (long) entries * ENTRY_LENGTH);
+    // Entries mapped ahead by appends not closed
+    int written = entries;
+    while (written > 0 && mapped.getLong(
+        INDEX_HEADER + (written - 1) * ENTRY_LENGTH + OFFSET) == 0) {
+      written--;
+    }
+    long end = headerLength;
+    if (written > 0) {
+      int last = INDEX_HEADER + (written - 1) * ENTRY_LENGTH;
+      end = mapped.getLong(last + OFFSET) + mapped.getInt(last + LENGTH);
+    }
+    if (end > data.size()) {
+      throw new IOException("Truncated replay archive");
+    }
+    dataLength = end;
+    games = written;
+    indexEnd = INDEX_HEADER + (long) written * ENTRY_LENGTH;
+    if (writable) {
+      if ((indexLength - INDEX_HEADER) % ENTRY_LENGTH != 0
+          || dataLength != data.size()) {
+        LOGGER.log(Level.WARNING, "Dropping interrupted replay archive append");
+      }
+      index.truncate(indexEnd);
+      data.truncate(dataLength);
+      // The index mapped by a rebuild now ends past the file
+      indexMap = null;
+      mapIndex(indexEnd);
+    } else {
+      indexMap = mapped;
+    }
+  }
+
+  // #########################################################################
+  /**
+   * Get the number of games.
+   *
+   * @return the number of games
+   */
+  public final int getGames() {
+    return games;
+  }
+
+  /**
+   * Get the id of a game.
+   *
+   * @param game the index of the game
+   * @return the id of the game
+   */
+  public final long getId(final int game) {
+    return indexMap.getLong(entry(game) + ID);
+  }
+
+  /**
+   * Get the offset of a game body in the data file.
+   *
+   * @param game the index of the game
+   * @return the offset of the body
+   */
+  public final long getOffset(final int game) {
+    return indexMap.getLong(entry(game) + OFFSET);
+  }
+
+  /**
+   * Get the length of a game body in the data file.
+   *
+   * @param game the index of the game
+   * @return the length of the body, in bytes
+   */
+  public final int getLength(final int game) {
+    return indexMap.getInt(entry(game) + LENGTH);
+  }
+
+  /**
+   * Get the final score of a game.
+   *
+   * @param game the index of the game
+   * @return the final score
+   */
+  public final long getScore(final int game) {
+    return indexMap.getLong(entry(game) + SCORE);
+  }
+
+  /**
+   * Get the final lines of a game.
+   *
+   * @param game the index of the game
+   * @return the final lines
+   */
+  public final int getLines(final int game) {
+    return indexMap.getInt(entry(game) + LINES);
+  }
+
+  /**
+   * Get the seed of a game.
+   *
+   * @param game the index of the game
+   * @return the seed
+   */
+  public final long getSeed(final int game) {
+    return indexMap.getLong(entry(game) + SEED);
+  }
+
+  /**
+   * Get the position of an index entry.
+   *
+   * @param game the index of the game
+   * @return the position of its entry in the index file
+   * @throws IndexOutOfBoundsException if there is no such game
+   */
+  private int entry(final int game) {
+    if (game < 0 || game >= games) {
+      throw new IndexOutOfBoundsException("No game " + game);
+    }
+    return INDEX_HEADER + game * ENTRY_LENGTH;
+  }
+
+  /**
+   * Get the body of a game, in the replay format.
+   *
+   * @param game the index of the game
+   * @return a read-only buffer of the body, mapped from the data file
+   * @throws IOException if the body cannot be mapped
+   */
+  public ByteBuffer getBody(final int game) throws IOException {
+    long offset = getOffset(game);
+    int length = getLength(game);
+    int segment = (int) (offset / SEGMENT_LENGTH);
+    long start = (long) segment * SEGMENT_LENGTH;
+    if (offset + length > start + SEGMENT_LENGTH) {
+      // The body spans two segments
+      return data.map(FileChannel.MapMode.READ_ONLY, offset, length);
+    }
+    ByteBuffer body = segment(segment, offset + length).duplicate();
+    body.position((int) (offset - start));
+    body.limit((int) (offset - start) + length);
+    return body.slice();
+  }
+
+  /**
+   * Get a mapped segment of the data file.
+   *
+   * @param segment the index of the segment
+   * @param end the end of the data that must be mapped
+   * @return the mapped segment
+   * @throws IOException if the segment cannot be mapped
+   */
+  private synchronized MappedByteBuffer segment(final int segment,
+      final long end) throws IOException {
+    MappedByteBuffer[] mapped = segments;
+    long start = (long) segment * SEGMENT_LENGTH;
+    if (segment < mapped.length && mapped[segment] != null
+        && start + mapped[segment].capacity() >= end) {
+      return mapped[segment];
+    }
+    if (segment >= mapped.length) {
+      MappedByteBuffer[] grown = new MappedByteBuffer[segment + 1];
+      System.arraycopy(mapped, 0, grown, 0, mapped.length);
+      mapped = grown;
+    }
+    mapped[segment] = data.map(FileChannel.MapMode.READ_ONLY, start,
+        Math.min(SEGMENT_LENGTH, dataLength - start));
+    segments = mapped;
+    return mapped[segment];
+  }
+
+  /**
+   * Read a game.
+   *
+   * @param game the index of the game
+   * @return the game
+   * @throws IOException if the game cannot be read
+   */
+  public Replay read(final int game) throws IOException {
+    return new ReplayReader(
+        new DataInputStream(new ByteBufferInputStream(getBody(game))), false)
+            .read();
+  }
+
+  // #########################################################################
+  /**
+   * Append a game.
+   *
+   * @param replay the game
+   * @return the id of the game, i.e. its index in the archive
+   * @throws IOException if the game cannot be written
+   * @throws IllegalStateException if the archive is not open for appends
+   */
+  public int append(final Replay replay) throws IOException {
+    if (!writable) {
+      throw new IllegalStateException("Replay archive opened for reading");
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ReplayFormat.writeGame(new DataOutputStream(bytes), replay);
+    ByteBuffer body = ByteBuffer.wrap(bytes.toByteArray());
+    long offset = dataLength;
+    int length = body.remaining();
+    while (body.hasRemaining()) {
+      data.write(body, offset + body.position());
+    }
+
+    int game = games;
+    writeEntry(game, offset, length, replay);
+
+    dataLength = offset + length;
+    games = game + 1;
+    return game;
+  }
+
+  /**
+   * Force the appended games to the storage device.
+   *
+   * @throws IOException if the games cannot be forced
+   */
+  public void force() throws IOException {
+    data.force(false);
+    if (writable && indexMap != null) {
+      indexMap.force();
+    }
+    index.force(false);
+  }
+
+  /**
+   * Close the archive, dropping the index entries mapped ahead of the appends.
+   *
+   * @throws IOException if the archive cannot be closed
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      data.close();
+    } finally {
+      try {
+        if (writable && indexEnd > 0 && index.isOpen()) {
+          index.truncate(indexEnd);
+        }
+      } finally {
+        index.close();
+      }
+    }
+  }
+
+  // #########################################################################
+  /**
+   * Input stream counting the bytes read.
+   */
+  private static final class CountingInputStream extends FilterInputStream {
+
+    /**
+     * Number of bytes read.
+     */
+    private long count = 0;
+
+    /**
+     * Create a counting stream.
+     *
+     * @param input the input stream
+     */
+    CountingInputStream(final InputStream input) {
+      super(input);
+    }
+
+    /**
+     * Get the number of bytes read.
+     *
+     * @return the number of bytes read
+     */
+    long getCount() {
+      return count;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) {
+        count++;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len)
+        throws IOException {
+      int read = super.read(b, off, len);
+      if (read > 0) {
+        count += read;
+      }
+      return read;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+      long skipped = super.skip(n);
+      count += skipped;
+      return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+  }
+}
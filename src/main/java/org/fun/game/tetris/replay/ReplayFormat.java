@@ -0,0 +1,163 @@
+package org.fun.game.tetris.replay;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.fun.game.tetris.Board;
+import org.fun.game.tetris.Varint;
+
+/**
+ * The binary format of replays.
+ *
+ * <p>
+ * Since an {@link org.fun.game.tetris.Engine Engine} started with the same level, seed, mode and
+ * playfield dimensions computes the same frames from the same inputs, a replay only stores these
+ * and the frames where the inputs change. Numbers are unsigned {@link Varint varints} unless stated
+ * otherwise.
+ * </p>
+ *
+ * <pre>
+ * replay   := MAGIC VERSION bindings game*
+ * bindings := count (length utf8-bytes)*       key stroke of each input, by input bit
+ * game     := GAME seed mode level board (change | keyframe)* end
+ * seed     := 8 bytes, big-endian
+ * mode     := length ascii-bytes              name of the Tetrion.Mode
+ * board    := columns rows ceiling            playfield dimensions, hidden rows included
+ * change   := frames inputs                   frames (&gt; 0) since the previous change, new inputs
+ * keyframe := 0 KEYFRAME frames length state  state after the given number of frames
+ * end      := 0 END frames score lines hash over  hash: 8 bytes big-endian, over: 1 byte
+ * </pre>
+ *
+ * <p>
+ * A game starts with no input pressed and its first frame is frame {@code 1}. A keyframe holds
+ * the {@link org.fun.game.tetris.EngineState state} of the engine, as written by
+ * {@link org.fun.game.tetris.EngineState#writeTo(java.io.DataOutput)}, after some frames: a player
+ * can restore the last keyframe before a frame and compute the following frames only, instead of
+ * computing the game again from its first frame. The end of a game holds its state after the last
+ * frame: number of frames, score, lines and
+ * {@link org.fun.game.tetris.Engine#getBoardHash() board hash}, and whether the game was stopped,
+ * by a top out or by the player, or its recording interrupted.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public final class ReplayFormat {
+
+  /**
+   * Magic number starting a replay: {@code "TRPL"}.
+   */
+  public static final int MAGIC = 0x5452504C;
+  /**
+   * Version of the format.
+   */
+  public static final byte VERSION = 6;
+  /**
+   * Tag starting a game.
+   */
+  public static final byte GAME = 1;
+  /**
+   * Frames of the records that are not changes, followed by their tag.
+   */
+  public static final int TAGGED = 0;
+  /**
+   * Tag of the record ending a game.
+   */
+  public static final int END = 0;
+  /**
+   * Tag of a keyframe.
+   */
+  public static final int KEYFRAME = 1;
+
+  /**
+   * Hidden constructor.
+   */
+  private ReplayFormat() {}
+
+  /**
+   * Write the header of a replay.
+   *
+   * @param out the output
+   * @param keyBindings the key strokes of the inputs, by input bit, {@code null} if none
+   * @throws IOException if the header cannot be written
+   */
+  static void writeHeader(final DataOutput out, final String[] keyBindings)
+      throws IOException {
+    out.writeInt(MAGIC);
+    out.writeByte(VERSION);
+    String[] bindings = keyBindings == null ? new String[0] : keyBindings;
+    Varint.write(out, bindings.length);
+    for (String binding : bindings) {
+      writeString(out, binding == null ? "" : binding);
+    }
+  }
+
+  /**
+   * Write the playfield dimensions of a game.
+   *
+   * @param out the output
+   * @param board the playfield dimensions
+   * @throws IOException if the dimensions cannot be written
+   */
+  static void writeBoard(final DataOutput out, final Board board)
+      throws IOException {
+    Varint.write(out, board.getWidth());
+    Varint.write(out, board.getHeight());
+    Varint.write(out, board.getCeiling());
+  }
+
+  /**
+   * Write a game of a replay, with its keyframes.
+   *
+   * @param out the output
+   * @param replay the game
+   * @throws IOException if the game cannot be written
+   */
+  static void writeGame(final DataOutput out, final Replay replay)
+      throws IOException {
+    out.writeByte(GAME);
+    out.writeLong(replay.getSeed());
+    writeString(out, replay.getMode().name());
+    Varint.write(out, replay.getLevel());
+    writeBoard(out, replay.getBoard());
+    long frame = 0;
+    int keyframe = 0;
+    for (int change = 0; change <= replay.getChanges(); change++) {
+      for (; keyframe < replay.getKeyframes()
+          && replay.getKeyframeChange(keyframe) == change; keyframe++) {
+        byte[] state = replay.getKeyframeState(keyframe);
+        Varint.write(out, TAGGED);
+        Varint.write(out, KEYFRAME);
+        Varint.write(out, replay.getKeyframeFrame(keyframe));
+        Varint.write(out, state.length);
+        out.write(state);
+      }
+      if (change < replay.getChanges()) {
+        Varint.write(out, replay.getChangeFrame(change) - frame);
+        Varint.write(out, replay.getChangeInputs(change));
+        frame = replay.getChangeFrame(change);
+      }
+    }
+    Varint.write(out, TAGGED);
+    Varint.write(out, END);
+    Varint.write(out, replay.getFrames());
+    Varint.write(out, replay.getScore());
+    Varint.write(out, replay.getLines());
+    out.writeLong(replay.getBoardHash());
+    out.writeByte(replay.isOver() ? 1 : 0);
+  }
+
+  /**
+   * Write a string, as its length and UTF-8 bytes.
+   *
+   * @param out the output
+   * @param value the string
+   * @throws IOException if the string cannot be written
+   */
+  static void writeString(final DataOutput out, final String value)
+      throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    Varint.write(out, bytes.length);
+    out.write(bytes);
+  }
+}
@@ -0,0 +1,250 @@
+package org.fun.game.tetris.replay;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.fun.game.tetris.Controller;
+import org.fun.game.tetris.Engine;
+import org.fun.game.tetris.EngineState;
+
+/**
+ * Plays a {@link Replay} back, as fast as possible.
+ *
+ * <p>
+ * The player computes the frames of the recorded game again on its own {@link Engine}, feeding it
+ * with the recorded inputs. Frames are computed without being rendered: the renderer is only
+ * called on the frames requested, or at a given wall-clock rate, so that a game of hours can be
+ * reviewed in seconds. Seeking restores the last keyframe of the replay before the frame sought,
+ * unless the player is already past it, and only computes the following frames.
+ * </p>
+ *
+ * <p>
+ * A player is not thread-safe.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public class ReplayPlayer implements Controller {
+
+  /**
+   * Number of frames computed between two checks of the wall clock.
+   */
+  private static final int CLOCK_CHECK_PERIOD = 64;
+
+  /**
+   * The game played back.
+   */
+  private final Replay replay;
+  /**
+   * The engine computing the frames.
+   */
+  private final Engine engine = new Engine();
+  /**
+   * Index of the next inputs change.
+   */
+  private int nextChange = 0;
+  /**
+   * Inputs of the current frame.
+   */
+  private int inputs = NONE;
+  /**
+   * State of the engine, restored from keyframes.
+   */
+  private final EngineState keyframe = new EngineState();
+  /**
+   * Renderer of the frames, may be {@code null}.
+   */
+  private Consumer<Engine> renderer = null;
+
+  /**
+   * Create a player, positioned before the first frame of the game.
+   *
+   * @param game the game to play back
+   */
+  public ReplayPlayer(final Replay game) {
+    this.replay = game;
+    engine.setMode(game.getMode());
+    engine.setBoard(game.getBoard());
+    engine.setController(this);
+    restart();
+  }
+
+  /**
+   * Get the game played back.
+   *
+   * @return the replay
+   */
+  public final Replay getReplay() {
+    return replay;
+  }
+
+  /**
+   * Get the engine computing the frames.
+   *
+   * <p>
+   * Listeners can be added to the engine, but are notified of every frame computed, rendered or
+   * not.
+   * </p>
+   *
+   * @return the engine
+   */
+  public final Engine getEngine() {
+    return engine;
+  }
+
+  /**
+   * Get the last frame computed.
+   *
+   * @return the frame, {@code 0} before the first frame
+   */
+  public final long getFrame() {
+    return engine.getFrames();
+  }
+
+  /**
+   * Has the last frame of the game been computed?
+   *
+   * @return {@code true} if the game has been played back
+   */
+  public final boolean isFinished() {
+    return !engine.isStarted() || engine.getFrames() >= replay.getFrames();
+  }
+
+  /**
+   * Set the renderer of the frames.
+   *
+   * @param frameRenderer the renderer, may be {@code null}
+   */
+  public final void setRenderer(final Consumer<Engine> frameRenderer) {
+    this.renderer = frameRenderer;
+  }
+
+  // #########################################################################
+  /**
+   * Position the player before the first frame of the game.
+   */
+  public void restart() {
+    engine.start(replay.getLevel(), replay.getSeed());
+    nextChange = 0;
+    inputs = NONE;
+  }
+
+  /**
+   * Position the player on a keyframe.
+   *
+   * @param index the index of the keyframe
+   * @throws IllegalStateException if the keyframe is invalid
+   */
+  private void restore(final int index) {
+    try {
+      keyframe.readFrom(new DataInputStream(
+          new ByteArrayInputStream(replay.getKeyframeState(index))));
+    } catch (IOException ex) {
+      throw new IllegalStateException("Invalid keyframe " + index, ex);
+    }
+    engine.restoreState(keyframe);
+    nextChange = replay.getKeyframeChange(index);
+    inputs = nextChange > 0 ? replay.getChangeInputs(nextChange - 1) : NONE;
+  }
+
+  /**
+   * Compute the frames up to the given frame, without rendering them.
+   *
+   * <p>
+   * The computation starts from the last keyframe before the frame if the player is not past it
+   * yet, from the first frame if seeking backwards before the first keyframe.
+   * </p>
+   *
+   * @param frame the frame, bounded by the last frame of the game
+   * @return the frame reached
+   */
+  public long seek(final long frame) {
+    long target = Math.min(frame, replay.getFrames());
+    int index = replay.keyframeAt(target);
+    if (index >= 0 && (target < engine.getFrames()
+        || replay.getKeyframeFrame(index) > engine.getFrames())) {
+      restore(index);
+    } else if (target < engine.getFrames()) {
+      restart();
+    }
+    return advance(target);
+  }
+
+  /**
+   * Compute the following frames up to the given frame, without rendering them nor restoring
+   * keyframes.
+   *
+   * @param frame the frame, bounded by the last frame of the game
+   * @return the frame reached, before the given frame if the game stopped earlier
+   */
+  public long advance(final long frame) {
+    long target = Math.min(frame, replay.getFrames());
+    while (engine.getFrames() < target && engine.isStarted()) {
+      engine.tick();
+    }
+    return engine.getFrames();
+  }
+
+  /**
+   * Play the game back to its last frame, rendering the given frames only.
+   *
+   * @param keyframes the frames to render
+   */
+  public void play(final long... keyframes) {
+    long[] frames = keyframes.clone();
+    Arrays.sort(frames);
+    for (long frame : frames) {
+      if (frame > replay.getFrames()) {
+        break;
+      }
+      seek(frame);
+      render();
+    }
+    seek(replay.getFrames());
+  }
+
+  /**
+   * Play the game back to its last frame as fast as possible, rendering a frame at the given rate,
+   * and the last frame.
+   *
+   * @param renderRate the number of frames rendered per second of wall-clock time
+   */
+  public void playAt(final double renderRate) {
+    final long period = (long) (TimeUnit.SECONDS.toNanos(1) / renderRate);
+    long nextRender = System.nanoTime();
+    while (!isFinished()) {
+      engine.tick();
+      if (engine.getFrames() % CLOCK_CHECK_PERIOD == 0) {
+        long now = System.nanoTime();
+        if (now - nextRender >= 0) {
+          render();
+          nextRender = now + period;
+        }
+      }
+    }
+    render();
+  }
+
+  /**
+   * Render the last frame computed.
+   */
+  private void render() {
+    if (renderer != null) {
+      renderer.accept(engine);
+    }
+  }
+
+  @Override
+  public int poll(final Engine source) {
+    long frame = source.getFrames();
+    while (nextChange < replay.getChanges()
+        && replay.getChangeFrame(nextChange) <= frame) {
+      inputs = replay.getChangeInputs(nextChange++);
+    }
+    return inputs;
+  }
+}
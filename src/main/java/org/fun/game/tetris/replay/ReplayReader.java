@@ -0,0 +1,183 @@
+package org.fun.game.tetris.replay;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.fun.game.tetris.Board;
+import org.fun.game.tetris.Tetrion;
+import org.fun.game.tetris.Varint;
+
+/**
+ * Reads the games of a replay written by a {@link ReplayWriter}.
+ *
+ * @author Mathieu Brunot
+ *
+ * @see ReplayFormat
+ */
+public class ReplayReader implements Closeable {
+
+  /**
+   * Initial capacity of the changes of a game.
+   */
+  private static final int INITIAL_CHANGES = 1024;
+  /**
+   * Initial capacity of the keyframes of a game.
+   */
+  private static final int INITIAL_KEYFRAMES = 64;
+
+  /**
+   * Input stream of the replay.
+   */
+  private final DataInputStream in;
+  /**
+   * Key strokes of the inputs, by input bit.
+   */
+  private final String[] keyBindings;
+
+  /**
+   * Create a reader and read the replay header.
+   *
+   * @param input the input stream of the replay, closed with the reader
+   * @throws IOException if the header cannot be read or is not a replay header
+   */
+  public ReplayReader(final InputStream input) throws IOException {
+    this(new DataInputStream(new BufferedInputStream(input)), true);
+  }
+
+  /**
+   * Create a reader.
+   *
+   * @param input the input of the replay, closed with the reader
+   * @param header {@code true} to read the replay header, {@code false} if the input only holds
+   *        games
+   * @throws IOException if the header cannot be read or is not a replay header
+   */
+  ReplayReader(final DataInputStream input, final boolean header)
+      throws IOException {
+    this.in = input;
+    if (!header) {
+      keyBindings = new String[0];
+      return;
+    }
+    if (in.readInt() != ReplayFormat.MAGIC) {
+      throw new IOException("Not a replay");
+    }
+    byte version = in.readByte();
+    if (version != ReplayFormat.VERSION) {
+      throw new IOException("Unsupported replay version " + version);
+    }
+    keyBindings = new String[(int) Varint.read(in)];
+    for (int i = 0; i < keyBindings.length; i++) {
+      keyBindings[i] = readString();
+    }
+  }
+
+  /**
+   * Get the key strokes of the inputs.
+   *
+   * @return the key strokes, by input bit
+   */
+  public final String[] getKeyBindings() {
+    return keyBindings.clone();
+  }
+
+  /**
+   * Read the next game.
+   *
+   * @return the next game, {@code null} if none
+   * @throws IOException if the game cannot be read, e.g. if it is truncated
+   */
+  public Replay read() throws IOException {
+    int tag = in.read();
+    if (tag < 0) {
+      return null;
+    }
+    if (tag != ReplayFormat.GAME) {
+      throw new IOException("Unexpected replay tag " + tag);
+    }
+    long seed = in.readLong();
+    Tetrion.Mode mode;
+    try {
+      mode = Tetrion.Mode.valueOf(readString());
+    } catch (IllegalArgumentException ex) {
+      throw new IOException("Unknown replay mode", ex);
+    }
+    int level = (int) Varint.read(in);
+    Board board;
+    try {
+      board = new Board((int) Varint.read(in), (int) Varint.read(in),
+          (int) Varint.read(in));
+    } catch (IllegalArgumentException ex) {
+      throw new IOException("Invalid replay board", ex);
+    }
+
+    long[] frames = new long[INITIAL_CHANGES];
+    int[] inputs = new int[INITIAL_CHANGES];
+    int changes = 0;
+    long[] keyframeFrames = new long[INITIAL_KEYFRAMES];
+    int[] keyframeChanges = new int[INITIAL_KEYFRAMES];
+    byte[][] keyframeStates = new byte[INITIAL_KEYFRAMES][];
+    int keyframes = 0;
+    long frame = 0;
+    while (true) {
+      long delta = Varint.read(in);
+      if (delta != ReplayFormat.TAGGED) {
+        if (changes == frames.length) {
+          frames = Arrays.copyOf(frames, changes * 2);
+          inputs = Arrays.copyOf(inputs, changes * 2);
+        }
+        frame += delta;
+        frames[changes] = frame;
+        inputs[changes] = (int) Varint.read(in);
+        changes++;
+        continue;
+      }
+
+      long record = Varint.read(in);
+      if (record == ReplayFormat.END) {
+        break;
+      } else if (record != ReplayFormat.KEYFRAME) {
+        throw new IOException("Unexpected replay record " + record);
+      }
+      if (keyframes == keyframeFrames.length) {
+        keyframeFrames = Arrays.copyOf(keyframeFrames, keyframes * 2);
+        keyframeChanges = Arrays.copyOf(keyframeChanges, keyframes * 2);
+        keyframeStates = Arrays.copyOf(keyframeStates, keyframes * 2);
+      }
+      keyframeFrames[keyframes] = Varint.read(in);
+      keyframeChanges[keyframes] = changes;
+      keyframeStates[keyframes] = new byte[(int) Varint.read(in)];
+      in.readFully(keyframeStates[keyframes]);
+      keyframes++;
+    }
+
+    return new Replay(seed, mode, level, board, Arrays.copyOf(frames, changes),
+        Arrays.copyOf(inputs, changes), Arrays.copyOf(keyframeFrames, keyframes),
+        Arrays.copyOf(keyframeChanges, keyframes),
+        Arrays.copyOf(keyframeStates, keyframes), Varint.read(in), Varint.read(in),
+        (int) Varint.read(in), in.readLong(), in.readByte() != 0);
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+  // #########################################################################
+  /**
+   * Read a string, as its length and UTF-8 bytes.
+   *
+   * @return the string
+   * @throws IOException if the string cannot be read
+   */
+  private String readString() throws IOException {
+    byte[] bytes = new byte[(int) Varint.read(in)];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
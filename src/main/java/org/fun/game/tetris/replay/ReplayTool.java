@@ -0,0 +1,276 @@
+package org.fun.game.tetris.replay;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.fun.game.tetris.Board;
+import org.fun.game.tetris.CommandLine;
+import org.fun.game.tetris.Engine;
+import org.fun.game.tetris.Tetrion;
+import org.fun.game.tetris.Tetromino;
+
+/**
+ * Command line tool playing back, archiving and verifying replays, and recording the games played.
+ *
+ * @author Mathieu Brunot
+ *
+ * @see ReplayPlayer
+ * @see ReplayArchive
+ * @see ReplayVerifier
+ */
+public final class ReplayTool {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOGGER =
+      Logger.getLogger(ReplayTool.class.getName());
+
+  /**
+   * Command line option to record the games to the given replay file.
+   */
+  public static final String RECORD_OPTION = "--record";
+  /**
+   * Command line option to play back the games of the given replay file.
+   */
+  public static final String REPLAY_OPTION = "--replay";
+  /**
+   * Command line option to set the comma separated frames rendered when playing back a replay.
+   */
+  public static final String RENDER_FRAMES_OPTION = "--render-frames";
+  /**
+   * Command line option to set the number of frames rendered per second when playing back a
+   * replay.
+   */
+  public static final String RENDER_RATE_OPTION = "--render-rate";
+  /**
+   * Command line option to open the given replay archive.
+   */
+  public static final String ARCHIVE_OPTION = "--archive";
+  /**
+   * Command line option to append the games of the given replay file to the replay archive.
+   */
+  public static final String IMPORT_OPTION = "--import";
+  /**
+   * Command line option to verify the games of the given replay archive.
+   */
+  public static final String VERIFY_OPTION = "--verify";
+  /**
+   * Options of the tool.
+   */
+  public static final List<String> OPTIONS = Collections.unmodifiableList(
+      Arrays.asList(RECORD_OPTION, REPLAY_OPTION, RENDER_FRAMES_OPTION,
+          RENDER_RATE_OPTION, ARCHIVE_OPTION, IMPORT_OPTION, VERIFY_OPTION));
+
+  /**
+   * Hidden constructor.
+   */
+  private ReplayTool() {}
+
+  /**
+   * Is the tool selected by the command line options?
+   *
+   * @param options the command line options
+   * @return {@code true} if a replay is played back, or a replay archive scanned or verified
+   */
+  public static boolean isSelected(final CommandLine options) {
+    return options.has(VERIFY_OPTION) || options.has(ARCHIVE_OPTION)
+        || options.has(REPLAY_OPTION);
+  }
+
+  /**
+   * Verify a replay archive, scan it, or play back a replay file, as selected by the command line
+   * options.
+   *
+   * @param options the command line options
+   * @throws CommandLine.UsageException if an option value is not valid
+   */
+  public static void run(final CommandLine options) {
+    if (options.has(VERIFY_OPTION)) {
+      verify(options.getPath(VERIFY_OPTION), options.getThreads());
+    } else if (options.has(ARCHIVE_OPTION)) {
+      scan(options.getPath(ARCHIVE_OPTION), options.getPath(IMPORT_OPTION));
+    } else {
+      play(options.getPath(REPLAY_OPTION),
+          options.getLongs(RENDER_FRAMES_OPTION),
+          options.getDouble(RENDER_RATE_OPTION, 1));
+    }
+  }
+
+  /**
+   * Record the games of a Tetrion to a replay file, until the JVM exits.
+   *
+   * @param tetrion the Tetrion
+   * @param file the replay file
+   */
+  public static void record(final Tetrion tetrion, final Path file) {
+    final ReplayWriter writer;
+    try {
+      writer = new ReplayWriter(Files.newOutputStream(file),
+          tetrion.getKeyBindings());
+    } catch (IOException ex) {
+      LOGGER.log(Level.SEVERE, "Cannot record replay", ex);
+      return;
+    }
+    tetrion.setReplayWriter(writer);
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      try {
+        writer.close();
+      } catch (IOException ex) {
+        LOGGER.log(Level.SEVERE, "Cannot write replay", ex);
+      }
+    }));
+  }
+
+  /**
+   * Play back the games of a replay file as fast as possible and print their frames.
+   *
+   * @param file the replay file
+   * @param keyframes the frames rendered, {@code null} to render at the given rate
+   * @param renderRate the number of frames rendered per second, if no frames are given
+   */
+  private static void play(final Path file, final long[] keyframes,
+      final double renderRate) {
+    try (ReplayReader reader = new ReplayReader(Files.newInputStream(file))) {
+      for (Replay replay = reader.read(); replay != null; replay =
+          reader.read()) {
+        System.err.println(replay);
+        ReplayPlayer player = new ReplayPlayer(replay);
+        player.setRenderer(ReplayTool::printFrame);
+        long start = System.nanoTime();
+        if (keyframes != null) {
+          player.play(keyframes);
+        } else {
+          player.playAt(renderRate);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Engine engine = player.getEngine();
+        System.err.println(String.format(
+            "%d frames played back in %.2f s: score %d, lines %d, %s",
+            engine.getFrames(), seconds, engine.getScore(), engine.getLines(),
+            engine.getScore() == replay.getScore()
+                && engine.getLines() == replay.getLines()
+                && engine.getBoardHash() == replay.getBoardHash()
+                    ? "as recorded" : "NOT as recorded"));
+      }
+    } catch (IOException ex) {
+      LOGGER.log(Level.SEVERE, "Cannot read replay", ex);
+    }
+  }
+
+  /**
+   * Append the games of a replay file to a replay archive, if any, then scan the archive index and
+   * bodies and print their statistics.
+   *
+   * @param file the replay archive
+   * @param replayFile the replay file to import, {@code null} if none
+   */
+  private static void scan(final Path file, final Path replayFile) {
+    if (replayFile != null) {
+      try (ReplayArchive archive = new ReplayArchive(file, true);
+          ReplayReader reader =
+              new ReplayReader(Files.newInputStream(replayFile))) {
+        int imported = 0;
+        for (Replay replay = reader.read(); replay != null; replay =
+            reader.read()) {
+          archive.append(replay);
+          imported++;
+        }
+        archive.force();
+        System.err.println(imported + " games imported");
+      } catch (IOException ex) {
+        LOGGER.log(Level.SEVERE, "Cannot import replay", ex);
+        return;
+      }
+    }
+
+    try (ReplayArchive archive = new ReplayArchive(file, false)) {
+      long start = System.nanoTime();
+      long bestScore = 0;
+      long totalLines = 0;
+      for (int game = 0; game < archive.getGames(); game++) {
+        bestScore = Math.max(bestScore, archive.getScore(game));
+        totalLines += archive.getLines(game);
+      }
+      double indexSeconds = (System.nanoTime() - start) / 1e9;
+      start = System.nanoTime();
+      long changes = 0;
+      for (int game = 0; game < archive.getGames(); game++) {
+        changes += archive.read(game).getChanges();
+      }
+      double bodySeconds = (System.nanoTime() - start) / 1e9;
+      System.err.println(String.format(
+          "%d games: best score %d, %d lines, index scanned in %.3f s; "
+              + "%d inputs changes, bodies read in %.3f s",
+          archive.getGames(), bestScore, totalLines, indexSeconds, changes,
+          bodySeconds));
+    } catch (IOException ex) {
+      LOGGER.log(Level.SEVERE, "Cannot read replay archive", ex);
+    }
+  }
+
+  /**
+   * Verify the games of a replay archive and print the games not as claimed.
+   *
+   * @param file the replay archive
+   * @param threads the number of threads verifying games
+   */
+  private static void verify(final Path file, final int threads) {
+    ReplayVerifier verifier = new ReplayVerifier();
+    verifier.setThreads(threads);
+    try (ReplayArchive archive = new ReplayArchive(file, false)) {
+      long start = System.nanoTime();
+      List<VerificationResult> mismatches = verifier.verify(archive);
+      double seconds = (System.nanoTime() - start) / 1e9;
+      for (VerificationResult mismatch : mismatches) {
+        System.out.println(mismatch);
+      }
+      System.err.println(String.format(
+          "%d games verified on %d threads in %.1f s: %d not as claimed",
+          archive.getGames(), verifier.getThreads(), seconds,
+          mismatches.size()));
+    } catch (IOException ex) {
+      LOGGER.log(Level.SEVERE, "Cannot read replay archive", ex);
+    }
+  }
+
+  /**
+   * Print the playfield and falling piece of a frame.
+   *
+   * @param engine the engine of the frame
+   */
+  private static void printFrame(final Engine engine) {
+    Board board = engine.getBoard();
+    char[][] cells = new char[board.getHeight()][board.getWidth()];
+    for (int y = 0; y < board.getHeight(); y++) {
+      for (int x = 0; x < board.getWidth(); x++) {
+        cells[y][x] = engine.isOccupied(x, y) ? '#' : '.';
+      }
+    }
+    Tetromino piece = engine.getFallingPiece();
+    if (piece.getShape() != null) {
+      for (int i = 0; i < Tetromino.BLOCKS; i++) {
+        int x = engine.getCurX() + piece.x(i);
+        int y = engine.getCurY() - piece.y(i);
+        if (x >= 0 && x < board.getWidth() && y >= 0
+            && y < board.getHeight()) {
+          cells[y][x] = '@';
+        }
+      }
+    }
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format("frame %d: score %d, lines %d, level %d%n",
+        engine.getFrames(), engine.getScore(), engine.getLines(),
+        engine.getLevel()));
+    for (int y = board.getHeight() - 1; y >= 0; y--) {
+      sb.append(cells[y]).append(System.lineSeparator());
+    }
+    System.out.print(sb);
+  }
+}
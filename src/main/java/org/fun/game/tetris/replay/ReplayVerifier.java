@@ -0,0 +1,218 @@
+package org.fun.game.tetris.replay;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.fun.game.tetris.Engine;
+import org.fun.game.tetris.EngineState;
+
+/**
+ * Verifies the games of a {@link ReplayArchive} by computing them again.
+ *
+ * <p>
+ * Each game is computed from its first frame with its recorded inputs, never restoring its
+ * keyframes: at each keyframe, the computed state must be the recorded state, and after the last
+ * frame, the computed score, lines and board hash must be those claimed by the archive index and
+ * the end of the game. A game whose computation stops earlier than recorded, or differs, is
+ * reported with the last keyframe matching and the first frame known to differ.
+ * </p>
+ *
+ * <p>
+ * Games are verified in parallel, on all cores by default.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public class ReplayVerifier {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOGGER =
+      Logger.getLogger(ReplayVerifier.class.getName());
+
+  /**
+   * Number of threads verifying games.
+   */
+  private int threads = Runtime.getRuntime().availableProcessors();
+  /**
+   * Listener of each verification result, may be {@code null}.
+   */
+  private Consumer<VerificationResult> listener = null;
+
+  /**
+   * Get the number of threads verifying games.
+   *
+   * @return the number of threads
+   */
+  public final int getThreads() {
+    return threads;
+  }
+
+  /**
+   * Set the number of threads verifying games.
+   *
+   * @param numberOfThreads the number of threads
+   */
+  public final void setThreads(final int numberOfThreads) {
+    this.threads = Math.max(1, numberOfThreads);
+  }
+
+  /**
+   * Set the listener of each verification result, called from the verifying threads.
+   *
+   * @param resultListener the listener, may be {@code null}
+   */
+  public final void setListener(
+      final Consumer<VerificationResult> resultListener) {
+    this.listener = resultListener;
+  }
+
+  // #########################################################################
+  /**
+   * Verify all the games of an archive.
+   *
+   * @param archive the archive
+   * @return the results of the games not as claimed, by game index
+   */
+  public List<VerificationResult> verify(final ReplayArchive archive) {
+    final int games = archive.getGames();
+    final AtomicInteger nextGame = new AtomicInteger();
+    final List<VerificationResult> mismatches = new ArrayList<>();
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      ForkJoinTask<?>[] workers = new ForkJoinTask<?>[threads];
+      for (int i = 0; i < threads; i++) {
+        workers[i] = pool.submit(() -> {
+          Checker checker = new Checker();
+          for (int game = nextGame.getAndIncrement(); game < games; game =
+              nextGame.getAndIncrement()) {
+            VerificationResult result = checker.verify(archive, game);
+            if (!result.isVerified()) {
+              synchronized (mismatches) {
+                mismatches.add(result);
+              }
+            }
+            if (listener != null) {
+              listener.accept(result);
+            }
+          }
+        });
+      }
+      for (ForkJoinTask<?> worker : workers) {
+        worker.join();
+      }
+    } finally {
+      pool.shutdown();
+    }
+    mismatches.sort((a, b) -> Integer.compare(a.getGame(), b.getGame()));
+    return mismatches;
+  }
+
+  /**
+   * Verifies games, one at a time, reusing its buffers.
+   */
+  private static final class Checker {
+
+    /**
+     * Computed state.
+     */
+    private final EngineState state = new EngineState();
+    /**
+     * Encoded computed state.
+     */
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    /**
+     * Encoder of the computed state.
+     */
+    private final DataOutputStream out = new DataOutputStream(bytes);
+
+    /**
+     * Verify a game.
+     *
+     * @param archive the archive
+     * @param game the index of the game
+     * @return the result of the verification
+     */
+    VerificationResult verify(final ReplayArchive archive, final int game) {
+      long id = archive.getId(game);
+      Replay replay;
+      try {
+        replay = archive.read(game);
+      } catch (IOException | RuntimeException ex) {
+        LOGGER.log(Level.FINE, "Cannot read game " + game, ex);
+        return new VerificationResult(game, id, "unreadable: " + ex, 0, 0, 0,
+            0, 0);
+      }
+
+      ReplayPlayer player = new ReplayPlayer(replay);
+      Engine engine = player.getEngine();
+      long lastMatching = 0;
+      String mismatch = null;
+      long divergent = -1;
+      for (int k = 0; k < replay.getKeyframes() && mismatch == null; k++) {
+        long frame = replay.getKeyframeFrame(k);
+        long reached = player.advance(frame);
+        if (reached < frame) {
+          mismatch = "stopped at frame " + reached;
+          divergent = reached;
+        } else if (!Arrays.equals(encode(engine),
+            replay.getKeyframeState(k))) {
+          mismatch = "state differs from keyframe " + k;
+          divergent = frame;
+        } else {
+          lastMatching = frame;
+        }
+      }
+
+      if (mismatch == null) {
+        long reached = player.advance(replay.getFrames());
+        if (reached < replay.getFrames()) {
+          mismatch = "stopped at frame " + reached;
+          divergent = reached;
+        } else if (engine.getScore() != replay.getScore()
+            || engine.getLines() != replay.getLines()
+            || engine.getBoardHash() != replay.getBoardHash()) {
+          mismatch = "final state differs from recorded end";
+          divergent = reached;
+        } else if (engine.getScore() != archive.getScore(game)
+            || engine.getLines() != archive.getLines(game)
+            || replay.getSeed() != archive.getSeed(game)) {
+          mismatch = "final state differs from archive index";
+          divergent = reached;
+        }
+      }
+
+      return new VerificationResult(game, id, mismatch, lastMatching,
+          divergent, engine.getScore(), engine.getLines(),
+          engine.getBoardHash());
+    }
+
+    /**
+     * Encode the state of an engine.
+     *
+     * @param engine the engine
+     * @return the encoded state
+     */
+    private byte[] encode(final Engine engine) {
+      engine.saveState(state);
+      bytes.reset();
+      try {
+        state.writeTo(out);
+      } catch (IOException ex) {
+        throw new IllegalStateException(ex);
+      }
+      return bytes.toByteArray();
+    }
+  }
+}
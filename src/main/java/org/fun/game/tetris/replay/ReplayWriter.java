@@ -0,0 +1,547 @@
+package org.fun.game.tetris.replay;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.fun.game.tetris.Board;
+import org.fun.game.tetris.Controller;
+import org.fun.game.tetris.Engine;
+import org.fun.game.tetris.EngineState;
+import org.fun.game.tetris.Varint;
+
+/**
+ * Records the games of an {@link Engine} as replays.
+ *
+ * <p>
+ * The writer is a {@link Controller} polling a delegate controller, e.g. the keyboard or a bot, and
+ * recording its inputs each time they change. It must also be added as a listener of the engine, to
+ * be notified of game overs. A game is recorded from the first frame after each start, with a
+ * keyframe of the engine state every {@link #getKeyframePeriod() few seconds}.
+ * </p>
+ *
+ * <p>
+ * Recording adds no latency to the frame loop: records are encoded in a buffer preallocated at
+ * creation, and a background thread writes the buffer to the output stream. The frame loop never
+ * waits for it: if the output stream cannot keep up and a record does not fit in the buffer, the
+ * game is {@link #getTruncatedGames() truncated}, i.e. ended before the frame being computed as if
+ * its recording was interrupted, and a game starting while the buffer is full is not recorded. Once
+ * the writer is closed, nothing more is recorded.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ *
+ * @see ReplayFormat
+ */
+public class ReplayWriter implements Controller, Engine.Listener, Closeable {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOGGER =
+      Logger.getLogger(ReplayWriter.class.getName());
+
+  /**
+   * Default buffer size, in bytes.
+   */
+  public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+  /**
+   * Default number of frames between two keyframes.
+   */
+  public static final int DEFAULT_KEYFRAME_PERIOD = 10 * Engine.FRAME_PER_SECOND;
+  /**
+   * Time the background thread waits for new records.
+   */
+  private static final long FLUSH_PERIOD = TimeUnit.MILLISECONDS.toNanos(50);
+  /**
+   * Maximum size of the record ending a game, in bytes, kept free in the buffer by other records.
+   */
+  private static final int END_BYTES =
+      2 + 3 * Varint.MAX_BYTES + Long.BYTES + 1;
+
+  /**
+   * Output stream of the replay.
+   */
+  private final OutputStream out;
+  /**
+   * Buffer of the records not written yet, as a ring.
+   */
+  private final byte[] buffer;
+  /**
+   * Mask of the positions in the {@link #buffer}.
+   */
+  private final int mask;
+  /**
+   * Number of bytes encoded and published to the background thread.
+   */
+  private volatile long published = 0;
+  /**
+   * Number of bytes written to the output stream.
+   */
+  private volatile long written = 0;
+  /**
+   * Number of bytes encoded, published or not.
+   */
+  private long encoded = 0;
+  /**
+   * Did the record being encoded overflow the buffer?
+   */
+  private boolean overflowed = false;
+  /**
+   * Number of games truncated or not recorded, the buffer being full.
+   */
+  private volatile int truncatedGames = 0;
+  /**
+   * Has the writer been closed?
+   */
+  private volatile boolean closed = false;
+  /**
+   * First error of the background thread, {@code null} if none.
+   */
+  private volatile IOException failure = null;
+  /**
+   * The background thread.
+   */
+  private final Thread writerThread;
+
+  /**
+   * Number of frames between two keyframes, {@code 0} for none.
+   */
+  private int keyframePeriod = DEFAULT_KEYFRAME_PERIOD;
+  /**
+   * State of the engine, saved for keyframes.
+   */
+  private final EngineState keyframe = new EngineState();
+  /**
+   * Stream of the records, encoded in the buffer.
+   */
+  private final RecordStream recordStream = new RecordStream();
+  /**
+   * Encoder of the records, e.g. their varints and keyframe states.
+   */
+  private final DataOutputStream records = new DataOutputStream(recordStream);
+  /**
+   * Controller whose inputs are recorded.
+   */
+  private Controller delegate;
+  /**
+   * Engine of the game being recorded, {@code null} if none.
+   */
+  private Engine engine = null;
+  /**
+   * Frame of the last inputs change.
+   */
+  private long lastFrame = 0;
+  /**
+   * Inputs of the last change.
+   */
+  private int lastInputs = NONE;
+
+  /**
+   * Create a writer with the default buffer size.
+   *
+   * @param output the output stream of the replay, closed with the writer
+   * @param keyBindings the key strokes of the inputs, by input bit
+   */
+  public ReplayWriter(final OutputStream output, final String[] keyBindings) {
+    this(output, keyBindings, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * Create a writer.
+   *
+   * @param output the output stream of the replay, closed with the writer
+   * @param keyBindings the key strokes of the inputs, by input bit, {@code null} if none
+   * @param bufferSize the buffer size, in bytes, rounded up to a power of two
+   */
+  public ReplayWriter(final OutputStream output, final String[] keyBindings,
+      final int bufferSize) {
+    this.out = output;
+    try {
+      recordStream.count();
+      ReplayFormat.writeHeader(records, keyBindings);
+      recordStream.encode();
+      int size = Math.max(bufferSize, 2 * Byte.SIZE * Varint.MAX_BYTES);
+      this.buffer = new byte[Integer.highestOneBit(
+          Math.max(size, (int) recordStream.getCount() + END_BYTES) * 2 - 1)];
+      this.mask = buffer.length - 1;
+      ReplayFormat.writeHeader(records, keyBindings);
+    } catch (IOException ex) {
+      throw new IllegalStateException(ex);
+    }
+    publish(0);
+
+    this.writerThread = new Thread(this::drain, "Replay writer");
+    this.writerThread.setDaemon(true);
+    this.writerThread.start();
+  }
+
+  /**
+   * Get the controller whose inputs are recorded.
+   *
+   * @return the delegate controller, {@code null} if none
+   */
+  public final Controller getDelegate() {
+    return delegate;
+  }
+
+  /**
+   * Set the controller whose inputs are recorded.
+   *
+   * @param controller the delegate controller, {@code null} if none
+   */
+  public final void setDelegate(final Controller controller) {
+    this.delegate = controller;
+  }
+
+  /**
+   * Get the number of bytes recorded and not written to the output stream yet.
+   *
+   * @return the backlog of the background thread, in bytes
+   */
+  public final int getBacklog() {
+    return (int) Math.max(0, encoded - written);
+  }
+
+  /**
+   * Get the number of games truncated, or not recorded at all, because the output stream could not
+   * keep up with the buffer.
+   *
+   * @return the number of games truncated
+   */
+  public final int getTruncatedGames() {
+    return truncatedGames;
+  }
+
+  /**
+   * Get the number of frames between two keyframes.
+   *
+   * @return the keyframe period, {@code 0} if no keyframes are recorded
+   */
+  public final int getKeyframePeriod() {
+    return keyframePeriod;
+  }
+
+  /**
+   * Set the number of frames between two keyframes.
+   *
+   * @param frames the keyframe period, {@code 0} to record no keyframes
+   */
+  public final void setKeyframePeriod(final int frames) {
+    this.keyframePeriod = Math.max(0, frames);
+  }
+
+  // #########################################################################
+  @Override
+  public int poll(final Engine source) {
+    if (closed) {
+      return delegate == null ? NONE : delegate.poll(source);
+    }
+    long frame = source.getFrames();
+    if (frame == 1) {
+      endGame(false);
+      startGame(source);
+    } else if (engine != source) {
+      // A game resumed midway cannot be played back from its seed
+      endGame(false);
+    } else if (keyframePeriod > 0 && (frame - 1) % keyframePeriod == 0) {
+      putKeyframe(source);
+    }
+
+    int inputs = delegate == null ? NONE : delegate.poll(source);
+    if (engine != null && inputs != lastInputs) {
+      putVarint(frame - lastFrame);
+      putVarint(inputs);
+      if (publish(END_BYTES)) {
+        lastFrame = frame;
+        lastInputs = inputs;
+      } else {
+        truncateGame(source);
+      }
+    }
+    return inputs;
+  }
+
+  @Override
+  public void gameOver(final Engine source) {
+    if (source == engine && !closed) {
+      endGame(true);
+    }
+  }
+
+  /**
+   * Record the start of a game.
+   *
+   * @param source the engine of the game
+   */
+  private void startGame(final Engine source) {
+    put(ReplayFormat.GAME);
+    putLong(source.getSeed());
+    putString(source.getMode().name());
+    putVarint(source.getLevel());
+    Board board = source.getBoard();
+    putVarint(board.getWidth());
+    putVarint(board.getHeight());
+    putVarint(board.getCeiling());
+    if (!publish(END_BYTES)) {
+      truncatedGames++;
+      return;
+    }
+    engine = source;
+    lastFrame = 0;
+    lastInputs = NONE;
+  }
+
+  /**
+   * Record a keyframe of the state before the frame being computed.
+   *
+   * <p>
+   * The state is encoded twice: once to count its bytes, then in the buffer after its length.
+   * </p>
+   *
+   * @param source the engine of the game
+   */
+  private void putKeyframe(final Engine source) {
+    source.saveState(keyframe);
+    try {
+      recordStream.count();
+      keyframe.writeTo(records);
+      recordStream.encode();
+      putVarint(ReplayFormat.TAGGED);
+      putVarint(ReplayFormat.KEYFRAME);
+      putVarint(keyframe.getFrames());
+      putVarint(recordStream.getCount());
+      keyframe.writeTo(records);
+    } catch (IOException ex) {
+      throw new IllegalStateException(ex);
+    }
+    if (!publish(END_BYTES)) {
+      truncateGame(source);
+    }
+  }
+
+  /**
+   * Record the end of the game being recorded, if any.
+   *
+   * @param over {@code true} if the game was stopped, {@code false} if its recording is interrupted
+   */
+  private void endGame(final boolean over) {
+    if (engine == null) {
+      return;
+    }
+    putEnd(engine.getFrames(), over);
+    engine = null;
+  }
+
+  /**
+   * Truncate the game being recorded, a record of the frame being computed not fitting in the
+   * buffer: end it before that frame, whose state is still the state of the engine.
+   *
+   * @param source the engine of the game
+   */
+  private void truncateGame(final Engine source) {
+    truncatedGames++;
+    putEnd(source.getFrames() - 1, false);
+    engine = null;
+  }
+
+  /**
+   * Record the end of the game being recorded, in the room kept free in the buffer.
+   *
+   * @param frames the number of frames of the game
+   * @param over {@code true} if the game was stopped, {@code false} if its recording is interrupted
+   */
+  private void putEnd(final long frames, final boolean over) {
+    putVarint(ReplayFormat.TAGGED);
+    putVarint(ReplayFormat.END);
+    putVarint(frames);
+    putVarint(engine.getScore());
+    putVarint(engine.getLines());
+    putLong(engine.getBoardHash());
+    put((byte) (over ? 1 : 0));
+    publish(0);
+  }
+
+  /**
+   * Close the writer: end the game being recorded, if any, and wait for the records to be written.
+   *
+   * @throws IOException if the records cannot be written
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    endGame(false);
+    closed = true;
+    LockSupport.unpark(writerThread);
+    try {
+      writerThread.join();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    out.close();
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  // #########################################################################
+  /**
+   * Write the published records until closed, on the background thread.
+   */
+  private void drain() {
+    try {
+      while (true) {
+        long end = published;
+        long start = written;
+        if (start == end) {
+          if (closed) {
+            break;
+          }
+          out.flush();
+          LockSupport.parkNanos(this, FLUSH_PERIOD);
+          continue;
+        }
+        int from = (int) start & mask;
+        int to = (int) end & mask;
+        if (from < to) {
+          out.write(buffer, from, to - from);
+        } else {
+          out.write(buffer, from, buffer.length - from);
+          out.write(buffer, 0, to);
+        }
+        written = end;
+      }
+      out.flush();
+    } catch (IOException ex) {
+      LOGGER.log(Level.SEVERE, "Cannot write replay", ex);
+      failure = ex;
+      written = Long.MAX_VALUE;
+    }
+  }
+
+  /**
+   * Publish the record encoded to the background thread, or drop it if it does not fit in the
+   * buffer.
+   *
+   * @param reserve the number of bytes to keep free in the buffer after the record
+   * @return {@code true} if the record is published, {@code false} if it is dropped
+   */
+  private boolean publish(final int reserve) {
+    if (overflowed || encoded - written > buffer.length - reserve) {
+      overflowed = false;
+      encoded = published;
+      return false;
+    }
+    published = encoded;
+    return true;
+  }
+
+  /**
+   * Encode a byte, never waiting for the background thread: the record overflows if the buffer is
+   * full.
+   *
+   * @param value the byte
+   */
+  private void put(final byte value) {
+    if (encoded - written >= buffer.length) {
+      overflowed = true;
+      return;
+    }
+    buffer[(int) encoded & mask] = value;
+    encoded++;
+  }
+
+  /**
+   * Encode an unsigned varint.
+   *
+   * @param value the value, not negative
+   */
+  private void putVarint(final long value) {
+    try {
+      Varint.write(records, value);
+    } catch (IOException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  /**
+   * Encode a {@code long}, big-endian.
+   *
+   * @param value the value
+   */
+  private void putLong(final long value) {
+    for (int shift = Long.SIZE - Byte.SIZE; shift >= 0; shift -= Byte.SIZE) {
+      put((byte) (value >>> shift));
+    }
+  }
+
+  /**
+   * Encode a string, as its length and UTF-8 bytes.
+   *
+   * @param value the string
+   */
+  private void putString(final String value) {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    putVarint(bytes.length);
+    for (byte b : bytes) {
+      put(b);
+    }
+  }
+
+  // #########################################################################
+  /**
+   * Stream of the records, either counting their bytes or encoding them in the buffer.
+   */
+  private final class RecordStream extends OutputStream {
+
+    /**
+     * Are the bytes counted rather than encoded?
+     */
+    private boolean counting;
+    /**
+     * Number of bytes counted.
+     */
+    private long count;
+
+    /**
+     * Count the next bytes.
+     */
+    void count() {
+      counting = true;
+      count = 0;
+    }
+
+    /**
+     * Encode the next bytes in the buffer.
+     */
+    void encode() {
+      counting = false;
+    }
+
+    /**
+     * Get the number of bytes counted.
+     *
+     * @return the number of bytes counted
+     */
+    long getCount() {
+      return count;
+    }
+
+    @Override
+    public void write(final int b) {
+      if (counting) {
+        count++;
+      } else {
+        put((byte) b);
+      }
+    }
+  }
+}
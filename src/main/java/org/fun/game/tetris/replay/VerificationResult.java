@@ -0,0 +1,167 @@
+package org.fun.game.tetris.replay;
+
+/**
+ * The result of the verification of an archived game by a {@link ReplayVerifier}.
+ *
+ * @author Mathieu Brunot
+ */
+public final class VerificationResult {
+
+  /**
+   * Index of the game in its archive.
+   */
+  private final int game;
+  /**
+   * Id of the game.
+   */
+  private final long id;
+  /**
+   * Reason of the mismatch, {@code null} if the game is as claimed.
+   */
+  private final String mismatch;
+  /**
+   * Last frame whose computed state matches the recorded state.
+   */
+  private final long lastMatchingFrame;
+  /**
+   * First frame whose computed state differs from the recorded state, {@code -1} if none.
+   */
+  private final long firstDivergentFrame;
+  /**
+   * Computed final score.
+   */
+  private final long score;
+  /**
+   * Computed final lines.
+   */
+  private final int lines;
+  /**
+   * Computed final board hash.
+   */
+  private final long boardHash;
+
+  /**
+   * Create a verification result.
+   *
+   * @param gameIndex the index of the game in its archive
+   * @param gameId the id of the game
+   * @param reason the reason of the mismatch, {@code null} if the game is as claimed
+   * @param lastMatching the last frame whose computed state matches the recorded state
+   * @param firstDivergent the first frame whose computed state differs from the recorded state,
+   *        {@code -1} if none
+   * @param computedScore the computed final score
+   * @param computedLines the computed final lines
+   * @param computedBoardHash the computed final board hash
+   */
+  public VerificationResult(final int gameIndex, final long gameId,
+      final String reason, final long lastMatching, final long firstDivergent,
+      final long computedScore, final int computedLines,
+      final long computedBoardHash) {
+    this.game = gameIndex;
+    this.id = gameId;
+    this.mismatch = reason;
+    this.lastMatchingFrame = lastMatching;
+    this.firstDivergentFrame = firstDivergent;
+    this.score = computedScore;
+    this.lines = computedLines;
+    this.boardHash = computedBoardHash;
+  }
+
+  /**
+   * Get the index of the game in its archive.
+   *
+   * @return the game index
+   */
+  public int getGame() {
+    return game;
+  }
+
+  /**
+   * Get the id of the game.
+   *
+   * @return the game id
+   */
+  public long getId() {
+    return id;
+  }
+
+  /**
+   * Is the game as claimed?
+   *
+   * @return {@code true} if the computed game matches the recorded game
+   */
+  public boolean isVerified() {
+    return mismatch == null;
+  }
+
+  /**
+   * Get the reason of the mismatch.
+   *
+   * @return the reason, {@code null} if the game is as claimed
+   */
+  public String getMismatch() {
+    return mismatch;
+  }
+
+  /**
+   * Get the last frame whose computed state matches the recorded state, i.e. the last keyframe
+   * checked before the divergence.
+   *
+   * @return the last matching frame, {@code 0} if no recorded state matches
+   */
+  public long getLastMatchingFrame() {
+    return lastMatchingFrame;
+  }
+
+  /**
+   * Get the first frame whose computed state differs from the recorded state.
+   *
+   * <p>
+   * The recorded states being keyframes, the game diverged after the
+   * {@link #getLastMatchingFrame() last matching frame} and no later than this frame.
+   * </p>
+   *
+   * @return the first divergent frame, {@code -1} if the game is as claimed
+   */
+  public long getFirstDivergentFrame() {
+    return firstDivergentFrame;
+  }
+
+  /**
+   * Get the computed final score.
+   *
+   * @return the computed score
+   */
+  public long getScore() {
+    return score;
+  }
+
+  /**
+   * Get the computed final lines.
+   *
+   * @return the computed lines
+   */
+  public int getLines() {
+    return lines;
+  }
+
+  /**
+   * Get the computed final board hash.
+   *
+   * @return the computed board hash
+   */
+  public long getBoardHash() {
+    return boardHash;
+  }
+
+  @Override
+  public String toString() {
+    return "VerificationResult [game=" + game + ", id=" + id
+        + (mismatch == null ? ", verified"
+            : ", mismatch=" + mismatch + ", lastMatchingFrame="
+                + lastMatchingFrame + ", firstDivergentFrame="
+                + firstDivergentFrame)
+        + ", score=" + score + ", lines=" + lines + ", boardHash=" + boardHash
+        + "]";
+  }
+}
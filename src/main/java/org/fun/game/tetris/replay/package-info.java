@@ -0,0 +1,4 @@
+/**
+ * Tetris game replays.
+ */
+package org.fun.game.tetris.replay;
@@ -0,0 +1,146 @@
+package org.fun.game.tetris.scores;
+
+import org.fun.game.tetris.Engine;
+import org.fun.game.tetris.Tetrion;
+
+/**
+ * The score of a game over, in a {@link HighScoreStore}.
+ *
+ * @author Mathieu Brunot
+ */
+public final class HighScore {
+
+  /**
+   * Time of the game over, in milliseconds since the epoch.
+   */
+  private final long time;
+  /**
+   * Mode of the game.
+   */
+  private final Tetrion.Mode mode;
+  /**
+   * Level the game started at.
+   */
+  private final int startLevel;
+  /**
+   * Score.
+   */
+  private final long score;
+  /**
+   * Number of lines cleared.
+   */
+  private final int lines;
+  /**
+   * Number of pieces locked.
+   */
+  private final int pieces;
+  /**
+   * Number of frames computed.
+   */
+  private final long frames;
+
+  /**
+   * Create a high score.
+   *
+   * @param gameOverTime the time of the game over, in milliseconds since the epoch
+   * @param gameMode the mode of the game
+   * @param gameStartLevel the level the game started at
+   * @param gameScore the score
+   * @param gameLines the number of lines cleared
+   * @param gamePieces the number of pieces locked
+   * @param gameFrames the number of frames computed
+   */
+  public HighScore(final long gameOverTime, final Tetrion.Mode gameMode,
+      final int gameStartLevel, final long gameScore, final int gameLines,
+      final int gamePieces, final long gameFrames) {
+    this.time = gameOverTime;
+    this.mode = gameMode;
+    this.startLevel = gameStartLevel;
+    this.score = gameScore;
+    this.lines = gameLines;
+    this.pieces = gamePieces;
+    this.frames = gameFrames;
+  }
+
+  /**
+   * Create the high score of the game of an engine, over now.
+   *
+   * @param engine the engine
+   * @return the high score
+   */
+  public static HighScore of(final Engine engine) {
+    return new HighScore(System.currentTimeMillis(), engine.getMode(),
+        engine.getStartLevel(), engine.getScore(), engine.getLines(),
+        engine.getPieces(), engine.getFrames());
+  }
+
+  /**
+   * Get the time of the game over.
+   *
+   * @return the time, in milliseconds since the epoch
+   */
+  public long getTime() {
+    return time;
+  }
+
+  /**
+   * Get the mode of the game.
+   *
+   * @return the mode
+   */
+  public Tetrion.Mode getMode() {
+    return mode;
+  }
+
+  /**
+   * Get the level the game started at.
+   *
+   * @return the start level
+   */
+  public int getStartLevel() {
+    return startLevel;
+  }
+
+  /**
+   * Get the score.
+   *
+   * @return the score
+   */
+  public long getScore() {
+    return score;
+  }
+
+  /**
+   * Get the number of lines cleared.
+   *
+   * @return the number of lines
+   */
+  public int getLines() {
+    return lines;
+  }
+
+  /**
+   * Get the number of pieces locked.
+   *
+   * @return the number of pieces
+   */
+  public int getPieces() {
+    return pieces;
+  }
+
+  /**
+   * Get the number of frames computed.
+   *
+   * @return the number of frames
+   */
+  public long getFrames() {
+    return frames;
+  }
+
+  @Override
+  public String toString() {
+    return "HighScore [time=" + time + ", mode=" + mode + ", startLevel="
+        + startLevel + ", score=" + score + ", lines=" + lines + ", pieces="
+        + pieces + ", frames=" + frames + "]";
+  }
+}
@@ -0,0 +1,562 @@
+package org.fun.game.tetris.scores;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.fun.game.tetris.Tetrion;
+import org.fun.game.tetris.Varint;
+
+/**
+ * A local store of the scores of the games over, ranking them per {@link Tetrion.Mode} and start
+ * level.
+ *
+ * <p>
+ * Games are appended to a log file, named after the store file with a {@code .log} extension, of
+ * fixed-width records. Once the log holds enough games, the store is compacted: the store file is
+ * replaced atomically by a snapshot of every table, holding the score of every game, to rank
+ * scores, but the details of the best high scores only, then the log is emptied. The snapshot and
+ * the log hold a generation number, so that a log already compacted into the snapshot, e.g. by a
+ * compaction interrupted before emptying it, is ignored.
+ * </p>
+ *
+ * <p>
+ * The tables are held in memory, about 8 bytes per game: the best high scores and the rank of any
+ * score are queried without scanning the games.
+ * </p>
+ *
+ * <pre>
+ * snapshot := SNAPSHOT_MAGIC VERSION generation tables (mode level count delta* top top*)*
+ * log      := LOG_MAGIC VERSION generation record*
+ * record   := time score frames lines pieces level(2 bytes) mode(ordinal, 1 byte) 0
+ * </pre>
+ *
+ * <p>
+ * A store is thread-safe.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public class HighScoreStore implements Closeable {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOGGER =
+      Logger.getLogger(HighScoreStore.class.getName());
+
+  /**
+   * Magic number starting a snapshot: {@code "TSCO"}.
+   */
+  private static final int SNAPSHOT_MAGIC = 0x5453434F;
+  /**
+   * Magic number starting a log: {@code "TSCL"}.
+   */
+  private static final int LOG_MAGIC = 0x5453434C;
+  /**
+   * Version of the formats.
+   */
+  private static final int VERSION = 1;
+  /**
+   * Length of the log header.
+   */
+  private static final int LOG_HEADER = 16;
+  /**
+   * Length of a log record.
+   */
+  private static final int RECORD_LENGTH = 36;
+  /**
+   * Number of log records read at once.
+   */
+  private static final int RECORDS_PER_READ = 1024;
+  /**
+   * Default number of best high scores kept per table.
+   */
+  public static final int DEFAULT_TOP_SIZE = 100;
+  /**
+   * Default number of games in the log triggering a compaction.
+   */
+  public static final int DEFAULT_COMPACTION_THRESHOLD = 1 << 16;
+
+  /**
+   * The store file, holding the last snapshot.
+   */
+  private final Path file;
+  /**
+   * The log of the games since the last snapshot.
+   */
+  private final FileChannel log;
+  /**
+   * Number of best high scores kept per table.
+   */
+  private final int topSize;
+  /**
+   * Tables, per mode and start level.
+   */
+  private final Map<Tetrion.Mode, Map<Integer, HighScoreTable>> tables =
+      new EnumMap<>(Tetrion.Mode.class);
+  /**
+   * Generation of the snapshot, and of the log.
+   */
+  private long generation = 0;
+  /**
+   * Number of games in the log.
+   */
+  private int logged = 0;
+  /**
+   * Number of games in the log triggering a compaction.
+   */
+  private int compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+  /**
+   * Record written to the log.
+   */
+  private final ByteBuffer record = ByteBuffer.allocate(RECORD_LENGTH);
+
+  /**
+   * Open a store, keeping the {@link #DEFAULT_TOP_SIZE default number} of best high scores.
+   *
+   * @param storeFile the store file, created if missing
+   * @throws IOException if the store cannot be read
+   */
+  public HighScoreStore(final Path storeFile) throws IOException {
+    this(storeFile, DEFAULT_TOP_SIZE);
+  }
+
+  /**
+   * Open a store.
+   *
+   * @param storeFile the store file, created if missing
+   * @param bestHighScores the number of best high scores kept per table
+   * @throws IOException if the store cannot be read
+   */
+  public HighScoreStore(final Path storeFile, final int bestHighScores)
+      throws IOException {
+    this.file = storeFile.toAbsolutePath();
+    this.topSize = Math.max(0, bestHighScores);
+    if (Files.exists(file)) {
+      readSnapshot();
+    }
+    this.log = FileChannel.open(logFile(),
+        StandardOpenOption.READ, StandardOpenOption.WRITE,
+        StandardOpenOption.CREATE);
+    try {
+      readLog();
+    } catch (IOException | RuntimeException ex) {
+      log.close();
+      throw ex;
+    }
+  }
+
+  /**
+   * Get the log file.
+   *
+   * @return the log file
+   */
+  private Path logFile() {
+    return file.resolveSibling(file.getFileName() + ".log");
+  }
+
+  /**
+   * Get the number of games in the log triggering a compaction.
+   *
+   * @return the number of games
+   */
+  public final synchronized int getCompactionThreshold() {
+    return compactionThreshold;
+  }
+
+  /**
+   * Set the number of games in the log triggering a compaction.
+   *
+   * @param games the number of games, {@code 0} to never compact automatically
+   */
+  public final synchronized void setCompactionThreshold(final int games) {
+    this.compactionThreshold = Math.max(0, games);
+  }
+
+  /**
+   * Get the number of best high scores kept per mode and start level.
+   *
+   * @return the number of best high scores
+   */
+  public final int getTopSize() {
+    return topSize;
+  }
+
+  // #########################################################################
+  /**
+   * Get the number of games.
+   *
+   * @return the number of games
+   */
+  public synchronized long getGames() {
+    long games = 0;
+    for (Map<Integer, HighScoreTable> levels : tables.values()) {
+      for (HighScoreTable table : levels.values()) {
+        games += table.getCount();
+      }
+    }
+    return games;
+  }
+
+  /**
+   * Get the number of games of a mode and start level.
+   *
+   * @param mode the mode
+   * @param startLevel the start level
+   * @return the number of games
+   */
+  public synchronized long getGames(final Tetrion.Mode mode,
+      final int startLevel) {
+    HighScoreTable table = table(mode, startLevel, false);
+    return table == null ? 0 : table.getCount();
+  }
+
+  /**
+   * Get the best high scores of a mode and start level.
+   *
+   * @param mode the mode
+   * @param startLevel the start level
+   * @param count the number of high scores, bounded by the {@link #getTopSize() number kept}
+   * @return the best high scores, best first
+   */
+  public synchronized List<HighScore> top(final Tetrion.Mode mode,
+      final int startLevel, final int count) {
+    HighScoreTable table = table(mode, startLevel, false);
+    if (table == null) {
+      return Collections.emptyList();
+    }
+    int size = Math.min(count, table.getTopCount());
+    List<HighScore> top = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      top.add(table.getTop(i));
+    }
+    return top;
+  }
+
+  /**
+   * Get the rank a score has among the games of a mode and start level.
+   *
+   * @param mode the mode
+   * @param startLevel the start level
+   * @param score the score
+   * @return the rank, from {@code 1}: one more than the number of greater scores
+   */
+  public synchronized long rank(final Tetrion.Mode mode, final int startLevel,
+      final long score) {
+    HighScoreTable table = table(mode, startLevel, false);
+    return table == null ? 1 : table.rank(score);
+  }
+
+  /**
+   * Add the score of a game over, compacting the store if the log is full.
+   *
+   * <p>
+   * The game is written to the log, but not forced to the disk.
+   * </p>
+   *
+   * @param highScore the high score of the game
+   * @throws IOException if the game cannot be written
+   *
+   * @see #force()
+   */
+  public synchronized void add(final HighScore highScore) throws IOException {
+    record.clear();
+    record.putLong(highScore.getTime()).putLong(highScore.getScore())
+        .putLong(highScore.getFrames()).putInt(highScore.getLines())
+        .putInt(highScore.getPieces())
+        .putShort((short) highScore.getStartLevel())
+        .put((byte) highScore.getMode().ordinal()).put((byte) 0).flip();
+    while (record.hasRemaining()) {
+      log.write(record);
+    }
+    logged++;
+    table(highScore.getMode(), highScore.getStartLevel(), true)
+        .add(highScore);
+
+    if (compactionThreshold > 0 && logged >= compactionThreshold) {
+      compact();
+    }
+  }
+
+  /**
+   * Compact the store: replace the store file by a snapshot of the tables, then empty the log.
+   *
+   * @throws IOException if the store cannot be written
+   */
+  public synchronized void compact() throws IOException {
+    Path temp = Files.createTempFile(file.getParent(),
+        file.getFileName().toString(), ".tmp");
+    try {
+      try (FileOutputStream fos = new FileOutputStream(temp.toFile())) {
+        DataOutputStream out =
+            new DataOutputStream(new BufferedOutputStream(fos));
+        writeSnapshot(out, generation + 1);
+        out.flush();
+        fos.getFD().sync();
+      }
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+    generation++;
+    resetLog();
+    LOGGER.log(Level.FINE, "Compacted {0} games to {1}",
+        new Object[] {logged, file});
+    logged = 0;
+  }
+
+  /**
+   * Force the games added to the disk.
+   *
+   * @throws IOException if the games cannot be forced
+   */
+  public synchronized void force() throws IOException {
+    log.force(false);
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    log.close();
+  }
+
+  // #########################################################################
+  /**
+   * Get the table of a mode and start level.
+   *
+   * @param mode the mode
+   * @param startLevel the start level
+   * @param create {@code true} to create a missing table
+   * @return the table, {@code null} if missing and not created
+   */
+  private HighScoreTable table(final Tetrion.Mode mode, final int startLevel,
+      final boolean create) {
+    Map<Integer, HighScoreTable> levels = tables.get(mode);
+    if (levels == null) {
+      if (!create) {
+        return null;
+      }
+      levels = new TreeMap<>();
+      tables.put(mode, levels);
+    }
+    HighScoreTable table = levels.get(startLevel);
+    if (table == null && create) {
+      table = new HighScoreTable(topSize);
+      levels.put(startLevel, table);
+    }
+    return table;
+  }
+
+  /**
+   * Write a snapshot of the tables.
+   *
+   * @param out the output
+   * @param snapshotGeneration the generation of the snapshot
+   * @throws IOException if the snapshot cannot be written
+   */
+  private void writeSnapshot(final DataOutput out,
+      final long snapshotGeneration) throws IOException {
+    out.writeInt(SNAPSHOT_MAGIC);
+    out.writeInt(VERSION);
+    out.writeLong(snapshotGeneration);
+    int count = 0;
+    for (Map<Integer, HighScoreTable> levels : tables.values()) {
+      count += levels.size();
+    }
+    out.writeInt(count);
+    for (Map.Entry<Tetrion.Mode, Map<Integer, HighScoreTable>> mode : tables
+        .entrySet()) {
+      for (Map.Entry<Integer, HighScoreTable> level : mode.getValue()
+          .entrySet()) {
+        HighScoreTable table = level.getValue();
+        out.writeUTF(mode.getKey().name());
+        out.writeInt(level.getKey());
+        out.writeInt(table.getCount());
+        long previous = 0;
+        for (int i = 0; i < table.getCount(); i++) {
+          long score = table.getScore(i);
+          Varint.write(out, score - previous);
+          previous = score;
+        }
+        out.writeInt(table.getTopCount());
+        for (int i = 0; i < table.getTopCount(); i++) {
+          HighScore highScore = table.getTop(i);
+          out.writeLong(highScore.getTime());
+          out.writeLong(highScore.getScore());
+          out.writeLong(highScore.getFrames());
+          out.writeInt(highScore.getLines());
+          out.writeInt(highScore.getPieces());
+        }
+      }
+    }
+  }
+
+  /**
+   * Read the snapshot of the store file.
+   *
+   * @throws IOException if the snapshot cannot be read or is invalid
+   */
+  private void readSnapshot() throws IOException {
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != SNAPSHOT_MAGIC) {
+        throw new IOException("Not a high score store: " + file);
+      }
+      int version = in.readInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported high score store version "
+            + version);
+      }
+      generation = in.readLong();
+      int count = in.readInt();
+      for (int t = 0; t < count; t++) {
+        Tetrion.Mode mode;
+        try {
+          mode = Tetrion.Mode.valueOf(in.readUTF());
+        } catch (IllegalArgumentException ex) {
+          throw new IOException("Invalid high score mode", ex);
+        }
+        int startLevel = in.readInt();
+        HighScoreTable table = table(mode, startLevel, true);
+        int games = in.readInt();
+        long score = 0;
+        for (int i = 0; i < games; i++) {
+          score += Varint.read(in);
+          table.append(score);
+        }
+        int top = in.readInt();
+        for (int i = 0; i < top; i++) {
+          long time = in.readLong();
+          long topScore = in.readLong();
+          long frames = in.readLong();
+          int lines = in.readInt();
+          int pieces = in.readInt();
+          table.addTop(new HighScore(time, mode, startLevel, topScore, lines,
+              pieces, frames));
+        }
+      }
+    }
+  }
+
+  /**
+   * Read the games of the log, unless already compacted, dropping an interrupted record.
+   *
+   * @throws IOException if the log cannot be read or is invalid
+   */
+  private void readLog() throws IOException {
+    long length = log.size();
+    if (length < LOG_HEADER) {
+      resetLog();
+      return;
+    }
+    ByteBuffer header = ByteBuffer.allocate(LOG_HEADER);
+    readFully(header, 0);
+    if (header.getInt() != LOG_MAGIC) {
+      throw new IOException("Not a high score log: " + logFile());
+    }
+    int version = header.getInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported high score log version " + version);
+    }
+    long logGeneration = header.getLong();
+    if (logGeneration < generation) {
+      LOGGER.log(Level.WARNING, "Dropping high score log already compacted");
+      resetLog();
+      return;
+    } else if (logGeneration > generation) {
+      throw new IOException("High score log newer than its store: "
+          + logFile());
+    }
+
+    long records = (length - LOG_HEADER) / RECORD_LENGTH;
+    long end = LOG_HEADER + records * RECORD_LENGTH;
+    if (end < length) {
+      LOGGER.log(Level.WARNING, "Dropping interrupted high score record");
+      log.truncate(end);
+    }
+    Tetrion.Mode[] modes = Tetrion.Mode.values();
+    ByteBuffer buffer = ByteBuffer.allocate(RECORDS_PER_READ * RECORD_LENGTH);
+    for (long position = LOG_HEADER; position < end;) {
+      buffer.clear();
+      buffer.limit((int) Math.min(buffer.capacity(), end - position));
+      readFully(buffer, position);
+      position += buffer.limit();
+      while (buffer.hasRemaining()) {
+        long time = buffer.getLong();
+        long score = buffer.getLong();
+        long frames = buffer.getLong();
+        int lines = buffer.getInt();
+        int pieces = buffer.getInt();
+        int startLevel = buffer.getShort();
+        int mode = buffer.get();
+        buffer.get();
+        if (mode < 0 || mode >= modes.length) {
+          throw new IOException("Invalid high score mode " + mode);
+        }
+        HighScoreTable table = table(modes[mode], startLevel, true);
+        table.append(score);
+        table.addTop(new HighScore(time, modes[mode], startLevel, score,
+            lines, pieces, frames));
+      }
+    }
+    logged = (int) records;
+    log.position(end);
+  }
+
+  /**
+   * Empty the log, for the current generation.
+   *
+   * @throws IOException if the log cannot be written
+   */
+  private void resetLog() throws IOException {
+    log.truncate(0);
+    ByteBuffer header = ByteBuffer.allocate(LOG_HEADER);
+    header.putInt(LOG_MAGIC).putInt(VERSION).putLong(generation).flip();
+    while (header.hasRemaining()) {
+      log.write(header, header.position());
+    }
+    log.force(false);
+    log.position(LOG_HEADER);
+  }
+
+  /**
+   * Read bytes of the log, up to the limit of the buffer, then flip the buffer.
+   *
+   * @param buffer the buffer
+   * @param position the position of the bytes in the log
+   * @throws IOException if the bytes cannot be read
+   */
+  private void readFully(final ByteBuffer buffer, final long position)
+      throws IOException {
+    long p = position;
+    while (buffer.hasRemaining()) {
+      int read = log.read(buffer, p);
+      if (read < 0) {
+        throw new EOFException("Truncated high score log");
+      }
+      p += read;
+    }
+    buffer.flip();
+  }
+}
@@ -0,0 +1,230 @@
+package org.fun.game.tetris.scores;
+
+import java.util.Arrays;
+
+/**
+ * The scores of the games of a mode and start level.
+ *
+ * <p>
+ * The table holds the score of every game, to rank any score, and the best high scores of its
+ * games, best first. Among equal scores, the first one added ranks first. The scores are sorted,
+ * but for the last ones added: these are sorted with the others once numerous enough, so that
+ * adding a game does not move all the scores, and ranking a score only scans them besides a
+ * binary search.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+final class HighScoreTable {
+
+  /**
+   * Initial capacity of the scores.
+   */
+  private static final int INITIAL_CAPACITY = 64;
+  /**
+   * Maximum number of scores added since the last sort, when adding games.
+   */
+  private static final int MAX_UNSORTED = 1024;
+
+  /**
+   * Scores of all the games, ascending up to {@link #sorted}, then unsorted up to {@link #count}.
+   */
+  private long[] scores = new long[INITIAL_CAPACITY];
+  /**
+   * Number of scores.
+   */
+  private int count = 0;
+  /**
+   * Number of sorted scores.
+   */
+  private int sorted = 0;
+  /**
+   * Scores added since the last sort, copied aside while merged with the sorted ones.
+   */
+  private long[] unsorted = new long[0];
+  /**
+   * Best high scores, best first, up to {@link #topCount}.
+   */
+  private final HighScore[] top;
+  /**
+   * Number of best high scores.
+   */
+  private int topCount = 0;
+
+  /**
+   * Create an empty table.
+   *
+   * @param topSize the number of best high scores kept
+   */
+  HighScoreTable(final int topSize) {
+    this.top = new HighScore[topSize];
+  }
+
+  /**
+   * Get the number of scores.
+   *
+   * @return the number of games
+   */
+  int getCount() {
+    return count;
+  }
+
+  /**
+   * Get the score at the given index of the scores, ascending.
+   *
+   * @param index the index of the score
+   * @return the score
+   */
+  long getScore(final int index) {
+    sort();
+    return scores[index];
+  }
+
+  /**
+   * Get the number of best high scores.
+   *
+   * @return the number of best high scores
+   */
+  int getTopCount() {
+    return topCount;
+  }
+
+  /**
+   * Get a best high score.
+   *
+   * @param index the rank of the high score, from {@code 0}
+   * @return the high score
+   */
+  HighScore getTop(final int index) {
+    return top[index];
+  }
+
+  /**
+   * Add a game.
+   *
+   * @param highScore the high score of the game
+   */
+  void add(final HighScore highScore) {
+    append(highScore.getScore());
+    if (count - sorted > MAX_UNSORTED) {
+      sort();
+    }
+    addTop(highScore);
+  }
+
+  /**
+   * Add the score of a game, without sorting the scores, e.g. when loading many games.
+   *
+   * @param score the score of the game
+   */
+  void append(final long score) {
+    ensureCapacity(count + 1);
+    scores[count++] = score;
+  }
+
+  /**
+   * Add a high score to the best high scores, if it is one of them.
+   *
+   * @param highScore the high score
+   */
+  void addTop(final HighScore highScore) {
+    long score = highScore.getScore();
+    if (topCount == top.length
+        && (topCount == 0 || score <= top[topCount - 1].getScore())) {
+      return;
+    }
+    int index = topCount;
+    while (index > 0 && top[index - 1].getScore() < score) {
+      index--;
+    }
+    int moved = Math.min(topCount, top.length - 1) - index;
+    System.arraycopy(top, index, top, index + 1, moved);
+    top[index] = highScore;
+    topCount = Math.min(topCount + 1, top.length);
+  }
+
+  /**
+   * Get the rank a score would have in the table.
+   *
+   * @param score the score
+   * @return the rank, from {@code 1}: one more than the number of greater scores
+   */
+  long rank(final long score) {
+    if (count - sorted > MAX_UNSORTED) {
+      sort();
+    }
+    long greater = sorted - upperBound(score);
+    for (int i = sorted; i < count; i++) {
+      if (scores[i] > score) {
+        greater++;
+      }
+    }
+    return greater + 1;
+  }
+
+  /**
+   * Find the index of the first sorted score greater than the given score.
+   *
+   * @param score the score
+   * @return the index, {@link #sorted} if no sorted score is greater
+   */
+  private int upperBound(final long score) {
+    int low = 0;
+    int high = sorted;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (scores[middle] <= score) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Sort the scores, if needed.
+   *
+   * <p>
+   * Only the scores added since the last sort are sorted, then merged with the sorted ones from
+   * the end of the array, so that the sort runs in linear time when only a few scores were added.
+   * </p>
+   */
+  private void sort() {
+    if (sorted == count) {
+      return;
+    }
+    Arrays.sort(scores, sorted, count);
+    int added = count - sorted;
+    if (added == count) {
+      sorted = count;
+      return;
+    }
+    if (unsorted.length < added) {
+      unsorted = new long[Math.max(added, MAX_UNSORTED + 1)];
+    }
+    System.arraycopy(scores, sorted, unsorted, 0, added);
+    int i = sorted - 1;
+    int j = added - 1;
+    for (int k = count - 1; j >= 0; k--) {
+      if (i >= 0 && scores[i] > unsorted[j]) {
+        scores[k] = scores[i--];
+      } else {
+        scores[k] = unsorted[j--];
+      }
+    }
+    sorted = count;
+  }
+
+  /**
+   * Ensure the scores can hold the given number of scores.
+   *
+   * @param capacity the number of scores
+   */
+  private void ensureCapacity(final int capacity) {
+    if (capacity > scores.length) {
+      scores = Arrays.copyOf(scores,
+          Math.max(capacity, scores.length + (scores.length >> 1)));
+    }
+  }
+}
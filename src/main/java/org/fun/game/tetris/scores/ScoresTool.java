@@ -0,0 +1,126 @@
+package org.fun.game.tetris.scores;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.fun.game.tetris.CommandLine;
+import org.fun.game.tetris.Engine;
+import org.fun.game.tetris.Tetrion;
+
+/**
+ * Command line tool printing the best high scores, and recording the scores of the games played.
+ *
+ * @author Mathieu Brunot
+ *
+ * @see HighScoreStore
+ */
+public final class ScoresTool {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOGGER =
+      Logger.getLogger(ScoresTool.class.getName());
+
+  /**
+   * Command line option to print the given number of best high scores of the high score store.
+   *
+   * @see CommandLine#SCORES_OPTION
+   */
+  public static final String TOP_OPTION = "--top";
+  /**
+   * Options of the tool.
+   */
+  public static final List<String> OPTIONS =
+      Collections.singletonList(TOP_OPTION);
+
+  /**
+   * Hidden constructor.
+   */
+  private ScoresTool() {}
+
+  /**
+   * Print the best high scores of the store for the mode and start level.
+   *
+   * @param options the command line options
+   * @throws CommandLine.UsageException if an option value is not valid
+   */
+  public static void run(final CommandLine options) {
+    Path file = options.getPath(CommandLine.SCORES_OPTION);
+    Tetrion.Mode mode =
+        options.getEnum(CommandLine.MODE_OPTION, Tetrion.Mode.class, null);
+    Tetrion.Mode actualMode = mode == null ? Tetrion.Mode.MIX : mode;
+    int level = options.getInt(CommandLine.LEVEL_OPTION, 0);
+    int count = options.getInt(TOP_OPTION, 0);
+    long start = System.nanoTime();
+    try (HighScoreStore store = new HighScoreStore(file)) {
+      System.out.println(String.format("%d games, %d in %s mode from level "
+          + "%d, loaded in %.1f ms", store.getGames(),
+          store.getGames(actualMode, level), actualMode, level,
+          (System.nanoTime() - start) / 1e6));
+      int rank = 1;
+      for (HighScore highScore : store.top(actualMode, level, count)) {
+        System.out.println(String.format("%3d. %10d %5d lines %6d pieces %tF",
+            rank++, highScore.getScore(), highScore.getLines(),
+            highScore.getPieces(), highScore.getTime()));
+      }
+    } catch (IOException ex) {
+      LOGGER.log(Level.SEVERE, "Cannot read high scores", ex);
+    }
+  }
+
+  /**
+   * Open a high score store, closed when the JVM exits.
+   *
+   * @param file the high score store
+   * @return the store, {@code null} if it cannot be opened
+   */
+  public static HighScoreStore open(final Path file) {
+    final HighScoreStore store;
+    try {
+      store = new HighScoreStore(file);
+    } catch (IOException ex) {
+      LOGGER.log(Level.SEVERE, "Cannot open high scores", ex);
+      return null;
+    }
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      try {
+        store.close();
+      } catch (IOException ex) {
+        LOGGER.log(Level.SEVERE, "Cannot close high scores", ex);
+      }
+    }));
+    return store;
+  }
+
+  /**
+   * Add the score of each game over of a Tetrion to a high score store, and print its rank.
+   *
+   * @param tetrion the Tetrion
+   * @param store the high score store
+   */
+  public static void record(final Tetrion tetrion,
+      final HighScoreStore store) {
+    tetrion.getEngine().addListener(new Engine.Listener() {
+      @Override
+      public void gameOver(final Engine engine) {
+        HighScore highScore = HighScore.of(engine);
+        try {
+          store.add(highScore);
+          store.force();
+        } catch (IOException ex) {
+          LOGGER.log(Level.SEVERE, "Cannot add high score", ex);
+        }
+        System.out.println(String.format("Score %d ranked %d of %d",
+            highScore.getScore(),
+            store.rank(highScore.getMode(), highScore.getStartLevel(),
+                highScore.getScore()),
+            store.getGames(highScore.getMode(), highScore.getStartLevel())));
+      }
+    });
+  }
+}
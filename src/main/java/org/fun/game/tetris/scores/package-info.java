@@ -0,0 +1,4 @@
+/**
+ * Tetris game high scores.
+ */
+package org.fun.game.tetris.scores;
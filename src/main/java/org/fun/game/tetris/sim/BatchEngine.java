@@ -0,0 +1,1310 @@
+package org.fun.game.tetris.sim;
+
+import org.fun.game.tetris.Attack;
+import org.fun.game.tetris.Board;
+import org.fun.game.tetris.Controller;
+import org.fun.game.tetris.Engine;
+import org.fun.game.tetris.Spin;
+import org.fun.game.tetris.Tetrion;
+import org.fun.game.tetris.Tetromino;
+import org.fun.game.tetris.Zobrist;
+
+/**
+ * Applies the rules of Tetris to many boards at once.
+ *
+ * <p>
+ * The state of all boards is stored in contiguous primitive arrays, one array per variable of the
+ * {@link Engine} (struct of arrays): rows of the playfields as bit masks, falling pieces as packed
+ * {@code int}s, bags and next queues of shapes as {@code byte}s. A call to {@link #tick(int[])}
+ * computes one frame of every board, with no object allocated and no object graph to follow.
+ * </p>
+ *
+ * <p>
+ * Each board computes exactly the same frames as an {@link Engine} started with the same level and
+ * seed, and polling the same inputs, as checked by the unit tests. Engine events and the danger
+ * zone are not tracked, and all boards are {@link Board#STANDARD} playfields.
+ * </p>
+ *
+ * <p>
+ * A batch engine is not thread-safe and should only be used by a single thread at a time.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ *
+ * @see Engine
+ */
+public class BatchEngine {
+
+  /**
+   * Number of lines needed to upgrade level.
+   */
+  private static final int LEVEL_RATIO = 10;
+  /**
+   * Ratio applied to "gravity" on manual soft drop.
+   */
+  private static final int SOFT_DROP_RATIO = 20;
+  /**
+   * Delayed Auto Shift delay.
+   */
+  private static final int AUTO_SHIFT_DELAY = 11;
+  /**
+   * Delayed Auto Shift period.
+   */
+  private static final int AUTO_SHIFT_PERIOD = 6;
+
+  /**
+   * Playfield width.
+   */
+  private static final int WIDTH = Board.STANDARD.getWidth();
+  /**
+   * Playfield height.
+   */
+  private static final int HEIGHT = Board.STANDARD.getHeight();
+  /**
+   * Bit mask of a full row.
+   */
+  private static final int FULL_ROW = (int) Board.STANDARD.fullWord(0);
+  /**
+   * {@code X} position of a new piece.
+   */
+  private static final int SPAWN_X = Board.STANDARD.getSpawnX();
+
+  // Shapes
+  /**
+   * All shapes, by ordinal.
+   */
+  private static final Tetromino.Shape[] SHAPES = Tetromino.Shape.values();
+  /**
+   * Shape ordinal standing for no shape, all bits of a packed shape being set.
+   */
+  private static final byte NO_SHAPE = (byte) SHAPES.length;
+  /**
+   * Ordinal of the shape whose rotations do not move its blocks.
+   */
+  private static final int O_SHAPE = Tetromino.Shape.O.ordinal();
+  /**
+   * Blocks coordinates, indexed by {@code ((shape * ROTATIONS + rotation) * BLOCKS + block) * 2},
+   * {@code X} coordinate first.
+   */
+  private static final byte[] BLOCKS = new byte[SHAPES.length
+      * Tetromino.ROTATIONS * Tetromino.BLOCKS * 2];
+  /**
+   * Piece widths, indexed by {@code shape * ROTATIONS + rotation}.
+   */
+  private static final byte[] WIDTHS =
+      new byte[SHAPES.length * Tetromino.ROTATIONS];
+  /**
+   * Piece heights, indexed by {@code shape * ROTATIONS + rotation}.
+   */
+  private static final byte[] HEIGHTS =
+      new byte[SHAPES.length * Tetromino.ROTATIONS];
+  /**
+   * {@code Y} positions of new pieces, indexed by shape.
+   */
+  private static final byte[] SPAWN_Y = new byte[SHAPES.length];
+
+  static {
+    for (Tetromino.Shape shape : SHAPES) {
+      int s = shape.ordinal();
+      SPAWN_Y[s] = (byte) Board.STANDARD.getSpawnY(shape);
+      for (int r = 0; r < Tetromino.ROTATIONS; r++) {
+        int minX = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        for (int i = 0; i < Tetromino.BLOCKS; i++) {
+          int x = shape.x(i, r);
+          int y = shape.y(i, r);
+          BLOCKS[(((s * Tetromino.ROTATIONS) + r) * Tetromino.BLOCKS + i)
+              * 2] = (byte) x;
+          BLOCKS[(((s * Tetromino.ROTATIONS) + r) * Tetromino.BLOCKS + i) * 2
+              + 1] = (byte) y;
+          minX = Math.min(minX, x);
+          maxX = Math.max(maxX, x);
+          minY = Math.min(minY, y);
+          maxY = Math.max(maxY, y);
+        }
+        WIDTHS[s * Tetromino.ROTATIONS + r] = (byte) (maxX - minX + 1);
+        HEIGHTS[s * Tetromino.ROTATIONS + r] = (byte) (maxY - minY + 1);
+      }
+    }
+  }
+
+  // Packed pieces
+  /**
+   * Bits of the shape ordinal of a packed piece.
+   */
+  private static final int SHAPE_MASK = 0x7;
+  /**
+   * Shift of the rotation state of a packed piece.
+   */
+  private static final int ROTATION_SHIFT = 3;
+  /**
+   * Shift of the {@code X} position of a packed piece.
+   */
+  private static final int X_SHIFT = 5;
+  /**
+   * Bits of the rotation state of a packed piece.
+   */
+  private static final int ROTATION_MASK =
+      (Tetromino.ROTATIONS - 1) << ROTATION_SHIFT;
+  /**
+   * Shift of the {@code Y} position of a packed piece.
+   */
+  private static final int Y_SHIFT = 11;
+  /**
+   * Bits of a position of a packed piece, once shifted.
+   */
+  private static final int POSITION_MASK = 0x3F;
+  /**
+   * Offset added to positions of packed pieces, whose blocks may lay on both sides of the origin.
+   */
+  private static final int POSITION_OFFSET = 8;
+
+  // Flags
+  /**
+   * Flag of a started game.
+   */
+  private static final int STARTED = 1;
+  /**
+   * Flag of a hard drop in progress.
+   */
+  private static final int DROPPING_HARD = 1 << 1;
+  /**
+   * Flag of a soft drop in progress.
+   */
+  private static final int DROPPING_SOFT = 1 << 2;
+  /**
+   * Flag of a left shift in progress.
+   */
+  private static final int SHIFTING_LEFT = 1 << 3;
+  /**
+   * Flag of a right shift in progress.
+   */
+  private static final int SHIFTING_RIGHT = 1 << 4;
+  /**
+   * Flag of a left rotation in progress.
+   */
+  private static final int ROTATING_LEFT = 1 << 5;
+  /**
+   * Flag of a right rotation in progress.
+   */
+  private static final int ROTATING_RIGHT = 1 << 6;
+  /**
+   * Flag of an available hold piece.
+   */
+  private static final int HOLD_AVAILABLE = 1 << 7;
+  /**
+   * Flags of any rotation in progress.
+   */
+  private static final int ROTATING = ROTATING_LEFT | ROTATING_RIGHT;
+  /**
+   * Shift of the kick of the last move plus one, {@code 0} if it was not a rotation.
+   *
+   * @see Spin
+   */
+  private static final int LAST_KICK_SHIFT = 8;
+  /**
+   * Flags of the kick of the last move.
+   */
+  private static final int LAST_KICK = 0x3 << LAST_KICK_SHIFT;
+  /**
+   * Ordinal of the T shape.
+   */
+  private static final int T_SHAPE = Tetromino.Shape.T.ordinal();
+
+  /**
+   * Increment of the shape generators state ({@code SplitMix64} golden gamma).
+   *
+   * @see Tetromino.Shape.RandomGenerator
+   */
+  private static final long GAMMA = 0x9E3779B97F4A7C15L;
+
+  /**
+   * Number of boards.
+   */
+  private final int boards;
+  /**
+   * Number of shapes kept in the next queues.
+   */
+  private final int queueSize;
+
+  // Behavior variables, shared by all boards
+  /**
+   * Current game mode.
+   */
+  private Tetrion.Mode mode;
+  /**
+   * Fixed-point ratio applied to gravity on each level up.
+   */
+  private int levelUpSpeedUpFactor;
+  /**
+   * Are wall kicks enabled?
+   */
+  private boolean wallKickEnabled;
+  /**
+   * Are floor kicks enabled?
+   */
+  private boolean floorKickEnabled;
+  /**
+   * Lock delay, in frames.
+   */
+  private long lockDelay;
+  /**
+   * Is infinity mode enabled?
+   */
+  private boolean infiniteLockDelayEnabled;
+
+  // Boards state
+  /**
+   * Playfields as bitboards, {@link #HEIGHT} rows per board.
+   */
+  private final int[] rows;
+  /**
+   * Falling pieces, packed: shape ordinal, rotation state, {@code X} and {@code Y} positions.
+   */
+  private final int[] pieces;
+  /**
+   * Hold shape ordinals.
+   */
+  private final byte[] holds;
+  /**
+   * State flags.
+   */
+  private final int[] flags;
+  /**
+   * Inputs pressed on the previous frame.
+   */
+  private final int[] inputs;
+  /**
+   * Rotations needed, negative for left rotations.
+   */
+  private final int[] rotationsNeeded;
+  /**
+   * Shift delay counts.
+   */
+  private final int[] shiftDelayCounts;
+  /**
+   * Number of frames since the last drop occurred.
+   */
+  private final int[] framesSinceLastDrop;
+  /**
+   * Number of frames the inputs kept asking for soft drops.
+   */
+  private final int[] framesContinouslySoftDropped;
+  /**
+   * Lock delay counts.
+   */
+  private final int[] lockDelayFrameCounts;
+  /**
+   * Number of lines cleared.
+   */
+  private final int[] lines;
+  /**
+   * Levels.
+   */
+  private final int[] levels;
+  /**
+   * Current fixed-point gravity forces.
+   */
+  private final int[] gravities;
+  /**
+   * Number of pieces locked since the game started.
+   */
+  private final int[] lockedPieces;
+  /**
+   * Scores.
+   */
+  private final long[] scores;
+  /**
+   * Number of frames computed since the game started.
+   */
+  private final long[] frames;
+  /**
+   * Seeds of the games.
+   */
+  private final long[] seeds;
+
+  // Shapes generators
+  /**
+   * Shape generators states.
+   */
+  private final long[] generatorStates;
+  /**
+   * Bags of shape ordinals, {@link #SHAPES} per board, the first {@link #bagSizes} being left.
+   */
+  private final byte[] bags;
+  /**
+   * Number of shapes left in the bags.
+   */
+  private final byte[] bagSizes;
+  /**
+   * Next queues of shape ordinals, {@link #queueSize} per board, as circular buffers.
+   */
+  private final byte[] queues;
+  /**
+   * Index of the first shape of the next queues.
+   */
+  private final byte[] queueHeads;
+
+  /**
+   * Constructor of a batch engine keeping as many next shapes as an {@link Engine}.
+   *
+   * @param numberOfBoards the number of boards
+   */
+  public BatchEngine(final int numberOfBoards) {
+    this(numberOfBoards, Engine.SHAPES_QUEUE_SIZE);
+  }
+
+  /**
+   * Constructor of a batch engine keeping a given number of next shapes.
+   *
+   * @param numberOfBoards the number of boards
+   * @param nextQueueSize the number of next shapes to keep in queue
+   * @throws IllegalArgumentException if the number of boards is negative or the queue is too large
+   */
+  public BatchEngine(final int numberOfBoards, final int nextQueueSize) {
+    if (numberOfBoards < 0) {
+      throw new IllegalArgumentException(
+          "Number of boards cannot be negative: " + numberOfBoards);
+    }
+    if (nextQueueSize > Byte.MAX_VALUE) {
+      throw new IllegalArgumentException(
+          "Next queue size too large: " + nextQueueSize);
+    }
+    this.boards = numberOfBoards;
+    this.queueSize = Math.max(1, nextQueueSize);
+    this.rows = new int[boards * HEIGHT];
+    this.pieces = new int[boards];
+    this.holds = new byte[boards];
+    this.flags = new int[boards];
+    this.inputs = new int[boards];
+    this.rotationsNeeded = new int[boards];
+    this.shiftDelayCounts = new int[boards];
+    this.framesSinceLastDrop = new int[boards];
+    this.framesContinouslySoftDropped = new int[boards];
+    this.lockDelayFrameCounts = new int[boards];
+    this.lines = new int[boards];
+    this.levels = new int[boards];
+    this.gravities = new int[boards];
+    this.lockedPieces = new int[boards];
+    this.scores = new long[boards];
+    this.frames = new long[boards];
+    this.seeds = new long[boards];
+    this.generatorStates = new long[boards];
+    this.bags = new byte[boards * SHAPES.length];
+    this.bagSizes = new byte[boards];
+    this.queues = new byte[boards * queueSize];
+    this.queueHeads = new byte[boards];
+    for (int k = 0; k < boards; k++) {
+      pieces[k] = NO_SHAPE;
+      holds[k] = NO_SHAPE;
+      framesContinouslySoftDropped[k] = -1;
+      gravities[k] = Engine.GRAVITY_ONE / Engine.FRAME_PER_SECOND;
+    }
+    this.setMode(null);
+  }
+
+  /**
+   * Set the Tetris game configuration of all boards based on the given {@link Tetrion.Mode}.
+   *
+   * @param newMode <em>standard</em> configurations for the Tetris game, {@link Tetrion.Mode#MIX}
+   *        if {@code null}
+   */
+  public final void setMode(final Tetrion.Mode newMode) {
+    Tetrion.Mode actualMode = newMode == null ? Tetrion.Mode.MIX : newMode;
+    this.mode = actualMode;
+    this.levelUpSpeedUpFactor =
+        Engine.toFixedPoint(actualMode.getLevelUpSpeedUpRatio());
+    this.wallKickEnabled = actualMode.isWallKickEnabled();
+    this.floorKickEnabled = actualMode.isFloorKickEnabled();
+    this.lockDelay = actualMode.getLockDelay();
+    this.infiniteLockDelayEnabled = actualMode.isInfiniteLockDelayEnabled();
+  }
+
+  /**
+   * Get the current game mode.
+   *
+   * @return the current game mode
+   */
+  public final Tetrion.Mode getMode() {
+    return mode;
+  }
+
+  /**
+   * Get the number of boards.
+   *
+   * @return the number of boards
+   */
+  public final int getBoards() {
+    return boards;
+  }
+
+  // #########################################################################
+  /**
+   * Has the game of a board started?
+   *
+   * @param board the board index
+   * @return {@code true} if the game has started and is not over yet
+   */
+  public final boolean isStarted(final int board) {
+    return (flags[board] & STARTED) != 0;
+  }
+
+  /**
+   * Get the number of lines cleared on a board.
+   *
+   * @param board the board index
+   * @return the number of lines cleared
+   */
+  public final int getLines(final int board) {
+    return lines[board];
+  }
+
+  /**
+   * Get the level of a board.
+   *
+   * @param board the board index
+   * @return the level
+   */
+  public final int getLevel(final int board) {
+    return levels[board];
+  }
+
+  /**
+   * Get the current gravity of a board, in cells per frame.
+   *
+   * @param board the board index
+   * @return the current gravity
+   */
+  public final double getGravity(final int board) {
+    return gravities[board] / (double) Engine.GRAVITY_ONE;
+  }
+
+  /**
+   * Get the score of a board.
+   *
+   * @param board the board index
+   * @return the score
+   */
+  public final long getScore(final int board) {
+    return scores[board];
+  }
+
+  /**
+   * Get the number of pieces locked on a board since its game started.
+   *
+   * @param board the board index
+   * @return the number of pieces locked
+   */
+  public final int getPieces(final int board) {
+    return lockedPieces[board];
+  }
+
+  /**
+   * Get the number of frames computed on a board since its game started.
+   *
+   * @param board the board index
+   * @return the number of frames computed
+   */
+  public final long getFrames(final int board) {
+    return frames[board];
+  }
+
+  /**
+   * Get the seed of the game of a board.
+   *
+   * @param board the board index
+   * @return the seed of the game
+   */
+  public final long getSeed(final int board) {
+    return seeds[board];
+  }
+
+  /**
+   * Get the inputs pressed on the last frame of a board.
+   *
+   * @param board the board index
+   * @return the bit mask of the inputs pressed on the last frame
+   * @see Controller
+   */
+  public final int getInputs(final int board) {
+    return inputs[board];
+  }
+
+  /**
+   * Get the shape of the falling piece of a board.
+   *
+   * @param board the board index
+   * @return the shape of the falling piece, {@code null} if none
+   */
+  public final Tetromino.Shape getShape(final int board) {
+    int shape = pieces[board] & SHAPE_MASK;
+    return shape == NO_SHAPE ? null : SHAPES[shape];
+  }
+
+  /**
+   * Get the rotation state of the falling piece of a board.
+   *
+   * @param board the board index
+   * @return the rotation state, from {@code 0} to {@link Tetromino#ROTATIONS} excluded
+   */
+  public final int getRotation(final int board) {
+    return rotationOf(pieces[board]);
+  }
+
+  /**
+   * Get the falling piece {@code X} position of a board.
+   *
+   * @param board the board index
+   * @return the falling piece {@code X} position
+   */
+  public final int getCurX(final int board) {
+    return xOf(pieces[board]);
+  }
+
+  /**
+   * Get the falling piece {@code Y} position of a board.
+   *
+   * @param board the board index
+   * @return the falling piece {@code Y} position
+   */
+  public final int getCurY(final int board) {
+    return yOf(pieces[board]);
+  }
+
+  /**
+   * Get the hold shape of a board.
+   *
+   * @param board the board index
+   * @return the hold shape, {@code null} if none
+   */
+  public final Tetromino.Shape getHoldShape(final int board) {
+    return holds[board] == NO_SHAPE ? null : SHAPES[holds[board]];
+  }
+
+  /**
+   * Is the hold piece of a board available yet?
+   *
+   * @param board the board index
+   * @return {@code true} if the hold piece can be switched with the falling piece
+   */
+  public final boolean isHoldPieceAvailable(final int board) {
+    return (flags[board] & HOLD_AVAILABLE) != 0;
+  }
+
+  /**
+   * Get the number of shapes kept in the next queues.
+   *
+   * @return the next queues size
+   */
+  public final int getQueueSize() {
+    return queueSize;
+  }
+
+  /**
+   * Get a shape of the next queue of a board.
+   *
+   * @param board the board index
+   * @param index the index in the queue, {@code 0} being the next shape
+   * @return the shape, undefined if the game of the board never started
+   */
+  public final Tetromino.Shape getNextShape(final int board, final int index) {
+    return SHAPES[queues[board * queueSize
+        + (queueHeads[board] + index) % queueSize]];
+  }
+
+  /**
+   * Get a row of the playfield of a board as a bit mask.
+   *
+   * @param board the board index
+   * @param y the row {@code Y} position
+   * @return the bit mask of the row
+   * @see Engine#rowAt(int)
+   */
+  public final int rowAt(final int board, final int y) {
+    return rows[board * HEIGHT + y];
+  }
+
+  /**
+   * Copy the playfield bitboard of a board.
+   *
+   * @param board the board index
+   * @param dest the array receiving the {@link #HEIGHT} rows of the playfield
+   */
+  public final void copyRows(final int board, final int[] dest) {
+    System.arraycopy(rows, board * HEIGHT, dest, 0, HEIGHT);
+  }
+
+  /**
+   * Get the Zobrist hash of the playfield of a board.
+   *
+   * @param board the board index
+   * @return the hash of the playfield
+   * @see Engine#getBoardHash()
+   */
+  public final long getBoardHash(final int board) {
+    long hash = 0;
+    for (int y = 0, offset = board * HEIGHT; y < HEIGHT; y++) {
+      hash ^= Zobrist.row(y, rows[offset + y]);
+    }
+    return hash;
+  }
+
+  // #########################################################################
+  /**
+   * Start the game of a board at given level, with the given seed.
+   *
+   * <p>
+   * As with {@link Engine#start(int, long)}, the inputs and their progress are reset.
+   * </p>
+   *
+   * @param board the board index
+   * @param startLevel the level of the game
+   * @param gameSeed the seed of the shapes generator
+   */
+  public void start(final int board, final int startLevel,
+      final long gameSeed) {
+    flags[board] = 0;
+    inputs[board] = Controller.NONE;
+    shiftDelayCounts[board] = 0;
+    rotationsNeeded[board] = 0;
+    lockDelayFrameCounts[board] = 0;
+    framesSinceLastDrop[board] = 0;
+    seeds[board] = gameSeed;
+    generatorStates[board] = gameSeed;
+    bagSizes[board] = 0;
+    queueHeads[board] = 0;
+    framesContinouslySoftDropped[board] = -1;
+    frames[board] = 0;
+    lockedPieces[board] = 0;
+    pieces[board] = NO_SHAPE;
+    holds[board] = NO_SHAPE;
+    lines[board] = 0;
+    scores[board] = 0;
+    setLevel(board, startLevel);
+    for (int y = 0, offset = board * HEIGHT; y < HEIGHT; y++) {
+      rows[offset + y] = 0;
+    }
+    for (int i = 0, offset = board * queueSize; i < queueSize; i++) {
+      queues[offset + i] = nextShape(board);
+    }
+    flags[board] |= STARTED;
+  }
+
+  /**
+   * Stop the game of a board.
+   *
+   * @param board the board index
+   */
+  public void stop(final int board) {
+    pieces[board] = removeShape(pieces[board]);
+    holds[board] = NO_SHAPE;
+    flags[board] &= ~STARTED;
+  }
+
+  /**
+   * Compute one frame of every started board.
+   *
+   * @param boardInputs the bit masks of the inputs pressed, by board
+   * @see Controller
+   */
+  public void tick(final int[] boardInputs) {
+    for (int k = 0; k < boards; k++) {
+      if ((flags[k] & STARTED) != 0) {
+        tick(k, boardInputs[k]);
+      }
+    }
+  }
+
+  /**
+   * Compute one frame of a started board.
+   *
+   * @param k the board index
+   * @param newInputs the bit mask of the inputs pressed
+   * @see Engine#tick()
+   */
+  private void tick(final int k, final int newInputs) {
+    frames[k]++;
+    int oldInputs = inputs[k];
+    if (newInputs != oldInputs) {
+      handleInputs(k, newInputs & ~oldInputs, oldInputs & ~newInputs);
+      inputs[k] = newInputs;
+      if ((flags[k] & STARTED) == 0) {
+        return;
+      }
+    }
+
+    int piece = pieces[k];
+    if ((piece & SHAPE_MASK) == NO_SHAPE) {
+      newPiece(k, false);
+      return;
+    }
+
+    // Rotation
+    int flag = flags[k];
+    if ((flag & ROTATING_LEFT) != 0 && rotationsNeeded[k] < 0) {
+      if (tryMove(k, rotateLeft(piece), xOf(piece), yOf(piece))) {
+        rotationsNeeded[k] = 0;
+      }
+    } else if ((flag & ROTATING_RIGHT) != 0 && rotationsNeeded[k] > 0) {
+      if (tryMove(k, rotateRight(piece), xOf(piece), yOf(piece))) {
+        rotationsNeeded[k] = 0;
+      }
+    }
+
+    // Shift
+    if ((flag & (SHIFTING_LEFT | SHIFTING_RIGHT)) != 0) {
+      int shiftDelayCount = shiftDelayCounts[k];
+      boolean shift;
+      if (shiftDelayCount >= 0) {
+        shift = shiftDelayCount >= AUTO_SHIFT_DELAY;
+        shiftDelayCounts[k] = shiftDelayCount + 1;
+      } else {
+        shift = shiftDelayCount >= -AUTO_SHIFT_PERIOD;
+        shiftDelayCounts[k] = shiftDelayCount - 1;
+      }
+      if (shift) {
+        piece = pieces[k];
+        if ((flag & SHIFTING_LEFT) != 0
+            && tryMove(k, piece, xOf(piece) - 1, yOf(piece))) {
+          shiftDelayCounts[k] = -1;
+        } else if ((flag & SHIFTING_RIGHT) != 0
+            && tryMove(k, piece, xOf(piece) + 1, yOf(piece))) {
+          shiftDelayCounts[k] = -1;
+        } else {
+          shiftDelayCounts[k] = 0;
+        }
+      }
+    }
+
+    // Gravity
+    framesSinceLastDrop[k]++;
+    long cellsDown = (long) gravities[k] * framesSinceLastDrop[k];
+    if ((flag & DROPPING_SOFT) != 0) {
+      cellsDown *= SOFT_DROP_RATIO;
+    }
+    boolean softDroppingWithoutLock = true;
+    while (cellsDown > Engine.GRAVITY_ONE && softDroppingWithoutLock) {
+      cellsDown -= Engine.GRAVITY_ONE;
+      softDroppingWithoutLock = softDrop(k);
+    }
+
+    // Lock
+    if (!softDroppingWithoutLock && lockDelayFrameCounts[k]++ >= lockDelay) {
+      pieceDropped(k);
+    }
+  }
+
+  /**
+   * Handle the inputs pressed and released since the previous frame of a board.
+   *
+   * @param k the board index
+   * @param pressed the bit mask of the inputs pressed
+   * @param released the bit mask of the inputs released
+   */
+  private void handleInputs(final int k, final int pressed,
+      final int released) {
+    // Releases
+    if ((released & Controller.SHIFT_LEFT) != 0) {
+      flags[k] &= ~SHIFTING_LEFT;
+      shiftDelayCounts[k] = 0;
+    }
+    if ((released & Controller.SHIFT_RIGHT) != 0) {
+      flags[k] &= ~SHIFTING_RIGHT;
+      shiftDelayCounts[k] = 0;
+    }
+    if ((released & Controller.SOFT_DROP) != 0) {
+      flags[k] &= ~DROPPING_SOFT;
+    }
+    if ((released & Controller.HARD_DROP) != 0) {
+      flags[k] &= ~DROPPING_HARD;
+    }
+    if ((released & Controller.ROTATE_LEFT) != 0) {
+      flags[k] &= ~ROTATING_LEFT;
+      rotationsNeeded[k] = 0;
+    }
+    if ((released & Controller.ROTATE_RIGHT) != 0) {
+      flags[k] &= ~ROTATING_RIGHT;
+      rotationsNeeded[k] = 0;
+    }
+
+    // Presses
+    if ((pressed & Controller.HOLD) != 0) {
+      holdPiece(k);
+    }
+    if ((pressed & Controller.SHIFT_LEFT) != 0) {
+      flags[k] |= SHIFTING_LEFT;
+      shiftDelayCounts[k] = 0;
+      int piece = pieces[k];
+      if ((piece & SHAPE_MASK) != NO_SHAPE) {
+        tryMove(k, piece, xOf(piece) - 1, yOf(piece));
+      }
+    }
+    if ((pressed & Controller.SHIFT_RIGHT) != 0) {
+      flags[k] |= SHIFTING_RIGHT;
+      shiftDelayCounts[k] = 0;
+      int piece = pieces[k];
+      if ((piece & SHAPE_MASK) != NO_SHAPE) {
+        tryMove(k, piece, xOf(piece) + 1, yOf(piece));
+      }
+    }
+    if ((pressed & Controller.SOFT_DROP) != 0) {
+      flags[k] |= DROPPING_SOFT;
+      if ((pieces[k] & SHAPE_MASK) != NO_SHAPE) {
+        framesSinceLastDrop[k] = 0;
+        framesContinouslySoftDropped[k] = 0;
+      }
+    }
+    if ((pressed & Controller.ROTATE_LEFT) != 0) {
+      flags[k] |= ROTATING_LEFT;
+      rotationsNeeded[k]--;
+    }
+    if ((pressed & Controller.ROTATE_RIGHT) != 0) {
+      flags[k] |= ROTATING_RIGHT;
+      rotationsNeeded[k]++;
+    }
+    if ((pressed & Controller.HARD_DROP) != 0) {
+      flags[k] |= DROPPING_HARD;
+      if ((pieces[k] & SHAPE_MASK) != NO_SHAPE) {
+        hardDrop(k);
+      }
+    }
+  }
+
+  // #########################################################################
+  /**
+   * Set the level of a board and its gravity.
+   *
+   * @param k the board index
+   * @param newLevel the new level
+   */
+  private void setLevel(final int k, final int newLevel) {
+    levels[k] = newLevel;
+    gravities[k] = Engine.gravity(levelUpSpeedUpFactor, newLevel);
+  }
+
+  /**
+   * Get the next shape of the generator of a board.
+   *
+   * @param k the board index
+   * @return the next shape ordinal
+   * @see Tetromino.Shape.RandomGenerator#nextShape()
+   */
+  private byte nextShape(final int k) {
+    int offset = k * SHAPES.length;
+    if (bagSizes[k] == 0) {
+      // Fisher-Yates shuffle of a new bag
+      long state = generatorStates[k];
+      for (int i = 0; i < SHAPES.length; i++) {
+        bags[offset + i] = (byte) i;
+      }
+      for (int i = SHAPES.length - 1; i > 0; i--) {
+        state += GAMMA;
+        long z = state;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z = z ^ (z >>> 31);
+        int j = (int) (((z >>> Integer.SIZE) * (i + 1)) >>> Integer.SIZE);
+        byte temp = bags[offset + i];
+        bags[offset + i] = bags[offset + j];
+        bags[offset + j] = temp;
+      }
+      generatorStates[k] = state;
+      bagSizes[k] = (byte) SHAPES.length;
+    }
+    return bags[offset + --bagSizes[k]];
+  }
+
+  /**
+   * Hard drop the falling piece of a board.
+   *
+   * @param k the board index
+   */
+  private void hardDrop(final int k) {
+    int iniY = yOf(pieces[k]);
+    int newY = iniY;
+    while (newY > 0) {
+      // Wall kicks may shift the piece while rotating
+      int piece = pieces[k];
+      if (!tryMove(k, piece, xOf(piece), newY - 1)) {
+        break;
+      }
+      --newY;
+    }
+    if ((flags[k] & DROPPING_HARD) != 0) {
+      scores[k] += 2 * (iniY - newY);
+    }
+
+    pieceDropped(k);
+  }
+
+  /**
+   * Soft drop the falling piece of a board.
+   *
+   * @param k the board index
+   * @return {@code true} if soft dropped occurred
+   */
+  private boolean softDrop(final int k) {
+    boolean droppingSoft = (flags[k] & DROPPING_SOFT) != 0;
+    if (droppingSoft && framesContinouslySoftDropped[k] >= 0) {
+      framesContinouslySoftDropped[k]++;
+    }
+    int piece = pieces[k];
+    if (!tryMove(k, piece, xOf(piece), yOf(piece) - 1)) {
+      if (droppingSoft && framesContinouslySoftDropped[k] >= 0) {
+        scores[k] += framesContinouslySoftDropped[k];
+      }
+      framesContinouslySoftDropped[k] = droppingSoft ? 0 : -1;
+      return false;
+    }
+
+    framesSinceLastDrop[k] = 0;
+    return true;
+  }
+
+  /**
+   * Lock the falling piece of a board and add it to the stack.
+   *
+   * @param k the board index
+   */
+  private void pieceDropped(final int k) {
+    int piece = pieces[k];
+    int blocks = blocksOf(piece);
+    int curX = xOf(piece);
+    int curY = yOf(piece);
+    int offset = k * HEIGHT;
+    int spin = Attack.NO_SPIN;
+    if ((piece & SHAPE_MASK) == T_SHAPE) {
+      spin = Spin.spin(rotationOf(piece),
+          ((flags[k] & LAST_KICK) >>> LAST_KICK_SHIFT) - 1, corners(k, curX, curY));
+    }
+    flags[k] &= ~LAST_KICK;
+    for (int i = 0; i < Tetromino.BLOCKS; ++i) {
+      int x = curX + BLOCKS[blocks + 2 * i];
+      int y = curY - BLOCKS[blocks + 2 * i + 1];
+      rows[offset + y] |= 1 << x;
+    }
+    lockDelayFrameCounts[k] = 0;
+    framesSinceLastDrop[k] = 0;
+    pieces[k] = removeShape(piece);
+    lockedPieces[k]++;
+    if (holds[k] != NO_SHAPE) {
+      flags[k] |= HOLD_AVAILABLE;
+    } else {
+      flags[k] &= ~HOLD_AVAILABLE;
+    }
+
+    removeFullLines(k, spin);
+  }
+
+  /**
+   * Get the corners of the center of a piece occupied on a board, walls and floor included.
+   *
+   * @param k the board index
+   * @param curX the {@code X} position of the piece
+   * @param curY the {@code Y} position of the piece
+   * @return the mask of the occupied corners
+   * @see Spin#cornerX(int)
+   * @see Spin#cornerY(int)
+   */
+  private int corners(final int k, final int curX, final int curY) {
+    int offset = k * HEIGHT;
+    int corners = 0;
+    for (int c = 0; c < Spin.CORNERS; c++) {
+      int x = curX + Spin.cornerX(c);
+      int y = curY + Spin.cornerY(c);
+      if (x < 0 || x >= WIDTH || y < 0 || y >= HEIGHT
+          || (rows[offset + y] & (1 << x)) != 0) {
+        corners |= 1 << c;
+      }
+    }
+    return corners;
+  }
+
+  /**
+   * Remove full lines from the stack of a board.
+   *
+   * @param k the board index
+   * @param spin the kind of spin of the piece locked
+   */
+  private void removeFullLines(final int k, final int spin) {
+    int numFullLines = 0;
+    int offset = k * HEIGHT;
+    for (int i = HEIGHT - 1; i >= 0; --i) {
+      if (rows[offset + i] == FULL_ROW) {
+        ++numFullLines;
+        // Rows above move down, the top row being kept
+        System.arraycopy(rows, offset + i + 1, rows, offset + i,
+            HEIGHT - 1 - i);
+      }
+    }
+
+    if (numFullLines > 0 || spin != Attack.NO_SPIN) {
+      lines[k] += numFullLines;
+      int level = levels[k];
+      int scoreToAdd =
+          Attack.score(Attack.clearType(spin, numFullLines)) * (level + 1);
+      scores[k] += scoreToAdd * (level + 1);
+      if (lines[k] / LEVEL_RATIO > (lines[k] - numFullLines) / LEVEL_RATIO) {
+        setLevel(k, level + 1);
+      }
+    }
+  }
+
+  /**
+   * Hold the falling piece of a board.
+   *
+   * @param k the board index
+   */
+  private void holdPiece(final int k) {
+    if ((flags[k] & STARTED) == 0
+        || (holds[k] != NO_SHAPE && (flags[k] & HOLD_AVAILABLE) == 0)) {
+      return;
+    }
+
+    newPiece(k, true);
+  }
+
+  /**
+   * Generate a new piece at the top of the playfield of a board.
+   *
+   * @param k the board index
+   * @param switchWithHoldPiece switch current piece with the hold piece
+   */
+  private void newPiece(final int k, final boolean switchWithHoldPiece) {
+    int shape;
+    if (switchWithHoldPiece && holds[k] != NO_SHAPE) {
+      shape = holds[k];
+      holds[k] = (byte) (pieces[k] & SHAPE_MASK);
+      flags[k] &= ~HOLD_AVAILABLE;
+    } else {
+      if (switchWithHoldPiece) {
+        holds[k] = (byte) (pieces[k] & SHAPE_MASK);
+        flags[k] &= ~HOLD_AVAILABLE;
+      }
+
+      int head = queueHeads[k];
+      int index = k * queueSize + head;
+      shape = queues[index];
+      queues[index] = nextShape(k);
+      queueHeads[k] = (byte) (head + 1 == queueSize ? 0 : head + 1);
+    }
+    int piece = pack(shape, 0, SPAWN_X, SPAWN_Y[shape]);
+    pieces[k] = piece;
+
+    if (!tryMove(k, piece, SPAWN_X, SPAWN_Y[shape])) {
+      stop(k);
+    }
+  }
+
+  /**
+   * Can the given piece be moved at the given position on a board.
+   *
+   * @param k the board index
+   * @param piece the packed piece to test
+   * @param newX the new {@code X} position
+   * @param newY the new {@code Y} position
+   * @return {@code true} if the piece can be moved at the given position
+   */
+  private boolean isMoveable(final int k, final int piece, final int newX,
+      final int newY) {
+    int blocks = blocksOf(piece);
+    int offset = k * HEIGHT;
+    for (int i = 0; i < Tetromino.BLOCKS; ++i) {
+      int x = newX + BLOCKS[blocks + 2 * i];
+      int y = newY - BLOCKS[blocks + 2 * i + 1];
+      if (x < 0 || x >= WIDTH || y < 0 || y >= HEIGHT) {
+        return false;
+      }
+      if ((rows[offset + y] & (1 << x)) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Try to move the given piece at the given position on a board, with wall and floor kicks.
+   *
+   * @param k the board index
+   * @param piece the packed piece to test, replacing the falling piece if moved
+   * @param newX the new {@code X} position
+   * @param newY the new {@code Y} position
+   * @return {@code true} if the piece was moved
+   * @see Engine
+   */
+  private boolean tryMove(final int k, final int piece, final int newX,
+      final int newY) {
+    int finalNewX = newX;
+    int finalNewY = newY;
+
+    boolean isMoveable = isMoveable(k, piece, finalNewX, finalNewY);
+    boolean rotating = (flags[k] & ROTATING) != 0;
+
+    if (!isMoveable && wallKickEnabled && rotating) {
+      int newWidth = WIDTHS[sizeIndex(piece)];
+      if (newX >= 0 && newX <= WIDTH - newWidth - 1) {
+        for (int x = newX + 1, l = newX + newWidth - 1; x < l
+            && !isMoveable; x++) {
+          if (isMoveable(k, piece, x, newY)) {
+            finalNewX = x;
+            isMoveable = true;
+          }
+        }
+      } else if (newX >= newWidth - 1 && newX <= WIDTH - 1) {
+        for (int x = newX - 1, l = newX - newWidth - 1; x > l
+            && !isMoveable; x--) {
+          if (isMoveable(k, piece, x, newY)) {
+            finalNewX = x;
+            isMoveable = true;
+          }
+        }
+      }
+    }
+
+    if (!isMoveable && floorKickEnabled && rotating) {
+      int newHeight = HEIGHTS[sizeIndex(piece)];
+      if (newY >= 0 && newY <= HEIGHT - newHeight - 1) {
+        for (int y = newY + 1, l = newY + newHeight; y < l
+            && !isMoveable; y++) {
+          if (isMoveable(k, piece, newX, y)) {
+            finalNewY = y;
+            isMoveable = true;
+          }
+        }
+      }
+    }
+
+    if (isMoveable) {
+      if (infiniteLockDelayEnabled) {
+        lockDelayFrameCounts[k] = 0;
+      }
+      int kick;
+      if (rotationOf(piece) == rotationOf(pieces[k])) {
+        kick = Spin.NOT_ROTATED;
+      } else if (finalNewX != newX) {
+        kick = Spin.WALL_KICK;
+      } else if (finalNewY != newY) {
+        kick = Spin.FLOOR_KICK;
+      } else {
+        kick = Spin.NO_KICK;
+      }
+      flags[k] = flags[k] & ~LAST_KICK | (kick + 1) << LAST_KICK_SHIFT;
+      pieces[k] = pack(piece & SHAPE_MASK, rotationOf(piece), finalNewX,
+          finalNewY);
+      return true;
+    } else {
+      return false;
+    }
+  }
+
+  // #########################################################################
+  /**
+   * Pack a piece.
+   *
+   * @param shape the shape ordinal
+   * @param rotation the rotation state
+   * @param x the {@code X} position
+   * @param y the {@code Y} position
+   * @return the packed piece
+   */
+  private static int pack(final int shape, final int rotation, final int x,
+      final int y) {
+    return shape | (rotation << ROTATION_SHIFT)
+        | ((x + POSITION_OFFSET) << X_SHIFT)
+        | ((y + POSITION_OFFSET) << Y_SHIFT);
+  }
+
+  /**
+   * Remove the shape of a packed piece, keeping its position.
+   *
+   * @param piece the packed piece
+   * @return the packed piece without shape nor rotation
+   * @see Tetromino#setShape(Tetromino.Shape)
+   */
+  private static int removeShape(final int piece) {
+    return (piece & ~ROTATION_MASK) | NO_SHAPE;
+  }
+
+  /**
+   * Get the rotation state of a packed piece.
+   *
+   * @param piece the packed piece
+   * @return the rotation state
+   */
+  private static int rotationOf(final int piece) {
+    return (piece >>> ROTATION_SHIFT) & (Tetromino.ROTATIONS - 1);
+  }
+
+  /**
+   * Get the {@code X} position of a packed piece.
+   *
+   * @param piece the packed piece
+   * @return the {@code X} position
+   */
+  private static int xOf(final int piece) {
+    return ((piece >>> X_SHIFT) & POSITION_MASK) - POSITION_OFFSET;
+  }
+
+  /**
+   * Get the {@code Y} position of a packed piece.
+   *
+   * @param piece the packed piece
+   * @return the {@code Y} position
+   */
+  private static int yOf(final int piece) {
+    return ((piece >>> Y_SHIFT) & POSITION_MASK) - POSITION_OFFSET;
+  }
+
+  /**
+   * Get the index of the sizes of a packed piece.
+   *
+   * @param piece the packed piece, with a shape
+   * @return the index in {@link #WIDTHS} and {@link #HEIGHTS}
+   */
+  private static int sizeIndex(final int piece) {
+    return (piece & SHAPE_MASK) * Tetromino.ROTATIONS + rotationOf(piece);
+  }
+
+  /**
+   * Get the index of the blocks coordinates of a packed piece.
+   *
+   * @param piece the packed piece, with a shape
+   * @return the index in {@link #BLOCKS}
+   */
+  private static int blocksOf(final int piece) {
+    return sizeIndex(piece) * Tetromino.BLOCKS * 2;
+  }
+
+  /**
+   * Rotate a packed piece 90° counter clockwise.
+   *
+   * @param piece the packed piece
+   * @return the packed piece rotated
+   * @see Tetromino#rotateLeft()
+   */
+  private static int rotateLeft(final int piece) {
+    if ((piece & SHAPE_MASK) == O_SHAPE) {
+      return piece;
+    }
+    int rotation = (rotationOf(piece) + Tetromino.ROTATIONS - 1)
+        % Tetromino.ROTATIONS;
+    return (piece & ~ROTATION_MASK) | (rotation << ROTATION_SHIFT);
+  }
+
+  /**
+   * Rotate a packed piece 90° clockwise.
+   *
+   * @param piece the packed piece
+   * @return the packed piece rotated
+   * @see Tetromino#rotateRight()
+   */
+  private static int rotateRight(final int piece) {
+    if ((piece & SHAPE_MASK) == O_SHAPE) {
+      return piece;
+    }
+    int rotation = (rotationOf(piece) + 1) % Tetromino.ROTATIONS;
+    return (piece & ~ROTATION_MASK) | (rotation << ROTATION_SHIFT);
+  }
+}
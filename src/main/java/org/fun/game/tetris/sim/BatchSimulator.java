@@ -0,0 +1,288 @@
+package org.fun.game.tetris.sim;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.fun.game.tetris.Engine;
+import org.fun.game.tetris.Tetrion;
+import org.fun.game.tetris.ai.AbstractBot;
+import org.fun.game.tetris.ai.BotType;
+import org.fun.game.tetris.ai.Evaluator;
+
+/**
+ * Runs many seeded headless games played by bots, on all cores.
+ *
+ * <p>
+ * Each worker thread owns an {@link Engine} and a bot, and plays games one after the other until
+ * the requested number of games is reached. Game {@code i} of a batch is started with the seed
+ * {@code seed + i}, so that any game can be played again on its own. Results are streamed to the
+ * {@link Statistics} and to an optional listener as soon as each game ends.
+ * </p>
+ *
+ * <p>
+ * Bots run their parallel tasks, if any, on the pool of the workers.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public class BatchSimulator {
+
+  /**
+   * Number of games.
+   */
+  private long games = 1;
+  /**
+   * Seed of the first game.
+   */
+  private long seed = 0;
+  /**
+   * Game mode.
+   */
+  private Tetrion.Mode mode = Tetrion.Mode.MIX;
+  /**
+   * Start level.
+   */
+  private int level = 0;
+  /**
+   * Bot playing the games.
+   */
+  private BotType bot = BotType.HEURISTIC;
+  /**
+   * Playfield evaluator of the bots.
+   */
+  private Evaluator evaluator = new Evaluator();
+  /**
+   * Number of pieces after which a game is ended.
+   */
+  private int maxPieces = 10000;
+  /**
+   * Number of worker threads.
+   */
+  private int threads = Runtime.getRuntime().availableProcessors();
+  /**
+   * Listener of each game result, may be {@code null}.
+   */
+  private Consumer<GameResult> listener = null;
+
+  /**
+   * Get the number of games.
+   *
+   * @return the number of games
+   */
+  public final long getGames() {
+    return games;
+  }
+
+  /**
+   * Set the number of games.
+   *
+   * @param numberOfGames the number of games
+   */
+  public final void setGames(final long numberOfGames) {
+    this.games = numberOfGames;
+  }
+
+  /**
+   * Get the seed of the first game.
+   *
+   * @return the seed of the first game
+   */
+  public final long getSeed() {
+    return seed;
+  }
+
+  /**
+   * Set the seed of the first game.
+   *
+   * @param firstSeed the seed of the first game
+   */
+  public final void setSeed(final long firstSeed) {
+    this.seed = firstSeed;
+  }
+
+  /**
+   * Get the game mode.
+   *
+   * @return the game mode
+   */
+  public final Tetrion.Mode getMode() {
+    return mode;
+  }
+
+  /**
+   * Set the game mode.
+   *
+   * @param gameMode the game mode
+   */
+  public final void setMode(final Tetrion.Mode gameMode) {
+    this.mode = gameMode;
+  }
+
+  /**
+   * Get the start level.
+   *
+   * @return the start level
+   */
+  public final int getLevel() {
+    return level;
+  }
+
+  /**
+   * Set the start level.
+   *
+   * @param startLevel the start level
+   */
+  public final void setLevel(final int startLevel) {
+    this.level = startLevel;
+  }
+
+  /**
+   * Get the bot playing the games.
+   *
+   * @return the bot type
+   */
+  public final BotType getBot() {
+    return bot;
+  }
+
+  /**
+   * Set the bot playing the games.
+   *
+   * @param botType the bot type
+   */
+  public final void setBot(final BotType botType) {
+    this.bot = botType;
+  }
+
+  /**
+   * Get the playfield evaluator of the bots.
+   *
+   * @return the playfield evaluator
+   */
+  public final Evaluator getEvaluator() {
+    return evaluator;
+  }
+
+  /**
+   * Set the playfield evaluator of the bots.
+   *
+   * @param playfieldEvaluator the playfield evaluator
+   */
+  public final void setEvaluator(final Evaluator playfieldEvaluator) {
+    this.evaluator = playfieldEvaluator;
+  }
+
+  /**
+   * Get the number of pieces after which a game is ended.
+   *
+   * @return the maximum number of pieces of a game
+   */
+  public final int getMaxPieces() {
+    return maxPieces;
+  }
+
+  /**
+   * Set the number of pieces after which a game is ended.
+   *
+   * @param maximumPieces the maximum number of pieces of a game
+   */
+  public final void setMaxPieces(final int maximumPieces) {
+    this.maxPieces = maximumPieces;
+  }
+
+  /**
+   * Get the number of worker threads.
+   *
+   * @return the number of worker threads
+   */
+  public final int getThreads() {
+    return threads;
+  }
+
+  /**
+   * Set the number of worker threads.
+   *
+   * @param workerThreads the number of worker threads
+   */
+  public final void setThreads(final int workerThreads) {
+    this.threads = Math.max(1, workerThreads);
+  }
+
+  /**
+   * Set the listener of each game result.
+   *
+   * <p>
+   * The listener is called from the worker threads.
+   * </p>
+   *
+   * @param resultListener the listener, may be {@code null}
+   */
+  public final void setListener(final Consumer<GameResult> resultListener) {
+    this.listener = resultListener;
+  }
+
+  // #########################################################################
+  /**
+   * Run the games.
+   *
+   * @return the statistics of the games
+   */
+  public Statistics run() {
+    Statistics statistics = new Statistics();
+    AtomicLong nextGame = new AtomicLong();
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      ForkJoinTask<?>[] workers = new ForkJoinTask<?>[threads];
+      for (int i = 0; i < threads; i++) {
+        workers[i] = pool.submit(() -> work(pool, nextGame, statistics));
+      }
+      for (ForkJoinTask<?> worker : workers) {
+        worker.join();
+      }
+    } finally {
+      pool.shutdown();
+    }
+    return statistics;
+  }
+
+  /**
+   * Play games until all games are played.
+   *
+   * @param pool the pool of the workers
+   * @param nextGame the index of the next game to play
+   * @param statistics the statistics of the games
+   */
+  private void work(final ForkJoinPool pool, final AtomicLong nextGame,
+      final Statistics statistics) {
+    Engine engine = new Engine();
+    engine.setMode(mode);
+    AbstractBot player = bot.create(evaluator, pool);
+    engine.setController(player);
+    for (long game = nextGame.getAndIncrement(); game < games; game =
+        nextGame.getAndIncrement()) {
+      GameResult result = play(engine, game);
+      statistics.add(result);
+      if (listener != null) {
+        listener.accept(result);
+      }
+    }
+  }
+
+  /**
+   * Play a game.
+   *
+   * @param engine the engine, with its controller
+   * @param game the index of the game
+   * @return the game result
+   */
+  public GameResult play(final Engine engine, final long game) {
+    long start = System.nanoTime();
+    engine.start(level, seed + game);
+    while (engine.isStarted() && engine.getPieces() < maxPieces) {
+      engine.tick();
+    }
+    return new GameResult(game, engine, System.nanoTime() - start);
+  }
+}
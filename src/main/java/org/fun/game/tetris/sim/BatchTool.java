@@ -0,0 +1,145 @@
+package org.fun.game.tetris.sim;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.fun.game.tetris.CommandLine;
+import org.fun.game.tetris.Tetrion;
+import org.fun.game.tetris.ai.BotType;
+import org.fun.game.tetris.scores.HighScore;
+import org.fun.game.tetris.scores.HighScoreStore;
+import org.fun.game.tetris.scores.ScoresTool;
+
+/**
+ * Command line tool playing headless games.
+ *
+ * @author Mathieu Brunot
+ *
+ * @see BatchSimulator
+ */
+public final class BatchTool {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOGGER =
+      Logger.getLogger(BatchTool.class.getName());
+
+  /**
+   * Command line option to run the given number of headless games.
+   */
+  public static final String BATCH_OPTION = "--batch";
+  /**
+   * Command line option to print each headless game result as CSV.
+   */
+  public static final String CSV_OPTION = "--csv";
+  /**
+   * Options of the tool.
+   */
+  public static final List<String> OPTIONS = Collections.unmodifiableList(
+      Arrays.asList(BATCH_OPTION, CSV_OPTION));
+
+  /**
+   * Number of progress reports of headless games.
+   */
+  private static final int BATCH_REPORTS = 10;
+
+  /**
+   * Hidden constructor.
+   */
+  private BatchTool() {}
+
+  /**
+   * Run headless games and print their statistics.
+   *
+   * @param options the command line options
+   * @throws CommandLine.UsageException if an option value is not valid
+   */
+  public static void run(final CommandLine options) {
+    final BatchSimulator simulator = new BatchSimulator();
+    simulator.setGames(options.getLong(BATCH_OPTION, simulator.getGames()));
+    configure(simulator, options);
+    final boolean csv = options.has(CSV_OPTION);
+    final HighScoreStore scores = options.has(CommandLine.SCORES_OPTION)
+        ? ScoresTool.open(options.getPath(CommandLine.SCORES_OPTION)) : null;
+
+    final long reportPeriod =
+        Math.max(1, simulator.getGames() / BATCH_REPORTS);
+    final Statistics progress = new Statistics();
+    if (csv) {
+      System.out.println(GameResult.CSV_HEADER);
+    }
+    simulator.setListener(result -> {
+      if (csv) {
+        System.out.println(result.toCsv());
+      }
+      progress.add(result);
+      if (scores != null) {
+        try {
+          scores.add(new HighScore(System.currentTimeMillis(),
+              simulator.getMode(), simulator.getLevel(), result.getScore(),
+              result.getLines(), result.getPieces(), result.getFrames()));
+        } catch (IOException ex) {
+          LOGGER.log(Level.SEVERE, "Cannot add high score", ex);
+        }
+      }
+      if (progress.getGames() % reportPeriod == 0) {
+        StringBuilder summary = new StringBuilder();
+        progress.writeSummaryTo(summary);
+        System.err.println(summary);
+      }
+    });
+
+    long start = System.nanoTime();
+    Statistics statistics = simulator.run();
+    double seconds = (System.nanoTime() - start) / 1e9;
+
+    StringBuilder report = new StringBuilder();
+    report.append(String.format("%d games played by %s in %s mode on %d "
+        + "threads in %.1f s (%.0f pieces/s)%n", statistics.getGames(),
+        simulator.getBot(), simulator.getMode(), simulator.getThreads(),
+        seconds, statistics.getTotalPieces() / seconds));
+    statistics.writeTo(report);
+    System.err.print(report);
+    if (scores != null) {
+      try {
+        scores.force();
+      } catch (IOException ex) {
+        LOGGER.log(Level.SEVERE, "Cannot write high scores", ex);
+      }
+    }
+  }
+
+  /**
+   * Configure the headless games of a simulator from the command line options: mode, bot, start
+   * level, seed, number of pieces and threads.
+   *
+   * @param simulator the simulator to configure
+   * @param options the command line options
+   * @throws CommandLine.UsageException if an option value is not valid
+   */
+  public static void configure(final BatchSimulator simulator,
+      final CommandLine options) {
+    Tetrion.Mode mode =
+        options.getEnum(CommandLine.MODE_OPTION, Tetrion.Mode.class, null);
+    if (mode != null) {
+      simulator.setMode(mode);
+    }
+    BotType bot = options.getEnum(CommandLine.BOT_OPTION, BotType.class,
+        BotType.HEURISTIC);
+    if (bot != null) {
+      simulator.setBot(bot);
+    }
+    simulator.setLevel(
+        options.getInt(CommandLine.LEVEL_OPTION, simulator.getLevel()));
+    simulator.setSeed(
+        options.getLong(CommandLine.SEED_OPTION, simulator.getSeed()));
+    simulator.setMaxPieces(options.getInt(CommandLine.MAX_PIECES_OPTION,
+        simulator.getMaxPieces()));
+    simulator.setThreads(options.getThreads());
+  }
+}
@@ -0,0 +1,177 @@
+package org.fun.game.tetris.sim;
+
+import org.fun.game.tetris.Engine;
+
+/**
+ * The result of a simulated game.
+ *
+ * @author Mathieu Brunot
+ */
+public final class GameResult {
+
+  /**
+   * Header of the CSV representation of results.
+   *
+   * @see #toCsv()
+   */
+  public static final String CSV_HEADER =
+      "game,seed,score,lines,level,pieces,frames,nanos,topped_out";
+
+  /**
+   * Index of the game in its batch.
+   */
+  private final long game;
+  /**
+   * Seed of the game.
+   */
+  private final long seed;
+  /**
+   * Final score.
+   */
+  private final long score;
+  /**
+   * Lines cleared.
+   */
+  private final int lines;
+  /**
+   * Level reached.
+   */
+  private final int level;
+  /**
+   * Pieces locked.
+   */
+  private final int pieces;
+  /**
+   * Frames computed, i.e. game duration.
+   */
+  private final long frames;
+  /**
+   * Time spent computing the game, in nanoseconds.
+   */
+  private final long nanos;
+  /**
+   * Did the game end by a top out, rather than by reaching the pieces limit?
+   */
+  private final boolean toppedOut;
+
+  /**
+   * Create the result of a finished game.
+   *
+   * @param gameIndex index of the game in its batch
+   * @param engine the engine of the game
+   * @param computeNanos time spent computing the game, in nanoseconds
+   */
+  public GameResult(final long gameIndex, final Engine engine,
+      final long computeNanos) {
+    this.game = gameIndex;
+    this.seed = engine.getSeed();
+    this.score = engine.getScore();
+    this.lines = engine.getLines();
+    this.level = engine.getLevel();
+    this.pieces = engine.getPieces();
+    this.frames = engine.getFrames();
+    this.nanos = computeNanos;
+    this.toppedOut = !engine.isStarted();
+  }
+
+  /**
+   * Get the index of the game in its batch.
+   *
+   * @return the game index
+   */
+  public long getGame() {
+    return game;
+  }
+
+  /**
+   * Get the seed of the game.
+   *
+   * @return the seed
+   */
+  public long getSeed() {
+    return seed;
+  }
+
+  /**
+   * Get the final score.
+   *
+   * @return the score
+   */
+  public long getScore() {
+    return score;
+  }
+
+  /**
+   * Get the number of lines cleared.
+   *
+   * @return the lines cleared
+   */
+  public int getLines() {
+    return lines;
+  }
+
+  /**
+   * Get the level reached.
+   *
+   * @return the level
+   */
+  public int getLevel() {
+    return level;
+  }
+
+  /**
+   * Get the number of pieces locked.
+   *
+   * @return the pieces locked
+   */
+  public int getPieces() {
+    return pieces;
+  }
+
+  /**
+   * Get the number of frames computed, i.e. the game duration.
+   *
+   * @return the frames computed
+   * @see Engine#FRAME_PER_SECOND
+   */
+  public long getFrames() {
+    return frames;
+  }
+
+  /**
+   * Get the time spent computing the game.
+   *
+   * @return the computing time, in nanoseconds
+   */
+  public long getNanos() {
+    return nanos;
+  }
+
+  /**
+   * Did the game end by a top out, rather than by reaching the pieces limit?
+   *
+   * @return {@code true} if the game ended by a top out
+   */
+  public boolean isToppedOut() {
+    return toppedOut;
+  }
+
+  /**
+   * Get the CSV representation of the result.
+   *
+   * @return the result as a CSV line
+   * @see #CSV_HEADER
+   */
+  public String toCsv() {
+    return game + "," + seed + "," + score + "," + lines + "," + level + ","
+        + pieces + "," + frames + "," + nanos + "," + toppedOut;
+  }
+
+  @Override
+  public String toString() {
+    return "GameResult [game=" + game + ", seed=" + seed + ", score=" + score
+        + ", lines=" + lines + ", level=" + level + ", pieces=" + pieces
+        + ", frames=" + frames + ", nanos=" + nanos + ", toppedOut="
+        + toppedOut + "]";
+  }
+}
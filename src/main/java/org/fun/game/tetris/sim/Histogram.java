@@ -0,0 +1,171 @@
+package org.fun.game.tetris.sim;
+
+/**
+ * A histogram of non-negative {@code long} values, with a bounded memory and relative error.
+ *
+ * <p>
+ * Values lower than {@code 128} are counted exactly. Higher values are counted in log-linear
+ * buckets: each power of two range is split into {@code 64} buckets, so that percentiles are within
+ * about {@code 1.6%} of the actual values whatever the number of values recorded.
+ * </p>
+ *
+ * <p>
+ * A histogram is not thread-safe, but histograms filled by different threads can be
+ * {@link #add(Histogram) merged}.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public class Histogram {
+
+  /**
+   * Number of bits of the sub-bucket index.
+   */
+  private static final int SUB_BUCKET_BITS = 6;
+  /**
+   * Number of sub-buckets of a power of two range.
+   */
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  /**
+   * Number of buckets.
+   */
+  private static final int BUCKETS =
+      (Long.SIZE - 1 - SUB_BUCKET_BITS) * SUB_BUCKETS + 2 * SUB_BUCKETS;
+
+  /**
+   * Number of values by bucket.
+   */
+  private final long[] counts = new long[BUCKETS];
+  /**
+   * Number of values.
+   */
+  private long count = 0;
+  /**
+   * Sum of the values.
+   */
+  private double sum = 0;
+  /**
+   * Lowest value.
+   */
+  private long min = Long.MAX_VALUE;
+  /**
+   * Highest value.
+   */
+  private long max = 0;
+
+  /**
+   * Record a value.
+   *
+   * @param value the value, negative values being recorded as {@code 0}
+   */
+  public void record(final long value) {
+    long v = Math.max(0, value);
+    counts[index(v)]++;
+    count++;
+    sum += v;
+    min = Math.min(min, v);
+    max = Math.max(max, v);
+  }
+
+  /**
+   * Add all the values of another histogram.
+   *
+   * @param other the other histogram
+   */
+  public void add(final Histogram other) {
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] += other.counts[i];
+    }
+    count += other.count;
+    sum += other.sum;
+    min = Math.min(min, other.min);
+    max = Math.max(max, other.max);
+  }
+
+  /**
+   * Get the number of values.
+   *
+   * @return the number of values
+   */
+  public final long getCount() {
+    return count;
+  }
+
+  /**
+   * Get the lowest value.
+   *
+   * @return the lowest value, {@code 0} if empty
+   */
+  public final long getMin() {
+    return count == 0 ? 0 : min;
+  }
+
+  /**
+   * Get the highest value.
+   *
+   * @return the highest value, {@code 0} if empty
+   */
+  public final long getMax() {
+    return max;
+  }
+
+  /**
+   * Get the mean of the values.
+   *
+   * @return the mean, {@code 0} if empty
+   */
+  public final double getMean() {
+    return count == 0 ? 0 : sum / count;
+  }
+
+  /**
+   * Get a percentile of the values.
+   *
+   * @param percentile the percentile, between {@code 0} and {@code 100}
+   * @return the value below which the given percentage of values fall, {@code 0} if empty
+   */
+  public final long getPercentile(final double percentile) {
+    if (count == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(percentile / 100 * count);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= Math.max(1, rank)) {
+        return Math.max(min, Math.min(max, highestValue(i)));
+      }
+    }
+    return max;
+  }
+
+  /**
+   * Get the bucket of a value.
+   *
+   * @param value the value
+   * @return the bucket index
+   */
+  private static int index(final long value) {
+    if (value < 2 * SUB_BUCKETS) {
+      return (int) value;
+    }
+    int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value)
+        - SUB_BUCKET_BITS;
+    return shift * SUB_BUCKETS + (int) (value >>> shift);
+  }
+
+  /**
+   * Get the highest value of a bucket.
+   *
+   * @param index the bucket index
+   * @return the highest value counted in the bucket
+   */
+  private static long highestValue(final int index) {
+    if (index < 2 * SUB_BUCKETS) {
+      return index;
+    }
+    int shift = index / SUB_BUCKETS - 1;
+    long mantissa = index - (long) shift * SUB_BUCKETS;
+    return ((mantissa + 1) << shift) - 1;
+  }
+}
@@ -0,0 +1,177 @@
+package org.fun.game.tetris.sim;
+
+import java.util.Locale;
+
+import org.fun.game.tetris.Engine;
+
+/**
+ * Aggregated statistics of simulated games.
+ *
+ * <p>
+ * Results are streamed into {@link Histogram histograms}, one per metric, so that the memory used
+ * does not depend on the number of games. Statistics are thread-safe.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public class Statistics {
+
+  /**
+   * Percentiles reported.
+   */
+  private static final double[] PERCENTILES = {50, 90, 99};
+
+  /**
+   * Scores.
+   */
+  private final Histogram score = new Histogram();
+  /**
+   * Lines cleared.
+   */
+  private final Histogram lines = new Histogram();
+  /**
+   * Levels reached.
+   */
+  private final Histogram level = new Histogram();
+  /**
+   * Pieces locked.
+   */
+  private final Histogram pieces = new Histogram();
+  /**
+   * Game durations, in frames.
+   */
+  private final Histogram frames = new Histogram();
+  /**
+   * Computing times, in microseconds.
+   */
+  private final Histogram micros = new Histogram();
+  /**
+   * Number of games ended by a top out.
+   */
+  private long toppedOut = 0;
+
+  /**
+   * Add the result of a game.
+   *
+   * @param result the game result
+   */
+  public synchronized void add(final GameResult result) {
+    score.record(result.getScore());
+    lines.record(result.getLines());
+    level.record(result.getLevel());
+    pieces.record(result.getPieces());
+    frames.record(result.getFrames());
+    micros.record(result.getNanos() / 1000);
+    if (result.isToppedOut()) {
+      toppedOut++;
+    }
+  }
+
+  /**
+   * Get the number of games.
+   *
+   * @return the number of games
+   */
+  public synchronized long getGames() {
+    return score.getCount();
+  }
+
+  /**
+   * Get the number of games ended by a top out.
+   *
+   * @return the number of games topped out
+   */
+  public synchronized long getToppedOut() {
+    return toppedOut;
+  }
+
+  /**
+   * Get the mean score.
+   *
+   * @return the mean score, {@code 0} if no game
+   */
+  public synchronized double getMeanScore() {
+    return score.getMean();
+  }
+
+  /**
+   * Get the mean number of lines cleared.
+   *
+   * @return the mean lines cleared, {@code 0} if no game
+   */
+  public synchronized double getMeanLines() {
+    return lines.getMean();
+  }
+
+  /**
+   * Get the total number of pieces locked.
+   *
+   * @return the number of pieces
+   */
+  public synchronized long getTotalPieces() {
+    return Math.round(pieces.getMean() * pieces.getCount());
+  }
+
+  /**
+   * Write a one line summary of the statistics.
+   *
+   * @param out the builder receiving the summary
+   */
+  public synchronized void writeSummaryTo(final StringBuilder out) {
+    out.append(String.format(Locale.ROOT,
+        "games=%d topped_out=%d score_mean=%.1f lines_mean=%.1f"
+            + " pieces_mean=%.1f",
+        score.getCount(), toppedOut, score.getMean(), lines.getMean(),
+        pieces.getMean()));
+  }
+
+  /**
+   * Write the statistics as a table, one metric per row.
+   *
+   * @param out the builder receiving the statistics
+   */
+  public synchronized void writeTo(final StringBuilder out) {
+    out.append(String.format(Locale.ROOT, "%-14s %12s %12s", "metric", "mean",
+        "min"));
+    for (double percentile : PERCENTILES) {
+      out.append(String.format(Locale.ROOT, " %12s",
+          "p" + (int) percentile));
+    }
+    out.append(String.format(Locale.ROOT, " %12s%n", "max"));
+    writeRow(out, "score", score, 1);
+    writeRow(out, "lines", lines, 1);
+    writeRow(out, "level", level, 1);
+    writeRow(out, "pieces", pieces, 1);
+    writeRow(out, "duration_s", frames, Engine.FRAME_PER_SECOND);
+    writeRow(out, "compute_ms", micros, 1000);
+    out.append(String.format(Locale.ROOT, "games=%d topped_out=%d%n",
+        score.getCount(), toppedOut));
+  }
+
+  /**
+   * Write a metric row.
+   *
+   * @param out the builder receiving the row
+   * @param name the metric name
+   * @param histogram the metric values
+   * @param unit the number of recorded units per reported unit
+   */
+  private static void writeRow(final StringBuilder out, final String name,
+      final Histogram histogram, final double unit) {
+    out.append(String.format(Locale.ROOT, "%-14s %12.2f %12.2f", name,
+        histogram.getMean() / unit, histogram.getMin() / unit));
+    for (double percentile : PERCENTILES) {
+      out.append(String.format(Locale.ROOT, " %12.2f",
+          histogram.getPercentile(percentile) / unit));
+    }
+    out.append(String.format(Locale.ROOT, " %12.2f%n",
+        histogram.getMax() / unit));
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder out = new StringBuilder();
+    writeTo(out);
+    return out.toString();
+  }
+}
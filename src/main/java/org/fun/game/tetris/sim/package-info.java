@@ -0,0 +1,4 @@
+/**
+ * Tetris game headless simulations.
+ */
+package org.fun.game.tetris.sim;
@@ -0,0 +1,274 @@
+package org.fun.game.tetris.tuning;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Properties;
+
+import org.fun.game.tetris.ai.Evaluator;
+
+/**
+ * The progress of a {@link WeightTuner}, after a number of generations.
+ *
+ * <p>
+ * A checkpoint holds the distribution of the weights to sample the next generation from, and the
+ * best weights found so far. Checkpoints are saved as properties files, replaced atomically so that
+ * an interrupted run always leaves a complete checkpoint to resume from.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public final class Checkpoint {
+
+  /**
+   * Property of the number of generations done.
+   */
+  private static final String GENERATION = "generation";
+  /**
+   * Property of the means of the weights distribution.
+   */
+  private static final String MEAN = "mean";
+  /**
+   * Property of the standard deviations of the weights distribution.
+   */
+  private static final String DEVIATION = "deviation";
+  /**
+   * Property of the best weights found.
+   */
+  private static final String BEST_WEIGHTS = "best.weights";
+  /**
+   * Property of the fitness of the best weights found.
+   */
+  private static final String BEST_FITNESS = "best.fitness";
+  /**
+   * Separator of the weights in properties.
+   */
+  private static final String SEPARATOR = ",";
+
+  /**
+   * Number of generations done.
+   */
+  private final int generation;
+  /**
+   * Means of the weights distribution.
+   */
+  private final double[] mean;
+  /**
+   * Standard deviations of the weights distribution.
+   */
+  private final double[] deviation;
+  /**
+   * Best weights found, {@code null} if none yet.
+   */
+  private final double[] bestWeights;
+  /**
+   * Fitness of the best weights found.
+   */
+  private final double bestFitness;
+
+  /**
+   * Create a checkpoint.
+   *
+   * @param generations the number of generations done
+   * @param means the means of the weights distribution
+   * @param deviations the standard deviations of the weights distribution
+   * @param best the best weights found, {@code null} if none yet
+   * @param fitness the fitness of the best weights found
+   * @throws IllegalArgumentException if there is not one mean and deviation per feature
+   */
+  public Checkpoint(final int generations, final double[] means,
+      final double[] deviations, final double[] best, final double fitness) {
+    if (means.length != Evaluator.FEATURES
+        || deviations.length != Evaluator.FEATURES
+        || (best != null && best.length != Evaluator.FEATURES)) {
+      throw new IllegalArgumentException(
+          "Expected " + Evaluator.FEATURES + " weights");
+    }
+    this.generation = generations;
+    this.mean = means.clone();
+    this.deviation = deviations.clone();
+    this.bestWeights = best == null ? null : best.clone();
+    this.bestFitness = fitness;
+  }
+
+  /**
+   * Get the number of generations done.
+   *
+   * @return the number of generations done
+   */
+  public int getGeneration() {
+    return generation;
+  }
+
+  /**
+   * Get a copy of the means of the weights distribution.
+   *
+   * @return the means, indexed by feature
+   */
+  public double[] getMean() {
+    return mean.clone();
+  }
+
+  /**
+   * Get a copy of the standard deviations of the weights distribution.
+   *
+   * @return the standard deviations, indexed by feature
+   */
+  public double[] getDeviation() {
+    return deviation.clone();
+  }
+
+  /**
+   * Get a copy of the best weights found.
+   *
+   * @return the best weights, indexed by feature, {@code null} if none yet
+   */
+  public double[] getBestWeights() {
+    return bestWeights == null ? null : bestWeights.clone();
+  }
+
+  /**
+   * Get the fitness of the best weights found.
+   *
+   * @return the best fitness, {@link Double#NEGATIVE_INFINITY} if none yet
+   */
+  public double getBestFitness() {
+    return bestFitness;
+  }
+
+  // #########################################################################
+  /**
+   * Save the checkpoint.
+   *
+   * <p>
+   * The checkpoint is written to a temporary file next to the given file, then moved over it.
+   * </p>
+   *
+   * @param file the checkpoint file
+   * @throws IOException if the checkpoint cannot be written
+   */
+  public void save(final Path file) throws IOException {
+    Properties properties = new Properties();
+    properties.setProperty(GENERATION, Integer.toString(generation));
+    properties.setProperty(MEAN, format(mean));
+    properties.setProperty(DEVIATION, format(deviation));
+    if (bestWeights != null) {
+      properties.setProperty(BEST_WEIGHTS, format(bestWeights));
+      properties.setProperty(BEST_FITNESS, Double.toString(bestFitness));
+    }
+
+    Path absolute = file.toAbsolutePath();
+    Path temp = Files.createTempFile(absolute.getParent(),
+        absolute.getFileName().toString(), ".tmp");
+    try {
+      try (OutputStream out = Files.newOutputStream(temp)) {
+        properties.store(out, "Weight tuner checkpoint");
+      }
+      Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * Load a checkpoint.
+   *
+   * @param file the checkpoint file
+   * @return the checkpoint
+   * @throws IOException if the checkpoint cannot be read or is invalid
+   */
+  public static Checkpoint load(final Path file) throws IOException {
+    Properties properties = new Properties();
+    try (InputStream in = Files.newInputStream(file)) {
+      properties.load(in);
+    }
+    try {
+      int generation = Integer.parseInt(require(properties, GENERATION, file));
+      double[] means = parse(require(properties, MEAN, file), MEAN, file);
+      double[] deviations =
+          parse(require(properties, DEVIATION, file), DEVIATION, file);
+      String best = properties.getProperty(BEST_WEIGHTS);
+      if (best == null) {
+        return new Checkpoint(generation, means, deviations, null,
+            Double.NEGATIVE_INFINITY);
+      }
+      return new Checkpoint(generation, means, deviations,
+          parse(best, BEST_WEIGHTS, file),
+          Double.parseDouble(require(properties, BEST_FITNESS, file)));
+    } catch (NumberFormatException ex) {
+      throw new IOException("Invalid number in checkpoint " + file, ex);
+    }
+  }
+
+  /**
+   * Get a property of a checkpoint that must be present.
+   *
+   * @param properties the checkpoint properties
+   * @param key the property key
+   * @param file the checkpoint file
+   * @return the property value
+   * @throws IOException if the property is missing
+   */
+  private static String require(final Properties properties, final String key,
+      final Path file) throws IOException {
+    String value = properties.getProperty(key);
+    if (value == null) {
+      throw new IOException("Missing " + key + " in checkpoint " + file);
+    }
+    return value;
+  }
+
+  /**
+   * Format weights.
+   *
+   * @param weights the weights
+   * @return the weights, comma separated
+   */
+  private static String format(final double[] weights) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < weights.length; i++) {
+      if (i > 0) {
+        sb.append(SEPARATOR);
+      }
+      sb.append(weights[i]);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Parse weights.
+   *
+   * @param value the weights, comma separated
+   * @param key the property key of the weights
+   * @param file the checkpoint file
+   * @return the weights
+   * @throws IOException if there is not one weight per feature
+   * @throws NumberFormatException if a weight is not a number
+   */
+  private static double[] parse(final String value, final String key,
+      final Path file) throws IOException {
+    String[] values = value.isEmpty() ? new String[0] : value.split(SEPARATOR);
+    if (values.length != Evaluator.FEATURES) {
+      throw new IOException("Expected " + Evaluator.FEATURES + " " + key
+          + " in checkpoint " + file + ", found " + values.length);
+    }
+    double[] weights = new double[values.length];
+    for (int i = 0; i < values.length; i++) {
+      weights[i] = Double.parseDouble(values[i].trim());
+    }
+    return weights;
+  }
+
+  @Override
+  public String toString() {
+    return "Checkpoint [generation=" + generation + ", mean="
+        + Arrays.toString(mean) + ", deviation=" + Arrays.toString(deviation)
+        + ", bestWeights=" + Arrays.toString(bestWeights) + ", bestFitness="
+        + bestFitness + "]";
+  }
+}
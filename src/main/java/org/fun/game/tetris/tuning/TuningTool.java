@@ -0,0 +1,90 @@
+package org.fun.game.tetris.tuning;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.fun.game.tetris.CommandLine;
+import org.fun.game.tetris.ai.Evaluator;
+import org.fun.game.tetris.sim.BatchTool;
+
+/**
+ * Command line tool tuning the bots weights.
+ *
+ * @author Mathieu Brunot
+ *
+ * @see WeightTuner
+ */
+public final class TuningTool {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOGGER =
+      Logger.getLogger(TuningTool.class.getName());
+
+  /**
+   * Command line option to tune the bots weights for the given number of generations.
+   */
+  public static final String TUNE_OPTION = "--tune";
+  /**
+   * Command line option to set the number of candidates per tuning generation.
+   */
+  public static final String POPULATION_OPTION = "--population";
+  /**
+   * Command line option to set the number of games played by each tuning candidate.
+   */
+  public static final String TUNE_GAMES_OPTION = "--tune-games";
+  /**
+   * Command line option to set the tuning checkpoint file.
+   */
+  public static final String CHECKPOINT_OPTION = "--checkpoint";
+  /**
+   * Options of the tool.
+   */
+  public static final List<String> OPTIONS =
+      Collections.unmodifiableList(Arrays.asList(TUNE_OPTION,
+          POPULATION_OPTION, TUNE_GAMES_OPTION, CHECKPOINT_OPTION));
+
+  /**
+   * Hidden constructor.
+   */
+  private TuningTool() {}
+
+  /**
+   * Tune the bots weights, playing headless games configured as batch games, and print the best
+   * weights found.
+   *
+   * @param options the command line options
+   * @throws CommandLine.UsageException if an option value is not valid
+   * @see BatchTool#configure(org.fun.game.tetris.sim.BatchSimulator, CommandLine)
+   */
+  public static void run(final CommandLine options) {
+    WeightTuner tuner = new WeightTuner();
+    tuner.setGenerations(options.getInt(TUNE_OPTION, 0));
+    tuner.setPopulation(
+        options.getInt(POPULATION_OPTION, tuner.getPopulation()));
+    tuner.setGames(options.getInt(TUNE_GAMES_OPTION, tuner.getGames()));
+    tuner.setSeed(options.getLong(CommandLine.SEED_OPTION, tuner.getSeed()));
+    if (options.has(CHECKPOINT_OPTION)) {
+      tuner.setCheckpointFile(options.getPath(CHECKPOINT_OPTION));
+    }
+    BatchTool.configure(tuner.getSimulator(), options);
+
+    tuner.setListener(checkpoint -> System.err.println(String.format(
+        "generation %d: best %.1f lines with %s, mean %s",
+        checkpoint.getGeneration(), checkpoint.getBestFitness(),
+        Arrays.toString(checkpoint.getBestWeights()),
+        Arrays.toString(checkpoint.getMean()))));
+    try {
+      Checkpoint checkpoint = tuner.run();
+      System.out.println(new Evaluator(checkpoint.getBestWeights() == null
+          ? checkpoint.getMean() : checkpoint.getBestWeights()));
+    } catch (IOException ex) {
+      LOGGER.log(Level.SEVERE, "Cannot save tuner checkpoint", ex);
+    }
+  }
+}
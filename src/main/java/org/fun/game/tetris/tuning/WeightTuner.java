@@ -0,0 +1,421 @@
+package org.fun.game.tetris.tuning;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.fun.game.tetris.Engine;
+import org.fun.game.tetris.ai.BotType;
+import org.fun.game.tetris.ai.Evaluator;
+import org.fun.game.tetris.sim.BatchSimulator;
+import org.fun.game.tetris.sim.GameResult;
+
+/**
+ * Tunes the weights of the bots {@link Evaluator} with the cross-entropy method.
+ *
+ * <p>
+ * Weights are sampled from independent normal distributions, one per feature. On each generation,
+ * every candidate plays the same seeded games, as configured on the {@link BatchSimulator}, and its
+ * fitness is the mean number of lines cleared. The games of all candidates are played in parallel,
+ * on all cores. The distributions are then fitted to the best candidates (the elites), with some
+ * extra noise decreasing over the generations to avoid an early convergence. Each generation plays
+ * new games, so that weights do not overfit a few seeds.
+ * </p>
+ *
+ * <p>
+ * The progress is saved to a {@link Checkpoint} after each generation, and a run started with an
+ * existing checkpoint resumes from it.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ *
+ * @see <a href="https://doi.org/10.1162/neco.2006.18.12.2936">Learning Tetris Using the Noisy
+ *      Cross-Entropy Method</a>
+ */
+public class WeightTuner {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOGGER =
+      Logger.getLogger(WeightTuner.class.getName());
+
+  /**
+   * Default number of pieces after which a game is ended.
+   */
+  public static final int DEFAULT_MAX_PIECES = 1000;
+
+  /**
+   * Simulator playing the games of the candidates.
+   */
+  private final BatchSimulator simulator = new BatchSimulator();
+  /**
+   * Number of generations.
+   */
+  private int generations = 20;
+  /**
+   * Number of candidates per generation.
+   */
+  private int population = 50;
+  /**
+   * Number of best candidates the distributions are fitted to.
+   */
+  private int elites = 5;
+  /**
+   * Number of games played by each candidate.
+   */
+  private int games = 10;
+  /**
+   * Seed of the candidates and of their games.
+   */
+  private long seed = 0;
+  /**
+   * Initial standard deviation of the weights.
+   */
+  private double initialDeviation = 2;
+  /**
+   * Variance added to the fitted distributions on the first generation, decreasing linearly to
+   * {@code 0} on the last generation.
+   */
+  private double noise = 1;
+  /**
+   * Checkpoint file, may be {@code null}.
+   */
+  private Path checkpointFile = null;
+  /**
+   * Listener of each generation checkpoint, may be {@code null}.
+   */
+  private Consumer<Checkpoint> listener = null;
+
+  /**
+   * Create a tuner of the {@link BotType#GREEDY greedy} bot, whose games are ended after
+   * {@link #DEFAULT_MAX_PIECES} pieces.
+   */
+  public WeightTuner() {
+    simulator.setBot(BotType.GREEDY);
+    simulator.setMaxPieces(DEFAULT_MAX_PIECES);
+  }
+
+  /**
+   * Get the simulator playing the games of the candidates.
+   *
+   * <p>
+   * The mode, start level, bot, pieces limit and threads of the games are set on the simulator,
+   * while the seeds of the games are set by the tuner.
+   * </p>
+   *
+   * @return the simulator
+   */
+  public final BatchSimulator getSimulator() {
+    return simulator;
+  }
+
+  /**
+   * Get the number of generations.
+   *
+   * @return the number of generations
+   */
+  public final int getGenerations() {
+    return generations;
+  }
+
+  /**
+   * Set the number of generations.
+   *
+   * @param numberOfGenerations the number of generations
+   */
+  public final void setGenerations(final int numberOfGenerations) {
+    this.generations = numberOfGenerations;
+  }
+
+  /**
+   * Get the number of candidates per generation.
+   *
+   * @return the population size
+   */
+  public final int getPopulation() {
+    return population;
+  }
+
+  /**
+   * Set the number of candidates per generation.
+   *
+   * @param populationSize the population size
+   */
+  public final void setPopulation(final int populationSize) {
+    this.population = Math.max(2, populationSize);
+  }
+
+  /**
+   * Get the number of best candidates the distributions are fitted to.
+   *
+   * @return the number of elites
+   */
+  public final int getElites() {
+    return elites;
+  }
+
+  /**
+   * Set the number of best candidates the distributions are fitted to.
+   *
+   * @param numberOfElites the number of elites
+   */
+  public final void setElites(final int numberOfElites) {
+    this.elites = Math.max(1, numberOfElites);
+  }
+
+  /**
+   * Get the number of games played by each candidate.
+   *
+   * @return the number of games per candidate
+   */
+  public final int getGames() {
+    return games;
+  }
+
+  /**
+   * Set the number of games played by each candidate.
+   *
+   * @param gamesPerCandidate the number of games per candidate
+   */
+  public final void setGames(final int gamesPerCandidate) {
+    this.games = Math.max(1, gamesPerCandidate);
+  }
+
+  /**
+   * Get the seed of the candidates and of their games.
+   *
+   * @return the seed
+   */
+  public final long getSeed() {
+    return seed;
+  }
+
+  /**
+   * Set the seed of the candidates and of their games.
+   *
+   * @param tunerSeed the seed
+   */
+  public final void setSeed(final long tunerSeed) {
+    this.seed = tunerSeed;
+  }
+
+  /**
+   * Get the initial standard deviation of the weights.
+   *
+   * @return the initial standard deviation
+   */
+  public final double getInitialDeviation() {
+    return initialDeviation;
+  }
+
+  /**
+   * Set the initial standard deviation of the weights.
+   *
+   * @param deviation the initial standard deviation
+   */
+  public final void setInitialDeviation(final double deviation) {
+    this.initialDeviation = deviation;
+  }
+
+  /**
+   * Get the variance added to the fitted distributions on the first generation.
+   *
+   * @return the initial noise variance
+   */
+  public final double getNoise() {
+    return noise;
+  }
+
+  /**
+   * Set the variance added to the fitted distributions on the first generation.
+   *
+   * @param variance the initial noise variance
+   */
+  public final void setNoise(final double variance) {
+    this.noise = variance;
+  }
+
+  /**
+   * Get the checkpoint file.
+   *
+   * @return the checkpoint file, {@code null} if none
+   */
+  public final Path getCheckpointFile() {
+    return checkpointFile;
+  }
+
+  /**
+   * Set the checkpoint file, saved after each generation and resumed from if it exists.
+   *
+   * @param file the checkpoint file, {@code null} if none
+   */
+  public final void setCheckpointFile(final Path file) {
+    this.checkpointFile = file;
+  }
+
+  /**
+   * Set the listener of each generation checkpoint.
+   *
+   * @param checkpointListener the listener, may be {@code null}
+   */
+  public final void setListener(final Consumer<Checkpoint> checkpointListener) {
+    this.listener = checkpointListener;
+  }
+
+  // #########################################################################
+  /**
+   * Run the remaining generations.
+   *
+   * @return the last checkpoint
+   * @throws IOException if the checkpoint cannot be read or written
+   */
+  public Checkpoint run() throws IOException {
+    Checkpoint checkpoint;
+    if (checkpointFile != null && Files.exists(checkpointFile)) {
+      checkpoint = Checkpoint.load(checkpointFile);
+      LOGGER.log(Level.INFO, "Resuming from generation {0}",
+          checkpoint.getGeneration());
+    } else {
+      double[] deviation = new double[Evaluator.FEATURES];
+      Arrays.fill(deviation, initialDeviation);
+      checkpoint = new Checkpoint(0, Evaluator.getDefaultWeights(), deviation,
+          null, Double.NEGATIVE_INFINITY);
+    }
+
+    while (checkpoint.getGeneration() < generations) {
+      checkpoint = nextGeneration(checkpoint);
+      if (checkpointFile != null) {
+        checkpoint.save(checkpointFile);
+      }
+      if (listener != null) {
+        listener.accept(checkpoint);
+      }
+    }
+    return checkpoint;
+  }
+
+  /**
+   * Play a generation and fit the distributions to its elites.
+   *
+   * @param previous the checkpoint of the previous generation
+   * @return the checkpoint of the generation
+   */
+  private Checkpoint nextGeneration(final Checkpoint previous) {
+    final int generation = previous.getGeneration();
+    final double[] mean = previous.getMean();
+    final double[] deviation = previous.getDeviation();
+    double[] bestWeights = previous.getBestWeights();
+    double bestFitness = previous.getBestFitness();
+
+    // Sample the candidates
+    Random random = new Random(seed + generation);
+    double[][] candidates = new double[population][Evaluator.FEATURES];
+    Integer[] ranks = new Integer[population];
+    for (int c = 0; c < population; c++) {
+      for (int i = 0; i < Evaluator.FEATURES; i++) {
+        candidates[c][i] = mean[i] + deviation[i] * random.nextGaussian();
+      }
+      ranks[c] = c;
+    }
+
+    // Rate the candidates, all on the same games
+    simulator.setSeed(seed + (long) generation * games);
+    double[] fitness = rate(candidates);
+    Arrays.sort(ranks, (a, b) -> Double.compare(fitness[b], fitness[a]));
+    if (fitness[ranks[0]] > bestFitness) {
+      bestFitness = fitness[ranks[0]];
+      bestWeights = candidates[ranks[0]];
+    }
+
+    // Fit the distributions to the elites
+    int n = Math.min(elites, population);
+    double extraVariance =
+        noise * Math.max(0, 1 - generation / (double) generations);
+    double eliteFitness = 0;
+    for (int i = 0; i < Evaluator.FEATURES; i++) {
+      double sum = 0;
+      for (int e = 0; e < n; e++) {
+        sum += candidates[ranks[e]][i];
+      }
+      mean[i] = sum / n;
+      double variance = 0;
+      for (int e = 0; e < n; e++) {
+        double delta = candidates[ranks[e]][i] - mean[i];
+        variance += delta * delta;
+      }
+      deviation[i] = Math.sqrt(variance / n + extraVariance);
+    }
+    for (int e = 0; e < n; e++) {
+      eliteFitness += fitness[ranks[e]];
+    }
+    LOGGER.log(Level.FINE, "Generation {0}: elites {1} lines, best {2} lines",
+        new Object[] {generation, eliteFitness / n, fitness[ranks[0]]});
+
+    return new Checkpoint(generation + 1, mean, deviation, bestWeights,
+        bestFitness);
+  }
+
+  /**
+   * Rate candidates by playing their games on all cores.
+   *
+   * <p>
+   * Each worker thread owns an {@link Engine} and plays the games of all the candidates one after
+   * the other, so that all cores are busy even when there are fewer games than cores.
+   * </p>
+   *
+   * @param candidates the candidates weights
+   * @return the candidates fitness, i.e. their mean number of lines cleared
+   */
+  private double[] rate(final double[][] candidates) {
+    final long[] lines = new long[candidates.length];
+    final Evaluator[] evaluators = new Evaluator[candidates.length];
+    for (int c = 0; c < candidates.length; c++) {
+      evaluators[c] = new Evaluator(candidates[c]);
+    }
+    final int tasks = candidates.length * games;
+    final AtomicInteger nextTask = new AtomicInteger();
+    final int threads = simulator.getThreads();
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      ForkJoinTask<?>[] workers = new ForkJoinTask<?>[threads];
+      for (int i = 0; i < threads; i++) {
+        workers[i] = pool.submit(() -> {
+          Engine engine = new Engine();
+          engine.setMode(simulator.getMode());
+          for (int task = nextTask.getAndIncrement(); task < tasks; task =
+              nextTask.getAndIncrement()) {
+            int candidate = task / games;
+            engine.setController(
+                simulator.getBot().create(evaluators[candidate], pool));
+            GameResult result = simulator.play(engine, task % games);
+            synchronized (lines) {
+              lines[candidate] += result.getLines();
+            }
+          }
+        });
+      }
+      for (ForkJoinTask<?> worker : workers) {
+        worker.join();
+      }
+    } finally {
+      pool.shutdown();
+    }
+
+    double[] fitness = new double[candidates.length];
+    for (int c = 0; c < candidates.length; c++) {
+      fitness[c] = lines[c] / (double) games;
+      LOGGER.log(Level.FINE, "Candidate {0}: {1} lines",
+          new Object[] {Arrays.toString(candidates[c]), fitness[c]});
+    }
+    return fitness;
+  }
+}
@@ -0,0 +1,4 @@
+/**
+ * Tetris game bots tuning.
+ */
+package org.fun.game.tetris.tuning;
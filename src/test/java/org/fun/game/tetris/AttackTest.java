@@ -0,0 +1,288 @@
+package org.fun.game.tetris;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the {@link Attack} tables and of the garbage sent and received by the {@link Engine}.
+ *
+ * @author Mathieu Brunot
+ */
+public class AttackTest {
+
+  /**
+   * Seed of the games.
+   */
+  private static final long SEED = 1;
+  /**
+   * Lines sent by a single, for each combo from {@code 0}.
+   */
+  private static final int[] COMBO_SINGLE_LINES =
+      {0, 1, 1, 2, 2, 3, 3, 4, 4, 4, 5, 5, 5};
+  /**
+   * Playfield of a Tetris: four rows with a hole in the first column, a block above them not to
+   * leave the playfield empty.
+   */
+  private static final String[] TETRIS = {
+      ".........#",
+      ".#########",
+      ".#########",
+      ".#########",
+      ".#########"};
+
+  /**
+   * The engine.
+   */
+  private Engine engine;
+  /**
+   * Inputs held.
+   */
+  private int inputs = Controller.NONE;
+  /**
+   * Lines of garbage sent, as notified.
+   */
+  private int sent = 0;
+  /**
+   * Number of games over notified.
+   */
+  private int gamesOver = 0;
+
+  /**
+   * Start a game on the standard playfield, at level {@code 0}, its first piece spawned.
+   */
+  @Before
+  public void setUp() {
+    engine = new Engine();
+    engine.setMode(Tetrion.Mode.MODERN);
+    engine.setController(source -> inputs);
+    engine.addListener(new Engine.Listener() {
+      @Override
+      public void linesSent(final Engine source, final int sentLines) {
+        sent += sentLines;
+      }
+
+      @Override
+      public void gameOver(final Engine source) {
+        gamesOver++;
+      }
+    });
+    engine.start(0, SEED);
+    engine.tick();
+  }
+
+  /**
+   * Hard drop the falling piece, then release the input.
+   */
+  private void drop() {
+    inputs = Controller.HARD_DROP;
+    engine.tick();
+    inputs = Controller.NONE;
+    engine.tick();
+  }
+
+  /**
+   * Drop a vertical I piece into the hole of the {@link #TETRIS} playfield.
+   */
+  private void dropTetris() {
+    EngineFixtures.load(engine, Tetromino.Shape.I, 1, 0, 10, TETRIS);
+    drop();
+  }
+
+  /**
+   * Drop an O piece in the first columns of a playfield, clearing no line.
+   *
+   * @param playfield the occupied cells of the lowest rows, top row first
+   */
+  private void dropWithoutClear(final String... playfield) {
+    EngineFixtures.load(engine, Tetromino.Shape.O, 0, 0, 10, playfield);
+    drop();
+  }
+
+  /**
+   * Get the number of occupied cells of a row.
+   *
+   * @param y the row
+   * @return the number of occupied cells
+   */
+  private int count(final int y) {
+    return Long.bitCount(engine.rowAt(y));
+  }
+
+  /**
+   * Get the hole column of a garbage row.
+   *
+   * @param y the row
+   * @return the first empty column
+   */
+  private int hole(final int y) {
+    return Long.numberOfTrailingZeros(~engine.rowAt(y));
+  }
+
+  /**
+   * Test the lines sent by each clear type, back-to-back and combo.
+   */
+  @Test
+  public void testTables() {
+    int[] lines = {0, 0, 1, 2, 4};
+    int[] spinLines = {0, 2, 4, 6};
+    for (int n = 0; n <= Tetromino.BLOCKS; n++) {
+      int type = Attack.clearType(Attack.NO_SPIN, n);
+      assertEquals(lines[n], Attack.lines(type, false, -1));
+      assertEquals(n == 0 ? -1 : n == Tetromino.BLOCKS ? 1 : 0,
+          Attack.difficulty(type));
+    }
+    for (int n = 0; n < spinLines.length; n++) {
+      int type = Attack.clearType(Attack.T_SPIN, n);
+      assertEquals(spinLines[n], Attack.lines(type, false, -1));
+      assertEquals(n == 0 ? -1 : 1, Attack.difficulty(type));
+    }
+    assertEquals(0, Attack.lines(Attack.clearType(Attack.MINI_T_SPIN, 1),
+        false, -1));
+    assertEquals(1, Attack.lines(Attack.clearType(Attack.MINI_T_SPIN, 2),
+        false, -1));
+
+    // Back-to-back only adds to difficult clears
+    assertEquals(5, Attack.lines(Attack.clearType(Attack.NO_SPIN, 4), true, 0));
+    assertEquals(5, Attack.lines(Attack.clearType(Attack.T_SPIN, 2), true, 0));
+    assertEquals(1, Attack.lines(Attack.clearType(Attack.MINI_T_SPIN, 1),
+        true, 0));
+    assertEquals(2, Attack.lines(Attack.clearType(Attack.NO_SPIN, 3), true, 0));
+
+    int single = Attack.clearType(Attack.NO_SPIN, 1);
+    for (int combo = 0; combo < COMBO_SINGLE_LINES.length; combo++) {
+      assertEquals("combo " + combo, COMBO_SINGLE_LINES[combo],
+          Attack.lines(single, false, combo));
+    }
+    assertEquals(4 + 1 + 2,
+        Attack.lines(Attack.clearType(Attack.NO_SPIN, 4), true, 3));
+
+    assertEquals(1200, Attack.score(Attack.clearType(Attack.NO_SPIN, 4)));
+    assertEquals(480, Attack.score(Attack.clearType(Attack.T_SPIN, 2)));
+  }
+
+  /**
+   * Test consecutive Tetrises send the back-to-back and combo bonuses, and score.
+   */
+  @Test
+  public void testBackToBackCombo() {
+    dropTetris();
+    assertEquals(4, engine.getLines());
+    assertEquals(Attack.score(Attack.clearType(Attack.NO_SPIN, 4)) + 2 * 10,
+        engine.getScore());
+    assertEquals(4, sent);
+    assertEquals(0, engine.getCombo());
+    assertTrue(engine.isBackToBack());
+
+    dropTetris();
+    assertEquals(0 + 1, engine.getCombo());
+    assertEquals(4 + (4 + 1 + 1), sent);
+    assertEquals(sent, engine.getLinesSent());
+
+    // A lock without clear breaks the combo, not the back-to-back chain
+    dropWithoutClear();
+    assertEquals(-1, engine.getCombo());
+    assertTrue(engine.isBackToBack());
+    dropTetris();
+    assertEquals(4 + 6 + (4 + 1), sent);
+  }
+
+  /**
+   * Test a clear leaving the playfield empty sends the perfect clear bonus.
+   */
+  @Test
+  public void testPerfectClear() {
+    EngineFixtures.load(engine, Tetromino.Shape.I, 1, 0, 10,
+        Arrays.copyOfRange(TETRIS, 1, TETRIS.length));
+    drop();
+    assertEquals(4 + Attack.PERFECT_CLEAR_LINES, sent);
+  }
+
+  /**
+   * Test the lines sent cancel the oldest garbage pending first.
+   */
+  @Test
+  public void testCancel() {
+    engine.addGarbage(3);
+    engine.addGarbage(2);
+    assertEquals(3 + 2, engine.getPendingGarbage());
+    dropTetris();
+    assertEquals(1, engine.getPendingGarbage());
+    assertEquals(0, sent);
+    assertEquals(0, engine.getLinesSent());
+    assertEquals(0, engine.getGarbageReceived());
+
+    dropTetris();
+    assertEquals(0, engine.getPendingGarbage());
+    assertEquals(4 + 1 + 1 - 1, sent);
+  }
+
+  /**
+   * Test the garbage pending is inserted by a lock without clear, a hole per attack, pushing the
+   * stack up, at most {@code 8} lines at once.
+   */
+  @Test
+  public void testInsert() {
+    engine.addGarbage(6);
+    engine.addGarbage(4);
+    dropWithoutClear("....#.....");
+    assertEquals(8, engine.getGarbageReceived());
+    assertEquals(2, engine.getPendingGarbage());
+    int width = engine.getBoard().getWidth();
+    for (int y = 0; y < 8; y++) {
+      assertEquals("row " + y, width - 1, count(y));
+      assertEquals("row " + y, hole(y < 2 ? 0 : 2), hole(y));
+    }
+    // The stack pushed up
+    assertTrue(engine.isOccupied(4, 8));
+    for (int y = 8; y < 10; y++) {
+      assertTrue(engine.isOccupied(0, y));
+      assertTrue(engine.isOccupied(1, y));
+    }
+    assertEquals(2 + 1, count(8));
+    assertEquals(2, count(9));
+    assertEquals(0, count(10));
+
+    dropWithoutClear();
+    assertEquals(8 + 2, engine.getGarbageReceived());
+    assertEquals(0, engine.getPendingGarbage());
+    assertEquals(width - 1, count(0));
+    assertEquals(width - 1, count(1));
+  }
+
+  /**
+   * Test the garbage pending is not inserted by a lock clearing lines.
+   */
+  @Test
+  public void testNoInsertOnClear() {
+    engine.addGarbage(5);
+    dropTetris();
+    assertEquals(1, engine.getPendingGarbage());
+    assertEquals(0, engine.getGarbageReceived());
+    assertEquals(1, count(0));
+  }
+
+  /**
+   * Test the game is over when garbage pushes blocks out of the playfield, not when it pushes them
+   * up to the top row.
+   */
+  @Test
+  public void testTopOut() {
+    String[] tower = new String[engine.getBoard().getHeight() - 1];
+    Arrays.fill(tower, ".........#");
+    engine.addGarbage(1);
+    dropWithoutClear(tower);
+    assertTrue(engine.isStarted());
+    assertTrue(engine.isOccupied(9, engine.getBoard().getHeight() - 1));
+
+    engine.addGarbage(2);
+    dropWithoutClear(tower);
+    assertFalse(engine.isStarted());
+    assertEquals(1, gamesOver);
+  }
+}
@@ -0,0 +1,202 @@
+package org.fun.game.tetris;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests of the {@link Board} dimensions and of the bitboard of the {@link Engine} playfield, wide
+ * ones included.
+ *
+ * @author Mathieu Brunot
+ */
+public class BoardTest {
+
+  /**
+   * Seed of the games.
+   */
+  private static final long SEED = 1;
+  /**
+   * A playfield three words wide, of odd height and ceiling.
+   */
+  private static final Board WIDE = new Board(130, 25, 21);
+
+  /**
+   * Start a game, its first piece spawned.
+   *
+   * @param board the playfield dimensions
+   * @param inputs the inputs held by the player
+   * @return the engine
+   */
+  private static Engine start(final Board board, final int[] inputs) {
+    Engine engine = new Engine();
+    engine.setMode(Tetrion.Mode.MODERN);
+    engine.setBoard(board);
+    engine.setController(source -> inputs[0]);
+    engine.start(0, SEED);
+    engine.tick();
+    return engine;
+  }
+
+  /**
+   * Get the number of occupied cells of a row.
+   *
+   * @param engine the engine
+   * @param y the row
+   * @return the number of occupied cells
+   */
+  private static int count(final Engine engine, final int y) {
+    int count = 0;
+    for (int w = 0; w < engine.getBoard().getWordsPerRow(); w++) {
+      count += Long.bitCount(engine.rowAt(y, w));
+    }
+    return count;
+  }
+
+  /**
+   * Test the words of a full row, from one to several words per row.
+   */
+  @Test
+  public void testFullWords() {
+    for (int width : new int[] {10, 63, 64, 65, 127, 128, 130, 1024}) {
+      Board board = new Board(width, 23, 21);
+      int words = board.getWordsPerRow();
+      assertEquals(width + " columns", (width + 63) / 64, words);
+      int bits = 0;
+      for (int w = 0; w < words; w++) {
+        long full = board.fullWord(w);
+        bits += Long.bitCount(full);
+        // The occupied columns are the lowest bits of each word
+        assertEquals(0, full & (full + 1));
+        if (w < words - 1) {
+          assertEquals(-1L, full);
+        }
+      }
+      assertEquals(width, bits);
+    }
+  }
+
+  /**
+   * Test the dimensions out of range are refused, and parsed ones.
+   */
+  @Test
+  public void testDimensions() {
+    int[][] invalid = {{3, 22, 20}, {10, 22, 3}, {10, 20, 21}, {1025, 22, 20},
+        {10, 1025, 20}};
+    for (int[] dimensions : invalid) {
+      try {
+        new Board(dimensions[0], dimensions[1], dimensions[2]);
+        throw new AssertionError("Accepted " + Arrays.toString(dimensions));
+      } catch (IllegalArgumentException ex) {
+        // Expected
+      }
+    }
+    assertEquals(Board.STANDARD, Board.parse("10x20"));
+    assertEquals(new Board(130, 23, 21), Board.parse("130X21"));
+    assertEquals("130x21+4", WIDE.toString());
+    assertEquals(WIDE.getCeiling() - Board.DANGER_ZONE_DEPTH,
+        WIDE.getDangerZone());
+  }
+
+  /**
+   * Test every shape spawns with its upper blocks just below the ceiling of a playfield of odd
+   * height, and the game is over when a piece cannot spawn.
+   */
+  @Test
+  public void testCeiling() {
+    int[] inputs = {Controller.NONE};
+    Engine engine = start(WIDE, inputs);
+    for (Tetromino.Shape shape : Tetromino.Shape.values()) {
+      int top = Integer.MIN_VALUE;
+      for (int i = 0; i < Tetromino.BLOCKS; i++) {
+        top = Math.max(top, WIDE.getSpawnY(shape) - shape.y(i));
+      }
+      assertEquals(shape.name(), WIDE.getCeiling() - 1, top);
+    }
+    Tetromino piece = engine.getFallingPiece();
+    assertEquals(WIDE.getSpawnX(), engine.getCurX());
+    assertEquals(WIDE.getSpawnY(piece.getShape()), engine.getCurY());
+
+    // A stack up to the ceiling blocks the next piece
+    int[] stack = new int[WIDE.getCeiling() * 2];
+    for (int y = 0; y < WIDE.getCeiling(); y++) {
+      stack[2 * y] = WIDE.getSpawnX();
+      stack[2 * y + 1] = y;
+    }
+    EngineFixtures.load(engine, Tetromino.Shape.O, 0, 0, 0, stack);
+    inputs[0] = Controller.HARD_DROP;
+    engine.tick();
+    assertFalse(engine.isStarted());
+  }
+
+  /**
+   * Test lines spanning several words are cleared, the rows above falling across the word
+   * boundaries.
+   */
+  @Test
+  public void testClearLines() {
+    int[] inputs = {Controller.NONE};
+    Engine engine = start(WIDE, inputs);
+    int width = WIDE.getWidth();
+    // Four full rows but the first column of the second word
+    int[] occupied = new int[(4 * (width - 1) + 2) * 2];
+    int n = 0;
+    for (int y = 0; y < 4; y++) {
+      for (int x = 0; x < width; x++) {
+        if (x != 64) {
+          occupied[n++] = x;
+          occupied[n++] = y;
+        }
+      }
+    }
+    for (int x : new int[] {63, 128}) {
+      occupied[n++] = x;
+      occupied[n++] = 4;
+    }
+    EngineFixtures.load(engine, Tetromino.Shape.I, 1, 64, 10, occupied);
+    assertEquals(width - 1, count(engine, 0));
+    inputs[0] = Controller.HARD_DROP;
+    engine.tick();
+
+    assertEquals(4, engine.getLines());
+    assertEquals(2, count(engine, 0));
+    assertTrue(engine.isOccupied(63, 0));
+    assertTrue(engine.isOccupied(128, 0));
+    assertEquals(1L << 63, engine.rowAt(0, 0));
+    assertEquals(0, engine.rowAt(0, 1));
+    assertEquals(1L, engine.rowAt(0, 2));
+    for (int y = 1; y < WIDE.getHeight(); y++) {
+      assertEquals(0, count(engine, y));
+    }
+  }
+
+  /**
+   * Test the collisions of a piece with the walls, the floor and the stack, across word
+   * boundaries.
+   */
+  @Test
+  public void testCollisions() {
+    Engine engine = start(WIDE, new int[] {Controller.NONE});
+    int width = WIDE.getWidth();
+    EngineFixtures.load(engine, Tetromino.Shape.O, 0, 0, 10, 64, 0, 128, 0);
+    Tetromino o = engine.getFallingPiece();
+    int dx = -EngineFixtures.minX(Tetromino.Shape.O, 0);
+    int dy = EngineFixtures.maxY(Tetromino.Shape.O, 0);
+    assertTrue(engine.isMoveable(o, 62 + dx, dy));
+    assertFalse(engine.isMoveable(o, 63 + dx, dy));
+    assertFalse(engine.isMoveable(o, 64 + dx, dy));
+    assertTrue(engine.isMoveable(o, 63 + dx, 1 + dy));
+    assertTrue(engine.isMoveable(o, 65 + dx, dy));
+    assertFalse(engine.isMoveable(o, 127 + dx, dy));
+    assertTrue(engine.isMoveable(o, width - 2 + dx, 1 + dy));
+    assertFalse(engine.isMoveable(o, width - 1 + dx, 1 + dy));
+    assertFalse(engine.isMoveable(o, -1 + dx, dy));
+    assertFalse(engine.isMoveable(o, dx, -1 + dy));
+    assertTrue(engine.isMoveable(o, dx, WIDE.getHeight() - 2 + dy));
+    assertFalse(engine.isMoveable(o, dx, WIDE.getHeight() - 1 + dy));
+  }
+}
@@ -0,0 +1,167 @@
+package org.fun.game.tetris;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link CommandLine}.
+ *
+ * @author Mathieu Brunot
+ */
+public class CommandLineTest {
+
+  /**
+   * Option without value.
+   */
+  private static final String FLAG_OPTION = "--flag";
+  /**
+   * Option of an address.
+   */
+  private static final String ADDRESS_OPTION = "--connect";
+  /**
+   * Options of the command lines.
+   */
+  private static final List<String> OPTIONS = Arrays.asList(FLAG_OPTION,
+      ADDRESS_OPTION, CommandLine.LEVEL_OPTION, CommandLine.SEED_OPTION,
+      CommandLine.MODE_OPTION, CommandLine.BOARD_OPTION,
+      CommandLine.SCORES_OPTION, CommandLine.SECONDS_OPTION);
+
+  /**
+   * Parse a command line.
+   *
+   * @param args the arguments
+   * @return the command line
+   */
+  private static CommandLine parse(final String... args) {
+    return new CommandLine(args, OPTIONS);
+  }
+
+  /**
+   * Assert reading an option throws a {@link CommandLine.UsageException}.
+   *
+   * @param message the expected message
+   * @param read the reading of the option
+   */
+  private static void assertUsage(final String message, final Runnable read) {
+    try {
+      read.run();
+      fail("Expected " + message);
+    } catch (CommandLine.UsageException ex) {
+      assertEquals(message, ex.getMessage());
+    }
+  }
+
+  /**
+   * Test the options values are read, and the absent options have their default values.
+   */
+  @Test
+  public void testValues() {
+    CommandLine line = parse("--level", " 7", FLAG_OPTION, "--seed", "1,-2, 3",
+        "--mode", "modern", "--board", "12x30", "--scores", "scores.log",
+        "--seconds", "0.5", ADDRESS_OPTION, "example.org:4000");
+    assertEquals(7, line.getInt(CommandLine.LEVEL_OPTION, 0));
+    assertArrayEquals(new long[] {1, -2, 3},
+        line.getLongs(CommandLine.SEED_OPTION));
+    assertEquals(Tetrion.Mode.MODERN, line.getEnum(CommandLine.MODE_OPTION,
+        Tetrion.Mode.class, null));
+    assertEquals(Board.parse("12x30"), line.getBoard(CommandLine.BOARD_OPTION));
+    assertEquals(Board.parse("12x30"),
+        line.getBoard(CommandLine.BOARD_OPTION, false));
+    assertEquals(Board.STANDARD, parse("--board", "10x20")
+        .getBoard(CommandLine.BOARD_OPTION, true));
+    assertEquals(Paths.get("scores.log"),
+        line.getPath(CommandLine.SCORES_OPTION));
+    assertEquals(0.5, line.getDouble(CommandLine.SECONDS_OPTION, 0), 0);
+    assertEquals(new InetSocketAddress("example.org", 4000),
+        line.getAddress(ADDRESS_OPTION, "localhost"));
+    assertTrue(line.has(FLAG_OPTION));
+
+    CommandLine empty = parse();
+    assertFalse(empty.has(FLAG_OPTION));
+    assertEquals(3, empty.getInt(CommandLine.LEVEL_OPTION, 3));
+    assertEquals(-1, empty.getLong(CommandLine.SEED_OPTION, -1));
+    assertNull(empty.getLongs(CommandLine.SEED_OPTION));
+    assertNull(empty.getPath(CommandLine.SCORES_OPTION));
+    assertNull(empty.getBoard(CommandLine.BOARD_OPTION));
+    assertNull(empty.getBoard(CommandLine.BOARD_OPTION, true));
+    assertNull(empty.getAddress(ADDRESS_OPTION, "localhost"));
+    assertEquals(new InetSocketAddress("localhost", 4000),
+        parse(ADDRESS_OPTION, "4000").getAddress(ADDRESS_OPTION, "localhost"));
+    assertEquals(Tetrion.Mode.MIX, parse("--mode").getEnum(
+        CommandLine.MODE_OPTION, Tetrion.Mode.class, Tetrion.Mode.MIX));
+  }
+
+  /**
+   * Test unknown options and unexpected arguments are rejected.
+   */
+  @Test
+  public void testUnknownOptions() {
+    assertUsage("Unknown option --levels", () -> parse("--levels", "3"));
+    assertUsage("Unexpected argument 3", () -> parse("3"));
+    assertUsage("Unexpected argument extra",
+        () -> parse("--level", "3", "extra"));
+    assertUsage("Unknown option --bot",
+        () -> parse(FLAG_OPTION, CommandLine.BOT_OPTION));
+  }
+
+  /**
+   * Test options missing their values are rejected when read.
+   */
+  @Test
+  public void testMissingValues() {
+    CommandLine line = parse("--level", "--seed");
+    assertTrue(line.has(CommandLine.LEVEL_OPTION));
+    assertUsage("Missing value of --level",
+        () -> line.getInt(CommandLine.LEVEL_OPTION, 0));
+    assertUsage("Missing value of --seed",
+        () -> line.getLong(CommandLine.SEED_OPTION, 0));
+    assertUsage("Missing value of --mode", () -> parse("--mode")
+        .getEnum(CommandLine.MODE_OPTION, Tetrion.Mode.class, null));
+    assertUsage("Missing value of --scores",
+        () -> parse("--scores").getPath(CommandLine.SCORES_OPTION));
+  }
+
+  /**
+   * Test invalid values are rejected when read.
+   */
+  @Test
+  public void testBadValues() {
+    assertUsage("Invalid value of --level: x, expected an integer",
+        () -> parse("--level", "x").getInt(CommandLine.LEVEL_OPTION, 0));
+    assertUsage("Invalid value of --seed: 99999999999999999999, expected an"
+        + " integer", () -> parse("--seed", "99999999999999999999")
+            .getLong(CommandLine.SEED_OPTION, 0));
+    assertUsage("Invalid value of --seed: 1,,2, expected a comma separated"
+        + " list of integers", () -> parse("--seed", "1,,2")
+            .getLongs(CommandLine.SEED_OPTION));
+    assertUsage("Invalid value of --seconds: soon, expected a number",
+        () -> parse("--seconds", "soon")
+            .getDouble(CommandLine.SECONDS_OPTION, 0));
+    assertUsage("Invalid value of --mode: arcade, expected one of "
+        + Arrays.toString(Tetrion.Mode.values()), () -> parse("--mode",
+            "arcade").getEnum(CommandLine.MODE_OPTION, Tetrion.Mode.class,
+                null));
+    assertUsage("Invalid value of --board: 12, expected <columns>x<rows>",
+        () -> parse("--board", "12").getBoard(CommandLine.BOARD_OPTION));
+    assertUsage("Invalid value of --board: 12x30, expected 10x20 for a bot",
+        () -> parse("--board", "12x30").getBoard(CommandLine.BOARD_OPTION,
+            true));
+    for (String address : new String[] {":4000", "host:port", "host:65536",
+        "host:-1"}) {
+      assertUsage("Invalid value of --connect: " + address
+          + ", expected [<host>:]<port>", () -> parse(ADDRESS_OPTION, address)
+              .getAddress(ADDRESS_OPTION, "localhost"));
+    }
+  }
+}
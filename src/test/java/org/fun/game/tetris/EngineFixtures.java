@@ -0,0 +1,118 @@
+package org.fun.game.tetris;
+
+import java.util.Arrays;
+
+/**
+ * Playfields and falling pieces loaded into an {@link Engine} by the tests.
+ *
+ * @author Mathieu Brunot
+ */
+final class EngineFixtures {
+
+  /**
+   * Hidden constructor.
+   */
+  private EngineFixtures() {}
+
+  /**
+   * Set the playfield and the falling piece, keeping the rest of the game.
+   *
+   * @param engine the engine
+   * @param shape the shape of the falling piece
+   * @param rotation the rotation state of the falling piece
+   * @param left the column of the leftmost blocks of the falling piece
+   * @param bottom the row of the lowest blocks of the falling piece
+   * @param playfield the occupied cells, {@code #}, of the lowest rows, top row first
+   */
+  static void load(final Engine engine, final Tetromino.Shape shape,
+      final int rotation, final int left, final int bottom,
+      final String... playfield) {
+    EngineState state = new EngineState();
+    engine.saveState(state);
+    int words = state.getBoard().getWordsPerRow();
+    Arrays.fill(state.rows, 0);
+    for (int i = 0; i < playfield.length; i++) {
+      int y = playfield.length - 1 - i;
+      for (int x = 0; x < playfield[i].length(); x++) {
+        if (playfield[i].charAt(x) == '#') {
+          state.rows[y * words + (x >>> 6)] |= 1L << x;
+        }
+      }
+    }
+    restore(engine, state, shape, rotation, left, bottom);
+  }
+
+  /**
+   * Set the playfield and the falling piece, keeping the rest of the game.
+   *
+   * @param engine the engine
+   * @param shape the shape of the falling piece
+   * @param rotation the rotation state of the falling piece
+   * @param left the column of the leftmost blocks of the falling piece
+   * @param bottom the row of the lowest blocks of the falling piece
+   * @param occupied the occupied cells, as {@code x, y} pairs
+   */
+  static void load(final Engine engine, final Tetromino.Shape shape,
+      final int rotation, final int left, final int bottom,
+      final int... occupied) {
+    EngineState state = new EngineState();
+    engine.saveState(state);
+    int words = state.getBoard().getWordsPerRow();
+    Arrays.fill(state.rows, 0);
+    for (int i = 0; i < occupied.length; i += 2) {
+      int x = occupied[i];
+      state.rows[occupied[i + 1] * words + (x >>> 6)] |= 1L << x;
+    }
+    restore(engine, state, shape, rotation, left, bottom);
+  }
+
+  /**
+   * Restore a state with the given falling piece.
+   *
+   * @param engine the engine
+   * @param state the state, its playfield set
+   * @param shape the shape of the falling piece
+   * @param rotation the rotation state of the falling piece
+   * @param left the column of the leftmost blocks of the falling piece
+   * @param bottom the row of the lowest blocks of the falling piece
+   */
+  private static void restore(final Engine engine, final EngineState state,
+      final Tetromino.Shape shape, final int rotation, final int left,
+      final int bottom) {
+    state.fallingShape = (byte) shape.ordinal();
+    state.rotation = rotation;
+    state.curX = left - minX(shape, rotation);
+    state.curY = bottom + maxY(shape, rotation);
+    engine.restoreState(state);
+  }
+
+  /**
+   * Get the {@code X} offset of the leftmost blocks of a shape.
+   *
+   * @param shape the shape
+   * @param rotation the rotation state
+   * @return the offset
+   */
+  static int minX(final Tetromino.Shape shape, final int rotation) {
+    int minX = Integer.MAX_VALUE;
+    for (int i = 0; i < Tetromino.BLOCKS; i++) {
+      minX = Math.min(minX, shape.x(i, rotation));
+    }
+    return minX;
+  }
+
+  /**
+   * Get the {@code Y} offset, downwards, of the lowest blocks of a shape.
+   *
+   * @param shape the shape
+   * @param rotation the rotation state
+   * @return the offset
+   */
+  static int maxY(final Tetromino.Shape shape, final int rotation) {
+    int maxY = Integer.MIN_VALUE;
+    for (int i = 0; i < Tetromino.BLOCKS; i++) {
+      maxY = Math.max(maxY, shape.y(i, rotation));
+    }
+    return maxY;
+  }
+}
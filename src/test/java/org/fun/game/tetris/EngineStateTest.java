@@ -0,0 +1,234 @@
+package org.fun.game.tetris;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+/**
+ * Tests of the {@link EngineState} encoding and deltas.
+ *
+ * @author Mathieu Brunot
+ */
+public class EngineStateTest {
+
+  /**
+   * One locked piece in this number brings garbage.
+   */
+  private static final int GARBAGE_PERIOD = 3;
+  /**
+   * Number of frames between the long deltas bases.
+   */
+  private static final int LONG_DELTA_PERIOD = 50;
+
+  /**
+   * Positions of the falling piece outside the playfield, as {x, y} offsets from its position.
+   */
+  private static final int[][] OUTSIDE = {{-Board.STANDARD.getWidth(), 0},
+      {Board.STANDARD.getWidth(), 0}, {0, -Board.STANDARD.getHeight()},
+      {0, Board.STANDARD.getHeight()}, {Integer.MAX_VALUE, 0}};
+
+  /**
+   * Encode a state.
+   *
+   * @param state the state
+   * @return the encoded state
+   * @throws IOException if the state cannot be written
+   */
+  private static byte[] encode(final EngineState state) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    state.writeTo(new DataOutputStream(bytes));
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Save the state of a game whose falling piece has spawned.
+   *
+   * @return the state
+   */
+  private static EngineState fallingPieceState() {
+    Engine engine = new Engine();
+    engine.start(0, FuzzedGames.SEED);
+    while (engine.getFallingPiece().getShape() == null) {
+      engine.tick();
+    }
+    EngineState state = new EngineState();
+    engine.saveState(state);
+    return state;
+  }
+
+  /**
+   * Encode the delta between two states, decode it on a copy of the base, and check the result
+   * is the target state.
+   *
+   * @param base the state known by the decoder
+   * @param target the state encoded as a delta
+   * @param engine the engine restoring the decoded state
+   * @param hash the hash of the target state
+   * @throws IOException if the delta cannot be written or read
+   */
+  private static void assertRoundTrip(final EngineState base,
+      final EngineState target, final Engine engine, final long hash)
+      throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    target.writeDeltaTo(base, new DataOutputStream(bytes));
+    EngineState decoded = new EngineState();
+    decoded.copyFrom(base);
+    DataInputStream in =
+        new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    decoded.readDeltaFrom(in);
+    assertEquals("Delta not fully read", -1, in.read());
+    assertArrayEquals(target.toString(), encode(target), encode(decoded));
+    engine.restoreState(decoded);
+    assertEquals(target.toString(), hash, engine.getHash());
+  }
+
+  /**
+   * Play games mixing bot and random inputs, holding pieces and receiving garbage, and check the
+   * deltas from the previous frame and from an older frame after every frame.
+   *
+   * @param board the playfield dimensions
+   * @throws IOException if a delta cannot be written or read
+   */
+  private static void check(final Board board) throws IOException {
+    final Engine restored = new Engine();
+    restored.setMode(Tetrion.Mode.MODERN);
+    final EngineState previous = new EngineState();
+    final EngineState older = new EngineState();
+    final EngineState state = new EngineState();
+    final long[] boardHash = new long[1];
+    final int[] queueShifts = new int[1];
+    final int[] rowChanges = new int[1];
+    final int[] garbageChanges = new int[1];
+    final int[] gameOvers = new int[1];
+    Engine engine =
+        FuzzedGames.engine(board, new SplittableRandom(FuzzedGames.SEED),
+            GARBAGE_PERIOD);
+    FuzzedGames.play(engine, new FuzzedGames.Frames() {
+      @Override
+      public void started(final Engine source) {
+        source.saveState(previous);
+        older.copyFrom(previous);
+        boardHash[0] = source.getBoardHash();
+      }
+
+      @Override
+      public void computed(final Engine source, final int frame)
+          throws IOException {
+        source.saveState(state);
+        long hash = source.getHash();
+        assertRoundTrip(previous, state, restored, hash);
+        assertRoundTrip(older, state, restored, hash);
+
+        if (state.getPieces() != previous.getPieces()) {
+          queueShifts[0]++;
+        }
+        if (source.getBoardHash() != boardHash[0]) {
+          rowChanges[0]++;
+        }
+        if (state.pendingAttacks != previous.pendingAttacks) {
+          garbageChanges[0]++;
+        }
+        if (!state.isStarted()) {
+          gameOvers[0]++;
+        }
+        boardHash[0] = source.getBoardHash();
+        previous.copyFrom(state);
+        if (frame % LONG_DELTA_PERIOD == 0) {
+          older.copyFrom(state);
+        }
+      }
+    });
+    assertTrue(queueShifts[0] > 0);
+    assertTrue(rowChanges[0] > 0);
+    assertTrue(garbageChanges[0] > 0);
+    assertTrue(gameOvers[0] > 0);
+  }
+
+  /**
+   * Test the deltas of games on the standard playfield.
+   *
+   * @throws IOException if a delta cannot be written or read
+   */
+  @Test
+  public void testStandardBoard() throws IOException {
+    check(Board.STANDARD);
+  }
+
+  /**
+   * Test the deltas of games on a playfield of several words per row.
+   *
+   * @throws IOException if a delta cannot be written or read
+   */
+  @Test
+  public void testWideBoard() throws IOException {
+    check(new Board(70, 23, 21));
+  }
+
+  /**
+   * Test a state whose falling piece is outside the playfield is rejected when read, rather than
+   * restored into the engine.
+   *
+   * @throws IOException if a state cannot be written
+   */
+  @Test
+  public void testFallingPieceOutside() throws IOException {
+    EngineState state = fallingPieceState();
+    int curX = state.curX;
+    int curY = state.curY;
+    new EngineState().readFrom(
+        new DataInputStream(new ByteArrayInputStream(encode(state))));
+    for (int[] offset : OUTSIDE) {
+      state.curX = curX + offset[0];
+      state.curY = curY + offset[1];
+      try {
+        new EngineState().readFrom(
+            new DataInputStream(new ByteArrayInputStream(encode(state))));
+        fail("Expected an invalid falling piece position " + state.curX
+            + ", " + state.curY);
+      } catch (IOException ex) {
+        assertTrue(ex.getMessage(),
+            ex.getMessage().startsWith("Invalid falling piece position"));
+      }
+    }
+  }
+
+  /**
+   * Test a delta moving the falling piece outside the playfield is rejected when read, rather than
+   * restored into the engine.
+   *
+   * @throws IOException if a delta cannot be written
+   */
+  @Test
+  public void testDeltaFallingPieceOutside() throws IOException {
+    EngineState base = fallingPieceState();
+    EngineState state = new EngineState();
+    for (int[] offset : OUTSIDE) {
+      state.copyFrom(base);
+      state.curX += offset[0];
+      state.curY += offset[1];
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      state.writeDeltaTo(base, new DataOutputStream(bytes));
+      EngineState decoded = new EngineState();
+      decoded.copyFrom(base);
+      try {
+        decoded.readDeltaFrom(new DataInputStream(
+            new ByteArrayInputStream(bytes.toByteArray())));
+        fail("Expected an invalid falling piece position " + state.curX
+            + ", " + state.curY);
+      } catch (IOException ex) {
+        assertTrue(ex.getMessage(),
+            ex.getMessage().startsWith("Invalid falling piece position"));
+      }
+    }
+  }
+}
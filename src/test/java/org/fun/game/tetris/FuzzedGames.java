@@ -0,0 +1,121 @@
+package org.fun.game.tetris;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import org.fun.game.tetris.ai.BotType;
+import org.fun.game.tetris.ai.Evaluator;
+
+/**
+ * Games played by the tests mixing bot and random inputs, holding pieces and receiving garbage, so
+ * that most of the {@link Engine} code runs.
+ *
+ * @author Mathieu Brunot
+ */
+public final class FuzzedGames {
+
+  /**
+   * Seed of the games and random inputs.
+   */
+  public static final long SEED = 1;
+  /**
+   * Number of frames played.
+   */
+  public static final int FRAMES = 20000;
+  /**
+   * One frame in this number has random inputs instead of the bot ones.
+   */
+  public static final int RANDOM_INPUTS_PERIOD = 4;
+  /**
+   * Maximum number of lines of garbage added at once.
+   */
+  public static final int MAX_GARBAGE = 4;
+
+  /**
+   * Callback of the frames played.
+   */
+  public interface Frames {
+
+    /**
+     * A game was started, before its first frame.
+     *
+     * @param engine the engine
+     * @throws IOException if the check fails to read or write
+     */
+    default void started(Engine engine) throws IOException {}
+
+    /**
+     * A frame was computed.
+     *
+     * @param engine the engine
+     * @param frame the number of frames played before
+     * @throws IOException if the check fails to read or write
+     */
+    void computed(Engine engine, int frame) throws IOException;
+  }
+
+  /**
+   * Hidden constructor.
+   */
+  private FuzzedGames() {}
+
+  /**
+   * Draw random inputs.
+   *
+   * @param random the generator of the inputs
+   * @return any combination of inputs
+   */
+  public static int randomInputs(final SplittableRandom random) {
+    return random.nextInt(Controller.ALL + 1);
+  }
+
+  /**
+   * Create an engine playing in modern mode, polling the greedy bot but on one frame in
+   * {@link #RANDOM_INPUTS_PERIOD} polling random inputs, and adding garbage after some locks.
+   *
+   * @param board the playfield dimensions
+   * @param random the generator of the random inputs and garbage
+   * @param garbagePeriod one locked piece in this number brings garbage
+   * @return the engine
+   */
+  public static Engine engine(final Board board, final SplittableRandom random,
+      final int garbagePeriod) {
+    final Controller bot =
+        BotType.GREEDY.create(new Evaluator(), ForkJoinPool.commonPool());
+    Engine engine = new Engine();
+    engine.setMode(Tetrion.Mode.MODERN);
+    engine.setBoard(board);
+    engine.setController(source -> random.nextInt(RANDOM_INPUTS_PERIOD) == 0
+        ? randomInputs(random) : bot.poll(source));
+    engine.addListener(new Engine.Listener() {
+      @Override
+      public void pieceLocked(final Engine source, final int removedLines) {
+        if (random.nextInt(garbagePeriod) == 0) {
+          source.addGarbage(1 + random.nextInt(MAX_GARBAGE));
+        }
+      }
+    });
+    return engine;
+  }
+
+  /**
+   * Play {@link #FRAMES} frames, starting a game from {@link #SEED} plus the current frame each
+   * time the previous one is over.
+   *
+   * @param engine the engine
+   * @param frames the callback of the frames played
+   * @throws IOException if the callback fails to read or write
+   */
+  public static void play(final Engine engine, final Frames frames)
+      throws IOException {
+    for (int frame = 0; frame < FRAMES; frame++) {
+      if (!engine.isStarted()) {
+        engine.start(0, SEED + frame);
+        frames.started(engine);
+      }
+      engine.tick();
+      frames.computed(engine, frame);
+    }
+  }
+}
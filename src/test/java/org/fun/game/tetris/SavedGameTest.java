@@ -0,0 +1,167 @@
+package org.fun.game.tetris;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import org.fun.game.tetris.ai.BotType;
+import org.fun.game.tetris.ai.Evaluator;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of {@link SavedGame}.
+ *
+ * @author Mathieu Brunot
+ */
+public class SavedGameTest {
+
+  /**
+   * Seed of the game saved.
+   */
+  private static final long SEED = 5;
+  /**
+   * Number of frames played before saving the game.
+   */
+  private static final int SAVED_FRAMES = 3000;
+  /**
+   * Number of frames played after saving the game.
+   */
+  private static final int RESUMED_FRAMES = 3000;
+
+  /**
+   * Temporary folder of the saved game.
+   */
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * The saved game file.
+   */
+  private Path file;
+
+  /**
+   * Create the saved game file path.
+   */
+  @Before
+  public void setUp() {
+    file = folder.getRoot().toPath().resolve("game.sav");
+  }
+
+  /**
+   * Create an engine played by the greedy bot.
+   *
+   * @return the engine
+   */
+  private static Engine engine() {
+    Engine engine = new Engine();
+    engine.setController(
+        BotType.GREEDY.create(new Evaluator(), ForkJoinPool.commonPool()));
+    return engine;
+  }
+
+  /**
+   * Play frames, the game having to go on.
+   *
+   * @param engine the engine
+   * @param frames the number of frames
+   */
+  private static void play(final Engine engine, final int frames) {
+    for (int frame = 0; frame < frames; frame++) {
+      engine.tick();
+    }
+    assertTrue(engine.isStarted());
+  }
+
+  /**
+   * Save a game in progress.
+   *
+   * @return the engine of the game
+   * @throws IOException if the game cannot be written
+   */
+  private Engine saveGame() throws IOException {
+    Engine engine = engine();
+    engine.setMode(Tetrion.Mode.MODERN);
+    engine.start(2, SEED);
+    play(engine, SAVED_FRAMES / 2);
+    engine.addGarbage(2);
+    play(engine, SAVED_FRAMES / 2);
+    SavedGame.of(engine).save(file);
+    return engine;
+  }
+
+  /**
+   * Test a saved game is loaded as saved, and plays on to the same frames as the game not saved.
+   *
+   * @throws IOException if the game cannot be written or read
+   */
+  @Test
+  public void testSaveLoad() throws IOException {
+    Engine engine = saveGame();
+    // No temporary file left behind
+    try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+      assertEquals(1, files.count());
+    }
+
+    SavedGame saved = SavedGame.load(file);
+    assertEquals(Tetrion.Mode.MODERN, saved.getMode());
+    Engine resumed = engine();
+    resumed.setMode(saved.getMode());
+    resumed.restoreState(saved.getState());
+    assertEquals(engine.getHash(), resumed.getHash());
+    assertEquals(engine.getFrames(), resumed.getFrames());
+    assertEquals(engine.getScore(), resumed.getScore());
+
+    // Both bots start planning from the saved state
+    engine.setController(
+        BotType.GREEDY.create(new Evaluator(), ForkJoinPool.commonPool()));
+    for (int frame = 0; frame < RESUMED_FRAMES; frame++) {
+      engine.tick();
+      resumed.tick();
+      assertEquals(engine.getHash(), resumed.getHash());
+    }
+    assertEquals(engine.getFrames(), resumed.getFrames());
+    assertEquals(engine.getScore(), resumed.getScore());
+    assertEquals(engine.getLines(), resumed.getLines());
+  }
+
+  /**
+   * Test files which are not saved games of this version are rejected.
+   *
+   * @throws IOException if the game cannot be written
+   */
+  @Test
+  public void testLoadInvalid() throws IOException {
+    saveGame();
+    byte[] valid = Files.readAllBytes(file);
+    byte[] badMagic = valid.clone();
+    badMagic[0] ^= 1;
+    byte[] badVersion = valid.clone();
+    ByteBuffer.wrap(badVersion).putInt(Integer.BYTES,
+        ByteBuffer.wrap(valid).getInt(Integer.BYTES) + 1);
+    byte[] badMode = valid.clone();
+    // The mode name follows its length
+    badMode[2 * Integer.BYTES + Short.BYTES] = 'X';
+    byte[][] invalids = {badMagic, badVersion, badMode,
+        Arrays.copyOf(valid, valid.length / 2), new byte[0]};
+    for (byte[] invalid : invalids) {
+      Files.write(file, invalid);
+      try {
+        SavedGame.load(file);
+        fail("Loaded " + Arrays.toString(Arrays.copyOf(invalid, 12)));
+      } catch (IOException ex) {
+        // Expected
+      }
+    }
+  }
+}
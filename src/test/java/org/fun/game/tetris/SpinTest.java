@@ -0,0 +1,189 @@
+package org.fun.game.tetris;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the T-spins recognized by {@link Spin} and scored by the {@link Engine}.
+ *
+ * @author Mathieu Brunot
+ */
+public class SpinTest {
+
+  /**
+   * Seed of the games.
+   */
+  private static final long SEED = 1;
+  /**
+   * Rotation state of the T piece pointing right.
+   */
+  private static final int RIGHT = 1;
+  /**
+   * Mask of all the corners.
+   */
+  private static final int ALL_CORNERS = (1 << Spin.CORNERS) - 1;
+
+  /**
+   * The engine.
+   */
+  private Engine engine;
+  /**
+   * Inputs held.
+   */
+  private int inputs = Controller.NONE;
+  /**
+   * Last spin notified, {@code -1} if none.
+   */
+  private int spin = -1;
+  /**
+   * Lines cleared by the last spin notified.
+   */
+  private int spinLines = -1;
+
+  /**
+   * Start a game on the standard playfield, at level {@code 0}, its first piece spawned.
+   */
+  @Before
+  public void setUp() {
+    engine = new Engine();
+    engine.setMode(Tetrion.Mode.MODERN);
+    engine.setController(source -> inputs);
+    engine.addListener(new Engine.Listener() {
+      @Override
+      public void tSpin(final Engine source, final int lockSpin,
+          final int removedLines) {
+        spin = lockSpin;
+        spinLines = removedLines;
+      }
+    });
+    engine.start(0, SEED);
+    engine.tick();
+  }
+
+  /**
+   * Rotate the falling piece right, then hard drop it, locking it where it is.
+   */
+  private void rotateAndLock() {
+    spin = -1;
+    spinLines = -1;
+    inputs = Controller.ROTATE_RIGHT;
+    engine.tick();
+    inputs = Controller.HARD_DROP;
+    engine.tick();
+    inputs = Controller.NONE;
+    engine.tick();
+  }
+
+  /**
+   * Test the spin recognized by the corners occupied and the kick of the last rotation.
+   */
+  @Test
+  public void testTable() {
+    for (int r = 0; r < Tetromino.ROTATIONS; r++) {
+      int front = Spin.frontCorners(r);
+      assertEquals(2, Integer.bitCount(front));
+      int back = ALL_CORNERS & ~front;
+      int oneBack = Integer.lowestOneBit(back);
+      int oneFront = Integer.lowestOneBit(front);
+      for (int kick = Spin.NO_KICK; kick <= Spin.FLOOR_KICK; kick++) {
+        assertEquals(Attack.T_SPIN, Spin.spin(r, kick, ALL_CORNERS));
+        assertEquals(Attack.T_SPIN, Spin.spin(r, kick, front | oneBack));
+        assertEquals(kick == Spin.FLOOR_KICK ? Attack.T_SPIN
+            : Attack.MINI_T_SPIN, Spin.spin(r, kick, back | oneFront));
+        assertEquals(Attack.NO_SPIN, Spin.spin(r, kick, front));
+        assertEquals(Attack.NO_SPIN, Spin.spin(r, kick, back));
+        assertEquals(Attack.NO_SPIN, Spin.spin(r, kick, oneBack | oneFront));
+      }
+      assertEquals(Attack.NO_SPIN,
+          Spin.spin(r, Spin.NOT_ROTATED, ALL_CORNERS));
+    }
+  }
+
+  /**
+   * Test a T-spin double: both front corners and a back corner occupied.
+   */
+  @Test
+  public void testTSpinDouble() {
+    EngineFixtures.load(engine, Tetromino.Shape.T, RIGHT, 4, 0,
+        ".....#....",
+        "###...####",
+        "####.#####");
+    rotateAndLock();
+    assertEquals(Attack.T_SPIN, spin);
+    assertEquals(2, spinLines);
+    assertEquals(2, engine.getLines());
+    assertEquals(Attack.score(Attack.clearType(Attack.T_SPIN, 2)),
+        engine.getScore());
+    assertEquals(4, engine.getLinesSent());
+  }
+
+  /**
+   * Test a mini T-spin single, only one front corner occupied, followed by a T-spin double
+   * sending the back-to-back and combo bonuses.
+   */
+  @Test
+  public void testMiniTSpin() {
+    EngineFixtures.load(engine, Tetromino.Shape.T, RIGHT, 4, 0,
+        "...#.#....",
+        "###...####",
+        "####..####");
+    rotateAndLock();
+    assertEquals(Attack.MINI_T_SPIN, spin);
+    assertEquals(1, spinLines);
+    assertEquals(1, engine.getLines());
+    assertEquals(Attack.score(Attack.clearType(Attack.MINI_T_SPIN, 1)),
+        engine.getScore());
+    assertEquals(0, engine.getLinesSent());
+    assertTrue(engine.isBackToBack());
+
+    long score = engine.getScore();
+    EngineFixtures.load(engine, Tetromino.Shape.T, RIGHT, 4, 0,
+        ".....#....",
+        "###...####",
+        "####.#####");
+    rotateAndLock();
+    assertEquals(Attack.T_SPIN, spin);
+    assertEquals(Attack.score(Attack.clearType(Attack.T_SPIN, 2)),
+        engine.getScore() - score);
+    assertEquals(4 + 1 + 1, engine.getLinesSent());
+  }
+
+  /**
+   * Test a T piece rotated with only two corners occupied clears lines without spin.
+   */
+  @Test
+  public void testNoSpin() {
+    EngineFixtures.load(engine, Tetromino.Shape.T, RIGHT, 4, 0,
+        "####.#####");
+    rotateAndLock();
+    assertEquals(-1, spin);
+    assertEquals(1, engine.getLines());
+    assertEquals(Attack.score(Attack.clearType(Attack.NO_SPIN, 1)),
+        engine.getScore());
+    assertEquals(0, engine.getLinesSent());
+    assertFalse(engine.isBackToBack());
+  }
+
+  /**
+   * Test a rotation blocked, but for a floor kick lifting the piece into its slot, is a T-spin
+   * even with a front corner free.
+   */
+  @Test
+  public void testFloorKick() {
+    EngineFixtures.load(engine, Tetromino.Shape.T, RIGHT, 2, 0,
+        ".#.#......",
+        "#...######",
+        ".#........",
+        "...#......");
+    rotateAndLock();
+    assertEquals(Attack.T_SPIN, spin);
+    assertEquals(1, spinLines);
+    assertEquals(Attack.score(Attack.clearType(Attack.T_SPIN, 1)),
+        engine.getScore());
+    assertEquals(2, engine.getLinesSent());
+  }
+}
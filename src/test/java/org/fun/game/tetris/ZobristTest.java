@@ -0,0 +1,121 @@
+package org.fun.game.tetris;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+/**
+ * Tests of the {@link Zobrist} hashes kept up to date by the {@link Engine}.
+ *
+ * @author Mathieu Brunot
+ */
+public class ZobristTest {
+
+  /**
+   * One locked piece in this number brings garbage.
+   */
+  private static final int GARBAGE_PERIOD = 5;
+
+  /**
+   * Compute the hash of the playfield of an engine from scratch.
+   *
+   * @param engine the engine
+   * @return the hash of its playfield
+   */
+  private static long boardHash(final Engine engine) {
+    Board board = engine.getBoard();
+    int words = board.getWordsPerRow();
+    long[] rows = new long[board.getHeight() * words];
+    for (int y = 0; y < board.getHeight(); y++) {
+      for (int word = 0; word < words; word++) {
+        rows[y * words + word] = engine.rowAt(y, word);
+      }
+    }
+    return Zobrist.rows(rows, words);
+  }
+
+  /**
+   * Compute the hash of the game state of an engine from scratch.
+   *
+   * @param engine the engine
+   * @return the hash of its game state
+   */
+  private static long hash(final Engine engine) {
+    long hash = boardHash(engine);
+    int index = 0;
+    for (Tetromino.Shape shape : engine.getNextShapes()) {
+      hash ^= Zobrist.queue(index++, shape);
+    }
+    Tetromino piece = engine.getFallingPiece();
+    hash ^= Zobrist.piece(piece.getShape(), piece.getRotation(),
+        engine.getCurX(), engine.getCurY());
+    return hash ^ Zobrist.hold(engine.getHoldPiece().getShape(),
+        engine.isHoldPieceAvailable());
+  }
+
+  /**
+   * Play games mixing bot and random inputs, holding pieces and receiving garbage, and check the
+   * hashes after every frame.
+   *
+   * @param board the playfield dimensions
+   * @return the number of lines cleared
+   * @throws IOException never, the hashes being checked in memory
+   */
+  private static int check(final Board board) throws IOException {
+    final int[] holds = new int[1];
+    final int[] lines = new int[1];
+    final int[] received = new int[1];
+    Engine engine =
+        FuzzedGames.engine(board, new SplittableRandom(FuzzedGames.SEED),
+            GARBAGE_PERIOD);
+    engine.addListener(new Engine.Listener() {
+      @Override
+      public void pieceLocked(final Engine source, final int removedLines) {
+        lines[0] += removedLines;
+      }
+
+      @Override
+      public void holdChanged(final Engine source) {
+        holds[0]++;
+      }
+
+      @Override
+      public void gameOver(final Engine source) {
+        received[0] += source.getGarbageReceived();
+      }
+    });
+
+    FuzzedGames.play(engine, (source, frame) -> {
+      assertEquals("board hash at frame " + frame, boardHash(source),
+          source.getBoardHash());
+      assertEquals("hash at frame " + frame, hash(source), source.getHash());
+    });
+    assertTrue(holds[0] > 0);
+    assertTrue(received[0] + engine.getGarbageReceived() > 0);
+    return lines[0];
+  }
+
+  /**
+   * Test the hashes of the standard playfield are kept up to date.
+   *
+   * @throws IOException never, the hashes being checked in memory
+   */
+  @Test
+  public void testStandardBoard() throws IOException {
+    assertTrue(check(Board.STANDARD) > 0);
+  }
+
+  /**
+   * Test the hashes of a playfield of several words per row are kept up to date.
+   *
+   * @throws IOException never, the hashes being checked in memory
+   */
+  @Test
+  public void testWideBoard() throws IOException {
+    check(new Board(70, 23, 21));
+  }
+}
@@ -0,0 +1,87 @@
+package org.fun.game.tetris.ai;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.fun.game.tetris.Controller;
+import org.fun.game.tetris.Engine;
+import org.fun.game.tetris.Tetrion;
+import org.junit.Test;
+
+/**
+ * Tests of {@link BeamSearchBot}.
+ *
+ * @author Mathieu Brunot
+ */
+public class BeamSearchBotTest {
+
+  /**
+   * Seed of the games.
+   */
+  private static final long SEED = 1;
+  /**
+   * Start level of the game topping out, fast enough for the greedy bot to top out early.
+   */
+  private static final int FAST_LEVEL = 20;
+  /**
+   * Number of pieces after which a game is ended.
+   */
+  private static final int MAX_PIECES = 400;
+
+  /**
+   * Play a seeded game.
+   *
+   * @param bot the bot playing the game
+   * @param mode the game mode
+   * @param level the start level
+   * @param maxPieces the number of pieces after which the game is ended
+   * @return the engine, its game over or ended
+   */
+  private static Engine play(final Controller bot, final Tetrion.Mode mode,
+      final int level, final int maxPieces) {
+    Engine engine = new Engine();
+    engine.setMode(mode);
+    engine.setController(bot);
+    engine.start(level, SEED);
+    while (engine.isStarted() && engine.getPieces() < maxPieces) {
+      engine.tick();
+    }
+    return engine;
+  }
+
+  /**
+   * Test the bot does not top out sooner than the greedy bot, a heuristic bot looking at the
+   * falling piece only, in a fast classic game.
+   */
+  @Test
+  public void testOutlastsGreedy() {
+    Engine greedy =
+        play(new HeuristicBot(new Evaluator(), 1, ForkJoinPool.commonPool()),
+            Tetrion.Mode.CLASSIC, FAST_LEVEL, MAX_PIECES);
+    Engine beam = play(new BeamSearchBot(), Tetrion.Mode.CLASSIC, FAST_LEVEL,
+        MAX_PIECES);
+    assertTrue(greedy.getPieces() < MAX_PIECES);
+    assertTrue(beam.getPieces() + " < " + greedy.getPieces(),
+        beam.getPieces() >= greedy.getPieces());
+    assertTrue(beam.getLines() >= greedy.getLines());
+  }
+
+  /**
+   * Test a table much smaller than the children of a search, evicting the entries of the
+   * duplicates and of previous searches, still lets the bot play.
+   */
+  @Test
+  public void testSmallTable() {
+    final int pieces = 100;
+    TranspositionTable table = new TranspositionTable(TranspositionTable.WAYS);
+    BeamSearchBot bot = new BeamSearchBot(new Evaluator(),
+        BeamSearchBot.DEFAULT_BEAM_WIDTH, Integer.MAX_VALUE, table);
+    Engine engine = play(bot, Tetrion.Mode.MODERN, 0, pieces);
+    assertEquals(pieces, engine.getPieces());
+    assertTrue(engine.getLines() > 0);
+    assertEquals(TranspositionTable.WAYS, table.size());
+    assertTrue(table.getEvictions() > 0);
+  }
+}
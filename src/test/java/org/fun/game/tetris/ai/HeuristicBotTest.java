@@ -0,0 +1,68 @@
+package org.fun.game.tetris.ai;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.fun.game.tetris.Engine;
+import org.fun.game.tetris.Tetrion;
+import org.junit.Test;
+
+/**
+ * Tests of {@link HeuristicBot}.
+ *
+ * @author Mathieu Brunot
+ */
+public class HeuristicBotTest {
+
+  /**
+   * Seed of the games.
+   */
+  private static final long SEED = 11;
+  /**
+   * Number of pieces after which a game is ended.
+   */
+  private static final int MAX_PIECES = 150;
+
+  /**
+   * Play a seeded game, rating the placements in parallel.
+   *
+   * @param pool the pool rating the placements
+   * @return the hash of the game state after each frame
+   */
+  private static List<Long> play(final ForkJoinPool pool) {
+    Engine engine = new Engine();
+    engine.setMode(Tetrion.Mode.MODERN);
+    engine.setController(new HeuristicBot(new Evaluator(), 2, pool));
+    engine.start(0, SEED);
+    List<Long> hashes = new ArrayList<>();
+    while (engine.isStarted() && engine.getPieces() < MAX_PIECES) {
+      engine.tick();
+      hashes.add(engine.getHash());
+    }
+    assertEquals(MAX_PIECES, engine.getPieces());
+    assertTrue(engine.getLines() > 0);
+    return hashes;
+  }
+
+  /**
+   * Test two runs from the same seed play the same game, whatever the number of threads rating
+   * the placements.
+   */
+  @Test
+  public void testDeterministic() {
+    ForkJoinPool single = new ForkJoinPool(1);
+    ForkJoinPool parallel = new ForkJoinPool(4);
+    try {
+      List<Long> expected = play(single);
+      assertEquals(expected, play(parallel));
+      assertEquals(expected, play(parallel));
+    } finally {
+      single.shutdown();
+      parallel.shutdown();
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package org.fun.game.tetris.ai;
+
+import static org.junit.Assert.assertEquals;
+
+import org.fun.game.tetris.Tetrion;
+import org.fun.game.tetris.Tetromino;
+import org.junit.Test;
+
+/**
+ * Tests of {@link Perft}.
+ *
+ * @author Mathieu Brunot
+ */
+public class PerftTest {
+
+  /**
+   * Number of placement sequences of the shapes of seed 1 from an empty playfield in mix
+   * mode, by depth.
+   */
+  private static final long[] SEED_1_SEQUENCES = {9, 153, 5383};
+
+  /**
+   * Test the placement sequences counted for the shapes of seed 1 at depths 1 to 3.
+   */
+  @Test
+  public void testCountSeed1() {
+    int depth = SEED_1_SEQUENCES.length;
+    Tetromino.Shape.RandomGenerator generator =
+        new Tetromino.Shape.RandomGenerator(1);
+    Tetromino.Shape[] sequence = new Tetromino.Shape[depth];
+    for (int i = 0; i < depth; i++) {
+      sequence[i] = generator.nextShape();
+    }
+    Perft perft = new Perft(Tetrion.Mode.MIX, depth);
+    int[] board = new int[Bitboards.HEIGHT];
+    for (int d = 1; d <= depth; d++) {
+      assertEquals("depth " + d, SEED_1_SEQUENCES[d - 1],
+          perft.count(board, sequence, d));
+    }
+  }
+}
@@ -0,0 +1,146 @@
+package org.fun.game.tetris.ai;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.fun.game.tetris.Tetrion;
+import org.fun.game.tetris.Tetromino;
+import org.junit.Test;
+
+/**
+ * Tests of {@link PlacementFinder}.
+ *
+ * @author Mathieu Brunot
+ */
+public class PlacementFinderTest {
+
+  /**
+   * Number of placements of each shape on an empty playfield, by shape ordinal (I, J, L, O, S, T,
+   * Z): every column of every distinct rotation.
+   */
+  private static final int[] EMPTY_BOARD_PLACEMENTS = {17, 34, 34, 9, 17, 34, 17};
+  /**
+   * Width of the overhang of the tuck board, from the left wall.
+   */
+  private static final int OVERHANG = 6;
+
+  /**
+   * Get the cells occupied by a placement.
+   *
+   * @param finder the finder of the placement
+   * @param index the placement index
+   * @return the cells, as {@code y * WIDTH + x}
+   */
+  private static Set<Integer> cells(final PlacementFinder finder,
+      final int index) {
+    Tetromino.Shape shape = finder.getShape();
+    Set<Integer> cells = new HashSet<>();
+    for (int i = 0; i < Tetromino.BLOCKS; i++) {
+      int x = finder.getX(index) + shape.x(i, finder.getRotation(index));
+      int y = finder.getY(index) - shape.y(i, finder.getRotation(index));
+      cells.add(y * Bitboards.WIDTH + x);
+    }
+    return cells;
+  }
+
+  /**
+   * Can a piece occupying the given cells be hard dropped there from the top of the playfield,
+   * i.e. is the column above each of its cells empty?
+   *
+   * @param board the playfield bitboard
+   * @param cells the cells of the piece
+   * @return {@code true} if the cells are reached by a hard drop
+   */
+  private static boolean isDroppable(final int[] board,
+      final Set<Integer> cells) {
+    for (int cell : cells) {
+      int x = cell % Bitboards.WIDTH;
+      for (int y = cell / Bitboards.WIDTH + 1; y < Bitboards.HEIGHT; y++) {
+        if ((board[y] & (1 << x)) != 0) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Test the placements of each shape on an empty playfield: their number, each resting on the
+   * floor, and each occupying distinct cells.
+   */
+  @Test
+  public void testEmptyBoard() {
+    PlacementFinder finder = new PlacementFinder(Tetrion.Mode.MIX);
+    int[] board = new int[Bitboards.HEIGHT];
+    for (Tetromino.Shape shape : Tetromino.Shape.values()) {
+      int count = finder.find(board, shape);
+      assertEquals(shape.name(), EMPTY_BOARD_PLACEMENTS[shape.ordinal()],
+          count);
+      Set<Set<Integer>> placements = new HashSet<>();
+      for (int i = 0; i < count; i++) {
+        Set<Integer> cells = cells(finder, i);
+        assertTrue(shape + " placed twice", placements.add(cells));
+        int bottom = Integer.MAX_VALUE;
+        for (int cell : cells) {
+          bottom = Math.min(bottom, cell / Bitboards.WIDTH);
+        }
+        assertEquals(shape + " not on the floor", 0, bottom);
+        assertTrue(isDroppable(board, cells));
+      }
+    }
+  }
+
+  /**
+   * Test an I piece is tucked under an overhang, a placement no hard drop reaches, and its path
+   * shifts the piece after dropping it.
+   */
+  @Test
+  public void testTuck() {
+    PlacementFinder finder = new PlacementFinder(Tetrion.Mode.MIX);
+    int[] board = new int[Bitboards.HEIGHT];
+    board[1] = (1 << OVERHANG) - 1;
+    int count = finder.find(board, Tetromino.Shape.I);
+    Set<Integer> tucked = new HashSet<>();
+    for (int x = 0; x < Tetromino.BLOCKS; x++) {
+      tucked.add(x);
+    }
+    int found = -1;
+    for (int i = 0; i < count; i++) {
+      if (cells(finder, i).equals(tucked)) {
+        found = i;
+      }
+    }
+    assertTrue("Tuck not found", found >= 0);
+    assertFalse(isDroppable(board, tucked));
+
+    byte[] path = new byte[PlacementFinder.POSITIONS];
+    int length = finder.getPath(found, path);
+    boolean dropped = false;
+    boolean shiftedAfterDrop = false;
+    for (int i = 0; i < length; i++) {
+      dropped |= path[i] == PlacementFinder.DOWN;
+      shiftedAfterDrop |= dropped && path[i] == PlacementFinder.LEFT;
+    }
+    assertTrue("Not shifted under the overhang", shiftedAfterDrop);
+  }
+
+  /**
+   * Test no placement is found when the piece cannot even spawn.
+   */
+  @Test
+  public void testNoPlacement() {
+    PlacementFinder finder = new PlacementFinder(Tetrion.Mode.MIX);
+    int[] board = new int[Bitboards.HEIGHT];
+    for (int y = 0; y < Bitboards.HEIGHT; y++) {
+      board[y] = Bitboards.FULL_ROW & ~1;
+    }
+    for (Tetromino.Shape shape : Tetromino.Shape.values()) {
+      assertEquals(shape.name(), 0, finder.find(board, shape));
+      assertEquals(0, finder.size());
+    }
+  }
+}
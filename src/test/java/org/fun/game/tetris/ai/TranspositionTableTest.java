@@ -0,0 +1,139 @@
+package org.fun.game.tetris.ai;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link TranspositionTable}.
+ *
+ * @author Mathieu Brunot
+ */
+public class TranspositionTableTest {
+
+  /**
+   * Value returned for missing keys.
+   */
+  private static final long MISSING = -1;
+
+  /**
+   * Create a table of a single bucket, holding every key in the same slots.
+   *
+   * @return the table filled with keys {@code 1} to {@link TranspositionTable#WAYS}, the value of
+   *         each key being ten times the key
+   */
+  private static TranspositionTable fullBucket() {
+    TranspositionTable table = new TranspositionTable(TranspositionTable.WAYS);
+    for (long key = 1; key <= TranspositionTable.WAYS; key++) {
+      table.put(key, key * 10);
+    }
+    return table;
+  }
+
+  /**
+   * Test values are found by key, overwritten in place, and missing keys are reported.
+   */
+  @Test
+  public void testGetPut() {
+    TranspositionTable table = new TranspositionTable(64);
+    table.put(42, 1);
+    table.put(-42, 2);
+    assertEquals(1, table.get(42, MISSING));
+    assertEquals(2, table.get(-42, MISSING));
+    assertEquals(MISSING, table.get(43, MISSING));
+    assertEquals(2, table.size());
+
+    table.put(42, 3);
+    assertEquals(3, table.get(42, MISSING));
+    assertEquals(2, table.size());
+    assertEquals(0, table.getEvictions());
+  }
+
+  /**
+   * Test the reserved key {@code 0} is stored like any other key.
+   */
+  @Test
+  public void testZeroKey() {
+    TranspositionTable table = new TranspositionTable(64);
+    assertEquals(MISSING, table.get(0, MISSING));
+    table.put(0, 7);
+    assertEquals(7, table.get(0, MISSING));
+    assertEquals(1, table.size());
+    table.put(0, 8);
+    assertEquals(8, table.get(0, MISSING));
+    assertEquals(1, table.size());
+  }
+
+  /**
+   * Test a full bucket evicts following the clock: all entries being referenced, the hand clears
+   * them and evicts the first one, then skips the entries read since.
+   */
+  @Test
+  public void testClockEviction() {
+    TranspositionTable table = fullBucket();
+    assertEquals(TranspositionTable.WAYS, table.size());
+    assertEquals(0, table.getEvictions());
+
+    table.put(5, 50);
+    assertEquals(MISSING, table.get(1, MISSING));
+    assertEquals(50, table.get(5, MISSING));
+    assertEquals(TranspositionTable.WAYS, table.size());
+    assertEquals(1, table.getEvictions());
+
+    // Key 2 gets a second chance, key 3 is evicted
+    assertEquals(20, table.get(2, MISSING));
+    table.put(6, 60);
+    assertEquals(20, table.get(2, MISSING));
+    assertEquals(MISSING, table.get(3, MISSING));
+    assertEquals(40, table.get(4, MISSING));
+    assertEquals(60, table.get(6, MISSING));
+    assertEquals(TranspositionTable.WAYS, table.size());
+    assertEquals(2, table.getEvictions());
+  }
+
+  /**
+   * Test an overwrite references the entry like a read.
+   */
+  @Test
+  public void testOverwriteReferences() {
+    TranspositionTable table = fullBucket();
+    table.put(5, 50);
+    table.put(2, 21);
+    table.put(6, 60);
+    assertEquals(21, table.get(2, MISSING));
+    assertEquals(MISSING, table.get(3, MISSING));
+  }
+
+  /**
+   * Test clearing empties the table and resets the evictions.
+   */
+  @Test
+  public void testClear() {
+    TranspositionTable table = fullBucket();
+    table.put(5, 50);
+    table.clear();
+    assertEquals(0, table.size());
+    assertEquals(0, table.getEvictions());
+    for (long key = 1; key <= TranspositionTable.WAYS + 1; key++) {
+      assertEquals(MISSING, table.get(key, MISSING));
+    }
+  }
+
+  /**
+   * Test the capacity is rounded up to a power of two of at least one bucket, and the capacity of
+   * a table of a given memory.
+   */
+  @Test
+  public void testCapacity() {
+    assertEquals(TranspositionTable.WAYS, new TranspositionTable(1).capacity());
+    assertEquals(2 * TranspositionTable.WAYS,
+        new TranspositionTable(TranspositionTable.WAYS + 1).capacity());
+    assertEquals(1024, new TranspositionTable(1000).capacity());
+    assertEquals(TranspositionTable.WAYS,
+        TranspositionTable.ofBytes(0).capacity());
+    assertEquals(64,
+        TranspositionTable.ofBytes(100L * TranspositionTable.ENTRY_BYTES)
+            .capacity());
+    assertEquals(32, TranspositionTable.ofBytes(1000).capacity());
+  }
+}
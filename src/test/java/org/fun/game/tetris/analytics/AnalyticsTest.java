@@ -0,0 +1,219 @@
+package org.fun.game.tetris.analytics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.fun.game.tetris.Controller;
+import org.fun.game.tetris.Engine;
+import org.fun.game.tetris.Tetrion;
+import org.fun.game.tetris.Tetromino;
+import org.junit.Test;
+
+/**
+ * Tests of {@link Finesse}, {@link PlayAnalyzer} and {@link Analytics}.
+ *
+ * @author Mathieu Brunot
+ */
+public class AnalyticsTest {
+
+  /**
+   * Seed of the scripted games.
+   */
+  private static final long SEED = 1;
+  /**
+   * Number of pieces dropped in a scripted game.
+   */
+  private static final int PIECES = 6;
+  /**
+   * Number of keys pressed for each piece of a scripted game.
+   */
+  private static final int SCRIPT_KEYS = 4;
+  /**
+   * Value of the unreachable columns.
+   */
+  private static final int X = Finesse.UNREACHABLE;
+
+  /**
+   * Inputs of each piece of a scripted game, one per frame from the piece spawn: three taps left,
+   * then a hard drop.
+   */
+  private static final int[] SCRIPT = {Controller.SHIFT_LEFT, Controller.NONE,
+      Controller.SHIFT_LEFT, Controller.NONE, Controller.SHIFT_LEFT,
+      Controller.NONE, Controller.HARD_DROP};
+
+  /**
+   * Controller playing {@link #SCRIPT} for each piece.
+   */
+  private static final class ScriptedPlayer
+      implements Controller, Engine.Listener {
+
+    /**
+     * Frame of the spawn of the falling piece.
+     */
+    private long spawnFrame = 1;
+    /**
+     * Number of pieces locked.
+     */
+    private int pieces = 0;
+    /**
+     * Number of pieces of shape {@code O} locked.
+     */
+    private int squares = 0;
+    /**
+     * Shape of the falling piece.
+     */
+    private Tetromino.Shape shape = null;
+
+    @Override
+    public int poll(final Engine source) {
+      int frame = (int) (source.getFrames() - spawnFrame);
+      return pieces < PIECES && frame < SCRIPT.length ? SCRIPT[frame]
+          : Controller.NONE;
+    }
+
+    @Override
+    public void pieceMoved(final Engine engine) {
+      shape = engine.getFallingPiece().getShape();
+    }
+
+    @Override
+    public void pieceLocked(final Engine engine, final int removedLines) {
+      pieces++;
+      if (shape == Tetromino.Shape.O) {
+        squares++;
+      }
+      spawnFrame = engine.getFrames() + 1;
+    }
+  }
+
+  /**
+   * Play a scripted game.
+   *
+   * @param analyzer the analyzer of the game
+   * @param player the player of the game
+   * @param seed the seed of the game
+   * @return the engine of the game, once {@link #PIECES} are locked
+   */
+  private static Engine play(final PlayAnalyzer analyzer,
+      final ScriptedPlayer player, final long seed) {
+    analyzer.setDelegate(player);
+    Engine engine = new Engine();
+    engine.setMode(Tetrion.Mode.MODERN);
+    engine.setController(analyzer);
+    engine.addListener(player);
+    engine.addListener(analyzer);
+    engine.start(0, seed);
+    while (player.pieces < PIECES) {
+      engine.tick();
+    }
+    return engine;
+  }
+
+  /**
+   * Get the least number of keys to drop a piece, by column of its leftmost blocks.
+   *
+   * @param shape the shape of the piece
+   * @param rotation the rotation state of the piece
+   * @return the number of keys of each column
+   */
+  private static int[] keys(final Tetromino.Shape shape, final int rotation) {
+    int minX = Integer.MAX_VALUE;
+    for (int i = 0; i < Tetromino.BLOCKS; i++) {
+      minX = Math.min(minX, shape.x(i, rotation));
+    }
+    int[] keys = new int[10];
+    for (int left = 0; left < keys.length; left++) {
+      keys[left] = Finesse.keys(shape, rotation, left - minX);
+    }
+    return keys;
+  }
+
+  /**
+   * Test the least number of keys to drop each shape, in each rotation state, in each column,
+   * counting a tap, a shift to the wall or a rotation as one key.
+   */
+  @Test
+  public void testFinesseKeys() {
+    for (int rotation = 0; rotation < Tetromino.ROTATIONS; rotation++) {
+      assertArrayEquals(new int[] {1, 2, 2, 1, 0, 1, 2, 2, 1, X},
+          keys(Tetromino.Shape.O, rotation));
+    }
+    assertArrayEquals(new int[] {1, 2, 1, 0, 1, 2, 1, X, X, X},
+        keys(Tetromino.Shape.I, 0));
+    assertArrayEquals(new int[] {2, 2, 3, 2, 1, 2, 3, 2, 3, 2},
+        keys(Tetromino.Shape.I, 1));
+    assertArrayEquals(new int[] {1, 2, 1, 0, 1, 2, 2, 1, X, X},
+        keys(Tetromino.Shape.T, 0));
+    assertArrayEquals(new int[] {2, 2, 3, 2, 1, 2, 3, 3, 2, X},
+        keys(Tetromino.Shape.T, 1));
+    assertArrayEquals(new int[] {3, 4, 3, 2, 3, 4, 4, 3, X, X},
+        keys(Tetromino.Shape.T, 2));
+    assertArrayEquals(new int[] {2, 3, 2, 1, 2, 3, 3, 2, 2, X},
+        keys(Tetromino.Shape.T, 3));
+    assertArrayEquals(new int[] {2, 2, 2, 1, 1, 2, 3, 2, 2, X},
+        keys(Tetromino.Shape.S, 1));
+    // Rotation states covering the same cells share their number of keys
+    assertArrayEquals(keys(Tetromino.Shape.I, 0), keys(Tetromino.Shape.I, 2));
+    assertArrayEquals(keys(Tetromino.Shape.I, 1), keys(Tetromino.Shape.I, 3));
+    assertArrayEquals(keys(Tetromino.Shape.S, 0), keys(Tetromino.Shape.S, 2));
+    assertArrayEquals(keys(Tetromino.Shape.Z, 1), keys(Tetromino.Shape.Z, 3));
+    for (Tetromino.Shape shape : new Tetromino.Shape[] {Tetromino.Shape.J,
+        Tetromino.Shape.L}) {
+      for (int rotation = 0; rotation < Tetromino.ROTATIONS; rotation++) {
+        assertArrayEquals(keys(Tetromino.Shape.T, rotation),
+            keys(shape, rotation));
+      }
+    }
+  }
+
+  /**
+   * Test the pieces per second, keys per piece and finesse faults of a scripted game, tapping
+   * three times left when shifting to the wall takes a single key.
+   */
+  @Test
+  public void testScriptedGame() {
+    PlayAnalyzer analyzer = new PlayAnalyzer();
+    ScriptedPlayer player = new ScriptedPlayer();
+    Engine engine = play(analyzer, player, SEED);
+    analyzer.finish();
+    Analytics analytics = analyzer.getAnalytics();
+    assertEquals(1, analytics.getGames());
+    assertEquals(PIECES, analytics.getPieces());
+    assertEquals(PIECES * SCRIPT_KEYS, analytics.getKeys());
+    assertEquals(SCRIPT_KEYS, analytics.getKeysPerPiece(), 0);
+    assertEquals(PIECES * SCRIPT.length, engine.getFrames());
+    assertEquals(
+        (double) PIECES * Engine.FRAME_PER_SECOND / engine.getFrames(),
+        analytics.getPiecesPerSecond(), 1e-9);
+    assertEquals(PIECES, analytics.getLineClears(0));
+    assertEquals(PIECES, analytics.getFinessePieces());
+    assertEquals(PIECES, analytics.getFinesseFaults());
+    // Three taps left instead of one shift to the wall, or two keys for a square
+    assertEquals(2 * PIECES - player.squares, analytics.getExtraKeys());
+    assertTrue(player.squares > 0);
+  }
+
+  /**
+   * Test merging the analytics of games analyzed apart gives the analytics of the games analyzed
+   * together.
+   */
+  @Test
+  public void testAdd() {
+    PlayAnalyzer together = new PlayAnalyzer();
+    Analytics merged = new Analytics();
+    merged.add(new Analytics());
+    for (long seed = SEED; seed < SEED + 3; seed++) {
+      play(together, new ScriptedPlayer(), seed);
+      PlayAnalyzer apart = new PlayAnalyzer();
+      play(apart, new ScriptedPlayer(), seed);
+      apart.finish();
+      merged.add(apart.getAnalytics());
+    }
+    together.finish();
+    assertEquals(3, merged.getGames());
+    assertEquals(together.getAnalytics().toString(), merged.toString());
+    assertEquals(3 * PIECES, merged.getPieces());
+    assertEquals(3 * PIECES * SCRIPT_KEYS, merged.getKeys());
+  }
+}
@@ -0,0 +1,117 @@
+package org.fun.game.tetris.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link Metrics}.
+ *
+ * @author Mathieu Brunot
+ */
+public class MetricsTest {
+
+  /**
+   * Number of frame times in the quantiles window.
+   */
+  private static final int WINDOW = 1024;
+
+  /**
+   * Write the metrics.
+   *
+   * @return the exposition text
+   */
+  private static String expose() {
+    StringBuilder out = new StringBuilder();
+    Metrics.getInstance().writeTo(out);
+    return out.toString();
+  }
+
+  /**
+   * Parse the samples of an exposition text.
+   *
+   * @param text the exposition text
+   * @return the value of each sample, by name and labels
+   */
+  private static Map<String, Double> samples(final String text) {
+    Map<String, Double> samples = new HashMap<>();
+    for (String line : text.split("\n")) {
+      if (!line.startsWith("#")) {
+        int separator = line.lastIndexOf(' ');
+        samples.put(line.substring(0, separator),
+            Double.parseDouble(line.substring(separator + 1)));
+      }
+    }
+    return samples;
+  }
+
+  /**
+   * Test the exposition text declares each metric before its samples, and the samples follow the
+   * events recorded.
+   */
+  @Test
+  public void testExposition() {
+    Metrics metrics = Metrics.getInstance();
+    Map<String, Double> before = samples(expose());
+
+    metrics.gameStarted();
+    metrics.gameStarted();
+    metrics.gameStopped();
+    metrics.pieceLocked();
+    metrics.pieceLocked();
+    metrics.pieceLocked();
+    metrics.linesCleared(4);
+    metrics.linesCleared(1);
+    metrics.setReplayBacklog(123);
+    metrics.setReplayTruncated(2);
+    // The first frame of a game has no frame time
+    metrics.tick(-1);
+    for (int frame = 1; frame <= WINDOW; frame++) {
+      metrics.tick(TimeUnit.MILLISECONDS.toNanos(frame));
+    }
+
+    String text = expose();
+    assertTrue(text.contains("# HELP tetris_pieces_total Number of pieces locked.\n"
+        + "# TYPE tetris_pieces_total counter\n" + "tetris_pieces_total "));
+    assertTrue(text.contains("# TYPE tetris_games_running gauge\n"));
+    assertTrue(text.contains("# TYPE tetris_frame_time_seconds summary\n"));
+    assertTrue(text.contains("tetris_replay_writer_backlog_bytes 123\n"));
+    assertTrue(text.contains(
+        "tetris_replay_writer_truncated_games_total 2\n"));
+    assertTrue(text.endsWith("\n"));
+    // No MIDI player was set
+    assertFalse(text.contains("tetris_midi_"));
+
+    Map<String, Double> after = samples(text);
+    assertEquals(1, after.get("tetris_games_running")
+        - before.get("tetris_games_running"), 0);
+    assertEquals(2, after.get("tetris_games_started_total")
+        - before.get("tetris_games_started_total"), 0);
+    assertEquals(WINDOW + 1, after.get("tetris_ticks_total")
+        - before.get("tetris_ticks_total"), 0);
+    assertEquals(3, after.get("tetris_pieces_total")
+        - before.get("tetris_pieces_total"), 0);
+    assertEquals(5, after.get("tetris_lines_cleared_total")
+        - before.get("tetris_lines_cleared_total"), 0);
+    assertEquals(WINDOW, after.get("tetris_frame_time_seconds_count")
+        - before.get("tetris_frame_time_seconds_count"), 0);
+    assertEquals(WINDOW * (WINDOW + 1) / 2 / 1000.0,
+        after.get("tetris_frame_time_seconds_sum")
+            - before.get("tetris_frame_time_seconds_sum"),
+        1e-6);
+    assertEquals(0.512,
+        after.get("tetris_frame_time_seconds{quantile=\"0.5\"}"), 0);
+    assertEquals(0.922,
+        after.get("tetris_frame_time_seconds{quantile=\"0.9\"}"), 0);
+    assertEquals(1.014,
+        after.get("tetris_frame_time_seconds{quantile=\"0.99\"}"), 0);
+    assertEquals(1.024,
+        after.get("tetris_frame_time_seconds{quantile=\"1.0\"}"), 0);
+  }
+}
@@ -0,0 +1,364 @@
+package org.fun.game.tetris.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.fun.game.tetris.Controller;
+import org.fun.game.tetris.EngineState;
+import org.fun.game.tetris.Tetrion;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the {@link GameServer}, played by scripted clients.
+ *
+ * @author Mathieu Brunot
+ */
+public class GameServerTest {
+
+  /**
+   * Number of event loops, rooms and connections being handed over between them.
+   */
+  private static final int LOOPS = 2;
+  /**
+   * Start level of the games.
+   */
+  private static final int LEVEL = 3;
+  /**
+   * Maximum time waited for a message, in milliseconds.
+   */
+  private static final int TIMEOUT_MILLIS = 10000;
+  /**
+   * Number of messages checked once a spectator plays.
+   */
+  private static final int PLAYED_MESSAGES = 30;
+
+  /**
+   * The server.
+   */
+  private GameServer server;
+
+  /**
+   * Start the server on a free port.
+   *
+   * @throws IOException if the server cannot listen
+   */
+  @Before
+  public void setUp() throws IOException {
+    server = new GameServer(0);
+    server.setLoops(LOOPS);
+    server.setMode(Tetrion.Mode.MODERN);
+    server.setLevel(LEVEL);
+    server.start();
+  }
+
+  /**
+   * Stop the server.
+   *
+   * @throws IOException if the server cannot stop listening
+   */
+  @After
+  public void tearDown() throws IOException {
+    server.close();
+  }
+
+  /**
+   * A scripted client, reading the messages of the server one at a time.
+   */
+  private static final class Client implements Closeable {
+
+    /**
+     * The socket.
+     */
+    private final Socket socket;
+    /**
+     * The messages received.
+     */
+    private final DataInputStream in;
+    /**
+     * The messages sent.
+     */
+    private final DataOutputStream out;
+    /**
+     * Payload of the last message read.
+     */
+    private DataInputStream payload = null;
+    /**
+     * States of its game received, by frame.
+     */
+    private final Map<Long, EngineState> states = new HashMap<>();
+    /**
+     * Last states of the games watched, by player id.
+     */
+    private final Map<Integer, EngineState> watched = new HashMap<>();
+    /**
+     * Player id of the last game welcomed or watched.
+     */
+    private int player = 0;
+    /**
+     * Seed of the last game welcomed.
+     */
+    private long seed = 0;
+    /**
+     * Last state read, of its game or of a game watched.
+     */
+    private EngineState state = null;
+
+    /**
+     * Connect to the server.
+     *
+     * @param port the port of the server
+     * @throws IOException if the client cannot connect
+     */
+    Client(final int port) throws IOException {
+      socket = new Socket(InetAddress.getLoopbackAddress(), port);
+      socket.setSoTimeout(TIMEOUT_MILLIS);
+      socket.setTcpNoDelay(true);
+      in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      out = new DataOutputStream(socket.getOutputStream());
+    }
+
+    /**
+     * Send a message.
+     *
+     * @param type the type of the message
+     * @param bytes the payload of the message
+     * @throws IOException if the message cannot be sent
+     */
+    void send(final byte type, final byte[] bytes) throws IOException {
+      out.writeShort(1 + bytes.length);
+      out.writeByte(type);
+      out.write(bytes);
+      out.flush();
+    }
+
+    /**
+     * Read a message, decoding the states.
+     *
+     * @return the type of the message
+     * @throws IOException if no message is received or it is invalid
+     */
+    byte read() throws IOException {
+      byte[] bytes = new byte[in.readUnsignedShort() - 1];
+      byte type = in.readByte();
+      in.readFully(bytes);
+      payload = new DataInputStream(new ByteArrayInputStream(bytes));
+      switch (type) {
+        case Protocol.WELCOME:
+          player = payload.readInt();
+          states.clear();
+          break;
+        case Protocol.STATE:
+          state = new EngineState();
+          state.readFrom(payload);
+          states.put(state.getFrames(), state);
+          break;
+        case Protocol.DELTA:
+          EngineState base = states.get(payload.readLong());
+          assertNotNull("Unknown delta base", base);
+          state = new EngineState();
+          state.copyFrom(base);
+          state.readDeltaFrom(payload);
+          states.put(state.getFrames(), state);
+          break;
+        case Protocol.WATCHED:
+          player = payload.readInt();
+          state = new EngineState();
+          state.readFrom(payload);
+          watched.put(player, state);
+          break;
+        case Protocol.WATCHED_DELTA:
+          player = payload.readInt();
+          state = watched.get(player);
+          assertNotNull("Delta of a game not watched", state);
+          assertEquals("Delta from another state", state.getFrames(),
+              payload.readLong());
+          state.readDeltaFrom(payload);
+          break;
+        default:
+          break;
+      }
+      return type;
+    }
+
+    /**
+     * Read the payload of a {@link Protocol#WELCOME} message.
+     *
+     * @param room the room expected
+     * @throws IOException if the payload is invalid
+     */
+    void welcomed(final int room) throws IOException {
+      assertEquals(room, payload.readInt());
+      assertEquals(Tetrion.Mode.MODERN.ordinal(), payload.readByte());
+      assertEquals(LEVEL, payload.readInt());
+      seed = payload.readLong();
+    }
+
+    /**
+     * Join a room and check the welcome.
+     *
+     * @param room the room
+     * @throws IOException if the room cannot be joined
+     */
+    void join(final int room) throws IOException {
+      send(Protocol.JOIN, ByteBuffer.allocate(Protocol.JOIN_LENGTH)
+          .putInt(room).array());
+      assertEquals(Protocol.WELCOME, read());
+      welcomed(room);
+    }
+
+    /**
+     * Send the inputs held.
+     *
+     * @param inputs the inputs
+     * @throws IOException if the inputs cannot be sent
+     */
+    void inputs(final int inputs) throws IOException {
+      send(Protocol.INPUTS, new byte[] {(byte) inputs});
+    }
+
+    /**
+     * Acknowledge the last state read.
+     *
+     * @throws IOException if the acknowledgement cannot be sent
+     */
+    void acknowledge() throws IOException {
+      send(Protocol.ACK, ByteBuffer.allocate(Protocol.ACK_LENGTH)
+          .putLong(state.getFrames()).array());
+    }
+
+    /**
+     * Play its game to the end, hard dropping a piece every other frame, and check the messages
+     * received.
+     *
+     * @return the number of deltas received
+     * @throws IOException if the game cannot be played
+     */
+    int playToGameOver() throws IOException {
+      int deltas = 0;
+      boolean drop = true;
+      for (byte type = read(); type != Protocol.GAME_OVER; type = read()) {
+        assertTrue("Unexpected message " + type,
+            type == Protocol.STATE || type == Protocol.DELTA);
+        assertEquals(seed, state.getSeed());
+        assertEquals(LEVEL, state.getStartLevel());
+        if (type == Protocol.DELTA) {
+          deltas++;
+        }
+        acknowledge();
+        inputs(drop ? Controller.HARD_DROP : Controller.NONE);
+        drop = !drop;
+      }
+      assertFalse(state.isStarted());
+      assertEquals(state.getScore(), payload.readLong());
+      assertEquals(state.getLines(), payload.readInt());
+      assertEquals(state.getFrames(), payload.readLong());
+      return deltas;
+    }
+
+    @Override
+    public void close() throws IOException {
+      socket.close();
+    }
+  }
+
+  /**
+   * Test a player is welcomed, receives the states of its game, as deltas once acknowledged, and
+   * its end.
+   *
+   * @throws IOException if the game cannot be played
+   */
+  @Test
+  public void testPlay() throws IOException {
+    try (Client client = new Client(server.getPort())) {
+      client.join(1);
+      assertEquals(Protocol.STATE, client.read());
+      assertEquals(client.seed, client.state.getSeed());
+      assertTrue(client.state.isStarted());
+      client.acknowledge();
+      assertTrue(client.playToGameOver() > 0);
+    }
+  }
+
+  /**
+   * Test a spectator receives keyframes then deltas of every game of a room, up to their end, and
+   * only the messages of its own game once it plays in the room.
+   *
+   * @throws IOException if the games cannot be played or watched
+   */
+  @Test
+  public void testSpectate() throws IOException {
+    final int room = 2;
+    try (Client first = new Client(server.getPort());
+        Client second = new Client(server.getPort());
+        Client spectator = new Client(server.getPort())) {
+      first.join(room);
+      second.join(room);
+      assertEquals(first.seed, second.seed);
+      assertNotEquals(first.player, second.player);
+
+      spectator.send(Protocol.SPECTATE,
+          ByteBuffer.allocate(Protocol.SPECTATE_LENGTH).putInt(room).array());
+      Map<Integer, Integer> deltas = new HashMap<>();
+      while (deltas.getOrDefault(first.player, 0) == 0
+          || deltas.getOrDefault(second.player, 0) == 0) {
+        byte type = spectator.read();
+        if (type == Protocol.WATCHED) {
+          assertEquals(first.seed, spectator.state.getSeed());
+          deltas.putIfAbsent(spectator.player, 0);
+        } else {
+          assertEquals(Protocol.WATCHED_DELTA, type);
+          assertTrue("Delta before keyframe",
+              deltas.containsKey(spectator.player));
+          deltas.merge(spectator.player, 1, Integer::sum);
+        }
+      }
+      assertEquals(2, spectator.watched.size());
+
+      first.playToGameOver();
+      EngineState end = first.state;
+      while (spectator.watched.get(first.player).isStarted()) {
+        byte type = spectator.read();
+        assertTrue(type == Protocol.WATCHED || type == Protocol.WATCHED_DELTA);
+      }
+      EngineState watched = spectator.watched.get(first.player);
+      assertEquals(end.getFrames(), watched.getFrames());
+      assertEquals(end.getScore(), watched.getScore());
+
+      spectator.send(Protocol.JOIN, ByteBuffer.allocate(Protocol.JOIN_LENGTH)
+          .putInt(room).array());
+      byte type = spectator.read();
+      while (type != Protocol.WELCOME) {
+        assertTrue(type == Protocol.WATCHED || type == Protocol.WATCHED_DELTA);
+        type = spectator.read();
+      }
+      spectator.welcomed(room);
+      assertEquals(first.seed, spectator.seed);
+      assertNotEquals(first.player, spectator.player);
+      assertNotEquals(second.player, spectator.player);
+      for (int i = 0; i < PLAYED_MESSAGES; i++) {
+        type = spectator.read();
+        assertTrue("Watched message after the welcome",
+            type == Protocol.STATE || type == Protocol.DELTA && i > 0);
+        assertEquals(spectator.seed, spectator.state.getSeed());
+        spectator.acknowledge();
+      }
+    }
+  }
+}
@@ -0,0 +1,214 @@
+package org.fun.game.tetris.net;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import org.fun.game.tetris.Board;
+import org.fun.game.tetris.Controller;
+import org.fun.game.tetris.Engine;
+import org.fun.game.tetris.EngineState;
+import org.fun.game.tetris.FuzzedGames;
+import org.fun.game.tetris.Tetrion;
+import org.fun.game.tetris.ai.BotType;
+import org.fun.game.tetris.ai.Evaluator;
+import org.junit.Test;
+
+/**
+ * Tests of the {@link RollbackSession} determinism.
+ *
+ * @author Mathieu Brunot
+ */
+public class RollbackSessionTest {
+
+  /**
+   * Seed of the games, inputs and delays.
+   */
+  private static final long SEED = 1;
+  /**
+   * Start level of the games.
+   */
+  private static final int LEVEL = 1;
+  /**
+   * Number of frames played.
+   */
+  private static final int FRAMES = 3000;
+  /**
+   * One frame in this number has random inputs instead of the bot ones, mispredicted by the
+   * remote peer. They do not hard drop, not to top out at once.
+   */
+  private static final int RANDOM_INPUTS_PERIOD = 8;
+  /**
+   * Maximum delay of the inputs sent, in ticks: beyond the maximum prediction, stalling the
+   * receiver.
+   */
+  private static final int MAX_DELAY = 2 * RollbackSession.MAX_PREDICTION;
+
+  /**
+   * A peer of a test session, sending its inputs to the other with a delay.
+   */
+  private static final class Peer {
+
+    /**
+     * The session of the peer.
+     */
+    private final RollbackSession session;
+    /**
+     * The bot playing the local player.
+     */
+    private final Controller bot =
+        BotType.GREEDY.create(new Evaluator(), ForkJoinPool.commonPool());
+    /**
+     * Inputs sent, not delivered yet, as tick of delivery, frame and input.
+     */
+    private final ArrayDeque<long[]> sent = new ArrayDeque<>();
+    /**
+     * Local inputs, by frame.
+     */
+    private final int[] inputs = new int[FRAMES];
+
+    /**
+     * Create a peer.
+     *
+     * @param localPlayer the index of the local player
+     */
+    Peer(final int localPlayer) {
+      session = new RollbackSession(localPlayer, Tetrion.Mode.MODERN);
+    }
+
+    /**
+     * Deliver the inputs sent by the other peer due by a tick.
+     *
+     * @param other the other peer
+     * @param tick the tick, {@link Long#MAX_VALUE} to deliver them all
+     */
+    void receive(final Peer other, final long tick) {
+      while (!other.sent.isEmpty() && other.sent.peekFirst()[0] <= tick) {
+        long[] input = other.sent.removeFirst();
+        assertTrue(session.addRemoteInput(input[1], (int) input[2]));
+      }
+    }
+
+    /**
+     * Compute the next frame if not too far ahead of the remote inputs, sending its input.
+     *
+     * @param tick the current tick
+     * @param random the generator of the random inputs and delays
+     */
+    void advance(final long tick, final SplittableRandom random) {
+      long frame = session.getFrame();
+      if (frame == FRAMES) {
+        return;
+      }
+      Engine engine = session.getEngine(session.getLocalPlayer());
+      int input = random.nextInt(RANDOM_INPUTS_PERIOD) == 0
+          ? FuzzedGames.randomInputs(random) & ~Controller.HARD_DROP
+          : bot.poll(engine);
+      if (!session.advance(input)) {
+        return;
+      }
+      inputs[(int) frame] = input;
+      long delivery = tick + random.nextInt(MAX_DELAY + 1);
+      if (!sent.isEmpty()) {
+        delivery = Math.max(delivery, sent.peekLast()[0]);
+      }
+      sent.addLast(new long[] {delivery, frame, input});
+    }
+  }
+
+  /**
+   * Encode the state of an engine.
+   *
+   * @param engine the engine
+   * @return the encoded state
+   * @throws IOException if the state cannot be written
+   */
+  private static byte[] encode(final Engine engine) throws IOException {
+    EngineState state = new EngineState();
+    engine.saveState(state);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    state.writeTo(new DataOutputStream(bytes));
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Compute both games straight from the inputs of both players.
+   *
+   * @param inputs the inputs of both players, by frame
+   * @return the engines of both players
+   */
+  private static Engine[] simulate(final int[][] inputs) {
+    final Engine[] engines = new Engine[2];
+    final int[] current = new int[2];
+    for (int i = 0; i < 2; i++) {
+      final int player = i;
+      engines[i] = new Engine();
+      engines[i].setMode(Tetrion.Mode.MODERN);
+      engines[i].setController(engine -> current[player]);
+      engines[i].addListener(new Engine.Listener() {
+        @Override
+        public void linesSent(final Engine engine, final int sentLines) {
+          engines[1 - player].addGarbage(sentLines);
+        }
+      });
+      engines[i].setBoard(Board.STANDARD);
+      engines[i].start(LEVEL, SEED);
+    }
+    for (int frame = 0; frame < FRAMES; frame++) {
+      for (int i = 0; i < 2; i++) {
+        current[i] = inputs[i][frame];
+        engines[i].tick();
+      }
+    }
+    return engines;
+  }
+
+  /**
+   * Test two peers exchanging their inputs with random delays, mispredicting them and stalling,
+   * end in the same games as computed straight from their inputs.
+   *
+   * @throws IOException if a state cannot be encoded
+   */
+  @Test
+  public void testDeterminism() throws IOException {
+    SplittableRandom random = new SplittableRandom(SEED);
+    Peer[] peers = {new Peer(0), new Peer(1)};
+    for (Peer peer : peers) {
+      peer.session.start(LEVEL, SEED);
+    }
+    for (long tick = 0; peers[0].session.getFrame() < FRAMES
+        || peers[1].session.getFrame() < FRAMES; tick++) {
+      for (int i = 0; i < 2; i++) {
+        peers[i].receive(peers[1 - i], tick);
+        peers[i].advance(tick, random);
+      }
+    }
+    for (int i = 0; i < 2; i++) {
+      peers[i].receive(peers[1 - i], Long.MAX_VALUE);
+      peers[i].session.synchronize();
+      assertEquals(FRAMES, peers[i].session.getConfirmedFrame());
+      assertTrue(peers[i].session.getRollbacks() > 0);
+      assertTrue(peers[i].session.getFramesStalled() > 0);
+    }
+    assertEquals(peers[0].session.getChecksum(FRAMES),
+        peers[1].session.getChecksum(FRAMES));
+
+    Engine[] expected = simulate(new int[][] {peers[0].inputs, peers[1].inputs});
+    assertTrue(expected[0].getLinesSent() > 0);
+    assertTrue(expected[1].getLinesSent() > 0);
+    for (Peer peer : peers) {
+      for (int player = 0; player < 2; player++) {
+        Engine engine = peer.session.getEngine(player);
+        assertEquals(expected[player].getHash(), engine.getHash());
+        assertArrayEquals(encode(expected[player]), encode(engine));
+      }
+    }
+  }
+}
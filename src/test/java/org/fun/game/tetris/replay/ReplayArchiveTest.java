@@ -0,0 +1,240 @@
+package org.fun.game.tetris.replay;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.fun.game.tetris.Board;
+import org.fun.game.tetris.Tetrion;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of {@link ReplayArchive}.
+ *
+ * @author Mathieu Brunot
+ */
+public class ReplayArchiveTest {
+
+  /**
+   * Number of games appended.
+   */
+  private static final int GAMES = 3;
+
+  /**
+   * Temporary folder of the archive.
+   */
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * The data file of the archive.
+   */
+  private Path file;
+  /**
+   * The index file of the archive.
+   */
+  private Path indexFile;
+  /**
+   * Length of the data file once the games are appended.
+   */
+  private long dataLength;
+
+  /**
+   * Create a game.
+   *
+   * @param game the index of the game
+   * @return the game
+   */
+  private static Replay replay(final int game) {
+    return new Replay(game, Tetrion.Mode.MODERN, game, Board.STANDARD,
+        new long[] {1, 10 + game, 20 + game}, new int[] {1, 0, 2},
+        new long[] {15}, new int[] {2}, new byte[][] {{1, 2, 3}},
+        100 + game, 1000L * game, game, 42L * game, true);
+  }
+
+  /**
+   * Create an archive and append the games.
+   *
+   * @throws IOException if the archive cannot be written
+   */
+  @Before
+  public void setUp() throws IOException {
+    file = folder.getRoot().toPath().resolve("games.replay");
+    indexFile = file.resolveSibling("games.replay" + ReplayArchive.INDEX_EXTENSION);
+    try (ReplayArchive archive = new ReplayArchive(file, true)) {
+      for (int game = 0; game < GAMES; game++) {
+        assertEquals(game, archive.append(replay(game)));
+      }
+      archive.force();
+    }
+    dataLength = Files.size(file);
+  }
+
+  /**
+   * Check an archive holds the games appended.
+   *
+   * @param archive the archive
+   * @param games the number of games
+   * @throws IOException if the archive cannot be read
+   */
+  private static void assertGames(final ReplayArchive archive, final int games)
+      throws IOException {
+    assertEquals(games, archive.getGames());
+    for (int game = 0; game < games; game++) {
+      Replay expected = replay(game);
+      Replay actual = archive.read(game);
+      assertEquals(game, archive.getId(game));
+      assertEquals(expected.getScore(), archive.getScore(game));
+      assertEquals(expected.getLines(), archive.getLines(game));
+      assertEquals(expected.getSeed(), archive.getSeed(game));
+      assertEquals(expected.getSeed(), actual.getSeed());
+      assertEquals(expected.getLevel(), actual.getLevel());
+      assertEquals(expected.getChanges(), actual.getChanges());
+      assertEquals(expected.getChangeFrame(1), actual.getChangeFrame(1));
+      assertArrayEquals(expected.getKeyframeState(0),
+          actual.getKeyframeState(0));
+      assertEquals(expected.getFrames(), actual.getFrames());
+      assertEquals(expected.getBoardHash(), actual.getBoardHash());
+    }
+  }
+
+  /**
+   * Append bytes to a file, as an interrupted append would.
+   *
+   * @param target the file
+   * @param bytes the bytes
+   * @throws IOException if the file cannot be written
+   */
+  private static void appendTo(final Path target, final byte[] bytes)
+      throws IOException {
+    Files.write(target, bytes, StandardOpenOption.APPEND);
+  }
+
+  /**
+   * Test the games are read back after reopening the archive.
+   *
+   * @throws IOException if the archive cannot be read
+   */
+  @Test
+  public void testReopen() throws IOException {
+    try (ReplayArchive archive = new ReplayArchive(file, false)) {
+      assertGames(archive, GAMES);
+    }
+  }
+
+  /**
+   * Test a torn append, its body partly written and its entry partly written, is dropped, and
+   * appends resume after the last complete game.
+   *
+   * @throws IOException if the archive cannot be read or written
+   */
+  @Test
+  public void testTornAppend() throws IOException {
+    byte[] body = Arrays.copyOf(Files.readAllBytes(file), 7);
+    appendTo(file, body);
+    appendTo(indexFile, new byte[ReplayArchive.ENTRY_LENGTH / 2]);
+
+    try (ReplayArchive archive = new ReplayArchive(file, false)) {
+      assertGames(archive, GAMES);
+    }
+    try (ReplayArchive archive = new ReplayArchive(file, true)) {
+      assertGames(archive, GAMES);
+      assertEquals(dataLength, Files.size(file));
+      assertEquals(GAMES, archive.append(replay(GAMES)));
+    }
+    try (ReplayArchive archive = new ReplayArchive(file, false)) {
+      assertGames(archive, GAMES + 1);
+    }
+  }
+
+  /**
+   * Test a missing index is rebuilt from the data file when opened for appends, dropping a torn
+   * append.
+   *
+   * @throws IOException if the archive cannot be read or written
+   */
+  @Test
+  public void testRebuildIndex() throws IOException {
+    Files.delete(indexFile);
+    try {
+      new ReplayArchive(file, false).close();
+      fail("Opened without an index");
+    } catch (IOException ex) {
+      assertEquals(dataLength, Files.size(file));
+    }
+
+    appendTo(file, new byte[] {ReplayFormat.GAME, 1, 2});
+    try (ReplayArchive archive = new ReplayArchive(file, true)) {
+      assertGames(archive, GAMES);
+      assertEquals(dataLength, Files.size(file));
+    }
+    try (ReplayArchive archive = new ReplayArchive(file, false)) {
+      assertGames(archive, GAMES);
+    }
+  }
+
+  /**
+   * Test appends past the index mapped at once, the entries mapped ahead being dropped on close.
+   *
+   * @throws IOException if the archive cannot be read or written
+   */
+  @Test
+  public void testManyAppends() throws IOException {
+    final int games = 2500;
+    try (ReplayArchive archive = new ReplayArchive(file, true)) {
+      for (int game = GAMES; game < games; game++) {
+        assertEquals(game, archive.append(replay(game % GAMES)));
+      }
+    }
+    assertEquals(Integer.BYTES * 2 + (long) games * ReplayArchive.ENTRY_LENGTH,
+        Files.size(indexFile));
+    try (ReplayArchive archive = new ReplayArchive(file, false)) {
+      assertEquals(games, archive.getGames());
+      for (int game = 0; game < games; game++) {
+        assertEquals(game, archive.getId(game));
+        assertEquals(replay(game % GAMES).getSeed(), archive.getSeed(game));
+      }
+      assertEquals(replay((games - 1) % GAMES).getScore(),
+          archive.read(games - 1).getScore());
+    }
+  }
+
+  /**
+   * Test the entries mapped ahead of the appends are not read as games while appending.
+   *
+   * @throws IOException if the archive cannot be read or written
+   */
+  @Test
+  public void testReadWhileAppending() throws IOException {
+    try (ReplayArchive archive = new ReplayArchive(file, true)) {
+      assertEquals(GAMES, archive.append(replay(GAMES)));
+      archive.force();
+      try (ReplayArchive reader = new ReplayArchive(file, false)) {
+        assertGames(reader, GAMES + 1);
+      }
+    }
+  }
+
+  /**
+   * Test an empty index is rebuilt rather than the data file emptied.
+   *
+   * @throws IOException if the archive cannot be read or written
+   */
+  @Test
+  public void testEmptyIndex() throws IOException {
+    Files.write(indexFile, new byte[0]);
+    try (ReplayArchive archive = new ReplayArchive(file, true)) {
+      assertGames(archive, GAMES);
+    }
+    assertEquals(dataLength, Files.size(file));
+  }
+}
@@ -0,0 +1,130 @@
+package org.fun.game.tetris.replay;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.fun.game.tetris.Controller;
+import org.fun.game.tetris.Engine;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of {@link ReplayVerifier}.
+ *
+ * @author Mathieu Brunot
+ */
+public class ReplayVerifierTest {
+
+  /**
+   * Number of games in the archive.
+   */
+  private static final int GAMES = 4;
+  /**
+   * Index of the corrupted game.
+   */
+  private static final int CORRUPTED_GAME = 2;
+  /**
+   * Index of the keyframe after which the inputs are corrupted.
+   */
+  private static final int CORRUPTED_KEYFRAME = 2;
+
+  /**
+   * Temporary folder of the archive.
+   */
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * Copy a game, one inputs change replaced.
+   *
+   * @param replay the game
+   * @param change the index of the change replaced
+   * @param inputs the inputs of the change
+   * @return the corrupted game
+   */
+  private static Replay corrupt(final Replay replay, final int change,
+      final int inputs) {
+    long[] changeFrames = new long[replay.getChanges()];
+    int[] changeInputs = new int[replay.getChanges()];
+    for (int c = 0; c < changeFrames.length; c++) {
+      changeFrames[c] = replay.getChangeFrame(c);
+      changeInputs[c] = c == change ? inputs : replay.getChangeInputs(c);
+    }
+    long[] keyframeFrames = new long[replay.getKeyframes()];
+    int[] keyframeChanges = new int[replay.getKeyframes()];
+    byte[][] keyframeStates = new byte[replay.getKeyframes()][];
+    for (int k = 0; k < keyframeFrames.length; k++) {
+      keyframeFrames[k] = replay.getKeyframeFrame(k);
+      keyframeChanges[k] = replay.getKeyframeChange(k);
+      keyframeStates[k] = replay.getKeyframeState(k);
+    }
+    return new Replay(replay.getSeed(), replay.getMode(), replay.getLevel(),
+        replay.getBoard(), changeFrames, changeInputs, keyframeFrames,
+        keyframeChanges, keyframeStates, replay.getFrames(), replay.getScore(),
+        replay.getLines(), replay.getBoardHash(), replay.isOver());
+  }
+
+  /**
+   * Test the games of an archive are verified, but a game whose inputs are corrupted after a
+   * keyframe, which diverges before the next keyframe, either topping out or reaching it in
+   * another state.
+   *
+   * @throws IOException if the archive cannot be written or read
+   */
+  @Test
+  public void testCorruptedInputs() throws IOException {
+    Replay replay = ReplayWriterTest.read(ReplayWriterTest.record(new Engine()));
+    assertTrue(replay.getKeyframes() > CORRUPTED_KEYFRAME + 1);
+    int change = replay.getKeyframeChange(CORRUPTED_KEYFRAME);
+    long matching = replay.getKeyframeFrame(CORRUPTED_KEYFRAME);
+    long next = replay.getKeyframeFrame(CORRUPTED_KEYFRAME + 1);
+    assertTrue(replay.getChangeFrame(change) < next);
+    int inputs = replay.getChangeInputs(change) ^ Controller.HOLD;
+
+    Path file = folder.getRoot().toPath().resolve("games.replay");
+    try (ReplayArchive archive = new ReplayArchive(file, true)) {
+      for (int game = 0; game < GAMES; game++) {
+        archive.append(
+            game == CORRUPTED_GAME ? corrupt(replay, change, inputs) : replay);
+      }
+    }
+
+    List<VerificationResult> results = new ArrayList<>();
+    List<VerificationResult> mismatches;
+    try (ReplayArchive archive = new ReplayArchive(file, false)) {
+      ReplayVerifier verifier = new ReplayVerifier();
+      verifier.setThreads(2);
+      verifier.setListener(result -> {
+        synchronized (results) {
+          results.add(result);
+        }
+      });
+      mismatches = verifier.verify(archive);
+    }
+    assertEquals(GAMES, results.size());
+    assertEquals(1, mismatches.size());
+
+    VerificationResult mismatch = mismatches.get(0);
+    assertFalse(mismatch.isVerified());
+    assertEquals(CORRUPTED_GAME, mismatch.getGame());
+    assertEquals(CORRUPTED_GAME, mismatch.getId());
+    assertEquals(matching, mismatch.getLastMatchingFrame());
+    assertTrue(mismatch.toString(),
+        mismatch.getFirstDivergentFrame() > replay.getChangeFrame(change));
+    assertTrue(mismatch.toString(), mismatch.getFirstDivergentFrame() <= next);
+    for (VerificationResult result : results) {
+      if (result.getGame() != CORRUPTED_GAME) {
+        assertTrue(result.toString(), result.isVerified());
+        assertEquals(replay.getScore(), result.getScore());
+        assertEquals(replay.getBoardHash(), result.getBoardHash());
+      }
+    }
+  }
+}
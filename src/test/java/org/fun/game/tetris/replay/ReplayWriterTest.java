@@ -0,0 +1,235 @@
+package org.fun.game.tetris.replay;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+
+import org.fun.game.tetris.Engine;
+import org.fun.game.tetris.FuzzedGames;
+import org.fun.game.tetris.Tetrion;
+import org.fun.game.tetris.ai.BotType;
+import org.fun.game.tetris.ai.Evaluator;
+import org.junit.Test;
+
+/**
+ * Tests of {@link ReplayWriter}, {@link ReplayReader} and {@link ReplayPlayer}.
+ *
+ * @author Mathieu Brunot
+ */
+public class ReplayWriterTest {
+
+  /**
+   * Seed of the game recorded.
+   */
+  private static final long SEED = 1;
+  /**
+   * Start level of the game recorded.
+   */
+  private static final int LEVEL = 3;
+  /**
+   * Maximum number of frames recorded.
+   */
+  private static final int FRAMES = 5000;
+
+  /**
+   * Record a game played by a bot.
+   *
+   * @param engine the engine playing the game
+   * @return the encoded replay
+   * @throws IOException if the replay cannot be written
+   */
+  static byte[] record(final Engine engine) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    engine.setMode(Tetrion.Mode.MODERN);
+    try (ReplayWriter writer = new ReplayWriter(bytes, new String[] {"LEFT"})) {
+      writer.setDelegate(BotType.GREEDY.create(new Evaluator(),
+          ForkJoinPool.commonPool()));
+      engine.setController(writer);
+      engine.addListener(writer);
+      engine.start(LEVEL, SEED);
+      while (engine.isStarted() && engine.getFrames() < FRAMES) {
+        engine.tick();
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Read the single game of a replay.
+   *
+   * @param bytes the encoded replay
+   * @return the game
+   * @throws IOException if the replay cannot be read
+   */
+  static Replay read(final byte[] bytes) throws IOException {
+    try (ReplayReader reader =
+        new ReplayReader(new ByteArrayInputStream(bytes))) {
+      Replay replay = reader.read();
+      assertNotNull(replay);
+      assertNull(reader.read());
+      return replay;
+    }
+  }
+
+  /**
+   * Test a recorded game is read back as played, and played back to the same end.
+   *
+   * @throws IOException if the replay cannot be written or read
+   */
+  @Test
+  public void testRoundTrip() throws IOException {
+    Engine engine = new Engine();
+    byte[] bytes = record(engine);
+    try (ReplayReader reader =
+        new ReplayReader(new ByteArrayInputStream(bytes))) {
+      assertArrayEquals(new String[] {"LEFT"}, reader.getKeyBindings());
+    }
+    Replay replay = read(bytes);
+    assertEquals(SEED, replay.getSeed());
+    assertEquals(Tetrion.Mode.MODERN, replay.getMode());
+    assertEquals(LEVEL, replay.getLevel());
+    assertEquals(engine.getFrames(), replay.getFrames());
+    assertEquals(engine.getScore(), replay.getScore());
+    assertEquals(engine.getLines(), replay.getLines());
+    assertEquals(engine.getBoardHash(), replay.getBoardHash());
+    assertTrue(replay.getChanges() > 0);
+    assertEquals((FRAMES - 1) / ReplayWriter.DEFAULT_KEYFRAME_PERIOD,
+        replay.getKeyframes());
+
+    ReplayPlayer player = new ReplayPlayer(replay);
+    player.play();
+    Engine played = player.getEngine();
+    assertEquals(replay.getFrames(), played.getFrames());
+    assertEquals(replay.getScore(), played.getScore());
+    assertEquals(replay.getLines(), played.getLines());
+    assertEquals(replay.getBoardHash(), played.getBoardHash());
+  }
+
+  /**
+   * Test seeking forwards and backwards, through keyframes, reaches the frames computed from the
+   * start of the game.
+   *
+   * @throws IOException if the replay cannot be written or read
+   */
+  @Test
+  public void testSeek() throws IOException {
+    Replay replay = read(record(new Engine()));
+    ReplayPlayer seeking = new ReplayPlayer(replay);
+    for (long frame : new long[] {3000, 1234, 4321, 42, 4321, 1}) {
+      assertEquals(frame, seeking.seek(frame));
+      ReplayPlayer advancing = new ReplayPlayer(replay);
+      assertEquals(frame, advancing.advance(frame));
+      Engine expected = advancing.getEngine();
+      Engine actual = seeking.getEngine();
+      assertEquals(expected.getScore(), actual.getScore());
+      assertEquals(expected.getPieces(), actual.getPieces());
+      assertEquals(expected.getCurX(), actual.getCurX());
+      assertEquals(expected.getCurY(), actual.getCurY());
+      assertEquals(expected.getFallingPiece().getShape(),
+          actual.getFallingPiece().getShape());
+      assertEquals(expected.getFallingPiece().getRotation(),
+          actual.getFallingPiece().getRotation());
+      assertEquals(expected.getBoardHash(), actual.getBoardHash());
+    }
+  }
+
+  /**
+   * Test nothing is recorded once the writer is closed, even more than its buffer.
+   *
+   * @throws IOException if the replay cannot be written or read
+   */
+  @Test(timeout = 10000)
+  public void testPollAfterClose() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ReplayWriter writer = new ReplayWriter(bytes, null, 0);
+    final SplittableRandom random = new SplittableRandom(SEED);
+    writer.setDelegate(source -> FuzzedGames.randomInputs(random));
+    Engine engine = new Engine();
+    engine.setController(writer);
+    engine.addListener(writer);
+    engine.start(LEVEL, SEED);
+    engine.tick();
+    writer.close();
+    int length = bytes.size();
+    for (int frame = 0; frame < FRAMES; frame++) {
+      if (!engine.isStarted()) {
+        engine.start(LEVEL, SEED);
+      }
+      engine.tick();
+    }
+    assertEquals(length, bytes.size());
+    Replay replay = read(bytes.toByteArray());
+    assertEquals(1, replay.getFrames());
+    assertFalse(replay.isOver());
+  }
+
+  /**
+   * Test a blocked output stream does not hold back the engine: the games are truncated before the
+   * first frame not fitting in the buffer, and played back to their truncated end.
+   *
+   * @throws IOException if the replay cannot be written or read
+   */
+  @Test(timeout = 10000)
+  public void testBlockedOutput() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    CountDownLatch blocked = new CountDownLatch(1);
+    ReplayWriter writer =
+        new ReplayWriter(new FilterOutputStream(bytes) {
+          @Override
+          public void write(final byte[] b, final int off, final int len)
+              throws IOException {
+            try {
+              blocked.await();
+            } catch (InterruptedException ex) {
+              throw new InterruptedIOException();
+            }
+            out.write(b, off, len);
+          }
+        }, null, 0);
+    final SplittableRandom random = new SplittableRandom(SEED);
+    writer.setDelegate(source -> FuzzedGames.randomInputs(random));
+    Engine engine = new Engine();
+    engine.setController(writer);
+    engine.addListener(writer);
+    engine.start(LEVEL, SEED);
+    for (int frame = 0; frame < FRAMES; frame++) {
+      if (!engine.isStarted()) {
+        engine.start(LEVEL, SEED);
+      }
+      engine.tick();
+    }
+    assertTrue(writer.getTruncatedGames() > 0);
+    assertTrue(writer.getBacklog() > 0);
+    blocked.countDown();
+    writer.close();
+
+    try (ReplayReader reader =
+        new ReplayReader(new ByteArrayInputStream(bytes.toByteArray()))) {
+      int truncated = 0;
+      for (Replay replay = reader.read(); replay != null;
+          replay = reader.read()) {
+        truncated += replay.isOver() ? 0 : 1;
+        ReplayPlayer player = new ReplayPlayer(replay);
+        player.play();
+        Engine played = player.getEngine();
+        assertEquals(replay.getFrames(), played.getFrames());
+        assertEquals(replay.getScore(), played.getScore());
+        assertEquals(replay.getLines(), played.getLines());
+        assertEquals(replay.getBoardHash(), played.getBoardHash());
+      }
+      assertTrue(truncated > 0);
+    }
+  }
+}
@@ -0,0 +1,162 @@
+package org.fun.game.tetris.scores;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.fun.game.tetris.Tetrion;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of {@link HighScoreStore}.
+ *
+ * @author Mathieu Brunot
+ */
+public class HighScoreStoreTest {
+
+  /**
+   * Number of games added at once.
+   */
+  private static final int GAMES = 500;
+  /**
+   * Number of best high scores kept.
+   */
+  private static final int TOP_SIZE = 5;
+  /**
+   * Number of games in the log triggering a compaction.
+   */
+  private static final int COMPACTION_THRESHOLD = 64;
+  /**
+   * Start levels of the games.
+   */
+  private static final int LEVELS = 3;
+  /**
+   * Bound of the random scores.
+   */
+  private static final int MAX_SCORE = 10000;
+
+  /**
+   * Temporary folder of the store.
+   */
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * The store file.
+   */
+  private Path file;
+  /**
+   * High scores added, in order.
+   */
+  private final List<HighScore> added = new ArrayList<>();
+  /**
+   * Random scores generator.
+   */
+  private final SplittableRandom random = new SplittableRandom(1);
+
+  /**
+   * Create the store file path.
+   */
+  @Before
+  public void setUp() {
+    file = folder.getRoot().toPath().resolve("scores");
+  }
+
+  /**
+   * Add random games to a store.
+   *
+   * @param store the store
+   * @throws IOException if the games cannot be written
+   */
+  private void addGames(final HighScoreStore store) throws IOException {
+    for (int game = 0; game < GAMES; game++) {
+      Tetrion.Mode mode = Tetrion.Mode.values()[random
+          .nextInt(Tetrion.Mode.values().length)];
+      HighScore highScore = new HighScore(added.size(), mode,
+          random.nextInt(LEVELS), random.nextInt(MAX_SCORE),
+          random.nextInt(100), random.nextInt(1000), random.nextInt(100000));
+      store.add(highScore);
+      added.add(highScore);
+    }
+  }
+
+  /**
+   * Check a store holds the games added: their number, the rank of any score, and the best high
+   * scores with their details.
+   *
+   * @param store the store
+   */
+  private void assertGames(final HighScoreStore store) {
+    assertEquals(added.size(), store.getGames());
+    for (Tetrion.Mode mode : Tetrion.Mode.values()) {
+      for (int level = 0; level < LEVELS; level++) {
+        List<HighScore> expected = new ArrayList<>();
+        for (HighScore highScore : added) {
+          if (highScore.getMode() == mode
+              && highScore.getStartLevel() == level) {
+            expected.add(highScore);
+          }
+        }
+        assertEquals(expected.size(), store.getGames(mode, level));
+        for (long score = 0; score <= MAX_SCORE; score += MAX_SCORE / 16) {
+          long greater = 0;
+          for (HighScore highScore : expected) {
+            if (highScore.getScore() > score) {
+              greater++;
+            }
+          }
+          assertEquals(greater + 1, store.rank(mode, level, score));
+        }
+        // Stable: the first one added ranks first among equal scores
+        expected.sort((a, b) -> Long.compare(b.getScore(), a.getScore()));
+        List<HighScore> top = store.top(mode, level, TOP_SIZE + 1);
+        assertEquals(Math.min(TOP_SIZE, expected.size()), top.size());
+        for (int i = 0; i < top.size(); i++) {
+          HighScore expectedScore = expected.get(i);
+          HighScore actualScore = top.get(i);
+          assertEquals(expectedScore.getTime(), actualScore.getTime());
+          assertEquals(expectedScore.getScore(), actualScore.getScore());
+          assertEquals(expectedScore.getLines(), actualScore.getLines());
+          assertEquals(expectedScore.getPieces(), actualScore.getPieces());
+          assertEquals(expectedScore.getFrames(), actualScore.getFrames());
+        }
+      }
+    }
+  }
+
+  /**
+   * Test the games are ranked and the best high scores kept, before and after reopening the store,
+   * whether the games were compacted or only logged.
+   *
+   * @throws IOException if the store cannot be read or written
+   */
+  @Test
+  public void testReopen() throws IOException {
+    try (HighScoreStore store = new HighScoreStore(file, TOP_SIZE)) {
+      store.setCompactionThreshold(COMPACTION_THRESHOLD);
+      addGames(store);
+      assertGames(store);
+    }
+    try (HighScoreStore store = new HighScoreStore(file, TOP_SIZE)) {
+      assertGames(store);
+      store.setCompactionThreshold(0);
+      addGames(store);
+      assertGames(store);
+    }
+    try (HighScoreStore store = new HighScoreStore(file, TOP_SIZE)) {
+      assertGames(store);
+      store.compact();
+      assertGames(store);
+    }
+    try (HighScoreStore store = new HighScoreStore(file, TOP_SIZE)) {
+      assertGames(store);
+    }
+  }
+}
@@ -0,0 +1,123 @@
+package org.fun.game.tetris.scores;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import org.fun.game.tetris.Tetrion;
+import org.junit.Test;
+
+/**
+ * Tests of {@link HighScoreTable}.
+ *
+ * @author Mathieu Brunot
+ */
+public class HighScoreTableTest {
+
+  /**
+   * Number of games added.
+   */
+  private static final int GAMES = 5000;
+  /**
+   * Number of best high scores kept.
+   */
+  private static final int TOP_SIZE = 10;
+  /**
+   * Bound of the random scores, low enough for scores to be equal.
+   */
+  private static final int MAX_SCORE = 2000;
+
+  /**
+   * Check a table holds the given scores, ascending, and ranks any score.
+   *
+   * @param table the table
+   * @param expected the scores added
+   * @param count the number of scores added
+   */
+  private static void assertScores(final HighScoreTable table,
+      final long[] expected, final int count) {
+    long[] sorted = Arrays.copyOf(expected, count);
+    Arrays.sort(sorted);
+    assertEquals(count, table.getCount());
+    for (int i = 0; i < count; i++) {
+      assertEquals(sorted[i], table.getScore(i));
+    }
+  }
+
+  /**
+   * Count the scores greater than a score.
+   *
+   * @param scores the scores
+   * @param count the number of scores
+   * @param score the score
+   * @return the number of greater scores
+   */
+  private static long greater(final long[] scores, final int count,
+      final long score) {
+    long greater = 0;
+    for (int i = 0; i < count; i++) {
+      if (scores[i] > score) {
+        greater++;
+      }
+    }
+    return greater;
+  }
+
+  /**
+   * Test games added one at a time are ranked and sorted, and the best high scores kept.
+   */
+  @Test
+  public void testAdd() {
+    SplittableRandom random = new SplittableRandom(1);
+    HighScoreTable table = new HighScoreTable(TOP_SIZE);
+    long[] scores = new long[GAMES];
+    for (int game = 0; game < GAMES; game++) {
+      long score = random.nextInt(MAX_SCORE);
+      assertEquals(greater(scores, game, score) + 1, table.rank(score));
+      scores[game] = score;
+      table.add(new HighScore(game, Tetrion.Mode.MIX, 0, score, 0, 0, 0));
+      if (game % 997 == 0) {
+        assertScores(table, scores, game + 1);
+      }
+    }
+    assertScores(table, scores, GAMES);
+
+    long[] sorted = scores.clone();
+    Arrays.sort(sorted);
+    assertEquals(TOP_SIZE, table.getTopCount());
+    for (int i = 0; i < TOP_SIZE; i++) {
+      assertEquals(sorted[GAMES - 1 - i], table.getTop(i).getScore());
+    }
+    for (int i = 1; i < TOP_SIZE; i++) {
+      if (table.getTop(i).getScore() == table.getTop(i - 1).getScore()) {
+        // The first one added ranks first
+        assertTrue(table.getTop(i).getTime() > table.getTop(i - 1).getTime());
+      }
+    }
+  }
+
+  /**
+   * Test scores appended in bulk, then games added, are ranked and sorted.
+   */
+  @Test
+  public void testAppend() {
+    SplittableRandom random = new SplittableRandom(2);
+    HighScoreTable table = new HighScoreTable(TOP_SIZE);
+    long[] scores = new long[GAMES];
+    for (int game = 0; game < GAMES; game++) {
+      scores[game] = random.nextInt(MAX_SCORE);
+      if (game < GAMES / 2) {
+        table.append(scores[game]);
+      } else {
+        table.add(new HighScore(game, Tetrion.Mode.MIX, 0, scores[game], 0,
+            0, 0));
+      }
+    }
+    for (long score = -1; score <= MAX_SCORE; score += 7) {
+      assertEquals(greater(scores, GAMES, score) + 1, table.rank(score));
+    }
+    assertScores(table, scores, GAMES);
+  }
+}
@@ -0,0 +1,66 @@
+package org.fun.game.tetris.sim;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.fun.game.tetris.Engine;
+import org.fun.game.tetris.Tetrion;
+import org.junit.Test;
+
+/**
+ * Tests of {@link BatchEngine}.
+ *
+ * @author Mathieu Brunot
+ *
+ * @see DifferentialCheck
+ */
+public class BatchEngineTest {
+
+  /**
+   * Number of boards checked.
+   */
+  private static final int BOARDS = 8;
+  /**
+   * Seed of the random inputs and games.
+   */
+  private static final long SEED = 1;
+  /**
+   * Number of frames checked.
+   */
+  private static final long FRAMES = 2L * 60 * Engine.FRAME_PER_SECOND;
+
+  /**
+   * Check the batch engine computes the same frames as the engine in a game mode.
+   *
+   * @param mode the game mode
+   */
+  private static void check(final Tetrion.Mode mode) {
+    DifferentialCheck check = new DifferentialCheck(mode, BOARDS, SEED);
+    assertNull(check.run(FRAMES));
+    assertTrue(check.getGames() >= BOARDS);
+  }
+
+  /**
+   * Test the batch engine computes the same frames as the engine in classic mode.
+   */
+  @Test
+  public void testClassic() {
+    check(Tetrion.Mode.CLASSIC);
+  }
+
+  /**
+   * Test the batch engine computes the same frames as the engine in modern mode.
+   */
+  @Test
+  public void testModern() {
+    check(Tetrion.Mode.MODERN);
+  }
+
+  /**
+   * Test the batch engine computes the same frames as the engine in mix mode.
+   */
+  @Test
+  public void testMix() {
+    check(Tetrion.Mode.MIX);
+  }
+}
@@ -0,0 +1,81 @@
+package org.fun.game.tetris.sim;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.fun.game.tetris.Tetrion;
+import org.fun.game.tetris.ai.BotType;
+import org.junit.Test;
+
+/**
+ * Tests of {@link BatchSimulator}.
+ *
+ * @author Mathieu Brunot
+ */
+public class BatchSimulatorTest {
+
+  /**
+   * Number of games simulated.
+   */
+  private static final long GAMES = 12;
+  /**
+   * Number of pieces after which a game is ended.
+   */
+  private static final int MAX_PIECES = 60;
+  /**
+   * Number of worker threads of the parallel run.
+   */
+  private static final int THREADS = 4;
+
+  /**
+   * Run the games.
+   *
+   * @param threads the number of worker threads
+   * @param results the list receiving the game results, sorted by game once run
+   * @return the statistics, without the compute times, which are not reproducible
+   */
+  private static String run(final int threads, final List<String> results) {
+    BatchSimulator simulator = new BatchSimulator();
+    simulator.setGames(GAMES);
+    simulator.setSeed(7);
+    simulator.setMode(Tetrion.Mode.MODERN);
+    simulator.setLevel(5);
+    simulator.setBot(BotType.GREEDY);
+    simulator.setMaxPieces(MAX_PIECES);
+    simulator.setThreads(threads);
+    List<GameResult> games = new ArrayList<>();
+    simulator.setListener(result -> {
+      synchronized (games) {
+        games.add(result);
+      }
+    });
+    Statistics statistics = simulator.run();
+    games.sort(Comparator.comparingLong(GameResult::getGame));
+    for (GameResult game : games) {
+      results.add(game.getGame() + " " + game.getSeed() + " "
+          + game.getScore() + " " + game.getLines() + " " + game.getLevel()
+          + " " + game.getPieces() + " " + game.getFrames() + " "
+          + game.isToppedOut());
+    }
+    StringBuilder out = new StringBuilder();
+    statistics.writeTo(out);
+    return out.toString().replaceAll("(?m)^compute_ms .*\\R", "");
+  }
+
+  /**
+   * Test the games and statistics do not depend on the number of worker threads.
+   */
+  @Test
+  public void testThreadsIndependent() {
+    List<String> sequential = new ArrayList<>();
+    String sequentialStatistics = run(1, sequential);
+    List<String> parallel = new ArrayList<>();
+    String parallelStatistics = run(THREADS, parallel);
+    assertEquals(GAMES, sequential.size());
+    assertEquals(sequential, parallel);
+    assertEquals(sequentialStatistics, parallelStatistics);
+  }
+}
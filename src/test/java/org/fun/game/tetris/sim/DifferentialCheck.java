@@ -0,0 +1,215 @@
+package org.fun.game.tetris.sim;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import org.fun.game.tetris.Board;
+import org.fun.game.tetris.Controller;
+import org.fun.game.tetris.Engine;
+import org.fun.game.tetris.Tetrion;
+import org.fun.game.tetris.Tetromino;
+import org.fun.game.tetris.ai.BotType;
+import org.fun.game.tetris.ai.Evaluator;
+
+/**
+ * Checks that a {@link BatchEngine} computes the same frames as {@link Engine}s.
+ *
+ * <p>
+ * Each board of a batch engine is paired with an engine, both polling the same inputs: random
+ * inputs on even boards, inputs of a bot playing the engine on odd boards so that lines get
+ * cleared and levels increase. Games are started with the same levels and seeds, and started again
+ * with a new seed when over. After each frame, the whole observable state of each board is compared
+ * with its engine: game progress, falling piece, hold piece, next queue and playfield.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+final class DifferentialCheck {
+
+  /**
+   * Number of input bits.
+   *
+   * @see Controller
+   */
+  private static final int INPUT_BITS = Integer.bitCount(Controller.ALL);
+  /**
+   * Inverse probability of an input change on each frame of a board played randomly.
+   */
+  private static final int RANDOM_INPUT_PERIOD = 4;
+  /**
+   * Number of levels the games are started at, so that every gravity is checked.
+   */
+  private static final int LEVELS = 25;
+
+  /**
+   * Game mode.
+   */
+  private final Tetrion.Mode mode;
+  /**
+   * Batch engine checked.
+   */
+  private final BatchEngine batch;
+  /**
+   * Reference engines, one per board.
+   */
+  private final Engine[] engines;
+  /**
+   * Inputs pressed, by board.
+   */
+  private final int[] inputs;
+  /**
+   * Random inputs and seeds generator.
+   */
+  private final SplittableRandom random;
+  /**
+   * Number of games started.
+   */
+  private long games = 0;
+
+  /**
+   * Create a check.
+   *
+   * @param gameMode the game mode
+   * @param boards the number of boards
+   * @param seed the seed of the random inputs and games
+   */
+  DifferentialCheck(final Tetrion.Mode gameMode, final int boards,
+      final long seed) {
+    this.mode = gameMode == null ? Tetrion.Mode.MIX : gameMode;
+    this.batch = new BatchEngine(boards);
+    this.batch.setMode(mode);
+    this.engines = new Engine[boards];
+    this.inputs = new int[boards];
+    this.random = new SplittableRandom(seed);
+    for (int k = 0; k < boards; k++) {
+      final int board = k;
+      engines[k] = new Engine();
+      engines[k].setMode(mode);
+      if (k % 2 == 0) {
+        engines[k].setController(engine -> inputs[board]);
+      } else {
+        final Controller bot = BotType.GREEDY.create(new Evaluator(),
+            ForkJoinPool.commonPool());
+        engines[k].setController(engine -> {
+          inputs[board] = bot.poll(engine);
+          return inputs[board];
+        });
+      }
+    }
+  }
+
+  /**
+   * Get the number of games started.
+   *
+   * @return the number of games started
+   */
+  long getGames() {
+    return games;
+  }
+
+  /**
+   * Run the check.
+   *
+   * @param frames the number of frames to compute
+   * @return the description of the first difference found, {@code null} if none
+   */
+  String run(final long frames) {
+    for (long frame = 0; frame < frames; frame++) {
+      for (int k = 0; k < engines.length; k++) {
+        if (!engines[k].isStarted() || !batch.isStarted(k)) {
+          int level = random.nextInt(LEVELS);
+          long seed = random.nextLong();
+          engines[k].start(level, seed);
+          batch.start(k, level, seed);
+          games++;
+        }
+        // Change an input every few frames
+        if (k % 2 == 0 && random.nextInt(RANDOM_INPUT_PERIOD) == 0) {
+          inputs[k] ^= 1 << random.nextInt(INPUT_BITS);
+        }
+      }
+
+      for (Engine engine : engines) {
+        engine.tick();
+      }
+      batch.tick(inputs);
+
+      for (int k = 0; k < engines.length; k++) {
+        String difference = compare(engines[k], k);
+        if (difference != null) {
+          return "Frame " + frame + ", board " + k + " (seed "
+              + engines[k].getSeed() + ", " + mode + "): " + difference;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Compare an engine with a board of the batch engine.
+   *
+   * @param engine the engine
+   * @param k the board index
+   * @return the description of the first difference found, {@code null} if none
+   */
+  private String compare(final Engine engine, final int k) {
+    String difference = first(null, "started", engine.isStarted(),
+        batch.isStarted(k));
+    difference =
+        first(difference, "frames", engine.getFrames(), batch.getFrames(k));
+    difference =
+        first(difference, "score", engine.getScore(), batch.getScore(k));
+    difference =
+        first(difference, "lines", engine.getLines(), batch.getLines(k));
+    difference =
+        first(difference, "level", engine.getLevel(), batch.getLevel(k));
+    difference = first(difference, "gravity", engine.getGravity(),
+        batch.getGravity(k));
+    difference =
+        first(difference, "pieces", engine.getPieces(), batch.getPieces(k));
+    difference =
+        first(difference, "inputs", engine.getInputs(), batch.getInputs(k));
+    Tetromino piece = engine.getFallingPiece();
+    difference = first(difference, "shape", piece.getShape(),
+        batch.getShape(k));
+    difference = first(difference, "rotation", piece.getRotation(),
+        batch.getRotation(k));
+    difference = first(difference, "x", engine.getCurX(), batch.getCurX(k));
+    difference = first(difference, "y", engine.getCurY(), batch.getCurY(k));
+    difference = first(difference, "hold", engine.getHoldPiece().getShape(),
+        batch.getHoldShape(k));
+    difference = first(difference, "hold available",
+        engine.isHoldPieceAvailable(), batch.isHoldPieceAvailable(k));
+    Iterator<Tetromino.Shape> nextShapes = engine.getNextShapes().iterator();
+    for (int i = 0; nextShapes.hasNext(); i++) {
+      difference = first(difference, "next shape " + i, nextShapes.next(),
+          batch.getNextShape(k, i));
+    }
+    for (int y = 0; y < Board.STANDARD.getHeight(); y++) {
+      difference =
+          first(difference, "row " + y, engine.rowAt(y),
+          (long) batch.rowAt(k, y));
+    }
+    return first(difference, "board hash", engine.getBoardHash(),
+        batch.getBoardHash(k));
+  }
+
+  /**
+   * Describe a difference, unless one was already found.
+   *
+   * @param found the difference already found, {@code null} if none
+   * @param name the name of the compared value
+   * @param expected the engine value
+   * @param actual the batch engine value
+   * @return the first difference found, {@code null} if none
+   */
+  private static String first(final String found, final String name,
+      final Object expected, final Object actual) {
+    if (found != null || Objects.equals(expected, actual)) {
+      return found;
+    }
+    return name + " expected " + expected + " but was " + actual;
+  }
+}
@@ -0,0 +1,129 @@
+package org.fun.game.tetris.sim;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link Histogram}.
+ *
+ * @author Mathieu Brunot
+ */
+public class HistogramTest {
+
+  /**
+   * Highest value counted exactly.
+   */
+  private static final int EXACT = 127;
+
+  /**
+   * Get the median of a histogram of a value between the lowest and highest values.
+   *
+   * @param value the value
+   * @return the median, the value as counted by its bucket
+   */
+  private static long median(final long value) {
+    Histogram histogram = new Histogram();
+    histogram.record(0);
+    histogram.record(value);
+    histogram.record(Long.MAX_VALUE);
+    return histogram.getPercentile(50);
+  }
+
+  /**
+   * Test an empty histogram reports zeros.
+   */
+  @Test
+  public void testEmpty() {
+    Histogram histogram = new Histogram();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getMin());
+    assertEquals(0, histogram.getMax());
+    assertEquals(0, histogram.getMean(), 0);
+    assertEquals(0, histogram.getPercentile(50));
+    assertEquals(0, histogram.getPercentile(100));
+  }
+
+  /**
+   * Test the values below {@code 128} are counted exactly.
+   */
+  @Test
+  public void testExactValues() {
+    Histogram histogram = new Histogram();
+    for (int value = 0; value <= EXACT; value++) {
+      histogram.record(value);
+    }
+    assertEquals(EXACT + 1, histogram.getCount());
+    assertEquals(0, histogram.getMin());
+    assertEquals(EXACT, histogram.getMax());
+    assertEquals(EXACT / 2.0, histogram.getMean(), 0);
+    assertEquals(0, histogram.getPercentile(0));
+    assertEquals(EXACT / 2, histogram.getPercentile(50));
+    assertEquals(EXACT, histogram.getPercentile(100));
+    for (int value = 0; value <= EXACT; value++) {
+      assertEquals(value, median(value));
+    }
+  }
+
+  /**
+   * Test the values from {@code 128} are reported as the highest value of their bucket, each
+   * power of two range being split into {@code 64} buckets.
+   */
+  @Test
+  public void testBucketBounds() {
+    // value, highest value of its bucket
+    long[][] bounds = {
+        {128, 129}, {129, 129}, {130, 131}, {254, 255}, {255, 255},
+        {256, 259}, {259, 259}, {260, 263}, {511, 511}, {512, 519},
+        {1000, 1007}, {1L << 40, (1L << 40) + (1L << 34) - 1}};
+    for (long[] bound : bounds) {
+      assertEquals("value " + bound[0], bound[1], median(bound[0]));
+    }
+  }
+
+  /**
+   * Test the percentiles never exceed the lowest and highest values recorded, and the highest
+   * values are counted.
+   */
+  @Test
+  public void testClampedToRange() {
+    Histogram histogram = new Histogram();
+    histogram.record(1000);
+    assertEquals(1000, histogram.getPercentile(50));
+    assertEquals(1000, histogram.getPercentile(100));
+    histogram.record(Long.MAX_VALUE);
+    assertEquals(Long.MAX_VALUE, histogram.getPercentile(100));
+    assertEquals(Long.MAX_VALUE, histogram.getMax());
+    histogram.record(-5);
+    assertEquals(0, histogram.getMin());
+    assertEquals(0, histogram.getPercentile(0));
+  }
+
+  /**
+   * Test merging histograms gives the histogram of all the values.
+   */
+  @Test
+  public void testAdd() {
+    Histogram all = new Histogram();
+    Histogram low = new Histogram();
+    Histogram high = new Histogram();
+    for (int value = 1; value <= 1000; value++) {
+      all.record(value * 7);
+      (value <= 500 ? low : high).record(value * 7);
+    }
+    Histogram merged = new Histogram();
+    merged.add(low);
+    merged.add(new Histogram());
+    merged.add(high);
+    assertEquals(all.getCount(), merged.getCount());
+    assertEquals(all.getMin(), merged.getMin());
+    assertEquals(all.getMax(), merged.getMax());
+    assertEquals(all.getMean(), merged.getMean(), 0);
+    for (double percentile = 0; percentile <= 100; percentile += 2.5) {
+      assertEquals(all.getPercentile(percentile),
+          merged.getPercentile(percentile));
+    }
+    assertEquals(7, merged.getMin());
+    assertEquals(7000, merged.getMax());
+  }
+}
@@ -0,0 +1,187 @@
+package org.fun.game.tetris.tuning;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import org.fun.game.tetris.ai.Evaluator;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of {@link WeightTuner} and {@link Checkpoint}.
+ *
+ * @author Mathieu Brunot
+ */
+public class WeightTunerTest {
+
+  /**
+   * Number of generations of the tuning runs.
+   */
+  private static final int GENERATIONS = 3;
+  /**
+   * Generation after which the interrupted run stops.
+   */
+  private static final int INTERRUPTED_GENERATION = 1;
+
+  /**
+   * Temporary folder of the checkpoints.
+   */
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * The checkpoint file.
+   */
+  private Path file;
+
+  /**
+   * Create the checkpoint file path.
+   */
+  @Before
+  public void setUp() {
+    file = folder.getRoot().toPath().resolve("tuner.properties");
+  }
+
+  /**
+   * Create a small tuner.
+   *
+   * @return the tuner
+   */
+  private static WeightTuner tuner() {
+    WeightTuner tuner = new WeightTuner();
+    tuner.setGenerations(GENERATIONS);
+    tuner.setPopulation(4);
+    tuner.setElites(2);
+    tuner.setGames(2);
+    tuner.setSeed(3);
+    tuner.getSimulator().setMaxPieces(40);
+    tuner.getSimulator().setThreads(2);
+    return tuner;
+  }
+
+  /**
+   * Create weights different for each feature.
+   *
+   * @param offset the value of the first weight
+   * @return the weights
+   */
+  private static double[] weights(final double offset) {
+    double[] weights = new double[Evaluator.FEATURES];
+    for (int i = 0; i < weights.length; i++) {
+      weights[i] = offset + i / 3.0;
+    }
+    return weights;
+  }
+
+  /**
+   * Assert two checkpoints are equal.
+   *
+   * @param expected the expected checkpoint
+   * @param actual the actual checkpoint
+   */
+  private static void assertCheckpointEquals(final Checkpoint expected,
+      final Checkpoint actual) {
+    assertEquals(expected.getGeneration(), actual.getGeneration());
+    assertArrayEquals(expected.getMean(), actual.getMean(), 0);
+    assertArrayEquals(expected.getDeviation(), actual.getDeviation(), 0);
+    assertEquals(Arrays.toString(expected.getBestWeights()),
+        Arrays.toString(actual.getBestWeights()));
+    assertEquals(expected.getBestFitness(), actual.getBestFitness(), 0);
+  }
+
+  /**
+   * Test a checkpoint is loaded as saved, the weights being exact.
+   *
+   * @throws IOException if the checkpoint cannot be written or read
+   */
+  @Test
+  public void testSaveLoad() throws IOException {
+    Checkpoint checkpoint =
+        new Checkpoint(7, weights(-1.1), weights(0.1), weights(Math.PI), 12.5);
+    checkpoint.save(file);
+    assertCheckpointEquals(checkpoint, Checkpoint.load(file));
+
+    Checkpoint first = new Checkpoint(0, weights(2), weights(1e-300), null,
+        Double.NEGATIVE_INFINITY);
+    first.save(file);
+    Checkpoint loaded = Checkpoint.load(file);
+    assertCheckpointEquals(first, loaded);
+    assertNull(loaded.getBestWeights());
+    // No temporary file left behind
+    try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+      assertEquals(1, files.count());
+    }
+  }
+
+  /**
+   * Test invalid checkpoints are rejected.
+   *
+   * @throws IOException if the checkpoint cannot be written
+   */
+  @Test
+  public void testLoadInvalid() throws IOException {
+    new Checkpoint(1, weights(0), weights(1), weights(2), 3).save(file);
+    assertEquals(3, Checkpoint.load(file).getBestFitness(), 0);
+    String valid = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    String[] invalids = {
+        valid.replaceAll("(?m)^generation=.*$", ""),
+        valid.replaceAll("(?m)^generation=.*$", "generation=one"),
+        valid.replaceAll("(?m)^mean=[^,]*,", "mean="),
+        valid.replaceAll("(?m)^deviation=[^,]*,", "deviation=x,"),
+        valid.replaceAll("(?m)^best.weights=.*$", "best.weights="),
+        valid.replaceAll("(?m)^best.fitness=.*$", "")};
+    for (String invalid : invalids) {
+      Files.write(file, invalid.getBytes(StandardCharsets.UTF_8));
+      try {
+        Checkpoint.load(file);
+        fail("Loaded " + invalid);
+      } catch (IOException ex) {
+        // Expected
+      }
+    }
+  }
+
+  /**
+   * Test a run interrupted after a checkpoint, then resumed from the checkpoint file, ends with the
+   * same generation as an uninterrupted run.
+   *
+   * @throws IOException if the checkpoint cannot be written or read
+   */
+  @Test
+  public void testResume() throws IOException {
+    Checkpoint uninterrupted = tuner().run();
+    assertEquals(GENERATIONS, uninterrupted.getGeneration());
+
+    WeightTuner interrupted = tuner();
+    interrupted.setCheckpointFile(file);
+    interrupted.setListener(checkpoint -> {
+      if (checkpoint.getGeneration() == INTERRUPTED_GENERATION) {
+        throw new IllegalStateException("Interrupted");
+      }
+    });
+    try {
+      interrupted.run();
+      fail("Not interrupted");
+    } catch (IllegalStateException ex) {
+      // Expected
+    }
+    assertEquals(INTERRUPTED_GENERATION,
+        Checkpoint.load(file).getGeneration());
+
+    WeightTuner resumed = tuner();
+    resumed.setCheckpointFile(file);
+    assertCheckpointEquals(uninterrupted, resumed.run());
+    assertCheckpointEquals(uninterrupted, Checkpoint.load(file));
+  }
+}